@@ -0,0 +1,622 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.depgraph;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.tuple.Pair;
+
+/**
+ * A frozen, read-only form of a {@link DependencyGraph} for use once the graph has been compiled.
+ * <p>
+ * Nodes are held in a dense array, in a valid execution order, and referred to by their position in it. Value specifications are
+ * interned into a table and referred to by integer identifier. Input nodes, dependent nodes, input values and output values are held
+ * as compressed sparse row adjacency lists - an offset array indexed by node into a single array of node or value identifiers - so
+ * the structure of the graph can be walked without touching the hash sets held by each {@link DependencyNode}.
+ * <p>
+ * A sub-graph shares the value table and node lookup of the graph it was taken from. The graph is not updated if the nodes are
+ * modified after it has been created.
+ */
+public final class CompactDependencyGraph {
+
+  private final String _calculationConfigurationName;
+
+  /**
+   * The graph this was derived from, or this if it was created directly from a {@link DependencyGraph}.
+   */
+  private final CompactDependencyGraph _base;
+
+  /**
+   * The nodes, in execution order.
+   */
+  private final DependencyNode[] _nodes;
+
+  /**
+   * Index of nodes in the base graph.
+   */
+  private final Object2IntMap<DependencyNode> _nodeIndex;
+
+  /**
+   * Maps an index in the base graph to an index in this graph (-1 if not present), null if this is the base graph.
+   */
+  private final int[] _baseIndex;
+
+  /**
+   * The nodes from the base graph that are in this graph, null if this is the base graph.
+   */
+  private final BitSet _baseNodes;
+
+  private final int[] _inputNodeOffsets;
+  private final int[] _inputNodes;
+  private final int[] _dependentNodeOffsets;
+  private final int[] _dependentNodes;
+  private final int[] _rootNodes;
+
+  /**
+   * The value table, shared with the base graph.
+   */
+  private final ValueSpecification[] _values;
+  private final Object2IntMap<ValueSpecification> _valueIndex;
+  private final int[] _inputValueOffsets;
+  private final int[] _inputValues;
+  private final int[] _outputValueOffsets;
+  private final int[] _outputValues;
+
+  /**
+   * The market data value sourced by each node, -1 if the node does not source market data.
+   */
+  private final int[] _marketData;
+  private final BitSet _terminalOutputs;
+
+  private final List<DependencyNode> _executionOrder;
+
+  /**
+   * The node sourcing each market data value, -1 if the value is not market data sourced by this graph. Created on demand.
+   */
+  private volatile int[] _marketDataNodes;
+
+  /**
+   * The weakly connected component each node belongs to. Created on demand.
+   */
+  private volatile int[] _components;
+  private int _componentCount;
+
+  private CompactDependencyGraph(final String calculationConfigurationName, final CompactDependencyGraph base, final DependencyNode[] nodes,
+      final Object2IntMap<DependencyNode> nodeIndex, final int[] baseIndex, final BitSet baseNodes, final int[] inputNodeOffsets, final int[] inputNodes,
+      final int[] dependentNodeOffsets, final int[] dependentNodes, final int[] rootNodes, final ValueSpecification[] values, final Object2IntMap<ValueSpecification> valueIndex,
+      final int[] inputValueOffsets, final int[] inputValues, final int[] outputValueOffsets, final int[] outputValues, final int[] marketData, final BitSet terminalOutputs) {
+    _calculationConfigurationName = calculationConfigurationName;
+    _base = (base != null) ? base : this;
+    _nodes = nodes;
+    _nodeIndex = nodeIndex;
+    _baseIndex = baseIndex;
+    _baseNodes = baseNodes;
+    _inputNodeOffsets = inputNodeOffsets;
+    _inputNodes = inputNodes;
+    _dependentNodeOffsets = dependentNodeOffsets;
+    _dependentNodes = dependentNodes;
+    _rootNodes = rootNodes;
+    _values = values;
+    _valueIndex = valueIndex;
+    _inputValueOffsets = inputValueOffsets;
+    _inputValues = inputValues;
+    _outputValueOffsets = outputValueOffsets;
+    _outputValues = outputValues;
+    _marketData = marketData;
+    _terminalOutputs = terminalOutputs;
+    _executionOrder = Collections.unmodifiableList(Arrays.asList(nodes));
+  }
+
+  /**
+   * Creates the compact form of a graph.
+   *
+   * @param graph the graph, not null
+   * @return the compact form, not null
+   * @throws IllegalStateException if the graph contains a cycle
+   */
+  public static CompactDependencyGraph of(final DependencyGraph graph) {
+    ArgumentChecker.notNull(graph, "graph");
+    final Collection<DependencyNode> graphNodes = graph.getDependencyNodes();
+    final int size = graphNodes.size();
+    // Arbitrary initial numbering
+    final DependencyNode[] unordered = graphNodes.toArray(new DependencyNode[size]);
+    final Object2IntMap<DependencyNode> unorderedIndex = new Object2IntOpenHashMap<DependencyNode>(size);
+    unorderedIndex.defaultReturnValue(-1);
+    for (int i = 0; i < size; i++) {
+      unorderedIndex.put(unordered[i], i);
+    }
+    // Topological sort; a node is placed once all of its inputs from this graph have been placed
+    final int[] pending = new int[size];
+    final int[] order = new int[size];
+    int tail = 0;
+    for (int i = 0; i < size; i++) {
+      int inputs = 0;
+      for (DependencyNode input : unordered[i].getInputNodes()) {
+        if (unorderedIndex.getInt(input) >= 0) {
+          inputs++;
+        }
+      }
+      pending[i] = inputs;
+      if (inputs == 0) {
+        order[tail++] = i;
+      }
+    }
+    for (int head = 0; head < tail; head++) {
+      for (DependencyNode dependent : unordered[order[head]].getDependentNodes()) {
+        final int index = unorderedIndex.getInt(dependent);
+        if ((index >= 0) && (--pending[index] == 0)) {
+          order[tail++] = index;
+        }
+      }
+    }
+    if (tail != size) {
+      throw new IllegalStateException("Graph " + graph + " contains a cycle");
+    }
+    final DependencyNode[] nodes = new DependencyNode[size];
+    final Object2IntMap<DependencyNode> nodeIndex = new Object2IntOpenHashMap<DependencyNode>(size);
+    nodeIndex.defaultReturnValue(-1);
+    for (int i = 0; i < size; i++) {
+      nodes[i] = unordered[order[i]];
+      nodeIndex.put(nodes[i], i);
+    }
+    // Node adjacency
+    final int[] inputNodeOffsets = new int[size + 1];
+    final int[] dependentNodeOffsets = new int[size + 1];
+    for (int i = 0; i < size; i++) {
+      inputNodeOffsets[i + 1] = inputNodeOffsets[i] + countNodes(nodes[i].getInputNodes(), nodeIndex);
+      dependentNodeOffsets[i + 1] = dependentNodeOffsets[i] + countNodes(nodes[i].getDependentNodes(), nodeIndex);
+    }
+    final int[] inputNodes = new int[inputNodeOffsets[size]];
+    final int[] dependentNodes = new int[dependentNodeOffsets[size]];
+    int roots = 0;
+    for (int i = 0; i < size; i++) {
+      writeNodes(nodes[i].getInputNodes(), nodeIndex, inputNodes, inputNodeOffsets[i]);
+      writeNodes(nodes[i].getDependentNodes(), nodeIndex, dependentNodes, dependentNodeOffsets[i]);
+      if (dependentNodeOffsets[i] == dependentNodeOffsets[i + 1]) {
+        roots++;
+      }
+    }
+    final int[] rootNodes = new int[roots];
+    roots = 0;
+    for (int i = 0; i < size; i++) {
+      if (dependentNodeOffsets[i] == dependentNodeOffsets[i + 1]) {
+        rootNodes[roots++] = i;
+      }
+    }
+    // Value table
+    final Object2IntMap<ValueSpecification> valueIndex = new Object2IntOpenHashMap<ValueSpecification>();
+    valueIndex.defaultReturnValue(-1);
+    final List<ValueSpecification> values = new ArrayList<ValueSpecification>();
+    final int[] inputValueOffsets = new int[size + 1];
+    final int[] outputValueOffsets = new int[size + 1];
+    for (int i = 0; i < size; i++) {
+      inputValueOffsets[i + 1] = inputValueOffsets[i] + nodes[i].getInputValues().size();
+      outputValueOffsets[i + 1] = outputValueOffsets[i] + nodes[i].getOutputValues().size();
+    }
+    final int[] inputValues = new int[inputValueOffsets[size]];
+    final int[] outputValues = new int[outputValueOffsets[size]];
+    final int[] marketData = new int[size];
+    for (int i = 0; i < size; i++) {
+      writeValues(nodes[i].getOutputValues(), valueIndex, values, outputValues, outputValueOffsets[i]);
+      writeValues(nodes[i].getInputValues(), valueIndex, values, inputValues, inputValueOffsets[i]);
+      final Pair<ValueRequirement, ValueSpecification> requiredMarketData = (nodes[i].getFunction() != null) ? nodes[i].getRequiredMarketData() : null;
+      marketData[i] = (requiredMarketData != null) ? intern(requiredMarketData.getSecond(), valueIndex, values) : -1;
+    }
+    final BitSet terminalOutputs = new BitSet(values.size());
+    for (ValueSpecification terminalOutput : graph.getTerminalOutputSpecifications()) {
+      final int index = valueIndex.getInt(terminalOutput);
+      if (index >= 0) {
+        terminalOutputs.set(index);
+      }
+    }
+    return new CompactDependencyGraph(graph.getCalculationConfigurationName(), null, nodes, nodeIndex, null, null, inputNodeOffsets, inputNodes, dependentNodeOffsets,
+        dependentNodes, rootNodes, values.toArray(new ValueSpecification[values.size()]), valueIndex, inputValueOffsets, inputValues, outputValueOffsets, outputValues,
+        marketData, terminalOutputs);
+  }
+
+  private static int countNodes(final Set<DependencyNode> nodes, final Object2IntMap<DependencyNode> nodeIndex) {
+    int count = 0;
+    for (DependencyNode node : nodes) {
+      if (nodeIndex.getInt(node) >= 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static void writeNodes(final Set<DependencyNode> nodes, final Object2IntMap<DependencyNode> nodeIndex, final int[] target, int offset) {
+    for (DependencyNode node : nodes) {
+      final int index = nodeIndex.getInt(node);
+      if (index >= 0) {
+        target[offset++] = index;
+      }
+    }
+  }
+
+  private static int intern(final ValueSpecification value, final Object2IntMap<ValueSpecification> valueIndex, final List<ValueSpecification> values) {
+    int index = valueIndex.getInt(value);
+    if (index < 0) {
+      index = values.size();
+      values.add(value);
+      valueIndex.put(value, index);
+    }
+    return index;
+  }
+
+  private static void writeValues(final Set<ValueSpecification> values, final Object2IntMap<ValueSpecification> valueIndex, final List<ValueSpecification> table,
+      final int[] target, int offset) {
+    for (ValueSpecification value : values) {
+      target[offset++] = intern(value, valueIndex, table);
+    }
+  }
+
+  /**
+   * Creates the compact form of a sub-graph of this graph. The nodes keep their relative order, so the sub-graph is also in a
+   * valid execution order, and the value identifiers are the same as in this graph.
+   *
+   * @param nodes the nodes from this graph to include, indexed as in this graph, not null and with no bits set beyond
+   * {@code getSize() - 1}
+   * @return the sub-graph, not null
+   */
+  public CompactDependencyGraph subGraph(final BitSet nodes) {
+    ArgumentChecker.notNull(nodes, "nodes");
+    ArgumentChecker.isTrue(nodes.length() <= getSize(), "nodes must only contain indices of nodes in this graph");
+    final int size = nodes.cardinality();
+    final DependencyNode[] subNodes = new DependencyNode[size];
+    final int[] localIndex = new int[getSize()];
+    Arrays.fill(localIndex, -1);
+    final int[] parentIndex = new int[size];
+    int count = 0;
+    for (int i = nodes.nextSetBit(0); i >= 0; i = nodes.nextSetBit(i + 1)) {
+      subNodes[count] = _nodes[i];
+      parentIndex[count] = i;
+      localIndex[i] = count++;
+    }
+    final int[] inputNodeOffsets = new int[size + 1];
+    final int[] dependentNodeOffsets = new int[size + 1];
+    final int[] inputValueOffsets = new int[size + 1];
+    final int[] outputValueOffsets = new int[size + 1];
+    for (int i = 0; i < size; i++) {
+      final int p = parentIndex[i];
+      inputNodeOffsets[i + 1] = inputNodeOffsets[i] + countLocal(_inputNodes, _inputNodeOffsets[p], _inputNodeOffsets[p + 1], localIndex);
+      dependentNodeOffsets[i + 1] = dependentNodeOffsets[i] + countLocal(_dependentNodes, _dependentNodeOffsets[p], _dependentNodeOffsets[p + 1], localIndex);
+      inputValueOffsets[i + 1] = inputValueOffsets[i] + (_inputValueOffsets[p + 1] - _inputValueOffsets[p]);
+      outputValueOffsets[i + 1] = outputValueOffsets[i] + (_outputValueOffsets[p + 1] - _outputValueOffsets[p]);
+    }
+    final int[] inputNodes = new int[inputNodeOffsets[size]];
+    final int[] dependentNodes = new int[dependentNodeOffsets[size]];
+    final int[] inputValues = new int[inputValueOffsets[size]];
+    final int[] outputValues = new int[outputValueOffsets[size]];
+    final int[] marketData = new int[size];
+    final BitSet terminalOutputs = new BitSet(_values.length);
+    int roots = 0;
+    for (int i = 0; i < size; i++) {
+      final int p = parentIndex[i];
+      writeLocal(_inputNodes, _inputNodeOffsets[p], _inputNodeOffsets[p + 1], localIndex, inputNodes, inputNodeOffsets[i]);
+      writeLocal(_dependentNodes, _dependentNodeOffsets[p], _dependentNodeOffsets[p + 1], localIndex, dependentNodes, dependentNodeOffsets[i]);
+      System.arraycopy(_inputValues, _inputValueOffsets[p], inputValues, inputValueOffsets[i], inputValueOffsets[i + 1] - inputValueOffsets[i]);
+      System.arraycopy(_outputValues, _outputValueOffsets[p], outputValues, outputValueOffsets[i], outputValueOffsets[i + 1] - outputValueOffsets[i]);
+      for (int j = outputValueOffsets[i]; j < outputValueOffsets[i + 1]; j++) {
+        if (_terminalOutputs.get(outputValues[j])) {
+          terminalOutputs.set(outputValues[j]);
+        }
+      }
+      marketData[i] = _marketData[p];
+      if (dependentNodeOffsets[i] == dependentNodeOffsets[i + 1]) {
+        roots++;
+      }
+    }
+    final int[] rootNodes = new int[roots];
+    roots = 0;
+    for (int i = 0; i < size; i++) {
+      if (dependentNodeOffsets[i] == dependentNodeOffsets[i + 1]) {
+        rootNodes[roots++] = i;
+      }
+    }
+    // Express the membership and index mapping against the base graph so that lookups only need the base's node index
+    final int baseSize = _base.getSize();
+    final int[] baseIndex = new int[baseSize];
+    final BitSet baseNodes = new BitSet(baseSize);
+    if (_baseIndex == null) {
+      System.arraycopy(localIndex, 0, baseIndex, 0, baseSize);
+    } else {
+      for (int i = 0; i < baseSize; i++) {
+        final int thisIndex = _baseIndex[i];
+        baseIndex[i] = (thisIndex >= 0) ? localIndex[thisIndex] : -1;
+      }
+    }
+    for (int i = 0; i < baseSize; i++) {
+      if (baseIndex[i] >= 0) {
+        baseNodes.set(i);
+      }
+    }
+    return new CompactDependencyGraph(_calculationConfigurationName, _base, subNodes, _nodeIndex, baseIndex, baseNodes, inputNodeOffsets, inputNodes, dependentNodeOffsets,
+        dependentNodes, rootNodes, _values, _valueIndex, inputValueOffsets, inputValues, outputValueOffsets, outputValues, marketData, terminalOutputs);
+  }
+
+  private static int countLocal(final int[] source, final int from, final int to, final int[] localIndex) {
+    int count = 0;
+    for (int i = from; i < to; i++) {
+      if (localIndex[source[i]] >= 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static void writeLocal(final int[] source, final int from, final int to, final int[] localIndex, final int[] target, int offset) {
+    for (int i = from; i < to; i++) {
+      final int index = localIndex[source[i]];
+      if (index >= 0) {
+        target[offset++] = index;
+      }
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Returns the name of the configuration this graph has been built for.
+   *
+   * @return the configuration name
+   */
+  public String getCalculationConfigurationName() {
+    return _calculationConfigurationName;
+  }
+
+  /**
+   * Returns the graph this was originally derived from. This is the graph itself unless it was created by {@link #subGraph}.
+   *
+   * @return the base graph, not null
+   */
+  public CompactDependencyGraph getBaseGraph() {
+    return _base;
+  }
+
+  /**
+   * Returns the nodes from the base graph that are included in this graph.
+   *
+   * @return the node indices, in the base graph, of the nodes in this graph, or null if this is the base graph. Do not modify.
+   */
+  public BitSet getBaseNodes() {
+    return _baseNodes;
+  }
+
+  /**
+   * Returns the number of nodes in the graph.
+   *
+   * @return the number of nodes
+   */
+  public int getSize() {
+    return _nodes.length;
+  }
+
+  /**
+   * Returns a node.
+   *
+   * @param index the index of the node, from 0 to {@code getSize() - 1}
+   * @return the node, not null
+   */
+  public DependencyNode getNode(final int index) {
+    return _nodes[index];
+  }
+
+  /**
+   * Returns the index of a node.
+   *
+   * @param node the node, not null
+   * @return the index of the node, or -1 if it is not in the graph
+   */
+  public int getNodeIndex(final DependencyNode node) {
+    final int index = _nodeIndex.getInt(node);
+    if ((index < 0) || (_baseIndex == null)) {
+      return index;
+    }
+    return _baseIndex[index];
+  }
+
+  /**
+   * Returns the nodes in an order in which they can be executed, each node appearing after all of its inputs. The index of a node
+   * is its position in this list.
+   *
+   * @return the nodes, not null
+   */
+  public List<DependencyNode> getExecutionOrder() {
+    return _executionOrder;
+  }
+
+  public int getInputNodeCount(final int node) {
+    return _inputNodeOffsets[node + 1] - _inputNodeOffsets[node];
+  }
+
+  public int getInputNode(final int node, final int n) {
+    return _inputNodes[_inputNodeOffsets[node] + n];
+  }
+
+  public int getDependentNodeCount(final int node) {
+    return _dependentNodeOffsets[node + 1] - _dependentNodeOffsets[node];
+  }
+
+  public int getDependentNode(final int node, final int n) {
+    return _dependentNodes[_dependentNodeOffsets[node] + n];
+  }
+
+  /**
+   * Returns the number of nodes that have no dependent nodes in this graph.
+   *
+   * @return the number of root nodes
+   */
+  public int getRootNodeCount() {
+    return _rootNodes.length;
+  }
+
+  public int getRootNode(final int n) {
+    return _rootNodes[n];
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Returns the size of the value table. Value identifiers are from 0 to one less than this. A sub-graph shares its table with
+   * the base graph so may not reference all of the values.
+   *
+   * @return the size of the value table
+   */
+  public int getValueCount() {
+    return _values.length;
+  }
+
+  public ValueSpecification getValue(final int id) {
+    return _values[id];
+  }
+
+  /**
+   * Returns the identifier of a value.
+   *
+   * @param value the value, not null
+   * @return the identifier, or -1 if the value is not in the table
+   */
+  public int getValueId(final ValueSpecification value) {
+    return _valueIndex.getInt(value);
+  }
+
+  public int getInputValueCount(final int node) {
+    return _inputValueOffsets[node + 1] - _inputValueOffsets[node];
+  }
+
+  public int getInputValue(final int node, final int n) {
+    return _inputValues[_inputValueOffsets[node] + n];
+  }
+
+  public int getOutputValueCount(final int node) {
+    return _outputValueOffsets[node + 1] - _outputValueOffsets[node];
+  }
+
+  public int getOutputValue(final int node, final int n) {
+    return _outputValues[_outputValueOffsets[node] + n];
+  }
+
+  /**
+   * Returns the market data value sourced by a node.
+   *
+   * @param node the node index
+   * @return the value identifier, or -1 if the node does not source market data
+   */
+  public int getMarketDataValue(final int node) {
+    return _marketData[node];
+  }
+
+  /**
+   * Returns the node sourcing a market data value.
+   *
+   * @param id the value identifier
+   * @return the node index, or -1 if the value is not market data sourced by a node in this graph
+   */
+  public int getMarketDataNode(final int id) {
+    int[] marketDataNodes = _marketDataNodes;
+    if (marketDataNodes == null) {
+      marketDataNodes = new int[_values.length];
+      Arrays.fill(marketDataNodes, -1);
+      for (int i = 0; i < _marketData.length; i++) {
+        if (_marketData[i] >= 0) {
+          marketDataNodes[_marketData[i]] = i;
+        }
+      }
+      _marketDataNodes = marketDataNodes;
+    }
+    return marketDataNodes[id];
+  }
+
+  /**
+   * Returns the weakly connected component a node belongs to. Nodes in different components share no inputs or dependents, so
+   * may be processed independently of each other.
+   *
+   * @param node the node index
+   * @return the component identifier, from 0 to {@code getComponentCount() - 1}
+   */
+  public int getComponent(final int node) {
+    return getComponents()[node];
+  }
+
+  /**
+   * Returns the number of weakly connected components in the graph.
+   *
+   * @return the number of components
+   */
+  public int getComponentCount() {
+    getComponents();
+    return _componentCount;
+  }
+
+  private int[] getComponents() {
+    int[] components = _components;
+    if (components == null) {
+      // Union-find over the input edges, then number the roots of the resulting trees
+      final int size = getSize();
+      final int[] parent = new int[size];
+      for (int i = 0; i < size; i++) {
+        parent[i] = i;
+      }
+      for (int i = 0; i < size; i++) {
+        for (int j = _inputNodeOffsets[i]; j < _inputNodeOffsets[i + 1]; j++) {
+          final int a = findRoot(parent, i);
+          final int b = findRoot(parent, _inputNodes[j]);
+          if (a != b) {
+            parent[Math.max(a, b)] = Math.min(a, b);
+          }
+        }
+      }
+      components = new int[size];
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        final int root = findRoot(parent, i);
+        if (root == i) {
+          components[i] = count++;
+        } else {
+          // The root always has a lower index so has already been numbered
+          components[i] = components[root];
+        }
+      }
+      _componentCount = count;
+      _components = components;
+    }
+    return components;
+  }
+
+  private static int findRoot(final int[] parent, int node) {
+    while (parent[node] != node) {
+      parent[node] = parent[parent[node]];
+      node = parent[node];
+    }
+    return node;
+  }
+
+  /**
+   * Tests whether a value is a terminal output of this graph.
+   *
+   * @param id the value identifier
+   * @return true if the value is a terminal output
+   */
+  public boolean isTerminalOutput(final int id) {
+    return _terminalOutputs.get(id);
+  }
+
+  @Override
+  public String toString() {
+    return "CompactDependencyGraph[calcConf=" + getCalculationConfigurationName() + ",size=" + getSize() + "]";
+  }
+
+}
@@ -9,6 +9,7 @@ import static com.opengamma.util.functional.Functional.submapByKeySet;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -64,6 +65,11 @@ public class DependencyGraph {
 
   private final Set<ComputationTargetSpecification> _allComputationTargets = new HashSet<ComputationTargetSpecification>();
 
+  /**
+   * The compact form of the graph, created on demand and discarded if the graph is modified.
+   */
+  private volatile CompactDependencyGraph _compactGraph;
+
   /**
    * Creates a new, initially empty, dependency graph for the named configuration.
    * 
@@ -246,6 +252,7 @@ public class DependencyGraph {
    */
   public void addDependencyNode(DependencyNode node) {
     ArgumentChecker.notNull(node, "Node");
+    _compactGraph = null;
     if (!_dependencyNodes.add(node)) {
       throw new IllegalStateException("Node " + node + " already in the graph");
     }
@@ -292,6 +299,7 @@ public class DependencyGraph {
     if (!_dependencyNodes.remove(node)) {
       return;
     }
+    _compactGraph = null;
     final Pair<ValueRequirement, ValueSpecification> marketData = node.getRequiredMarketData();
     if (marketData != null) {
       _allRequiredMarketData.remove(marketData);
@@ -327,6 +335,7 @@ public class DependencyGraph {
    * @param specification the output specification to mark as terminal
    */
   public void addTerminalOutput(ValueRequirement requirement, ValueSpecification specification) {
+    _compactGraph = null;
     // Register it with the node responsible for producing it - informs the node that the output is required
     final DependencyNode node = _outputValues.get(specification);
     if (node == null) {
@@ -348,6 +357,7 @@ public class DependencyGraph {
    * @param specifications the outputs to mark as terminals
    */
   public void addTerminalOutputs(Map<ValueSpecification, Set<ValueRequirement>> specifications) {
+    _compactGraph = null;
     for (ValueSpecification specification : specifications.keySet()) {
       // Register it with the node responsible for producing it - informs the node that the output is required
       final DependencyNode node = _outputValues.get(specification);
@@ -377,6 +387,7 @@ public class DependencyGraph {
    * which generate no terminal output. These nodes are also removed.
    */
   public void removeUnnecessaryValues() {
+    _compactGraph = null;
     final List<DependencyNode> unnecessaryNodes = new LinkedList<DependencyNode>();
     do {
       for (DependencyNode node : _dependencyNodes) {
@@ -415,33 +426,25 @@ public class DependencyGraph {
    * depends on B, then list [B, A] is returned (and not [A, B]).
    */
   public List<DependencyNode> getExecutionOrder() {
-    ArrayList<DependencyNode> executionOrder = new ArrayList<DependencyNode>();
-    HashSet<DependencyNode> alreadyEvaluated = new HashSet<DependencyNode>();
-
-    for (DependencyNode root : getRootNodes()) {
-      getExecutionOrder(root, executionOrder, alreadyEvaluated);
-    }
-
-    return executionOrder;
+    return new ArrayList<DependencyNode>(getCompactGraph().getExecutionOrder());
   }
 
-  private void getExecutionOrder(DependencyNode currentNode, List<DependencyNode> executionOrder, Set<DependencyNode> alreadyEvaluated) {
-    if (!containsNode(currentNode)) { // this check is necessary because of sub-graphing
-      return;
-    }
-
-    for (DependencyNode child : currentNode.getInputNodes()) {
-      getExecutionOrder(child, executionOrder, alreadyEvaluated);
-    }
-
-    if (!alreadyEvaluated.contains(currentNode)) {
-      executionOrder.add(currentNode);
-      alreadyEvaluated.add(currentNode);
+  /**
+   * Returns the compact, read-only, form of the graph. This is created on the first call and held until the graph is next
+   * modified through its own methods. Changes made directly to the nodes once they are in the graph are not detected; the
+   * graph should not be altered once it is being executed.
+   * 
+   * @return the compact form of the graph, not null
+   */
+  public CompactDependencyGraph getCompactGraph() {
+    CompactDependencyGraph compactGraph = _compactGraph;
+    if (compactGraph == null) {
+      compactGraph = CompactDependencyGraph.of(this);
+      _compactGraph = compactGraph;
     }
+    return compactGraph;
   }
 
-
-
   /**
    * Applies a filter to the graph to create a sub-graph.
    * 
@@ -450,12 +453,53 @@ public class DependencyGraph {
    */
   public DependencyGraph subGraph(DependencyNodeFilter filter) {
     DependencyGraph subGraph = new DependencyGraph(getCalculationConfigurationName());
-    for (DependencyNode node : getDependencyNodes()) {
+    final CompactDependencyGraph compactGraph = _compactGraph;
+    if (compactGraph != null) {
+      // The compact form of the sub-graph can be sliced from this one rather than built again from the nodes
+      final int size = compactGraph.getSize();
+      final BitSet included = new BitSet(size);
+      for (int i = 0; i < size; i++) {
+        final DependencyNode node = compactGraph.getNode(i);
+        if (filter.accept(node)) {
+          subGraph.addDependencyNode(node);
+          included.set(i);
+        }
+      }
+      subGraph.addTerminalOutputs(submapByKeySet(_terminalOutputs, subGraph.getOutputSpecifications()));
+      subGraph._compactGraph = compactGraph.subGraph(included);
+    } else {
+      for (DependencyNode node : getDependencyNodes()) {
+        if (filter.accept(node)) {
+          subGraph.addDependencyNode(node);
+        }
+      }
+      subGraph.addTerminalOutputs(submapByKeySet(_terminalOutputs, subGraph.getOutputSpecifications()));
+    }
+    return subGraph;
+  }
+
+  /**
+   * Applies a filter to a subset of the graph to create a sub-graph. Only the candidate nodes are presented to the filter, so this
+   * is cheaper than {@link #subGraph(DependencyNodeFilter)} when the candidates are a small part of a large graph.
+   *
+   * @param candidates the indices, in the compact form of this graph, of the nodes that may be included, not null
+   * @param filter Tells whether to include a candidate node or not
+   * @return A sub-graph consisting of the candidate nodes accepted by the filter.
+   */
+  public DependencyGraph subGraph(BitSet candidates, DependencyNodeFilter filter) {
+    ArgumentChecker.notNull(candidates, "candidates");
+    final CompactDependencyGraph compactGraph = getCompactGraph();
+    final DependencyGraph subGraph = new DependencyGraph(getCalculationConfigurationName());
+    final BitSet included = new BitSet(compactGraph.getSize());
+    for (int i = candidates.nextSetBit(0); (i >= 0) && (i < compactGraph.getSize()); i = candidates.nextSetBit(i + 1)) {
+      final DependencyNode node = compactGraph.getNode(i);
       if (filter.accept(node)) {
         subGraph.addDependencyNode(node);
+        included.set(i);
       }
     }
     subGraph.addTerminalOutputs(submapByKeySet(_terminalOutputs, subGraph.getOutputSpecifications()));
+    subGraph._compactGraph = compactGraph.subGraph(included);
     return subGraph;
   }
 
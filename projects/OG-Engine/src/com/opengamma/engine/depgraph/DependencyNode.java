@@ -165,7 +165,8 @@ public class DependencyNode {
    */
   public void addOutputValue(ValueSpecification outputValue) {
     ArgumentChecker.notNull(outputValue, "Output value");
-    _outputValues.add(outputValue);
+    // Graphs hold many equal specifications; sharing the canonical instances saves memory and makes comparisons cheaper
+    _outputValues.add(outputValue.intern());
   }
 
   /**
@@ -194,10 +195,11 @@ public class DependencyNode {
     if (!_outputValues.remove(existingOutputValue)) {
       throw new IllegalStateException("Existing output value " + existingOutputValue + " not in output set of " + this);
     }
-    _outputValues.add(newOutputValue);
+    final ValueSpecification newOutputValueInterned = newOutputValue.intern();
+    _outputValues.add(newOutputValueInterned);
     for (DependencyNode outputNode : _dependentNodes) {
       if (outputNode._inputValues.remove(existingOutputValue)) {
-        outputNode._inputValues.add(newOutputValue);
+        outputNode._inputValues.add(newOutputValueInterned);
       }
     }
   }
@@ -216,7 +218,7 @@ public class DependencyNode {
 
   public void addInputValue(ValueSpecification inputValue) {
     ArgumentChecker.notNull(inputValue, "Input value");
-    _inputValues.add(inputValue);
+    _inputValues.add(inputValue.intern());
   }
 
   /**
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.fudgemsg;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeBuilder;
+import org.fudgemsg.mapping.FudgeBuilderFor;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.fudgemsg.mapping.FudgeSerializer;
+
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
+import com.opengamma.engine.view.ColumnarViewResultModel;
+
+/**
+ * Fudge message builder for {@link ColumnarViewComputationResultModel}.
+ */
+@FudgeBuilderFor(ColumnarViewComputationResultModel.class)
+public class ColumnarViewComputationResultModelFudgeBuilder extends ColumnarViewResultModelFudgeBuilder implements FudgeBuilder<ColumnarViewComputationResultModel> {
+
+  private static final String FIELD_LIVEDATA = "liveData";
+  private static final String FIELD_SPECIFICATION_MAPPING = "specMapping";
+  private static final String FIELD_SPECIFICATION = "specification";
+  private static final String FIELD_REQUIREMENT = "requirement";
+
+  @Override
+  public MutableFudgeMsg buildMessage(FudgeSerializer serializer, ColumnarViewComputationResultModel resultModel) {
+    final MutableFudgeMsg message = createResultModelMessage(serializer, resultModel);
+
+    // Make sure that this builder is used for deserialization, and not the generic one for the interface
+    FudgeSerializer.addClassHeader(message, ColumnarViewComputationResultModel.class);
+
+    final MutableFudgeMsg liveDataMsg = serializer.newMessage();
+    for (ComputedValue value : resultModel.getAllMarketData()) {
+      serializer.addToMessage(liveDataMsg, null, 1, value);
+    }
+    message.add(FIELD_LIVEDATA, liveDataMsg);
+
+    for (Map.Entry<ValueSpecification, Set<ValueRequirement>> specMappingEntry : resultModel.getRequirementToSpecificationMapping().entrySet()) {
+      final MutableFudgeMsg mappingMsg = serializer.newMessage();
+      serializer.addToMessage(mappingMsg, FIELD_SPECIFICATION, null, specMappingEntry.getKey());
+      for (ValueRequirement requirement : specMappingEntry.getValue()) {
+        serializer.addToMessage(mappingMsg, FIELD_REQUIREMENT, null, requirement);
+      }
+      serializer.addToMessage(message, FIELD_SPECIFICATION_MAPPING, null, mappingMsg);
+    }
+    return message;
+  }
+
+  @Override
+  public ColumnarViewComputationResultModel buildObject(FudgeDeserializer deserializer, FudgeMsg message) {
+    final ColumnarViewComputationResultModel resultModel = (ColumnarViewComputationResultModel) bootstrapCommonDataFromMessage(deserializer, message);
+    for (FudgeField field : message.getFieldValue(FudgeMsg.class, message.getByName(FIELD_LIVEDATA))) {
+      resultModel.addMarketData(deserializer.fieldValueToObject(ComputedValue.class, field));
+    }
+    for (FudgeField specMappingField : message.getAllByName(FIELD_SPECIFICATION_MAPPING)) {
+      final FudgeMsg mappingMsg = (FudgeMsg) specMappingField.getValue();
+      final ValueSpecification specification = deserializer.fieldValueToObject(ValueSpecification.class, mappingMsg.getByName(FIELD_SPECIFICATION));
+      final Set<ValueRequirement> requirements = new HashSet<ValueRequirement>();
+      for (FudgeField requirementField : mappingMsg.getAllByName(FIELD_REQUIREMENT)) {
+        requirements.add(deserializer.fieldValueToObject(ValueRequirement.class, requirementField));
+      }
+      resultModel.addRequirements(requirements, specification);
+    }
+    return resultModel;
+  }
+
+  @Override
+  protected ColumnarViewResultModel constructImpl() {
+    return new ColumnarViewComputationResultModel();
+  }
+
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.fudgemsg;
+
+import javax.time.Instant;
+
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeBuilder;
+import org.fudgemsg.mapping.FudgeBuilderFor;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.fudgemsg.mapping.FudgeSerializer;
+
+import com.opengamma.engine.view.ColumnarViewDeltaResultModel;
+import com.opengamma.engine.view.ColumnarViewResultModel;
+
+/**
+ * Fudge message builder for {@link ColumnarViewDeltaResultModel}.
+ */
+@FudgeBuilderFor(ColumnarViewDeltaResultModel.class)
+public class ColumnarViewDeltaResultModelFudgeBuilder extends ColumnarViewResultModelFudgeBuilder implements FudgeBuilder<ColumnarViewDeltaResultModel> {
+
+  private static final String FIELD_PREVIOUSTS = "previousTS";
+
+  @Override
+  public MutableFudgeMsg buildMessage(FudgeSerializer serializer, ColumnarViewDeltaResultModel deltaModel) {
+    final MutableFudgeMsg message = createResultModelMessage(serializer, deltaModel);
+    // Make sure that this builder is used for deserialization, and not the generic one for the interface
+    FudgeSerializer.addClassHeader(message, ColumnarViewDeltaResultModel.class);
+    message.add(FIELD_PREVIOUSTS, deltaModel.getPreviousResultTimestamp());
+    return message;
+  }
+
+  @Override
+  public ColumnarViewDeltaResultModel buildObject(FudgeDeserializer deserializer, FudgeMsg message) {
+    final ColumnarViewDeltaResultModel deltaModel = (ColumnarViewDeltaResultModel) bootstrapCommonDataFromMessage(deserializer, message);
+    final Instant parentResultTimestamp = message.getFieldValue(Instant.class, message.getByName(FIELD_PREVIOUSTS));
+    deltaModel.setPreviousCalculationTime(parentResultTimestamp);
+    return deltaModel;
+  }
+
+  @Override
+  protected ColumnarViewResultModel constructImpl() {
+    return new ColumnarViewDeltaResultModel();
+  }
+
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.fudgemsg;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.time.Duration;
+import javax.time.Instant;
+
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.fudgemsg.mapping.FudgeSerializer;
+import org.fudgemsg.wire.types.FudgeWireType;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ColumnarViewResultModel;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.VersionCorrection;
+
+/**
+ * Base operation for {@link ColumnarViewComputationResultModelFudgeBuilder} and {@link ColumnarViewDeltaResultModelFudgeBuilder}.
+ * <p>
+ * The dictionaries are written once and the rows are written as primitive arrays of indices into them, with the
+ * scalar values as a single {@code double[]} field. Only rows holding other values need individually encoded fields.
+ */
+public abstract class ColumnarViewResultModelFudgeBuilder {
+
+  private static final String FIELD_VIEWPROCESSID = "viewProcessId";
+  private static final String FIELD_VIEWCYCLEID = "viewCycleId";
+  private static final String FIELD_VALUATION_TIME = "valuationTime";
+  private static final String FIELD_CALCULATION_TIME = "calculationTime";
+  private static final String FIELD_CALCULATION_DURATION = "calculationDuration";
+  private static final String FIELD_VERSION_CORRECTION = "versionCorrection";
+  private static final String FIELD_CONFIGURATIONS = "configurations";
+  private static final String FIELD_TARGETS = "targets";
+  private static final String FIELD_SPECIFICATIONS = "specifications";
+  private static final String FIELD_VALUE_NAME = "valueName";
+  private static final String FIELD_TARGET = "target";
+  private static final String FIELD_PROPERTIES = "properties";
+  private static final String FIELD_CONFIGURATION_COLUMN = "configurationColumn";
+  private static final String FIELD_SPECIFICATION_COLUMN = "specificationColumn";
+  private static final String FIELD_SCALAR_COLUMN = "scalarColumn";
+  private static final String FIELD_VALUE_ROWS = "valueRows";
+  private static final String FIELD_VALUES = "values";
+  private static final String FIELD_NULL_ROWS = "nullRows";
+  private static final String FIELD_DETAIL_ROWS = "detailRows";
+  private static final String FIELD_DETAILS = "details";
+
+  protected static MutableFudgeMsg createResultModelMessage(final FudgeSerializer serializer, final ColumnarViewResultModel resultModel) {
+    final MutableFudgeMsg message = serializer.newMessage();
+    message.add(FIELD_VIEWPROCESSID, resultModel.getViewProcessId());
+    message.add(FIELD_VIEWCYCLEID, resultModel.getViewCycleId());
+    message.add(FIELD_VALUATION_TIME, resultModel.getValuationTime());
+    message.add(FIELD_CALCULATION_TIME, resultModel.getCalculationTime());
+    serializer.addToMessage(message, FIELD_CALCULATION_DURATION, null, resultModel.getCalculationDuration());
+    serializer.addToMessage(message, FIELD_VERSION_CORRECTION, null, resultModel.getVersionCorrection());
+    // Dictionaries
+    final MutableFudgeMsg configurationsMsg = serializer.newMessage();
+    for (String configuration : resultModel.getConfigurationDictionary()) {
+      configurationsMsg.add(null, null, FudgeWireType.STRING, configuration);
+    }
+    message.add(FIELD_CONFIGURATIONS, configurationsMsg);
+    final List<ComputationTargetSpecification> targets = new ArrayList<ComputationTargetSpecification>();
+    final Object2IntMap<ComputationTargetSpecification> targetIndex = new Object2IntOpenHashMap<ComputationTargetSpecification>();
+    targetIndex.defaultReturnValue(-1);
+    final MutableFudgeMsg specificationsMsg = serializer.newMessage();
+    for (ValueSpecification specification : resultModel.getSpecificationDictionary()) {
+      final MutableFudgeMsg specificationMsg = serializer.newMessage();
+      specificationMsg.add(FIELD_VALUE_NAME, null, FudgeWireType.STRING, specification.getValueName());
+      int target = targetIndex.getInt(specification.getTargetSpecification());
+      if (target < 0) {
+        target = targets.size();
+        targets.add(specification.getTargetSpecification());
+        targetIndex.put(specification.getTargetSpecification(), target);
+      }
+      specificationMsg.add(FIELD_TARGET, target);
+      serializer.addToMessage(specificationMsg, FIELD_PROPERTIES, null, specification.getProperties());
+      specificationsMsg.add(null, null, specificationMsg);
+    }
+    final MutableFudgeMsg targetsMsg = serializer.newMessage();
+    for (ComputationTargetSpecification target : targets) {
+      final MutableFudgeMsg targetMsg = serializer.newMessage();
+      ComputationTargetSpecificationFudgeBuilder.buildMessageImpl(targetMsg, target);
+      targetsMsg.add(null, null, targetMsg);
+    }
+    message.add(FIELD_TARGETS, targetsMsg);
+    message.add(FIELD_SPECIFICATIONS, specificationsMsg);
+    // Columns
+    final int rows = resultModel.getRowCount();
+    message.add(FIELD_CONFIGURATION_COLUMN, resultModel.getConfigurationColumn());
+    message.add(FIELD_SPECIFICATION_COLUMN, resultModel.getSpecificationColumn());
+    message.add(FIELD_SCALAR_COLUMN, resultModel.getScalarColumn());
+    final IntArrayList valueRows = new IntArrayList();
+    final IntArrayList nullRows = new IntArrayList();
+    final IntArrayList detailRows = new IntArrayList();
+    final MutableFudgeMsg valuesMsg = serializer.newMessage();
+    final MutableFudgeMsg detailsMsg = serializer.newMessage();
+    for (int row = 0; row < rows; row++) {
+      if (resultModel.isDetailed(row)) {
+        detailRows.add(row);
+        serializer.addToMessage(detailsMsg, null, null, resultModel.getComputedValue(row));
+      } else if (!resultModel.isScalar(row)) {
+        final Object value = resultModel.getComputedValue(row).getValue();
+        if (value != null) {
+          valueRows.add(row);
+          serializer.addToMessageWithClassHeaders(valuesMsg, null, null, value);
+        } else {
+          // No field is written for a null value, so the row must be recorded separately
+          nullRows.add(row);
+        }
+      }
+    }
+    message.add(FIELD_VALUE_ROWS, valueRows.toIntArray());
+    message.add(FIELD_VALUES, valuesMsg);
+    if (!nullRows.isEmpty()) {
+      message.add(FIELD_NULL_ROWS, nullRows.toIntArray());
+    }
+    message.add(FIELD_DETAIL_ROWS, detailRows.toIntArray());
+    message.add(FIELD_DETAILS, detailsMsg);
+    return message;
+  }
+
+  protected ColumnarViewResultModel bootstrapCommonDataFromMessage(final FudgeDeserializer deserializer, final FudgeMsg message) {
+    final ColumnarViewResultModel resultModel = constructImpl();
+    resultModel.setViewProcessId(message.getValue(UniqueId.class, FIELD_VIEWPROCESSID));
+    resultModel.setViewCycleId(message.getValue(UniqueId.class, FIELD_VIEWCYCLEID));
+    resultModel.setValuationTime(message.getFieldValue(Instant.class, message.getByName(FIELD_VALUATION_TIME)));
+    resultModel.setCalculationTime(message.getFieldValue(Instant.class, message.getByName(FIELD_CALCULATION_TIME)));
+    final FudgeField durationField = message.getByName(FIELD_CALCULATION_DURATION);
+    resultModel.setCalculationDuration(durationField != null ? deserializer.fieldValueToObject(Duration.class, durationField) : null);
+    resultModel.setVersionCorrection(deserializer.fieldValueToObject(VersionCorrection.class, message.getByName(FIELD_VERSION_CORRECTION)));
+    // Dictionaries
+    final List<String> configurations = new ArrayList<String>();
+    for (FudgeField field : message.getMessage(FIELD_CONFIGURATIONS)) {
+      configurations.add((String) field.getValue());
+    }
+    final List<ComputationTargetSpecification> targets = new ArrayList<ComputationTargetSpecification>();
+    for (FudgeField field : message.getMessage(FIELD_TARGETS)) {
+      targets.add(ComputationTargetSpecificationFudgeBuilder.buildObjectImpl(deserializer, (FudgeMsg) field.getValue()));
+    }
+    final List<ValueSpecification> specifications = new ArrayList<ValueSpecification>();
+    for (FudgeField field : message.getMessage(FIELD_SPECIFICATIONS)) {
+      final FudgeMsg specificationMsg = (FudgeMsg) field.getValue();
+      final String valueName = specificationMsg.getString(FIELD_VALUE_NAME);
+      final ComputationTargetSpecification target = targets.get(specificationMsg.getInt(FIELD_TARGET));
+      final ValueProperties properties = deserializer.fieldValueToObject(ValueProperties.class, specificationMsg.getByName(FIELD_PROPERTIES));
+      specifications.add(new ValueSpecification(valueName, target, properties));
+    }
+    resultModel.addDictionaries(configurations, specifications);
+    // Columns
+    final int[] configurationColumn = message.getValue(int[].class, FIELD_CONFIGURATION_COLUMN);
+    final int[] specificationColumn = message.getValue(int[].class, FIELD_SPECIFICATION_COLUMN);
+    final double[] scalarColumn = message.getValue(double[].class, FIELD_SCALAR_COLUMN);
+    final Object[] valueColumn = new Object[configurationColumn.length];
+    final int[] valueRows = message.getValue(int[].class, FIELD_VALUE_ROWS);
+    int i = 0;
+    for (FudgeField field : message.getMessage(FIELD_VALUES)) {
+      valueColumn[valueRows[i++]] = deserializer.fieldValueToObject(field);
+    }
+    resultModel.addRows(configurationColumn, specificationColumn, scalarColumn, valueColumn);
+    final int[] nullRows = message.getValue(int[].class, FIELD_NULL_ROWS);
+    if (nullRows != null) {
+      for (int row : nullRows) {
+        resultModel.addValue(configurations.get(configurationColumn[row]), new ComputedValue(specifications.get(specificationColumn[row]), null));
+      }
+    }
+    final int[] detailRows = message.getValue(int[].class, FIELD_DETAIL_ROWS);
+    i = 0;
+    for (FudgeField field : message.getMessage(FIELD_DETAILS)) {
+      resultModel.addValue(configurations.get(configurationColumn[detailRows[i++]]), deserializer.fieldValueToObject(ComputedValue.class, field));
+    }
+    return resultModel;
+  }
+
+  protected abstract ColumnarViewResultModel constructImpl();
+
+}
@@ -37,6 +37,7 @@ public class ExecutionOptionsFudgeBuilder implements FudgeBuilder<ExecutionOptio
   private static final String COMPILE_ONLY_FIELD = "compileOnly";
   private static final String WAIT_FOR_INITIAL_TRIGGER_FIELD = "waitForInitialTrigger";
   private static final String MAX_SUCCESSIVE_DELTA_CYCLES_FIELD = "maxSuccessiveDeltaCycles";
+  private static final String MAX_CONCURRENT_CYCLES_FIELD = "maxConcurrentCycles";
   private static final String DEFAULT_EXECUTION_OPTIONS_FIELD = "defaultExecutionOptions";
   private static final String VERSION_CORRECTION_FIELD = "versionCorrection";
   private static final String BATCH_FIELD = "batch";
@@ -55,6 +56,9 @@ public class ExecutionOptionsFudgeBuilder implements FudgeBuilder<ExecutionOptio
     if (object.getMaxSuccessiveDeltaCycles() != null) {
       msg.add(MAX_SUCCESSIVE_DELTA_CYCLES_FIELD, object.getMaxSuccessiveDeltaCycles());
     }
+    if (object.getMaxConcurrentCycles() != null) {
+      msg.add(MAX_CONCURRENT_CYCLES_FIELD, object.getMaxConcurrentCycles());
+    }
     serializer.addToMessage(msg, DEFAULT_EXECUTION_OPTIONS_FIELD, null, object.getDefaultExecutionOptions());
     serializer.addToMessage(msg, VERSION_CORRECTION_FIELD, null, object.getVersionCorrection());
     return msg;
@@ -89,6 +93,10 @@ public class ExecutionOptionsFudgeBuilder implements FudgeBuilder<ExecutionOptio
     if (message.hasField(MAX_SUCCESSIVE_DELTA_CYCLES_FIELD)) {
       maxSuccessiveDeltaCycles = message.getInt(MAX_SUCCESSIVE_DELTA_CYCLES_FIELD);
     }
+    Integer maxConcurrentCycles = null;
+    if (message.hasField(MAX_CONCURRENT_CYCLES_FIELD)) {
+      maxConcurrentCycles = message.getInt(MAX_CONCURRENT_CYCLES_FIELD);
+    }
 
     FudgeField defaultExecutionOptionsField = message.getByName(DEFAULT_EXECUTION_OPTIONS_FIELD);
     ViewCycleExecutionOptions defaultExecutionOptions = defaultExecutionOptionsField != null ?
@@ -97,7 +105,7 @@ public class ExecutionOptionsFudgeBuilder implements FudgeBuilder<ExecutionOptio
     FudgeField versionCorrectionField = message.getByName(VERSION_CORRECTION_FIELD);
     VersionCorrection versionCorrection = deserializer.fieldValueToObject(VersionCorrection.class, versionCorrectionField);
 
-    return new ExecutionOptions(executionSequence, flags, maxSuccessiveDeltaCycles, defaultExecutionOptions, versionCorrection);
+    return new ExecutionOptions(executionSequence, flags, maxSuccessiveDeltaCycles, maxConcurrentCycles, defaultExecutionOptions, versionCorrection);
   }
 
 }
@@ -53,7 +53,7 @@ public class ValueSpecificationFudgeBuilder implements FudgeBuilder<ValueSpecifi
     fudgeField = message.getByName(PROPERTIES_KEY);
     Validate.notNull(fudgeField, "Fudge message is not a ValueSpecification - field '" + PROPERTIES_KEY + "' is not present");
     final ValueProperties properties = deserializer.fieldValueToObject(ValueProperties.class, fudgeField);
-    return new ValueSpecification(valueName, targetSpecification, properties);
+    return new ValueSpecification(valueName, targetSpecification, properties).intern();
   }
 
 }
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.function;
+
+import com.opengamma.util.PublicSPI;
+
+/**
+ * A {@link FunctionInvoker} whose results may be reused by a calculation node. An invoker should only implement this if
+ * executing it again with equal inputs, target, parameters and desired values would always produce equal results, and if
+ * the invocation is expensive enough for it to be worth comparing the inputs to those of earlier invocations.
+ * <p>
+ * Anything else in the execution context that the results depend on, for example the valuation time, must be reported
+ * by {@link #getExecutionContextKey} so that it can form part of the comparison. A function reporting the valuation time
+ * will only have its results reused for the same valuation time, which in a live view means within a single cycle.
+ */
+@PublicSPI
+public interface CacheableFunctionInvoker extends FunctionInvoker {
+
+  /**
+   * Returns the state of the execution context that the results of an invocation depend on, other than the function
+   * parameters. For example a function that uses the valuation clock would return the valuation time.
+   *
+   * @param executionContext the execution context of the invocation
+   * @return a value with suitable {@link Object#equals} and {@link Object#hashCode} methods, or null if the results
+   *         do not depend on the execution context
+   */
+  Object getExecutionContextKey(FunctionExecutionContext executionContext);
+
+}
@@ -38,6 +38,10 @@ public interface GraphExecutionStatisticsMBean {
 
   Long getProcessedJobDataCost();
 
+  Long getPredictedTime();
+
+  Double getActualToPredictedRatio();
+
   String getLastProcessedTime();
 
   String getLastExecutedTime();
@@ -55,11 +55,20 @@ public class HistoricalMarketDataProvider extends AbstractHistoricalMarketDataPr
   @Override
   public MarketDataSnapshot snapshot(MarketDataSpecification marketDataSpec) {
     FixedHistoricalMarketDataSpecification historicalSpec = (FixedHistoricalMarketDataSpecification) marketDataSpec;
-    // TODO something better thought-out here
-    //Instant snapshotInstant = historicalSpec.getSnapshotDate().atMidnight().atZone(TimeZone.UTC).toInstant();
-    Instant snapshotInstant = historicalSpec.getSnapshotDate().atTime(16, 0).atZone(TimeZone.UTC).toInstant();
     LocalDate snapshotDate = historicalSpec.getSnapshotDate();
-    return new HistoricalMarketDataSnapshot(getTimeSeriesSource(), snapshotInstant, snapshotDate, historicalSpec.getTimeSeriesFieldResolverKey(), this);
+    return new HistoricalMarketDataSnapshot(getTimeSeriesSource(), getSnapshotInstant(snapshotDate), snapshotDate, historicalSpec.getTimeSeriesFieldResolverKey(), this);
+  }
+
+  /**
+   * Gets the instant to report to the engine for a snapshot of a given date.
+   * 
+   * @param snapshotDate  the snapshot date, not null
+   * @return the snapshot instant, not null
+   */
+  protected Instant getSnapshotInstant(final LocalDate snapshotDate) {
+    // TODO something better thought-out here
+    //return snapshotDate.atMidnight().atZone(TimeZone.UTC).toInstant();
+    return snapshotDate.atTime(16, 0).atZone(TimeZone.UTC).toInstant();
   }
   
 }
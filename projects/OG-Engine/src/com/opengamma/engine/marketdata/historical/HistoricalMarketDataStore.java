@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.marketdata.historical;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import javax.time.calendar.LocalDate;
+
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.timeseries.localdate.LocalDateDoubleTimeSeries;
+
+/**
+ * An immutable, column oriented store of historical market data for a range of dates.
+ * <p>
+ * The dates on which any of the held time-series has a value form a sorted axis, and each requirement has a column of
+ * primitive values along it with missing values held as NaN. A snapshot for one day can locate its date once and then
+ * read each value directly from the columns.
+ */
+public final class HistoricalMarketDataStore {
+
+  private static final LocalDate[] NO_DATES = new LocalDate[0];
+  private static final double[][] NO_COLUMNS = new double[0][];
+
+  private final LocalDate _startDate;
+  private final LocalDate _endDate;
+  private final LocalDate[] _dates;
+  private final Object2IntMap<ValueRequirement> _columnIndex;
+  private final double[][] _columns;
+
+  /**
+   * Creates an empty store for a range of dates.
+   *
+   * @param startDate  the first date of the range, inclusive, not null
+   * @param endDate  the last date of the range, inclusive, not null
+   */
+  public HistoricalMarketDataStore(final LocalDate startDate, final LocalDate endDate) {
+    this(startDate, endDate, NO_DATES, new Object2IntOpenHashMap<ValueRequirement>(), NO_COLUMNS);
+    ArgumentChecker.notNull(startDate, "startDate");
+    ArgumentChecker.notNull(endDate, "endDate");
+    ArgumentChecker.isTrue(!endDate.isBefore(startDate), "endDate must not be before startDate");
+  }
+
+  private HistoricalMarketDataStore(final LocalDate startDate, final LocalDate endDate, final LocalDate[] dates, final Object2IntMap<ValueRequirement> columnIndex,
+      final double[][] columns) {
+    columnIndex.defaultReturnValue(-1);
+    _startDate = startDate;
+    _endDate = endDate;
+    _dates = dates;
+    _columnIndex = columnIndex;
+    _columns = columns;
+  }
+
+  /**
+   * Returns a store containing the values from this one and the given time-series. Any time-series for a requirement
+   * already held replaces the earlier one. Points outside of the date range are ignored.
+   *
+   * @param timeSeries  the time-series to add, keyed by requirement, with null values for requirements that have no data, not null
+   * @return the new store, not null
+   */
+  public HistoricalMarketDataStore with(final Map<ValueRequirement, LocalDateDoubleTimeSeries> timeSeries) {
+    ArgumentChecker.notNull(timeSeries, "timeSeries");
+    final SortedSet<LocalDate> dateSet = new TreeSet<LocalDate>(Arrays.asList(_dates));
+    for (LocalDateDoubleTimeSeries series : timeSeries.values()) {
+      if (series != null) {
+        for (int i = 0; i < series.size(); i++) {
+          final LocalDate date = series.getTimeAt(i);
+          if (covers(date)) {
+            dateSet.add(date);
+          }
+        }
+      }
+    }
+    final LocalDate[] dates = dateSet.toArray(new LocalDate[dateSet.size()]);
+    final Object2IntMap<ValueRequirement> columnIndex = new Object2IntOpenHashMap<ValueRequirement>(_columnIndex);
+    for (ValueRequirement requirement : timeSeries.keySet()) {
+      if (!columnIndex.containsKey(requirement)) {
+        columnIndex.put(requirement, columnIndex.size());
+      }
+    }
+    final double[][] columns = new double[columnIndex.size()][];
+    for (int i = 0; i < _columns.length; i++) {
+      if (dates.length == _dates.length) {
+        // No new dates, so the existing column can be shared
+        columns[i] = _columns[i];
+      } else {
+        final double[] column = new double[dates.length];
+        Arrays.fill(column, Double.NaN);
+        for (int j = 0; j < _dates.length; j++) {
+          column[Arrays.binarySearch(dates, _dates[j])] = _columns[i][j];
+        }
+        columns[i] = column;
+      }
+    }
+    for (Map.Entry<ValueRequirement, LocalDateDoubleTimeSeries> entry : timeSeries.entrySet()) {
+      final double[] column = new double[dates.length];
+      Arrays.fill(column, Double.NaN);
+      final LocalDateDoubleTimeSeries series = entry.getValue();
+      if (series != null) {
+        for (int i = 0; i < series.size(); i++) {
+          final LocalDate date = series.getTimeAt(i);
+          if (covers(date)) {
+            column[Arrays.binarySearch(dates, date)] = series.getValueAt(i);
+          }
+        }
+      }
+      columns[columnIndex.getInt(entry.getKey())] = column;
+    }
+    return new HistoricalMarketDataStore(_startDate, _endDate, dates, columnIndex, columns);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the first date of the range held.
+   *
+   * @return the start date, not null
+   */
+  public LocalDate getStartDate() {
+    return _startDate;
+  }
+
+  /**
+   * Gets the last date of the range held.
+   *
+   * @return the end date, not null
+   */
+  public LocalDate getEndDate() {
+    return _endDate;
+  }
+
+  /**
+   * Tests whether a date falls within the range held.
+   *
+   * @param date  the date, not null
+   * @return true if the date is in the range
+   */
+  public boolean covers(final LocalDate date) {
+    return !date.isBefore(_startDate) && !date.isAfter(_endDate);
+  }
+
+  /**
+   * Gets the number of requirements held.
+   *
+   * @return the number of columns
+   */
+  public int getColumnCount() {
+    return _columns.length;
+  }
+
+  /**
+   * Gets the number of dates on which any value is held.
+   *
+   * @return the number of dates
+   */
+  public int getDateCount() {
+    return _dates.length;
+  }
+
+  /**
+   * Gets the column holding the values for a requirement.
+   *
+   * @param requirement  the requirement, not null
+   * @return the column index, or -1 if the requirement has not been loaded
+   */
+  public int getColumn(final ValueRequirement requirement) {
+    return _columnIndex.getInt(requirement);
+  }
+
+  /**
+   * Gets the position of a date on the date axis.
+   *
+   * @param date  the date, not null
+   * @return the date index, or -1 if no values are held for the date
+   */
+  public int getDateIndex(final LocalDate date) {
+    final int index = Arrays.binarySearch(_dates, date);
+    return (index >= 0) ? index : -1;
+  }
+
+  /**
+   * Gets a value.
+   *
+   * @param column  the column index, from {@link #getColumn}
+   * @param dateIndex  the date index, from {@link #getDateIndex}
+   * @return the value, NaN if there is none
+   */
+  public double getValue(final int column, final int dateIndex) {
+    return _columns[column][dateIndex];
+  }
+
+}
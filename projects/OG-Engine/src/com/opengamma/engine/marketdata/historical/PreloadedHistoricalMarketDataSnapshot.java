@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.marketdata.historical;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.time.Instant;
+import javax.time.calendar.LocalDate;
+
+import com.opengamma.core.historicaltimeseries.HistoricalTimeSeriesSource;
+import com.opengamma.engine.value.ValueRequirement;
+
+/**
+ * A {@link HistoricalMarketDataSnapshot} which serves values from the store of a {@link PreloadingHistoricalMarketDataProvider}.
+ * Requirements that were not preloaded are looked up individually from the time-series source.
+ */
+public class PreloadedHistoricalMarketDataSnapshot extends HistoricalMarketDataSnapshot {
+
+  private final PreloadingHistoricalMarketDataProvider _provider;
+  private final LocalDate _snapshotDate;
+  private volatile HistoricalMarketDataStore _store;
+  private volatile int _dateIndex;
+
+  /**
+   * Creates a market data snapshot based on preloaded historical time-series data.
+   *
+   * @param timeSeriesSource  the time-series source, not null
+   * @param snapshotInstant  the snapshot instant to report to the engine, not null
+   * @param snapshotDate  the date of the required value, not null
+   * @param timeSeriesFieldResolverKey  the time series field resolver key, null for default
+   * @param provider  the provider holding the preloaded data, not null
+   */
+  public PreloadedHistoricalMarketDataSnapshot(final HistoricalTimeSeriesSource timeSeriesSource, final Instant snapshotInstant, final LocalDate snapshotDate,
+      final String timeSeriesFieldResolverKey, final PreloadingHistoricalMarketDataProvider provider) {
+    super(timeSeriesSource, snapshotInstant, snapshotDate, timeSeriesFieldResolverKey, provider);
+    _provider = provider;
+    _snapshotDate = snapshotDate;
+  }
+
+  @Override
+  public void init() {
+    super.init();
+    initStore();
+  }
+
+  @Override
+  public void init(final Set<ValueRequirement> valuesRequired, final long timeout, final TimeUnit unit) {
+    super.init(valuesRequired, timeout, unit);
+    initStore();
+  }
+
+  private void initStore() {
+    // The subscriptions, and so the preloading, for the requirements of the cycle have been made by the time it initializes its snapshot
+    final HistoricalMarketDataStore store = _provider.getStore();
+    _dateIndex = store.getDateIndex(_snapshotDate);
+    _store = store;
+  }
+
+  @Override
+  public Object query(final ValueRequirement requirement) {
+    final HistoricalMarketDataStore store = _store;
+    if (store != null) {
+      final int column = store.getColumn(requirement);
+      if (column >= 0) {
+        final int dateIndex = _dateIndex;
+        if (dateIndex < 0) {
+          return null;
+        }
+        final double value = store.getValue(column, dateIndex);
+        return Double.isNaN(value) ? null : value;
+      }
+    }
+    return super.query(requirement);
+  }
+
+}
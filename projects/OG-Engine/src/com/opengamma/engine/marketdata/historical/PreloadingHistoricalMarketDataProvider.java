@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.marketdata.historical;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.time.calendar.LocalDate;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.core.historicaltimeseries.HistoricalTimeSeries;
+import com.opengamma.core.historicaltimeseries.HistoricalTimeSeriesSource;
+import com.opengamma.core.security.SecuritySource;
+import com.opengamma.engine.marketdata.MarketDataSnapshot;
+import com.opengamma.engine.marketdata.spec.FixedHistoricalMarketDataSpecification;
+import com.opengamma.engine.marketdata.spec.MarketDataSpecification;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.id.ExternalIdBundle;
+import com.opengamma.livedata.UserPrincipal;
+import com.opengamma.util.monitor.OperationTimer;
+import com.opengamma.util.timeseries.localdate.LocalDateDoubleTimeSeries;
+
+/**
+ * Historical market data provider for running a view over a range of dates, such as a backtest.
+ * <p>
+ * Each requirement subscribed to, or explicitly preloaded, is fetched from the time-series source once for the whole
+ * date range and held in a {@link HistoricalMarketDataStore}. Snapshots for dates within the range then read their
+ * values from the store instead of querying the source for every requirement on every date.
+ * <p>
+ * A snapshot that queries the source directly resolves the identifiers and field against its own snapshot date. The
+ * preloaded time-series are resolved once, as of the end of the range, so a requirement is only held in the store if it
+ * resolves to the same time-series at the start of the range as well. Requirements whose resolution changes within the
+ * range, for example because a ticker was reassigned, are left to be queried individually for each date. A resolution
+ * that changes and then changes back within the range is not detected.
+ */
+public class PreloadingHistoricalMarketDataProvider extends HistoricalMarketDataProvider {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(PreloadingHistoricalMarketDataProvider.class);
+
+  private final Object _loadLock = new Object();
+  private volatile HistoricalMarketDataStore _store;
+
+  /**
+   * Creates an instance.
+   *
+   * @param historicalTimeSeriesSource  the underlying source of historical data, not null
+   * @param securitySource  the source of securities, not null
+   * @param timeSeriesResolverKey  the source resolver key, or null to use the source default
+   * @param fieldResolverKey  the field name resolver resolution key, or null to use the resolver default
+   * @param startDate  the first date to preload, inclusive, not null
+   * @param endDate  the last date to preload, inclusive, not null
+   */
+  public PreloadingHistoricalMarketDataProvider(final HistoricalTimeSeriesSource historicalTimeSeriesSource, final SecuritySource securitySource,
+      final String timeSeriesResolverKey, final String fieldResolverKey, final LocalDate startDate, final LocalDate endDate) {
+    super(historicalTimeSeriesSource, securitySource, timeSeriesResolverKey, fieldResolverKey);
+    _store = new HistoricalMarketDataStore(startDate, endDate);
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public void subscribe(final UserPrincipal user, final Set<ValueRequirement> valueRequirements) {
+    super.subscribe(user, valueRequirements);
+    preload(valueRequirements);
+  }
+
+  /**
+   * Loads the values of any of the requirements that are not already held for the whole date range. The market data
+   * requirements of a compiled view definition can be passed in advance of executing it over the range.
+   *
+   * @param requirements  the requirements, not null
+   */
+  public void preload(final Collection<ValueRequirement> requirements) {
+    synchronized (_loadLock) {
+      final HistoricalMarketDataStore store = _store;
+      final Map<ValueRequirement, LocalDateDoubleTimeSeries> timeSeries = new HashMap<ValueRequirement, LocalDateDoubleTimeSeries>();
+      for (ValueRequirement requirement : requirements) {
+        if ((store.getColumn(requirement) < 0) && !timeSeries.containsKey(requirement)) {
+          timeSeries.put(requirement, null);
+        }
+      }
+      if (timeSeries.isEmpty()) {
+        return;
+      }
+      final Collection<ValueRequirement> unresolved = new ArrayList<ValueRequirement>();
+      final OperationTimer timer = new OperationTimer(s_logger, "Preloading {} time-series from {} to {}", timeSeries.size(), store.getStartDate(), store.getEndDate());
+      for (Map.Entry<ValueRequirement, LocalDateDoubleTimeSeries> entry : timeSeries.entrySet()) {
+        final ValueRequirement requirement = entry.getKey();
+        final ExternalIdBundle identifiers = getExternalIdBundle(requirement);
+        if (identifiers == null) {
+          s_logger.warn("Unable to resolve requirement {} to an external ID bundle", requirement);
+          continue;
+        }
+        final HistoricalTimeSeries hts = getTimeSeriesSource().getHistoricalTimeSeries(requirement.getValueName(), identifiers, store.getEndDate(),
+            getTimeSeriesFieldResolverKey(), store.getStartDate(), true, store.getEndDate(), true);
+        if (hts == null) {
+          s_logger.info("No time-series for {}, {}", identifiers, requirement.getValueName());
+          continue;
+        }
+        if (!isResolvedAtStart(requirement, identifiers, hts, store)) {
+          s_logger.info("Time-series for {}, {} changes within the range; not preloading", identifiers, requirement.getValueName());
+          unresolved.add(requirement);
+          continue;
+        }
+        entry.setValue(hts.getTimeSeries());
+      }
+      timeSeries.keySet().removeAll(unresolved);
+      _store = store.with(timeSeries);
+      timer.finished();
+    }
+  }
+
+  /**
+   * Tests whether a requirement resolves, at the start of the range, to the same time-series that was loaded as of the
+   * end of the range.
+   */
+  private boolean isResolvedAtStart(final ValueRequirement requirement, final ExternalIdBundle identifiers, final HistoricalTimeSeries resolvedAtEnd,
+      final HistoricalMarketDataStore store) {
+    if (store.getStartDate().equals(store.getEndDate())) {
+      return true;
+    }
+    final HistoricalTimeSeries resolvedAtStart = getTimeSeriesSource().getHistoricalTimeSeries(requirement.getValueName(), identifiers, store.getStartDate(),
+        getTimeSeriesFieldResolverKey(), store.getStartDate(), true, store.getStartDate(), true);
+    return (resolvedAtStart != null) && resolvedAtStart.getUniqueId().getObjectId().equals(resolvedAtEnd.getUniqueId().getObjectId());
+  }
+
+  /**
+   * Gets the preloaded data.
+   *
+   * @return the store, not null
+   */
+  public HistoricalMarketDataStore getStore() {
+    return _store;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public MarketDataSnapshot snapshot(final MarketDataSpecification marketDataSpec) {
+    final FixedHistoricalMarketDataSpecification historicalSpec = (FixedHistoricalMarketDataSpecification) marketDataSpec;
+    final LocalDate snapshotDate = historicalSpec.getSnapshotDate();
+    if (!getStore().covers(snapshotDate)) {
+      s_logger.debug("Snapshot date {} is outside of the preloaded range", snapshotDate);
+      return super.snapshot(marketDataSpec);
+    }
+    if (!ObjectUtils.equals(getTimeSeriesFieldResolverKey(), historicalSpec.getTimeSeriesFieldResolverKey())) {
+      s_logger.debug("Snapshot field resolver key {} differs from the preloaded data", historicalSpec.getTimeSeriesFieldResolverKey());
+      return super.snapshot(marketDataSpec);
+    }
+    return new PreloadedHistoricalMarketDataSnapshot(getTimeSeriesSource(), getSnapshotInstant(snapshotDate), snapshotDate, historicalSpec.getTimeSeriesFieldResolverKey(), this);
+  }
+
+}
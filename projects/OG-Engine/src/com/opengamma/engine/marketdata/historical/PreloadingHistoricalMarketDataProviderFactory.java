@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.marketdata.historical;
+
+import javax.time.calendar.LocalDate;
+
+import com.opengamma.core.historicaltimeseries.HistoricalTimeSeriesSource;
+import com.opengamma.core.security.SecuritySource;
+import com.opengamma.engine.marketdata.MarketDataProvider;
+import com.opengamma.engine.marketdata.MarketDataProviderFactory;
+import com.opengamma.engine.marketdata.spec.HistoricalMarketDataSpecification;
+import com.opengamma.engine.marketdata.spec.MarketDataSpecification;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * A factory for {@link PreloadingHistoricalMarketDataProvider} instances covering a fixed range of dates.
+ */
+public class PreloadingHistoricalMarketDataProviderFactory implements MarketDataProviderFactory {
+
+  private final HistoricalTimeSeriesSource _timeSeriesSource;
+  private final SecuritySource _securitySource;
+  private final LocalDate _startDate;
+  private final LocalDate _endDate;
+
+  public PreloadingHistoricalMarketDataProviderFactory(final HistoricalTimeSeriesSource timeSeriesSource, final SecuritySource securitySource,
+      final LocalDate startDate, final LocalDate endDate) {
+    ArgumentChecker.notNull(timeSeriesSource, "timeSeriesSource");
+    ArgumentChecker.notNull(securitySource, "securitySource");
+    ArgumentChecker.notNull(startDate, "startDate");
+    ArgumentChecker.notNull(endDate, "endDate");
+    _timeSeriesSource = timeSeriesSource;
+    _securitySource = securitySource;
+    _startDate = startDate;
+    _endDate = endDate;
+  }
+
+  @Override
+  public MarketDataProvider create(MarketDataSpecification marketDataSpec) {
+    HistoricalMarketDataSpecification historicalMarketDataSpec = (HistoricalMarketDataSpecification) marketDataSpec;
+    return new PreloadingHistoricalMarketDataProvider(getTimeSeriesSource(), getSecuritySource(), historicalMarketDataSpec.getTimeSeriesResolverKey(),
+        historicalMarketDataSpec.getTimeSeriesFieldResolverKey(), getStartDate(), getEndDate());
+  }
+
+  private HistoricalTimeSeriesSource getTimeSeriesSource() {
+    return _timeSeriesSource;
+  }
+
+  private SecuritySource getSecuritySource() {
+    return _securitySource;
+  }
+
+  public LocalDate getStartDate() {
+    return _startDate;
+  }
+
+  public LocalDate getEndDate() {
+    return _endDate;
+  }
+
+}
@@ -5,6 +5,9 @@
  */
 package com.opengamma.engine.value;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -14,13 +17,15 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.PublicAPI;
@@ -122,6 +127,11 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
   }
 
   private static final class BuilderImpl implements Builder {
+    /**
+     * The canonical property values. Names come from a small fixed vocabulary and are interned with value names, but values
+     * such as trade identifiers are unbounded so are only held while in use.
+     */
+    private static final Interner<String> s_propertyValues = Interners.newWeakInterner();
     /**
      * The required properties.
      */
@@ -141,19 +151,24 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
     /**
      * Creates an instance.
      * 
-     * @param properties  the required properties, not null
+     * @param names  the sorted property names, not null
+     * @param values  the property values, not null
      * @param optional  the optional properties, not null
      */
-    private BuilderImpl(final Map<String, Set<String>> properties, final Set<String> optional) {
-      _properties = new HashMap<String, Set<String>>(properties);
-      _optional = (optional != null) ? new HashSet<String>(optional) : null;
+    private BuilderImpl(final String[] names, final Set<String>[] values, final Set<String> optional) {
+      _properties = Maps.newHashMapWithExpectedSize(names.length);
+      for (int i = 0; i < names.length; i++) {
+        _properties.put(names[i], values[i]);
+      }
+      _optional = optional.isEmpty() ? null : new HashSet<String>(optional);
     }
 
     @Override
-    public Builder with(String propertyName, final String propertyValue) {
+    public Builder with(String propertyName, String propertyValue) {
       ArgumentChecker.notNull(propertyName, "propertyName");
       ArgumentChecker.notNull(propertyValue, "propertyValue");
       propertyName = ValueRequirement.getInterned(propertyName);
+      propertyValue = s_propertyValues.intern(propertyValue);
       final Set<String> previous = _properties.put(propertyName, Collections.singleton(propertyValue));
       if (previous != null) {
         if (previous.isEmpty() || previous.contains(propertyValue)) {
@@ -184,13 +199,13 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
         throw new IllegalArgumentException("propertyValues cannot contain null");
       }
       propertyName = ValueRequirement.getInterned(propertyName);
-      final Set<String> previous = _properties.put(propertyName, getUnmodifiableSet(propertyValues));
+      final Set<String> previous = _properties.put(propertyName, getInternedSet(propertyValues));
       if (previous != null) {
         if (previous.isEmpty()) {
           _properties.put(propertyName, previous);
         } else {
           final Set<String> replacement = new HashSet<String>(previous);
-          replacement.addAll(propertyValues);
+          replacement.addAll(getInternedSet(propertyValues));
           _properties.put(propertyName, Collections.unmodifiableSet(replacement));
         }
       }
@@ -210,7 +225,7 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
       if (_optional == null) {
         _optional = new HashSet<String>();
       }
-      _optional.add(propertyName);
+      _optional.add(ValueRequirement.getInterned(propertyName));
       return this;
     }
 
@@ -235,65 +250,74 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
             _properties.put(optionalProperty, Collections.<String>emptySet());
           }
         }
-        return new ValuePropertiesImpl(getSmallMap(_properties), getUnmodifiableSet(_optional));
+        return new ValuePropertiesImpl(_properties, _optional);
       } else {
         if (_properties.isEmpty()) {
           return EMPTY;
         }
-        return new ValuePropertiesImpl(getSmallMap(_properties), Collections.<String>emptySet());
+        return new ValuePropertiesImpl(_properties, Collections.<String>emptySet());
       }
     }
-    
-    private Set<String> getUnmodifiableSet(final Collection<String> values) {
-      switch (values.size()) {
-        case 0:
-          return Collections.emptySet();
-        case 1:
-          return Collections.singleton(values.iterator().next());
-        default:
-          return Collections.unmodifiableSet((values instanceof Set) ? (Set<String>) values : new HashSet<String>(values));
+
+    private static Set<String> getInternedSet(final Collection<String> values) {
+      if (values.size() == 1) {
+        return Collections.singleton(s_propertyValues.intern(values.iterator().next()));
       }
-    }
-    
-    private static <K, V> Map<K, V> getSmallMap(Map<K, V> map) {
-      switch (map.size()) {
-        case 0:
-          return Collections.emptyMap();
-        case 1:
-          for (Entry<K, V> entry : map.entrySet()) {
-            return Collections.singletonMap(entry.getKey(), entry.getValue());
-          }
-        default:
-          return new HashMap<K, V>(map);
+      final Set<String> interned = Sets.newHashSetWithExpectedSize(values.size());
+      for (String value : values) {
+        interned.add(s_propertyValues.intern(value));
       }
+      return interned;
     }
+
   }
 
+  /**
+   * The canonical instances of value properties, see {@link #intern}.
+   */
+  private static final Interner<ValueProperties> s_interned = Interners.newWeakInterner();
+
   /**
    * A value properties implementation holding a set of properties.
+   * <p>
+   * The property names are held in a sorted array with a parallel array of the value sets, which are themselves held sorted
+   * when there are more than one. This is much smaller than a hash map for the typical handful of properties, and allows
+   * equality to be tested by comparing the arrays element by element.
    */
   public static final class ValuePropertiesImpl extends ValueProperties {
 
     /**
-     * 
+     * Changed from 1 when the properties map was replaced by the sorted name and value arrays.
      */
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     /**
-     * The properties.
+     * The class of the sets returned by {@link Collections#singleton}.
      */
-    private final Map<String, Set<String>> _properties;
+    private static final Class<?> SINGLETON_SET = Collections.singleton(null).getClass();
+    /**
+     * The property names, sorted.
+     */
+    private final String[] _names;
+    /**
+     * The property values, indexed as the names.
+     */
+    private final Set<String>[] _values;
     /**
      * The optional properties.
      */
     private final Set<String> _optional;
     /**
-     * Hashcode of the property set.
+     * Hashcode of the property set, calculated on construction and deserialization.
+     */
+    private transient int _hashCode;
+    /**
+     * Indicates whether this is the canonical instance returned by {@link #intern}.
      */
-    private volatile int _hashCode;
+    private transient boolean _interned;
     /**
-     * Indicates whether the hash-code is valid.
+     * The property names as a set, created on first use.
      */
-    private volatile boolean _hashCodeValid;
+    private transient Set<String> _nameSet;
 
     /**
      * Creates an instance.
@@ -301,24 +325,114 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
      * @param properties  the required properties, not null
      * @param optional  the optional properties, not null
      */
+    @SuppressWarnings("unchecked")
     private ValuePropertiesImpl(final Map<String, Set<String>> properties, final Set<String> optional) {
-      _properties = properties;
+      final int size = properties.size();
+      _names = properties.keySet().toArray(new String[size]);
+      Arrays.sort(_names);
+      _values = new Set[size];
+      for (int i = 0; i < size; i++) {
+        _values[i] = getSortedSet(properties.get(_names[i]));
+      }
+      _optional = getSortedSet(optional);
+      _hashCode = calculateHashCode();
+    }
+
+    /**
+     * Creates an instance sharing the arrays of another, which are never modified after construction.
+     * 
+     * @param names  the sorted property names, not null
+     * @param values  the property values, indexed as the names, not null
+     * @param optional  the optional properties, sorted, not null
+     */
+    private ValuePropertiesImpl(final String[] names, final Set<String>[] values, final Set<String> optional) {
+      _names = names;
+      _values = values;
       _optional = optional;
+      _hashCode = calculateHashCode();
+    }
+
+    private static Set<String> getSortedSet(final Set<String> values) {
+      switch (values.size()) {
+        case 0:
+          return Collections.emptySet();
+        case 1:
+          // Immutable sets are shared with the properties they came from
+          if ((values.getClass() == SINGLETON_SET) || (values instanceof ImmutableSortedSet)) {
+            return values;
+          }
+          return Collections.singleton(values.iterator().next());
+        default:
+          return ImmutableSortedSet.copyOf(values);
+      }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      if ((_names == null) || (_values == null) || (_optional == null) || (_names.length != _values.length)) {
+        throw new InvalidObjectException("Property names and values do not match");
+      }
+      for (int i = 0; i < _names.length; i++) {
+        if ((_names[i] == null) || (_values[i] == null)) {
+          throw new InvalidObjectException("Null property name or value set");
+        }
+        if ((i > 0) && (_names[i - 1].compareTo(_names[i]) >= 0)) {
+          throw new InvalidObjectException("Property names not sorted");
+        }
+      }
+      _hashCode = calculateHashCode();
+    }
+
+    private int calculateHashCode() {
+      // Same as the hash of the equivalent Map<String, Set<String>>
+      int hashCode = 0;
+      for (int i = 0; i < _names.length; i++) {
+        hashCode += _names[i].hashCode() ^ _values[i].hashCode();
+      }
+      return hashCode ^ _optional.hashCode();
+    }
+
+    private int indexOf(final String propertyName) {
+      // Most sets hold a few properties, with names that are interned
+      if (_names.length <= 4) {
+        for (int i = 0; i < _names.length; i++) {
+          if (_names[i] == propertyName) {
+            return i;
+          }
+        }
+        for (int i = 0; i < _names.length; i++) {
+          if (_names[i].equals(propertyName)) {
+            return i;
+          }
+        }
+        return -1;
+      }
+      if (propertyName == null) {
+        return -1;
+      }
+      final int index = Arrays.binarySearch(_names, propertyName);
+      return (index >= 0) ? index : -1;
     }
 
     @Override
     public Builder copy() {
-      return new BuilderImpl(_properties, _optional);
+      return new BuilderImpl(_names, _values, _optional);
     }
 
     @Override
     public Set<String> getProperties() {
-      return _properties.keySet();
+      Set<String> names = _nameSet;
+      if (names == null) {
+        names = ImmutableSortedSet.copyOf(_names);
+        _nameSet = names;
+      }
+      return names;
     }
 
     @Override
     public Set<String> getValues(final String propertyName) {
-      return _properties.get(propertyName);
+      final int index = indexOf(propertyName);
+      return (index >= 0) ? _values[index] : null;
     }
 
     @Override
@@ -329,28 +443,32 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
     @Override
     public boolean isSatisfiedBy(final ValueProperties properties) {
       assert properties != null;
+      if (properties == this) {
+        return true;
+      }
       nextProperty: // CSIGNORE [DVI-122]
-      for (Map.Entry<String, Set<String>> property : _properties.entrySet()) {
-        final Set<String> available = properties.getValues(property.getKey());
+      for (int i = 0; i < _names.length; i++) {
+        final String name = _names[i];
+        final Set<String> available = properties.getValues(name);
         if (available == null) {
-          if (!isOptional(property.getKey())) {
+          if (!isOptional(name)) {
             // Can't be satisfied - required property never defined
             return false;
           }
           continue;
         }
-        if (!isOptional(property.getKey())) {
-          if (properties.isOptional(property.getKey())) {
+        if (!isOptional(name)) {
+          if (properties.isOptional(name)) {
             // Can't be satisfied - required property might not be defined
             return false;
           }
         }
-        if (available.isEmpty() || property.getValue().isEmpty()) {
+        if (available.isEmpty() || _values[i].isEmpty()) {
           // Other properties can supply anything - satisfying this requirement
           // or this requirement is for anything and so satisfied.
           continue;
         }
-        for (String value : property.getValue()) {
+        for (String value : _values[i]) {
           if (available.contains(value)) {
             // There is at least one value that can satisfy this requirement
             continue nextProperty;
@@ -366,31 +484,33 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
     @Override
     public ValueProperties compose(final ValueProperties properties) {
       assert properties != null;
-      if ((properties == EMPTY) || (properties == INFINITE)) {
+      if ((properties == EMPTY) || (properties == INFINITE) || (properties == this)) {
         return this;
       }
-      for (Map.Entry<String, Set<String>> property : _properties.entrySet()) {
-        final Set<String> available = properties.getValues(property.getKey());
+      for (int i = 0; i < _names.length; i++) {
+        final String name = _names[i];
+        final Set<String> values = _values[i];
+        final Set<String> available = properties.getValues(name);
         if (available == null) {
           // This property unchanged in output
           continue;
         }
         if (available.isEmpty()) {
           // This property different in output if optional here, and composed against a required
-          if (isOptional(property.getKey()) && !properties.isOptional(property.getKey())) {
+          if (isOptional(name) && !properties.isOptional(name)) {
             return composeImpl(properties);
           }
           continue;
         }
-        if (property.getValue().isEmpty()) {
+        if (values.isEmpty()) {
           // Requires a subset in the output
           return composeImpl(properties);
         }
-        if (property.getValue().size() != available.size()) {
+        if (values.size() != available.size()) {
           // Requires an intersection in the output
           return composeImpl(properties);
         }
-        for (String value : property.getValue()) {
+        for (String value : values) {
           if (!available.contains(value)) {
             // Requires an intersection in the output
             return composeImpl(properties);
@@ -405,78 +525,85 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
       Set<String> optional = null;
       int otherAvailable = 0;
       nextProperty: // CSIGNORE [DVI-122]
-      for (Map.Entry<String, Set<String>> property : _properties.entrySet()) {
-        final Set<String> available = properties.getValues(property.getKey());
+      for (int i = 0; i < _names.length; i++) {
+        final String name = _names[i];
+        final Set<String> values = _values[i];
+        final Set<String> available = properties.getValues(name);
         if (available == null) {
           // Other is not defined, so use current value
-          composed.put(property.getKey(), property.getValue());
+          composed.put(name, values);
           // Preserve optionality from this property set
-          if (isOptional(property.getKey())) {
+          if (isOptional(name)) {
             if (optional == null) {
               optional = new HashSet<String>();
             }
-            optional.add(property.getKey());
+            optional.add(name);
           }
           continue;
         }
         // Preserve least optionality from property sets
-        if (properties.isOptional(property.getKey()) && isOptional(property.getKey())) {
+        if (properties.isOptional(name) && isOptional(name)) {
           if (optional == null) {
             optional = new HashSet<String>();
           }
-          optional.add(property.getKey());
+          optional.add(name);
         }
-        if (property.getValue().isEmpty()) {
+        if (values.isEmpty()) {
           // This is a wild-card so use other values
-          composed.put(property.getKey(), available);
+          composed.put(name, available);
           otherAvailable++;
           continue;
         }
         if (available.isEmpty()) {
           // Other is wild-card so use current value
-          composed.put(property.getKey(), property.getValue());
+          composed.put(name, values);
           continue;
         }
-        if (property.getValue().size() != available.size()) {
-          final Set<String> intersection = Sets.intersection(property.getValue(), available);
+        if (values.size() != available.size()) {
+          final Set<String> intersection = Sets.intersection(values, available);
           // An empty intersection means no resulting property
           if (!intersection.isEmpty()) {
-            composed.put(property.getKey(), intersection);
+            composed.put(name, intersection);
           }
           continue;
         }
-        for (String value : property.getValue()) {
+        for (String value : values) {
           if (!available.contains(value)) {
-            final Set<String> intersection = Sets.intersection(property.getValue(), available);
+            final Set<String> intersection = Sets.intersection(values, available);
             // An empty intersection means no resulting property
             if (!intersection.isEmpty()) {
-              composed.put(property.getKey(), intersection);
+              composed.put(name, intersection);
             }
             continue nextProperty;
           }
         }
         // Property is identical in both
-        composed.put(property.getKey(), property.getValue());
+        composed.put(name, values);
       }
-      if ((composed.size() == otherAvailable) && (otherAvailable == _properties.size())) {
+      if ((composed.size() == otherAvailable) && (otherAvailable == _names.length)) {
         // We've just built a map containing only the other property values, so possibly return that original
         if (properties instanceof ValuePropertiesImpl) {
-          if (otherAvailable == ((ValuePropertiesImpl) properties)._properties.size()) {
+          if (otherAvailable == ((ValuePropertiesImpl) properties)._names.length) {
             return properties;
           }
         }
       }
-      return new ValuePropertiesImpl(Collections.unmodifiableMap(composed), (optional != null) ? Collections.unmodifiableSet(optional) : Collections.<String>emptySet());
+      return new ValuePropertiesImpl(composed, (optional != null) ? optional : Collections.<String>emptySet());
     }
 
     @Override
     public ValueProperties intersect(final ValueProperties other) {
+      if (other == this) {
+        return this;
+      }
       // Our property values are present unless missing from the other set
       final Map<String, Set<String>> intersection = new HashMap<String, Set<String>>();
       Set<String> optional = null;
       boolean different = false;
-      for (Map.Entry<String, Set<String>> property : _properties.entrySet()) {
-        final Set<String> otherValues = other.getValues(property.getKey());
+      for (int i = 0; i < _names.length; i++) {
+        final String name = _names[i];
+        final Set<String> values = _values[i];
+        final Set<String> otherValues = other.getValues(name);
         if (otherValues == null) {
           // Property not defined in the other set
           different = true;
@@ -485,14 +612,14 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
         final Set<String> commonValues;
         if (otherValues.isEmpty()) {
           // Other set is wild-card, so take our values
-          commonValues = property.getValue();
-        } else if (property.getValue().isEmpty()) {
+          commonValues = values;
+        } else if (values.isEmpty()) {
           // We are wile-card, so take other values
           commonValues = otherValues;
         } else {
           // Intersection of the property values
-          commonValues = Sets.newHashSetWithExpectedSize(property.getValue().size());
-          for (String value : property.getValue()) {
+          commonValues = Sets.newHashSetWithExpectedSize(values.size());
+          for (String value : values) {
             if (otherValues.contains(value)) {
               commonValues.add(value);
             } else {
@@ -504,14 +631,14 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
             continue;
           }
         }
-        intersection.put(property.getKey(), commonValues);
+        intersection.put(name, commonValues);
         // Preserve least optionality
-        if (isOptional(property.getKey())) {
-          if (other.isOptional(property.getKey())) {
+        if (isOptional(name)) {
+          if (other.isOptional(name)) {
             if (optional == null) {
               optional = new HashSet<String>();
             }
-            optional.add(property.getKey());
+            optional.add(name);
           } else {
             different = true;
           }
@@ -521,7 +648,7 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
         return EMPTY;
       } else {
         if (different) {
-          return new ValuePropertiesImpl(Collections.unmodifiableMap(intersection), (optional != null) ? Collections.unmodifiableSet(optional) : Collections.<String>emptySet());
+          return new ValuePropertiesImpl(intersection, (optional != null) ? optional : Collections.<String>emptySet());
         } else {
           return this;
         }
@@ -530,7 +657,7 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
 
     @Override
     public boolean isStrict() {
-      for (Set<String> property : _properties.values()) {
+      for (Set<String> property : _values) {
         if (property.size() != 1) {
           return false;
         }
@@ -538,6 +665,16 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
       return true;
     }
 
+    @Override
+    public ValueProperties intern() {
+      if (_interned) {
+        return this;
+      }
+      final ValuePropertiesImpl interned = (ValuePropertiesImpl) s_interned.intern(this);
+      interned._interned = true;
+      return interned;
+    }
+
     @Override
     public boolean equals(final Object o) {
       if (o == this) {
@@ -547,28 +684,24 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
         return false;
       }
       final ValuePropertiesImpl other = (ValuePropertiesImpl) o;
-      return _properties.equals(other._properties) && ObjectUtils.equals(_optional, other._optional);
+      if (_interned && other._interned) {
+        // There is only one canonical instance of each set
+        return false;
+      }
+      return (hashCode() == other.hashCode()) && Arrays.equals(_names, other._names) && Arrays.equals(_values, other._values) && _optional.equals(other._optional);
     }
 
     @Override
     public int hashCode() {
-      if (_hashCodeValid) {
-        return _hashCode;
-      } else {
-        final int hashCode = _properties.hashCode() ^ _optional.hashCode();
-        _hashCode = hashCode;
-        _hashCodeValid = true;
-        return hashCode;
-      }
+      return _hashCode;
     }
 
     @Override
     public boolean isEmpty() {
-      return _properties.isEmpty();
+      return _names.length == 0;
     }
 
     public static String toString(final Map<String, Set<String>> properties, final Set<String> optional, final boolean strict) {
-      Pattern escapePattern = Pattern.compile("[=\\?\\[\\],\\\\]");
       final StringBuilder sb = new StringBuilder();
       if (strict) {
         sb.append("{");
@@ -580,27 +713,47 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
         } else {
           sb.append(",");
         }
-        sb.append(escape(escapePattern, property.getKey())).append("=");
-        boolean isOptional = optional.contains(property.getKey());
-        boolean grouped = strict || property.getValue().size() > 1 || isOptional;
-        if (grouped) {
-          sb.append("[");
-        }
-        boolean firstValue = true;
-        for (String value : property.getValue()) {
-          if (firstValue) {
-            firstValue = false;
-          } else {
-            sb.append(",");
-          }
-          sb.append(escape(escapePattern, value));
-        }
-        if (grouped) {
-          sb.append("]");
+        appendProperty(sb, property.getKey(), property.getValue(), optional.contains(property.getKey()), strict);
+      }
+      if (strict) {
+        sb.append("}");
+      }
+      return sb.toString();
+    }
+
+    private static void appendProperty(final StringBuilder sb, final String name, final Set<String> values, final boolean isOptional, final boolean strict) {
+      sb.append(escape(ESCAPE_PATTERN, name)).append("=");
+      boolean grouped = strict || values.size() > 1 || isOptional;
+      if (grouped) {
+        sb.append("[");
+      }
+      boolean firstValue = true;
+      for (String value : values) {
+        if (firstValue) {
+          firstValue = false;
+        } else {
+          sb.append(",");
         }
-        if (isOptional) {
-          sb.append("?");
+        sb.append(escape(ESCAPE_PATTERN, value));
+      }
+      if (grouped) {
+        sb.append("]");
+      }
+      if (isOptional) {
+        sb.append("?");
+      }
+    }
+
+    private String toString(final boolean strict) {
+      final StringBuilder sb = new StringBuilder();
+      if (strict) {
+        sb.append("{");
+      }
+      for (int i = 0; i < _names.length; i++) {
+        if (i > 0) {
+          sb.append(",");
         }
+        appendProperty(sb, _names[i], _values[i], isOptional(_names[i]), strict);
       }
       if (strict) {
         sb.append("}");
@@ -610,15 +763,17 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
 
     @Override
     public String toSimpleString() {
-      return toString(_properties, _optional, false);
+      return toString(false);
     }
 
     @Override
     public String toString() {
-      return toString(_properties, _optional, true);
+      return toString(true);
     }
   }
 
+  private static final Pattern ESCAPE_PATTERN = Pattern.compile("[=\\?\\[\\],\\\\]");
+
   private static String escape(Pattern p, String s) {
     return p.matcher(s).replaceAll("\\\\$0");
   }
@@ -1021,7 +1176,7 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
         if (other._optional.isEmpty()) {
           return properties;
         } else {
-          return new ValuePropertiesImpl(other._properties, Collections.<String>emptySet());
+          return new ValuePropertiesImpl(other._names, other._values, Collections.<String>emptySet());
         }
       } else {
         return properties;
@@ -1401,6 +1556,17 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
     return copy().withoutAny(propertyName).get();
   }
 
+  /**
+   * Returns the canonical instance of this property set. Equal property sets that have both been interned are the same
+   * object, so can be compared by reference, and holding only the canonical instance saves memory where the same
+   * properties are described many times such as in the values of a dependency graph.
+   * 
+   * @return the canonical instance, not null
+   */
+  public ValueProperties intern() {
+    return this;
+  }
+
   /**
    * Returns a simple string representation of the {@link ValueProperties} instance. This simple representation omits
    * unnecessary brackets for better readability. The output remains valid as the input to {@link #parse(String)}.
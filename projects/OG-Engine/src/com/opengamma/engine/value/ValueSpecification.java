@@ -11,6 +11,8 @@ import java.util.Set;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.text.StrBuilder;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.ComputationTargetType;
 import com.opengamma.id.UniqueId;
@@ -56,6 +58,15 @@ public class ValueSpecification implements Serializable {
    * The cached hash code.
    */
   private transient volatile int _hashCode;
+  /**
+   * Indicates whether this is the canonical instance returned by {@link #intern}.
+   */
+  private transient boolean _interned;
+
+  /**
+   * The canonical instances.
+   */
+  private static final Interner<ValueSpecification> s_interned = Interners.newWeakInterner();
 
   /**
    * Obtains a {@code ValueSpecification} from a target, building the target specification
@@ -310,6 +321,22 @@ public class ValueSpecification implements Serializable {
     }
   }
 
+  /**
+   * Returns the canonical instance of this specification, with canonical properties. Equal specifications that have both
+   * been interned are the same object so can be compared by reference.
+   * 
+   * @return the canonical instance, not null
+   */
+  public ValueSpecification intern() {
+    if (_interned) {
+      return this;
+    }
+    final ValueProperties properties = _properties.intern();
+    final ValueSpecification interned = s_interned.intern((properties == _properties) ? this : new ValueSpecification(_valueName, _targetSpecification, properties));
+    interned._interned = true;
+    return interned;
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public boolean equals(Object obj) {
@@ -318,6 +345,10 @@ public class ValueSpecification implements Serializable {
     }
     if (obj instanceof ValueSpecification) {
       final ValueSpecification other = (ValueSpecification) obj;
+      if (_interned && other._interned) {
+        // There is only one canonical instance of each specification
+        return false;
+      }
       // valueName is interned
       return (_valueName == other._valueName) &&
         ObjectUtils.equals(_targetSpecification, other._targetSpecification) &&
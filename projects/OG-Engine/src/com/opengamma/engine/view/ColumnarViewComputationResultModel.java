@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+
+/**
+ * Column oriented implementation of {@link ViewComputationResultModel}.
+ */
+public class ColumnarViewComputationResultModel extends ColumnarViewResultModel implements ViewComputationResultModel {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Map<ValueSpecification, ComputedValue> _allMarketData = new HashMap<ValueSpecification, ComputedValue>();
+  private final Map<ValueSpecification, Set<ValueRequirement>> _specToRequirementsMap = new HashMap<ValueSpecification, Set<ValueRequirement>>();
+
+  /**
+   * Adds a market data value, replacing any previous item with the same value specification.
+   * 
+   * @param marketData  the market data value, not null
+   */
+  public void addMarketData(ComputedValue marketData) {
+    _allMarketData.put(marketData.getSpecification(), marketData);
+  }
+
+  @Override
+  public Set<ComputedValue> getAllMarketData() {
+    return new HashSet<ComputedValue>(_allMarketData.values());
+  }
+
+  public ColumnarViewComputationResultModel addRequirement(ValueRequirement requirement, ValueSpecification specification) {
+    synchronized (_specToRequirementsMap) {
+      Set<ValueRequirement> requirements = _specToRequirementsMap.get(specification);
+      if (requirements == null) {
+        requirements = new HashSet<ValueRequirement>();
+        _specToRequirementsMap.put(specification, requirements);
+      }
+      requirements.add(requirement);
+    }
+    return this;
+  }
+
+  public ColumnarViewComputationResultModel addRequirements(Set<ValueRequirement> newRequirements, ValueSpecification specification) {
+    synchronized (_specToRequirementsMap) {
+      Set<ValueRequirement> requirements = _specToRequirementsMap.get(specification);
+      if (requirements == null) {
+        requirements = new HashSet<ValueRequirement>();
+        _specToRequirementsMap.put(specification, requirements);
+      }
+      requirements.addAll(newRequirements);
+    }
+    return this;
+  }
+
+  public ColumnarViewComputationResultModel addRequirements(Map<ValueSpecification, Set<ValueRequirement>> specifications) {
+    synchronized (_specToRequirementsMap) {
+      for (Map.Entry<ValueSpecification, Set<ValueRequirement>> specification : specifications.entrySet()) {
+        addRequirements(specification.getValue(), specification.getKey());
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public Map<ValueSpecification, Set<ValueRequirement>> getRequirementToSpecificationMapping() {
+    return Collections.unmodifiableMap(_specToRequirementsMap);
+  }
+
+}
@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view;
+
+import javax.time.Instant;
+
+/**
+ * Column oriented implementation of {@link ViewDeltaResultModel}.
+ */
+public class ColumnarViewDeltaResultModel extends ColumnarViewResultModel implements ViewDeltaResultModel {
+
+  private static final long serialVersionUID = 1L;
+
+  private Instant _previousResultTimestamp;
+
+  @Override
+  public Instant getPreviousResultTimestamp() {
+    return _previousResultTimestamp;
+  }
+
+  public void setPreviousCalculationTime(Instant previousResultTimestamp) {
+    _previousResultTimestamp = previousResultTimestamp;
+  }
+
+}
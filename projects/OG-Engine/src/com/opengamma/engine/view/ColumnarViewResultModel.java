@@ -0,0 +1,561 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.time.Duration;
+import javax.time.Instant;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.VersionCorrection;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.tuple.Pair;
+
+/**
+ * A column oriented implementation of {@link ViewResultModel}.
+ * <p>
+ * Calculation configurations, targets and value specifications are interned into dictionaries and each result is a
+ * row of indices into them. Results that are {@link Double} are held in a primitive column rather than boxed. The
+ * per-configuration and per-target views required by {@link ViewResultModel} are presented over the columns, with
+ * {@link ComputedValue} instances only created when they are asked for.
+ * <p>
+ * Adding a value for a specification that already has a value in the same configuration replaces the earlier value.
+ */
+public abstract class ColumnarViewResultModel implements ViewResultModel, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private UniqueId _viewProcessId;
+  private UniqueId _viewCycleId;
+  private Instant _valuationTime;
+  private Instant _calculationTime;
+  private Duration _calculationDuration;
+  private VersionCorrection _versionCorrection;
+
+  private final List<String> _configurations = new ArrayList<String>();
+  private final Object2IntMap<String> _configurationIndex = new Object2IntOpenHashMap<String>();
+  private final List<ComputationTargetSpecification> _targets = new ArrayList<ComputationTargetSpecification>();
+  private final Object2IntMap<ComputationTargetSpecification> _targetIndex = new Object2IntOpenHashMap<ComputationTargetSpecification>();
+  private final List<ValueSpecification> _specifications = new ArrayList<ValueSpecification>();
+  private final Object2IntMap<ValueSpecification> _specificationIndex = new Object2IntOpenHashMap<ValueSpecification>();
+  /**
+   * The target index of each entry in the specification dictionary.
+   */
+  private final IntArrayList _specificationTarget = new IntArrayList();
+
+  private int _rows;
+  private int[] _rowConfiguration = new int[INITIAL_CAPACITY];
+  private int[] _rowSpecification = new int[INITIAL_CAPACITY];
+  private double[] _scalarValues = new double[INITIAL_CAPACITY];
+  /**
+   * The non-scalar value of each row, or the whole {@link ComputedValue} for rows with execution details.
+   */
+  private Object[] _values = new Object[INITIAL_CAPACITY];
+  private final BitSet _scalar = new BitSet();
+  private final BitSet _detailed = new BitSet();
+  /**
+   * The row holding each configuration and specification index pair.
+   */
+  private final Long2IntMap _rowIndex = new Long2IntOpenHashMap();
+  /**
+   * The rows for each configuration, keyed by target index.
+   */
+  private final List<Int2ObjectMap<IntArrayList>> _configurationRows = new ArrayList<Int2ObjectMap<IntArrayList>>();
+  /**
+   * The rows for each target.
+   */
+  private final List<IntArrayList> _targetRows = new ArrayList<IntArrayList>();
+
+  protected ColumnarViewResultModel() {
+    _configurationIndex.defaultReturnValue(-1);
+    _targetIndex.defaultReturnValue(-1);
+    _specificationIndex.defaultReturnValue(-1);
+    _rowIndex.defaultReturnValue(-1);
+  }
+
+  @Override
+  public UniqueId getViewProcessId() {
+    return _viewProcessId;
+  }
+
+  public void setViewProcessId(UniqueId viewProcessId) {
+    _viewProcessId = viewProcessId;
+  }
+
+  @Override
+  public UniqueId getViewCycleId() {
+    return _viewCycleId;
+  }
+
+  public void setViewCycleId(UniqueId viewCycleId) {
+    _viewCycleId = viewCycleId;
+  }
+
+  @Override
+  public Instant getValuationTime() {
+    return _valuationTime;
+  }
+
+  public void setValuationTime(Instant valuationTime) {
+    _valuationTime = valuationTime;
+  }
+
+  @Override
+  public Instant getCalculationTime() {
+    return _calculationTime;
+  }
+
+  public void setCalculationTime(Instant calculationTime) {
+    _calculationTime = calculationTime;
+  }
+
+  @Override
+  public Duration getCalculationDuration() {
+    return _calculationDuration;
+  }
+
+  public void setCalculationDuration(Duration calculationDuration) {
+    _calculationDuration = calculationDuration;
+  }
+
+  @Override
+  public VersionCorrection getVersionCorrection() {
+    return _versionCorrection;
+  }
+
+  public void setVersionCorrection(VersionCorrection versionCorrection) {
+    _versionCorrection = versionCorrection;
+  }
+
+  //-------------------------------------------------------------------------
+  private int internConfiguration(final String calcConfigurationName) {
+    int index = _configurationIndex.getInt(calcConfigurationName);
+    if (index < 0) {
+      index = _configurations.size();
+      _configurations.add(calcConfigurationName);
+      _configurationIndex.put(calcConfigurationName, index);
+      _configurationRows.add(new Int2ObjectOpenHashMap<IntArrayList>());
+    }
+    return index;
+  }
+
+  private int internTarget(final ComputationTargetSpecification target) {
+    int index = _targetIndex.getInt(target);
+    if (index < 0) {
+      index = _targets.size();
+      _targets.add(target);
+      _targetIndex.put(target, index);
+      _targetRows.add(new IntArrayList());
+    }
+    return index;
+  }
+
+  private int internSpecification(final ValueSpecification specification) {
+    int index = _specificationIndex.getInt(specification);
+    if (index < 0) {
+      index = _specifications.size();
+      _specifications.add(specification);
+      _specificationIndex.put(specification, index);
+      _specificationTarget.add(internTarget(specification.getTargetSpecification()));
+    }
+    return index;
+  }
+
+  private static long rowKey(final int configuration, final int specification) {
+    return ((long) configuration << 32) | (specification & 0xFFFFFFFFL);
+  }
+
+  private void ensureCapacity(final int rows) {
+    if (rows > _rowConfiguration.length) {
+      final int capacity = Math.max(rows, _rowConfiguration.length << 1);
+      _rowConfiguration = Arrays.copyOf(_rowConfiguration, capacity);
+      _rowSpecification = Arrays.copyOf(_rowSpecification, capacity);
+      _scalarValues = Arrays.copyOf(_scalarValues, capacity);
+      _values = Arrays.copyOf(_values, capacity);
+    }
+  }
+
+  private int getOrCreateRow(final int configuration, final int specification) {
+    final long key = rowKey(configuration, specification);
+    int row = _rowIndex.get(key);
+    if (row < 0) {
+      row = _rows++;
+      ensureCapacity(_rows);
+      _rowConfiguration[row] = configuration;
+      _rowSpecification[row] = specification;
+      _rowIndex.put(key, row);
+      final int target = _specificationTarget.getInt(specification);
+      final Int2ObjectMap<IntArrayList> configurationRows = _configurationRows.get(configuration);
+      IntArrayList rows = configurationRows.get(target);
+      if (rows == null) {
+        rows = new IntArrayList();
+        configurationRows.put(target, rows);
+      }
+      rows.add(row);
+      _targetRows.get(target).add(row);
+    }
+    return row;
+  }
+
+  private void setScalarValue(final int row, final double value) {
+    _scalarValues[row] = value;
+    _values[row] = null;
+    _scalar.set(row);
+    _detailed.clear(row);
+  }
+
+  private void setObjectValue(final int row, final Object value) {
+    _scalarValues[row] = 0;
+    _values[row] = value;
+    _scalar.clear(row);
+    _detailed.clear(row);
+  }
+
+  private void setDetailedValue(final int row, final ComputedValue value) {
+    _scalarValues[row] = 0;
+    _values[row] = value;
+    _scalar.clear(row);
+    _detailed.set(row);
+  }
+
+  private static boolean isDetailed(final ComputedValue value) {
+    return (value.getInvocationResult() != null) || (value.getExceptionClass() != null) || (value.getExceptionMsg() != null) || (value.getStackTrace() != null)
+        || (value.getMissingInputs() != null) || (value.getRequirements() != null) || (value.getComputeNodeId() != null);
+  }
+
+  /**
+   * Adds a value to the result, replacing any previous value for the same specification and configuration. Values
+   * carrying execution details are held as they are; otherwise only the value is kept.
+   *
+   * @param calcConfigurationName the calculation configuration name, not null
+   * @param value the value to add, not null
+   */
+  public void addValue(final String calcConfigurationName, final ComputedValue value) {
+    ArgumentChecker.notNull(calcConfigurationName, "calcConfigurationName");
+    ArgumentChecker.notNull(value, "value");
+    final int row = getOrCreateRow(internConfiguration(calcConfigurationName), internSpecification(value.getSpecification()));
+    if (isDetailed(value)) {
+      setDetailedValue(row, value);
+    } else if (value.getValue() instanceof Double) {
+      setScalarValue(row, (Double) value.getValue());
+    } else {
+      setObjectValue(row, value.getValue());
+    }
+  }
+
+  /**
+   * Adds a set of result rows in column form, as decoded from a message. The dictionaries must already hold the
+   * indexed configurations and specifications.
+   *
+   * @param configurations the configuration index of each row, not null
+   * @param specifications the specification index of each row, not null
+   * @param scalarValues the scalar value of each row, not null
+   * @param values the non-scalar value of each row, or null for a scalar row, not null
+   */
+  public void addRows(final int[] configurations, final int[] specifications, final double[] scalarValues, final Object[] values) {
+    ensureCapacity(_rows + configurations.length);
+    for (int i = 0; i < configurations.length; i++) {
+      final int row = getOrCreateRow(configurations[i], specifications[i]);
+      if (values[i] == null) {
+        setScalarValue(row, scalarValues[i]);
+      } else {
+        setObjectValue(row, values[i]);
+      }
+    }
+  }
+
+  /**
+   * Gets the value of a row as a {@link ComputedValue}.
+   *
+   * @param row the row index
+   * @return the value, not null
+   */
+  public ComputedValue getComputedValue(final int row) {
+    if (_detailed.get(row)) {
+      return (ComputedValue) _values[row];
+    } else if (_scalar.get(row)) {
+      return new ComputedValue(_specifications.get(_rowSpecification[row]), _scalarValues[row]);
+    } else {
+      return new ComputedValue(_specifications.get(_rowSpecification[row]), _values[row]);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of result rows.
+   *
+   * @return the number of rows
+   */
+  public int getRowCount() {
+    return _rows;
+  }
+
+  /**
+   * Gets the calculation configuration dictionary.
+   *
+   * @return the configuration names in index order, not null
+   */
+  public List<String> getConfigurationDictionary() {
+    return Collections.unmodifiableList(_configurations);
+  }
+
+  /**
+   * Gets the value specification dictionary.
+   *
+   * @return the value specifications in index order, not null
+   */
+  public List<ValueSpecification> getSpecificationDictionary() {
+    return Collections.unmodifiableList(_specifications);
+  }
+
+  /**
+   * Gets the configuration index column.
+   *
+   * @return a copy of the configuration index of each row, not null
+   */
+  public int[] getConfigurationColumn() {
+    return Arrays.copyOf(_rowConfiguration, _rows);
+  }
+
+  /**
+   * Gets the specification index column.
+   *
+   * @return a copy of the specification index of each row, not null
+   */
+  public int[] getSpecificationColumn() {
+    return Arrays.copyOf(_rowSpecification, _rows);
+  }
+
+  /**
+   * Gets the scalar value column. Rows holding other values are zero.
+   *
+   * @return a copy of the scalar value of each row, not null
+   */
+  public double[] getScalarColumn() {
+    return Arrays.copyOf(_scalarValues, _rows);
+  }
+
+  /**
+   * Tests whether a row holds a scalar value in the primitive column.
+   *
+   * @param row the row index
+   * @return true if the row value is scalar
+   */
+  public boolean isScalar(final int row) {
+    return _scalar.get(row);
+  }
+
+  /**
+   * Tests whether a row holds a {@link ComputedValue} carrying execution details, such as the invocation result or
+   * the missing inputs, rather than just the value.
+   *
+   * @param row the row index
+   * @return true if the row holds a detailed value
+   */
+  public boolean isDetailed(final int row) {
+    return _detailed.get(row);
+  }
+
+  /**
+   * Interns dictionary entries ahead of rows referring to them by index.
+   *
+   * @param configurations the configuration names, not null
+   * @param specifications the value specifications, not null
+   */
+  public void addDictionaries(final List<String> configurations, final List<ValueSpecification> specifications) {
+    for (String configuration : configurations) {
+      internConfiguration(configuration);
+    }
+    for (ValueSpecification specification : specifications) {
+      internSpecification(specification);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public Set<ComputationTargetSpecification> getAllTargets() {
+    return Collections.unmodifiableSet(_targetIndex.keySet());
+  }
+
+  @Override
+  public Collection<String> getCalculationConfigurationNames() {
+    return Collections.unmodifiableSet(_configurationIndex.keySet());
+  }
+
+  @Override
+  public ViewCalculationResultModel getCalculationResult(final String calcConfigurationName) {
+    final int configuration = _configurationIndex.getInt(calcConfigurationName);
+    if (configuration < 0) {
+      return null;
+    }
+    return new CalculationResult(_configurationRows.get(configuration));
+  }
+
+  @Override
+  public ViewTargetResultModel getTargetResult(final ComputationTargetSpecification targetSpecification) {
+    final int target = _targetIndex.getInt(targetSpecification);
+    if (target < 0) {
+      return null;
+    }
+    return new TargetResult(_targetRows.get(target));
+  }
+
+  @Override
+  public List<ViewResultEntry> getAllResults() {
+    return new AbstractList<ViewResultEntry>() {
+
+      @Override
+      public ViewResultEntry get(final int index) {
+        if ((index < 0) || (index >= _rows)) {
+          throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return new ViewResultEntry(_configurations.get(_rowConfiguration[index]), getComputedValue(index));
+      }
+
+      @Override
+      public int size() {
+        return _rows;
+      }
+
+    };
+  }
+
+  @Override
+  public Set<String> getAllOutputValueNames() {
+    final Set<String> outputValueNames = new HashSet<String>();
+    for (ValueSpecification specification : _specifications) {
+      outputValueNames.add(specification.getValueName());
+    }
+    return outputValueNames;
+  }
+
+  //-------------------------------------------------------------------------
+  private List<ComputedValue> getComputedValues(final IntArrayList rows) {
+    final List<ComputedValue> values = new ArrayList<ComputedValue>(rows.size());
+    for (int i = 0; i < rows.size(); i++) {
+      values.add(getComputedValue(rows.getInt(i)));
+    }
+    return values;
+  }
+
+  /**
+   * View of the rows for a single calculation configuration.
+   */
+  private final class CalculationResult implements ViewCalculationResultModel {
+
+    private final Int2ObjectMap<IntArrayList> _rowsByTarget;
+
+    private CalculationResult(final Int2ObjectMap<IntArrayList> rowsByTarget) {
+      _rowsByTarget = rowsByTarget;
+    }
+
+    private IntArrayList getRows(final ComputationTargetSpecification target) {
+      final int index = _targetIndex.getInt(target);
+      if (index < 0) {
+        return null;
+      }
+      return _rowsByTarget.get(index);
+    }
+
+    @Override
+    public Collection<ComputationTargetSpecification> getAllTargets() {
+      final List<ComputationTargetSpecification> targets = new ArrayList<ComputationTargetSpecification>(_rowsByTarget.size());
+      for (int target : _rowsByTarget.keySet()) {
+        targets.add(_targets.get(target));
+      }
+      return targets;
+    }
+
+    @Override
+    public Map<Pair<String, ValueProperties>, ComputedValue> getValues(final ComputationTargetSpecification target) {
+      final IntArrayList rows = getRows(target);
+      if (rows == null) {
+        return null;
+      }
+      final Map<Pair<String, ValueProperties>, ComputedValue> values = new HashMap<Pair<String, ValueProperties>, ComputedValue>();
+      for (int i = 0; i < rows.size(); i++) {
+        final ComputedValue value = getComputedValue(rows.getInt(i));
+        values.put(Pair.of(value.getSpecification().getValueName(), value.getSpecification().getProperties()), value);
+      }
+      return values;
+    }
+
+    @Override
+    public Collection<ComputedValue> getAllValues(final ComputationTargetSpecification target) {
+      final IntArrayList rows = getRows(target);
+      if (rows == null) {
+        return null;
+      }
+      return getComputedValues(rows);
+    }
+
+  }
+
+  /**
+   * View of the rows for a single target.
+   */
+  private final class TargetResult implements ViewTargetResultModel {
+
+    private final IntArrayList _rowsForTarget;
+
+    private TargetResult(final IntArrayList rows) {
+      _rowsForTarget = rows;
+    }
+
+    @Override
+    public Collection<String> getCalculationConfigurationNames() {
+      final Set<String> names = new HashSet<String>();
+      for (int i = 0; i < _rowsForTarget.size(); i++) {
+        names.add(_configurations.get(_rowConfiguration[_rowsForTarget.getInt(i)]));
+      }
+      return names;
+    }
+
+    @Override
+    public Collection<ComputedValue> getAllValues(final String calcConfigurationName) {
+      final int configuration = _configurationIndex.getInt(calcConfigurationName);
+      if (configuration < 0) {
+        return null;
+      }
+      final List<ComputedValue> values = new ArrayList<ComputedValue>();
+      for (int i = 0; i < _rowsForTarget.size(); i++) {
+        final int row = _rowsForTarget.getInt(i);
+        if (_rowConfiguration[row] == configuration) {
+          values.add(getComputedValue(row));
+        }
+      }
+      return values.isEmpty() ? null : values;
+    }
+
+  }
+
+}
@@ -5,6 +5,8 @@
  */
 package com.opengamma.engine.view;
 
+import java.util.concurrent.ExecutorService;
+
 import com.opengamma.engine.ComputationTargetResolver;
 import com.opengamma.engine.depgraph.DependencyGraphBuilderFactory;
 import com.opengamma.engine.function.CompiledFunctionService;
@@ -17,9 +19,13 @@ import com.opengamma.engine.marketdata.resolver.MarketDataProviderResolver;
 import com.opengamma.engine.marketdata.resolver.MarketDataProviderResolverWithOverride;
 import com.opengamma.engine.view.cache.ViewComputationCacheSource;
 import com.opengamma.engine.view.calc.DependencyGraphExecutorFactory;
+import com.opengamma.engine.view.calc.EngineResourceManager;
+import com.opengamma.engine.view.calc.SharedNodeRegistry;
+import com.opengamma.engine.view.calc.SingleComputationCycle;
 import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGathererProvider;
 import com.opengamma.engine.view.calcnode.JobDispatcher;
 import com.opengamma.engine.view.calcnode.ViewProcessorQueryReceiver;
+import com.opengamma.engine.view.compilation.CompiledViewDefinitionCache;
 import com.opengamma.engine.view.compilation.ViewCompilationServices;
 import com.opengamma.engine.view.permission.ViewPermissionProvider;
 import com.opengamma.util.ArgumentChecker;
@@ -43,6 +49,10 @@ public class ViewProcessContext {
   private final MarketDataInjector _liveDataOverrideInjector;
   private final MarketDataProviderResolver _marketDataProviderResolver;
   private final OverrideOperationCompiler _overrideOperationCompiler;
+  private CompiledViewDefinitionCache _compiledViewDefinitionCache;
+  private SharedNodeRegistry _sharedNodeRegistry;
+  private EngineResourceManager<SingleComputationCycle> _cycleManager;
+  private ExecutorService _concurrentCycleExecutor;
 
   public ViewProcessContext(
       ViewDefinitionRepository viewDefinitionRepository,
@@ -200,6 +210,60 @@ public class ViewProcessContext {
     return _overrideOperationCompiler;
   }
 
+  /**
+   * Returns the persistent store of compiled view definitions, if there is one.
+   * 
+   * @return the compiled view definition cache, or null if compilations are not persisted
+   */
+  public CompiledViewDefinitionCache getCompiledViewDefinitionCache() {
+    return _compiledViewDefinitionCache;
+  }
+
+  public void setCompiledViewDefinitionCache(CompiledViewDefinitionCache compiledViewDefinitionCache) {
+    _compiledViewDefinitionCache = compiledViewDefinitionCache;
+  }
+
+  /**
+   * Returns the registry of nodes executed by the cycles of other views, if results are shared between views.
+   * 
+   * @return the shared node registry, or null if each view computes all of its own nodes
+   */
+  public SharedNodeRegistry getSharedNodeRegistry() {
+    return _sharedNodeRegistry;
+  }
+
+  public void setSharedNodeRegistry(SharedNodeRegistry sharedNodeRegistry) {
+    _sharedNodeRegistry = sharedNodeRegistry;
+  }
+
+  /**
+   * Returns the manager of the cycles of all view processes of the view processor, through which a cycle of one view
+   * retains the cycle of another while using its results.
+   * 
+   * @return the cycle manager, or null if there is none
+   */
+  public EngineResourceManager<SingleComputationCycle> getCycleManager() {
+    return _cycleManager;
+  }
+
+  public void setCycleManager(EngineResourceManager<SingleComputationCycle> cycleManager) {
+    _cycleManager = cycleManager;
+  }
+
+  /**
+   * Returns the executor, shared by all view processes of the view processor, on which cycles are executed when more
+   * than one may run at once.
+   * 
+   * @return the concurrent cycle executor, or null if there is none
+   */
+  public ExecutorService getConcurrentCycleExecutor() {
+    return _concurrentCycleExecutor;
+  }
+
+  public void setConcurrentCycleExecutor(ExecutorService concurrentCycleExecutor) {
+    _concurrentCycleExecutor = concurrentCycleExecutor;
+  }
+
   // -------------------------------------------------------------------------
   /**
    * Uses this context to form a {@code ViewCompliationServices} instance.
@@ -15,6 +15,7 @@ import java.util.Timer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -38,6 +39,7 @@ import com.opengamma.engine.view.cache.ViewComputationCacheSource;
 import com.opengamma.engine.view.calc.DependencyGraphExecutorFactory;
 import com.opengamma.engine.view.calc.EngineResourceManagerImpl;
 import com.opengamma.engine.view.calc.EngineResourceManagerInternal;
+import com.opengamma.engine.view.calc.SharedNodeRegistry;
 import com.opengamma.engine.view.calc.SingleComputationCycle;
 import com.opengamma.engine.view.calc.ViewResultListenerFactory;
 import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGathererProvider;
@@ -45,6 +47,7 @@ import com.opengamma.engine.view.calcnode.JobDispatcher;
 import com.opengamma.engine.view.calcnode.ViewProcessorQueryReceiver;
 import com.opengamma.engine.view.client.ViewClient;
 import com.opengamma.engine.view.client.ViewClientImpl;
+import com.opengamma.engine.view.compilation.CompiledViewDefinitionCache;
 import com.opengamma.engine.view.event.ViewProcessorEventListenerRegistry;
 import com.opengamma.engine.view.execution.ViewExecutionFlags;
 import com.opengamma.engine.view.execution.ViewExecutionOptions;
@@ -55,6 +58,7 @@ import com.opengamma.id.UniqueId;
 import com.opengamma.id.VersionCorrection;
 import com.opengamma.livedata.UserPrincipal;
 import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.NamedThreadPoolFactory;
 import com.opengamma.util.monitor.OperationTimer;
 import com.opengamma.util.tuple.Pair;
 
@@ -95,6 +99,10 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
   private final ViewPermissionProvider _viewPermissionProvider;
   private final OverrideOperationCompiler _overrideOperationCompiler;
   private final ViewResultListenerFactory _viewResultListenerFactory;
+  private CompiledViewDefinitionCache _compiledViewDefinitionCache;
+  private SharedNodeRegistry _sharedNodeRegistry;
+  private ExecutorService _concurrentCycleExecutor;
+  private ExecutorService _defaultConcurrentCycleExecutor;
 
   // State
   /**
@@ -503,6 +511,61 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
     return _functionCompilationService;
   }
   
+  /**
+   * Sets the persistent store of compiled view definitions. View processes created after this is set will consult the
+   * store before compiling a view definition for the first time.
+   * 
+   * @param compiledViewDefinitionCache the compiled view definition cache, null for none
+   */
+  public void setCompiledViewDefinitionCache(final CompiledViewDefinitionCache compiledViewDefinitionCache) {
+    _compiledViewDefinitionCache = compiledViewDefinitionCache;
+  }
+
+  public CompiledViewDefinitionCache getCompiledViewDefinitionCache() {
+    return _compiledViewDefinitionCache;
+  }
+
+  /**
+   * Sets the registry through which views consume the results of equivalent nodes executed by the cycles of other views,
+   * rather than recomputing them. View processes created after this is set will use it. None is set by default.
+   * 
+   * @param sharedNodeRegistry the shared node registry, null for each view to compute all of its own nodes
+   */
+  public void setSharedNodeRegistry(final SharedNodeRegistry sharedNodeRegistry) {
+    _sharedNodeRegistry = sharedNodeRegistry;
+  }
+
+  public SharedNodeRegistry getSharedNodeRegistry() {
+    return _sharedNodeRegistry;
+  }
+
+  /**
+   * Sets the executor on which the view processes execute cycles concurrently, when their execution options allow more
+   * than one cycle at once. Each such cycle holds one thread for its execution and another to consume its job results,
+   * so the executor must not be bounded below twice the total number of concurrent cycles. If none is set, an unbounded
+   * pool is created when first needed and shut down when the view processor stops.
+   * 
+   * @param concurrentCycleExecutor the executor, null for the default
+   */
+  public void setConcurrentCycleExecutor(final ExecutorService concurrentCycleExecutor) {
+    _concurrentCycleExecutor = concurrentCycleExecutor;
+  }
+
+  public ExecutorService getConcurrentCycleExecutor() {
+    if (_concurrentCycleExecutor != null) {
+      return _concurrentCycleExecutor;
+    }
+    _lifecycleLock.lock();
+    try {
+      if (_defaultConcurrentCycleExecutor == null) {
+        _defaultConcurrentCycleExecutor = Executors.newCachedThreadPool(new NamedThreadPoolFactory("ViewCycle-" + getName()));
+      }
+      return _defaultConcurrentCycleExecutor;
+    } finally {
+      _lifecycleLock.unlock();
+    }
+  }
+
   @Override
   public ViewProcessorEventListenerRegistry getViewProcessorEventListenerRegistry() {
     return _viewProcessorEventListenerRegistry;
@@ -541,7 +604,7 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
   }
   
   private ViewProcessContext createViewProcessContext() {
-    return new ViewProcessContext(
+    final ViewProcessContext context = new ViewProcessContext(
         _viewDefinitionRepository,
         _viewPermissionProvider,
         _marketDataProviderFactoryResolver,
@@ -555,6 +618,11 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
         _dependencyGraphExecutorFactory,
         _graphExecutionStatistics,
         _overrideOperationCompiler);
+    context.setCompiledViewDefinitionCache(_compiledViewDefinitionCache);
+    context.setSharedNodeRegistry(_sharedNodeRegistry);
+    context.setCycleManager(_cycleManager);
+    context.setConcurrentCycleExecutor(getConcurrentCycleExecutor());
+    return context;
   }
 
   private String generateIdValue(AtomicLong source) {
@@ -667,6 +735,11 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
       }
       _allClientsById.clear();
       
+      if (_defaultConcurrentCycleExecutor != null) {
+        _defaultConcurrentCycleExecutor.shutdownNow();
+        _defaultConcurrentCycleExecutor = null;
+      }
+      
       _isStarted = false;
       
       // REVIEW Andrew 2010-03-25 -- It might be coincidence, but if this gets called during undeploy/stop within a container the Bloomberg API explodes with a ton of NPEs.
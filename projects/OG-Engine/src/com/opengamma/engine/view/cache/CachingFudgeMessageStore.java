@@ -120,4 +120,17 @@ public class CachingFudgeMessageStore implements FudgeMessageStore {
     }
   }
 
+  /**
+   * Populates the in-memory cache with values already held by the underlying store, for example values sent
+   * ahead of the jobs that will need them. The values are not written through.
+   *
+   * @param data map of identifier to data values known to the underlying store
+   */
+  public void prime(final Map<Long, FudgeMsg> data) {
+    s_logger.debug("Priming {} with {} values", this, data.size());
+    for (Map.Entry<Long, FudgeMsg> element : data.entrySet()) {
+      getCache().put(new Element(element.getKey(), element.getValue()));
+    }
+  }
+
 }
@@ -5,11 +5,15 @@
  */
 package com.opengamma.engine.view.cache;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReentrantLock;
@@ -134,9 +138,16 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
       // Have to double-check. Too expensive to construct otherwise.
       cache = findCache(key);
       if (cache == null) {
-        final FudgeMessageStore privateDataStore = _privateDataStoreFactory.createMessageStore(key);
-        final FudgeMessageStore sharedDataStore = (_privateDataStoreFactory == _sharedDataStoreFactory) ? privateDataStore
-            : _sharedDataStoreFactory.createMessageStore(key);
+        // The shared store is layered so that a later cycle can inherit values from it
+        final FudgeMessageStore privateDataStore;
+        final FudgeMessageStore sharedDataStore;
+        if (_privateDataStoreFactory == _sharedDataStoreFactory) {
+          privateDataStore = new LayeredFudgeMessageStore(_privateDataStoreFactory.createMessageStore(key));
+          sharedDataStore = privateDataStore;
+        } else {
+          privateDataStore = _privateDataStoreFactory.createMessageStore(key);
+          sharedDataStore = new LayeredFudgeMessageStore(_sharedDataStoreFactory.createMessageStore(key));
+        }
         cache = createViewComputationCache(getIdentifierMap(), privateDataStore, sharedDataStore, getFudgeContext());
         _cachesByKey.put(key, cache);
         List<ViewComputationCacheKey> caches = _activeCachesByCycle.get(key.getViewCycleId());
@@ -209,6 +220,46 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
     }
   }
 
+  @Override
+  public Collection<ValueSpecification> inheritValues(final UniqueId viewCycleId, final UniqueId previousViewCycleId, final String calculationConfigurationName,
+      final Collection<ValueSpecification> specifications) {
+    return inheritValues(viewCycleId, calculationConfigurationName, previousViewCycleId, calculationConfigurationName, specifications);
+  }
+
+  @Override
+  public Collection<ValueSpecification> inheritValues(final UniqueId viewCycleId, final String calculationConfigurationName, final UniqueId sourceViewCycleId,
+      final String sourceCalculationConfigurationName, final Collection<ValueSpecification> specifications) {
+    ArgumentChecker.notNull(specifications, "specifications");
+    final DefaultViewComputationCache cache = getCache(viewCycleId, calculationConfigurationName);
+    if (!(cache.getSharedDataStore() instanceof LayeredFudgeMessageStore)) {
+      return specifications;
+    }
+    final Map<ValueSpecification, Long> identifiers = getIdentifierMap().getIdentifiers(specifications);
+    final Collection<Long> missing;
+    _cacheManagementLock.lock();
+    try {
+      // Holding the lock prevents the source cycle's caches being released while values are inherited from them
+      final DefaultViewComputationCache previousCache = findCache(sourceViewCycleId, sourceCalculationConfigurationName);
+      if ((previousCache == null) || !(previousCache.getSharedDataStore() instanceof LayeredFudgeMessageStore)) {
+        return specifications;
+      }
+      missing = ((LayeredFudgeMessageStore) cache.getSharedDataStore()).inherit((LayeredFudgeMessageStore) previousCache.getSharedDataStore(), identifiers.values());
+    } finally {
+      _cacheManagementLock.unlock();
+    }
+    if (missing.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final Set<Long> missingIdentifiers = new HashSet<Long>(missing);
+    final Collection<ValueSpecification> result = new ArrayList<ValueSpecification>(missing.size());
+    for (Map.Entry<ValueSpecification, Long> identifier : identifiers.entrySet()) {
+      if (missingIdentifiers.contains(identifier.getValue())) {
+        result.add(identifier.getKey());
+      }
+    }
+    return result;
+  }
+
   public void setReleaseCachesCallback(final ReleaseCachesCallback releaseCachesCallback) {
     _releaseCachesCallback = releaseCachesCallback;
   }
@@ -8,12 +8,12 @@ package com.opengamma.engine.view.cache;
 import it.unimi.dsi.fastutil.longs.AbstractLongList;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
@@ -57,10 +57,10 @@ public class IdentifierMapServer extends CacheMessageVisitor implements FudgeReq
     if (spec.size() == 1) {
       identifiers = Collections.singleton(getUnderlying().getIdentifier(spec.get(0)));
     } else {
-      final Map<ValueSpecification, Long> identifierMap = getUnderlying().getIdentifiers(spec);
+      final Object2LongMap<ValueSpecification> identifierMap = getUnderlying().getIdentifiers(spec);
       identifiers = new ArrayList<Long>(identifierMap.size());
       for (ValueSpecification specEntry : spec) {
-        identifiers.add(identifierMap.get(specEntry));
+        identifiers.add(identifierMap.getLong(specEntry));
       }
     }
     final IdentifierLookupResponse response = new IdentifierLookupResponse(identifiers);
@@ -90,8 +90,8 @@ public class IdentifierMapServer extends CacheMessageVisitor implements FudgeReq
     } else {
       final Long2ObjectMap<ValueSpecification> specificationMap = getUnderlying().getValueSpecifications(identifiers);
       specifications = new ArrayList<ValueSpecification>(specificationMap.size());
-      for (Long identifier : identifiers) {
-        specifications.add(specificationMap.get(identifier));
+      for (int i = 0; i < identifiers.size(); i++) {
+        specifications.add(specificationMap.get(identifiers.getLong(i)));
       }
     }
     final SpecificationLookupResponse response = new SpecificationLookupResponse(specifications);
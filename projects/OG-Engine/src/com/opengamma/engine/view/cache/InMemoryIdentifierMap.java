@@ -1,48 +1,189 @@
 /**
  * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
- * 
+ *
  * Please see distribution for license.
  */
 package com.opengamma.engine.view.cache;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.util.ArgumentChecker;
 
 /**
- * An implementation of {@link IdentifierMap} which is backed by an in-memory
- * {@link ConcurrentMap}. This has no facilities for acting as a cache, or for persistence.
- * It should only be used for development and debugging purposes.
+ * An implementation of {@link IdentifierMap} which is held in memory. This has no facilities for acting as a cache,
+ * or for persistence.
+ * <p>
+ * Identifiers are allocated sequentially so the reverse lookup is a paged table indexed directly by the identifier
+ * which can be read without locking. The specification to identifier lookup is a concurrent map, so finding an existing
+ * identifier takes no lock either. Allocating a new identifier takes one of a number of stripe locks, chosen by the
+ * specification, and the bulk operation takes each stripe lock at most once and only for the specifications it has to
+ * allocate. Identifiers are boxed only when they are first allocated.
  */
 public class InMemoryIdentifierMap extends AbstractIdentifierMap implements IdentifierMap {
 
+  private static final int STRIPE_COUNT = 16;
+  private static final int PAGE_SHIFT = 12;
+  private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+
   private final AtomicLong _nextIdentifier = new AtomicLong(1L);
 
-  private final ConcurrentMap<ValueSpecification, Long> _identifiers = new ConcurrentHashMap<ValueSpecification, Long>();
-  private final ConcurrentMap<Long, ValueSpecification> _specifications = new ConcurrentHashMap<Long, ValueSpecification>();
+  private final ConcurrentMap<ValueSpecification, Long> _identifiers = new ConcurrentHashMap<ValueSpecification, Long>(16, 0.75f, STRIPE_COUNT);
+
+  /**
+   * Locks serializing the allocation of identifiers, by the stripe of the specification.
+   */
+  private final Object[] _allocationLocks;
+
+  /**
+   * Pages of the identifier to specification table; each element is an {@link AtomicReferenceArray}. The array is
+   * replaced, never modified in place, when it needs to grow.
+   */
+  private volatile Object[] _specifications = new Object[16];
+
+  public InMemoryIdentifierMap() {
+    _allocationLocks = new Object[STRIPE_COUNT];
+    for (int i = 0; i < STRIPE_COUNT; i++) {
+      _allocationLocks[i] = new Object();
+    }
+  }
+
+  private static int getStripe(final ValueSpecification spec) {
+    final int h = spec.hashCode();
+    return (h ^ (h >>> 16)) & (STRIPE_COUNT - 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  private AtomicReferenceArray<ValueSpecification> getPage(final long identifier) {
+    final Object[] pages = _specifications;
+    final long page = identifier >>> PAGE_SHIFT;
+    if (page >= pages.length) {
+      return null;
+    }
+    return (AtomicReferenceArray<ValueSpecification>) pages[(int) page];
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized AtomicReferenceArray<ValueSpecification> createPage(final long identifier) {
+    Object[] pages = _specifications;
+    final int page = (int) (identifier >>> PAGE_SHIFT);
+    if (page >= pages.length) {
+      final Object[] newPages = new Object[Math.max(page + 1, pages.length << 1)];
+      System.arraycopy(pages, 0, newPages, 0, pages.length);
+      pages = newPages;
+    } else if (pages[page] != null) {
+      return (AtomicReferenceArray<ValueSpecification>) pages[page];
+    } else {
+      pages = pages.clone();
+    }
+    final AtomicReferenceArray<ValueSpecification> newPage = new AtomicReferenceArray<ValueSpecification>(PAGE_SIZE);
+    pages[page] = newPage;
+    _specifications = pages;
+    return newPage;
+  }
+
+  /**
+   * Returns the identifier for the specification, allocating one if there is none. The caller must hold the allocation
+   * lock for the specification's stripe.
+   */
+  private long getOrAllocateIdentifier(final ValueSpecification spec) {
+    final Long existing = _identifiers.get(spec);
+    if (existing != null) {
+      // Allocated by another thread since the unlocked lookup
+      return existing;
+    }
+    final long identifier = _nextIdentifier.getAndIncrement();
+    AtomicReferenceArray<ValueSpecification> page = getPage(identifier);
+    if (page == null) {
+      page = createPage(identifier);
+    }
+    // Publish the reverse mapping before the identifier can be seen by anyone else
+    page.set((int) identifier & PAGE_MASK, spec);
+    _identifiers.put(spec, identifier);
+    return identifier;
+  }
 
   @Override
-  public long getIdentifier(ValueSpecification spec) {
+  public long getIdentifier(final ValueSpecification spec) {
     ArgumentChecker.notNull(spec, "Value specification");
-    Long result = _identifiers.get(spec);
-    if (result != null) {
-      return result;
+    final Long identifier = _identifiers.get(spec);
+    if (identifier != null) {
+      return identifier;
     }
-    long freshIdentifier = _nextIdentifier.getAndIncrement();
-    result = _identifiers.putIfAbsent(spec, freshIdentifier);
-    if (result == null) {
-      result = freshIdentifier;
-      _specifications.put(freshIdentifier, spec);
+    synchronized (_allocationLocks[getStripe(spec)]) {
+      return getOrAllocateIdentifier(spec);
+    }
+  }
+
+  @Override
+  public Object2LongMap<ValueSpecification> getIdentifiers(final Collection<ValueSpecification> specs) {
+    final int count = specs.size();
+    final Object2LongMap<ValueSpecification> result = new Object2LongOpenHashMap<ValueSpecification>(count);
+    ValueSpecification[] missing = null;
+    int[] stripes = null;
+    int missingCount = 0;
+    int stripeMask = 0;
+    for (ValueSpecification spec : specs) {
+      ArgumentChecker.notNull(spec, "Value specification");
+      final Long identifier = _identifiers.get(spec);
+      if (identifier != null) {
+        result.put(spec, identifier.longValue());
+      } else {
+        if (missing == null) {
+          missing = new ValueSpecification[count];
+          stripes = new int[count];
+        }
+        missing[missingCount] = spec;
+        stripes[missingCount] = getStripe(spec);
+        stripeMask |= 1 << stripes[missingCount];
+        missingCount++;
+      }
+    }
+    for (int s = 0; s < STRIPE_COUNT; s++) {
+      if ((stripeMask & (1 << s)) == 0) {
+        continue;
+      }
+      synchronized (_allocationLocks[s]) {
+        for (int i = 0; i < missingCount; i++) {
+          if (stripes[i] == s) {
+            result.put(missing[i], getOrAllocateIdentifier(missing[i]));
+          }
+        }
+      }
     }
     return result;
   }
 
   @Override
-  public ValueSpecification getValueSpecification(long identifier) {
-    return _specifications.get(identifier);
+  public ValueSpecification getValueSpecification(final long identifier) {
+    final AtomicReferenceArray<ValueSpecification> page = getPage(identifier);
+    if (page == null) {
+      return null;
+    }
+    return page.get((int) identifier & PAGE_MASK);
+  }
+
+  @Override
+  public Long2ObjectMap<ValueSpecification> getValueSpecifications(final LongCollection identifiers) {
+    final Long2ObjectMap<ValueSpecification> result = new Long2ObjectOpenHashMap<ValueSpecification>(identifiers.size());
+    final LongIterator itr = identifiers.iterator();
+    while (itr.hasNext()) {
+      final long identifier = itr.nextLong();
+      result.put(identifier, getValueSpecification(identifier));
+    }
+    return result;
   }
 
 }
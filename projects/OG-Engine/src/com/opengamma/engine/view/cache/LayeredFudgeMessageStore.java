@@ -0,0 +1,287 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fudgemsg.FudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * A {@link FudgeMessageStore} that overlays the values written to it on values inherited, by reference, from the
+ * stores of earlier cycles. This lets a delta cycle use the values of unchanged nodes from the previous cycle without
+ * copying them.
+ * <p>
+ * The identifiers written to the underlying store are tracked so that a later layer can refer directly to the store
+ * that holds each inherited value, rather than to a chain of layers. Stores are reference counted; the underlying store
+ * is deleted when the owning cycle and every layer inheriting from it have been released.
+ * <p>
+ * A value that never changes would otherwise keep the whole store of the cycle that first calculated it alive
+ * indefinitely. Values held by a layer more than {@link #MAXIMUM_INHERITANCE_DEPTH} generations back are instead copied
+ * into the inheriting layer, so that old stores are released after a bounded number of cycles.
+ */
+public class LayeredFudgeMessageStore implements FudgeMessageStore {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(LayeredFudgeMessageStore.class);
+
+  /**
+   * The number of generations a value may be inherited by reference before it is copied forward.
+   */
+  public static final int MAXIMUM_INHERITANCE_DEPTH = 4;
+
+  private final FudgeMessageStore _underlying;
+  /**
+   * The identifiers written to the underlying store. Guarded by its own monitor.
+   */
+  private final LongSet _local = new LongOpenHashSet();
+  /**
+   * The layers holding inherited values, keyed by identifier. Replaced rather than modified so may be read without locking.
+   */
+  private volatile Long2ObjectMap<LayeredFudgeMessageStore> _inherited;
+  /**
+   * The layers this one holds a reference to. Guarded by this object's monitor.
+   */
+  private Set<LayeredFudgeMessageStore> _parents;
+  /**
+   * One reference for the owning cycle plus one for each layer inheriting values from this one.
+   */
+  private final AtomicInteger _references = new AtomicInteger(1);
+  private final AtomicBoolean _deleted = new AtomicBoolean();
+  /**
+   * The number of layers between this one and a store that inherits nothing.
+   */
+  private volatile int _generation;
+
+  public LayeredFudgeMessageStore(final FudgeMessageStore underlying) {
+    ArgumentChecker.notNull(underlying, "underlying");
+    _underlying = underlying;
+  }
+
+  public FudgeMessageStore getUnderlying() {
+    return _underlying;
+  }
+
+  private boolean isLocal(final long identifier) {
+    synchronized (_local) {
+      return _local.contains(identifier);
+    }
+  }
+
+  /**
+   * Inherits values from another layer by reference. Values that the other layer inherited itself are referenced at
+   * the layer that holds them, unless that layer is more than {@link #MAXIMUM_INHERITANCE_DEPTH} generations back in
+   * which case the values are copied into this one.
+   *
+   * @param parent the layer to inherit from, not null
+   * @param identifiers the identifiers of the values to inherit, not null
+   * @return the identifiers that are not held by the parent layer and so could not be inherited, not null
+   */
+  /* package */synchronized Collection<Long> inherit(final LayeredFudgeMessageStore parent, final Collection<Long> identifiers) {
+    // Hold the parent while its values are resolved
+    if (!parent.retain()) {
+      s_logger.warn("Can't inherit values from released store {}", parent);
+      return identifiers;
+    }
+    final Long2ObjectMap<LayeredFudgeMessageStore> parentInherited = parent._inherited;
+    final Long2ObjectMap<LayeredFudgeMessageStore> inherited = (_inherited != null) ? new Long2ObjectOpenHashMap<LayeredFudgeMessageStore>(_inherited)
+        : new Long2ObjectOpenHashMap<LayeredFudgeMessageStore>(identifiers.size());
+    final Set<LayeredFudgeMessageStore> owners = new HashSet<LayeredFudgeMessageStore>();
+    final List<Long> missing = new ArrayList<Long>();
+    final int generation = Math.max(_generation, parent._generation + 1);
+    Map<LayeredFudgeMessageStore, List<Long>> copy = null;
+    for (Long identifier : identifiers) {
+      final LayeredFudgeMessageStore owner;
+      if (parent.isLocal(identifier)) {
+        owner = parent;
+      } else if (parentInherited != null) {
+        owner = parentInherited.get(identifier.longValue());
+      } else {
+        owner = null;
+      }
+      if ((owner == null) || (owner == this)) {
+        missing.add(identifier);
+      } else if (generation - owner._generation > MAXIMUM_INHERITANCE_DEPTH) {
+        if (copy == null) {
+          copy = new HashMap<LayeredFudgeMessageStore, List<Long>>();
+        }
+        List<Long> ownerIdentifiers = copy.get(owner);
+        if (ownerIdentifiers == null) {
+          ownerIdentifiers = new ArrayList<Long>();
+          copy.put(owner, ownerIdentifiers);
+        }
+        ownerIdentifiers.add(identifier);
+      } else {
+        inherited.put(identifier.longValue(), owner);
+        owners.add(owner);
+      }
+    }
+    if (copy != null) {
+      // The owners are held by the parent so their values are still available
+      for (Map.Entry<LayeredFudgeMessageStore, List<Long>> owner : copy.entrySet()) {
+        final Map<Long, FudgeMsg> values = owner.getKey().getUnderlying().get(owner.getValue());
+        for (Long identifier : owner.getValue()) {
+          if (!values.containsKey(identifier)) {
+            missing.add(identifier);
+          }
+        }
+        put(values);
+        s_logger.debug("{} copied {} values from {}", new Object[] {this, values.size(), owner.getKey() });
+      }
+    }
+    if (_parents == null) {
+      _parents = new HashSet<LayeredFudgeMessageStore>();
+    }
+    for (LayeredFudgeMessageStore owner : owners) {
+      if (_parents.add(owner)) {
+        // The owners are all held by the parent, or are the parent, so can't have been released
+        owner.retain();
+      }
+    }
+    // Drop the temporary reference taken above
+    parent.release();
+    _generation = generation;
+    _inherited = inherited;
+    s_logger.debug("{} inherited {} values from {} stores", new Object[] {this, inherited.size(), owners.size() });
+    return missing;
+  }
+
+  private boolean retain() {
+    int references;
+    do {
+      references = _references.get();
+      if (references <= 0) {
+        return false;
+      }
+    } while (!_references.compareAndSet(references, references + 1));
+    return true;
+  }
+
+  private void release() {
+    if (_references.decrementAndGet() == 0) {
+      s_logger.debug("Deleting {}", this);
+      getUnderlying().delete();
+      final Set<LayeredFudgeMessageStore> parents;
+      synchronized (this) {
+        parents = _parents;
+        _parents = null;
+        _inherited = null;
+      }
+      if (parents != null) {
+        for (LayeredFudgeMessageStore parent : parents) {
+          parent.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * Releases the owning cycle's reference. The underlying store is deleted once no later layers refer to it.
+   */
+  @Override
+  public void delete() {
+    if (!_deleted.getAndSet(true)) {
+      release();
+    }
+  }
+
+  @Override
+  public FudgeMsg get(final long identifier) {
+    final FudgeMsg data = getUnderlying().get(identifier);
+    if (data != null) {
+      return data;
+    }
+    final Long2ObjectMap<LayeredFudgeMessageStore> inherited = _inherited;
+    if (inherited != null) {
+      final LayeredFudgeMessageStore owner = inherited.get(identifier);
+      if (owner != null) {
+        return owner.getUnderlying().get(identifier);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Map<Long, FudgeMsg> get(final Collection<Long> identifiers) {
+    final Map<Long, FudgeMsg> data = getUnderlying().get(identifiers);
+    final Long2ObjectMap<LayeredFudgeMessageStore> inherited = _inherited;
+    if ((inherited == null) || (data.size() == identifiers.size())) {
+      return data;
+    }
+    Map<LayeredFudgeMessageStore, List<Long>> missing = null;
+    for (Long identifier : identifiers) {
+      if (!data.containsKey(identifier)) {
+        final LayeredFudgeMessageStore owner = inherited.get(identifier.longValue());
+        if (owner != null) {
+          if (missing == null) {
+            missing = new HashMap<LayeredFudgeMessageStore, List<Long>>();
+          }
+          List<Long> ownerIdentifiers = missing.get(owner);
+          if (ownerIdentifiers == null) {
+            ownerIdentifiers = new ArrayList<Long>();
+            missing.put(owner, ownerIdentifiers);
+          }
+          ownerIdentifiers.add(identifier);
+        }
+      }
+    }
+    if (missing == null) {
+      return data;
+    }
+    final Map<Long, FudgeMsg> result = new HashMap<Long, FudgeMsg>(data);
+    for (Map.Entry<LayeredFudgeMessageStore, List<Long>> owner : missing.entrySet()) {
+      if (owner.getValue().size() == 1) {
+        final Long identifier = owner.getValue().get(0);
+        final FudgeMsg value = owner.getKey().getUnderlying().get(identifier);
+        if (value != null) {
+          result.put(identifier, value);
+        }
+      } else {
+        result.putAll(owner.getKey().getUnderlying().get(owner.getValue()));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void put(final long identifier, final FudgeMsg data) {
+    getUnderlying().put(identifier, data);
+    synchronized (_local) {
+      _local.add(identifier);
+    }
+  }
+
+  @Override
+  public void put(final Map<Long, FudgeMsg> data) {
+    getUnderlying().put(data);
+    synchronized (_local) {
+      for (Long identifier : data.keySet()) {
+        _local.add(identifier.longValue());
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "LayeredFudgeMessageStore[" + getUnderlying() + "]";
+  }
+
+}
@@ -0,0 +1,332 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * An implementation of {@link BinaryDataStore} which holds the data outside of the Java heap.
+ * <p>
+ * Values are appended to fixed size slabs which are either direct {@link ByteBuffer}s or, if a
+ * folder is given, memory-mapped temporary files. The slab locations are indexed by an
+ * open-addressing table of primitive {@code long}s so that no objects are retained on the heap
+ * for each stored value. Overwriting an identifier appends the new value and leaves the old
+ * space unused until the store is deleted; this matches the write-once usage pattern of the
+ * computation caches.
+ * <p>
+ * Deleting the store releases the slabs' native memory and mappings immediately rather than
+ * waiting for the buffers to be garbage collected, which may not happen before the next cycle
+ * allocates its own slabs.
+ * <p>
+ * This class is internally synchronized.
+ */
+public class OffHeapBinaryDataStore extends AbstractBinaryDataStore implements BinaryDataStore {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(OffHeapBinaryDataStore.class);
+
+  /**
+   * Default size of each slab in bytes.
+   */
+  public static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+  private static final int INITIAL_INDEX_SIZE = 1024;
+
+  private final int _slabSize;
+  private final File _folder;
+  private final String _name;
+  private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+
+  private final List<ByteBuffer> _slabs = new ArrayList<ByteBuffer>();
+  private final List<RandomAccessFile> _files = new ArrayList<RandomAccessFile>();
+  private final List<File> _fileNames = new ArrayList<File>();
+  private ByteBuffer _currentSlab;
+
+  // Open-addressing index. A location of 0 marks an empty slot; stored locations are
+  // (slab index + 1) << 32 | offset so are never 0.
+  private long[] _keys = new long[INITIAL_INDEX_SIZE];
+  private long[] _locations = new long[INITIAL_INDEX_SIZE];
+  private int _size;
+  private boolean _deleted;
+
+  /**
+   * Creates a store backed by direct buffers.
+   *
+   * @param slabSize the size of each slab in bytes
+   */
+  public OffHeapBinaryDataStore(final int slabSize) {
+    this(slabSize, null, null);
+  }
+
+  /**
+   * Creates a store backed by memory-mapped files.
+   *
+   * @param slabSize the size of each slab in bytes
+   * @param folder the folder to create the mapped files in, null to use direct buffers
+   * @param name the prefix for the mapped file names, not null if a folder is given
+   */
+  public OffHeapBinaryDataStore(final int slabSize, final File folder, final String name) {
+    ArgumentChecker.isTrue(slabSize > 4, "slabSize must be greater than 4");
+    if (folder != null) {
+      ArgumentChecker.notNull(name, "name");
+    }
+    _slabSize = slabSize;
+    _folder = folder;
+    _name = name;
+  }
+
+  public int getSlabSize() {
+    return _slabSize;
+  }
+
+  /**
+   * Returns the folder used for the memory-mapped files, or null if direct buffers are used.
+   *
+   * @return the folder, or null
+   */
+  public File getFolder() {
+    return _folder;
+  }
+
+  /**
+   * Returns the number of identifiers held in the store.
+   *
+   * @return the number of values
+   */
+  public int size() {
+    _lock.readLock().lock();
+    try {
+      return _size;
+    } finally {
+      _lock.readLock().unlock();
+    }
+  }
+
+  private static int hash(final long identifier) {
+    final long h = identifier * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private long findLocation(final long identifier) {
+    final int mask = _keys.length - 1;
+    int i = hash(identifier) & mask;
+    long location;
+    while ((location = _locations[i]) != 0) {
+      if (_keys[i] == identifier) {
+        return location;
+      }
+      i = (i + 1) & mask;
+    }
+    return 0;
+  }
+
+  private void storeLocation(final long[] keys, final long[] locations, final long identifier, final long location) {
+    final int mask = keys.length - 1;
+    int i = hash(identifier) & mask;
+    while (locations[i] != 0) {
+      if (keys[i] == identifier) {
+        locations[i] = location;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = identifier;
+    locations[i] = location;
+    _size++;
+  }
+
+  private void growIndex() {
+    final long[] oldKeys = _keys;
+    final long[] oldLocations = _locations;
+    _keys = new long[oldKeys.length << 1];
+    _locations = new long[oldLocations.length << 1];
+    _size = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldLocations[i] != 0) {
+        storeLocation(_keys, _locations, oldKeys[i], oldLocations[i]);
+      }
+    }
+  }
+
+  private ByteBuffer allocateSlab(final int size) {
+    if (_folder == null) {
+      return ByteBuffer.allocateDirect(size);
+    }
+    final File file = new File(_folder, _name + "-" + _slabs.size() + ".dat");
+    try {
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      _files.add(raf);
+      _fileNames.add(file);
+      raf.setLength(size);
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    } catch (IOException e) {
+      throw new OpenGammaRuntimeException("Couldn't map slab file " + file, e);
+    }
+  }
+
+  private void putImpl(final long identifier, final byte[] data) {
+    ArgumentChecker.notNull(data, "data");
+    if (_deleted) {
+      throw new IllegalStateException("Store has been deleted");
+    }
+    final int required = data.length + 4;
+    if ((_currentSlab == null) || (_currentSlab.remaining() < required)) {
+      final ByteBuffer slab = allocateSlab(Math.max(required, _slabSize));
+      _slabs.add(slab);
+      _currentSlab = slab;
+    }
+    final int offset = _currentSlab.position();
+    _currentSlab.putInt(data.length);
+    _currentSlab.put(data);
+    if ((_size + 1) * 2 > _keys.length) {
+      growIndex();
+    }
+    storeLocation(_keys, _locations, identifier, ((long) _slabs.size() << 32) | offset);
+  }
+
+  private byte[] getImpl(final long identifier) {
+    if (_deleted) {
+      return null;
+    }
+    final long location = findLocation(identifier);
+    if (location == 0) {
+      return null;
+    }
+    // Absolute reads on a duplicate so that concurrent readers don't share a position
+    final ByteBuffer slab = _slabs.get((int) (location >>> 32) - 1).duplicate();
+    final int offset = (int) location;
+    final byte[] data = new byte[slab.getInt(offset)];
+    slab.position(offset + 4);
+    slab.get(data);
+    return data;
+  }
+
+  @Override
+  public byte[] get(final long identifier) {
+    _lock.readLock().lock();
+    try {
+      return getImpl(identifier);
+    } finally {
+      _lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Map<Long, byte[]> get(final Collection<Long> identifiers) {
+    final Map<Long, byte[]> result = new HashMap<Long, byte[]>();
+    _lock.readLock().lock();
+    try {
+      for (Long identifier : identifiers) {
+        final byte[] data = getImpl(identifier);
+        if (data != null) {
+          result.put(identifier, data);
+        }
+      }
+    } finally {
+      _lock.readLock().unlock();
+    }
+    return result;
+  }
+
+  @Override
+  public void put(final long identifier, final byte[] data) {
+    _lock.writeLock().lock();
+    try {
+      putImpl(identifier, data);
+    } finally {
+      _lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void put(final Map<Long, byte[]> data) {
+    _lock.writeLock().lock();
+    try {
+      for (Map.Entry<Long, byte[]> entry : data.entrySet()) {
+        putImpl(entry.getKey(), entry.getValue());
+      }
+    } finally {
+      _lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void delete() {
+    _lock.writeLock().lock();
+    try {
+      _deleted = true;
+      // Readers hold the read lock while copying out of a slab, so none can be using one now
+      for (ByteBuffer slab : _slabs) {
+        release(slab);
+      }
+      _slabs.clear();
+      _currentSlab = null;
+      _keys = new long[0];
+      _locations = new long[0];
+      _size = 0;
+      for (RandomAccessFile file : _files) {
+        try {
+          file.close();
+        } catch (IOException e) {
+          s_logger.warn("Couldn't close slab file", e);
+        }
+      }
+      _files.clear();
+      for (File file : _fileNames) {
+        if (!file.delete()) {
+          // Mapped regions on some platforms can't be removed until the buffer is collected, if it couldn't be released
+          file.deleteOnExit();
+        }
+      }
+      _fileNames.clear();
+    } finally {
+      _lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Frees the native memory of a direct buffer, or unmaps a mapped one, without waiting for it to be collected. The
+   * JDK has no public API for this so the buffer's cleaner is invoked reflectively; if that isn't available the memory
+   * is left to be freed when the buffer is collected.
+   *
+   * @param buffer the buffer to release, not used again afterwards
+   */
+  private static void release(final ByteBuffer buffer) {
+    if (!buffer.isDirect()) {
+      return;
+    }
+    try {
+      final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      final Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        final Method cleanMethod = cleaner.getClass().getMethod("clean");
+        cleanMethod.setAccessible(true);
+        cleanMethod.invoke(cleaner);
+      }
+    } catch (Exception e) {
+      s_logger.debug("Couldn't release slab, leaving it to the garbage collector", e);
+    }
+  }
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import java.io.File;
+
+/**
+ * Creates {@link OffHeapBinaryDataStore} instances. If a folder is set the stores will use memory-mapped
+ * files within it, otherwise direct buffers.
+ */
+public class OffHeapBinaryDataStoreFactory implements BinaryDataStoreFactory {
+
+  private final int _slabSize;
+  private final File _folder;
+
+  public OffHeapBinaryDataStoreFactory() {
+    this(OffHeapBinaryDataStore.DEFAULT_SLAB_SIZE, null);
+  }
+
+  public OffHeapBinaryDataStoreFactory(final int slabSize, final File folder) {
+    _slabSize = slabSize;
+    _folder = folder;
+  }
+
+  public int getSlabSize() {
+    return _slabSize;
+  }
+
+  public File getFolder() {
+    return _folder;
+  }
+
+  @Override
+  public BinaryDataStore createDataStore(ViewComputationCacheKey cacheKey) {
+    if (getFolder() == null) {
+      return new OffHeapBinaryDataStore(getSlabSize());
+    } else {
+      final String name = cacheKey.getViewCycleId().toString().replaceAll("[^A-Za-z0-9\\-]", "_") + "-" + cacheKey.getCalculationConfigurationName().replaceAll("[^A-Za-z0-9\\-]", "_");
+      return new OffHeapBinaryDataStore(getSlabSize(), getFolder(), name);
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import java.io.File;
+
+import com.opengamma.util.SingletonFactoryBean;
+
+/**
+ * Spring helper for creating {@link OffHeapBinaryDataStoreFactory} instances. If no data store folder is set
+ * the stores will use direct buffers rather than memory-mapped files.
+ */
+public class OffHeapBinaryDataStoreFactoryFactoryBean extends SingletonFactoryBean<OffHeapBinaryDataStoreFactory> {
+
+  private int _slabSize = OffHeapBinaryDataStore.DEFAULT_SLAB_SIZE;
+  private String _dataStoreBaseFolder;
+  private String _dataStoreFolder;
+
+  public OffHeapBinaryDataStoreFactoryFactoryBean() {
+    setDataStoreBaseFolder(System.getProperty("java.io.tmpdir"));
+  }
+
+  public void setSlabSize(final int slabSize) {
+    _slabSize = slabSize;
+  }
+
+  public int getSlabSize() {
+    return _slabSize;
+  }
+
+  public void setDataStoreBaseFolder(final String dataStoreBaseFolder) {
+    _dataStoreBaseFolder = dataStoreBaseFolder;
+  }
+
+  public String getDataStoreBaseFolder() {
+    return _dataStoreBaseFolder;
+  }
+
+  public void setDataStoreFolder(final String dataStoreFolder) {
+    _dataStoreFolder = dataStoreFolder;
+  }
+
+  public String getDataStoreFolder() {
+    return _dataStoreFolder;
+  }
+
+  @Override
+  protected OffHeapBinaryDataStoreFactory createObject() {
+    if (getDataStoreFolder() == null) {
+      return new OffHeapBinaryDataStoreFactory(getSlabSize(), null);
+    }
+    final File folder = new File(new File(getDataStoreBaseFolder()), getDataStoreFolder());
+    folder.mkdirs();
+    return new OffHeapBinaryDataStoreFactory(getSlabSize(), folder);
+  }
+
+}
@@ -8,6 +8,7 @@ package com.opengamma.engine.view.cache;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.objects.Object2LongMap;
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 
@@ -49,7 +50,7 @@ public class RemoteIdentifierMap implements IdentifierMap {
     final IdentifierLookupRequest request = new IdentifierLookupRequest(specs);
     final IdentifierLookupResponse response = getRemoteCacheClient().sendGetMessage(request, IdentifierLookupResponse.class);
     final List<Long> identifiers = response.getIdentifier();
-    final Object2LongMap<ValueSpecification> identifierMap = new Object2LongOpenHashMap<ValueSpecification>();
+    final Object2LongMap<ValueSpecification> identifierMap = new Object2LongOpenHashMap<ValueSpecification>(identifiers.size());
     int i = 0;
     for (ValueSpecification spec : request.getSpecification()) {
       identifierMap.put(spec, identifiers.get(i++));
@@ -69,10 +70,12 @@ public class RemoteIdentifierMap implements IdentifierMap {
     final SpecificationLookupRequest request = new SpecificationLookupRequest(identifiers);
     final SpecificationLookupResponse response = getRemoteCacheClient().sendGetMessage(request, SpecificationLookupResponse.class);
     final List<ValueSpecification> specifications = response.getSpecification();
-    final Long2ObjectMap<ValueSpecification> specificationMap = new Long2ObjectOpenHashMap<ValueSpecification>();
+    final Long2ObjectMap<ValueSpecification> specificationMap = new Long2ObjectOpenHashMap<ValueSpecification>(specifications.size());
+    // The request holds the identifiers in the iteration order of the original collection
+    final LongIterator itr = identifiers.iterator();
     int i = 0;
-    for (Long identifier : request.getIdentifier()) {
-      specificationMap.put(identifier, MemoryUtils.instance(specifications.get(i++)));
+    while (itr.hasNext()) {
+      specificationMap.put(itr.nextLong(), MemoryUtils.instance(specifications.get(i++)));
     }
     return specificationMap;
   }
@@ -5,6 +5,9 @@
  */
 package com.opengamma.engine.view.cache;
 
+import java.util.Collection;
+
+import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.id.UniqueId;
 
 /**
@@ -40,5 +43,34 @@ public interface ViewComputationCacheSource {
    * @param viewCycleId  the unique identifier of the view cycle
    */
   void releaseCaches(UniqueId viewCycleId);
-  
+
+  /**
+   * Makes values from a previous view cycle's cache visible in the cache for a new view cycle without copying them.
+   * The values written to the new cache are overlaid on those inherited. The previous cycle's values remain available
+   * to the new cycle after the previous cycle's caches have been released, until the new cycle's caches are released.
+   * 
+   * @param viewCycleId  the unique identifier of the new view cycle, not null
+   * @param previousViewCycleId  the unique identifier of the previous view cycle, not null
+   * @param calculationConfigurationName  the name of the view calculation configuration, not null
+   * @param specifications  the values to inherit, not null
+   * @return the values that could not be inherited and must be copied by the caller, not null
+   */
+  Collection<ValueSpecification> inheritValues(UniqueId viewCycleId, UniqueId previousViewCycleId, String calculationConfigurationName,
+      Collection<ValueSpecification> specifications);
+
+  /**
+   * Makes values from another view cycle's cache visible in the cache for a view cycle without copying them. This is as
+   * {@link #inheritValues(UniqueId, UniqueId, String, Collection)} but the other cycle may be from a different view, with
+   * a different name for the calculation configuration.
+   * 
+   * @param viewCycleId  the unique identifier of the view cycle, not null
+   * @param calculationConfigurationName  the name of the view calculation configuration, not null
+   * @param sourceViewCycleId  the unique identifier of the view cycle holding the values, not null
+   * @param sourceCalculationConfigurationName  the name of the calculation configuration holding the values, not null
+   * @param specifications  the values to inherit, not null
+   * @return the values that could not be inherited, not null
+   */
+  Collection<ValueSpecification> inheritValues(UniqueId viewCycleId, String calculationConfigurationName, UniqueId sourceViewCycleId, String sourceCalculationConfigurationName,
+      Collection<ValueSpecification> specifications);
+
 }
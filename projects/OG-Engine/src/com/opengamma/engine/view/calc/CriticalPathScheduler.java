@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Cost model for a partitioned graph based on the critical path through the fragments.
+ * <p>
+ * The rank of a fragment is its own cost plus the most expensive path through the fragments that depend on it, so fragments with
+ * the highest rank are on the critical path and should be dispatched first. The makespan of the graph is predicted by a list
+ * scheduling simulation in which fragments are run in rank order on a fixed number of nodes.
+ */
+/* package */class CriticalPathScheduler {
+
+  private final Collection<MutableGraphFragment> _fragments;
+  private final Map<MutableGraphFragment, Long> _rank;
+  private final List<MutableGraphFragment> _executionOrder;
+
+  /**
+   * Creates a cost model for the fragments.
+   *
+   * @param fragments all of the fragments in the graph, excluding the logical root
+   */
+  public CriticalPathScheduler(final Collection<MutableGraphFragment> fragments) {
+    _fragments = fragments;
+    _rank = new HashMap<MutableGraphFragment, Long>(fragments.size() * 2);
+    _executionOrder = executionOrder(fragments);
+    // Walk backwards from the roots so that each fragment's dependents are ranked before it
+    for (int i = _executionOrder.size() - 1; i >= 0; i--) {
+      final MutableGraphFragment fragment = _executionOrder.get(i);
+      long longest = 0;
+      for (MutableGraphFragment output : fragment.getOutputFragments()) {
+        final Long outputRank = _rank.get(output);
+        if ((outputRank != null) && (outputRank > longest)) {
+          longest = outputRank;
+        }
+      }
+      _rank.put(fragment, fragment.getJobCost() + longest);
+    }
+  }
+
+  /**
+   * Orders the fragments so that every fragment appears after all of its inputs.
+   */
+  private static List<MutableGraphFragment> executionOrder(final Collection<MutableGraphFragment> fragments) {
+    final Map<MutableGraphFragment, int[]> pending = new HashMap<MutableGraphFragment, int[]>(fragments.size() * 2);
+    final List<MutableGraphFragment> order = new ArrayList<MutableGraphFragment>(fragments.size());
+    for (MutableGraphFragment fragment : fragments) {
+      if (fragment.getInputFragments().isEmpty()) {
+        order.add(fragment);
+      } else {
+        pending.put(fragment, new int[] {fragment.getInputFragments().size() });
+      }
+    }
+    for (int i = 0; i < order.size(); i++) {
+      for (MutableGraphFragment output : order.get(i).getOutputFragments()) {
+        final int[] count = pending.get(output);
+        if ((count != null) && (--count[0] == 0)) {
+          order.add(output);
+        }
+      }
+    }
+    return order;
+  }
+
+  /**
+   * Returns the rank of a fragment - the estimated time, in nanoseconds, from the fragment starting to the graph completing if
+   * there were unlimited nodes available.
+   *
+   * @param fragment the fragment
+   * @return the rank, or zero if the fragment is not part of the graph
+   */
+  public long getRank(final MutableGraphFragment fragment) {
+    final Long rank = _rank.get(fragment);
+    return (rank != null) ? rank : 0;
+  }
+
+  /**
+   * Returns the length of the critical path through the graph.
+   *
+   * @return the estimated time, in nanoseconds, to execute the graph with unlimited nodes
+   */
+  public long getCriticalPathLength() {
+    long longest = 0;
+    for (MutableGraphFragment fragment : _fragments) {
+      if (fragment.getInputFragments().isEmpty()) {
+        longest = Math.max(longest, getRank(fragment));
+      }
+    }
+    return longest;
+  }
+
+  /**
+   * Returns a comparator that orders fragments by descending rank.
+   *
+   * @return the comparator
+   */
+  public Comparator<MutableGraphFragment> getRankComparator() {
+    return new Comparator<MutableGraphFragment>() {
+      @Override
+      public int compare(final MutableGraphFragment o1, final MutableGraphFragment o2) {
+        final long r1 = getRank(o1);
+        final long r2 = getRank(o2);
+        return (r1 > r2) ? -1 : ((r1 < r2) ? 1 : 0);
+      }
+    };
+  }
+
+  /**
+   * Predicts the makespan of the graph by simulating list scheduling of the fragments, highest rank first, on a number of nodes.
+   *
+   * @param nodeCount the number of calculation nodes available, or zero or less for unlimited nodes
+   * @return the predicted time, in nanoseconds, to execute the graph
+   */
+  public long predictMakespan(final int nodeCount) {
+    if ((nodeCount <= 0) || (nodeCount >= _fragments.size())) {
+      return getCriticalPathLength();
+    }
+    final Map<MutableGraphFragment, long[]> readyTime = new HashMap<MutableGraphFragment, long[]>(_fragments.size() * 2);
+    final Map<MutableGraphFragment, int[]> pending = new HashMap<MutableGraphFragment, int[]>(_fragments.size() * 2);
+    final PriorityQueue<MutableGraphFragment> ready = new PriorityQueue<MutableGraphFragment>(Math.max(_fragments.size(), 1), getRankComparator());
+    for (MutableGraphFragment fragment : _executionOrder) {
+      readyTime.put(fragment, new long[1]);
+      if (fragment.getInputFragments().isEmpty()) {
+        ready.add(fragment);
+      } else {
+        pending.put(fragment, new int[] {fragment.getInputFragments().size() });
+      }
+    }
+    final PriorityQueue<Long> nodeFree = new PriorityQueue<Long>(nodeCount);
+    for (int i = 0; i < nodeCount; i++) {
+      nodeFree.add(0L);
+    }
+    long makespan = 0;
+    while (!ready.isEmpty()) {
+      final MutableGraphFragment fragment = ready.poll();
+      final long finish = Math.max(nodeFree.poll(), readyTime.get(fragment)[0]) + fragment.getJobCost();
+      nodeFree.add(finish);
+      if (finish > makespan) {
+        makespan = finish;
+      }
+      for (MutableGraphFragment output : fragment.getOutputFragments()) {
+        final int[] count = pending.get(output);
+        if (count != null) {
+          final long[] time = readyTime.get(output);
+          if (finish > time[0]) {
+            time[0] = finish;
+          }
+          if (--count[0] == 0) {
+            ready.add(output);
+          }
+        }
+      }
+    }
+    return makespan;
+  }
+
+}
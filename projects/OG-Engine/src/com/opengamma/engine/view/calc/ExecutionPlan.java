@@ -33,6 +33,12 @@ import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
 
   private static final Logger s_logger = LoggerFactory.getLogger(ExecutionPlan.class);
 
+  private final long _predictedDuration;
+
+  protected ExecutionPlan(final long predictedDuration) {
+    _predictedDuration = predictedDuration;
+  }
+
   private static Collection<DependencyNode> mapNodes(final Collection<DependencyNode> from, final Map<DependencyNodeKey, DependencyNode> to) {
     final Collection<DependencyNode> nodes = new ArrayList<DependencyNode>(from.size());
     for (DependencyNode node : from) {
@@ -54,7 +60,8 @@ import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
     private final Collection<DependencyNode> _nodes;
     private final CacheSelectHint _cacheSelectHint;
 
-    public SingleFragment(final Collection<DependencyNode> nodes, final CacheSelectHint cacheSelectHint) {
+    public SingleFragment(final Collection<DependencyNode> nodes, final CacheSelectHint cacheSelectHint, final long predictedDuration) {
+      super(predictedDuration);
       s_logger.info("Creating {} for {} nodes", this, nodes.size());
       _nodes = nodes;
       _cacheSelectHint = cacheSelectHint;
@@ -72,7 +79,7 @@ import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
 
     @Override
     public SingleFragment withNodes(final Map<DependencyNodeKey, DependencyNode> nodes) {
-      return new SingleFragment(mapNodes(_nodes, nodes), _cacheSelectHint);
+      return new SingleFragment(mapNodes(_nodes, nodes), _cacheSelectHint, getPredictedDuration());
     }
 
   }
@@ -157,13 +164,14 @@ import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
 
     private final Map<Integer, FragmentDescriptor> _fragments;
 
-    public MultipleFragment(final GraphFragment<?> root) {
-      this(new HashMap<Integer, FragmentDescriptor>());
+    public MultipleFragment(final GraphFragment<?> root, final long predictedDuration) {
+      this(new HashMap<Integer, FragmentDescriptor>(), predictedDuration);
       s_logger.info("Creating {}", this);
       process(root.getInputFragments());
     }
 
-    private MultipleFragment(final Map<Integer, FragmentDescriptor> fragments) {
+    private MultipleFragment(final Map<Integer, FragmentDescriptor> fragments, final long predictedDuration) {
+      super(predictedDuration);
       _fragments = fragments;
     }
 
@@ -229,7 +237,7 @@ import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
       for (Map.Entry<Integer, FragmentDescriptor> fragment : fragments.entrySet()) {
         fragment.setValue(new FragmentDescriptor(fragment.getValue(), nodes));
       }
-      return new MultipleFragment(fragments);
+      return new MultipleFragment(fragments, getPredictedDuration());
     }
 
   }
@@ -240,11 +248,27 @@ import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
    * @param root the root of the fragment tree
    */
   public static ExecutionPlan of(final MutableGraphFragment.Root root) {
-    return new MultipleFragment(root);
+    return new MultipleFragment(root, root.getPredictedDuration());
   }
 
-  public static ExecutionPlan of(final CompleteGraphFragment fragment) {
-    return new SingleFragment(fragment.getNodes(), fragment.getCacheSelectHint());
+  /**
+   * Creates an execution plan for a graph executed as a single fragment.
+   * 
+   * @param fragment the fragment containing the whole graph
+   * @param predictedDuration the predicted duration of the fragment, in nanoseconds
+   */
+  public static ExecutionPlan of(final CompleteGraphFragment fragment, final long predictedDuration) {
+    return new SingleFragment(fragment.getNodes(), fragment.getCacheSelectHint(), predictedDuration);
+  }
+
+  /**
+   * Returns the duration predicted when the plan was built, so that executions from a cached plan can still be
+   * compared against the cost model.
+   * 
+   * @return the predicted duration, in nanoseconds
+   */
+  public long getPredictedDuration() {
+    return _predictedDuration;
   }
 
   /**
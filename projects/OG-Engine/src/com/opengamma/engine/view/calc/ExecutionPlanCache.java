@@ -5,6 +5,7 @@
  */
 package com.opengamma.engine.view.calc;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -19,11 +20,13 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.depgraph.CompactDependencyGraph;
 import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyNode;
 import com.opengamma.engine.function.FunctionParameters;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.util.ehcache.EHCacheUtils;
+import com.opengamma.util.tuple.Pair;
 
 /**
  * Caches meta data taken from a graph fragment graph sufficient to construct a fragment
@@ -96,12 +99,24 @@ import com.opengamma.util.ehcache.EHCacheUtils;
     private final Map<DependencyNodeKey, DependencyNode> _nodes;
 
     public DependencyGraphKey(final DependencyGraph graph, final long functionInitId) {
+      this(graph.getCompactGraph(), functionInitId);
+    }
+
+    public DependencyGraphKey(final CompactDependencyGraph graph, final long functionInitId) {
       _functionInitId = functionInitId;
-      _terminals = new HashSet<ValueSpecification>(graph.getTerminalOutputSpecifications());
-      final Set<DependencyNode> nodes = graph.getDependencyNodes();
-      _nodes = Maps.newHashMapWithExpectedSize(nodes.size());
-      for (DependencyNode node : nodes) {
+      _terminals = new HashSet<ValueSpecification>();
+      final int size = graph.getSize();
+      _nodes = Maps.newHashMapWithExpectedSize(size);
+      for (int i = 0; i < size; i++) {
+        final DependencyNode node = graph.getNode(i);
         _nodes.put(new DependencyNodeKey(node), node);
+        final int outputs = graph.getOutputValueCount(i);
+        for (int j = 0; j < outputs; j++) {
+          final int output = graph.getOutputValue(i, j);
+          if (graph.isTerminalOutput(output)) {
+            _terminals.add(graph.getValue(output));
+          }
+        }
       }
     }
 
@@ -148,6 +163,13 @@ import com.opengamma.util.ehcache.EHCacheUtils;
    */
   private final Map<DependencyGraph, DependencyGraphKey> _identityLookup = new MapMaker().weakKeys().makeMap();
 
+  /**
+   * The graphs executed are typically sub-graphs of a compiled graph, created afresh for each cycle, so will miss the identity
+   * lookup. If the same nodes were selected from the compiled graph as last time the key will be the same, which can be checked
+   * from the compact form of the graph without building the key.
+   */
+  private final Map<CompactDependencyGraph, Pair<BitSet, DependencyGraphKey>> _subGraphLookup = new MapMaker().weakKeys().makeMap();
+
   /**
    * Constructs an instance.
    * 
@@ -169,15 +191,34 @@ import com.opengamma.util.ehcache.EHCacheUtils;
     }
   }
 
+  private DependencyGraphKey getKey(final DependencyGraph graph, final long functionInitId) {
+    DependencyGraphKey key = _identityLookup.get(graph);
+    if ((key != null) && (key._functionInitId == functionInitId)) {
+      return key;
+    }
+    final CompactDependencyGraph compactGraph = graph.getCompactGraph();
+    final BitSet nodes = compactGraph.getBaseNodes();
+    if (nodes != null) {
+      final Pair<BitSet, DependencyGraphKey> previous = _subGraphLookup.get(compactGraph.getBaseGraph());
+      if ((previous != null) && (previous.getSecond()._functionInitId == functionInitId) && previous.getFirst().equals(nodes)) {
+        s_logger.debug("Sub-graph lookup hit");
+        _identityLookup.put(graph, previous.getSecond());
+        return previous.getSecond();
+      }
+    }
+    s_logger.debug("Identity lookup miss");
+    key = new DependencyGraphKey(compactGraph, functionInitId);
+    _identityLookup.put(graph, key);
+    if (nodes != null) {
+      _subGraphLookup.put(compactGraph.getBaseGraph(), Pair.of(nodes, key));
+    }
+    return key;
+  }
+
   public ExecutionPlan getCachedPlan(final DependencyGraph graph, final long functionInitId) {
     if (_cache != null) {
       s_logger.debug("Searching for cached execution plan for {}/{}", graph, functionInitId);
-      DependencyGraphKey key = _identityLookup.get(graph);
-      if ((key == null) || (key._functionInitId != functionInitId)) {
-        s_logger.debug("Identity lookup miss");
-        key = new DependencyGraphKey(graph, functionInitId);
-        _identityLookup.put(graph, key);
-      }
+      final DependencyGraphKey key = getKey(graph, functionInitId);
       final Element element = _cache.get(key);
       if (element != null) {
         s_logger.debug("Cache hit");
@@ -194,13 +235,7 @@ import com.opengamma.util.ehcache.EHCacheUtils;
   public void cachePlan(final DependencyGraph graph, final long functionInitId, final ExecutionPlan plan) {
     if (_cache != null) {
       s_logger.info("Caching execution plan for {}/{}", graph, functionInitId);
-      DependencyGraphKey key = _identityLookup.get(graph);
-      if ((key == null) || (key._functionInitId != functionInitId)) {
-        s_logger.debug("Identity lookup miss");
-        key = new DependencyGraphKey(graph, functionInitId);
-        _identityLookup.put(graph, key);
-      }
-      _cache.put(new Element(key, plan));
+      _cache.put(new Element(getKey(graph, functionInitId), plan));
     }
   }
 
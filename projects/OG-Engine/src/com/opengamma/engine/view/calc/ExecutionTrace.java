@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.opengamma.id.UniqueId;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * The timeline of a single view cycle's execution, captured by an {@link ExecutionTraceRecorder}.
+ * <p>
+ * Spans are written into a fixed size ring buffer by whichever thread performs the work, without locking. If more spans
+ * are recorded than the buffer holds then the oldest are overwritten.
+ */
+public final class ExecutionTrace {
+
+  /**
+   * Span covering the whole cycle.
+   */
+  public static final String CYCLE = "cycle";
+  /**
+   * Span covering the cycle's preparation of caches, market data and delta computation.
+   */
+  public static final String PREPARE = "prepare";
+  /**
+   * Span from a job being submitted to the dispatcher until it is sent to an invoker.
+   */
+  public static final String QUEUE_WAIT = "queueWait";
+  /**
+   * Span from a job being sent to an invoker until its result is received by the dispatcher.
+   */
+  public static final String DISPATCH = "dispatch";
+  /**
+   * Span for a node reading the inputs to a job item from the value cache.
+   */
+  public static final String INPUT_FETCH = "inputFetch";
+  /**
+   * Span for a node invoking the function for a job item.
+   */
+  public static final String INVOKE = "invoke";
+  /**
+   * Span for a node writing the results of a job item to the value cache.
+   */
+  public static final String OUTPUT_WRITE = "outputWrite";
+  /**
+   * Span for the dispatcher passing a job result back to the cycle.
+   */
+  public static final String RESULT_RETURN = "resultReturn";
+
+  /**
+   * A single timed span of work.
+   */
+  public static final class Span {
+
+    private final String _name;
+    private final String _detail;
+    private final long _startNanos;
+    private final long _durationNanos;
+    private final long _threadId;
+    private final String _threadName;
+
+    private Span(final String name, final String detail, final long startNanos, final long durationNanos, final Thread thread) {
+      _name = name;
+      _detail = detail;
+      _startNanos = startNanos;
+      _durationNanos = durationNanos;
+      _threadId = thread.getId();
+      _threadName = thread.getName();
+    }
+
+    public String getName() {
+      return _name;
+    }
+
+    public String getDetail() {
+      return _detail;
+    }
+
+    public long getStartNanos() {
+      return _startNanos;
+    }
+
+    public long getDurationNanos() {
+      return _durationNanos;
+    }
+
+    public long getThreadId() {
+      return _threadId;
+    }
+
+    public String getThreadName() {
+      return _threadName;
+    }
+
+  }
+
+  private final UniqueId _cycleId;
+  private final long _startNanos;
+  private final AtomicReferenceArray<Span> _spans;
+  private final int _mask;
+  private final AtomicLong _cursor = new AtomicLong();
+
+  /**
+   * Creates a new trace.
+   *
+   * @param cycleId the identifier of the cycle being traced, not null
+   * @param capacity the number of spans to hold, rounded up to a power of two, greater than zero
+   */
+  public ExecutionTrace(final UniqueId cycleId, final int capacity) {
+    ArgumentChecker.notNull(cycleId, "cycleId");
+    ArgumentChecker.notNegativeOrZero(capacity, "capacity");
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    _cycleId = cycleId;
+    _startNanos = System.nanoTime();
+    _spans = new AtomicReferenceArray<Span>(size);
+    _mask = size - 1;
+  }
+
+  public UniqueId getCycleId() {
+    return _cycleId;
+  }
+
+  /**
+   * Returns the {@link System#nanoTime} at which the trace was started. Span times are measured on the same clock.
+   *
+   * @return the start time
+   */
+  public long getStartNanos() {
+    return _startNanos;
+  }
+
+  /**
+   * Records a span of work performed by the calling thread.
+   *
+   * @param name the span name, for example {@link #INVOKE}, not null
+   * @param detail additional description of the work, for example a job or function identifier, null for none
+   * @param startNanos the {@link System#nanoTime} at which the work started
+   * @param endNanos the {@link System#nanoTime} at which the work finished
+   */
+  public void record(final String name, final String detail, final long startNanos, final long endNanos) {
+    final Span span = new Span(name, detail, startNanos, endNanos - startNanos, Thread.currentThread());
+    _spans.set((int) (_cursor.getAndIncrement() & _mask), span);
+  }
+
+  /**
+   * Returns the number of spans recorded, including any that have since been overwritten.
+   *
+   * @return the number of spans
+   */
+  public long getRecordedCount() {
+    return _cursor.get();
+  }
+
+  /**
+   * Returns the number of spans lost because the buffer filled.
+   *
+   * @return the number of overwritten spans
+   */
+  public long getOverwrittenCount() {
+    return Math.max(0, _cursor.get() - _spans.length());
+  }
+
+  /**
+   * Returns the spans currently held, oldest first. A span being written concurrently with this call may be missing.
+   *
+   * @return the spans, not null
+   */
+  public List<Span> getSpans() {
+    final long end = _cursor.get();
+    final long start = Math.max(0, end - _spans.length());
+    final List<Span> spans = new ArrayList<Span>((int) (end - start));
+    for (long i = start; i < end; i++) {
+      final Span span = _spans.get((int) (i & _mask));
+      if (span != null) {
+        spans.add(span);
+      }
+    }
+    return spans;
+  }
+
+  /**
+   * Writes the spans in the Chrome trace event format, as read by {@code chrome://tracing} and similar viewers. Times are
+   * in microseconds from the start of the trace.
+   *
+   * @return the JSON document, not null
+   */
+  public String toChromeTrace() {
+    final List<Span> spans = getSpans();
+    final StringBuilder sb = new StringBuilder(128 + spans.size() * 128);
+    sb.append("{\"traceEvents\":[");
+    final Map<Long, String> threads = new HashMap<Long, String>();
+    boolean first = true;
+    for (Span span : spans) {
+      if (!threads.containsKey(span.getThreadId())) {
+        threads.put(span.getThreadId(), span.getThreadName());
+      }
+      if (first) {
+        first = false;
+      } else {
+        sb.append(',');
+      }
+      sb.append("{\"name\":");
+      appendString(sb, span.getName());
+      sb.append(",\"ph\":\"X\",\"pid\":1,\"tid\":").append(span.getThreadId());
+      sb.append(",\"ts\":").append((span.getStartNanos() - getStartNanos()) / 1000L);
+      sb.append(",\"dur\":").append(span.getDurationNanos() / 1000L);
+      if (span.getDetail() != null) {
+        sb.append(",\"args\":{\"detail\":");
+        appendString(sb, span.getDetail());
+        sb.append('}');
+      }
+      sb.append('}');
+    }
+    for (Map.Entry<Long, String> thread : threads.entrySet()) {
+      if (first) {
+        first = false;
+      } else {
+        sb.append(',');
+      }
+      sb.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(thread.getKey()).append(",\"args\":{\"name\":");
+      appendString(sb, thread.getValue());
+      sb.append("}}");
+    }
+    sb.append("],\"otherData\":{\"cycleId\":");
+    appendString(sb, getCycleId().toString());
+    sb.append(",\"overwritten\":").append(getOverwrittenCount()).append("}}");
+    return sb.toString();
+  }
+
+  private static void appendString(final StringBuilder sb, final String str) {
+    sb.append('"');
+    for (int i = 0; i < str.length(); i++) {
+      final char c = str.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+          break;
+      }
+    }
+    sb.append('"');
+  }
+
+  @Override
+  public String toString() {
+    return "ExecutionTrace[" + getCycleId() + ", " + getRecordedCount() + " spans]";
+  }
+
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.id.UniqueId;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Records the execution timelines of a sample of view cycles, for diagnosing where the time in a cycle goes.
+ * <p>
+ * Only one in every {@link #getSampleInterval} cycles is traced, so the recorder can be left enabled in production. The
+ * cycle, the job dispatcher and any calculation nodes sharing the recorder write spans to the {@link ExecutionTrace} of a
+ * sampled cycle while it runs. The traces of the most recently completed cycles are kept for export.
+ */
+public class ExecutionTraceRecorder {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(ExecutionTraceRecorder.class);
+
+  /**
+   * The default number of cycles per traced cycle.
+   */
+  public static final int DEFAULT_SAMPLE_INTERVAL = 100;
+  /**
+   * The default number of spans held for each traced cycle.
+   */
+  public static final int DEFAULT_CAPACITY = 65536;
+  /**
+   * The default number of completed traces to keep.
+   */
+  public static final int DEFAULT_RETAINED_TRACES = 4;
+
+  private final ConcurrentMap<UniqueId, ExecutionTrace> _activeTraces = new ConcurrentHashMap<UniqueId, ExecutionTrace>();
+  private final Queue<ExecutionTrace> _completedTraces = new ConcurrentLinkedQueue<ExecutionTrace>();
+  private final AtomicLong _cycleCount = new AtomicLong();
+  private final AtomicBoolean _traceNextCycle = new AtomicBoolean();
+  private volatile int _sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+  private volatile int _capacity = DEFAULT_CAPACITY;
+  private volatile int _retainedTraces = DEFAULT_RETAINED_TRACES;
+
+  public ExecutionTraceRecorder() {
+  }
+
+  public ExecutionTraceRecorder(final int sampleInterval) {
+    setSampleInterval(sampleInterval);
+  }
+
+  /**
+   * Sets how often cycles are traced.
+   *
+   * @param sampleInterval the number of cycles per traced cycle, one to trace every cycle, zero to only trace cycles
+   *          explicitly requested with {@link #traceNextCycle}
+   */
+  public void setSampleInterval(final int sampleInterval) {
+    ArgumentChecker.notNegative(sampleInterval, "sampleInterval");
+    _sampleInterval = sampleInterval;
+  }
+
+  public int getSampleInterval() {
+    return _sampleInterval;
+  }
+
+  /**
+   * Sets the number of spans held for each traced cycle. Further spans overwrite the oldest.
+   *
+   * @param capacity the number of spans, greater than zero
+   */
+  public void setCapacity(final int capacity) {
+    ArgumentChecker.notNegativeOrZero(capacity, "capacity");
+    _capacity = capacity;
+  }
+
+  public int getCapacity() {
+    return _capacity;
+  }
+
+  /**
+   * Sets the number of completed traces to keep.
+   *
+   * @param retainedTraces the number of traces, not negative
+   */
+  public void setRetainedTraces(final int retainedTraces) {
+    ArgumentChecker.notNegative(retainedTraces, "retainedTraces");
+    _retainedTraces = retainedTraces;
+    trimCompletedTraces();
+  }
+
+  public int getRetainedTraces() {
+    return _retainedTraces;
+  }
+
+  /**
+   * Requests that the next cycle to start is traced, regardless of the sampling interval.
+   */
+  public void traceNextCycle() {
+    _traceNextCycle.set(true);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Called by a cycle as it starts executing. If the cycle is sampled, a trace is started for it.
+   *
+   * @param cycleId the identifier of the cycle, not null
+   * @return the trace to record the cycle's spans to, or null if the cycle is not being traced
+   */
+  public ExecutionTrace startCycle(final UniqueId cycleId) {
+    final long count = _cycleCount.getAndIncrement();
+    final int sampleInterval = getSampleInterval();
+    if (!_traceNextCycle.compareAndSet(true, false) && ((sampleInterval == 0) || ((count % sampleInterval) != 0))) {
+      return null;
+    }
+    s_logger.debug("Tracing cycle {}", cycleId);
+    final ExecutionTrace trace = new ExecutionTrace(cycleId, getCapacity());
+    _activeTraces.put(cycleId, trace);
+    return trace;
+  }
+
+  /**
+   * Called by a cycle when it has finished executing, with the trace returned by {@link #startCycle}.
+   *
+   * @param trace the trace of the cycle, not null
+   */
+  public void endCycle(final ExecutionTrace trace) {
+    _activeTraces.remove(trace.getCycleId());
+    _completedTraces.add(trace);
+    trimCompletedTraces();
+    s_logger.debug("Finished tracing cycle {}", trace);
+  }
+
+  private void trimCompletedTraces() {
+    while (_completedTraces.size() > getRetainedTraces()) {
+      _completedTraces.poll();
+    }
+  }
+
+  /**
+   * Returns the trace of an executing cycle. This is called for each span recorded so must be cheap when the cycle is
+   * not being traced.
+   *
+   * @param cycleId the identifier of the cycle, not null
+   * @return the trace, or null if the cycle is not being traced
+   */
+  public ExecutionTrace getActiveTrace(final UniqueId cycleId) {
+    if (_activeTraces.isEmpty()) {
+      return null;
+    }
+    return _activeTraces.get(cycleId);
+  }
+
+  /**
+   * Returns the completed traces that are being kept, oldest first.
+   *
+   * @return the traces, not null
+   */
+  public List<ExecutionTrace> getCompletedTraces() {
+    return new ArrayList<ExecutionTrace>(_completedTraces);
+  }
+
+  /**
+   * Returns a completed trace.
+   *
+   * @param cycleId the identifier of the cycle, not null
+   * @return the trace, or null if the cycle was not traced or its trace is no longer kept
+   */
+  public ExecutionTrace getCompletedTrace(final UniqueId cycleId) {
+    for (ExecutionTrace trace : _completedTraces) {
+      if (trace.getCycleId().equals(cycleId)) {
+        return trace;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the most recently completed trace.
+   *
+   * @return the trace, or null if none are kept
+   */
+  public ExecutionTrace getLatestCompletedTrace() {
+    ExecutionTrace latest = null;
+    for (ExecutionTrace trace : _completedTraces) {
+      latest = trace;
+    }
+    return latest;
+  }
+
+}
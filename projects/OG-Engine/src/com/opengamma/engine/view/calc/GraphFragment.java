@@ -39,6 +39,7 @@ import com.opengamma.engine.view.calcnode.CalculationJobSpecification;
   private AtomicInteger _blockCount;
   private long[] _requiredJobs;
   private int _requiredJobIndex;
+  private long _jobId;
   private Collection<F> _tail;
 
   public GraphFragment(final GraphFragmentContext context) {
@@ -105,6 +106,7 @@ import com.opengamma.engine.view.calcnode.CalculationJobSpecification;
 
   public CalculationJob createCalculationJob(final GraphFragmentContext context) {
     final CalculationJobSpecification jobSpec = context.getExecutor().createJobSpecification(context.getGraph());
+    _jobId = jobSpec.getJobId();
     final List<DependencyNode> nodes = getNodes();
     final List<CalculationJobItem> items = new ArrayList<CalculationJobItem>(nodes.size());
     for (DependencyNode node : nodes) {
@@ -164,8 +166,27 @@ import com.opengamma.engine.view.calcnode.CalculationJobSpecification;
     }
   }
 
+  /**
+   * Returns the identifiers of the jobs created for the input fragments. These have all been dispatched, and may have
+   * completed, by the time this fragment executes.
+   * 
+   * @return the job identifiers, or null if there are no input fragments
+   */
+  private long[] getInputJobIds() {
+    if (getInputFragments().isEmpty()) {
+      return null;
+    }
+    final long[] jobIds = new long[getInputFragments().size()];
+    int i = 0;
+    for (F input : getInputFragments()) {
+      jobIds[i++] = ((GraphFragment<F>) input)._jobId;
+    }
+    return jobIds;
+  }
+
   public void execute(final GraphFragmentContext context) {
     final CalculationJob job = createCalculationJob(context);
+    job.setPredecessorJobIds(getInputJobIds());
     /*try {
       synchronized (System.out) {
         final PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream("/tmp/graphFragment.txt", true)));
@@ -1,19 +1,31 @@
 /**
  * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
- * 
+ *
  * Please see distribution for license.
  */
 package com.opengamma.engine.view.calc;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang.ObjectUtils;
 
+import com.google.common.collect.Sets;
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.engine.depgraph.CompactDependencyGraph;
 import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyNode;
-import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.cache.CacheSelectHint;
 import com.opengamma.engine.view.cache.ViewComputationCache;
@@ -21,45 +33,77 @@ import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.tuple.Pair;
 
 /**
- * Determines which nodes in a graph have changed. A node has 'changed' if and only 
+ * Determines which nodes in a graph have changed. A node has 'changed' if and only
  * if its subtree contains a node for which PreviousLiveDataInput != CurrentLiveDataInput.
- * Note that this excludes changes due to passage of the system clock. 
+ * Note that this excludes changes due to passage of the system clock.
+ * <p>
+ * If the market data that may have changed since the previous cycle is known, only those values are compared and the
+ * nodes sourcing them used as the starting points. Otherwise every market data value in the graph is compared. Dirtiness
+ * is then propagated forward through the dependent nodes. If an executor is supplied, independent parts of the graph are
+ * propagated in parallel.
  */
 public class LiveDataDeltaCalculator {
 
+  /**
+   * The number of changed market data values below which propagation is not worth splitting between threads.
+   */
+  private static final int PARALLEL_THRESHOLD = 1024;
+
   private final DependencyGraph _graph;
   private final ViewComputationCache _cache;
   private final ViewComputationCache _previousCache;
+  private final Collection<ValueSpecification> _changedMarketData;
+  private final ExecutorService _executorService;
 
-  private final Set<DependencyNode> _changedNodes = new HashSet<DependencyNode>();
-  private final Set<DependencyNode> _unchangedNodes = new HashSet<DependencyNode>();
+  private BitSet _changed;
+  private Set<DependencyNode> _changedNodes;
+  private Set<DependencyNode> _unchangedNodes;
 
   private boolean _done; // = false
 
   /**
-   * For the delta calculation to be meaningful, the caches should be populated with LiveData 
-   * inputs required to compute the given dependency graph. 
+   * For the delta calculation to be meaningful, the caches should be populated with LiveData
+   * inputs required to compute the given dependency graph.
    * See {@link DependencyNode#getRequiredLiveData()}
    * and {@link ViewComputationCache#getValue(ValueSpecification)}.
-   * 
+   *
    * @param graph Dependency graph
    * @param cache Contains CurrentLiveDataInputs (for the given graph)
    * @param previousCache Contains PreviousLiveDataInputs (for the given graph)
    */
   public LiveDataDeltaCalculator(DependencyGraph graph, ViewComputationCache cache, ViewComputationCache previousCache) {
+    this(graph, cache, previousCache, null, null);
+  }
+
+  /**
+   * For the delta calculation to be meaningful, the caches should be populated with LiveData
+   * inputs required to compute the given dependency graph.
+   *
+   * @param graph Dependency graph
+   * @param cache Contains CurrentLiveDataInputs (for the given graph)
+   * @param previousCache Contains PreviousLiveDataInputs (for the given graph)
+   * @param changedMarketData the market data values which may have changed since the previous cycle, null if not known
+   * @param executorService the executor to propagate changes with, null to propagate on the calling thread only
+   */
+  public LiveDataDeltaCalculator(DependencyGraph graph, ViewComputationCache cache, ViewComputationCache previousCache,
+      Collection<ValueSpecification> changedMarketData, ExecutorService executorService) {
     ArgumentChecker.notNull(graph, "Graph");
     ArgumentChecker.notNull(cache, "Cache");
     ArgumentChecker.notNull(previousCache, "Previous cache");
     _graph = graph;
     _cache = cache;
     _previousCache = previousCache;
+    _changedMarketData = changedMarketData;
+    _executorService = executorService;
   }
 
   public Set<DependencyNode> getChangedNodes() {
     if (!_done) {
       throw new IllegalStateException("Call computeDelta() first");
     }
-
+    if (_changedNodes == null) {
+      createNodeSets();
+    }
     return Collections.unmodifiableSet(_changedNodes);
   }
 
@@ -67,56 +111,169 @@ public class LiveDataDeltaCalculator {
     if (!_done) {
       throw new IllegalStateException("Call computeDelta() first");
     }
-
+    if (_unchangedNodes == null) {
+      createNodeSets();
+    }
     return Collections.unmodifiableSet(_unchangedNodes);
   }
 
-  public void computeDelta() {
-    if (_done) {
-      throw new IllegalStateException("Cannot determine delta twice");
+  /**
+   * Returns the changed nodes as indices into the compact form of the graph. This avoids creating the node sets.
+   *
+   * @return the indices of the changed nodes, not null
+   */
+  public BitSet getChangedNodeIndices() {
+    if (!_done) {
+      throw new IllegalStateException("Call computeDelta() first");
     }
+    return (BitSet) _changed.clone();
+  }
 
-    for (DependencyNode rootNode : _graph.getRootNodes()) {
-      computeDelta(rootNode);
+  private void createNodeSets() {
+    final CompactDependencyGraph graph = _graph.getCompactGraph();
+    final int size = graph.getSize();
+    final int changedCount = _changed.cardinality();
+    _changedNodes = Sets.newHashSetWithExpectedSize(changedCount);
+    _unchangedNodes = Sets.newHashSetWithExpectedSize(size - changedCount);
+    for (int node = 0; node < size; node++) {
+      if (_changed.get(node)) {
+        _changedNodes.add(graph.getNode(node));
+      } else {
+        _unchangedNodes.add(graph.getNode(node));
+      }
     }
+  }
 
+  public void computeDelta() {
+    if (_done) {
+      throw new IllegalStateException("Cannot determine delta twice");
+    }
+    final CompactDependencyGraph graph = _graph.getCompactGraph();
+    _changed = propagate(graph, findChangedMarketData(graph));
     _done = true;
   }
 
-  private boolean computeDelta(DependencyNode node) {
-    if (_changedNodes.contains(node)) {
-      return true;
+  /**
+   * Compares the candidate market data values in the two caches.
+   *
+   * @param graph the graph
+   * @return the indices of the nodes sourcing market data that has changed
+   */
+  private BitSet findChangedMarketData(final CompactDependencyGraph graph) {
+    final List<ValueSpecification> candidates;
+    if (_changedMarketData == null) {
+      candidates = new ArrayList<ValueSpecification>();
+      for (int node = 0; node < graph.getSize(); node++) {
+        final int liveData = graph.getMarketDataValue(node);
+        if (liveData >= 0) {
+          candidates.add(graph.getValue(liveData));
+        }
+      }
+    } else {
+      candidates = new ArrayList<ValueSpecification>(_changedMarketData.size());
+      for (ValueSpecification liveDataSpec : _changedMarketData) {
+        final int liveData = graph.getValueId(liveDataSpec);
+        if ((liveData >= 0) && (graph.getMarketDataNode(liveData) >= 0)) {
+          candidates.add(liveDataSpec);
+        }
+      }
+    }
+    final BitSet changed = new BitSet(graph.getSize());
+    if (candidates.isEmpty()) {
+      return changed;
     }
-    if (_unchangedNodes.contains(node)) {
-      return false;
+    // Market data is always in the shared cache
+    final Map<ValueSpecification, Object> oldValues = toMap(_previousCache.getValues(candidates, CacheSelectHint.allShared()));
+    final Map<ValueSpecification, Object> newValues = toMap(_cache.getValues(candidates, CacheSelectHint.allShared()));
+    for (ValueSpecification liveDataSpec : candidates) {
+      if (!ObjectUtils.equals(oldValues.get(liveDataSpec), newValues.get(liveDataSpec))) {
+        changed.set(graph.getMarketDataNode(graph.getValueId(liveDataSpec)));
+      }
     }
+    return changed;
+  }
 
-    boolean hasChanged = false;
-    for (DependencyNode inputNode : node.getInputNodes()) {
-      // if any children changed, this node automatically requires recomputation.
-      hasChanged |= computeDelta(inputNode);
+  private static Map<ValueSpecification, Object> toMap(final Collection<Pair<ValueSpecification, Object>> values) {
+    final Map<ValueSpecification, Object> map = new HashMap<ValueSpecification, Object>();
+    for (Pair<ValueSpecification, Object> value : values) {
+      map.put(value.getFirst(), value.getSecond());
     }
+    return map;
+  }
 
-    if (!hasChanged) {
-      // if no children changed, the node may still require recomputation
-      // due to market data changes affecting the function of the node.
-      Pair<ValueRequirement, ValueSpecification> liveData = node.getRequiredMarketData();
-      if (liveData != null) {
-        // Market data is always in the shared cache
-        Object oldValue = _previousCache.getValue(liveData.getSecond(), CacheSelectHint.allShared());
-        Object newValue = _cache.getValue(liveData.getSecond(), CacheSelectHint.allShared());
-        if (!ObjectUtils.equals(oldValue, newValue)) {
-          hasChanged = true;
+  /**
+   * Marks the seed nodes, and everything that depends on them, as changed. Nodes in different connected components of the
+   * graph cannot affect each other so seeds are partitioned by component when there is enough work to share between threads.
+   *
+   * @param graph the graph
+   * @param seeds the nodes known to have changed
+   * @return the changed nodes
+   */
+  private BitSet propagate(final CompactDependencyGraph graph, final BitSet seeds) {
+    final int seedCount = seeds.cardinality();
+    if ((_executorService == null) || (seedCount < PARALLEL_THRESHOLD)) {
+      return propagate(graph, seeds, seedCount);
+    }
+    final int tasks = Math.min(Runtime.getRuntime().availableProcessors(), graph.getComponentCount());
+    if (tasks < 2) {
+      return propagate(graph, seeds, seedCount);
+    }
+    final BitSet[] taskSeeds = new BitSet[tasks];
+    for (int i = 0; i < tasks; i++) {
+      taskSeeds[i] = new BitSet(graph.getSize());
+    }
+    for (int node = seeds.nextSetBit(0); node >= 0; node = seeds.nextSetBit(node + 1)) {
+      taskSeeds[graph.getComponent(node) % tasks].set(node);
+    }
+    final List<Future<BitSet>> futures = new ArrayList<Future<BitSet>>(tasks - 1);
+    for (int i = 1; i < tasks; i++) {
+      final BitSet taskSeed = taskSeeds[i];
+      futures.add(_executorService.submit(new Callable<BitSet>() {
+        @Override
+        public BitSet call() {
+          return propagate(graph, taskSeed, taskSeed.cardinality());
         }
+      }));
+    }
+    final BitSet changed = propagate(graph, taskSeeds[0], taskSeeds[0].cardinality());
+    try {
+      for (Future<BitSet> future : futures) {
+        // The components are disjoint so the results can be combined without conflict
+        changed.or(future.get());
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OpenGammaRuntimeException("Interrupted while computing delta", e);
+    } catch (ExecutionException e) {
+      throw new OpenGammaRuntimeException("Error computing delta", e.getCause());
     }
+    return changed;
+  }
 
-    if (hasChanged) {
-      _changedNodes.add(node);
-    } else {
-      _unchangedNodes.add(node);
+  private static BitSet propagate(final CompactDependencyGraph graph, final BitSet seeds, final int seedCount) {
+    final BitSet changed = new BitSet(graph.getSize());
+    int[] stack = new int[Math.max(16, seedCount * 2)];
+    int stackSize = 0;
+    for (int node = seeds.nextSetBit(0); node >= 0; node = seeds.nextSetBit(node + 1)) {
+      changed.set(node);
+      stack[stackSize++] = node;
     }
-
-    return hasChanged;
+    while (stackSize > 0) {
+      final int node = stack[--stackSize];
+      final int dependents = graph.getDependentNodeCount(node);
+      for (int i = 0; i < dependents; i++) {
+        final int dependent = graph.getDependentNode(node, i);
+        if (!changed.get(dependent)) {
+          // Each node is pushed at most once
+          changed.set(dependent);
+          if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+          }
+          stack[stackSize++] = dependent;
+        }
+      }
+    }
+    return changed;
   }
+
 }
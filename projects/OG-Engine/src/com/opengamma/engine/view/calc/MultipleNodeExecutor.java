@@ -6,6 +6,7 @@
 package com.opengamma.engine.view.calc;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -25,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Sets;
+import com.opengamma.engine.depgraph.CompactDependencyGraph;
 import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyNode;
 import com.opengamma.engine.value.ValueSpecification;
@@ -34,6 +36,7 @@ import com.opengamma.engine.view.calcnode.CalculationJob;
 import com.opengamma.engine.view.calcnode.CalculationJobSpecification;
 import com.opengamma.engine.view.calcnode.JobResultReceiver;
 import com.opengamma.engine.view.calcnode.stats.FunctionCosts;
+import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
 import com.opengamma.util.async.Cancelable;
 import com.opengamma.util.monitor.OperationTimer;
 import com.opengamma.util.tuple.Pair;
@@ -53,9 +56,32 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<DependencyG
   private final int _maxConcurrency;
   private final FunctionCosts _functionCosts;
   private final ExecutionPlanCache _cache;
+  private final int _nodeCount;
+  private final double _jobsPerNode;
 
   protected MultipleNodeExecutor(final SingleComputationCycle cycle, final int minimumJobItems, final int maximumJobItems, final long minimumJobCost, final long maximumJobCost,
       final int maximumConcurrency, final FunctionCosts functionCosts, final ExecutionPlanCache cache) {
+    this(cycle, minimumJobItems, maximumJobItems, minimumJobCost, maximumJobCost, maximumConcurrency, functionCosts, cache, 0, 0);
+  }
+
+  /**
+   * Creates an executor that may use critical path scheduling. If a node count is given, the maximum job cost used when partitioning is
+   * reduced so that the graph splits into approximately {@code nodeCount * jobsPerNode} jobs, and the leaf jobs are dispatched in
+   * descending order of the cost of their longest path to the end of the graph.
+   * 
+   * @param cycle the cycle to execute
+   * @param minimumJobItems the minimum number of items in a job
+   * @param maximumJobItems the maximum number of items in a job
+   * @param minimumJobCost the minimum cost of a job
+   * @param maximumJobCost the maximum cost of a job
+   * @param maximumConcurrency the maximum number of job tails expected to execute in parallel at a node
+   * @param functionCosts the function cost statistics
+   * @param cache the execution plan cache
+   * @param nodeCount the estimated number of calculation nodes available, zero to disable critical path scheduling
+   * @param jobsPerNode the target number of jobs per calculation node when critical path scheduling
+   */
+  protected MultipleNodeExecutor(final SingleComputationCycle cycle, final int minimumJobItems, final int maximumJobItems, final long minimumJobCost, final long maximumJobCost,
+      final int maximumConcurrency, final FunctionCosts functionCosts, final ExecutionPlanCache cache, final int nodeCount, final double jobsPerNode) {
     // Don't check for null as the factory does this, plus for testing we don't have a cycle and override the methods that use it
     _cycle = cycle;
     _minJobItems = minimumJobItems;
@@ -65,6 +91,8 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<DependencyG
     _maxConcurrency = maximumConcurrency;
     _functionCosts = functionCosts;
     _cache = cache;
+    _nodeCount = nodeCount;
+    _jobsPerNode = jobsPerNode;
   }
 
   protected long getFunctionInitId() {
@@ -100,37 +128,64 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<DependencyG
   }
 
   protected CompleteGraphFragment executeSingleFragment(final MutableGraphFragmentContext context, final GraphExecutorStatisticsGatherer statistics) {
-    final Collection<DependencyNode> nodes = context.getGraph().getExecutionOrder();
+    final CompactDependencyGraph graph = context.getGraph().getCompactGraph();
+    final Collection<DependencyNode> nodes = graph.getExecutionOrder();
     final CompleteGraphFragment fragment = new CompleteGraphFragment(context, statistics, nodes);
+    // Cost the job the same way as MutableGraphFragment.getJobCost so that predictions from either path are comparable
     long invocationCost = 0;
+    long dataCost = 0;
     for (DependencyNode node : nodes) {
-      invocationCost += context.getFunctionStatistics(node.getFunction().getFunction()).getInvocationCost();
+      final FunctionInvocationStatistics functionStatistics = context.getFunctionStatistics(node.getFunction().getFunction());
+      invocationCost += (long) context.getInvocationCost(functionStatistics);
+      dataCost += MutableGraphFragment.getDataInputCost(functionStatistics, node) + MutableGraphFragment.getDataOutputCost(functionStatistics, node);
     }
-    statistics.graphProcessed(context.getGraph().getCalculationConfigurationName(), 1, context.getGraph().getSize(), invocationCost, Double.NaN);
+    final long predictedDuration = invocationCost + dataCost;
+    statistics.graphProcessed(context.getGraph().getCalculationConfigurationName(), 1, context.getGraph().getSize(), invocationCost, dataCost);
+    statistics.graphPredicted(context.getGraph().getCalculationConfigurationName(), predictedDuration);
     context.allocateFragmentMap(1);
-    final Set<ValueSpecification> sharedValues = new HashSet<ValueSpecification>(context.getGraph().getTerminalOutputSpecifications());
-    final Set<ValueSpecification> privateValues = new HashSet<ValueSpecification>();
-    for (DependencyNode node : nodes) {
-      for (ValueSpecification output : node.getOutputValues()) {
-        if (!sharedValues.contains(output)) {
-          privateValues.add(output);
+    // Classify the values by identifier; a value is private if it is produced and consumed within the graph and isn't a terminal output
+    final BitSet shared = new BitSet(graph.getValueCount());
+    final BitSet produced = new BitSet(graph.getValueCount());
+    final int size = graph.getSize();
+    for (int node = 0; node < size; node++) {
+      final int outputs = graph.getOutputValueCount(node);
+      for (int i = 0; i < outputs; i++) {
+        final int output = graph.getOutputValue(node, i);
+        produced.set(output);
+        if (graph.isTerminalOutput(output)) {
+          shared.set(output);
         }
       }
-      for (ValueSpecification input : node.getInputValues()) {
-        if (!privateValues.contains(input)) {
-          sharedValues.add(input);
+      final int inputs = graph.getInputValueCount(node);
+      for (int i = 0; i < inputs; i++) {
+        final int input = graph.getInputValue(node, i);
+        if (!produced.get(input)) {
+          shared.set(input);
         }
       }
     }
-    if (sharedValues.size() < privateValues.size()) {
-      fragment.setCacheSelectHint(CacheSelectHint.sharedValues(sharedValues));
+    final BitSet privateIds = (BitSet) produced.clone();
+    privateIds.andNot(shared);
+    final int sharedCount = shared.cardinality();
+    final int privateCount = privateIds.cardinality();
+    if (sharedCount < privateCount) {
+      fragment.setCacheSelectHint(CacheSelectHint.sharedValues(toValues(graph, shared, sharedCount)));
     } else {
-      fragment.setCacheSelectHint(CacheSelectHint.privateValues(privateValues));
+      fragment.setCacheSelectHint(CacheSelectHint.privateValues(toValues(graph, privateIds, privateCount)));
     }
+    getCache().cachePlan(context.getGraph(), context.getFunctionInitId(), ExecutionPlan.of(fragment, predictedDuration));
     fragment.execute(context);
     return fragment;
   }
 
+  private static Collection<ValueSpecification> toValues(final CompactDependencyGraph graph, final BitSet ids, final int count) {
+    final Collection<ValueSpecification> values = new ArrayList<ValueSpecification>(count);
+    for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+      values.add(graph.getValue(id));
+    }
+    return values;
+  }
+
   protected MutableGraphFragment.Root executeMultipleFragments(final MutableGraphFragmentContext context, final GraphExecutorStatisticsGatherer statistics) {
     final Set<MutableGraphFragment> allFragments = Sets.newHashSetWithExpectedSize(context.getGraph().getSize());
     final MutableGraphFragment.Root logicalRoot = new MutableGraphFragment.Root(context, statistics);
@@ -138,16 +193,17 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<DependencyG
       root.getOutputFragments().add(logicalRoot);
       logicalRoot.getInputFragments().add(root);
     }
+    final long maxJobCost = getTargetJobCost(allFragments);
     int failCount = 0;
     do {
-      if (mergeSharedInputs(logicalRoot, allFragments)) {
+      if (mergeSharedInputs(logicalRoot, allFragments, maxJobCost)) {
         failCount = 0;
       } else {
         if (++failCount >= 2) {
           break;
         }
       }
-      if (mergeSingleDependencies(context, allFragments)) {
+      if (mergeSingleDependencies(context, allFragments, maxJobCost)) {
         failCount = 0;
       } else {
         if (++failCount >= 2) {
@@ -156,6 +212,9 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<DependencyG
       }
     } while (true);
     findTailFragments(allFragments);
+    final CriticalPathScheduler scheduler = new CriticalPathScheduler(allFragments);
+    logicalRoot.setPredictedDuration(scheduler.predictMakespan(getNodeCount()));
+    statistics.graphPredicted(context.getGraph().getCalculationConfigurationName(), logicalRoot.getPredictedDuration());
     context.allocateFragmentMap(allFragments.size());
     // Set block counts on non-leaf nodes & leave only the leaves in the set
     logicalRoot.initBlockCount();
@@ -178,8 +237,17 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<DependencyG
         (double) totalInvocationCost / (double) count, (double) totalDataCost / (double) count);
     // printFragment(logicalRoot);
     // Execute anything left (leaf nodes)
-    for (MutableGraphFragment fragment : allFragments) {
-      fragment.execute(context);
+    if (isCriticalPathScheduling()) {
+      // Start the fragments on the critical path first
+      final List<MutableGraphFragment> leaves = new ArrayList<MutableGraphFragment>(allFragments);
+      Collections.sort(leaves, scheduler.getRankComparator());
+      for (MutableGraphFragment fragment : leaves) {
+        fragment.execute(context);
+      }
+    } else {
+      for (MutableGraphFragment fragment : allFragments) {
+        fragment.execute(context);
+      }
     }
     return logicalRoot;
   }
@@ -200,7 +268,6 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<DependencyG
       // If the graph is too small, run it as-is
       final CompleteGraphFragment fragment = executeSingleFragment(context, statistics);
       timer.finished();
-      getCache().cachePlan(context.getGraph(), context.getFunctionInitId(), ExecutionPlan.of(fragment));
       return fragment.getFuture();
     } else {
       final MutableGraphFragment.Root fragment = executeMultipleFragments(context, statistics);
@@ -221,6 +288,7 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<DependencyG
     final ExecutionPlan plan = getCache().getCachedPlan(graph, getCycle().getFunctionInitId());
     if (plan != null) {
       s_logger.info("Using cached execution plan for {}", graph);
+      statistics.graphPredicted(graph.getCalculationConfigurationName(), plan.getPredictedDuration());
       return plan.run(new GraphFragmentContext(this, graph, executionResultQueue), statistics);
     } else {
       s_logger.debug("Creating new execution plan for {}", graph);
@@ -252,42 +320,66 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<DependencyG
     return _functionCosts;
   }
 
-  private Collection<MutableGraphFragment> graphToFragments(final MutableGraphFragmentContext context, final DependencyGraph graph, final Set<MutableGraphFragment> allFragments) {
-    final Map<DependencyNode, MutableGraphFragment> node2fragment = new HashMap<DependencyNode, MutableGraphFragment>();
-    final Collection<DependencyNode> rootNodes = graph.getRootNodes();
-    final Collection<MutableGraphFragment> rootFragments = new ArrayList<MutableGraphFragment>(rootNodes.size());
-    graphToFragments(context, graph, rootFragments, node2fragment, rootNodes);
-    allFragments.addAll(node2fragment.values());
-    return rootFragments;
+  public int getNodeCount() {
+    return _nodeCount;
   }
 
-  private void graphToFragments(final MutableGraphFragmentContext context, final DependencyGraph graph, final Collection<MutableGraphFragment> output,
-      final Map<DependencyNode, MutableGraphFragment> node2fragment, final Collection<DependencyNode> nodes) {
-    // TODO Andrew 2010-09-02 -- Can we do this by iterating the graph nodes instead of walking the tree?
-    for (DependencyNode node : nodes) {
-      if (!graph.containsNode(node)) {
-        continue;
-      }
-      MutableGraphFragment fragment = node2fragment.get(node);
-      if (fragment == null) {
-        fragment = new MutableGraphFragment(context, node);
-        node2fragment.put(node, fragment);
-        final Collection<DependencyNode> inputNodes = node.getInputNodes();
-        if (!inputNodes.isEmpty()) {
-          graphToFragments(context, graph, fragment.getInputFragments(), node2fragment, inputNodes);
-          for (MutableGraphFragment input : fragment.getInputFragments()) {
-            input.getOutputFragments().add(fragment);
-          }
-        }
+  public double getJobsPerNode() {
+    return _jobsPerNode;
+  }
+
+  public boolean isCriticalPathScheduling() {
+    return (getNodeCount() > 0) && (getJobsPerNode() > 0);
+  }
+
+  /**
+   * Returns the maximum job cost to use when partitioning the graph. With critical path scheduling this is the total cost of the graph
+   * divided by the number of jobs wanted, bounded by the configured minimum and maximum job costs. Jobs bigger than this would leave
+   * nodes idle; jobs much smaller would incur dispatch overhead without any gain in parallelism.
+   * 
+   * @param fragments the initial, single node, fragments of the graph
+   * @return the maximum job cost
+   */
+  private long getTargetJobCost(final Collection<MutableGraphFragment> fragments) {
+    if (!isCriticalPathScheduling()) {
+      return getMaxJobCost();
+    }
+    long totalCost = 0;
+    for (MutableGraphFragment fragment : fragments) {
+      totalCost += fragment.getJobCost();
+    }
+    final long targetCost = (long) ((double) totalCost / ((double) getNodeCount() * getJobsPerNode()));
+    return Math.min(Math.max(targetCost, getMinJobCost()), getMaxJobCost());
+  }
+
+  private Collection<MutableGraphFragment> graphToFragments(final MutableGraphFragmentContext context, final DependencyGraph graph, final Set<MutableGraphFragment> allFragments) {
+    // The compact graph is in execution order so the input fragments of a node have always been created before it
+    final CompactDependencyGraph compactGraph = graph.getCompactGraph();
+    final int size = compactGraph.getSize();
+    final MutableGraphFragment[] fragments = new MutableGraphFragment[size];
+    for (int i = 0; i < size; i++) {
+      final MutableGraphFragment fragment = new MutableGraphFragment(context, compactGraph.getNode(i));
+      final int inputs = compactGraph.getInputNodeCount(i);
+      for (int j = 0; j < inputs; j++) {
+        final MutableGraphFragment input = fragments[compactGraph.getInputNode(i, j)];
+        fragment.getInputFragments().add(input);
+        input.getOutputFragments().add(fragment);
       }
-      output.add(fragment);
+      fragments[i] = fragment;
+      allFragments.add(fragment);
     }
+    final int roots = compactGraph.getRootNodeCount();
+    final Collection<MutableGraphFragment> rootFragments = new ArrayList<MutableGraphFragment>(roots);
+    for (int i = 0; i < roots; i++) {
+      rootFragments.add(fragments[compactGraph.getRootNode(i)]);
+    }
+    return rootFragments;
   }
 
   /**
    * Finds pairs of nodes with the same input set (i.e. that would execute concurrently) that are below the minimum job size and merge them together.
    */
-  private boolean mergeSharedInputs(final MutableGraphFragment logicalRoot, final Set<MutableGraphFragment> allFragments) {
+  private boolean mergeSharedInputs(final MutableGraphFragment logicalRoot, final Set<MutableGraphFragment> allFragments, final long maxJobCost) {
     final Map<Set<MutableGraphFragment>, MutableGraphFragment> possibleCandidates = new HashMap<Set<MutableGraphFragment>, MutableGraphFragment>();
     // REVIEW 2010-08-27 Andrew -- Should we only create validCandidates when we're ready to use it?
     final Map<MutableGraphFragment, MutableGraphFragment> validCandidates = new HashMap<MutableGraphFragment, MutableGraphFragment>();
@@ -305,7 +397,7 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<DependencyG
         }
         final MutableGraphFragment mergeCandidate = possibleCandidates.get(fragment.getInputFragments());
         if (mergeCandidate != null) {
-          if (mergeCandidate.canAppendFragment(fragment, getMaxJobItems(), getMaxJobCost())) {
+          if (mergeCandidate.canAppendFragment(fragment, getMaxJobItems(), maxJobCost)) {
             // Defer the merge because we're iterating through the dependent's inputs at the moment
             validCandidates.put(fragment, mergeCandidate);
             // Stop using the merge candidate
@@ -356,7 +448,7 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<DependencyG
   /**
    * If a fragment has only one dependency, and both it and its dependent are below the maximum job size they are merged.
    */
-  private boolean mergeSingleDependencies(final MutableGraphFragmentContext context, final Set<MutableGraphFragment> allFragments) {
+  private boolean mergeSingleDependencies(final MutableGraphFragmentContext context, final Set<MutableGraphFragment> allFragments, final long maxJobCost) {
     int changes = 0;
     final Iterator<MutableGraphFragment> fragmentIterator = allFragments.iterator();
     while (fragmentIterator.hasNext()) {
@@ -369,7 +461,7 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<DependencyG
         // Ignore the roots
         continue;
       }
-      if (!dependency.canPrependFragment(fragment, getMaxJobItems(), getMaxJobCost())) {
+      if (!dependency.canPrependFragment(fragment, getMaxJobItems(), maxJobCost)) {
         // Can't merge
         continue;
       }
@@ -26,6 +26,9 @@ public class MultipleNodeExecutorFactory implements DependencyGraphExecutorFacto
   private long _maximumJobCost = Long.MAX_VALUE;
   private int _maximumConcurrency = Integer.MAX_VALUE;
   private FunctionCosts _functionCosts;
+  private boolean _criticalPathScheduling;
+  private int _nodeCount;
+  private double _jobsPerNode = 4;
   
   public void setCacheManager(CacheManager cacheManager) {
     _cacheManager = cacheManager;
@@ -99,10 +102,57 @@ public class MultipleNodeExecutorFactory implements DependencyGraphExecutorFacto
     return _functionCosts;
   }
 
+  /**
+   * Enables critical path scheduling. Job sizes are then chosen from the total graph cost, the estimated node count and the jobs per
+   * node target rather than just the fixed minimum and maximum, and the jobs on the longest path through the graph are dispatched first.
+   * 
+   * @param criticalPathScheduling true to enable critical path scheduling
+   */
+  public void setCriticalPathScheduling(final boolean criticalPathScheduling) {
+    _criticalPathScheduling = criticalPathScheduling;
+    invalidateExecutionPlanCache();
+  }
+
+  public boolean isCriticalPathScheduling() {
+    return _criticalPathScheduling;
+  }
+
+  /**
+   * Sets the estimated number of calculation nodes available to execute jobs. This is used by the cost model when critical path
+   * scheduling and to predict graph execution times.
+   * 
+   * @param nodeCount the number of calculation nodes, zero if unknown
+   */
+  public void setNodeCount(final int nodeCount) {
+    _nodeCount = nodeCount;
+    invalidateExecutionPlanCache();
+  }
+
+  public int getNodeCount() {
+    return _nodeCount;
+  }
+
+  /**
+   * Sets the target number of jobs per calculation node when critical path scheduling. More jobs give the dispatcher more freedom to
+   * balance load at the cost of more dispatch and data transfer overhead.
+   * 
+   * @param jobsPerNode the target number of jobs for each node, greater than zero
+   */
+  public void setJobsPerNode(final double jobsPerNode) {
+    ArgumentChecker.isTrue(jobsPerNode > 0, "jobsPerNode must be greater than zero");
+    _jobsPerNode = jobsPerNode;
+    invalidateExecutionPlanCache();
+  }
+
+  public double getJobsPerNode() {
+    return _jobsPerNode;
+  }
+
   @Override
   public MultipleNodeExecutor createExecutor(final SingleComputationCycle cycle) {
     ArgumentChecker.notNull(cycle, "cycle");
-    return new MultipleNodeExecutor(cycle, getMinimumJobItems(), getMaximumJobItems(), getMinimumJobCost(), getMaximumJobCost(), getMaximumConcurrency(), getFunctionCosts(), _executionPlanCache);
+    return new MultipleNodeExecutor(cycle, getMinimumJobItems(), getMaximumJobItems(), getMinimumJobCost(), getMaximumJobCost(), getMaximumConcurrency(), getFunctionCosts(), _executionPlanCache,
+        getNodeCount(), isCriticalPathScheduling() ? getJobsPerNode() : 0);
   }
 
   @Override
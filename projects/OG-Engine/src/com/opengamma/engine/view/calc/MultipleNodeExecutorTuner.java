@@ -6,6 +6,7 @@
 package com.opengamma.engine.view.calc;
 
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 import javax.time.Instant;
@@ -34,7 +35,16 @@ import com.opengamma.util.ArgumentChecker;
  * 
  * <p>Set maximum concurrency to the average node count of the job invokers. Requires a {@link JobDispatcher}.</p>
  * 
- * <p>TODO: [ENG-200] Tuning of job size and cost parameters</p>
+ * <p>Set the estimated node count to the total node count of the job invokers. Requires a {@link JobDispatcher}.</p>
+ * 
+ * <p>If critical path scheduling is enabled, adjust the jobs per node target by hill-climbing on the mean wall-clock
+ * time per dependency node executed since the previous run. If the last adjustment improved this, the next step is in
+ * the same direction, otherwise the direction is reversed and the step reduced. Changes within the noise threshold
+ * are not acted on; once one is seen the target is left alone until the time per node moves outside the threshold
+ * again. The target is held by the factory so is shared by all views using it. Requires graph execution
+ * statistics.</p>
+ * 
+ * <p>TODO: [ENG-200] Tuning of the fixed job size and cost parameters</p>
  */
 public class MultipleNodeExecutorTuner implements Runnable {
   
@@ -51,6 +61,14 @@ public class MultipleNodeExecutorTuner implements Runnable {
   private TotallingNodeStatisticsGatherer _jobDispatchStatistics;
   private double _statisticDecayRate = 0.1; // 10% decay every schedule
   private int _statisticsKeepAlive = 300; // keep for 5 minutes
+  private double _jobsPerNodeStep = 1.25;
+  private double _minimumJobsPerNode = 1;
+  private double _maximumJobsPerNode = 64;
+  private double _noiseThreshold = 0.05; // 5% change in time per node
+  private final Map<GraphExecutionStatistics, GraphExecutionStatistics> _previousStatistics = new IdentityHashMap<GraphExecutionStatistics, GraphExecutionStatistics>();
+  private double _step = _jobsPerNodeStep;
+  private double _previousTimePerNode = Double.NaN;
+  private double _settledTimePerNode = Double.NaN;
 
   /**
    * @param factory The factory to tune
@@ -104,6 +122,119 @@ public class MultipleNodeExecutorTuner implements Runnable {
     return _statisticDecayRate;
   }
 
+  /**
+   * Sets the multiplicative step used to adjust the jobs per node target.
+   * 
+   * @param step the step, greater than one
+   */
+  public void setJobsPerNodeStep(final double step) {
+    ArgumentChecker.isTrue(step > 1, "step must be greater than one");
+    _jobsPerNodeStep = step;
+    _step = step;
+  }
+
+  protected double getJobsPerNodeStep() {
+    return _jobsPerNodeStep;
+  }
+
+  public void setMinimumJobsPerNode(final double minimumJobsPerNode) {
+    _minimumJobsPerNode = minimumJobsPerNode;
+  }
+
+  protected double getMinimumJobsPerNode() {
+    return _minimumJobsPerNode;
+  }
+
+  public void setMaximumJobsPerNode(final double maximumJobsPerNode) {
+    _maximumJobsPerNode = maximumJobsPerNode;
+  }
+
+  protected double getMaximumJobsPerNode() {
+    return _maximumJobsPerNode;
+  }
+
+  /**
+   * Sets the relative change in time per dependency node that is treated as noise when tuning the jobs per node target.
+   * 
+   * @param noiseThreshold the threshold, for example 0.05 for 5%, not negative
+   */
+  public void setNoiseThreshold(final double noiseThreshold) {
+    ArgumentChecker.isTrue(noiseThreshold >= 0, "noiseThreshold must not be negative");
+    _noiseThreshold = noiseThreshold;
+  }
+
+  protected double getNoiseThreshold() {
+    return _noiseThreshold;
+  }
+
+  /**
+   * Adjusts the jobs per node target based on the mean wall-clock time to execute each dependency node since the
+   * previous run.
+   */
+  private void tuneJobsPerNode() {
+    long actualTime = 0;
+    long executedNodes = 0;
+    for (TotallingGraphStatisticsGathererProvider.Statistics gatherer : getGraphExecutionStatistics().getViewStatistics()) {
+      for (GraphExecutionStatistics statistics : gatherer.getExecutionStatistics()) {
+        final GraphExecutionStatistics previous = _previousStatistics.get(statistics);
+        if (previous != null) {
+          previous.delta(statistics);
+          actualTime += previous.getActualTime();
+          executedNodes += previous.getExecutedNodes();
+        }
+      }
+    }
+    if (executedNodes <= 0) {
+      return;
+    }
+    final double timePerNode = (double) actualTime / (double) executedNodes;
+    if (!Double.isNaN(_settledTimePerNode)) {
+      if (Math.abs(timePerNode - _settledTimePerNode) <= _settledTimePerNode * getNoiseThreshold()) {
+        return;
+      }
+      // Conditions have changed since settling; start climbing again
+      s_logger.info("Time per node moved from {}ns to {}ns; resuming jobs per node tuning", _settledTimePerNode, timePerNode);
+      _settledTimePerNode = Double.NaN;
+      _previousTimePerNode = Double.NaN;
+      _step = getJobsPerNodeStep();
+    }
+    if (!Double.isNaN(_previousTimePerNode)) {
+      if (Math.abs(timePerNode - _previousTimePerNode) <= _previousTimePerNode * getNoiseThreshold()) {
+        s_logger.info("Jobs per node settled at {} ({}ns per node)", getFactory().getJobsPerNode(), timePerNode);
+        _settledTimePerNode = timePerNode;
+        return;
+      }
+      if (timePerNode > _previousTimePerNode) {
+        // Last change made things worse; go the other way with a smaller step
+        _step = 1.0 / Math.sqrt(_step);
+      }
+    }
+    _previousTimePerNode = timePerNode;
+    final double jobsPerNode = getFactory().getJobsPerNode();
+    final double newJobsPerNode = Math.min(Math.max(jobsPerNode * _step, getMinimumJobsPerNode()), getMaximumJobsPerNode());
+    if (newJobsPerNode != jobsPerNode) {
+      s_logger.info("Changing jobs per node to {} ({}ns per node)", newJobsPerNode, timePerNode);
+      // Invalidates the cached execution plans, so only done when the target actually changes
+      getFactory().setJobsPerNode(newJobsPerNode);
+    } else {
+      // Hit a bound, so try the other direction next time
+      _step = 1.0 / _step;
+    }
+  }
+
+  /**
+   * Records the graph execution statistics after decay so the next jobs per node adjustment only considers the
+   * executions since this run.
+   */
+  private void snapshotGraphExecutionStatistics() {
+    _previousStatistics.clear();
+    for (TotallingGraphStatisticsGathererProvider.Statistics gatherer : getGraphExecutionStatistics().getViewStatistics()) {
+      for (GraphExecutionStatistics statistics : gatherer.getExecutionStatistics()) {
+        _previousStatistics.put(statistics, statistics.snapshot());
+      }
+    }
+  }
+
   /**
    * Makes one tuning adjustment.
    */
@@ -130,16 +261,27 @@ public class MultipleNodeExecutorTuner implements Runnable {
           s_logger.info("Changing maximum concurrency to {}", newMaxConcurrency);
           getFactory().setMaximumConcurrency(newMaxConcurrency);
         }
+        final int newNodeCount = (int) Math.ceil(nodesPerInvoker);
+        if (newNodeCount != getFactory().getNodeCount()) {
+          s_logger.info("Changing node count to {}", newNodeCount);
+          getFactory().setNodeCount(newNodeCount);
+        }
       }
     }
     if (getGraphExecutionStatistics() != null) {
       s_logger.debug("Processing graph execution statistics");
+      if (getFactory().isCriticalPathScheduling()) {
+        tuneJobsPerNode();
+      }
       for (TotallingGraphStatisticsGathererProvider.Statistics gatherer : getGraphExecutionStatistics().getViewStatistics()) {
         for (GraphExecutionStatistics statistics : gatherer.getExecutionStatistics()) {
           statistics.decay(getStatisticsDecayRate());
         }
       }
       getGraphExecutionStatistics().dropStatisticsBefore(Instant.now().minusSeconds(getStatisticsKeepAlive()));
+      if (getFactory().isCriticalPathScheduling()) {
+        snapshotGraphExecutionStatistics();
+      }
     }
     if (getJobDispatchStatistics() != null) {
       s_logger.debug("Processing job dispatch statistics");
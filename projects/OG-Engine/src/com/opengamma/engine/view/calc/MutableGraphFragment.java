@@ -54,17 +54,39 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
   public MutableGraphFragment(final MutableGraphFragmentContext context, final DependencyNode node) {
     super(context, node);
     final FunctionInvocationStatistics statistics = context.getFunctionStatistics(node.getFunction().getFunction());
-    _invocationCost = (long) statistics.getInvocationCost();
-    final Integer inputCost = (Integer) (int) (statistics.getDataInputCost() * NANOS_PER_BYTE);
+    _invocationCost = (long) context.getInvocationCost(statistics);
+    final Integer inputCost = getDataInputCost(statistics);
     for (ValueSpecification input : node.getInputValues()) {
       _inputValues.put(input, inputCost);
     }
-    _dataInputCost = node.getInputValues().size() * inputCost;
-    final Integer outputCost = (Integer) (int) (statistics.getDataOutputCost() * NANOS_PER_BYTE);
+    _dataInputCost = getDataInputCost(statistics, node);
+    final Integer outputCost = getDataOutputCost(statistics);
     for (ValueSpecification output : node.getOutputValues()) {
       _outputValues.put(output, outputCost);
     }
-    _dataOutputCost = node.getOutputValues().size() * outputCost;
+    _dataOutputCost = getDataOutputCost(statistics, node);
+  }
+
+  private static int getDataInputCost(final FunctionInvocationStatistics statistics) {
+    return (int) (statistics.getDataInputCost() * NANOS_PER_BYTE);
+  }
+
+  private static int getDataOutputCost(final FunctionInvocationStatistics statistics) {
+    return (int) (statistics.getDataOutputCost() * NANOS_PER_BYTE);
+  }
+
+  /**
+   * Returns the cost of fetching a node's inputs from the shared cache, in the same units as {@link #getJobDataInputCost}.
+   */
+  /* package */static long getDataInputCost(final FunctionInvocationStatistics statistics, final DependencyNode node) {
+    return (long) node.getInputValues().size() * getDataInputCost(statistics);
+  }
+
+  /**
+   * Returns the cost of writing a node's outputs to the shared cache, in the same units as {@link #getJobDataOutputCost}.
+   */
+  /* package */static long getDataOutputCost(final FunctionInvocationStatistics statistics, final DependencyNode node) {
+    return (long) node.getOutputValues().size() * getDataOutputCost(statistics);
   }
 
   private Map<ValueSpecification, Integer> getInputValues() {
@@ -310,6 +332,7 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
   public static class Root extends MutableGraphFragment {
 
     private final RootGraphFragmentFuture _future;
+    private long _predictedDuration;
 
     public Root(final MutableGraphFragmentContext context, final GraphExecutorStatisticsGatherer statistics) {
       super(context);
@@ -331,6 +354,17 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
       return _future;
     }
 
+    /**
+     * Returns the predicted makespan of the fragment tree, in nanoseconds.
+     */
+    public long getPredictedDuration() {
+      return _predictedDuration;
+    }
+
+    public void setPredictedDuration(final long predictedDuration) {
+      _predictedDuration = predictedDuration;
+    }
+
   }
   
   private static void printExecutionPlan(final PrintStream out, final MutableGraphFragment fragment, final Set<Integer> visited) {
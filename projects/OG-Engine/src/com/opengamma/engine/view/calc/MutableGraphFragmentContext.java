@@ -21,6 +21,7 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
 /* package */class MutableGraphFragmentContext extends GraphFragmentContext {
 
   private final FunctionCostsPerConfiguration _functionCost;
+  private final double _invocationCostPercentile;
   private Map<ValueSpecification, Boolean> _sharedCacheValues;
 
   public MutableGraphFragmentContext(final MultipleNodeExecutor executor, final DependencyGraph graph, final Queue<ExecutionResult> executionResultQueue) {
@@ -31,6 +32,7 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
       _sharedCacheValues.put(specification, Boolean.TRUE);
     }
     _functionCost = executor.getFunctionCosts().getStatistics(graph.getCalculationConfigurationName());
+    _invocationCostPercentile = executor.getFunctionCosts().getInvocationCostPercentile();
   }
 
   public Map<ValueSpecification, Boolean> getSharedCacheValues() {
@@ -41,4 +43,15 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
     return _functionCost.getStatistics(function.getFunctionDefinition().getUniqueId());
   }
 
+  /**
+   * Returns the cost of invoking a function to use when forming and scheduling fragments. This is the mean invocation time
+   * unless the function costs are configured to use a percentile of the invocation time distribution.
+   * 
+   * @param statistics the statistics for the function, not null
+   * @return the invocation cost in nanoseconds
+   */
+  public double getInvocationCost(final FunctionInvocationStatistics statistics) {
+    return statistics.getInvocationCost(_invocationCostPercentile);
+  }
+
 }
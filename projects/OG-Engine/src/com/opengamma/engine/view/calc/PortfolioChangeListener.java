@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.opengamma.core.change.ChangeEvent;
+import com.opengamma.core.change.ChangeListener;
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.PortfolioNode;
+import com.opengamma.core.position.Position;
+import com.opengamma.core.position.Trade;
+import com.opengamma.id.ObjectId;
+import com.opengamma.id.UniqueId;
+
+/**
+ * Change listener for the portfolio, and its nodes, positions and trades, compiled into a view which notifies a
+ * computation job so that the compilation can be updated.
+ */
+public class PortfolioChangeListener implements ChangeListener {
+
+  private final ViewComputationJob _computationJob;
+  private volatile Set<ObjectId> _objectIds = Collections.emptySet();
+
+  public PortfolioChangeListener(ViewComputationJob computationJob) {
+    _computationJob = computationJob;
+  }
+
+  /**
+   * Sets the portfolio whose changes are of interest, replacing any previous one.
+   *
+   * @param portfolio the portfolio compiled into the view, or null if there is none
+   */
+  public void setPortfolio(Portfolio portfolio) {
+    if (portfolio == null) {
+      _objectIds = Collections.emptySet();
+      return;
+    }
+    final Set<ObjectId> objectIds = new HashSet<ObjectId>();
+    add(objectIds, portfolio.getUniqueId());
+    addNode(objectIds, portfolio.getRootNode());
+    _objectIds = objectIds;
+  }
+
+  private static void add(final Set<ObjectId> objectIds, final UniqueId uniqueId) {
+    if (uniqueId != null) {
+      objectIds.add(uniqueId.getObjectId());
+    }
+  }
+
+  private static void addNode(final Set<ObjectId> objectIds, final PortfolioNode node) {
+    add(objectIds, node.getUniqueId());
+    for (Position position : node.getPositions()) {
+      add(objectIds, position.getUniqueId());
+      for (Trade trade : position.getTrades()) {
+        add(objectIds, trade.getUniqueId());
+      }
+    }
+    for (PortfolioNode childNode : node.getChildNodes()) {
+      addNode(objectIds, childNode);
+    }
+  }
+
+  @Override
+  public void entityChanged(ChangeEvent event) {
+    // A position added to the portfolio arrives as a change to the portfolio or node holding it
+    if (isRelevant(event.getBeforeId()) || isRelevant(event.getAfterId())) {
+      getViewComputationJob().dirtyCompilation();
+    }
+  }
+
+  private boolean isRelevant(final UniqueId uniqueId) {
+    return (uniqueId != null) && _objectIds.contains(uniqueId.getObjectId());
+  }
+
+  private ViewComputationJob getViewComputationJob() {
+    return _computationJob;
+  }
+
+}
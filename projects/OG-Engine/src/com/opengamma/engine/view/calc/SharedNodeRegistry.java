@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.time.Instant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.MapMaker;
+import com.opengamma.engine.depgraph.CompactDependencyGraph;
+import com.opengamma.engine.view.calc.ExecutionPlanCache.DependencyNodeKey;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.VersionCorrection;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.tuple.Pair;
+
+/**
+ * Records the dependency nodes executed by recent view cycles so that equivalent nodes in the graphs of other views can consume
+ * those results rather than recomputing them.
+ * <p>
+ * Nodes are equivalent if they apply the same parameterized function to the same target, taking the same input values and
+ * producing the same output values, as defined by {@link ExecutionPlanCache.DependencyNodeKey}. A cycle using a result must also
+ * have the same valuation time, version correction and function initialization as the cycle that produced it; the cycle is
+ * responsible for checking that the market data feeding the node is the same.
+ * <p>
+ * Sharing is enabled by giving the view processor an instance, which is shared by the cycles of all of its views. A cycle
+ * registers its nodes once it has executed and removes them when it is released, so only the results of cycles whose caches
+ * are still available are offered. A consuming cycle retains the producing cycle while it reads from its cache.
+ */
+public class SharedNodeRegistry {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(SharedNodeRegistry.class);
+
+  /**
+   * A cycle, and calculation configuration within it, that has produced the values of a node.
+   */
+  /* package */static final class Producer {
+
+    private final SingleComputationCycle _cycle;
+    private final String _calculationConfigurationName;
+    private final Instant _valuationTime;
+    private final VersionCorrection _versionCorrection;
+    private final long _functionInitId;
+
+    private Producer(final SingleComputationCycle cycle, final String calculationConfigurationName, final long functionInitId) {
+      _cycle = cycle;
+      _calculationConfigurationName = calculationConfigurationName;
+      _valuationTime = cycle.getValuationTime();
+      _versionCorrection = cycle.getVersionCorrection();
+      _functionInitId = functionInitId;
+    }
+
+    public SingleComputationCycle getCycle() {
+      return _cycle;
+    }
+
+    public String getCalculationConfigurationName() {
+      return _calculationConfigurationName;
+    }
+
+    private boolean isCompatible(final SingleComputationCycle cycle, final long functionInitId) {
+      return (cycle != _cycle) && (functionInitId == _functionInitId) && _valuationTime.equals(cycle.getValuationTime())
+          && _versionCorrection.equals(cycle.getVersionCorrection());
+    }
+
+  }
+
+  /**
+   * The most recent producer of each node.
+   */
+  private final ConcurrentMap<DependencyNodeKey, Producer> _producers = new ConcurrentHashMap<DependencyNodeKey, Producer>();
+
+  /**
+   * The entries made by each cycle, so that they can be removed when it is released.
+   */
+  private final ConcurrentMap<UniqueId, Collection<Pair<DependencyNodeKey, Producer>>> _registrations =
+      new ConcurrentHashMap<UniqueId, Collection<Pair<DependencyNodeKey, Producer>>>();
+
+  /**
+   * Building the node keys is costly, so they are held for as long as the compiled graph is in memory.
+   */
+  private final Map<CompactDependencyGraph, DependencyNodeKey[]> _nodeKeys = new MapMaker().weakKeys().makeMap();
+
+  /**
+   * Returns the key of a node, creating the keys for the graph if necessary.
+   *
+   * @param graph the graph containing the node, not null
+   * @param node the index of the node in the graph
+   * @return the key, not null
+   */
+  /* package */DependencyNodeKey getNodeKey(final CompactDependencyGraph graph, final int node) {
+    DependencyNodeKey[] keys = _nodeKeys.get(graph);
+    if (keys == null) {
+      keys = new DependencyNodeKey[graph.getSize()];
+      _nodeKeys.put(graph, keys);
+    }
+    DependencyNodeKey key = keys[node];
+    if (key == null) {
+      key = new DependencyNodeKey(graph.getNode(node));
+      keys[node] = key;
+    }
+    return key;
+  }
+
+  /**
+   * Finds a cycle that has produced the values of an equivalent node.
+   *
+   * @param cycle the cycle looking for a producer, not null
+   * @param functionInitId the function initialization identifier of the cycle
+   * @param key the node key, not null
+   * @return the producer, or null if there is no compatible cycle
+   */
+  /* package */Producer getProducer(final SingleComputationCycle cycle, final long functionInitId, final DependencyNodeKey key) {
+    final Producer producer = _producers.get(key);
+    if ((producer == null) || !producer.isCompatible(cycle, functionInitId)) {
+      return null;
+    }
+    return producer;
+  }
+
+  /**
+   * Registers the nodes of a calculation configuration which have been executed by a cycle.
+   *
+   * @param cycle the cycle, not null
+   * @param calculationConfigurationName the calculation configuration name, not null
+   * @param functionInitId the function initialization identifier used by the cycle
+   * @param graph the graph of the configuration, not null
+   * @param nodes the indices of the executed nodes in the graph, not null
+   */
+  /* package */void register(final SingleComputationCycle cycle, final String calculationConfigurationName, final long functionInitId, final CompactDependencyGraph graph,
+      final Collection<Integer> nodes) {
+    ArgumentChecker.notNull(cycle, "cycle");
+    final Producer producer = new Producer(cycle, calculationConfigurationName, functionInitId);
+    final List<Pair<DependencyNodeKey, Producer>> registrations = new ArrayList<Pair<DependencyNodeKey, Producer>>(nodes.size());
+    for (Integer node : nodes) {
+      final DependencyNodeKey key = getNodeKey(graph, node);
+      _producers.put(key, producer);
+      registrations.add(Pair.of(key, producer));
+    }
+    Collection<Pair<DependencyNodeKey, Producer>> existing = _registrations.putIfAbsent(cycle.getUniqueId(), registrations);
+    if (existing != null) {
+      synchronized (existing) {
+        existing.addAll(registrations);
+      }
+    }
+    s_logger.debug("Registered {} nodes from {}/{}", new Object[] {nodes.size(), cycle.getUniqueId(), calculationConfigurationName });
+  }
+
+  /**
+   * Removes the nodes registered by a cycle. This must be called before the cycle's caches are released.
+   *
+   * @param cycleId the unique identifier of the cycle, not null
+   */
+  /* package */void unregister(final UniqueId cycleId) {
+    final Collection<Pair<DependencyNodeKey, Producer>> registrations = _registrations.remove(cycleId);
+    if (registrations != null) {
+      synchronized (registrations) {
+        for (Pair<DependencyNodeKey, Producer> registration : registrations) {
+          // A later cycle may have replaced the entry
+          _producers.remove(registration.getFirst(), registration.getSecond());
+        }
+      }
+      s_logger.debug("Unregistered {} nodes from {}", registrations.size(), cycleId);
+    }
+  }
+
+  /**
+   * Returns the number of nodes that have a producer.
+   *
+   * @return the number of nodes
+   */
+  public int getSharedNodeCount() {
+    return _producers.size();
+  }
+
+}
@@ -11,6 +11,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -33,12 +34,14 @@ import java.util.concurrent.TimeoutException;
 import javax.time.Duration;
 import javax.time.Instant;
 
+import org.apache.commons.lang.ObjectUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.opengamma.DataNotFoundException;
 import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.depgraph.CompactDependencyGraph;
 import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyNode;
 import com.opengamma.engine.depgraph.DependencyNodeFilter;
@@ -49,7 +52,7 @@ import com.opengamma.engine.marketdata.OverrideOperation;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
-import com.opengamma.engine.view.InMemoryViewComputationResultModel;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
 import com.opengamma.engine.view.ViewCalculationConfiguration;
 import com.opengamma.engine.view.ViewComputationResultModel;
 import com.opengamma.engine.view.ViewDefinition;
@@ -117,9 +120,10 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
 
   private final Map<DependencyNode, NodeStateFlag> _nodeStates = new ConcurrentHashMap<DependencyNode, NodeStateFlag>();
   private final Map<String, ViewComputationCache> _cachesByCalculationConfiguration = new HashMap<String, ViewComputationCache>();
+  private final Map<String, BitSet> _executableNodes = new HashMap<String, BitSet>();
 
   // Output
-  private final InMemoryViewComputationResultModel _resultModel;
+  private final ColumnarViewComputationResultModel _resultModel;
 
   public SingleComputationCycle(UniqueId cycleId, UniqueId viewProcessId,
       ComputationResultListener cycleFragmentResultListener, ViewProcessContext viewProcessContext,
@@ -144,8 +148,8 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
     _statisticsGatherer = getViewProcessContext().getGraphExecutorStatisticsGathererProvider().getStatisticsGatherer(getViewProcessId());
   }
 
-  private InMemoryViewComputationResultModel constructTemplateResultModel() {
-    InMemoryViewComputationResultModel result = new InMemoryViewComputationResultModel();
+  private ColumnarViewComputationResultModel constructTemplateResultModel() {
+    ColumnarViewComputationResultModel result = new ColumnarViewComputationResultModel();
     result.setViewCycleId(getCycleId());
     result.setViewProcessId(getViewProcessId());
     result.setValuationTime(getExecutionOptions().getValuationTime());
@@ -216,7 +220,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
     return _cycleId;
   }
 
-  private VersionCorrection getVersionCorrection() {
+  /* package */VersionCorrection getVersionCorrection() {
     return _versionCorrection;
   }
 
@@ -255,7 +259,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
   }
 
   @Override
-  public InMemoryViewComputationResultModel getResultModel() {
+  public ColumnarViewComputationResultModel getResultModel() {
     return _resultModel;
   }
 
@@ -290,9 +294,40 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
    *           must be called.
    */
   public void execute(SingleComputationCycle previousCycle, MarketDataSnapshot marketDataSnapshot, ExecutorService calcJobResultExecutorService) throws InterruptedException {
+    execute(previousCycle, null, marketDataSnapshot, calcJobResultExecutorService);
+  }
+
+  /**
+   * Synchronously runs the cycle.
+   * 
+   * @param previousCycle the previous cycle from which a delta cycle should be performed, or null to perform a full cycle
+   * @param changedMarketData the market data requirements which may have changed since the previous cycle's snapshot was taken, or null if not known
+   * @param marketDataSnapshot the market data snapshot with which to execute the cycle, not null
+   * @param calcJobResultExecutorService the executor to use for streaming calculation job result consumption, not null
+   * @throws InterruptedException if the thread is interrupted while waiting for the computation cycle to complete. Execution of any outstanding jobs will be cancelled, but {@link #release()} still
+   *           must be called.
+   */
+  public void execute(SingleComputationCycle previousCycle, Collection<ValueRequirement> changedMarketData, MarketDataSnapshot marketDataSnapshot,
+      ExecutorService calcJobResultExecutorService) throws InterruptedException {
     if (_state != ViewCycleState.AWAITING_EXECUTION) {
       throw new IllegalStateException("State must be " + ViewCycleState.AWAITING_EXECUTION);
     }
+    final ExecutionTraceRecorder traceRecorder = getViewProcessContext().getComputationJobDispatcher().getTraceRecorder();
+    final ExecutionTrace trace = (traceRecorder != null) ? traceRecorder.startCycle(getUniqueId()) : null;
+    if (trace == null) {
+      executeImpl(previousCycle, changedMarketData, marketDataSnapshot, calcJobResultExecutorService, null);
+      return;
+    }
+    try {
+      executeImpl(previousCycle, changedMarketData, marketDataSnapshot, calcJobResultExecutorService, trace);
+    } finally {
+      trace.record(ExecutionTrace.CYCLE, getViewDefinition().getName(), trace.getStartNanos(), System.nanoTime());
+      traceRecorder.endCycle(trace);
+    }
+  }
+
+  private void executeImpl(SingleComputationCycle previousCycle, Collection<ValueRequirement> changedMarketData, MarketDataSnapshot marketDataSnapshot,
+      ExecutorService calcJobResultExecutorService, ExecutionTrace trace) throws InterruptedException {
     _startTime = Instant.now();
     _state = ViewCycleState.EXECUTING;
 
@@ -300,7 +335,11 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
     prepareInputs(marketDataSnapshot);
 
     if (previousCycle != null) {
-      computeDelta(previousCycle);
+      computeDelta(previousCycle, changedMarketData);
+    }
+    shareNodes();
+    if (trace != null) {
+      trace.record(ExecutionTrace.PREPARE, null, trace.getStartNanos(), System.nanoTime());
     }
 
     final BlockingQueue<ExecutionResult> calcJobResultQueue = new LinkedBlockingQueue<ExecutionResult>();
@@ -359,6 +398,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
 
     populateResultModel();
     _state = ViewCycleState.EXECUTED;
+    registerSharedNodes();
   }
 
   /**
@@ -395,7 +435,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
     Map<ValueRequirement, ValueSpecification> marketDataRequirements = getCompiledViewDefinition().getMarketDataRequirements();
     s_logger.debug("Populating {} market data items using snapshot {}", marketDataRequirements.size(), snapshot);
     Map<ViewComputationCache, OverrideOperation> cacheMarketDataOperation = getCacheMarketDataOperation();
-    InMemoryViewComputationResultModel marketDataResultFragment = constructTemplateResultModel();
+    ColumnarViewComputationResultModel marketDataResultFragment = constructTemplateResultModel();
     final Map<ValueRequirement, Object> marketDataValues = snapshot.query(marketDataRequirements.keySet());
     for (Map.Entry<ValueRequirement, ValueSpecification> marketDataRequirement : marketDataRequirements.entrySet()) {
       // REVIEW 2010-10-22 Andrew
@@ -473,28 +513,35 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
   /**
    * Determine which live data inputs have changed between iterations, and:
    * <ul>
-   * <li>Copy over all values that can be demonstrated to be the same from the previous iteration (because no input has changed)
+   * <li>Reuse all values that can be demonstrated to be the same from the previous iteration (because no input has changed), by reference where the cache source supports it
    * <li>Only recompute the values that could have changed based on live data inputs
    * </ul>
    * 
    * @param previousCycle Previous iteration. It must not have been cleaned yet ({@link #releaseResources()}).
+   * @param changedMarketData the market data requirements which may have changed since the previous iteration, or null to compare all market data
    */
-  private void computeDelta(SingleComputationCycle previousCycle) {
+  private void computeDelta(SingleComputationCycle previousCycle, Collection<ValueRequirement> changedMarketData) {
     if (previousCycle.getState() != ViewCycleState.EXECUTED) {
       throw new IllegalArgumentException("State of previous cycle must be " + ViewCycleState.EXECUTED);
     }
-    InMemoryViewComputationResultModel deltaResultFragment = constructTemplateResultModel();
+    final Collection<ValueSpecification> changedMarketDataSpecs = getChangedMarketDataSpecifications(previousCycle, changedMarketData);
+    final ExecutorService deltaExecutorService = getViewProcessContext().getFunctionCompilationService().getExecutorService();
+    ColumnarViewComputationResultModel deltaResultFragment = constructTemplateResultModel();
     for (String calcConfigurationName : getAllCalculationConfigurationNames()) {
       final DependencyGraph depGraph = getCompiledViewDefinition().getDependencyGraph(calcConfigurationName);
+      final CompactDependencyGraph compactGraph = depGraph.getCompactGraph();
       ViewComputationCache cache = getComputationCache(calcConfigurationName);
       ViewComputationCache previousCache = previousCycle.getComputationCache(calcConfigurationName);
-      LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(depGraph, cache, previousCache);
+      LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(depGraph, cache, previousCache, changedMarketDataSpecs, deltaExecutorService);
       deltaCalculator.computeDelta();
+      // Only the changed nodes, and any without a state to copy, need to be considered for execution
+      final BitSet executableNodes = deltaCalculator.getChangedNodeIndices();
       s_logger.info("Computed delta for calculation configuration '{}'. {} nodes out of {} require recomputation.",
-          new Object[] {calcConfigurationName, deltaCalculator.getChangedNodes().size(), depGraph.getSize() });
+          new Object[] {calcConfigurationName, executableNodes.cardinality(), depGraph.getSize() });
       Collection<ValueSpecification> specsToCopy = new LinkedList<ValueSpecification>();
       Collection<ComputedValue> errors = new LinkedList<ComputedValue>();
-      for (DependencyNode unchangedNode : deltaCalculator.getUnchangedNodes()) {
+      for (int i = executableNodes.nextClearBit(0); i < compactGraph.getSize(); i = executableNodes.nextClearBit(i + 1)) {
+        final DependencyNode unchangedNode = compactGraph.getNode(i);
         final NodeStateFlag nodeState = previousCycle.getNodeState(unchangedNode);
         if (nodeState != null) {
           setNodeState(unchangedNode, nodeState);
@@ -505,12 +552,37 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
               errors.add(new ComputedValue(outputValue, NotCalculatedSentinel.SUPPRESSED));
             }
           }
+        } else {
+          executableNodes.set(i);
         }
       }
+      _executableNodes.put(calcConfigurationName, executableNodes);
       if (!specsToCopy.isEmpty()) {
-        for (ComputedValue value : copyValues(cache, previousCache, specsToCopy)) {
-          if (depGraph.getTerminalOutputSpecifications().contains(value.getSpecification())) {
-            deltaResultFragment.addValue(calcConfigurationName, value);
+        // Values held in the previous cycle's shared cache are referenced rather than copied
+        final Collection<ValueSpecification> specsNotInherited = getViewProcessContext().getComputationCacheSource().inheritValues(getUniqueId(), previousCycle.getUniqueId(),
+            calcConfigurationName, specsToCopy);
+        s_logger.debug("Inherited {} values from previous cycle; copying {}", specsToCopy.size() - specsNotInherited.size(), specsNotInherited.size());
+        if (!specsNotInherited.isEmpty()) {
+          for (ComputedValue value : copyValues(cache, previousCache, specsNotInherited)) {
+            if (depGraph.getTerminalOutputSpecifications().contains(value.getSpecification())) {
+              deltaResultFragment.addValue(calcConfigurationName, value);
+            }
+          }
+        }
+        if (specsNotInherited.size() < specsToCopy.size()) {
+          final Set<ValueSpecification> copied = new HashSet<ValueSpecification>(specsNotInherited);
+          final Collection<ValueSpecification> terminalOutputs = new ArrayList<ValueSpecification>();
+          for (ValueSpecification spec : specsToCopy) {
+            if (!copied.contains(spec) && depGraph.getTerminalOutputSpecifications().contains(spec)) {
+              terminalOutputs.add(spec);
+            }
+          }
+          if (!terminalOutputs.isEmpty()) {
+            for (Pair<ValueSpecification, Object> value : cache.getValues(terminalOutputs, CacheSelectHint.allShared())) {
+              if (value.getSecond() != null) {
+                deltaResultFragment.addValue(calcConfigurationName, new ComputedValue(value.getFirst(), value.getSecond()));
+              }
+            }
           }
         }
       }
@@ -523,6 +595,283 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
     }
   }
 
+  /**
+   * Finds nodes still to be executed that have already been executed by the cycle of another view, and uses the values from
+   * that cycle's cache rather than executing them again. A node is only taken from another cycle if the node is equivalent,
+   * and each of its inputs is either market data with the same value in both cycles or is itself taken from the same cycle.
+   * Values are inherited by reference where the cache source supports it; a node with any value that can't be inherited is
+   * executed as normal. Each producing cycle is retained through the cycle manager while its cache is used, and a cycle that
+   * has already been released is ignored.
+   */
+  private void shareNodes() {
+    final SharedNodeRegistry registry = getViewProcessContext().getSharedNodeRegistry();
+    if (registry == null) {
+      return;
+    }
+    final long functionInitId = getFunctionInitId();
+    final ColumnarViewComputationResultModel sharedResultFragment = constructTemplateResultModel();
+    for (String calcConfigurationName : getAllCalculationConfigurationNames()) {
+      final DependencyGraph depGraph = getDependencyGraph(calcConfigurationName);
+      final CompactDependencyGraph graph = depGraph.getCompactGraph();
+      final BitSet executableNodes = _executableNodes.get(calcConfigurationName);
+      final int size = graph.getSize();
+      // Find the candidate nodes; the graph is in execution order so inputs are considered before the nodes consuming them
+      final SharedNodeRegistry.Producer[] producers = new SharedNodeRegistry.Producer[size];
+      final Map<SharedNodeRegistry.Producer, Set<ValueSpecification>> marketData = new HashMap<SharedNodeRegistry.Producer, Set<ValueSpecification>>();
+      for (int i = 0; i < size; i++) {
+        if (((executableNodes != null) && !executableNodes.get(i)) || (graph.getMarketDataValue(i) >= 0)) {
+          continue;
+        }
+        final SharedNodeRegistry.Producer producer = registry.getProducer(this, functionInitId, registry.getNodeKey(graph, i));
+        if (producer == null) {
+          continue;
+        }
+        if (isSharedFrom(graph, i, producer, producers, null)) {
+          producers[i] = producer;
+          Set<ValueSpecification> producerMarketData = marketData.get(producer);
+          if (producerMarketData == null) {
+            producerMarketData = new HashSet<ValueSpecification>();
+            marketData.put(producer, producerMarketData);
+          }
+          for (int n = 0; n < graph.getInputNodeCount(i); n++) {
+            final int marketDataValue = graph.getMarketDataValue(graph.getInputNode(i, n));
+            if (marketDataValue >= 0) {
+              producerMarketData.add(graph.getValue(marketDataValue));
+            }
+          }
+        }
+      }
+      if (marketData.isEmpty()) {
+        continue;
+      }
+      // Retain the producing cycles so that their caches are not released while values are compared and inherited
+      final Map<SharedNodeRegistry.Producer, EngineResourceReference<SingleComputationCycle>> producerReferences = retainProducers(marketData.keySet());
+      final ViewComputationCache cache = getComputationCache(calcConfigurationName);
+      final Set<ValueSpecification> notShared = new HashSet<ValueSpecification>();
+      try {
+        for (int i = 0; i < size; i++) {
+          if ((producers[i] != null) && !producerReferences.containsKey(producers[i])) {
+            producers[i] = null;
+          }
+        }
+        inheritSharedValues(calcConfigurationName, graph, producers, marketData, producerReferences.keySet(), cache, notShared);
+      } finally {
+        for (EngineResourceReference<SingleComputationCycle> producerReference : producerReferences.values()) {
+          producerReference.release();
+        }
+      }
+      BitSet nodesToExecute = executableNodes;
+      final Collection<ValueSpecification> terminalOutputs = new ArrayList<ValueSpecification>();
+      int sharedNodes = 0;
+      for (int i = 0; i < size; i++) {
+        if (producers[i] == null) {
+          continue;
+        }
+        final DependencyNode node = graph.getNode(i);
+        if (!Collections.disjoint(node.getOutputValues(), notShared)) {
+          continue;
+        }
+        if (nodesToExecute == null) {
+          nodesToExecute = new BitSet(size);
+          nodesToExecute.set(0, size);
+        }
+        nodesToExecute.clear(i);
+        markExecuted(node);
+        sharedNodes++;
+        for (ValueSpecification output : node.getOutputValues()) {
+          if (depGraph.getTerminalOutputSpecifications().contains(output)) {
+            terminalOutputs.add(output);
+          }
+        }
+      }
+      if (nodesToExecute != null) {
+        _executableNodes.put(calcConfigurationName, nodesToExecute);
+      }
+      s_logger.info("Using {} nodes from other views for calculation configuration '{}'", sharedNodes, calcConfigurationName);
+      if (!terminalOutputs.isEmpty()) {
+        for (Pair<ValueSpecification, Object> value : cache.getValues(terminalOutputs, CacheSelectHint.allShared())) {
+          if (value.getSecond() != null) {
+            sharedResultFragment.addValue(calcConfigurationName, new ComputedValue(value.getFirst(), value.getSecond()));
+          }
+        }
+      }
+    }
+    if (!sharedResultFragment.getAllResults().isEmpty()) {
+      notifyFragmentCompleted(sharedResultFragment);
+    }
+  }
+
+  /**
+   * Takes a reference to each producing cycle, so that it can't be released while its values are used.
+   * 
+   * @param producers the producers to retain
+   * @return the references to the producers that are still available, not null
+   */
+  private Map<SharedNodeRegistry.Producer, EngineResourceReference<SingleComputationCycle>> retainProducers(final Collection<SharedNodeRegistry.Producer> producers) {
+    final EngineResourceManager<SingleComputationCycle> cycleManager = getViewProcessContext().getCycleManager();
+    final Map<SharedNodeRegistry.Producer, EngineResourceReference<SingleComputationCycle>> references =
+        new HashMap<SharedNodeRegistry.Producer, EngineResourceReference<SingleComputationCycle>>();
+    if (cycleManager == null) {
+      return references;
+    }
+    for (SharedNodeRegistry.Producer producer : producers) {
+      EngineResourceReference<SingleComputationCycle> reference;
+      try {
+        reference = cycleManager.createReference(producer.getCycle().getUniqueId());
+      } catch (IllegalArgumentException e) {
+        // Concurrently being released
+        reference = null;
+      }
+      if (reference != null) {
+        references.put(producer, reference);
+      } else {
+        s_logger.debug("Cycle {} released before its nodes could be shared", producer.getCycle().getUniqueId());
+      }
+    }
+    return references;
+  }
+
+  /**
+   * Discards the candidate nodes that used different market data to their producers, and inherits the values of the
+   * remaining nodes from the producers, which must be retained by the caller.
+   * 
+   * @param calcConfigurationName the calculation configuration name
+   * @param graph the graph of the calculation configuration
+   * @param producers the cycles that the nodes of the graph may be taken from, updated to null for nodes that can't be
+   * @param marketData the market data used by the candidate nodes of each producer
+   * @param retained the producers that are retained
+   * @param cache this cycle's cache for the calculation configuration
+   * @param notShared updated with the values that couldn't be inherited
+   */
+  private void inheritSharedValues(final String calcConfigurationName, final CompactDependencyGraph graph, final SharedNodeRegistry.Producer[] producers,
+      final Map<SharedNodeRegistry.Producer, Set<ValueSpecification>> marketData, final Set<SharedNodeRegistry.Producer> retained, final ViewComputationCache cache,
+      final Set<ValueSpecification> notShared) {
+    final Map<SharedNodeRegistry.Producer, Set<ValueSpecification>> changedMarketData = new HashMap<SharedNodeRegistry.Producer, Set<ValueSpecification>>();
+    for (SharedNodeRegistry.Producer producer : retained) {
+      changedMarketData.put(producer, getChangedMarketData(cache, producer, marketData.get(producer)));
+    }
+    final Map<SharedNodeRegistry.Producer, Collection<ValueSpecification>> sharedValues = new HashMap<SharedNodeRegistry.Producer, Collection<ValueSpecification>>();
+    for (int i = 0; i < graph.getSize(); i++) {
+      final SharedNodeRegistry.Producer producer = producers[i];
+      if (producer == null) {
+        continue;
+      }
+      if (isSharedFrom(graph, i, producer, producers, changedMarketData.get(producer))) {
+        Collection<ValueSpecification> values = sharedValues.get(producer);
+        if (values == null) {
+          values = new ArrayList<ValueSpecification>();
+          sharedValues.put(producer, values);
+        }
+        values.addAll(graph.getNode(i).getOutputValues());
+      } else {
+        producers[i] = null;
+      }
+    }
+    // Inherit the values; any node with a value that couldn't be inherited must still be executed
+    for (Map.Entry<SharedNodeRegistry.Producer, Collection<ValueSpecification>> producerValues : sharedValues.entrySet()) {
+      final SharedNodeRegistry.Producer producer = producerValues.getKey();
+      notShared.addAll(getViewProcessContext().getComputationCacheSource().inheritValues(getUniqueId(), calcConfigurationName, producer.getCycle().getUniqueId(),
+          producer.getCalculationConfigurationName(), producerValues.getValue()));
+    }
+  }
+
+  /**
+   * Tests whether a node can take its values from a cycle.
+   * 
+   * @param graph the graph containing the node
+   * @param node the node index
+   * @param producer the cycle that has produced an equivalent node
+   * @param producers the cycles that the nodes of the graph may be taken from
+   * @param changedMarketData the market data with different values in the producing cycle, or null if not yet known
+   * @return true if all of the inputs to the node are unchanged market data or are taken from the same cycle
+   */
+  private static boolean isSharedFrom(final CompactDependencyGraph graph, final int node, final SharedNodeRegistry.Producer producer,
+      final SharedNodeRegistry.Producer[] producers, final Set<ValueSpecification> changedMarketData) {
+    for (int n = 0; n < graph.getInputNodeCount(node); n++) {
+      final int input = graph.getInputNode(node, n);
+      final int marketDataValue = graph.getMarketDataValue(input);
+      if (marketDataValue >= 0) {
+        if ((changedMarketData != null) && changedMarketData.contains(graph.getValue(marketDataValue))) {
+          return false;
+        }
+      } else if (producers[input] != producer) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compares the market data in this cycle's cache with that used by another cycle.
+   * 
+   * @param cache this cycle's cache
+   * @param producer the other cycle, which must be retained by the caller
+   * @param marketData the market data to compare
+   * @return the market data with different values, not null
+   */
+  private static Set<ValueSpecification> getChangedMarketData(final ViewComputationCache cache, final SharedNodeRegistry.Producer producer,
+      final Set<ValueSpecification> marketData) {
+    final ViewComputationCache producerCache = producer.getCycle().getComputationCache(producer.getCalculationConfigurationName());
+    if (producerCache == null) {
+      return marketData;
+    }
+    final Map<ValueSpecification, Object> producerValues = new HashMap<ValueSpecification, Object>();
+    for (Pair<ValueSpecification, Object> value : producerCache.getValues(marketData, CacheSelectHint.allShared())) {
+      producerValues.put(value.getFirst(), value.getSecond());
+    }
+    final Set<ValueSpecification> changed = new HashSet<ValueSpecification>();
+    for (Pair<ValueSpecification, Object> value : cache.getValues(marketData, CacheSelectHint.allShared())) {
+      if ((value.getSecond() == null) || !ObjectUtils.equals(value.getSecond(), producerValues.get(value.getFirst()))) {
+        changed.add(value.getFirst());
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Offers the nodes executed by this cycle to the cycles of other views.
+   */
+  private void registerSharedNodes() {
+    final SharedNodeRegistry registry = getViewProcessContext().getSharedNodeRegistry();
+    if (registry == null) {
+      return;
+    }
+    final long functionInitId = getFunctionInitId();
+    for (String calcConfigurationName : getAllCalculationConfigurationNames()) {
+      final CompactDependencyGraph graph = getDependencyGraph(calcConfigurationName).getCompactGraph();
+      final List<Integer> executedNodes = new ArrayList<Integer>(graph.getSize());
+      for (int i = 0; i < graph.getSize(); i++) {
+        if ((graph.getMarketDataValue(i) < 0) && (getNodeState(graph.getNode(i)) == NodeStateFlag.EXECUTED)) {
+          executedNodes.add(i);
+        }
+      }
+      registry.register(this, calcConfigurationName, functionInitId, graph, executedNodes);
+    }
+  }
+
+  /**
+   * Resolves the changed market data requirements to the specifications used in the graphs.
+   * 
+   * @param previousCycle the previous iteration
+   * @param changedMarketData the changed requirements, or null if not known
+   * @return the changed specifications, or null if all market data must be compared
+   */
+  private Collection<ValueSpecification> getChangedMarketDataSpecifications(SingleComputationCycle previousCycle, Collection<ValueRequirement> changedMarketData) {
+    if ((changedMarketData == null) || (previousCycle.getCompiledViewDefinition() != getCompiledViewDefinition())) {
+      // The graphs have changed so values may be present in one cache and not the other without having ticked
+      return null;
+    }
+    final Map<ValueRequirement, ValueSpecification> marketDataRequirements = getCompiledViewDefinition().getMarketDataRequirements();
+    final Collection<ValueSpecification> changedMarketDataSpecs = new ArrayList<ValueSpecification>(changedMarketData.size());
+    for (ValueRequirement requirement : changedMarketData) {
+      final ValueSpecification specification = marketDataRequirements.get(requirement);
+      if (specification != null) {
+        changedMarketDataSpecs.add(specification);
+      }
+    }
+    return changedMarketDataSpecs;
+  }
+
   private Collection<ComputedValue> copyValues(ViewComputationCache cache, ViewComputationCache previousCache, Collection<ValueSpecification> specsToCopy) {
     Collection<Pair<ValueSpecification, Object>> valuesToCopy = previousCache.getValues(specsToCopy);
     Collection<ComputedValue> newValues = new ArrayList<ComputedValue>(valuesToCopy.size());
@@ -579,7 +928,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
   }
 
   private ViewComputationResultModel generateCycleFragmentResult(List<ExecutionResult> calculationJobResults) {
-    InMemoryViewComputationResultModel resultModel = constructTemplateResultModel();
+    ColumnarViewComputationResultModel resultModel = constructTemplateResultModel();
     for (ExecutionResult calculationJobResult : calculationJobResults) {
       String calcConfigurationName = calculationJobResult.getResult().getSpecification().getCalcConfigName();
       DependencyGraph depGraph = getCompiledViewDefinition().getDependencyGraph(calcConfigurationName);
@@ -618,7 +967,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
     return !resultModel.getAllResults().isEmpty() ? resultModel : null;
   }
 
-  private void addMarketDataToResultFragment(InMemoryViewComputationResultModel result, ValueSpecification marketDataSpecification, ComputedValue marketData) {
+  private void addMarketDataToResultFragment(ColumnarViewComputationResultModel result, ValueSpecification marketDataSpecification, ComputedValue marketData) {
     result.addMarketData(marketData);
     for (DependencyGraph depGraph : getCompiledViewDefinition().getAllDependencyGraphs()) {
       if (depGraph.getTerminalOutputSpecifications().contains(marketDataSpecification)) {
@@ -657,7 +1006,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
    */
   private DependencyGraph createExecutableDependencyGraph(final String calcConfName) {
     final FunctionBlacklistQuery blacklist = getViewProcessContext().getFunctionCompilationService().getFunctionCompilationContext().getGraphExecutionBlacklist();
-    return getDependencyGraph(calcConfName).subGraph(new DependencyNodeFilter() {
+    final DependencyNodeFilter filter = new DependencyNodeFilter() {
       public boolean accept(final DependencyNode node) {
         // Market data functions must not be executed
         if (node.getFunction().getFunction() instanceof MarketDataSourcingFunction) {
@@ -687,7 +1036,14 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
         }
         return true;
       }
-    });
+    };
+    final BitSet executableNodes = _executableNodes.get(calcConfName);
+    if (executableNodes != null) {
+      // Delta cycle; only the nodes that may have changed need to be considered
+      return getDependencyGraph(calcConfName).subGraph(executableNodes, filter);
+    } else {
+      return getDependencyGraph(calcConfName).subGraph(filter);
+    }
   }
 
   //--------------------------------------------------------------------------
@@ -699,6 +1055,11 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
     if (getViewDefinition().isDumpComputationCacheToDisk()) {
       dumpComputationCachesToDisk();
     }
+    final SharedNodeRegistry sharedNodes = getViewProcessContext().getSharedNodeRegistry();
+    if (sharedNodes != null) {
+      // Other cycles must stop finding this one before its caches go
+      sharedNodes.unregister(getUniqueId());
+    }
     getViewProcessContext().getComputationCacheSource().releaseCaches(getUniqueId());
     _state = ViewCycleState.DESTROYED;
   }
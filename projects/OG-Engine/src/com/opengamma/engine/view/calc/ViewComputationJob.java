@@ -11,10 +11,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -29,12 +32,15 @@ import com.google.common.collect.Sets;
 import com.opengamma.DataNotFoundException;
 import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.core.change.ChangeListener;
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.PositionSource;
 import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.marketdata.MarketDataListener;
 import com.opengamma.engine.marketdata.MarketDataProvider;
 import com.opengamma.engine.marketdata.MarketDataSnapshot;
 import com.opengamma.engine.marketdata.availability.MarketDataAvailabilityProvider;
+import com.opengamma.engine.marketdata.spec.LiveMarketDataSpecification;
 import com.opengamma.engine.marketdata.spec.MarketDataSpecification;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
@@ -51,7 +57,10 @@ import com.opengamma.engine.view.calc.trigger.ViewCycleEligibility;
 import com.opengamma.engine.view.calc.trigger.ViewCycleTrigger;
 import com.opengamma.engine.view.calc.trigger.ViewCycleTriggerResult;
 import com.opengamma.engine.view.calc.trigger.ViewCycleType;
+import com.opengamma.engine.view.compilation.CompiledViewDefinitionCache;
+import com.opengamma.engine.view.compilation.CompiledViewDefinitionCacheKey;
 import com.opengamma.engine.view.compilation.CompiledViewDefinitionWithGraphsImpl;
+import com.opengamma.engine.view.compilation.PortfolioCompiler;
 import com.opengamma.engine.view.compilation.ViewCompilationServices;
 import com.opengamma.engine.view.compilation.ViewDefinitionCompiler;
 import com.opengamma.engine.view.execution.ViewCycleExecutionOptions;
@@ -62,6 +71,7 @@ import com.opengamma.id.UniqueId;
 import com.opengamma.id.VersionCorrection;
 import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.TerminatableJob;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
 import com.opengamma.util.monitor.OperationTimer;
 
 /**
@@ -80,6 +90,7 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   private final ViewCycleTrigger _masterCycleTrigger;
   private final FixedTimeTrigger _compilationExpiryCycleTrigger;
   private final boolean _executeCycles;
+  private final int _maxConcurrentCycles;
 
   private int _cycleCount;
   private EngineResourceReference<SingleComputationCycle> _previousCycleReference;
@@ -88,9 +99,16 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   private CompiledViewDefinitionWithGraphsImpl _latestCompiledViewDefinition;
   private final Set<ValueRequirement> _marketDataSubscriptions = new HashSet<ValueRequirement>();
   private final Set<ValueRequirement> _pendingSubscriptions = Collections.newSetFromMap(new ConcurrentHashMap<ValueRequirement, Boolean>());
+
+  /**
+   * The market data reported as changed since the last snapshot was taken, null if not known.
+   */
+  private Set<ValueRequirement> _changedMarketData;
+  private final Object _changedMarketDataLock = new Object();
   private CountDownLatch _pendingSubscriptionLatch;
 
   private ChangeListener _viewDefinitionChangeListener;
+  private PortfolioChangeListener _portfolioChangeListener;
 
   private volatile boolean _wakeOnMarketDataChanged;
   private volatile boolean _marketDataChanged = true;
@@ -105,6 +123,12 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   private double _totalTimeNanos;
 
   private MarketDataProvider _marketDataProvider;
+  private MarketDataSpecification _marketDataSpecification;
+
+  /**
+   * Cycle execution options taken from the sequence which could not run alongside the executing concurrent cycles, null if none.
+   */
+  private ViewCycleExecutionOptions _deferredExecutionOptions;
 
   public ViewComputationJob(ViewProcessImpl viewProcess, ViewExecutionOptions executionOptions,
       ViewProcessContext processContext, EngineResourceManagerInternal<SingleComputationCycle> cycleManager) {
@@ -120,8 +144,11 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     _compilationExpiryCycleTrigger = new FixedTimeTrigger();
     _masterCycleTrigger = createViewCycleTrigger(executionOptions);
     _executeCycles = !getExecutionOptions().getFlags().contains(ViewExecutionFlags.COMPILE_ONLY);
+    _maxConcurrentCycles = (_executeCycles && (executionOptions.getMaxConcurrentCycles() != null) && (processContext.getConcurrentCycleExecutor() != null))
+        ? executionOptions.getMaxConcurrentCycles() : 1;
     updateViewDefinitionIfRequired();
     subscribeToViewDefinition();
+    subscribeToPortfolio();
   }
 
   private ViewCycleTrigger createViewCycleTrigger(ViewExecutionOptions executionOptions) {
@@ -185,6 +212,11 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
       return;
     }
 
+    if (_maxConcurrentCycles > 1) {
+      runConcurrentCycles();
+      return;
+    }
+
     ViewCycleExecutionOptions executionOptions = null;
     try {
       if (!getExecutionOptions().getExecutionSequence().isEmpty()) {
@@ -201,71 +233,27 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
       return;
     }
 
-    if (executionOptions.getMarketDataSpecification() == null) {
-      s_logger.error("No market data specification for cycle");
-      cycleExecutionFailed(executionOptions, new OpenGammaRuntimeException("No market data specification for cycle"));
+    final MarketDataSnapshot marketDataSnapshot = takeMarketDataSnapshot(executionOptions);
+    if (marketDataSnapshot == null) {
       return;
     }
 
-    MarketDataSnapshot marketDataSnapshot;
-    try {
-      if (getMarketDataProvider() == null || !getMarketDataProvider().isCompatible(executionOptions.getMarketDataSpecification())) {
-        // A different market data provider is required. We support this because we can, but changing provider is not the
-        // most efficient operation.
-        if (getMarketDataProvider() != null) {
-          s_logger.info("Replacing market data provider between cycles");
-        }
-        replaceMarketDataProvider(executionOptions.getMarketDataSpecification());
-      }
-
-      // Obtain the snapshot in case it is needed, but don't explicitly initialise it until the data is required
-      marketDataSnapshot = getMarketDataProvider().snapshot(executionOptions.getMarketDataSpecification());
-    } catch (Exception e) {
-      s_logger.error("Error with market data provider", e);
-      cycleExecutionFailed(executionOptions, new OpenGammaRuntimeException("Error with market data provider", e));
-      return;
-    }
-
-    Instant compilationValuationTime;
-    try {
-      if (executionOptions.getValuationTime() != null) {
-        compilationValuationTime = executionOptions.getValuationTime();
-      } else {
-        // Neither the cycle-specific options nor the defaults have overridden the valuation time so use the time
-        // associated with the market data snapshot. To avoid initialising the snapshot perhaps before the required
-        // inputs are known or even subscribed to, only ask for an indication at the moment.
-        compilationValuationTime = marketDataSnapshot.getSnapshotTimeIndication();
-        if (compilationValuationTime == null) {
-          throw new OpenGammaRuntimeException("Market data snapshot " + marketDataSnapshot + " produced a null indication of snapshot time");
-        }
-      }
-    } catch (Exception e) {
-      s_logger.error("Error obtaining compilation valuation time", e);
-      cycleExecutionFailed(executionOptions, new OpenGammaRuntimeException("Error obtaining compilation valuation time", e));
+    final Instant compilationValuationTime = getCompilationValuationTime(executionOptions, marketDataSnapshot);
+    if (compilationValuationTime == null) {
       return;
     }
 
     VersionCorrection versionCorrection = getResolvedVersionCorrection();
-    final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition;
-    try {
-      compiledViewDefinition = getCompiledViewDefinition(compilationValuationTime, versionCorrection);
-    } catch (Exception e) {
-      String message = MessageFormat.format("Error obtaining compiled view definition {0} for time {1} at version-correction {2}",
-          getViewProcess().getDefinitionId(), compilationValuationTime, versionCorrection);
-      s_logger.error(message);
-      cycleExecutionFailed(executionOptions, new OpenGammaRuntimeException(message, e));
+    final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition = getCompiledViewDefinition(executionOptions, compilationValuationTime, versionCorrection);
+    if (compiledViewDefinition == null) {
       return;
     }
 
+    // Anything reported after this point will be in this snapshot or reported again for the next one. Only live data is
+    // reported as it changes; other sources may give different values for a new valuation time without notification.
+    final Set<ValueRequirement> changedMarketData = takeChangedMarketData(executionOptions.getMarketDataSpecification() instanceof LiveMarketDataSpecification);
     try {
-      if (getExecutionOptions().getFlags().contains(ViewExecutionFlags.AWAIT_MARKET_DATA)) {
-        marketDataSnapshot.init(compiledViewDefinition.getMarketDataRequirements().keySet(), MARKET_DATA_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
-      } else {
-        marketDataSnapshot.init();
-      }
-      if (executionOptions.getValuationTime() == null) {
-        executionOptions.setValuationTime(marketDataSnapshot.getSnapshotTime());
-      }
+      initMarketDataSnapshot(executionOptions, marketDataSnapshot, compiledViewDefinition);
     } catch (Exception e) {
       s_logger.error("Error initializing snapshot {}", marketDataSnapshot);
       cycleExecutionFailed(executionOptions, new OpenGammaRuntimeException("Error initializing snapshot" + marketDataSnapshot, e));
@@ -276,37 +264,25 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
       cycleReference = createCycle(executionOptions, compiledViewDefinition, versionCorrection);
     } catch (Exception e) {
       s_logger.error("Error creating next view cycle for view process " + getViewProcess(), e);
+      restoreChangedMarketData(changedMarketData);
       return;
     }
 
     if (_executeCycles) {
       try {
-        final SingleComputationCycle singleComputationCycle = cycleReference.get();
-        final HashMap<String, Collection<ComputationTargetSpecification>> configToComputationTargets = new HashMap<String, Collection<ComputationTargetSpecification>>();
-        final HashMap<String, Map<ValueSpecification, Set<ValueRequirement>>> configToTerminalOutputs = new HashMap<String, Map<ValueSpecification, Set<ValueRequirement>>>();
-        for (DependencyGraph graph : compiledViewDefinition.getAllDependencyGraphs()) {
-          configToComputationTargets.put(graph.getCalculationConfigurationName(), graph.getAllComputationTargets());
-          configToTerminalOutputs.put(graph.getCalculationConfigurationName(), graph.getTerminalOutputs());
-        }
-        cycleStarted(new DefaultViewCycleMetadata(
-            cycleReference.get().getUniqueId(),
-            marketDataSnapshot.getUniqueId(),
-            compiledViewDefinition.getViewDefinition().getUniqueId(),
-            versionCorrection,
-            executionOptions.getValuationTime(),
-            singleComputationCycle.getAllCalculationConfigurationNames(),
-            configToComputationTargets,
-            configToTerminalOutputs));
-        executeViewCycle(cycleType, cycleReference, marketDataSnapshot, getViewProcess().getCalcJobResultExecutorService());
+        cycleStarted(createCycleMetadata(cycleReference.get(), marketDataSnapshot, compiledViewDefinition, versionCorrection, executionOptions));
+        executeViewCycle(cycleType, cycleReference, changedMarketData, marketDataSnapshot, getViewProcess().getCalcJobResultExecutorService());
       } catch (InterruptedException e) {
         // Execution interrupted - don't propagate as failure
         s_logger.info("View cycle execution interrupted for view process {}", getViewProcess());
         cycleReference.release();
+        restoreChangedMarketData(changedMarketData);
         return;
       } catch (Exception e) {
         // Execution failed
         s_logger.error("View cycle execution failed for view process " + getViewProcess(), e);
         cycleReference.release();
+        restoreChangedMarketData(changedMarketData);
         cycleExecutionFailed(executionOptions, e);
         return;
       }
@@ -335,6 +311,357 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     }
   }
 
+  /**
+   * Runs the cycles of the execution sequence concurrently, up to the limit given in the execution options. This suits a
+   * sequence of independent valuation times, such as a backtest, where each cycle is a full computation.
+   * <p>
+   * The cycles are pipelined rather than run in batches: another cycle is started as soon as one of those executing has
+   * been delivered, without consulting the cycle trigger. Each cycle is created and reported as started on this thread
+   * before it is executed on the view processor's concurrent cycle executor. Completed cycles are reported in sequence
+   * order, so one finishing early is held until those started before it have been reported.
+   * <p>
+   * Cycles only run together if they can use the same compiled view definition and market data provider; the first one
+   * that cannot is deferred until those executing have been delivered. Each cycle has its own market data snapshot and
+   * computation caches. No result fragments are streamed from concurrent cycles as these would interleave.
+   */
+  private void runConcurrentCycles() {
+    final VersionCorrection versionCorrection = getResolvedVersionCorrection();
+    final LinkedList<ConcurrentCycle> executing = new LinkedList<ConcurrentCycle>();
+    boolean sequenceCompleted = false;
+    boolean sequenceFailed = false;
+    try {
+      while (!isTerminated()) {
+        while (!executing.isEmpty() && executing.getFirst().isDone()) {
+          deliverConcurrentCycle(executing.getFirst());
+          executing.removeFirst();
+        }
+        if (!sequenceCompleted && !sequenceFailed && (executing.size() < _maxConcurrentCycles)) {
+          ViewCycleExecutionOptions executionOptions = _deferredExecutionOptions;
+          _deferredExecutionOptions = null;
+          if (executionOptions == null) {
+            if (getExecutionOptions().getExecutionSequence().isEmpty()) {
+              sequenceCompleted = true;
+              continue;
+            }
+            try {
+              executionOptions = getExecutionOptions().getExecutionSequence().getNext(getExecutionOptions().getDefaultExecutionOptions());
+              s_logger.debug("Next cycle execution options: {}", executionOptions);
+            } catch (Exception e) {
+              s_logger.error("Error obtaining next view cycle execution options from sequence for view process " + getViewProcess(), e);
+              sequenceFailed = true;
+              continue;
+            }
+            if (executionOptions == null) {
+              sequenceCompleted = true;
+              continue;
+            }
+          }
+          final ConcurrentCycle cycle = startConcurrentCycle(executionOptions, executing.isEmpty() ? null : executing.getLast().getCompiledViewDefinition(),
+              versionCorrection);
+          if (cycle != null) {
+            executing.add(cycle);
+            continue;
+          }
+          if (_deferredExecutionOptions == null) {
+            // The cycle failed and has been reported
+            continue;
+          }
+        }
+        if (executing.isEmpty()) {
+          break;
+        }
+        // Nothing more can be started until the oldest cycle has been delivered
+        deliverConcurrentCycle(executing.getFirst());
+        executing.removeFirst();
+      }
+    } catch (InterruptedException e) {
+      s_logger.info("View cycle execution interrupted for view process {}", getViewProcess());
+      return;
+    } finally {
+      for (ConcurrentCycle cycle : executing) {
+        cycle.abandon();
+      }
+    }
+    if (sequenceCompleted && !isTerminated()) {
+      processCompleted();
+    }
+  }
+
+  /**
+   * Starts a cycle for concurrent execution.
+   * 
+   * @param executionOptions the cycle execution options, not null
+   * @param executingCompilation the compiled view definition used by the cycles already executing, null if there are none
+   * @param versionCorrection the resolved version-correction, not null
+   * @return the executing cycle, or null if the cycle failed or was deferred until the others have been delivered
+   */
+  private ConcurrentCycle startConcurrentCycle(final ViewCycleExecutionOptions executionOptions, final CompiledViewDefinitionWithGraphsImpl executingCompilation,
+      final VersionCorrection versionCorrection) {
+    if ((executingCompilation != null) && (executionOptions.getMarketDataSpecification() != null)
+        && !getMarketDataProvider().isCompatible(executionOptions.getMarketDataSpecification())) {
+      // Replacing the provider would affect the snapshots of the executing cycles
+      _deferredExecutionOptions = executionOptions;
+      return null;
+    }
+    final MarketDataSnapshot marketDataSnapshot = takeMarketDataSnapshot(executionOptions);
+    if (marketDataSnapshot == null) {
+      return null;
+    }
+    final Instant compilationValuationTime = getCompilationValuationTime(executionOptions, marketDataSnapshot);
+    if (compilationValuationTime == null) {
+      return null;
+    }
+    if ((executingCompilation != null) && !isCompilationReusable(executingCompilation, compilationValuationTime)) {
+      _deferredExecutionOptions = executionOptions;
+      return null;
+    }
+    final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition = getCompiledViewDefinition(executionOptions, compilationValuationTime, versionCorrection);
+    if (compiledViewDefinition == null) {
+      return null;
+    }
+    final EngineResourceReference<SingleComputationCycle> cycleReference;
+    try {
+      initMarketDataSnapshot(executionOptions, marketDataSnapshot, compiledViewDefinition);
+      cycleReference = createCycle(executionOptions, compiledViewDefinition, versionCorrection, new ComputationResultListener() {
+        @Override
+        public void resultAvailable(final ViewComputationResultModel result) {
+          // Fragments are not streamed from concurrent cycles
+        }
+      });
+    } catch (Exception e) {
+      s_logger.error("Error creating next view cycle for view process " + getViewProcess(), e);
+      cycleExecutionFailed(executionOptions, e);
+      return null;
+    }
+    cycleStarted(createCycleMetadata(cycleReference.get(), marketDataSnapshot, compiledViewDefinition, versionCorrection, executionOptions));
+    final ConcurrentCycle cycle = new ConcurrentCycle(executionOptions, compiledViewDefinition, marketDataSnapshot, cycleReference);
+    try {
+      cycle.submit(getProcessContext().getConcurrentCycleExecutor());
+    } catch (RuntimeException e) {
+      s_logger.error("Error submitting view cycle for view process " + getViewProcess(), e);
+      cycleReference.release();
+      cycleExecutionFailed(executionOptions, e);
+      return null;
+    }
+    return cycle;
+  }
+
+  /**
+   * Waits for a concurrent cycle to complete and reports it to the view process.
+   * 
+   * @param cycle the cycle, not null
+   * @throws InterruptedException if interrupted while waiting, in which case the cycle is not delivered
+   */
+  private void deliverConcurrentCycle(final ConcurrentCycle cycle) throws InterruptedException {
+    try {
+      cycle.get();
+    } catch (ExecutionException e) {
+      s_logger.error("View cycle execution failed for view process " + getViewProcess(), e.getCause());
+      cycle.abandon();
+      cycleExecutionFailed(cycle.getCycleExecutionOptions(), (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e);
+      return;
+    }
+    if (isTerminated()) {
+      cycle.abandon();
+      return;
+    }
+    final EngineResourceReference<SingleComputationCycle> cycleReference = cycle.getCycleReference();
+    updateLatencyStatistics(cycleReference.get());
+    cycleCompleted(cycleReference.get());
+    if (_previousCycleReference != null) {
+      _previousCycleReference.release();
+    }
+    _previousCycleReference = cycleReference;
+  }
+
+  private boolean isCompilationReusable(final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition, final Instant valuationTime) {
+    return !_viewDefinitionDirty && !_compilationDirty && (compiledViewDefinition == getCachedCompiledViewDefinition()) && compiledViewDefinition.isValidFor(valuationTime)
+        && (compiledViewDefinition.getFunctionInitId() == getProcessContext().getFunctionCompilationService().getFunctionCompilationContext().getFunctionInitId());
+  }
+
+  /**
+   * A cycle that has been started for concurrent execution. It is executed, and its job results consumed, on the view
+   * processor's concurrent cycle executor.
+   */
+  private final class ConcurrentCycle implements Callable<Object> {
+
+    private final ViewCycleExecutionOptions _cycleExecutionOptions;
+    private final CompiledViewDefinitionWithGraphsImpl _compiledViewDefinition;
+    private final MarketDataSnapshot _marketDataSnapshot;
+    private final EngineResourceReference<SingleComputationCycle> _cycleReference;
+    private ExecutorService _executor;
+    private Future<Object> _future;
+    private boolean _executing;
+    private boolean _abandoned;
+
+    public ConcurrentCycle(final ViewCycleExecutionOptions cycleExecutionOptions, final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition,
+        final MarketDataSnapshot marketDataSnapshot, final EngineResourceReference<SingleComputationCycle> cycleReference) {
+      _cycleExecutionOptions = cycleExecutionOptions;
+      _compiledViewDefinition = compiledViewDefinition;
+      _marketDataSnapshot = marketDataSnapshot;
+      _cycleReference = cycleReference;
+    }
+
+    public ViewCycleExecutionOptions getCycleExecutionOptions() {
+      return _cycleExecutionOptions;
+    }
+
+    public CompiledViewDefinitionWithGraphsImpl getCompiledViewDefinition() {
+      return _compiledViewDefinition;
+    }
+
+    public EngineResourceReference<SingleComputationCycle> getCycleReference() {
+      return _cycleReference;
+    }
+
+    public void submit(final ExecutorService executor) {
+      _executor = executor;
+      _future = executor.submit(this);
+    }
+
+    public boolean isDone() {
+      return _future.isDone();
+    }
+
+    public void get() throws InterruptedException, ExecutionException {
+      _future.get();
+    }
+
+    /**
+     * Discards the cycle, releasing it now if it is not executing or once its execution has been interrupted.
+     */
+    public void abandon() {
+      synchronized (this) {
+        _abandoned = true;
+        if (!_executing) {
+          _cycleReference.release();
+        }
+      }
+      if (_future != null) {
+        _future.cancel(true);
+      }
+    }
+
+    @Override
+    public Object call() throws Exception {
+      synchronized (this) {
+        if (_abandoned) {
+          return null;
+        }
+        _executing = true;
+      }
+      try {
+        _cycleReference.get().execute(null, _marketDataSnapshot, _executor);
+      } finally {
+        synchronized (this) {
+          _executing = false;
+          if (_abandoned) {
+            _cycleReference.release();
+          }
+        }
+      }
+      return null;
+    }
+
+  }
+
+  /**
+   * Obtains a market data snapshot for a cycle, replacing the market data provider if the current one is not compatible.
+   * Failures are reported to the view process.
+   * 
+   * @param executionOptions the cycle execution options, not null
+   * @return the snapshot, not yet initialized, or null if none could be obtained
+   */
+  private MarketDataSnapshot takeMarketDataSnapshot(final ViewCycleExecutionOptions executionOptions) {
+    if (executionOptions.getMarketDataSpecification() == null) {
+      s_logger.error("No market data specification for cycle");
+      cycleExecutionFailed(executionOptions, new OpenGammaRuntimeException("No market data specification for cycle"));
+      return null;
+    }
+    try {
+      if (getMarketDataProvider() == null || !getMarketDataProvider().isCompatible(executionOptions.getMarketDataSpecification())) {
+        // A different market data provider is required. We support this because we can, but changing provider is not the
+        // most efficient operation.
+        if (getMarketDataProvider() != null) {
+          s_logger.info("Replacing market data provider between cycles");
+        }
+        replaceMarketDataProvider(executionOptions.getMarketDataSpecification());
+      }
+
+      // Obtain the snapshot in case it is needed, but don't explicitly initialise it until the data is required
+      return getMarketDataProvider().snapshot(executionOptions.getMarketDataSpecification());
+    } catch (Exception e) {
+      s_logger.error("Error with market data provider", e);
+      cycleExecutionFailed(executionOptions, new OpenGammaRuntimeException("Error with market data provider", e));
+      return null;
+    }
+  }
+
+  private Instant getCompilationValuationTime(final ViewCycleExecutionOptions executionOptions, final MarketDataSnapshot marketDataSnapshot) {
+    try {
+      if (executionOptions.getValuationTime() != null) {
+        return executionOptions.getValuationTime();
+      } else {
+        // Neither the cycle-specific options nor the defaults have overridden the valuation time so use the time
+        // associated with the market data snapshot. To avoid initialising the snapshot perhaps before the required
+        // inputs are known or even subscribed to, only ask for an indication at the moment.
+        final Instant compilationValuationTime = marketDataSnapshot.getSnapshotTimeIndication();
+        if (compilationValuationTime == null) {
+          throw new OpenGammaRuntimeException("Market data snapshot " + marketDataSnapshot + " produced a null indication of snapshot time");
+        }
+        return compilationValuationTime;
+      }
+    } catch (Exception e) {
+      s_logger.error("Error obtaining compilation valuation time", e);
+      cycleExecutionFailed(executionOptions, new OpenGammaRuntimeException("Error obtaining compilation valuation time", e));
+      return null;
+    }
+  }
+
+  private CompiledViewDefinitionWithGraphsImpl getCompiledViewDefinition(final ViewCycleExecutionOptions executionOptions, final Instant compilationValuationTime,
+      final VersionCorrection versionCorrection) {
+    try {
+      return getCompiledViewDefinition(compilationValuationTime, versionCorrection);
+    } catch (Exception e) {
+      String message = MessageFormat.format("Error obtaining compiled view definition {0} for time {1} at version-correction {2}",
+          getViewProcess().getDefinitionId(), compilationValuationTime, versionCorrection);
+      s_logger.error(message);
+      cycleExecutionFailed(executionOptions, new OpenGammaRuntimeException(message, e));
+      return null;
+    }
+  }
+
+  private void initMarketDataSnapshot(final ViewCycleExecutionOptions executionOptions, final MarketDataSnapshot marketDataSnapshot,
+      final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition) {
+    if (getExecutionOptions().getFlags().contains(ViewExecutionFlags.AWAIT_MARKET_DATA)) {
+      marketDataSnapshot.init(compiledViewDefinition.getMarketDataRequirements().keySet(), MARKET_DATA_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    } else {
+      marketDataSnapshot.init();
+    }
+    if (executionOptions.getValuationTime() == null) {
+      executionOptions.setValuationTime(marketDataSnapshot.getSnapshotTime());
+    }
+  }
+
+  private ViewCycleMetadata createCycleMetadata(final SingleComputationCycle cycle, final MarketDataSnapshot marketDataSnapshot,
+      final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition, final VersionCorrection versionCorrection, final ViewCycleExecutionOptions executionOptions) {
+    final HashMap<String, Collection<ComputationTargetSpecification>> configToComputationTargets = new HashMap<String, Collection<ComputationTargetSpecification>>();
+    final HashMap<String, Map<ValueSpecification, Set<ValueRequirement>>> configToTerminalOutputs = new HashMap<String, Map<ValueSpecification, Set<ValueRequirement>>>();
+    for (DependencyGraph graph : compiledViewDefinition.getAllDependencyGraphs()) {
+      configToComputationTargets.put(graph.getCalculationConfigurationName(), graph.getAllComputationTargets());
+      configToTerminalOutputs.put(graph.getCalculationConfigurationName(), graph.getTerminalOutputs());
+    }
+    return new DefaultViewCycleMetadata(
+        cycle.getUniqueId(),
+        marketDataSnapshot.getUniqueId(),
+        compiledViewDefinition.getViewDefinition().getUniqueId(),
+        versionCorrection,
+        executionOptions.getValuationTime(),
+        cycle.getAllCalculationConfigurationNames(),
+        configToComputationTargets,
+        configToTerminalOutputs);
+  }
+
   private void cycleCompleted(ViewCycle cycle) {
     try {
       getViewProcess().cycleCompleted(cycle);
@@ -441,6 +768,7 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
 
   private void executeViewCycle(ViewCycleType cycleType,
                                 EngineResourceReference<SingleComputationCycle> cycleReference,
+                                Collection<ValueRequirement> changedMarketData,
                                 MarketDataSnapshot marketDataSnapshot,
                                 ExecutorService calcJobResultExecutorService) throws Exception {
     SingleComputationCycle deltaCycle;
@@ -457,7 +785,7 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     }
 
     try {
-      cycleReference.get().execute(deltaCycle, marketDataSnapshot, calcJobResultExecutorService);
+      cycleReference.get().execute(deltaCycle, changedMarketData, marketDataSnapshot, calcJobResultExecutorService);
     } catch (InterruptedException e) {
       Thread.interrupted();
       // In reality this means that the job has been terminated, and it will end as soon as we return from this method.
@@ -470,7 +798,11 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
       throw e;
     }
 
-    long durationNanos = cycleReference.get().getDuration().toNanosLong();
+    updateLatencyStatistics(cycleReference.get());
+  }
+
+  private void updateLatencyStatistics(final SingleComputationCycle cycle) {
+    long durationNanos = cycle.getDuration().toNanosLong();
     _totalTimeNanos += durationNanos;
     _cycleCount += 1;
     s_logger.info("Last latency was {} ms, Average latency is {} ms", durationNanos / NANOS_PER_MILLISECOND, (_totalTimeNanos / _cycleCount) / NANOS_PER_MILLISECOND);
@@ -482,6 +814,7 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
       _previousCycleReference.release();
     }
     unsubscribeFromViewDefinition();
+    unsubscribeFromPortfolio();
     removeMarketDataProvider();
     invalidateCachedCompiledViewDefinition();
   }
@@ -516,10 +849,12 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
 
   /**
    * Indicates that changes have occurred which may affect the compilation, and the view definition should be recompiled at the earliest opportunity.
+   * If the view definition has not changed, the previous compilation is updated for any portfolio changes rather than compiled from scratch.
    */
   public void dirtyCompilation() {
     s_logger.info("Marking compilation as dirty for view process {}", getViewProcess());
     _compilationDirty = true;
+    triggerCycle();
   }
 
   public synchronized void triggerCycle() {
@@ -545,19 +880,23 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   //-------------------------------------------------------------------------
   private EngineResourceReference<SingleComputationCycle> createCycle(ViewCycleExecutionOptions executionOptions,
       CompiledViewDefinitionWithGraphsImpl compiledViewDefinition, VersionCorrection versionCorrection) {
-    // View definition was compiled based on compilation options, which might have only included an indicative
-    // valuation time. A further check ensures that the compiled view definition is still valid.
-    if (!compiledViewDefinition.isValidFor(executionOptions.getValuationTime())) {
-      throw new OpenGammaRuntimeException("Compiled view definition " + compiledViewDefinition + " not valid for execution options " + executionOptions);
-    }
-    UniqueId cycleId = getViewProcess().generateCycleId();
-
     ComputationResultListener streamingResultListener = new ComputationResultListener() {
       @Override
       public void resultAvailable(ViewComputationResultModel result) {
         cycleFragmentCompleted(result);
       }
     };
+    return createCycle(executionOptions, compiledViewDefinition, versionCorrection, streamingResultListener);
+  }
+
+  private EngineResourceReference<SingleComputationCycle> createCycle(ViewCycleExecutionOptions executionOptions,
+      CompiledViewDefinitionWithGraphsImpl compiledViewDefinition, VersionCorrection versionCorrection, ComputationResultListener streamingResultListener) {
+    // View definition was compiled based on compilation options, which might have only included an indicative
+    // valuation time. A further check ensures that the compiled view definition is still valid.
+    if (!compiledViewDefinition.isValidFor(executionOptions.getValuationTime())) {
+      throw new OpenGammaRuntimeException("Compiled view definition " + compiledViewDefinition + " not valid for execution options " + executionOptions);
+    }
+    UniqueId cycleId = getViewProcess().generateCycleId();
     SingleComputationCycle cycle = new SingleComputationCycle(cycleId, getViewProcess().getUniqueId(),
         streamingResultListener, getProcessContext(), compiledViewDefinition, executionOptions, versionCorrection);
     return getCycleManager().manage(cycle);
@@ -574,12 +913,16 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   private CompiledViewDefinitionWithGraphsImpl getCompiledViewDefinition(Instant valuationTime, VersionCorrection versionCorrection) {
     long functionInitId = getProcessContext().getFunctionCompilationService().getFunctionCompilationContext().getFunctionInitId();
     CompiledViewDefinitionWithGraphsImpl compiledViewDefinition;
+    // The previous compilation, if still for the same view definition, can be updated incrementally if only the portfolio has changed
+    final CompiledViewDefinitionWithGraphsImpl previousCompiledViewDefinition;
     updateViewDefinitionIfRequired();
     if (_compilationDirty) {
       _compilationDirty = false;
+      previousCompiledViewDefinition = getCachedCompiledViewDefinition();
       invalidateCachedCompiledViewDefinition();
       compiledViewDefinition = null;
     } else {
+      previousCompiledViewDefinition = null;
       compiledViewDefinition = getCachedCompiledViewDefinition();
     }
     if (compiledViewDefinition != null && compiledViewDefinition.isValidFor(valuationTime) && functionInitId == compiledViewDefinition.getFunctionInitId()) {
@@ -587,25 +930,62 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
       return compiledViewDefinition;
     }
 
-    try {
-      MarketDataAvailabilityProvider availabilityProvider = getMarketDataProvider().getAvailabilityProvider();
-      ViewCompilationServices compilationServices = getProcessContext().asCompilationServices(availabilityProvider);
-      _compilationTask = ViewDefinitionCompiler.compileTask(_viewDefinition, compilationServices, valuationTime, versionCorrection);
+    // With nothing held in memory (e.g. a newly started process) a previous compilation may have been persisted
+    final CompiledViewDefinitionCache persistentCache = getProcessContext().getCompiledViewDefinitionCache();
+    CompiledViewDefinitionCacheKey persistentCacheKey = null;
+    Portfolio portfolio = null;
+    if ((persistentCache != null) && (compiledViewDefinition == null) && (previousCompiledViewDefinition == null)) {
       try {
-        if (!isTerminated()) {
-          compiledViewDefinition = _compilationTask.get();
-        } else {
-          return null;
+        if (_viewDefinition.getPortfolioId() != null) {
+          portfolio = PortfolioCompiler.getPortfolio(_viewDefinition, getProcessContext().getComputationTargetResolver().getPositionSource(), versionCorrection);
+          // The key identifies securities by version so they must be resolved first
+          portfolio = PortfolioCompiler.resolvePortfolio(portfolio, getProcessContext().getFunctionCompilationService().getExecutorService(),
+              getProcessContext().getComputationTargetResolver().getSecuritySource(), versionCorrection);
         }
-      } finally {
-        _compilationTask = null;
+        persistentCacheKey = CompiledViewDefinitionCacheKey.of(OpenGammaFudgeContext.getInstance(), _viewDefinition, portfolio,
+            getProcessContext().getFunctionCompilationService().getInitializedFunctionRepository().getAllFunctions(), String.valueOf(_marketDataSpecification));
+        compiledViewDefinition = persistentCache.get(persistentCacheKey, valuationTime, _viewDefinition, portfolio,
+            getProcessContext().getFunctionCompilationService().compileFunctionRepository(valuationTime), functionInitId);
+      } catch (RuntimeException e) {
+        s_logger.warn("Couldn't query compiled view definition cache for {} - {}", getViewProcess().getDefinitionId(), e.getMessage());
+        s_logger.debug("Caught exception", e);
+        persistentCacheKey = null;
+        compiledViewDefinition = null;
+      }
+      if (compiledViewDefinition != null) {
+        s_logger.info("Using persisted compilation of view definition {}", getViewProcess().getDefinitionId());
+      }
+    } else {
+      compiledViewDefinition = null;
+    }
+
+    if (compiledViewDefinition == null) {
+      try {
+        MarketDataAvailabilityProvider availabilityProvider = getMarketDataProvider().getAvailabilityProvider();
+        ViewCompilationServices compilationServices = getProcessContext().asCompilationServices(availabilityProvider);
+        _compilationTask = ViewDefinitionCompiler.compileTask(_viewDefinition, compilationServices, valuationTime, versionCorrection, previousCompiledViewDefinition);
+        try {
+          if (!isTerminated()) {
+            compiledViewDefinition = _compilationTask.get();
+          } else {
+            return null;
+          }
+        } finally {
+          _compilationTask = null;
+        }
+      } catch (Exception e) {
+        String message = MessageFormat.format("Error compiling view definition {0} for time {1}", getViewProcess().getDefinitionId(), valuationTime);
+        viewDefinitionCompilationFailed(valuationTime, new OpenGammaRuntimeException(message, e));
+        throw new OpenGammaRuntimeException(message, e);
+      }
+      if (persistentCacheKey != null) {
+        persistCompiledViewDefinition(persistentCache, persistentCacheKey, compiledViewDefinition);
       }
-    } catch (Exception e) {
-      String message = MessageFormat.format("Error compiling view definition {0} for time {1}", getViewProcess().getDefinitionId(), valuationTime);
-      viewDefinitionCompilationFailed(valuationTime, new OpenGammaRuntimeException(message, e));
-      throw new OpenGammaRuntimeException(message, e);
     }
     setCachedCompiledViewDefinition(compiledViewDefinition);
+    if (_portfolioChangeListener != null) {
+      _portfolioChangeListener.setPortfolio(compiledViewDefinition.getPortfolio());
+    }
     // [PLAT-984]
     // Assume that valuation times are increasing in real-time towards the expiry of the view definition, so that we
     // can predict the time to expiry. If this assumption is wrong then the worst we do is trigger an unnecessary
@@ -629,6 +1009,22 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     return compiledViewDefinition;
   }
 
+  private void persistCompiledViewDefinition(final CompiledViewDefinitionCache persistentCache, final CompiledViewDefinitionCacheKey key,
+      final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition) {
+    // Writing the graphs can take a while for a large view; don't hold up the first cycle for it
+    getProcessContext().getFunctionCompilationService().getExecutorService().execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          persistentCache.put(key, compiledViewDefinition);
+        } catch (RuntimeException e) {
+          s_logger.warn("Couldn't store compiled view definition for {} - {}", key, e.getMessage());
+          s_logger.debug("Caught exception", e);
+        }
+      }
+    });
+  }
+
   /**
    * Gets the cached compiled view definition which may be re-used in subsequent computation cycles.
    * <p>
@@ -691,6 +1087,30 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     _viewDefinitionChangeListener = null;
   }
 
+  private void subscribeToPortfolio() {
+    if (_portfolioChangeListener != null) {
+      return;
+    }
+    if (!getExecutionOptions().getVersionCorrection().containsLatest()) {
+      // Locked to a specific version of the portfolio
+      return;
+    }
+    final PositionSource positionSource = getProcessContext().getComputationTargetResolver().getPositionSource();
+    if (positionSource == null) {
+      return;
+    }
+    _portfolioChangeListener = new PortfolioChangeListener(this);
+    positionSource.changeManager().addChangeListener(_portfolioChangeListener);
+  }
+
+  private void unsubscribeFromPortfolio() {
+    if (_portfolioChangeListener == null) {
+      return;
+    }
+    getProcessContext().getComputationTargetResolver().getPositionSource().changeManager().removeChangeListener(_portfolioChangeListener);
+    _portfolioChangeListener = null;
+  }
+
   //-------------------------------------------------------------------------
   private void replaceMarketDataProvider(MarketDataSpecification marketDataSpec) {
     removeMarketDataProvider();
@@ -713,6 +1133,9 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   }
 
   private void setMarketDataProvider(MarketDataSpecification marketDataSpec) {
+    // Changes from the previous provider say nothing about the values from the new one
+    invalidateChangedMarketData();
+    _marketDataSpecification = marketDataSpec;
     _marketDataProvider = getProcessContext().getMarketDataProviderResolver().resolve(marketDataSpec);
     if (_marketDataProvider == null) {
       s_logger.error("Couldn't resolve {}", marketDataSpec);
@@ -778,27 +1201,75 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   }
 
   //-------------------------------------------------------------------------
+  /**
+   * Returns the market data reported as changed since the previous call, and starts collecting changes for the next.
+   * 
+   * @param reliable whether the reported changes are a reliable indication of the market data that has changed
+   * @return the changed market data, or null if not known
+   */
+  private Set<ValueRequirement> takeChangedMarketData(final boolean reliable) {
+    synchronized (_changedMarketDataLock) {
+      final Set<ValueRequirement> changedMarketData = _changedMarketData;
+      _changedMarketData = new HashSet<ValueRequirement>();
+      return reliable ? changedMarketData : null;
+    }
+  }
+
+  /**
+   * Returns changes taken for a cycle that did not complete, so that they are included in the delta from the last cycle that did.
+   * 
+   * @param changedMarketData the changes taken by {@link #takeChangedMarketData}, null if not known
+   */
+  private void restoreChangedMarketData(final Set<ValueRequirement> changedMarketData) {
+    synchronized (_changedMarketDataLock) {
+      if (changedMarketData == null) {
+        _changedMarketData = null;
+      } else if (_changedMarketData != null) {
+        _changedMarketData.addAll(changedMarketData);
+      }
+    }
+  }
+
+  private void invalidateChangedMarketData() {
+    synchronized (_changedMarketDataLock) {
+      _changedMarketData = null;
+    }
+  }
+
+  private void addChangedMarketData(final Collection<ValueRequirement> requirements) {
+    synchronized (_changedMarketDataLock) {
+      if (_changedMarketData != null) {
+        _changedMarketData.addAll(requirements);
+      }
+    }
+  }
+
   @Override
   public void subscriptionSucceeded(ValueRequirement requirement) {
     // REVIEW jonathan 2011-01-07
     // Can't tell in general whether this subscription message was relating to a subscription that we made or one that
     // a concurrent user of the MarketDataProvider made.
     s_logger.debug("Subscription succeeded: {}", requirement);
+    addChangedMarketData(Collections.singleton(requirement));
     removePendingSubscription(requirement);
   }
 
   @Override
   public void subscriptionFailed(ValueRequirement requirement, String msg) {
     s_logger.debug("Market data subscription to {} failed. This market data may be missing from computation cycles.", requirement);
+    addChangedMarketData(Collections.singleton(requirement));
     removePendingSubscription(requirement);
   }
 
   @Override
   public void subscriptionStopped(ValueRequirement requirement) {
+    addChangedMarketData(Collections.singleton(requirement));
   }
 
   @Override
   public void valuesChanged(Collection<ValueRequirement> values) {
+    // Delta cycles only need to consider the market data that has changed
+    addChangedMarketData(values);
     if (!getExecutionOptions().getFlags().contains(ViewExecutionFlags.TRIGGER_CYCLE_ON_MARKET_DATA_CHANGED)) {
       return;
     }
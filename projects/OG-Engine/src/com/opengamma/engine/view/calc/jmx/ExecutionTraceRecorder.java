@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc.jmx;
+
+import java.util.List;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.engine.view.calc.ExecutionTrace;
+import com.opengamma.id.UniqueId;
+
+/**
+ * JMX exposure of an execution trace recorder. Traces are exported in the Chrome trace event format; the string returned
+ * can be saved to a file and loaded into {@code chrome://tracing}.
+ */
+public class ExecutionTraceRecorder implements ExecutionTraceRecorderMBean {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(ExecutionTraceRecorder.class);
+
+  private final com.opengamma.engine.view.calc.ExecutionTraceRecorder _recorder;
+
+  protected ExecutionTraceRecorder(final com.opengamma.engine.view.calc.ExecutionTraceRecorder recorder) {
+    _recorder = recorder;
+  }
+
+  protected com.opengamma.engine.view.calc.ExecutionTraceRecorder getRecorder() {
+    return _recorder;
+  }
+
+  protected void registerMBean(final MBeanServer server) throws JMException {
+    final ObjectName name = new ObjectName("com.opengamma:type=ExecutionTraceRecorder,name=" + getRecorder().toString());
+    try {
+      server.registerMBean(this, name);
+    } catch (InstanceAlreadyExistsException e) {
+      s_logger.warn("JMX MBean {} already exists - replacing", name);
+      server.unregisterMBean(name);
+      server.registerMBean(this, name);
+    }
+  }
+
+  public static void registerMBeans(final com.opengamma.engine.view.calc.ExecutionTraceRecorder recorder, final MBeanServer server) throws JMException {
+    new ExecutionTraceRecorder(recorder).registerMBean(server);
+  }
+
+  @Override
+  public void setSampleInterval(final int sampleInterval) {
+    getRecorder().setSampleInterval(sampleInterval);
+  }
+
+  @Override
+  public int getSampleInterval() {
+    return getRecorder().getSampleInterval();
+  }
+
+  @Override
+  public void setCapacity(final int capacity) {
+    getRecorder().setCapacity(capacity);
+  }
+
+  @Override
+  public int getCapacity() {
+    return getRecorder().getCapacity();
+  }
+
+  @Override
+  public void setRetainedTraces(final int retainedTraces) {
+    getRecorder().setRetainedTraces(retainedTraces);
+  }
+
+  @Override
+  public int getRetainedTraces() {
+    return getRecorder().getRetainedTraces();
+  }
+
+  @Override
+  public String traceNextCycle() {
+    getRecorder().traceNextCycle();
+    return "Next cycle will be traced";
+  }
+
+  @Override
+  public String[] getCompletedCycleIds() {
+    final List<ExecutionTrace> traces = getRecorder().getCompletedTraces();
+    final String[] cycleIds = new String[traces.size()];
+    for (int i = 0; i < cycleIds.length; i++) {
+      cycleIds[i] = traces.get(i).getCycleId().toString();
+    }
+    return cycleIds;
+  }
+
+  @Override
+  public String getLatestChromeTrace() {
+    final ExecutionTrace trace = getRecorder().getLatestCompletedTrace();
+    return (trace != null) ? trace.toChromeTrace() : null;
+  }
+
+  @Override
+  public String getChromeTrace(final String cycleId) {
+    final ExecutionTrace trace = getRecorder().getCompletedTrace(UniqueId.parse(cycleId));
+    return (trace != null) ? trace.toChromeTrace() : null;
+  }
+
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc.jmx;
+
+/**
+ * JMX exposure of the sampled view cycle execution traces.
+ */
+public interface ExecutionTraceRecorderMBean {
+
+  void setSampleInterval(int sampleInterval);
+
+  int getSampleInterval();
+
+  void setCapacity(int capacity);
+
+  int getCapacity();
+
+  void setRetainedTraces(int retainedTraces);
+
+  int getRetainedTraces();
+
+  String traceNextCycle();
+
+  String[] getCompletedCycleIds();
+
+  String getLatestChromeTrace();
+
+  String getChromeTrace(String cycleId);
+
+}
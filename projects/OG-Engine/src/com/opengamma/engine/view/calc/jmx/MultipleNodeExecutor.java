@@ -94,4 +94,34 @@ public final class MultipleNodeExecutor implements MultipleNodeExecutorMBean {
     getUnderlying().setMinimumJobItems(minimumJobItems);
   }
 
+  @Override
+  public void setCriticalPathScheduling(boolean criticalPathScheduling) {
+    getUnderlying().setCriticalPathScheduling(criticalPathScheduling);
+  }
+
+  @Override
+  public boolean isCriticalPathScheduling() {
+    return getUnderlying().isCriticalPathScheduling();
+  }
+
+  @Override
+  public void setNodeCount(int nodeCount) {
+    getUnderlying().setNodeCount(nodeCount);
+  }
+
+  @Override
+  public int getNodeCount() {
+    return getUnderlying().getNodeCount();
+  }
+
+  @Override
+  public void setJobsPerNode(double jobsPerNode) {
+    getUnderlying().setJobsPerNode(jobsPerNode);
+  }
+
+  @Override
+  public double getJobsPerNode() {
+    return getUnderlying().getJobsPerNode();
+  }
+
 }
@@ -21,5 +21,11 @@ public interface MultipleNodeExecutorMBean {
   long getMaximumJobCost();
   void setMaximumConcurrency(int maximumConcurrency);
   int getMaximumConcurrency();
+  void setCriticalPathScheduling(boolean criticalPathScheduling);
+  boolean isCriticalPathScheduling();
+  void setNodeCount(int nodeCount);
+  int getNodeCount();
+  void setJobsPerNode(double jobsPerNode);
+  double getJobsPerNode();
 
 }
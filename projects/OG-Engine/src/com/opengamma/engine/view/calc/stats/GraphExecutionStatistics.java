@@ -28,6 +28,8 @@ public class GraphExecutionStatistics {
   private final AtomicLong _processedJobSize = new AtomicLong();
   private final AtomicLong _processedJobCycleCost = new AtomicLong();
   private final AtomicLong _processedJobDataCost = new AtomicLong();
+  private final AtomicLong _predictedGraphs = new AtomicLong();
+  private final AtomicLong _predictedTime = new AtomicLong();
   private volatile Instant _lastProcessedTime;
   private volatile Instant _lastExecutedTime;
 
@@ -80,6 +82,14 @@ public class GraphExecutionStatistics {
     return _processedJobDataCost.get();
   }
 
+  public long getPredictedGraphs() {
+    return _predictedGraphs.get();
+  }
+
+  public long getPredictedTime() {
+    return _predictedTime.get();
+  }
+
   public Instant getLastProcessedTime() {
     return _lastProcessedTime;
   }
@@ -115,6 +125,31 @@ public class GraphExecutionStatistics {
     }
   }
 
+  public double getAveragePredictedTime() {
+    final long predictions = getPredictedGraphs();
+    if (predictions > 0) {
+      return (double) getPredictedTime() / (double) predictions / 1e9;
+    } else {
+      return 0;
+    }
+  }
+
+  /**
+   * Returns the ratio of the mean actual execution time to the mean predicted execution time. A value above one means graphs
+   * are taking longer than the cost model expects.
+   * 
+   * @return the ratio, or {@code NaN} if there are no samples
+   */
+  public double getActualToPredictedRatio() {
+    final double predicted = getAveragePredictedTime();
+    final double actual = getAverageActualTime();
+    if ((predicted > 0) && (actual > 0)) {
+      return actual / predicted;
+    } else {
+      return Double.NaN;
+    }
+  }
+
   public double getAverageJobSize() {
     final long executions = getProcessedGraphs();
     if (executions > 0) {
@@ -165,6 +200,11 @@ public class GraphExecutionStatistics {
     _lastProcessedTime = Instant.now();
   }
 
+  public void recordPrediction(final long predictedDuration) {
+    _predictedGraphs.incrementAndGet();
+    _predictedTime.addAndGet(predictedDuration);
+  }
+
   public void reset() {
     _processedGraphs.set(0);
     _executedGraphs.set(0);
@@ -175,6 +215,8 @@ public class GraphExecutionStatistics {
     _processedJobSize.set(0);
     _processedJobCycleCost.set(0);
     _processedJobDataCost.set(0);
+    _predictedGraphs.set(0);
+    _predictedTime.set(0);
   }
 
   private static void decay(final AtomicLong value, final double factor) {
@@ -191,6 +233,8 @@ public class GraphExecutionStatistics {
     decay(_processedJobSize, factor);
     decay(_processedJobCycleCost, factor);
     decay(_processedJobDataCost, factor);
+    decay(_predictedGraphs, factor);
+    decay(_predictedTime, factor);
   }
 
   public GraphExecutionStatistics snapshot() {
@@ -209,6 +253,8 @@ public class GraphExecutionStatistics {
     _processedJobSize.set(other.getProcessedJobSize());
     _processedJobCycleCost.set(other.getProcessedJobCycleCost());
     _processedJobDataCost.set(other.getProcessedJobDataCost());
+    _predictedGraphs.set(other.getPredictedGraphs());
+    _predictedTime.set(other.getPredictedTime());
   }
 
   public void delta(final GraphExecutionStatistics future) {
@@ -221,5 +267,7 @@ public class GraphExecutionStatistics {
     _processedJobSize.set(future.getProcessedJobSize() - getProcessedJobSize());
     _processedJobCycleCost.set(future.getProcessedJobCycleCost() - getProcessedJobCycleCost());
     _processedJobDataCost.set(future.getProcessedJobDataCost() - getProcessedJobDataCost());
+    _predictedGraphs.set(future.getPredictedGraphs() - getPredictedGraphs());
+    _predictedTime.set(future.getPredictedTime() - getPredictedTime());
   }
 }
@@ -35,4 +35,13 @@ public interface GraphExecutorStatisticsGatherer {
    */
   void graphExecuted(String calcConfig, int nodeCount, long executionTime, long duration);
 
+  /**
+   * Reports the predicted duration of a graph from its execution plan. This is the makespan estimated by the executor's cost model
+   * and can be compared against the duration subsequently reported to {@link #graphExecuted}.
+   * 
+   * @param calcConfig Calculation configuration name.
+   * @param predictedDuration Predicted time from starting the graph to completion, in nanoseconds.
+   */
+  void graphPredicted(String calcConfig, long predictedDuration);
+
 }
@@ -44,6 +44,12 @@ public class CalculationJob implements IdentifierEncodedValueSpecifications {
    */
   private boolean _cancelled;
 
+  /**
+   * The jobs whose outputs this job consumes and which have already been dispatched, allowing the dispatcher to favour
+   * the node that ran them. Unlike the required jobs, the node does not wait for these. It is not serialized.
+   */
+  private long[] _predecessors;
+
   public CalculationJob(CalculationJobSpecification specification, long functionInitializationIdentifier, long[] requiredJobIds, List<CalculationJobItem> jobItems,
       final CacheSelectHint cacheSelect) {
     ArgumentChecker.notNull(specification, "specification");
@@ -90,6 +96,14 @@ public class CalculationJob implements IdentifierEncodedValueSpecifications {
     _tail.add(tail);
   }
 
+  public long[] getPredecessorJobIds() {
+    return _predecessors;
+  }
+
+  public void setPredecessorJobIds(final long[] predecessorJobIds) {
+    _predecessors = predecessorJobIds;
+  }
+
   public boolean isCancelled() {
     return _cancelled;
   }
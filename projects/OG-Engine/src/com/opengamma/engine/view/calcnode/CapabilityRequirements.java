@@ -49,4 +49,26 @@ public class CapabilityRequirements {
     return true;
   }
 
+  /**
+   * Requirements are equal if they require the same capabilities. Jobs with equal requirements are held in the same
+   * pending queue by the {@link JobDispatcher}.
+   * 
+   * @return the hash code
+   */
+  @Override
+  public int hashCode() {
+    return _requiredCapabilities.hashCode();
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof CapabilityRequirements)) {
+      return false;
+    }
+    return _requiredCapabilities.equals(((CapabilityRequirements) o)._requiredCapabilities);
+  }
+
 }
@@ -8,12 +8,15 @@ package com.opengamma.engine.view.calcnode;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.engine.view.calc.ExecutionTrace;
+import com.opengamma.engine.view.calc.ExecutionTraceRecorder;
 import com.opengamma.util.async.Cancelable;
 
 /**
@@ -87,6 +90,10 @@ import com.opengamma.util.async.Cancelable;
   private final CapabilityRequirements _capabilityRequirements;
   private final AtomicReference<DispatchableJobTimeout> _timeout = new AtomicReference<DispatchableJobTimeout>();
   private final CancelHandle _cancelHandle;
+  private final int _jobCount;
+  private final AtomicInteger _outstandingJobs = new AtomicInteger();
+  private volatile JobInvoker _invoker;
+  private volatile long _launchTime;
 
   /**
    * Creates a new dispatchable job for submission to the invokers.
@@ -100,6 +107,7 @@ import com.opengamma.util.async.Cancelable;
     _jobCreationTime = System.nanoTime();
     _capabilityRequirements = dispatcher.getCapabilityRequirementsProvider().getCapabilityRequirements(job);
     _cancelHandle = new CancelHandle(this);
+    _jobCount = countJobs(job);
   }
 
   /**
@@ -115,6 +123,55 @@ import com.opengamma.util.async.Cancelable;
     _capabilityRequirements = _dispatcher.getCapabilityRequirementsProvider().getCapabilityRequirements(job);
     _cancelHandle = creater.getCancelHandle();
     _cancelHandle.addCallback(this);
+    _jobCount = countJobs(job);
+  }
+
+  private static int countJobs(final CalculationJob job) {
+    int count = 1;
+    if (job.getTail() != null) {
+      for (CalculationJob tail : job.getTail()) {
+        count += countJobs(tail);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Tells the dispatcher that the invoker is no longer running any of this job's outstanding parts.
+   */
+  private void releaseInvoker() {
+    final JobInvoker invoker = _invoker;
+    final int outstanding = _outstandingJobs.getAndSet(0);
+    if ((invoker != null) && (outstanding > 0)) {
+      getDispatcher().jobsReleased(invoker, outstanding);
+    }
+  }
+
+  /**
+   * Tells the dispatcher that the invoker has finished one of this job's outstanding parts.
+   */
+  private void releaseJob() {
+    int outstanding;
+    do {
+      outstanding = _outstandingJobs.get();
+      if (outstanding <= 0) {
+        return;
+      }
+    } while (!_outstandingJobs.compareAndSet(outstanding, outstanding - 1));
+    getDispatcher().jobsReleased(_invoker, 1);
+  }
+
+  /**
+   * Returns the trace of the view cycle this job is part of.
+   * 
+   * @return the trace, or null if the cycle is not being traced
+   */
+  private ExecutionTrace getTrace() {
+    final ExecutionTraceRecorder recorder = getDispatcher().getTraceRecorder();
+    if (recorder == null) {
+      return null;
+    }
+    return recorder.getActiveTrace(getJob().getSpecification().getViewCycleId());
   }
 
   protected long getDurationNanos() {
@@ -146,6 +203,7 @@ import com.opengamma.util.async.Cancelable;
       extendTimeout(getDispatcher().getMaxJobExecutionTime(), true);
       return;
     }
+    releaseJob();
     if (isLastResult()) {
       // This is the last one to complete. Note that if the last few jobs complete concurrently, both may execute this code.
       _completed.set(true);
@@ -155,7 +213,16 @@ import com.opengamma.util.async.Cancelable;
       extendTimeout(getDispatcher().getMaxJobExecutionTime(), true);
     }
     s_logger.info("Job {} completed on node {}", this, result.getComputeNodeId());
-    resultReceiver.resultReceived(result);
+    final ExecutionTrace trace = getTrace();
+    if (trace != null) {
+      final long resultTime = System.nanoTime();
+      final String detail = result.getSpecification().getJobId() + " on " + result.getComputeNodeId();
+      trace.record(ExecutionTrace.DISPATCH, detail, _launchTime, resultTime);
+      resultReceiver.resultReceived(result);
+      trace.record(ExecutionTrace.RESULT_RETURN, detail, resultTime, System.nanoTime());
+    } else {
+      resultReceiver.resultReceived(result);
+    }
     final long durationNanos = getDurationNanos();
     s_logger.debug("Reported time = {}ms, non-executing job time = {}ms", (double) result.getDuration() / 1000000d, ((double) durationNanos - (double) result.getDuration()) / 1000000d);
     if (getDispatcher().getStatisticsGatherer() != null) {
@@ -171,6 +238,7 @@ import com.opengamma.util.async.Cancelable;
     s_logger.warn("Job {} failed, {}", this, (exception != null) ? exception.getMessage() : "no exception passed");
     if (_completed.getAndSet(true) == false) {
       cancelTimeout(null);
+      releaseInvoker();
       DispatchableJob retry = prepareRetryJob(jobInvoker);
       if (retry != null) {
         if (retry == this) {
@@ -211,6 +279,7 @@ import com.opengamma.util.async.Cancelable;
   public void abort(Exception exception, final String alternativeError) {
     if (_completed.getAndSet(true) == false) {
       cancelTimeout(DispatchableJobTimeout.FINISHED);
+      releaseInvoker();
       if (exception == null) {
         s_logger.error("Aborted job {} with {}", this, alternativeError);
         exception = new OpenGammaRuntimeException(alternativeError);
@@ -265,7 +334,7 @@ import com.opengamma.util.async.Cancelable;
     }
   }
 
-  private CapabilityRequirements getRequirements() {
+  /* package */CapabilityRequirements getRequirements() {
     return _capabilityRequirements;
   }
 
@@ -298,6 +367,7 @@ import com.opengamma.util.async.Cancelable;
       }
     }
     final DispatchableJobTimeout timeout = cancelTimeout(DispatchableJobTimeout.CANCELLED);
+    releaseInvoker();
     if (timeout != null) {
       final JobInvoker invoker = timeout.getInvoker();
       if (invoker != null) {
@@ -311,8 +381,31 @@ import com.opengamma.util.async.Cancelable;
     return _completed.get();
   }
 
-  public boolean runOn(final JobInvoker jobInvoker) {
+  /**
+   * Sends the job to an invoker. The job and its tails count towards the invoker's load until they complete or fail.
+   * 
+   * @param jobInvoker the invoker to send the job to
+   * @return true if the invoker accepted the job, false otherwise
+   */
+  protected boolean launch(final JobInvoker jobInvoker) {
+    // Count the jobs as outstanding before invoking as results may arrive before the invoker returns
+    _invoker = jobInvoker;
+    _launchTime = System.nanoTime();
+    _outstandingJobs.set(_jobCount);
+    getDispatcher().jobsLaunched(jobInvoker, _jobCount);
     if (!jobInvoker.invoke(getJob(), this)) {
+      releaseInvoker();
+      return false;
+    }
+    final ExecutionTrace trace = getTrace();
+    if (trace != null) {
+      trace.record(ExecutionTrace.QUEUE_WAIT, getJob().getSpecification().getJobId() + " to " + jobInvoker.getInvokerId(), getJobCreationTime(), _launchTime);
+    }
+    return true;
+  }
+
+  public boolean runOn(final JobInvoker jobInvoker) {
+    if (!launch(jobInvoker)) {
       return false;
     }
     DispatchableJobTimeout timeout = new DispatchableJobTimeout(this, jobInvoker);
@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.ObjectUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.function.CacheableFunctionInvoker;
+import com.opengamma.engine.function.FunctionParameters;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Holds the results of recent invocations of {@link CacheableFunctionInvoker} instances so that a calculation node can
+ * reuse them when a function is invoked again with the same inputs, typically by a later cycle. A single instance may be
+ * shared by all of the nodes in a process.
+ * <p>
+ * The cache is bounded, discarding the least recently used results when full. Hit and miss counts are kept for each
+ * function so that the benefit of declaring a function cacheable can be monitored.
+ */
+public class FunctionResultCache {
+
+  /**
+   * The default maximum number of invocation results held.
+   */
+  public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+  /**
+   * Identifies an invocation. Two invocations are the same if they are of the same invoker on the same target with the
+   * same parameters, execution context key, desired outputs and input values.
+   */
+  /* package */static final class Key {
+
+    private final CacheableFunctionInvoker _invoker;
+    private final String _functionId;
+    private final FunctionParameters _parameters;
+    private final ComputationTargetSpecification _target;
+    private final Object _executionContextKey;
+    private final Set<ValueSpecification> _outputs;
+    private final Set<ComputedValue> _inputs;
+    private final Set<ValueSpecification> _missingInputs;
+    private final int _hashCode;
+
+    public Key(final CacheableFunctionInvoker invoker, final String functionId, final FunctionParameters parameters, final ComputationTargetSpecification target,
+        final Object executionContextKey, final Set<ValueSpecification> outputs, final Set<ComputedValue> inputs, final Set<ValueSpecification> missingInputs) {
+      _invoker = invoker;
+      _functionId = functionId;
+      _parameters = parameters;
+      _target = target;
+      _executionContextKey = executionContextKey;
+      _outputs = outputs;
+      _inputs = inputs;
+      _missingInputs = missingInputs;
+      // The input values are the costly part of the comparison, so their combined hash is only calculated once
+      int hc = System.identityHashCode(invoker);
+      hc += (hc << 4) + ObjectUtils.hashCode(parameters);
+      hc += (hc << 4) + target.hashCode();
+      hc += (hc << 4) + ObjectUtils.hashCode(executionContextKey);
+      hc += (hc << 4) + outputs.hashCode();
+      hc += (hc << 4) + inputs.hashCode();
+      hc += (hc << 4) + missingInputs.hashCode();
+      _hashCode = hc;
+    }
+
+    public String getFunctionId() {
+      return _functionId;
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return (_hashCode == other._hashCode) && (_invoker == other._invoker) && ObjectUtils.equals(_parameters, other._parameters) && _target.equals(other._target)
+          && ObjectUtils.equals(_executionContextKey, other._executionContextKey) && _outputs.equals(other._outputs) && _missingInputs.equals(other._missingInputs)
+          && _inputs.equals(other._inputs);
+    }
+
+  }
+
+  /**
+   * Hit and miss counts for a function.
+   */
+  public static final class Statistics {
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+
+    public long getHits() {
+      return _hits.get();
+    }
+
+    public long getMisses() {
+      return _misses.get();
+    }
+
+    /**
+     * Returns the proportion of lookups that found a result.
+     *
+     * @return the hit rate between 0 and 1, or NaN if there have been no lookups
+     */
+    public double getHitRate() {
+      final long hits = getHits();
+      final long lookups = hits + getMisses();
+      return (lookups > 0) ? (double) hits / (double) lookups : Double.NaN;
+    }
+
+  }
+
+  private final Cache<Key, Collection<ComputedValue>> _results;
+  private final ConcurrentMap<String, Statistics> _statistics = new ConcurrentHashMap<String, Statistics>();
+
+  public FunctionResultCache() {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  public FunctionResultCache(final int maximumSize) {
+    ArgumentChecker.notNegativeOrZero(maximumSize, "maximumSize");
+    _results = CacheBuilder.newBuilder().maximumSize(maximumSize).<Key, Collection<ComputedValue>>build();
+  }
+
+  private Statistics getOrCreateStatistics(final String functionId) {
+    Statistics statistics = _statistics.get(functionId);
+    if (statistics == null) {
+      statistics = new Statistics();
+      final Statistics existing = _statistics.putIfAbsent(functionId, statistics);
+      if (existing != null) {
+        return existing;
+      }
+    }
+    return statistics;
+  }
+
+  /**
+   * Returns the results of an earlier invocation.
+   *
+   * @param key the invocation, not null
+   * @return the results, or null if there are none held
+   */
+  /* package */Collection<ComputedValue> get(final Key key) {
+    final Collection<ComputedValue> results = _results.getIfPresent(key);
+    final Statistics statistics = getOrCreateStatistics(key.getFunctionId());
+    if (results != null) {
+      statistics._hits.incrementAndGet();
+    } else {
+      statistics._misses.incrementAndGet();
+    }
+    return results;
+  }
+
+  /**
+   * Stores the results of an invocation.
+   *
+   * @param key the invocation, not null
+   * @param results the results, not null
+   */
+  /* package */void put(final Key key, final Collection<ComputedValue> results) {
+    _results.put(key, results);
+  }
+
+  /**
+   * Discards all of the held results. The statistics are kept.
+   */
+  public void clear() {
+    _results.invalidateAll();
+  }
+
+  /**
+   * Returns the number of invocation results held.
+   *
+   * @return the number of results
+   */
+  public long getSize() {
+    return _results.size();
+  }
+
+  /**
+   * Returns the hit and miss counts for a function.
+   *
+   * @param functionId the function identifier, not null
+   * @return the statistics, or null if the cache has not been queried for the function
+   */
+  public Statistics getStatistics(final String functionId) {
+    return _statistics.get(functionId);
+  }
+
+  /**
+   * Returns the hit and miss counts for each function that the cache has been queried for.
+   *
+   * @return the statistics keyed by function identifier, not null
+   */
+  public Map<String, Statistics> getStatistics() {
+    return Collections.unmodifiableMap(new HashMap<String, Statistics>(_statistics));
+  }
+
+}
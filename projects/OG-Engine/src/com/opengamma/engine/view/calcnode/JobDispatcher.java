@@ -5,21 +5,29 @@
  */
 package com.opengamma.engine.view.calcnode;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.opengamma.engine.function.blacklist.DummyFunctionBlacklistMaintainer;
 import com.opengamma.engine.function.blacklist.FunctionBlacklistMaintainer;
+import com.opengamma.engine.view.calc.ExecutionTraceRecorder;
 import com.opengamma.engine.view.calcnode.stats.CalculationNodeStatisticsGatherer;
 import com.opengamma.engine.view.calcnode.stats.DiscardingNodeStatisticsGatherer;
 import com.opengamma.util.ArgumentChecker;
@@ -27,6 +35,11 @@ import com.opengamma.util.async.Cancelable;
 
 /**
  * Manages a set of JobInvokers and dispatches jobs to them for execution.
+ * <p>
+ * Jobs waiting for an invoker are queued by their capability requirements. When choosing an invoker for a job, each
+ * invoker that can run it is scored by the number of the job's input producing jobs it was sent (as those values are
+ * likely to still be in its private or near cache) less its current load relative to the number of nodes it reports.
+ * Invokers with equal scores are tried in round-robin order.
  */
 public class JobDispatcher implements JobInvokerRegister {
 
@@ -35,10 +48,38 @@ public class JobDispatcher implements JobInvokerRegister {
   /* package */static final int DEFAULT_MAX_JOB_ATTEMPTS = 2;
   /* package */static final long DEFAULT_MAX_JOB_EXECUTION_QUERY_TIMEOUT = 5000;
   /* package */static final String DEFAULT_JOB_FAILURE_NODE_ID = "NOT EXECUTED";
+  /* package */static final int DEFAULT_AFFINITY_CACHE_SIZE = 16384;
+  /* package */static final double DEFAULT_AFFINITY_WEIGHT = 1.0;
 
-  private final Queue<DispatchableJob> _pending = new LinkedList<DispatchableJob>();
+  private static final class ScoredInvoker implements Comparable<ScoredInvoker> {
+
+    private final JobInvoker _invoker;
+    private final double _score;
+
+    public ScoredInvoker(final JobInvoker invoker, final double score) {
+      _invoker = invoker;
+      _score = score;
+    }
+
+    public JobInvoker getInvoker() {
+      return _invoker;
+    }
+
+    @Override
+    public int compareTo(final ScoredInvoker o) {
+      // Highest score first
+      return Double.compare(o._score, _score);
+    }
+
+  }
+
+  /**
+   * Jobs waiting for an invoker, grouped by their capability requirements. Guarded by the monitor.
+   */
+  private final Map<CapabilityRequirements, Queue<DispatchableJob>> _pending = new HashMap<CapabilityRequirements, Queue<DispatchableJob>>();
   private final Queue<JobInvoker> _invokers = new ConcurrentLinkedQueue<JobInvoker>();
   private final Map<JobInvoker, Collection<Capability>> _capabilityCache = new ConcurrentHashMap<JobInvoker, Collection<Capability>>();
+  private final ConcurrentMap<JobInvoker, AtomicInteger> _outstandingJobs = new ConcurrentHashMap<JobInvoker, AtomicInteger>();
 
   /**
    * Maximum number of times a job will be submitted in its entirety to remote nodes before it gets partitioned to isolate an individual failure.
@@ -57,6 +98,16 @@ public class JobDispatcher implements JobInvokerRegister {
   private ScheduledThreadPoolExecutor _jobTimeoutExecutor;
   private CalculationNodeStatisticsGatherer _statisticsGatherer = new DiscardingNodeStatisticsGatherer();
   private FunctionBlacklistMaintainer _blacklistUpdate = new DummyFunctionBlacklistMaintainer();
+  private volatile ExecutionTraceRecorder _traceRecorder;
+  /**
+   * The invokers that recently dispatched jobs were sent to, keyed by job identifier.
+   */
+  private volatile Cache<Long, JobInvoker> _jobInvokers = createJobInvokerCache(DEFAULT_AFFINITY_CACHE_SIZE);
+  /**
+   * The score given to an invoker that was sent all of a job's input producing jobs, relative to the penalty of one
+   * outstanding job per node.
+   */
+  private double _affinityWeight = DEFAULT_AFFINITY_WEIGHT;
 
   public JobDispatcher() {
   }
@@ -132,6 +183,37 @@ public class JobDispatcher implements JobInvokerRegister {
     return _maxJobExecutionTimeQuery;
   }
 
+  private static Cache<Long, JobInvoker> createJobInvokerCache(final int size) {
+    return CacheBuilder.newBuilder().maximumSize(size).<Long, JobInvoker>build();
+  }
+
+  /**
+   * Sets the number of dispatched jobs to remember the invoker of, so that jobs consuming their outputs can be
+   * sent to the same invoker. This should be at least the number of jobs that can be outstanding at any one time.
+   * 
+   * @param affinityCacheSize the number of jobs to remember
+   */
+  public void setAffinityCacheSize(final int affinityCacheSize) {
+    ArgumentChecker.notNegative(affinityCacheSize, "affinityCacheSize");
+    _jobInvokers = createJobInvokerCache(affinityCacheSize);
+  }
+
+  /**
+   * Sets the preference for sending a job to the invoker that ran the jobs producing its inputs. A weight of zero
+   * schedules on load alone. A weight of 1 prefers an invoker that ran all of the input producing jobs unless it
+   * has at least one more outstanding job per node than the alternative.
+   * 
+   * @param affinityWeight the affinity weight, not negative
+   */
+  public void setAffinityWeight(final double affinityWeight) {
+    ArgumentChecker.notNegative(affinityWeight, "affinityWeight");
+    _affinityWeight = affinityWeight;
+  }
+
+  public double getAffinityWeight() {
+    return _affinityWeight;
+  }
+
   public void setStatisticsGatherer(final CalculationNodeStatisticsGatherer statisticsGatherer) {
     _statisticsGatherer = statisticsGatherer;
   }
@@ -140,6 +222,20 @@ public class JobDispatcher implements JobInvokerRegister {
     return _statisticsGatherer;
   }
 
+  /**
+   * Sets the recorder for tracing the execution of sampled view cycles. The dispatcher records the time each job of a
+   * traced cycle spends queued, running on its invoker and returning its result.
+   * 
+   * @param traceRecorder the recorder, or null to not trace
+   */
+  public void setTraceRecorder(final ExecutionTraceRecorder traceRecorder) {
+    _traceRecorder = traceRecorder;
+  }
+
+  public ExecutionTraceRecorder getTraceRecorder() {
+    return _traceRecorder;
+  }
+
   public void setCapabilityRequirementsProvider(final CapabilityRequirementsProvider capabilityRequirementsProvider) {
     ArgumentChecker.notNull(capabilityRequirementsProvider, "capabilityRequirementsProvider");
     _capabilityRequirementsProvider = capabilityRequirementsProvider;
@@ -149,7 +245,7 @@ public class JobDispatcher implements JobInvokerRegister {
     return _capabilityRequirementsProvider;
   }
 
-  protected Queue<DispatchableJob> getPending() {
+  protected Map<CapabilityRequirements, Queue<DispatchableJob>> getPending() {
     return _pending;
   }
 
@@ -161,6 +257,97 @@ public class JobDispatcher implements JobInvokerRegister {
     return _capabilityCache;
   }
 
+  /**
+   * Returns the number of jobs waiting for an invoker.
+   * 
+   * @return the number of pending jobs
+   */
+  public synchronized int getPendingJobCount() {
+    int count = 0;
+    for (Queue<DispatchableJob> pending : getPending().values()) {
+      count += pending.size();
+    }
+    return count;
+  }
+
+  /**
+   * Returns the number of invokers available to accept jobs.
+   * 
+   * @return the number of invokers
+   */
+  public int getInvokerCount() {
+    return getInvokers().size();
+  }
+
+  /**
+   * Returns the number of jobs, including tails, sent to invokers that have not yet completed or failed.
+   * 
+   * @return the number of outstanding jobs
+   */
+  public int getOutstandingJobCount() {
+    int count = 0;
+    for (AtomicInteger outstanding : _outstandingJobs.values()) {
+      count += outstanding.get();
+    }
+    return count;
+  }
+
+  private AtomicInteger getOutstandingJobs(final JobInvoker invoker) {
+    AtomicInteger outstanding = _outstandingJobs.get(invoker);
+    if (outstanding == null) {
+      outstanding = new AtomicInteger();
+      final AtomicInteger existing = _outstandingJobs.putIfAbsent(invoker, outstanding);
+      if (existing != null) {
+        outstanding = existing;
+      }
+    }
+    return outstanding;
+  }
+
+  /**
+   * Notes jobs being sent to an invoker.
+   * 
+   * @param invoker the invoker
+   * @param jobCount the number of jobs, including tails
+   */
+  /* package */void jobsLaunched(final JobInvoker invoker, final int jobCount) {
+    getOutstandingJobs(invoker).addAndGet(jobCount);
+  }
+
+  /**
+   * Notes jobs completing, failing or being cancelled at an invoker.
+   * 
+   * @param invoker the invoker
+   * @param jobCount the number of jobs, including tails
+   */
+  /* package */void jobsReleased(final JobInvoker invoker, final int jobCount) {
+    getOutstandingJobs(invoker).addAndGet(-jobCount);
+  }
+
+  private void recordJobInvoker(final CalculationJob job, final JobInvoker invoker) {
+    _jobInvokers.put(job.getSpecification().getJobId(), invoker);
+    if (job.getTail() != null) {
+      for (CalculationJob tail : job.getTail()) {
+        recordJobInvoker(tail, invoker);
+      }
+    }
+  }
+
+  private int getNodeCount(final JobInvoker invoker) {
+    final Collection<Capability> capabilities = getCapabilityCache().get(invoker);
+    if (capabilities != null) {
+      for (Capability capability : capabilities) {
+        if (PlatformCapabilities.NODE_COUNT.equals(capability.getIdentifier())) {
+          final Double nodes = capability.getUpperBoundParameter();
+          if ((nodes != null) && (nodes >= 1)) {
+            return nodes.intValue();
+          }
+        }
+      }
+    }
+    return 1;
+  }
+
   @Override
   public synchronized void registerJobInvoker(final JobInvoker invoker) {
     ArgumentChecker.notNull(invoker, "invoker");
@@ -175,22 +362,31 @@ public class JobDispatcher implements JobInvokerRegister {
   // caller must already own monitor
   private void retryPending(final long failJobsBefore) {
     s_logger.debug("Retrying pending operations");
-    final Iterator<DispatchableJob> iterator = getPending().iterator();
-    while (iterator.hasNext()) {
-      final DispatchableJob job = iterator.next();
-      if (invoke(job)) {
-        iterator.remove();
-      } else {
-        if (failJobsBefore <= 0) {
-          if (getInvokers().isEmpty()) {
-            s_logger.debug("No invokers available - not retrying operations");
+    final Iterator<Map.Entry<CapabilityRequirements, Queue<DispatchableJob>>> pendingIterator = getPending().entrySet().iterator();
+    while (pendingIterator.hasNext()) {
+      final Queue<DispatchableJob> pending = pendingIterator.next().getValue();
+      final Iterator<DispatchableJob> iterator = pending.iterator();
+      while (iterator.hasNext()) {
+        final DispatchableJob job = iterator.next();
+        if (invoke(job)) {
+          iterator.remove();
+        } else {
+          if (failJobsBefore <= 0) {
+            if (getInvokers().isEmpty()) {
+              s_logger.debug("No invokers available - not retrying operations");
+              return;
+            }
+            // Every invoker able to run a job with these requirements has refused it; they will also refuse the rest
             break;
+          } else if (job.getJobCreationTime() < failJobsBefore) {
+            iterator.remove();
+            job.abort(null, "no invokers available after timeout");
           }
-        } else if (job.getJobCreationTime() < failJobsBefore) {
-          iterator.remove();
-          job.abort(null, "no invokers available after timeout");
         }
       }
+      if (pending.isEmpty()) {
+        pendingIterator.remove();
+      }
     }
   }
 
@@ -198,34 +394,106 @@ public class JobDispatcher implements JobInvokerRegister {
   // TODO [ENG-42] the invoker selection logic is inefficient; it's likely that capability requirements objects won't vary much so comparison against the capabilities of invokers should be cached
   // TODO [ENG-42] job dispatch should not be O(n) on number of invokers; the caching of capabilities should allow a nearer O(1) selection
 
+  /**
+   * Counts the input producing jobs of a job that were sent to each invoker. These are the predecessor jobs noted on the
+   * job when it was created from its graph fragment.
+   * 
+   * @param job the job to be dispatched
+   * @return the number of input producing jobs by invoker, null if none are known
+   */
+  private Map<JobInvoker, Integer> getAffinity(final DispatchableJob job) {
+    final long[] predecessorJobIds = job.getJob().getPredecessorJobIds();
+    if (predecessorJobIds == null) {
+      return null;
+    }
+    Map<JobInvoker, Integer> affinity = null;
+    for (long predecessorJobId : predecessorJobIds) {
+      final JobInvoker invoker = _jobInvokers.getIfPresent(predecessorJobId);
+      if (invoker != null) {
+        if (affinity == null) {
+          affinity = new HashMap<JobInvoker, Integer>();
+        }
+        final Integer count = affinity.get(invoker);
+        affinity.put(invoker, (count == null) ? 1 : (count + 1));
+      }
+    }
+    return affinity;
+  }
+
+  /**
+   * Orders the invokers that can run a job by preference. Invokers with equal scores keep their round-robin order.
+   * 
+   * @param job the job to be dispatched
+   * @param affinity the number of input producing jobs by invoker, null if none are known
+   * @return the invokers to try, in order
+   */
+  private List<JobInvoker> selectInvokers(final DispatchableJob job, final Map<JobInvoker, Integer> affinity) {
+    final List<ScoredInvoker> scored = new ArrayList<ScoredInvoker>();
+    final double affinityWeight = (affinity != null) ? getAffinityWeight() / (double) job.getJob().getPredecessorJobIds().length : 0;
+    for (JobInvoker jobInvoker : getInvokers()) {
+      if (job.canRunOn(jobInvoker)) {
+        double score = -(double) getOutstandingJobs(jobInvoker).get() / (double) getNodeCount(jobInvoker);
+        if (affinity != null) {
+          final Integer count = affinity.get(jobInvoker);
+          if (count != null) {
+            score += affinityWeight * (double) count;
+          }
+        }
+        scored.add(new ScoredInvoker(jobInvoker, score));
+      }
+    }
+    // Stable sort, so equally scored invokers remain in round-robin order
+    Collections.sort(scored);
+    final List<JobInvoker> invokers = new ArrayList<JobInvoker>(scored.size());
+    for (ScoredInvoker invoker : scored) {
+      invokers.add(invoker.getInvoker());
+    }
+    return invokers;
+  }
+
+  private void jobDispatched(final DispatchableJob job, final JobInvoker jobInvoker, final Map<JobInvoker, Integer> affinity) {
+    recordJobInvoker(job.getJob(), jobInvoker);
+    if (getStatisticsGatherer() != null) {
+      int requiredJobs = 0;
+      int localRequiredJobs = 0;
+      if (affinity != null) {
+        for (Map.Entry<JobInvoker, Integer> count : affinity.entrySet()) {
+          requiredJobs += count.getValue();
+          if (count.getKey() == jobInvoker) {
+            localRequiredJobs = count.getValue();
+          }
+        }
+      }
+      getStatisticsGatherer().jobDispatched(jobInvoker.getInvokerId(), job.getDurationNanos(), requiredJobs, localRequiredJobs);
+    }
+  }
+
   // caller must already own monitor
   private boolean invoke(final DispatchableJob job) {
     if (job.isCompleted()) {
       s_logger.info("Job {} cancelled", job);
       return true;
     }
+    final Map<JobInvoker, Integer> affinity = getAffinity(job);
     Collection<JobInvoker> retry = null;
     do {
-      final Iterator<JobInvoker> iterator = getInvokers().iterator();
-      while (iterator.hasNext()) {
-        final JobInvoker jobInvoker = iterator.next();
-        if (job.canRunOn(jobInvoker)) {
-          if (job.runOn(jobInvoker)) {
-            s_logger.debug("Invoker {} accepted job {}", jobInvoker, job);
-            // put invoker to the end of the list
-            iterator.remove();
-            getInvokers().add(jobInvoker);
-            return true;
-          } else {
-            s_logger.debug("Invoker {} refused to execute job {}", jobInvoker, job);
-            iterator.remove();
-            if (jobInvoker.notifyWhenAvailable(this)) {
-              s_logger.info("Invoker {} requested immediate retry", jobInvoker);
-              if (retry == null) {
-                retry = new LinkedList<JobInvoker>();
-              }
-              retry.add(jobInvoker);
+      for (JobInvoker jobInvoker : selectInvokers(job, affinity)) {
+        if (job.runOn(jobInvoker)) {
+          s_logger.debug("Invoker {} accepted job {}", jobInvoker, job);
+          // put invoker to the end of the list
+          getInvokers().remove(jobInvoker);
+          getInvokers().add(jobInvoker);
+          jobDispatched(job, jobInvoker, affinity);
+          return true;
+        } else {
+          s_logger.debug("Invoker {} refused to execute job {}", jobInvoker, job);
+          getInvokers().remove(jobInvoker);
+          if (jobInvoker.notifyWhenAvailable(this)) {
+            s_logger.info("Invoker {} requested immediate retry", jobInvoker);
+            if (retry == null) {
+              retry = new LinkedList<JobInvoker>();
             }
+            retry.add(jobInvoker);
           }
         }
       }
@@ -243,7 +511,12 @@ public class JobDispatcher implements JobInvokerRegister {
   protected synchronized void dispatchJobImpl(final DispatchableJob job) {
     if (!invoke(job)) {
       s_logger.debug("Adding job to pending set");
-      getPending().add(job);
+      Queue<DispatchableJob> pending = getPending().get(job.getRequirements());
+      if (pending == null) {
+        pending = new LinkedList<DispatchableJob>();
+        getPending().put(job.getRequirements(), pending);
+      }
+      pending.add(job);
       if (getInvokers() != null) {
         retryPending(0L);
       }
@@ -7,7 +7,11 @@ package com.opengamma.engine.view.calcnode;
 
 import java.net.Inet4Address;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
@@ -20,9 +24,14 @@ import org.springframework.context.Lifecycle;
 
 import com.opengamma.engine.function.CompiledFunctionService;
 import com.opengamma.engine.view.cache.AbstractIdentifierMap;
+import com.opengamma.engine.view.cache.CachingFudgeMessageStore;
+import com.opengamma.engine.view.cache.DefaultViewComputationCacheSource;
+import com.opengamma.engine.view.cache.FudgeMessageStore;
 import com.opengamma.engine.view.cache.IdentifierMap;
+import com.opengamma.engine.view.cache.LayeredFudgeMessageStore;
 import com.opengamma.engine.view.calcnode.msg.Cancel;
 import com.opengamma.engine.view.calcnode.msg.Execute;
+import com.opengamma.engine.view.calcnode.msg.ExecuteBatch;
 import com.opengamma.engine.view.calcnode.msg.Failure;
 import com.opengamma.engine.view.calcnode.msg.Init;
 import com.opengamma.engine.view.calcnode.msg.IsAlive;
@@ -30,6 +39,7 @@ import com.opengamma.engine.view.calcnode.msg.Ready;
 import com.opengamma.engine.view.calcnode.msg.RemoteCalcNodeMessage;
 import com.opengamma.engine.view.calcnode.msg.RemoteCalcNodeMessageVisitor;
 import com.opengamma.engine.view.calcnode.msg.Result;
+import com.opengamma.engine.view.calcnode.msg.Results;
 import com.opengamma.engine.view.calcnode.msg.Scaling;
 import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatisticsSender;
 import com.opengamma.transport.FudgeConnection;
@@ -51,6 +61,9 @@ public class RemoteNodeClient extends SimpleCalculationNodeInvocationContainer i
   private final FunctionInvocationStatisticsSender _statistics;
   private boolean _started;
   private String _hostId;
+  private Integer _pipeline;
+  private DefaultViewComputationCacheSource _prefetchCacheSource;
+  private final List<CalculationJobResult> _pendingResults = new ArrayList<CalculationJobResult>();
   private final RemoteCalcNodeMessageVisitor _messageVisitor = new RemoteCalcNodeMessageVisitor() {
 
     @Override
@@ -67,24 +80,16 @@ public class RemoteNodeClient extends SimpleCalculationNodeInvocationContainer i
 
     @Override
     protected void visitExecuteMessage(final Execute message) {
-      final CalculationJob job = message.getJob();
-      getFunctionCompilationService().reinitializeIfNeeded(job.getFunctionInitializationIdentifier());
-      AbstractIdentifierMap.resolveIdentifiers(getIdentifierMap(), job);
-      addJob(job, new ExecutionReceiver() {
-
-        @Override
-        public void executionComplete(final CalculationJobResult result) {
-          AbstractIdentifierMap.convertIdentifiers(getIdentifierMap(), result);
-          sendMessage(new Result(result));
-        }
-
-        @Override
-        public void executionFailed(final SimpleCalculationNode node, final Exception exception) {
-          s_logger.warn("Exception thrown by job execution", exception);
-          sendMessage(new Failure(job.getSpecification(), exception.getMessage(), node.getNodeId()));
-        }
+      execute(message.getJob(), false);
+    }
 
-      }, null);
+    @Override
+    protected void visitExecuteBatchMessage(final ExecuteBatch message) {
+      final List<CalculationJob> jobs = message.getJob();
+      primeCache(jobs.get(0).getSpecification(), message.getIdentifier(), message.getData());
+      for (CalculationJob job : jobs) {
+        execute(job, true);
+      }
     }
 
     @Override
@@ -146,6 +151,34 @@ public class RemoteNodeClient extends SimpleCalculationNodeInvocationContainer i
     return _hostId;
   }
 
+  /**
+   * Sets the number of jobs this client will accept in addition to its node count. If set, the dispatcher may send jobs in batches,
+   * with the shared values they need sent ahead of them, and results from a batch are coalesced into fewer messages.
+   * 
+   * @param pipeline the number of additional jobs to accept, null to receive jobs individually
+   */
+  public void setPipeline(final Integer pipeline) {
+    _pipeline = pipeline;
+  }
+
+  public Integer getPipeline() {
+    return _pipeline;
+  }
+
+  /**
+   * Sets the cache source used by the nodes. Values sent ahead of a batch of jobs are held in its in-memory cache of the shared
+   * data store so that the nodes do not have to fetch them.
+   * 
+   * @param cacheSource the cache source, null to discard any values sent ahead of jobs
+   */
+  public void setPrefetchCacheSource(final DefaultViewComputationCacheSource cacheSource) {
+    _prefetchCacheSource = cacheSource;
+  }
+
+  public DefaultViewComputationCacheSource getPrefetchCacheSource() {
+    return _prefetchCacheSource;
+  }
+
   @Override
   public void onNodeChange() {
     if (isRunning()) {
@@ -169,6 +202,94 @@ public class RemoteNodeClient extends SimpleCalculationNodeInvocationContainer i
     return _statistics;
   }
 
+  private void execute(final CalculationJob job, final boolean coalesceResults) {
+    getFunctionCompilationService().reinitializeIfNeeded(job.getFunctionInitializationIdentifier());
+    AbstractIdentifierMap.resolveIdentifiers(getIdentifierMap(), job);
+    addJob(job, new ExecutionReceiver() {
+
+      @Override
+      public void executionComplete(final CalculationJobResult result) {
+        AbstractIdentifierMap.convertIdentifiers(getIdentifierMap(), result);
+        if (coalesceResults) {
+          resultReady(result);
+        } else {
+          sendMessage(new Result(result));
+        }
+      }
+
+      @Override
+      public void executionFailed(final SimpleCalculationNode node, final Exception exception) {
+        s_logger.warn("Exception thrown by job execution", exception);
+        if (coalesceResults) {
+          // Send anything held back first so the dispatcher sees results in completion order
+          flushResults();
+        }
+        sendMessage(new Failure(job.getSpecification(), exception.getMessage(), node.getNodeId()));
+      }
+
+    }, null);
+  }
+
+  private void primeCache(final CalculationJobSpecification jobSpec, final List<Long> identifiers, final List<FudgeMsg> data) {
+    final DefaultViewComputationCacheSource cacheSource = getPrefetchCacheSource();
+    if ((cacheSource == null) || (identifiers == null) || (data == null)) {
+      return;
+    }
+    FudgeMessageStore store = cacheSource.getCache(jobSpec.getViewCycleId(), jobSpec.getCalcConfigName()).getSharedDataStore();
+    if (store instanceof LayeredFudgeMessageStore) {
+      store = ((LayeredFudgeMessageStore) store).getUnderlying();
+    }
+    if (store instanceof CachingFudgeMessageStore) {
+      final Map<Long, FudgeMsg> values = new HashMap<Long, FudgeMsg>();
+      final int count = Math.min(identifiers.size(), data.size());
+      for (int i = 0; i < count; i++) {
+        values.put(identifiers.get(i), data.get(i));
+      }
+      ((CachingFudgeMessageStore) store).prime(values);
+    } else {
+      // A shared store that isn't a near-cache over a remote one will already hold the values
+      s_logger.debug("Ignoring {} values sent ahead of jobs", identifiers.size());
+    }
+  }
+
+  /**
+   * Holds back a result while there is more work queued at this node, so that results from a batch are sent together. Once there are
+   * no more queued jobs everything held is sent; a held result must not wait on a job blocked by work at another node.
+   * 
+   * @param result the completed result
+   */
+  private void resultReady(final CalculationJobResult result) {
+    synchronized (_pendingResults) {
+      _pendingResults.add(result);
+    }
+    if (!hasRunnableJobs()) {
+      flushResults();
+    }
+  }
+
+  private void flushResults() {
+    synchronized (_pendingResults) {
+      // Sending while holding the lock keeps the results in completion order
+      switch (_pendingResults.size()) {
+        case 0:
+          return;
+        case 1:
+          sendMessage(new Result(_pendingResults.get(0)));
+          break;
+        default:
+          s_logger.debug("Sending {} results", _pendingResults.size());
+          sendMessage(new Results(_pendingResults));
+          break;
+      }
+      _pendingResults.clear();
+    }
+  }
+
+  @Override
+  protected void onJobExecutionComplete() {
+    flushResults();
+  }
+
   private void sendMessage(final RemoteCalcNodeMessage message) {
     final FudgeMessageSender sender = getConnection().getFudgeMessageSender();
     final FudgeSerializer serializer = new FudgeSerializer(sender.getFudgeContext());
@@ -178,7 +299,7 @@ public class RemoteNodeClient extends SimpleCalculationNodeInvocationContainer i
   }
 
   protected void sendCapabilities() {
-    final Ready ready = new Ready(getTotalNodeCount(), getHostId());
+    final Ready ready = new Ready(getTotalNodeCount(), getHostId(), getPipeline());
     // TODO any other capabilities to add
     sendMessage(ready);
   }
@@ -5,11 +5,15 @@
  */
 package com.opengamma.engine.view.calcnode;
 
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -18,6 +22,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
 import org.fudgemsg.FudgeMsgEnvelope;
 import org.fudgemsg.MutableFudgeMsg;
 import org.fudgemsg.mapping.FudgeDeserializer;
@@ -30,9 +35,11 @@ import com.opengamma.engine.function.NoOpFunction;
 import com.opengamma.engine.function.blacklist.FunctionBlacklistMaintainer;
 import com.opengamma.engine.function.blacklist.FunctionBlacklistQuery;
 import com.opengamma.engine.view.cache.AbstractIdentifierMap;
+import com.opengamma.engine.view.cache.DefaultViewComputationCacheSource;
 import com.opengamma.engine.view.cache.IdentifierMap;
 import com.opengamma.engine.view.calcnode.msg.Cancel;
 import com.opengamma.engine.view.calcnode.msg.Execute;
+import com.opengamma.engine.view.calcnode.msg.ExecuteBatch;
 import com.opengamma.engine.view.calcnode.msg.Failure;
 import com.opengamma.engine.view.calcnode.msg.Invocations;
 import com.opengamma.engine.view.calcnode.msg.IsAlive;
@@ -40,6 +47,7 @@ import com.opengamma.engine.view.calcnode.msg.Ready;
 import com.opengamma.engine.view.calcnode.msg.RemoteCalcNodeMessage;
 import com.opengamma.engine.view.calcnode.msg.RemoteCalcNodeMessageVisitor;
 import com.opengamma.engine.view.calcnode.msg.Result;
+import com.opengamma.engine.view.calcnode.msg.Results;
 import com.opengamma.engine.view.calcnode.msg.Scaling;
 import com.opengamma.engine.view.calcnode.stats.FunctionCosts;
 import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatisticsReceiver;
@@ -91,12 +99,14 @@ import com.opengamma.transport.FudgeMessageSender;
   private final FudgeMessageSender _fudgeMessageSender;
   private final CapabilitySet _capabilitySet = new CapabilitySet();
   private volatile int _capacity;
+  private volatile boolean _batching;
   private final AtomicInteger _launched = new AtomicInteger();
   private final AtomicReference<JobInvokerRegister> _dispatchCallback = new AtomicReference<JobInvokerRegister>();
   private final IdentifierMap _identifierMap;
   private final FunctionCosts _functionCosts;
   private final FunctionBlacklistQuery _blacklistQuery;
   private final FunctionBlacklistMaintainer _blacklistUpdate;
+  private final DefaultViewComputationCacheSource _prefetchCacheSource;
   private volatile String _invokerId;
   private final RemoteCalcNodeMessageVisitor _messageVisitor = new RemoteCalcNodeMessageVisitor() {
 
@@ -146,7 +156,14 @@ import com.opengamma.transport.FudgeMessageSender;
       s_logger.debug("Remote invoker ready message - {}", message);
       getCapabilitySet().setParameterCapability(PlatformCapabilities.NODE_COUNT, message.getCapacity());
       // [ENG-42] this is where we'd detect any other capability changes
-      _capacity = message.getCapacity();
+      if (message.getPipeline() != null) {
+        // The node will queue additional jobs, so we can keep it busy without waiting for a round trip after each result
+        _batching = true;
+        _capacity = message.getCapacity() + Math.max(message.getPipeline(), 0);
+      } else {
+        _batching = false;
+        _capacity = message.getCapacity();
+      }
       final int launched = _launched.get();
       if (launched < 0) {
         // An additional decrement can happen if there is an error in the original job dispatch
@@ -166,21 +183,19 @@ import com.opengamma.transport.FudgeMessageSender;
       if (message.getReady() != null) {
         message.getReady().accept(this);
       }
-      // We decrement the count (and re-register) before processing the data as the remote node is already available if it's sent us its data.
-      final JobInfo job = getPendingJobs().remove(message.getResult().getSpecification());
-      if (job == null) {
-        s_logger.warn("Duplicate or result for cancelled callback {} received", message.getResult().getSpecification());
+      resultReceived(message.getResult());
+    }
+
+    @Override
+    protected void visitResultsMessage(final Results message) {
+      s_logger.debug("Received {} results", message.getResult().size());
+      if (message.getReady() != null) {
+        message.getReady().accept(this);
       }
-      if (_launched.addAndGet(job.getLaunchDelta()) < _capacity) {
-        // We check for below capacity. We can get "equal" here, but that means there is an invoke taking place which will be dealt with
-        // by the notifyWhenAvailable that gets called to reschedule the invoker
-        if (registerIfRequired(true)) {
-          s_logger.debug("Notified dispatcher of capacity available");
-        }
+      // Results are in completion order so a job's result is always processed before those of its tail
+      for (CalculationJobResult result : message.getResult()) {
+        resultReceived(result);
       }
-      final CalculationJobResult result = message.getResult();
-      AbstractIdentifierMap.resolveIdentifiers(getIdentifierMap(), result);
-      job.getReceiver().jobCompleted(result);
     }
 
   };
@@ -189,6 +204,26 @@ import com.opengamma.transport.FudgeMessageSender;
       final ExecutorService executorService, final Ready initialMessage, final FudgeConnection fudgeConnection,
       final IdentifierMap identifierMap, final FunctionCosts functionCosts, final FunctionBlacklistQuery blacklistQuery,
       final FunctionBlacklistMaintainer blacklistUpdate) {
+    this(executorService, initialMessage, fudgeConnection, identifierMap, functionCosts, blacklistQuery, blacklistUpdate, null);
+  }
+
+  /**
+   * Creates a new invoker.
+   * 
+   * @param executorService the executor to send jobs with
+   * @param initialMessage the ready message from the remote node
+   * @param fudgeConnection the connection to the remote node
+   * @param identifierMap the identifier map shared with the remote node
+   * @param functionCosts the function costs to update with statistics reported by the remote node
+   * @param blacklistQuery the blacklist to apply to jobs before they are sent
+   * @param blacklistUpdate the blacklist to update with job failures
+   * @param prefetchCacheSource the cache source to read shared input values from for sending to the remote node with each batch
+   *          of jobs, null to have the node fetch them itself
+   */
+  public RemoteNodeJobInvoker(
+      final ExecutorService executorService, final Ready initialMessage, final FudgeConnection fudgeConnection,
+      final IdentifierMap identifierMap, final FunctionCosts functionCosts, final FunctionBlacklistQuery blacklistQuery,
+      final FunctionBlacklistMaintainer blacklistUpdate, final DefaultViewComputationCacheSource prefetchCacheSource) {
     _executorService = executorService;
     _fudgeMessageSender = fudgeConnection.getFudgeMessageSender();
     _identifierMap = identifierMap;
@@ -196,6 +231,7 @@ import com.opengamma.transport.FudgeMessageSender;
     _functionCosts = functionCosts;
     _blacklistQuery = blacklistQuery;
     _blacklistUpdate = blacklistUpdate;
+    _prefetchCacheSource = prefetchCacheSource;
     fudgeConnection.setFudgeMessageReceiver(this);
     fudgeConnection.setConnectionStateListener(this);
     initialMessage.accept(_messageVisitor);
@@ -243,11 +279,92 @@ import com.opengamma.transport.FudgeMessageSender;
     return _blacklistUpdate;
   }
 
+  private DefaultViewComputationCacheSource getPrefetchCacheSource() {
+    return _prefetchCacheSource;
+  }
+
   protected void sendMessage(final RemoteCalcNodeMessage message) {
     final FudgeSerializer serializer = new FudgeSerializer(getFudgeMessageSender().getFudgeContext());
     getFudgeMessageSender().send(FudgeSerializer.addClassHeader(serializer.objectToFudgeMsg(message), message.getClass(), RemoteCalcNodeMessage.class));
   }
 
+  private void resultReceived(final CalculationJobResult result) {
+    // We decrement the count (and re-register) before processing the data as the remote node is already available if it's sent us its data.
+    final JobInfo job = getPendingJobs().remove(result.getSpecification());
+    if (job == null) {
+      s_logger.warn("Duplicate or result for cancelled callback {} received", result.getSpecification());
+      return;
+    }
+    if (_launched.addAndGet(job.getLaunchDelta()) < _capacity) {
+      // We check for below capacity. We can get "equal" here, but that means there is an invoke taking place which will be dealt with
+      // by the notifyWhenAvailable that gets called to reschedule the invoker
+      if (registerIfRequired(true)) {
+        s_logger.debug("Notified dispatcher of capacity available");
+      }
+    }
+    AbstractIdentifierMap.resolveIdentifiers(getIdentifierMap(), result);
+    job.getReceiver().jobCompleted(result);
+  }
+
+  /**
+   * Creates the message to send a batch of jobs with. Any values the jobs will read which are not produced within the batch
+   * are taken from the shared cache so that the remote node will not have to make a round trip for each of them. Values that
+   * are not in the shared cache, for example because they are private to another node, are left for the remote node to find.
+   * 
+   * @param jobs the jobs to send, with identifiers already converted, not null or empty
+   * @return the message
+   */
+  private ExecuteBatch createBatch(final List<CalculationJob> jobs) {
+    final ExecuteBatch batch = new ExecuteBatch(jobs);
+    final DefaultViewComputationCacheSource cacheSource = getPrefetchCacheSource();
+    if (cacheSource == null) {
+      return batch;
+    }
+    final CalculationJobSpecification spec = jobs.get(0).getSpecification();
+    final LongSet outputs = new LongOpenHashSet();
+    for (CalculationJob job : jobs) {
+      if (!spec.getViewCycleId().equals(job.getSpecification().getViewCycleId()) || !spec.getCalcConfigName().equals(job.getSpecification().getCalcConfigName())) {
+        // The prefetched values are for a single shared cache
+        return batch;
+      }
+      for (CalculationJobItem item : job.getJobItems()) {
+        for (long output : item.getOutputIdentifiers()) {
+          outputs.add(output);
+        }
+      }
+    }
+    final LongSet inputs = new LongOpenHashSet();
+    for (CalculationJob job : jobs) {
+      for (CalculationJobItem item : job.getJobItems()) {
+        for (long input : item.getInputIdentifiers()) {
+          if (!outputs.contains(input)) {
+            inputs.add(input);
+          }
+        }
+      }
+    }
+    if (inputs.isEmpty()) {
+      return batch;
+    }
+    final Map<Long, FudgeMsg> data = cacheSource.getCache(spec.getViewCycleId(), spec.getCalcConfigName()).getSharedDataStore().get(inputs);
+    s_logger.debug("Prefetched {} of {} input values", data.size(), inputs.size());
+    if (!data.isEmpty()) {
+      final List<Long> identifiers = new ArrayList<Long>(data.size());
+      final List<FudgeMsg> values = new ArrayList<FudgeMsg>(data.size());
+      for (Map.Entry<Long, FudgeMsg> value : data.entrySet()) {
+        if (value.getValue() != null) {
+          identifiers.add(value.getKey());
+          values.add(value.getValue());
+        }
+      }
+      if (!identifiers.isEmpty()) {
+        batch.setIdentifier(identifiers);
+        batch.setData(values);
+      }
+    }
+    return batch;
+  }
+
   private void jobFailed(final JobInvocationReceiver receiver, final CalculationJob job, final String nodeId, final Exception e) {
     receiver.jobFailed(this, nodeId, e);
     if (job.getTail() == null) {
@@ -306,29 +423,35 @@ import com.opengamma.transport.FudgeMessageSender;
     }
     s_logger.info("Dispatching job {}", rootJob.getSpecification());
     // Don't block the dispatcher with outgoing serialization and I/O
+    final boolean batching = _batching;
     getExecutorService().execute(new Runnable() {
 
-      private void sendJob(final CalculationJob job) throws Exception {
+      private CalculationJob prepareJob(final CalculationJob job) {
         getPendingJobs().put(job.getSpecification(), new JobInfo(receiver, job));
         AbstractIdentifierMap.convertIdentifiers(getIdentifierMap(), job);
-        sendMessage(new Execute(blacklist(getBlacklistQuery(), job)));
+        return blacklist(getBlacklistQuery(), job);
       }
 
       @Override
       public void run() {
         // Breadth first sending of jobs, just in case some can start before we've sent everything
         try {
-          sendJob(rootJob);
-          if (rootJob.getTail() != null) {
-            final Queue<CalculationJob> jobs = new LinkedList<CalculationJob>(rootJob.getTail());
-            CalculationJob job = jobs.poll();
-            while (job != null) {
-              sendJob(job);
-              if (job.getTail() != null) {
-                jobs.addAll(job.getTail());
-              }
-              job = jobs.poll();
+          final List<CalculationJob> batch = batching ? new ArrayList<CalculationJob>() : null;
+          final Queue<CalculationJob> jobs = new LinkedList<CalculationJob>();
+          CalculationJob job = rootJob;
+          do {
+            if (batch != null) {
+              batch.add(prepareJob(job));
+            } else {
+              sendMessage(new Execute(prepareJob(job)));
+            }
+            if (job.getTail() != null) {
+              jobs.addAll(job.getTail());
             }
+            job = jobs.poll();
+          } while (job != null);
+          if (batch != null) {
+            sendMessage(createBatch(batch));
           }
         } catch (Exception e) {
           s_logger.warn("Error sending job {}", rootJob.getSpecification().getJobId());
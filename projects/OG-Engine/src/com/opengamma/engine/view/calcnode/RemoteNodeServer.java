@@ -32,6 +32,7 @@ import com.opengamma.engine.function.blacklist.ManageableFunctionBlacklist;
 import com.opengamma.engine.function.blacklist.ManageableFunctionBlacklistProvider;
 import com.opengamma.engine.function.blacklist.MultipleFunctionBlacklistMaintainer;
 import com.opengamma.engine.function.blacklist.MultipleFunctionBlacklistQuery;
+import com.opengamma.engine.view.cache.DefaultViewComputationCacheSource;
 import com.opengamma.engine.view.cache.IdentifierMap;
 import com.opengamma.engine.view.calcnode.msg.Init;
 import com.opengamma.engine.view.calcnode.msg.Ready;
@@ -264,6 +265,7 @@ public class RemoteNodeServer implements FudgeConnectionReceiver {
   private Set<Capability> _capabilitiesToAdd;
   private FunctionBlacklistMaintainerProvider _blacklistUpdate;
   private FunctionBlacklistQueryProvider _blacklistQuery;
+  private DefaultViewComputationCacheSource _prefetchCacheSource;
 
   public RemoteNodeServer(final JobInvokerRegister jobInvokerRegister, final IdentifierMap identifierMap,
       final FunctionCosts functionCosts, final FunctionCompilationContext functionCompilationContext) {
@@ -345,6 +347,25 @@ public class RemoteNodeServer implements FudgeConnectionReceiver {
     return new DummyFunctionBlacklistQuery();
   }
 
+  /**
+   * Returns the cache source that shared input values are read from to send to remote nodes with their jobs.
+   * 
+   * @return the cache source, null if nodes fetch their own input values
+   */
+  public DefaultViewComputationCacheSource getPrefetchCacheSource() {
+    return _prefetchCacheSource;
+  }
+
+  /**
+   * Sets the cache source that shared input values are read from to send to remote nodes with their jobs. This is
+   * only used with nodes that accept batches of jobs.
+   * 
+   * @param cacheSource the cache source, null if nodes fetch their own input values
+   */
+  public void setPrefetchCacheSource(final DefaultViewComputationCacheSource cacheSource) {
+    _prefetchCacheSource = cacheSource;
+  }
+
   protected JobInvokerRegister getJobInvokerRegister() {
     return _jobInvokerRegister;
   }
@@ -380,7 +401,7 @@ public class RemoteNodeServer implements FudgeConnectionReceiver {
       protected void visitReadyMessage(final Ready message) {
         s_logger.info("Remote node {} connected - {}", message.getHostId(), connection);
         final RemoteNodeJobInvoker invoker = new RemoteNodeJobInvoker(getExecutorService(), message, connection, getIdentifierMap(), getFunctionCosts(), getBlacklistQuery(message.getHostId()),
-            getBlacklistUpdate(message.getHostId()));
+            getBlacklistUpdate(message.getHostId()), getPrefetchCacheSource());
         if (_capabilitiesToAdd != null) {
           invoker.addCapabilities(_capabilitiesToAdd);
         }
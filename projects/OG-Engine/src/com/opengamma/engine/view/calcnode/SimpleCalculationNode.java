@@ -23,6 +23,7 @@ import com.google.common.collect.MapMaker;
 import com.google.common.collect.Sets;
 import com.opengamma.engine.ComputationTarget;
 import com.opengamma.engine.ComputationTargetResolver;
+import com.opengamma.engine.function.CacheableFunctionInvoker;
 import com.opengamma.engine.function.CompiledFunctionService;
 import com.opengamma.engine.function.FunctionExecutionContext;
 import com.opengamma.engine.function.FunctionInputs;
@@ -44,6 +45,8 @@ import com.opengamma.engine.view.cache.NotCalculatedSentinel;
 import com.opengamma.engine.view.cache.ViewComputationCache;
 import com.opengamma.engine.view.cache.ViewComputationCacheSource;
 import com.opengamma.engine.view.cache.WriteBehindViewComputationCache;
+import com.opengamma.engine.view.calc.ExecutionTrace;
+import com.opengamma.engine.view.calc.ExecutionTraceRecorder;
 import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatisticsGatherer;
 import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.InetAddressUtils;
@@ -92,6 +95,9 @@ public class SimpleCalculationNode extends SimpleCalculationNodeState implements
   private FunctionBlacklistQuery _blacklistQuery = new DummyFunctionBlacklistQuery();
   private FunctionBlacklistMaintainer _blacklistUpdate = new DummyFunctionBlacklistMaintainer();
   private MaximumJobItemExecutionWatchdog _maxJobItemExecution = new MaximumJobItemExecutionWatchdog();
+  private FunctionResultCache _functionResultCache;
+  private TargetPrefetchCache _targetPrefetchCache;
+  private ExecutionTraceRecorder _traceRecorder;
 
   public SimpleCalculationNode(ViewComputationCacheSource cacheSource, CompiledFunctionService functionCompilationService,
       FunctionExecutionContext functionExecutionContext, ComputationTargetResolver targetResolver, ViewProcessorQuerySender calcNodeQuerySender, String nodeId,
@@ -231,6 +237,51 @@ public class SimpleCalculationNode extends SimpleCalculationNodeState implements
     return _maxJobItemExecution;
   }
 
+  /**
+   * Sets a cache of invocation results to use for any functions that declare themselves cacheable. When a function is invoked
+   * with the same inputs as an earlier invocation the earlier results are written to the value cache instead of invoking it
+   * again. The cache may be shared with other nodes.
+   * 
+   * @param functionResultCache the cache to use, or null to always invoke functions
+   */
+  public void setFunctionResultCache(final FunctionResultCache functionResultCache) {
+    _functionResultCache = functionResultCache;
+  }
+
+  public FunctionResultCache getFunctionResultCache() {
+    return _functionResultCache;
+  }
+
+  /**
+   * Sets a cache of resolved targets to use. Before executing a job the node resolves all of the job's targets that are not
+   * already held with bulk or concurrent lookups, so that the job items do not each make a lookup. The cache may be shared
+   * with other nodes.
+   * 
+   * @param targetPrefetchCache the cache to use, or null to resolve the target of each job item as it is executed
+   */
+  public void setTargetPrefetchCache(final TargetPrefetchCache targetPrefetchCache) {
+    _targetPrefetchCache = targetPrefetchCache;
+  }
+
+  public TargetPrefetchCache getTargetPrefetchCache() {
+    return _targetPrefetchCache;
+  }
+
+  /**
+   * Sets the recorder for tracing the execution of sampled view cycles. The node records the time spent fetching inputs,
+   * invoking the function and writing outputs for each job item of a traced cycle. Only cycles started by a view processor
+   * sharing the same recorder can be traced.
+   * 
+   * @param traceRecorder the recorder, or null to not trace
+   */
+  public void setTraceRecorder(final ExecutionTraceRecorder traceRecorder) {
+    _traceRecorder = traceRecorder;
+  }
+
+  public ExecutionTraceRecorder getTraceRecorder() {
+    return _traceRecorder;
+  }
+
   @Override
   public String getNodeId() {
     return _nodeId;
@@ -310,25 +361,106 @@ public class SimpleCalculationNode extends SimpleCalculationNodeState implements
    * @throws AsynchronousHandleExecution if the job is completing asynchronously
    */
   public CalculationJobResult executeJob(final CalculationJob job) throws AsynchronousHandleExecution, AsynchronousExecution {
+    return executeJob(job, null);
+  }
+
+  /**
+   * Invokes all of the items from a calculation job on this node, allowing other nodes to steal items from the job. The items are
+   * executed in order, except for any taken by other nodes, and the result is only returned once the stolen items have completed.
+   * 
+   * @param job the job to execute
+   * @param jobItems the shared item queue for the job, or null to execute all of the items on this node
+   * @return the job result
+   * @throws AsynchronousHandleExecution if the job is completing asynchronously
+   */
+  /* package */CalculationJobResult executeJob(final CalculationJob job, final StealableJobItems jobItems) throws AsynchronousHandleExecution, AsynchronousExecution {
     s_logger.info("Executing {} on {}", job, _nodeId);
-    setJob(job);
+    prepareJob(job);
     final CalculationJobSpecification spec = job.getSpecification();
-    getFunctionExecutionContext().setViewProcessorQuery(new ViewProcessorQuery(getViewProcessorQuerySender(), spec));
-    getFunctionExecutionContext().setValuationTime(spec.getValuationTime());
-    getFunctionExecutionContext().setValuationClock(DateUtils.fixedClockUTC(spec.getValuationTime()));
     setFunctions(getFunctionCompilationService().compileFunctionRepository(spec.getValuationTime()));
     setCache(getDeferredViewComputationCache(getCache(spec)));
     setExecutionStartTime(System.nanoTime());
-    setConfiguration(spec.getCalcConfigName());
+    if (getTargetPrefetchCache() != null) {
+      getTargetPrefetchCache().prefetch(job, getTargetResolver(), getExecutorService());
+    }
     final List<CalculationJobResultItem> resultItems;
     try {
-      resultItems = executeJobItems();
+      if (jobItems == null) {
+        resultItems = executeJobItems();
+      } else {
+        jobItems.setExecutionState(getFunctions(), getCache());
+        resultItems = executeJobItems(jobItems);
+      }
     } catch (AsynchronousHandleExecution ex) {
       return executeJobAsyncResult(ex);
     }
     return executeJobResult(resultItems);
   }
 
+  private void prepareJob(final CalculationJob job) {
+    setJob(job);
+    final CalculationJobSpecification spec = job.getSpecification();
+    getFunctionExecutionContext().setViewProcessorQuery(new ViewProcessorQuery(getViewProcessorQuerySender(), spec));
+    getFunctionExecutionContext().setValuationTime(spec.getValuationTime());
+    getFunctionExecutionContext().setValuationClock(DateUtils.fixedClockUTC(spec.getValuationTime()));
+    setConfiguration(spec.getCalcConfigName());
+    setTrace((getTraceRecorder() != null) ? getTraceRecorder().getActiveTrace(spec.getViewCycleId()) : null);
+  }
+
+  /**
+   * Steals and executes a single item from a job running on another node. The item is executed against the other node's cache and
+   * function repository, with the same blacklist checks and invocation statistics as if it were executed by that node. Any
+   * asynchronous completion or cache flush is waited for, so the item is complete when this returns.
+   * 
+   * @param jobItems the item queue of the other job
+   * @return true if an item was executed, false if there was nothing that could be stolen
+   */
+  /* package */boolean executeStolenJobItem(final StealableJobItems jobItems) {
+    final int index = jobItems.steal();
+    if (index < 0) {
+      return false;
+    }
+    final CalculationJobItem jobItem = jobItems.getItem(index);
+    s_logger.debug("Executing item {} of {} on {}", new Object[] {index, jobItems.getJob(), _nodeId });
+    CalculationJobResultItem resultItem = null;
+    try {
+      prepareJob(jobItems.getJob());
+      setFunctions(jobItems.getFunctions());
+      setCache(jobItems.getCache());
+      if (getFunctionBlacklistQuery().isBlacklisted(jobItem)) {
+        resultItem = invocationBlacklisted(jobItem);
+      } else {
+        getMaxJobItemExecution().jobExecutionStarted(jobItem);
+        try {
+          try {
+            resultItem = invoke(jobItem, new DeferredInvocationStatistics(getFunctionInvocationStatistics(), getConfiguration()));
+          } catch (AsynchronousExecution e) {
+            // We're already doing work on behalf of another node, so there's nothing better to do than wait
+            resultItem = AsynchronousOperation.getResult(e);
+          }
+        } catch (Throwable t) {
+          resultItem = invocationFailure(t, jobItem);
+        } finally {
+          getMaxJobItemExecution().jobExecutionStopped();
+        }
+      }
+      try {
+        getCache().flush();
+      } catch (AsynchronousExecution e) {
+        AsynchronousOperation.getResult(e);
+      }
+    } catch (RuntimeException e) {
+      s_logger.warn("Couldn't complete stolen item {}: {}", jobItem, e.getMessage());
+      resultItem = CalculationJobResultItem.failure(e);
+    } finally {
+      if (resultItem == null) {
+        resultItem = CalculationJobResultItem.failure(ERROR_INVOKING, "Stolen item " + jobItem + " did not complete");
+      }
+      jobItems.completeStolen(index, resultItem);
+    }
+    return true;
+  }
+
   private void postEvaluationErrors(final Set<ValueSpecification> outputs, final NotCalculatedSentinel type) {
     final Collection<ComputedValue> results = new ArrayList<ComputedValue>(outputs.size());
     for (ValueSpecification output : outputs) {
@@ -403,6 +535,56 @@ public class SimpleCalculationNode extends SimpleCalculationNodeState implements
     return executeJobItems(getJob().getJobItems().iterator(), new ArrayList<CalculationJobResultItem>());
   }
 
+  private List<CalculationJobResultItem> executeJobItems(final StealableJobItems jobItems) throws AsynchronousHandleExecution {
+    int index;
+    while ((index = jobItems.take()) >= 0) {
+      if (getJob().isCancelled()) {
+        jobItems.close();
+        return null;
+      }
+      final CalculationJobItem jobItem = jobItems.getItem(index);
+      CalculationJobResultItem resultItem;
+      if (getFunctionBlacklistQuery().isBlacklisted(jobItem)) {
+        resultItem = invocationBlacklisted(jobItem);
+      } else {
+        getMaxJobItemExecution().jobExecutionStarted(jobItem);
+        try {
+          resultItem = invoke(jobItem, new DeferredInvocationStatistics(getFunctionInvocationStatistics(), getConfiguration()));
+        } catch (AsynchronousExecution e) {
+          final int asyncIndex = index;
+          final AsynchronousHandleOperation<List<CalculationJobResultItem>> async = new AsynchronousHandleOperation<List<CalculationJobResultItem>>();
+          e.setResultListener(new ResultListener<CalculationJobResultItem>() {
+            @Override
+            public void operationComplete(final AsynchronousResult<CalculationJobResultItem> result) {
+              CalculationJobResultItem resultItem;
+              try {
+                resultItem = result.getResult();
+              } catch (Throwable t) {
+                resultItem = invocationFailure(t, jobItem);
+              }
+              jobItems.complete(asyncIndex, resultItem);
+              async.getCallback().setResult(new AsynchronousHandle<List<CalculationJobResultItem>>() {
+                @Override
+                public List<CalculationJobResultItem> get() throws AsynchronousHandleExecution {
+                  return executeJobItems(jobItems);
+                }
+              });
+            }
+          });
+          async.getResultHandle();
+          // Discard the handle -- it contains the same state that this loop already has
+          continue;
+        } catch (Throwable t) {
+          resultItem = invocationFailure(t, jobItem);
+        } finally {
+          getMaxJobItemExecution().jobExecutionStopped();
+        }
+      }
+      jobItems.complete(index, resultItem);
+    }
+    return jobItems.getResults();
+  }
+
   private DeferredViewComputationCache getDeferredViewComputationCache(final ViewComputationCache cache) {
     DeferredViewComputationCache deferred = s_deferredCaches.get(cache);
     if (deferred == null) {
@@ -434,14 +616,21 @@ public class SimpleCalculationNode extends SimpleCalculationNodeState implements
   }
 
   private CalculationJobResultItem invokeResult(FunctionInvoker invoker, DeferredInvocationStatistics statistics, Set<ValueSpecification> missing, Set<ValueSpecification> outputs,
-      Collection<ComputedValue> results, CalculationJobResultItem itemResult) {
+      Collection<ComputedValue> results, CalculationJobResultItem itemResult, FunctionResultCache.Key resultKey) {
     if (results == null) {
       postEvaluationErrors(outputs, NotCalculatedSentinel.EVALUATION_ERROR);
       return itemResult.withFailure(ERROR_INVOKING, "No results returned by invoker " + invoker);
     }
     statistics.endInvocation();
     statistics.setExpectedDataOutputSamples(results.size());
-    // store results
+    if (resultKey != null) {
+      getFunctionResultCache().put(resultKey, results);
+    }
+    return storeResults(statistics, missing, outputs, results, itemResult);
+  }
+
+  private CalculationJobResultItem storeResults(DeferredInvocationStatistics statistics, Set<ValueSpecification> missing, Set<ValueSpecification> outputs, Collection<ComputedValue> results,
+      CalculationJobResultItem itemResult) {
     missing.clear();
     missing.addAll(outputs);
     for (ComputedValue result : results) {
@@ -459,25 +648,53 @@ public class SimpleCalculationNode extends SimpleCalculationNodeState implements
       results = newResults;
       itemResult = itemResult.withMissingOutputs(missing);
     }
-    getCache().putValues(results, getJob().getCacheSelectHint(), statistics);
+    final long writeStart = System.nanoTime();
+    if (statistics != null) {
+      getCache().putValues(results, getJob().getCacheSelectHint(), statistics);
+    } else {
+      getCache().putValues(results, getJob().getCacheSelectHint());
+    }
+    if (getTrace() != null) {
+      getTrace().record(ExecutionTrace.OUTPUT_WRITE, null, writeStart, System.nanoTime());
+    }
     return itemResult;
   }
 
+  /**
+   * Creates the key for looking up the results of an invocation if the function is cacheable.
+   * 
+   * @return the key, or null if the results must not be cached
+   */
+  private FunctionResultCache.Key getResultKey(final CalculationJobItem jobItem, final String functionUniqueId, final FunctionInvoker invoker, final Set<ComputedValue> inputs,
+      final Set<ValueSpecification> missing) {
+    if ((getFunctionResultCache() == null) || !(invoker instanceof CacheableFunctionInvoker)) {
+      return null;
+    }
+    final CacheableFunctionInvoker cacheable = (CacheableFunctionInvoker) invoker;
+    return new FunctionResultCache.Key(cacheable, functionUniqueId, jobItem.getFunctionParameters(), jobItem.getComputationTargetSpecification(),
+        cacheable.getExecutionContextKey(getFunctionExecutionContext()), jobItem.getOutputs(), inputs, new HashSet<ValueSpecification>(missing));
+  }
+
   private CalculationJobResultItem invoke(final CalculationJobItem jobItem, final DeferredInvocationStatistics statistics) throws AsynchronousExecution {
     final String functionUniqueId = jobItem.getFunctionUniqueIdentifier();
     Future<ComputationTarget> targetFuture = null;
     ComputationTarget target = null;
-    if (isUseAsynchronousTargetResolve()) {
-      targetFuture = getExecutorService().submit(new Callable<ComputationTarget>() {
-        @Override
-        public ComputationTarget call() {
-          return getTargetResolver().resolve(jobItem.getComputationTargetSpecification());
+    if (getTargetPrefetchCache() != null) {
+      target = getTargetPrefetchCache().get(getJob().getSpecification().getViewCycleId(), jobItem.getComputationTargetSpecification());
+    }
+    if (target == null) {
+      if (isUseAsynchronousTargetResolve()) {
+        targetFuture = getExecutorService().submit(new Callable<ComputationTarget>() {
+          @Override
+          public ComputationTarget call() {
+            return getTargetResolver().resolve(jobItem.getComputationTargetSpecification());
+          }
+        });
+      } else {
+        target = LazyComputationTargetResolver.resolve(getTargetResolver(), jobItem.getComputationTargetSpecification());
+        if (target == null) {
+          return CalculationJobResultItem.failure(ERROR_CANT_RESOLVE, "Unable to resolve target " + jobItem.getComputationTargetSpecification());
         }
-      });
-    } else {
-      target = LazyComputationTargetResolver.resolve(getTargetResolver(), jobItem.getComputationTargetSpecification());
-      if (target == null) {
-        return CalculationJobResultItem.failure(ERROR_CANT_RESOLVE, "Unable to resolve target " + jobItem.getComputationTargetSpecification());
       }
     }
     final FunctionInvoker invoker = getFunctions().getInvoker(functionUniqueId);
@@ -487,11 +704,13 @@ public class SimpleCalculationNode extends SimpleCalculationNodeState implements
     // set parameters
     getFunctionExecutionContext().setFunctionParameters(jobItem.getFunctionParameters());
     // assemble inputs
-    final Collection<ComputedValue> inputs = new HashSet<ComputedValue>();
+    final Set<ComputedValue> inputs = new HashSet<ComputedValue>();
     final Set<ValueSpecification> missing = new HashSet<ValueSpecification>();
     int inputBytes = 0;
     int inputSamples = 0;
     final DeferredViewComputationCache cache = getCache();
+    final ExecutionTrace trace = getTrace();
+    final long fetchStart = (trace != null) ? System.nanoTime() : 0;
     for (Pair<ValueSpecification, Object> input : cache.getValues(jobItem.getInputs(), getJob().getCacheSelectHint())) {
       if ((input.getValue() == null) || (input.getValue() instanceof MissingInput)) {
         missing.add(input.getKey());
@@ -506,6 +725,9 @@ public class SimpleCalculationNode extends SimpleCalculationNodeState implements
       }
     }
     statistics.setDataInputBytes(inputBytes, inputSamples);
+    if (trace != null) {
+      trace.record(ExecutionTrace.INPUT_FETCH, null, fetchStart, System.nanoTime());
+    }
     final CalculationJobResultItem itemResult;
     if (missing.isEmpty()) {
       itemResult = CalculationJobResultItem.success();
@@ -528,6 +750,24 @@ public class SimpleCalculationNode extends SimpleCalculationNodeState implements
         return CalculationJobResultItem.missingInputs(missing);
       }
     }
+    final Set<ValueSpecification> outputs = jobItem.getOutputs();
+    final FunctionResultCache.Key resultKey = getResultKey(jobItem, functionUniqueId, invoker, inputs, missing);
+    if (resultKey != null) {
+      final Collection<ComputedValue> results = getFunctionResultCache().get(resultKey);
+      if (results != null) {
+        s_logger.debug("Using cached results of {} for {}", functionUniqueId, jobItem.getComputationTargetSpecification());
+        if (targetFuture != null) {
+          // Cancelling doesn't do anything so we have to block and clear the result
+          try {
+            targetFuture.get();
+          } catch (Throwable t) {
+            s_logger.warn("Error resolving target", t);
+          }
+        }
+        // The statistics gatherer is only told about actual invocations
+        return storeResults(null, missing, outputs, results, itemResult);
+      }
+    }
     final FunctionInputs functionInputs = new FunctionInputsImpl(inputs, missing);
     if (target == null) {
       try {
@@ -542,16 +782,23 @@ public class SimpleCalculationNode extends SimpleCalculationNodeState implements
     }
     // execute
     statistics.beginInvocation(functionUniqueId);
-    final Set<ValueSpecification> outputs = jobItem.getOutputs();
+    final long invokeStart = (trace != null) ? System.nanoTime() : 0;
     try {
-      return invokeResult(invoker, statistics, missing, outputs, invoker.execute(getFunctionExecutionContext(), functionInputs, target, plat2290(outputs)), itemResult);
+      final Set<ComputedValue> results = invoker.execute(getFunctionExecutionContext(), functionInputs, target, plat2290(outputs));
+      if (trace != null) {
+        trace.record(ExecutionTrace.INVOKE, functionUniqueId, invokeStart, System.nanoTime());
+      }
+      return invokeResult(invoker, statistics, missing, outputs, results, itemResult, resultKey);
     } catch (AsynchronousExecution e) {
       final AsynchronousOperation<CalculationJobResultItem> async = new AsynchronousOperation<CalculationJobResultItem>();
       e.setResultListener(new ResultListener<Set<ComputedValue>>() {
         @Override
         public void operationComplete(final AsynchronousResult<Set<ComputedValue>> result) {
+          if (trace != null) {
+            trace.record(ExecutionTrace.INVOKE, functionUniqueId, invokeStart, System.nanoTime());
+          }
           try {
-            async.getCallback().setResult(invokeResult(invoker, statistics, missing, outputs, result.getResult(), itemResult));
+            async.getCallback().setResult(invokeResult(invoker, statistics, missing, outputs, result.getResult(), itemResult, resultKey));
           } catch (FunctionBlacklistedException e) {
             async.getCallback().setResult(invocationBlacklisted(jobItem));
           } catch (RuntimeException e) {
@@ -15,6 +15,7 @@ import com.opengamma.engine.function.FunctionExecutionContext;
 import com.opengamma.engine.function.blacklist.FunctionBlacklistMaintainer;
 import com.opengamma.engine.function.blacklist.FunctionBlacklistQuery;
 import com.opengamma.engine.view.cache.ViewComputationCacheSource;
+import com.opengamma.engine.view.calc.ExecutionTraceRecorder;
 import com.opengamma.engine.view.calcnode.stats.DiscardingInvocationStatisticsGatherer;
 import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatisticsGatherer;
 import com.opengamma.util.ArgumentChecker;
@@ -38,6 +39,9 @@ public class SimpleCalculationNodeFactory implements InitializingBean {
   private FunctionBlacklistQuery _blacklistQuery;
   private FunctionBlacklistMaintainer _blacklistUpdate;
   private MaximumJobItemExecutionWatchdog _maxJobItemExecution;
+  private FunctionResultCache _functionResultCache;
+  private TargetPrefetchCache _targetPrefetchCache;
+  private ExecutionTraceRecorder _traceRecorder;
 
   private int _uid;
 
@@ -159,6 +163,30 @@ public class SimpleCalculationNodeFactory implements InitializingBean {
     return _maxJobItemExecution;
   }
 
+  public void setFunctionResultCache(final FunctionResultCache functionResultCache) {
+    _functionResultCache = functionResultCache;
+  }
+
+  public FunctionResultCache getFunctionResultCache() {
+    return _functionResultCache;
+  }
+
+  public void setTargetPrefetchCache(final TargetPrefetchCache targetPrefetchCache) {
+    _targetPrefetchCache = targetPrefetchCache;
+  }
+
+  public TargetPrefetchCache getTargetPrefetchCache() {
+    return _targetPrefetchCache;
+  }
+
+  public void setTraceRecorder(final ExecutionTraceRecorder traceRecorder) {
+    _traceRecorder = traceRecorder;
+  }
+
+  public ExecutionTraceRecorder getTraceRecorder() {
+    return _traceRecorder;
+  }
+
   public synchronized SimpleCalculationNode createNode() {
     final String identifier;
     if (getNodeIdentifier() != null) {
@@ -180,6 +208,9 @@ public class SimpleCalculationNodeFactory implements InitializingBean {
     if (getMaxJobItemExecution() != null) {
       node.setMaxJobItemExecution(getMaxJobItemExecution());
     }
+    node.setFunctionResultCache(getFunctionResultCache());
+    node.setTargetPrefetchCache(getTargetPrefetchCache());
+    node.setTraceRecorder(getTraceRecorder());
     return node;
   }
 
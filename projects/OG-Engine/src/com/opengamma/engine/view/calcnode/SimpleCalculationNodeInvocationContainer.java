@@ -252,8 +252,15 @@ public abstract class SimpleCalculationNodeInvocationContainer {
    */
   private final Queue<PartialJobEntry> _partialJobs = new ConcurrentLinkedQueue<PartialJobEntry>();
 
+  /**
+   * The jobs that are currently executing and have items that idle nodes may steal. Only used if work stealing is enabled.
+   */
+  private final Queue<StealableJobItems> _stealableJobs = new ConcurrentLinkedQueue<StealableJobItems>();
+
   private final ExecutorService _executorService = Executors.newCachedThreadPool();
 
+  private volatile boolean _workStealing;
+
   protected Queue<SimpleCalculationNode> getNodes() {
     return _nodes;
   }
@@ -348,6 +355,31 @@ public abstract class SimpleCalculationNodeInvocationContainer {
     return _partialJobs.size();
   }
 
+  /**
+   * Tests whether there are jobs enqueued at this node that are available to start or continue. This is cheaper than testing the
+   * counts from {@link #getRunnableJobCount} and {@link #getPartialJobCount}.
+   *
+   * @return true if there are runnable or partial jobs waiting for a node
+   */
+  protected boolean hasRunnableJobs() {
+    return !_runnableJobs.isEmpty() || !_partialJobs.isEmpty();
+  }
+
+  /**
+   * Sets whether nodes that have no jobs of their own to run should steal items from jobs running on other nodes. An item is only
+   * stolen once any of its inputs produced earlier in the same job are in the cache. This can help when a job contains a few long
+   * running items, which would otherwise delay the rest of that job while other nodes are idle.
+   * 
+   * @param workStealing true to enable work stealing, false to run each job entirely on the node it was started on
+   */
+  public void setWorkStealing(final boolean workStealing) {
+    _workStealing = workStealing;
+  }
+
+  public boolean isWorkStealing() {
+    return _workStealing;
+  }
+
   protected abstract void onNodeChange();
 
   protected void onJobExecutionComplete() {
@@ -420,6 +452,101 @@ public abstract class SimpleCalculationNodeInvocationContainer {
     });
   }
 
+  /**
+   * Executes a job on a node, allowing idle nodes to steal items from it if work stealing is enabled.
+   */
+  private CalculationJobResult executeJob(final SimpleCalculationNode node, final CalculationJob job) throws AsynchronousHandleExecution, AsynchronousExecution {
+    if (!isWorkStealing() || (job.getJobItems().size() < 2)) {
+      return node.executeJob(job);
+    }
+    final StealableJobItems jobItems = new StealableJobItems(job) {
+
+      @Override
+      protected void onStealable() {
+        _stealableJobs.add(this);
+        spawnStealers(size() - 1);
+      }
+
+      @Override
+      protected void onFinished() {
+        _stealableJobs.remove(this);
+      }
+
+    };
+    try {
+      return node.executeJob(job, jobItems);
+    } catch (RuntimeException e) {
+      jobItems.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Starts idle nodes stealing work from the running jobs.
+   */
+  private void spawnStealers(int count) {
+    while (count-- > 0) {
+      final SimpleCalculationNode node = getNodes().poll();
+      if (node == null) {
+        return;
+      }
+      s_logger.debug("Spawning work stealing on {}", node.getNodeId());
+      getExecutorService().execute(new Runnable() {
+        @Override
+        public void run() {
+          stealJobItems(node);
+        }
+      });
+    }
+  }
+
+  /**
+   * Executes a single item stolen from one of the running jobs.
+   * 
+   * @param node the node to execute on
+   * @return true if an item was executed, false if there was nothing to steal
+   */
+  private boolean stealJobItem(final SimpleCalculationNode node) {
+    for (StealableJobItems jobItems : _stealableJobs) {
+      if (!jobItems.isExhausted() && node.executeStolenJobItem(jobItems)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Steals items from running jobs until there are none left or a job is queued for execution. The node then executes any queued jobs
+   * or is returned to the available set.
+   */
+  private void stealJobItems(final SimpleCalculationNode node) {
+    while (_partialJobs.isEmpty() && _runnableJobs.isEmpty() && stealJobItem(node)) {
+      // Keep stealing
+    }
+    PartialJobEntry resumeJob = _partialJobs.poll();
+    JobEntry job = null;
+    if (resumeJob == null) {
+      job = _runnableJobs.poll();
+      if (job == null) {
+        synchronized (this) {
+          resumeJob = _partialJobs.poll();
+          if (resumeJob == null) {
+            job = _runnableJobs.poll();
+            if (job == null) {
+              getNodes().add(node);
+            }
+          }
+        }
+        if ((resumeJob == null) && (job == null)) {
+          s_logger.debug("Finished work stealing on {}", node.getNodeId());
+          onJobExecutionComplete();
+          return;
+        }
+      }
+    }
+    executeJobs(node, job, resumeJob);
+  }
+
   private void failExecution(final JobExecution execution) {
     final Set<JobEntry> blocked;
     synchronized (execution) {
@@ -585,7 +712,7 @@ public abstract class SimpleCalculationNodeInvocationContainer {
       if (job.getExecution().threadBusy(job.getJob())) {
         try {
           if (resumeJob == null) {
-            result = node.executeJob(job.getJob());
+            result = executeJob(node, job.getJob());
           } else {
             node.restoreState(resumeJob.getNodeState());
             result = resumeJob.getHandle().getResult().get();
@@ -644,6 +771,12 @@ public abstract class SimpleCalculationNodeInvocationContainer {
         job.getReceiver().executionComplete(result);
         _executions.remove(job.getExecution().getJobId());
       }
+      if (isWorkStealing()) {
+        // Help any other jobs that are running until there is something of our own to do
+        while (_partialJobs.isEmpty() && _runnableJobs.isEmpty() && stealJobItem(node)) {
+          // Keep stealing
+        }
+      }
       resumeJob = _partialJobs.poll();
       if (resumeJob == null) {
         job = _runnableJobs.poll();
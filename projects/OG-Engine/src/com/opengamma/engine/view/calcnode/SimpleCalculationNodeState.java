@@ -8,6 +8,7 @@ package com.opengamma.engine.view.calcnode;
 import com.opengamma.engine.function.CompiledFunctionRepository;
 import com.opengamma.engine.function.FunctionExecutionContext;
 import com.opengamma.engine.view.cache.DeferredViewComputationCache;
+import com.opengamma.engine.view.calc.ExecutionTrace;
 
 /**
  * The per-thread state for a calculation node.
@@ -20,6 +21,7 @@ import com.opengamma.engine.view.cache.DeferredViewComputationCache;
   private DeferredViewComputationCache _cache;
   private String _calculationConfiguration;
   private long _executionTime;
+  private ExecutionTrace _trace;
 
   private SimpleCalculationNodeState(final SimpleCalculationNodeState copyFrom) {
     restoreState(copyFrom);
@@ -42,6 +44,7 @@ import com.opengamma.engine.view.cache.DeferredViewComputationCache;
     setCache(state.getCache());
     setConfiguration(state.getConfiguration());
     setExecutionStartTime(state.getExecutionStartTime());
+    setTrace(state.getTrace());
   }
 
   protected void setFunctionExecutionContext(FunctionExecutionContext functionExecutionContext) {
@@ -92,4 +95,12 @@ import com.opengamma.engine.view.cache.DeferredViewComputationCache;
     _executionTime = executionTime;
   }
 
+  protected ExecutionTrace getTrace() {
+    return _trace;
+  }
+
+  protected void setTrace(final ExecutionTrace trace) {
+    _trace = trace;
+  }
+
 }
@@ -140,6 +140,7 @@ import com.opengamma.util.tuple.Triple;
     s_logger.debug("Rewriting {} to {}", hint, newHint);
     // Construct the rewritten job
     final CalculationJob newJob = new CalculationJob(job.getSpecification(), job.getFunctionInitializationIdentifier(), job.getRequiredJobIds(), job.getJobItems(), newHint);
+    newJob.setPredecessorJobIds(job.getPredecessorJobIds());
     if (newTail != null) {
       for (CalculationJob tail : newTail) {
         newJob.addTail(tail);
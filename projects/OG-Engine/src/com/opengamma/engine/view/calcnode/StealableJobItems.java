@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.opengamma.engine.function.CompiledFunctionRepository;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.cache.DeferredViewComputationCache;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * The items of a job that is executing on one node but whose remaining items may be taken by idle nodes.
+ * <p>
+ * The owning node takes items from the front of the job in execution order. Other nodes steal from the back. An item may only
+ * be taken once all items earlier in the job that produce its inputs have completed, so that the inputs are in the cache. The
+ * results are held in the original item order for the job result.
+ */
+/* package */class StealableJobItems {
+
+  private static final byte PENDING = 0;
+  private static final byte RUNNING = 1;
+  private static final byte DONE = 2;
+
+  private static final int[] NO_INPUTS = new int[0];
+
+  private final CalculationJob _job;
+  private final List<CalculationJobItem> _items;
+  private final int[][] _localInputs;
+  private final byte[] _state;
+  private final CalculationJobResultItem[] _results;
+  private CompiledFunctionRepository _functions;
+  private DeferredViewComputationCache _cache;
+  private int _firstPending;
+  private int _pending;
+  private int _running;
+  private boolean _stealable;
+  private boolean _closed;
+
+  public StealableJobItems(final CalculationJob job) {
+    ArgumentChecker.notNull(job, "job");
+    _job = job;
+    _items = new ArrayList<CalculationJobItem>(job.getJobItems());
+    final int count = _items.size();
+    _localInputs = new int[count][];
+    _state = new byte[count];
+    _results = new CalculationJobResultItem[count];
+    _pending = count;
+    final Map<ValueSpecification, Integer> producers = new HashMap<ValueSpecification, Integer>();
+    for (int i = 0; i < count; i++) {
+      final CalculationJobItem item = _items.get(i);
+      int[] inputs = NO_INPUTS;
+      int inputCount = 0;
+      for (ValueSpecification input : item.getInputs()) {
+        final Integer producer = producers.get(input);
+        if (producer != null) {
+          if (inputCount == inputs.length) {
+            inputs = Arrays.copyOf(inputs, Math.max(4, inputCount * 2));
+          }
+          inputs[inputCount++] = producer;
+        }
+      }
+      _localInputs[i] = (inputCount == inputs.length) ? inputs : Arrays.copyOf(inputs, inputCount);
+      for (ValueSpecification output : item.getOutputs()) {
+        producers.put(output, i);
+      }
+    }
+  }
+
+  public CalculationJob getJob() {
+    return _job;
+  }
+
+  public CalculationJobItem getItem(final int index) {
+    return _items.get(index);
+  }
+
+  public int size() {
+    return _items.size();
+  }
+
+  /**
+   * Sets the execution state the owning node is using so that other nodes execute the items against the same cache and function
+   * repository.
+   *
+   * @param functions the function repository
+   * @param cache the deferred cache
+   */
+  public void setExecutionState(final CompiledFunctionRepository functions, final DeferredViewComputationCache cache) {
+    synchronized (this) {
+      _functions = functions;
+      _cache = cache;
+      _stealable = true;
+    }
+    onStealable();
+  }
+
+  /**
+   * Called when items can first be stolen from the job. The default implementation does nothing.
+   */
+  protected void onStealable() {
+  }
+
+  /**
+   * Called when the owning node has finished with the job, successfully or not. The default implementation does nothing.
+   */
+  protected void onFinished() {
+  }
+
+  public synchronized CompiledFunctionRepository getFunctions() {
+    return _functions;
+  }
+
+  public synchronized DeferredViewComputationCache getCache() {
+    return _cache;
+  }
+
+  // Caller must own the monitor
+  private boolean isRunnable(final int index) {
+    if (_state[index] != PENDING) {
+      return false;
+    }
+    for (int input : _localInputs[index]) {
+      if (_state[input] != DONE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Takes the next item for the owning node, blocking if the only pending items depend on items stolen by other nodes that have not
+   * yet completed.
+   *
+   * @return the index of the item, or -1 if there are no more items
+   */
+  public synchronized int take() {
+    while (_pending > 0) {
+      if (_closed) {
+        return -1;
+      }
+      while (_state[_firstPending] != PENDING) {
+        _firstPending++;
+      }
+      for (int i = _firstPending; i < _state.length; i++) {
+        if (isRunnable(i)) {
+          _state[i] = RUNNING;
+          _pending--;
+          return i;
+        }
+      }
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Takes an item for another node to execute. Items are stolen from the back of the job, and the last pending item is always left
+   * for the owner so that it is never left waiting on a stolen item that it could have executed itself.
+   *
+   * @return the index of the item, or -1 if there is nothing that can be stolen
+   */
+  public synchronized int steal() {
+    if (_closed || !_stealable || (_pending < 2) || _job.isCancelled()) {
+      return -1;
+    }
+    for (int i = _state.length - 1; i > _firstPending; i--) {
+      if (isRunnable(i)) {
+        _state[i] = RUNNING;
+        _pending--;
+        _running++;
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Records the result of an item taken by {@link #take}.
+   *
+   * @param index the item index
+   * @param result the result
+   */
+  public synchronized void complete(final int index, final CalculationJobResultItem result) {
+    _state[index] = DONE;
+    _results[index] = result;
+    notifyAll();
+  }
+
+  /**
+   * Records the result of an item taken by {@link #steal}.
+   *
+   * @param index the item index
+   * @param result the result
+   */
+  public synchronized void completeStolen(final int index, final CalculationJobResultItem result) {
+    _running--;
+    complete(index, result);
+  }
+
+  /**
+   * Waits for any stolen items to complete and returns the results in job order.
+   *
+   * @return the results, or null if the queue was closed or the thread interrupted before all items completed
+   */
+  public List<CalculationJobResultItem> getResults() {
+    try {
+      synchronized (this) {
+        while (_running > 0) {
+          wait();
+        }
+        if (_closed || (_pending > 0)) {
+          return null;
+        }
+        return new ArrayList<CalculationJobResultItem>(Arrays.asList(_results));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } finally {
+      onFinished();
+    }
+  }
+
+  /**
+   * Stops any further items being taken, for example because the job has failed or been cancelled.
+   */
+  public void close() {
+    synchronized (this) {
+      _closed = true;
+      notifyAll();
+    }
+    onFinished();
+  }
+
+  /**
+   * Tests whether there is anything left for another node to steal.
+   *
+   * @return true if no more items can be stolen
+   */
+  public synchronized boolean isExhausted() {
+    return _closed || (_pending == 0) || _job.isCancelled();
+  }
+
+  @Override
+  public String toString() {
+    return "StealableJobItems[" + _job.getSpecification().getJobId() + "]";
+  }
+
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.opengamma.core.security.Security;
+import com.opengamma.core.security.SecuritySource;
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetResolver;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.id.UniqueId;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.tuple.Pair;
+
+/**
+ * Holds resolved computation targets for calculation nodes, populated ahead of execution from all of the target
+ * specifications in a job. Securities are fetched with a single bulk request to the security source; positions, trades
+ * and portfolio nodes, for which the position source has no bulk operation, are resolved concurrently. Job items can then
+ * take their targets from the cache instead of making a source lookup each. A single instance may be shared by all of the
+ * nodes in a process.
+ * <p>
+ * The cache is bounded, discarding the least recently used targets when full. A target whose identifier is versioned is
+ * immutable and is held until discarded. A target resolved from an unversioned identifier is the latest version at the
+ * time it was resolved, so it is only used for jobs from the view cycle that fetched it; later cycles, which may be
+ * running at a different version-correction, fetch it again.
+ */
+public class TargetPrefetchCache {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(TargetPrefetchCache.class);
+
+  /**
+   * The default maximum number of targets held.
+   */
+  public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+  private static final class Entry {
+
+    private final ComputationTarget _target;
+    /**
+     * The view cycle the target is valid for, or null if it is valid for all cycles.
+     */
+    private final UniqueId _viewCycleId;
+
+    private Entry(final ComputationTarget target, final UniqueId viewCycleId) {
+      _target = target;
+      _viewCycleId = viewCycleId;
+    }
+
+  }
+
+  private final Cache<ComputationTargetSpecification, Entry> _targets;
+  private final AtomicLong _hits = new AtomicLong();
+  private final AtomicLong _misses = new AtomicLong();
+
+  public TargetPrefetchCache() {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  public TargetPrefetchCache(final int maximumSize) {
+    ArgumentChecker.notNegativeOrZero(maximumSize, "maximumSize");
+    _targets = CacheBuilder.newBuilder().maximumSize(maximumSize).<ComputationTargetSpecification, Entry>build();
+  }
+
+  private ComputationTarget getImpl(final UniqueId viewCycleId, final ComputationTargetSpecification specification) {
+    final Entry entry = _targets.getIfPresent(specification);
+    if (entry == null) {
+      return null;
+    }
+    if ((entry._viewCycleId != null) && !entry._viewCycleId.equals(viewCycleId)) {
+      return null;
+    }
+    return entry._target;
+  }
+
+  private void put(final UniqueId viewCycleId, final ComputationTargetSpecification specification, final ComputationTarget target) {
+    _targets.put(specification, new Entry(target, specification.getUniqueId().isVersioned() ? null : viewCycleId));
+  }
+
+  /**
+   * Returns a target fetched for the current or an earlier job.
+   *
+   * @param viewCycleId the view cycle of the job requiring the target, not null
+   * @param specification the target specification, not null
+   * @return the target, or null if it must be resolved
+   */
+  public ComputationTarget get(final UniqueId viewCycleId, final ComputationTargetSpecification specification) {
+    final ComputationTarget target = getImpl(viewCycleId, specification);
+    if (target != null) {
+      _hits.incrementAndGet();
+    } else {
+      _misses.incrementAndGet();
+    }
+    return target;
+  }
+
+  /**
+   * Resolves any of the targets of a job that are not already held. This blocks until the lookups have completed so should
+   * be called before the job's items are executed.
+   *
+   * @param job the job about to be executed, not null
+   * @param resolver the resolver the node uses, not null
+   * @param executorService the executor for resolving targets concurrently, or null to only fetch securities
+   */
+  public void prefetch(final CalculationJob job, final ComputationTargetResolver resolver, final ExecutorService executorService) {
+    final UniqueId viewCycleId = job.getSpecification().getViewCycleId();
+    final Map<UniqueId, ComputationTargetSpecification> securities = new HashMap<UniqueId, ComputationTargetSpecification>();
+    final Set<ComputationTargetSpecification> others = new HashSet<ComputationTargetSpecification>();
+    for (CalculationJobItem jobItem : job.getJobItems()) {
+      final ComputationTargetSpecification specification = jobItem.getComputationTargetSpecification();
+      if (getImpl(viewCycleId, specification) != null) {
+        continue;
+      }
+      switch (specification.getType()) {
+        case PRIMITIVE:
+          // Nothing to look up
+          break;
+        case SECURITY:
+          securities.put(specification.getUniqueId(), specification);
+          break;
+        default:
+          others.add(specification);
+          break;
+      }
+    }
+    if (!securities.isEmpty()) {
+      prefetchSecurities(viewCycleId, securities, resolver);
+    }
+    if (!others.isEmpty() && (executorService != null)) {
+      prefetchTargets(viewCycleId, others, resolver, executorService);
+    }
+  }
+
+  private void prefetchSecurities(final UniqueId viewCycleId, final Map<UniqueId, ComputationTargetSpecification> securities, final ComputationTargetResolver resolver) {
+    final SecuritySource securitySource = resolver.getSecuritySource();
+    if (securitySource == null) {
+      return;
+    }
+    s_logger.debug("Fetching {} securities", securities.size());
+    final Map<UniqueId, Security> found;
+    try {
+      found = securitySource.getSecurities(securities.keySet());
+    } catch (RuntimeException e) {
+      s_logger.warn("Couldn't fetch {} securities: {}", securities.size(), e.getMessage());
+      return;
+    }
+    for (Map.Entry<UniqueId, Security> security : found.entrySet()) {
+      final ComputationTargetSpecification specification = securities.get(security.getKey());
+      if ((specification != null) && (security.getValue() != null)) {
+        put(viewCycleId, specification, new ComputationTarget(ComputationTargetType.SECURITY, security.getValue()));
+      }
+    }
+  }
+
+  private void prefetchTargets(final UniqueId viewCycleId, final Collection<ComputationTargetSpecification> specifications, final ComputationTargetResolver resolver,
+      final ExecutorService executorService) {
+    s_logger.debug("Resolving {} targets", specifications.size());
+    final List<Pair<ComputationTargetSpecification, Future<ComputationTarget>>> futures = new ArrayList<Pair<ComputationTargetSpecification, Future<ComputationTarget>>>(specifications.size());
+    for (final ComputationTargetSpecification specification : specifications) {
+      futures.add(Pair.of(specification, executorService.submit(new Callable<ComputationTarget>() {
+        @Override
+        public ComputationTarget call() {
+          return resolver.resolve(specification);
+        }
+      })));
+    }
+    for (Pair<ComputationTargetSpecification, Future<ComputationTarget>> future : futures) {
+      try {
+        final ComputationTarget target = future.getSecond().get();
+        if (target != null) {
+          put(viewCycleId, future.getFirst(), target);
+        }
+      } catch (ExecutionException e) {
+        // The job item will report the failure when it resolves the target itself
+        s_logger.debug("Couldn't resolve {}: {}", future.getFirst(), e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Discards all of the held targets. The statistics are kept.
+   */
+  public void clear() {
+    _targets.invalidateAll();
+  }
+
+  /**
+   * Returns the number of targets held.
+   *
+   * @return the number of targets
+   */
+  public long getSize() {
+    return _targets.size();
+  }
+
+  /**
+   * Returns the number of job items that took their target from the cache.
+   *
+   * @return the number of hits
+   */
+  public long getHits() {
+    return _hits.get();
+  }
+
+  /**
+   * Returns the number of job items that had to resolve their own target.
+   *
+   * @return the number of misses
+   */
+  public long getMisses() {
+    return _misses.get();
+  }
+
+}
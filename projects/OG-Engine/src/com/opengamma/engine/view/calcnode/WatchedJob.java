@@ -259,7 +259,7 @@ import com.opengamma.engine.view.calc.JobIdSource;
   }
 
   public boolean runOn(final JobInvoker jobInvoker) {
-    return jobInvoker.invoke(getJob(), this);
+    return launch(jobInvoker);
   }
 
 }
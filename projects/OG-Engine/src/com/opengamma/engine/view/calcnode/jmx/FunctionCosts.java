@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode.jmx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
+import com.opengamma.util.tuple.Pair;
+
+/**
+ * JMX exposure of function costs. Invocation times are in nanoseconds, normalized to the reference node.
+ */
+public class FunctionCosts implements FunctionCostsMBean {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(FunctionCosts.class);
+
+  private final com.opengamma.engine.view.calcnode.stats.FunctionCosts _functionCosts;
+
+  protected FunctionCosts(final com.opengamma.engine.view.calcnode.stats.FunctionCosts functionCosts) {
+    _functionCosts = functionCosts;
+  }
+
+  protected com.opengamma.engine.view.calcnode.stats.FunctionCosts getFunctionCosts() {
+    return _functionCosts;
+  }
+
+  protected void registerMBean(final MBeanServer server) throws JMException {
+    final ObjectName name = new ObjectName("com.opengamma:type=FunctionCosts,name=" + getFunctionCosts().toString());
+    try {
+      server.registerMBean(this, name);
+    } catch (InstanceAlreadyExistsException e) {
+      s_logger.warn("JMX MBean {} already exists - replacing", name);
+      server.unregisterMBean(name);
+      server.registerMBean(this, name);
+    }
+  }
+
+  public static void registerMBeans(final com.opengamma.engine.view.calcnode.stats.FunctionCosts functionCosts, final MBeanServer server) throws JMException {
+    new FunctionCosts(functionCosts).registerMBean(server);
+  }
+
+  /**
+   * Finds the statistics for a function without creating an entry for one that has never been invoked.
+   * 
+   * @param configurationName the configuration name
+   * @param functionId the function identifier
+   * @return the statistics or null if there are none
+   */
+  protected FunctionInvocationStatistics findStatistics(final String configurationName, final String functionId) {
+    if (!getFunctionCosts().getConfigurationNames().contains(configurationName)) {
+      return null;
+    }
+    for (FunctionInvocationStatistics statistics : getFunctionCosts().getStatistics(configurationName).getAllStatistics()) {
+      if (statistics.getFunctionId().equals(functionId)) {
+        return statistics;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void setInvocationCostPercentile(final double invocationCostPercentile) {
+    getFunctionCosts().setInvocationCostPercentile(invocationCostPercentile);
+  }
+
+  @Override
+  public double getInvocationCostPercentile() {
+    return getFunctionCosts().getInvocationCostPercentile();
+  }
+
+  @Override
+  public String[] getConfigurationNames() {
+    final Set<String> names = getFunctionCosts().getConfigurationNames();
+    return names.toArray(new String[names.size()]);
+  }
+
+  @Override
+  public double getMeanInvocationTime(final String configurationName, final String functionId) {
+    final FunctionInvocationStatistics statistics = findStatistics(configurationName, functionId);
+    return (statistics != null) ? statistics.getInvocationCost() : Double.NaN;
+  }
+
+  @Override
+  public double getMedianInvocationTime(final String configurationName, final String functionId) {
+    final FunctionInvocationStatistics statistics = findStatistics(configurationName, functionId);
+    return (statistics != null) ? statistics.getInvocationTimePercentile(0.5) : Double.NaN;
+  }
+
+  @Override
+  public double get99thPercentileInvocationTime(final String configurationName, final String functionId) {
+    final FunctionInvocationStatistics statistics = findStatistics(configurationName, functionId);
+    return (statistics != null) ? statistics.getInvocationTimePercentile(0.99) : Double.NaN;
+  }
+
+  @Override
+  public double getMaxInvocationTime(final String configurationName, final String functionId) {
+    final FunctionInvocationStatistics statistics = findStatistics(configurationName, functionId);
+    return (statistics != null) ? statistics.getMaxInvocationTime() : Double.NaN;
+  }
+
+  @Override
+  public String[] getSlowestFunctions(final String configurationName, final int count) {
+    if (!getFunctionCosts().getConfigurationNames().contains(configurationName)) {
+      return new String[0];
+    }
+    final List<Pair<Double, FunctionInvocationStatistics>> functions = new ArrayList<Pair<Double, FunctionInvocationStatistics>>();
+    for (FunctionInvocationStatistics statistics : getFunctionCosts().getStatistics(configurationName).getAllStatistics()) {
+      final double p99 = statistics.getInvocationTimePercentile(0.99);
+      if (!Double.isNaN(p99)) {
+        functions.add(Pair.of(p99, statistics));
+      }
+    }
+    Collections.sort(functions, new Comparator<Pair<Double, FunctionInvocationStatistics>>() {
+      @Override
+      public int compare(final Pair<Double, FunctionInvocationStatistics> o1, final Pair<Double, FunctionInvocationStatistics> o2) {
+        return o2.getFirst().compareTo(o1.getFirst());
+      }
+    });
+    final String[] result = new String[Math.min(count, functions.size())];
+    for (int i = 0; i < result.length; i++) {
+      final FunctionInvocationStatistics statistics = functions.get(i).getSecond();
+      result[i] = statistics.getFunctionId() + ": p50=" + statistics.getInvocationTimePercentile(0.5) + "ns, p99=" + functions.get(i).getFirst() + "ns, max="
+          + statistics.getMaxInvocationTime() + "ns";
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode.jmx;
+
+/**
+ * JMX exposure of the function invocation costs and latency distributions.
+ */
+public interface FunctionCostsMBean {
+
+  void setInvocationCostPercentile(double invocationCostPercentile);
+
+  double getInvocationCostPercentile();
+
+  String[] getConfigurationNames();
+
+  double getMeanInvocationTime(String configurationName, String functionId);
+
+  double getMedianInvocationTime(String configurationName, String functionId);
+
+  double get99thPercentileInvocationTime(String configurationName, String functionId);
+
+  double getMaxInvocationTime(String configurationName, String functionId);
+
+  String[] getSlowestFunctions(String configurationName, int count);
+
+}
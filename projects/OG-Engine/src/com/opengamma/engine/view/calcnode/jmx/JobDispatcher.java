@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode.jmx;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.engine.view.calcnode.stats.JobDispatchStatistics;
+import com.opengamma.engine.view.calcnode.stats.TotallingNodeStatisticsGatherer;
+
+/**
+ * JMX exposure of a job dispatcher. Dispatch latency and affinity figures are only available when the dispatcher
+ * reports to a {@link TotallingNodeStatisticsGatherer}.
+ */
+public class JobDispatcher implements JobDispatcherMBean {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(JobDispatcher.class);
+
+  private final com.opengamma.engine.view.calcnode.JobDispatcher _dispatcher;
+
+  protected JobDispatcher(final com.opengamma.engine.view.calcnode.JobDispatcher dispatcher) {
+    _dispatcher = dispatcher;
+  }
+
+  protected com.opengamma.engine.view.calcnode.JobDispatcher getDispatcher() {
+    return _dispatcher;
+  }
+
+  protected JobDispatchStatistics getStatistics() {
+    if (getDispatcher().getStatisticsGatherer() instanceof TotallingNodeStatisticsGatherer) {
+      return ((TotallingNodeStatisticsGatherer) getDispatcher().getStatisticsGatherer()).getTotalDispatchStatistics();
+    } else {
+      return null;
+    }
+  }
+
+  protected void registerMBean(final MBeanServer server) throws JMException {
+    final ObjectName name = new ObjectName("com.opengamma:type=JobDispatcher,name=" + getDispatcher().toString());
+    try {
+      server.registerMBean(this, name);
+    } catch (InstanceAlreadyExistsException e) {
+      s_logger.warn("JMX MBean {} already exists - replacing", name);
+      server.unregisterMBean(name);
+      server.registerMBean(this, name);
+    }
+  }
+
+  public static void registerMBeans(final com.opengamma.engine.view.calcnode.JobDispatcher dispatcher, final MBeanServer server) throws JMException {
+    new JobDispatcher(dispatcher).registerMBean(server);
+  }
+
+  @Override
+  public int getInvokerCount() {
+    return getDispatcher().getInvokerCount();
+  }
+
+  @Override
+  public int getPendingJobCount() {
+    return getDispatcher().getPendingJobCount();
+  }
+
+  @Override
+  public int getOutstandingJobCount() {
+    return getDispatcher().getOutstandingJobCount();
+  }
+
+  @Override
+  public long getDispatchedJobCount() {
+    final JobDispatchStatistics statistics = getStatistics();
+    return (statistics != null) ? statistics.getDispatchedJobs() : 0;
+  }
+
+  /**
+   * Returns the average time from scheduling to acceptance by an invoker in milliseconds.
+   * 
+   * @return the average dispatch latency
+   */
+  @Override
+  public double getAverageDispatchLatency() {
+    final JobDispatchStatistics statistics = getStatistics();
+    return (statistics != null) ? statistics.getAverageDispatchTime() * 1e3 : 0;
+  }
+
+  /**
+   * Returns the longest time from scheduling to acceptance by an invoker in milliseconds.
+   * 
+   * @return the maximum dispatch latency
+   */
+  @Override
+  public double getMaxDispatchLatency() {
+    final JobDispatchStatistics statistics = getStatistics();
+    return (statistics != null) ? (double) statistics.getMaxDispatchTime() / 1e6 : 0;
+  }
+
+  @Override
+  public double getAffinityHitRate() {
+    final JobDispatchStatistics statistics = getStatistics();
+    return (statistics != null) ? statistics.getAffinityHitRate() : 0;
+  }
+
+  @Override
+  public String resetDispatchStatistics() {
+    final JobDispatchStatistics statistics = getStatistics();
+    if (statistics == null) {
+      return "No dispatch statistics gathered";
+    }
+    statistics.reset();
+    return "Dispatch statistics reset";
+  }
+
+}
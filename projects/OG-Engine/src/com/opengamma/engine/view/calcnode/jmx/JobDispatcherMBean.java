@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode.jmx;
+
+/**
+ * JMX exposure of the job dispatcher's scheduling state.
+ */
+public interface JobDispatcherMBean {
+
+  int getInvokerCount();
+
+  int getPendingJobCount();
+
+  int getOutstandingJobCount();
+
+  long getDispatchedJobCount();
+
+  double getAverageDispatchLatency();
+
+  double getMaxDispatchLatency();
+
+  double getAffinityHitRate();
+
+  String resetDispatchStatistics();
+
+}
@@ -0,0 +1,258 @@
+// Automatically created - do not modify
+///CLOVER:OFF
+// CSOFF: Generated File
+package com.opengamma.engine.view.calcnode.msg;
+public class ExecuteBatch extends com.opengamma.engine.view.calcnode.msg.RemoteCalcNodeMessage implements java.io.Serializable {
+  public void accept (RemoteCalcNodeMessageVisitor visitor) { visitor.visitExecuteBatchMessage (this); }
+  private static final long serialVersionUID = -4631658925063717941l;
+  private java.util.List<com.opengamma.engine.view.calcnode.CalculationJob> _job;
+  public static final String JOB_KEY = "job";
+  private java.util.List<Long> _identifier;
+  public static final String IDENTIFIER_KEY = "identifier";
+  private java.util.List<org.fudgemsg.FudgeMsg> _data;
+  public static final String DATA_KEY = "data";
+  public ExecuteBatch (java.util.Collection<? extends com.opengamma.engine.view.calcnode.CalculationJob> job) {
+    if (job == null) throw new NullPointerException ("'job' cannot be null");
+    else {
+      final java.util.List<com.opengamma.engine.view.calcnode.CalculationJob> fudge0 = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJob> (job);
+      if (job.size () == 0) throw new IllegalArgumentException ("'job' cannot be an empty list");
+      for (java.util.ListIterator<com.opengamma.engine.view.calcnode.CalculationJob> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        com.opengamma.engine.view.calcnode.CalculationJob fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'job' cannot be null");
+        fudge1.set (fudge2);
+      }
+      _job = fudge0;
+    }
+  }
+  protected ExecuteBatch (final org.fudgemsg.mapping.FudgeDeserializer deserializer, final org.fudgemsg.FudgeMsg fudgeMsg) {
+    super (deserializer, fudgeMsg);
+    java.util.List<org.fudgemsg.FudgeField> fudgeFields;
+    fudgeFields = fudgeMsg.getAllByName (JOB_KEY);
+    if (fudgeFields.size () == 0) throw new IllegalArgumentException ("Fudge message is not a ExecuteBatch - field 'job' is not present");
+    _job = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJob> (fudgeFields.size ());
+    for (org.fudgemsg.FudgeField fudge1 : fudgeFields) {
+      try {
+        final com.opengamma.engine.view.calcnode.CalculationJob fudge2;
+        fudge2 = deserializer.fieldValueToObject (com.opengamma.engine.view.calcnode.CalculationJob.class, fudge1);
+        _job.add (fudge2);
+      }
+      catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException ("Fudge message is not a ExecuteBatch - field 'job' is not CalculationJob message", e);
+      }
+    }
+    fudgeFields = fudgeMsg.getAllByName (IDENTIFIER_KEY);
+    if (fudgeFields.size () > 0)  {
+      final java.util.List<Long> fudge1;
+      fudge1 = new java.util.ArrayList<Long> (fudgeFields.size ());
+      for (org.fudgemsg.FudgeField fudge2 : fudgeFields) {
+        try {
+          fudge1.add (fudgeMsg.getFieldValue (Long.class, fudge2));
+        }
+        catch (IllegalArgumentException e) {
+          throw new IllegalArgumentException ("Fudge message is not a ExecuteBatch - field 'identifier' is not long", e);
+        }
+      }
+      setIdentifier (fudge1);
+    }
+    fudgeFields = fudgeMsg.getAllByName (DATA_KEY);
+    if (fudgeFields.size () > 0)  {
+      final java.util.List<org.fudgemsg.FudgeMsg> fudge1;
+      fudge1 = new java.util.ArrayList<org.fudgemsg.FudgeMsg> (fudgeFields.size ());
+      for (org.fudgemsg.FudgeField fudge2 : fudgeFields) {
+        try {
+          final org.fudgemsg.FudgeMsg fudge3;
+          fudge3 = fudgeMsg.getFieldValue (org.fudgemsg.FudgeMsg.class, fudge2);
+          fudge1.add (fudge3);
+        }
+        catch (IllegalArgumentException e) {
+          throw new IllegalArgumentException ("Fudge message is not a ExecuteBatch - field 'data' is not anonymous/unknown message", e);
+        }
+      }
+      setData (fudge1);
+    }
+  }
+  public ExecuteBatch (java.util.Collection<? extends com.opengamma.engine.view.calcnode.CalculationJob> job, java.util.Collection<? extends Long> identifier, java.util.Collection<? extends org.fudgemsg.FudgeMsg> data) {
+    if (job == null) throw new NullPointerException ("'job' cannot be null");
+    else {
+      final java.util.List<com.opengamma.engine.view.calcnode.CalculationJob> fudge0 = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJob> (job);
+      if (job.size () == 0) throw new IllegalArgumentException ("'job' cannot be an empty list");
+      for (java.util.ListIterator<com.opengamma.engine.view.calcnode.CalculationJob> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        com.opengamma.engine.view.calcnode.CalculationJob fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'job' cannot be null");
+        fudge1.set (fudge2);
+      }
+      _job = fudge0;
+    }
+    if (identifier == null) _identifier = null;
+    else {
+      final java.util.List<Long> fudge0 = new java.util.ArrayList<Long> (identifier);
+      for (java.util.ListIterator<Long> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        Long fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'identifier' cannot be null");
+      }
+      _identifier = fudge0;
+    }
+    if (data == null) _data = null;
+    else {
+      final java.util.List<org.fudgemsg.FudgeMsg> fudge0 = new java.util.ArrayList<org.fudgemsg.FudgeMsg> (data);
+      for (java.util.ListIterator<org.fudgemsg.FudgeMsg> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        org.fudgemsg.FudgeMsg fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'data' cannot be null");
+      }
+      _data = fudge0;
+    }
+  }
+  protected ExecuteBatch (final ExecuteBatch source) {
+    super (source);
+    if (source == null) throw new NullPointerException ("'source' must not be null");
+    if (source._job == null) _job = null;
+    else {
+      final java.util.List<com.opengamma.engine.view.calcnode.CalculationJob> fudge0 = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJob> (source._job);
+      for (java.util.ListIterator<com.opengamma.engine.view.calcnode.CalculationJob> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        com.opengamma.engine.view.calcnode.CalculationJob fudge2 = fudge1.next ();
+        fudge1.set (fudge2);
+      }
+      _job = fudge0;
+    }
+    if (source._identifier == null) _identifier = null;
+    else {
+      _identifier = new java.util.ArrayList<Long> (source._identifier);
+    }
+    if (source._data == null) _data = null;
+    else {
+      _data = new java.util.ArrayList<org.fudgemsg.FudgeMsg> (source._data);
+    }
+  }
+  public ExecuteBatch clone () {
+    return new ExecuteBatch (this);
+  }
+  public org.fudgemsg.FudgeMsg toFudgeMsg (final org.fudgemsg.mapping.FudgeSerializer serializer) {
+    if (serializer == null) throw new NullPointerException ("serializer must not be null");
+    final org.fudgemsg.MutableFudgeMsg msg = serializer.newMessage ();
+    toFudgeMsg (serializer, msg);
+    return msg;
+  }
+  public void toFudgeMsg (final org.fudgemsg.mapping.FudgeSerializer serializer, final org.fudgemsg.MutableFudgeMsg msg) {
+    super.toFudgeMsg (serializer, msg);
+    if (_job != null)  {
+      for (com.opengamma.engine.view.calcnode.CalculationJob fudge1 : _job) {
+        serializer.addToMessageWithClassHeaders (msg, JOB_KEY, null, fudge1, com.opengamma.engine.view.calcnode.CalculationJob.class);
+      }
+    }
+    if (_identifier != null)  {
+      for (Long fudge1 : _identifier) {
+        msg.add (IDENTIFIER_KEY, null, fudge1);
+      }
+    }
+    if (_data != null)  {
+      for (org.fudgemsg.FudgeMsg fudge1 : _data) {
+        msg.add (DATA_KEY, null, (fudge1 instanceof org.fudgemsg.MutableFudgeMsg) ? serializer.newMessage (fudge1) : fudge1);
+      }
+    }
+  }
+  public static ExecuteBatch fromFudgeMsg (final org.fudgemsg.mapping.FudgeDeserializer deserializer, final org.fudgemsg.FudgeMsg fudgeMsg) {
+    final java.util.List<org.fudgemsg.FudgeField> types = fudgeMsg.getAllByOrdinal (0);
+    for (org.fudgemsg.FudgeField field : types) {
+      final String className = (String)field.getValue ();
+      if ("com.opengamma.engine.view.calcnode.msg.ExecuteBatch".equals (className)) break;
+      try {
+        return (com.opengamma.engine.view.calcnode.msg.ExecuteBatch)Class.forName (className).getDeclaredMethod ("fromFudgeMsg", org.fudgemsg.mapping.FudgeDeserializer.class, org.fudgemsg.FudgeMsg.class).invoke (null, deserializer, fudgeMsg);
+      }
+      catch (Throwable t) {
+        // no-action
+      }
+    }
+    return new ExecuteBatch (deserializer, fudgeMsg);
+  }
+  public java.util.List<com.opengamma.engine.view.calcnode.CalculationJob> getJob () {
+    return java.util.Collections.unmodifiableList (_job);
+  }
+  public void setJob (com.opengamma.engine.view.calcnode.CalculationJob job) {
+    if (job == null) throw new NullPointerException ("'job' cannot be null");
+    else {
+      _job = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJob> (1);
+      addJob (job);
+    }
+  }
+  public void setJob (java.util.Collection<? extends com.opengamma.engine.view.calcnode.CalculationJob> job) {
+    if (job == null) throw new NullPointerException ("'job' cannot be null");
+    else {
+      final java.util.List<com.opengamma.engine.view.calcnode.CalculationJob> fudge0 = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJob> (job);
+      if (job.size () == 0) throw new IllegalArgumentException ("'job' cannot be an empty list");
+      for (java.util.ListIterator<com.opengamma.engine.view.calcnode.CalculationJob> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        com.opengamma.engine.view.calcnode.CalculationJob fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'job' cannot be null");
+        fudge1.set (fudge2);
+      }
+      _job = fudge0;
+    }
+  }
+  public void addJob (com.opengamma.engine.view.calcnode.CalculationJob job) {
+    if (job == null) throw new NullPointerException ("'job' cannot be null");
+    if (_job == null) _job = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJob> ();
+    _job.add (job);
+  }
+  public java.util.List<Long> getIdentifier () {
+    if (_identifier != null) {
+      return java.util.Collections.unmodifiableList (_identifier);
+    }
+    else return null;
+  }
+  public void setIdentifier (Long identifier) {
+    if (identifier == null) _identifier = null;
+    else {
+      _identifier = new java.util.ArrayList<Long> (1);
+      addIdentifier (identifier);
+    }
+  }
+  public void setIdentifier (java.util.Collection<? extends Long> identifier) {
+    if (identifier == null) _identifier = null;
+    else {
+      final java.util.List<Long> fudge0 = new java.util.ArrayList<Long> (identifier);
+      for (java.util.ListIterator<Long> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        Long fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'identifier' cannot be null");
+      }
+      _identifier = fudge0;
+    }
+  }
+  public void addIdentifier (Long identifier) {
+    if (identifier == null) throw new NullPointerException ("'identifier' cannot be null");
+    if (_identifier == null) _identifier = new java.util.ArrayList<Long> ();
+    _identifier.add (identifier);
+  }
+  public java.util.List<org.fudgemsg.FudgeMsg> getData () {
+    if (_data != null) {
+      return java.util.Collections.unmodifiableList (_data);
+    }
+    else return null;
+  }
+  public void setData (org.fudgemsg.FudgeMsg data) {
+    if (data == null) _data = null;
+    else {
+      _data = new java.util.ArrayList<org.fudgemsg.FudgeMsg> (1);
+      addData (data);
+    }
+  }
+  public void setData (java.util.Collection<? extends org.fudgemsg.FudgeMsg> data) {
+    if (data == null) _data = null;
+    else {
+      final java.util.List<org.fudgemsg.FudgeMsg> fudge0 = new java.util.ArrayList<org.fudgemsg.FudgeMsg> (data);
+      for (java.util.ListIterator<org.fudgemsg.FudgeMsg> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        org.fudgemsg.FudgeMsg fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'data' cannot be null");
+      }
+      _data = fudge0;
+    }
+  }
+  public void addData (org.fudgemsg.FudgeMsg data) {
+    if (data == null) throw new NullPointerException ("'data' cannot be null");
+    if (_data == null) _data = new java.util.ArrayList<org.fudgemsg.FudgeMsg> ();
+    _data.add (data);
+  }
+  public String toString () {
+    return org.apache.commons.lang.builder.ToStringBuilder.reflectionToString(this, org.apache.commons.lang.builder.ToStringStyle.SHORT_PREFIX_STYLE);
+  }
+}
+///CLOVER:ON
+// CSON: Generated File
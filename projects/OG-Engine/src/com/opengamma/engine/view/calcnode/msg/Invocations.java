@@ -8,7 +8,7 @@ public class Invocations extends com.opengamma.engine.view.calcnode.msg.RemoteCa
   public static class PerConfiguration implements java.io.Serializable {
     private static final long serialVersionUID = 55883427781428l;
     public static class PerFunction implements java.io.Serializable {
-      private static final long serialVersionUID = -2696372187157615071l;
+      private static final long serialVersionUID = -8669501539070633465l;
       private String _identifier;
       public static final String IDENTIFIER_KEY = "identifier";
       private int _count;
@@ -19,6 +19,8 @@ public class Invocations extends com.opengamma.engine.view.calcnode.msg.RemoteCa
       public static final String DATA_INPUT_KEY = "dataInput";
       private double _dataOutput;
       public static final String DATA_OUTPUT_KEY = "dataOutput";
+      private org.fudgemsg.FudgeMsg _latency;
+      public static final String LATENCY_KEY = "latency";
       public PerFunction (String identifier, int count, double invocation, double dataInput, double dataOutput) {
         if (identifier == null) throw new NullPointerException ("identifier' cannot be null");
         _identifier = identifier;
@@ -69,6 +71,26 @@ public class Invocations extends com.opengamma.engine.view.calcnode.msg.RemoteCa
         catch (IllegalArgumentException e) {
           throw new IllegalArgumentException ("Fudge message is not a PerFunction - field 'dataOutput' is not double", e);
         }
+        fudgeField = fudgeMsg.getByName (LATENCY_KEY);
+        if (fudgeField != null)  {
+          try {
+            final org.fudgemsg.FudgeMsg fudge1;
+            fudge1 = fudgeMsg.getFieldValue (org.fudgemsg.FudgeMsg.class, fudgeField);
+            setLatency (fudge1);
+          }
+          catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException ("Fudge message is not a PerFunction - field 'latency' is not anonymous/unknown message", e);
+          }
+        }
+      }
+      public PerFunction (String identifier, int count, double invocation, double dataInput, double dataOutput, org.fudgemsg.FudgeMsg latency) {
+        if (identifier == null) throw new NullPointerException ("identifier' cannot be null");
+        _identifier = identifier;
+        _count = count;
+        _invocation = invocation;
+        _dataInput = dataInput;
+        _dataOutput = dataOutput;
+        _latency = latency;
       }
       protected PerFunction (final PerFunction source) {
         if (source == null) throw new NullPointerException ("'source' must not be null");
@@ -77,6 +99,7 @@ public class Invocations extends com.opengamma.engine.view.calcnode.msg.RemoteCa
         _invocation = source._invocation;
         _dataInput = source._dataInput;
         _dataOutput = source._dataOutput;
+        _latency = source._latency;
       }
       public PerFunction clone () {
         return new PerFunction (this);
@@ -95,6 +118,9 @@ public class Invocations extends com.opengamma.engine.view.calcnode.msg.RemoteCa
         msg.add (INVOCATION_KEY, null, _invocation);
         msg.add (DATA_INPUT_KEY, null, _dataInput);
         msg.add (DATA_OUTPUT_KEY, null, _dataOutput);
+        if (_latency != null)  {
+          msg.add (LATENCY_KEY, null, (_latency instanceof org.fudgemsg.MutableFudgeMsg) ? serializer.newMessage (_latency) : _latency);
+        }
       }
       public static PerFunction fromFudgeMsg (final org.fudgemsg.mapping.FudgeDeserializer deserializer, final org.fudgemsg.FudgeMsg fudgeMsg) {
         final java.util.List<org.fudgemsg.FudgeField> types = fudgeMsg.getAllByOrdinal (0);
@@ -141,6 +167,12 @@ public class Invocations extends com.opengamma.engine.view.calcnode.msg.RemoteCa
       public void setDataOutput (double dataOutput) {
         _dataOutput = dataOutput;
       }
+      public org.fudgemsg.FudgeMsg getLatency () {
+        return _latency;
+      }
+      public void setLatency (org.fudgemsg.FudgeMsg latency) {
+        _latency = latency;
+      }
       public String toString () {
         return org.apache.commons.lang.builder.ToStringBuilder.reflectionToString(this, org.apache.commons.lang.builder.ToStringStyle.SHORT_PREFIX_STYLE);
       }
@@ -9,6 +9,8 @@ public class Ready extends com.opengamma.engine.view.calcnode.msg.RemoteCalcNode
   public static final String CAPACITY_KEY = "capacity";
   private String _hostId;
   public static final String HOST_ID_KEY = "hostId";
+  private Integer _pipeline;
+  public static final String PIPELINE_KEY = "pipeline";
   public Ready (int capacity, String hostId) {
     _capacity = capacity;
     if (hostId == null) throw new NullPointerException ("hostId' cannot be null");
@@ -33,12 +35,28 @@ public class Ready extends com.opengamma.engine.view.calcnode.msg.RemoteCalcNode
     catch (IllegalArgumentException e) {
       throw new IllegalArgumentException ("Fudge message is not a Ready - field 'hostId' is not string", e);
     }
+    fudgeField = fudgeMsg.getByName (PIPELINE_KEY);
+    if (fudgeField != null)  {
+      try {
+        setPipeline (fudgeMsg.getFieldValue (Integer.class, fudgeField));
+      }
+      catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException ("Fudge message is not a Ready - field 'pipeline' is not integer", e);
+      }
+    }
+  }
+  public Ready (int capacity, String hostId, Integer pipeline) {
+    _capacity = capacity;
+    if (hostId == null) throw new NullPointerException ("hostId' cannot be null");
+    _hostId = hostId;
+    _pipeline = pipeline;
   }
   protected Ready (final Ready source) {
     super (source);
     if (source == null) throw new NullPointerException ("'source' must not be null");
     _capacity = source._capacity;
     _hostId = source._hostId;
+    _pipeline = source._pipeline;
   }
   public Ready clone () {
     return new Ready (this);
@@ -55,6 +73,9 @@ public class Ready extends com.opengamma.engine.view.calcnode.msg.RemoteCalcNode
     if (_hostId != null)  {
       msg.add (HOST_ID_KEY, null, _hostId);
     }
+    if (_pipeline != null)  {
+      msg.add (PIPELINE_KEY, null, _pipeline);
+    }
   }
   public static Ready fromFudgeMsg (final org.fudgemsg.mapping.FudgeDeserializer deserializer, final org.fudgemsg.FudgeMsg fudgeMsg) {
     final java.util.List<org.fudgemsg.FudgeField> types = fudgeMsg.getAllByOrdinal (0);
@@ -83,6 +104,12 @@ public class Ready extends com.opengamma.engine.view.calcnode.msg.RemoteCalcNode
     if (hostId == null) throw new NullPointerException ("hostId' cannot be null");
     _hostId = hostId;
   }
+  public Integer getPipeline () {
+    return _pipeline;
+  }
+  public void setPipeline (Integer pipeline) {
+    _pipeline = pipeline;
+  }
   public String toString () {
     return org.apache.commons.lang.builder.ToStringBuilder.reflectionToString(this, org.apache.commons.lang.builder.ToStringStyle.SHORT_PREFIX_STYLE);
   }
@@ -21,6 +21,10 @@ public abstract class RemoteCalcNodeMessageVisitor {
     visitUnexpectedMessage(message);
   }
 
+  protected void visitExecuteBatchMessage(ExecuteBatch message) {
+    visitUnexpectedMessage(message);
+  }
+
   protected void visitFailureMessage(Failure message) {
     visitUnexpectedMessage(message);
   }
@@ -45,6 +49,10 @@ public abstract class RemoteCalcNodeMessageVisitor {
     visitUnexpectedMessage(message);
   }
 
+  protected void visitResultsMessage(Results message) {
+    visitUnexpectedMessage(message);
+  }
+
   protected void visitScalingMessage(Scaling message) {
     visitUnexpectedMessage(message);
   }
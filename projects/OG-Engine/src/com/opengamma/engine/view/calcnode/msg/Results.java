@@ -0,0 +1,166 @@
+// Automatically created - do not modify
+///CLOVER:OFF
+// CSOFF: Generated File
+package com.opengamma.engine.view.calcnode.msg;
+public class Results extends com.opengamma.engine.view.calcnode.msg.RemoteCalcNodeMessage implements java.io.Serializable {
+  public void accept (RemoteCalcNodeMessageVisitor visitor) { visitor.visitResultsMessage (this); }
+  private static final long serialVersionUID = -7322587615240839305l;
+  private java.util.List<com.opengamma.engine.view.calcnode.CalculationJobResult> _result;
+  public static final String RESULT_KEY = "result";
+  private com.opengamma.engine.view.calcnode.msg.Ready _ready;
+  public static final String READY_KEY = "ready";
+  public Results (java.util.Collection<? extends com.opengamma.engine.view.calcnode.CalculationJobResult> result) {
+    if (result == null) throw new NullPointerException ("'result' cannot be null");
+    else {
+      final java.util.List<com.opengamma.engine.view.calcnode.CalculationJobResult> fudge0 = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJobResult> (result);
+      if (result.size () == 0) throw new IllegalArgumentException ("'result' cannot be an empty list");
+      for (java.util.ListIterator<com.opengamma.engine.view.calcnode.CalculationJobResult> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        com.opengamma.engine.view.calcnode.CalculationJobResult fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'result' cannot be null");
+        fudge1.set (fudge2);
+      }
+      _result = fudge0;
+    }
+  }
+  protected Results (final org.fudgemsg.mapping.FudgeDeserializer deserializer, final org.fudgemsg.FudgeMsg fudgeMsg) {
+    super (deserializer, fudgeMsg);
+    org.fudgemsg.FudgeField fudgeField;
+    java.util.List<org.fudgemsg.FudgeField> fudgeFields;
+    fudgeFields = fudgeMsg.getAllByName (RESULT_KEY);
+    if (fudgeFields.size () == 0) throw new IllegalArgumentException ("Fudge message is not a Results - field 'result' is not present");
+    _result = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJobResult> (fudgeFields.size ());
+    for (org.fudgemsg.FudgeField fudge1 : fudgeFields) {
+      try {
+        final com.opengamma.engine.view.calcnode.CalculationJobResult fudge2;
+        fudge2 = deserializer.fieldValueToObject (com.opengamma.engine.view.calcnode.CalculationJobResult.class, fudge1);
+        _result.add (fudge2);
+      }
+      catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException ("Fudge message is not a Results - field 'result' is not CalculationJobResult message", e);
+      }
+    }
+    fudgeField = fudgeMsg.getByName (READY_KEY);
+    if (fudgeField != null)  {
+      try {
+        final com.opengamma.engine.view.calcnode.msg.Ready fudge1;
+        fudge1 = com.opengamma.engine.view.calcnode.msg.Ready.fromFudgeMsg (deserializer, fudgeMsg.getFieldValue (org.fudgemsg.FudgeMsg.class, fudgeField));
+        setReady (fudge1);
+      }
+      catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException ("Fudge message is not a Results - field 'ready' is not Ready message", e);
+      }
+    }
+  }
+  public Results (java.util.Collection<? extends com.opengamma.engine.view.calcnode.CalculationJobResult> result, com.opengamma.engine.view.calcnode.msg.Ready ready) {
+    if (result == null) throw new NullPointerException ("'result' cannot be null");
+    else {
+      final java.util.List<com.opengamma.engine.view.calcnode.CalculationJobResult> fudge0 = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJobResult> (result);
+      if (result.size () == 0) throw new IllegalArgumentException ("'result' cannot be an empty list");
+      for (java.util.ListIterator<com.opengamma.engine.view.calcnode.CalculationJobResult> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        com.opengamma.engine.view.calcnode.CalculationJobResult fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'result' cannot be null");
+        fudge1.set (fudge2);
+      }
+      _result = fudge0;
+    }
+    if (ready == null) _ready = null;
+    else {
+      _ready = (com.opengamma.engine.view.calcnode.msg.Ready)ready.clone ();
+    }
+  }
+  protected Results (final Results source) {
+    super (source);
+    if (source == null) throw new NullPointerException ("'source' must not be null");
+    if (source._result == null) _result = null;
+    else {
+      final java.util.List<com.opengamma.engine.view.calcnode.CalculationJobResult> fudge0 = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJobResult> (source._result);
+      for (java.util.ListIterator<com.opengamma.engine.view.calcnode.CalculationJobResult> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        com.opengamma.engine.view.calcnode.CalculationJobResult fudge2 = fudge1.next ();
+        fudge1.set (fudge2);
+      }
+      _result = fudge0;
+    }
+    if (source._ready == null) _ready = null;
+    else {
+      _ready = (com.opengamma.engine.view.calcnode.msg.Ready)source._ready.clone ();
+    }
+  }
+  public Results clone () {
+    return new Results (this);
+  }
+  public org.fudgemsg.FudgeMsg toFudgeMsg (final org.fudgemsg.mapping.FudgeSerializer serializer) {
+    if (serializer == null) throw new NullPointerException ("serializer must not be null");
+    final org.fudgemsg.MutableFudgeMsg msg = serializer.newMessage ();
+    toFudgeMsg (serializer, msg);
+    return msg;
+  }
+  public void toFudgeMsg (final org.fudgemsg.mapping.FudgeSerializer serializer, final org.fudgemsg.MutableFudgeMsg msg) {
+    super.toFudgeMsg (serializer, msg);
+    if (_result != null)  {
+      for (com.opengamma.engine.view.calcnode.CalculationJobResult fudge1 : _result) {
+        serializer.addToMessageWithClassHeaders (msg, RESULT_KEY, null, fudge1, com.opengamma.engine.view.calcnode.CalculationJobResult.class);
+      }
+    }
+    if (_ready != null)  {
+      final org.fudgemsg.MutableFudgeMsg fudge1 = org.fudgemsg.mapping.FudgeSerializer.addClassHeader (serializer.newMessage (), _ready.getClass (), com.opengamma.engine.view.calcnode.msg.Ready.class);
+      _ready.toFudgeMsg (serializer, fudge1);
+      msg.add (READY_KEY, null, fudge1);
+    }
+  }
+  public static Results fromFudgeMsg (final org.fudgemsg.mapping.FudgeDeserializer deserializer, final org.fudgemsg.FudgeMsg fudgeMsg) {
+    final java.util.List<org.fudgemsg.FudgeField> types = fudgeMsg.getAllByOrdinal (0);
+    for (org.fudgemsg.FudgeField field : types) {
+      final String className = (String)field.getValue ();
+      if ("com.opengamma.engine.view.calcnode.msg.Results".equals (className)) break;
+      try {
+        return (com.opengamma.engine.view.calcnode.msg.Results)Class.forName (className).getDeclaredMethod ("fromFudgeMsg", org.fudgemsg.mapping.FudgeDeserializer.class, org.fudgemsg.FudgeMsg.class).invoke (null, deserializer, fudgeMsg);
+      }
+      catch (Throwable t) {
+        // no-action
+      }
+    }
+    return new Results (deserializer, fudgeMsg);
+  }
+  public java.util.List<com.opengamma.engine.view.calcnode.CalculationJobResult> getResult () {
+    return java.util.Collections.unmodifiableList (_result);
+  }
+  public void setResult (com.opengamma.engine.view.calcnode.CalculationJobResult result) {
+    if (result == null) throw new NullPointerException ("'result' cannot be null");
+    else {
+      _result = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJobResult> (1);
+      addResult (result);
+    }
+  }
+  public void setResult (java.util.Collection<? extends com.opengamma.engine.view.calcnode.CalculationJobResult> result) {
+    if (result == null) throw new NullPointerException ("'result' cannot be null");
+    else {
+      final java.util.List<com.opengamma.engine.view.calcnode.CalculationJobResult> fudge0 = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJobResult> (result);
+      if (result.size () == 0) throw new IllegalArgumentException ("'result' cannot be an empty list");
+      for (java.util.ListIterator<com.opengamma.engine.view.calcnode.CalculationJobResult> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        com.opengamma.engine.view.calcnode.CalculationJobResult fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'result' cannot be null");
+        fudge1.set (fudge2);
+      }
+      _result = fudge0;
+    }
+  }
+  public void addResult (com.opengamma.engine.view.calcnode.CalculationJobResult result) {
+    if (result == null) throw new NullPointerException ("'result' cannot be null");
+    if (_result == null) _result = new java.util.ArrayList<com.opengamma.engine.view.calcnode.CalculationJobResult> ();
+    _result.add (result);
+  }
+  public com.opengamma.engine.view.calcnode.msg.Ready getReady () {
+    return _ready;
+  }
+  public void setReady (com.opengamma.engine.view.calcnode.msg.Ready ready) {
+    if (ready == null) _ready = null;
+    else {
+      _ready = (com.opengamma.engine.view.calcnode.msg.Ready)ready.clone ();
+    }
+  }
+  public String toString () {
+    return org.apache.commons.lang.builder.ToStringBuilder.reflectionToString(this, org.apache.commons.lang.builder.ToStringStyle.SHORT_PREFIX_STYLE);
+  }
+}
+///CLOVER:ON
+// CSON: Generated File
@@ -31,4 +31,14 @@ public interface CalculationNodeStatisticsGatherer {
    */
   void jobFailed(String nodeId, long durationNanos);
 
+  /**
+   * Reports a job accepted by an invoker.
+   * 
+   * @param invokerId  the invoker the job was dispatched to
+   * @param dispatchNanos  the time from scheduling to acceptance by the invoker, in nanoseconds
+   * @param requiredJobs  the number of jobs producing inputs to this job that were dispatched to a known invoker
+   * @param localRequiredJobs  the number of those jobs that were dispatched to the same invoker as this job
+   */
+  void jobDispatched(String invokerId, long dispatchNanos, int requiredJobs, int localRequiredJobs);
+
 }
@@ -21,4 +21,9 @@ public final class DiscardingNodeStatisticsGatherer implements CalculationNodeSt
     // no action
   }
 
+  @Override
+  public void jobDispatched(String invokerId, long dispatchNanos, int requiredJobs, int localRequiredJobs) {
+    // no action
+  }
+
 }
@@ -5,8 +5,10 @@
  */
 package com.opengamma.engine.view.calcnode.stats;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
@@ -50,6 +52,10 @@ public final class FunctionCosts implements FunctionInvocationStatisticsGatherer
    * The mean statistics as persisted.
    */
   private final FunctionInvocationStatistics _meanStatistics;
+  /**
+   * The percentile of invocation time to use as the scheduling cost, NaN for the mean.
+   */
+  private volatile double _invocationCostPercentile = Double.NaN;
 
   /**
    * Constructor using an in-memory master.
@@ -83,6 +89,29 @@ public final class FunctionCosts implements FunctionInvocationStatisticsGatherer
     return new FunctionInvocationStatistics(doc);
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * Sets the percentile of the invocation time distribution that schedulers should use as the cost
+   * of a function. A high percentile, for example 0.9, makes a function with occasional slow
+   * invocations look as expensive as those invocations. By default the mean is used.
+   * 
+   * @param invocationCostPercentile  the percentile, in the range {@code (0,1]}, or {@code NaN} for the mean
+   */
+  public void setInvocationCostPercentile(final double invocationCostPercentile) {
+    ArgumentChecker.isTrue(Double.isNaN(invocationCostPercentile) || ArgumentChecker.isInRangeExcludingLow(0d, 1d, invocationCostPercentile),
+        "invocationCostPercentile must be NaN or greater than 0 and not more than 1");
+    _invocationCostPercentile = invocationCostPercentile;
+  }
+
+  /**
+   * Gets the percentile of the invocation time distribution that schedulers should use as the cost of a function.
+   * 
+   * @return the percentile, or {@code NaN} for the mean
+   */
+  public double getInvocationCostPercentile() {
+    return _invocationCostPercentile;
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Gathers statistics from the central node and records them.
@@ -117,6 +146,15 @@ public final class FunctionCosts implements FunctionInvocationStatisticsGatherer
     return data;
   }
 
+  /**
+   * Gets the names of the configurations that statistics are held for.
+   * 
+   * @return the configuration names, not null
+   */
+  public Set<String> getConfigurationNames() {
+    return Collections.unmodifiableSet(_data.keySet());
+  }
+
   /**
    * Gets statistics for a function.
    * 
@@ -224,6 +262,9 @@ public final class FunctionCosts implements FunctionInvocationStatisticsGatherer
         functionMessage.add("invocationCost", function.getValue().getInvocationCost());
         functionMessage.add("dataInput", function.getValue().getDataInputCost());
         functionMessage.add("dataOutput", function.getValue().getDataOutputCost());
+        functionMessage.add("invocationP50", function.getValue().getInvocationTimePercentile(0.5));
+        functionMessage.add("invocationP99", function.getValue().getInvocationTimePercentile(0.99));
+        functionMessage.add("invocationMax", function.getValue().getMaxInvocationTime());
         configurationMessage.add(function.getKey(), functionMessage);
       }
       message.add(configuration.getKey(), configurationMessage);
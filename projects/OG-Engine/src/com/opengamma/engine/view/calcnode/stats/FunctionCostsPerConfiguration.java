@@ -5,6 +5,8 @@
  */
 package com.opengamma.engine.view.calcnode.stats;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -71,6 +73,15 @@ public final class FunctionCostsPerConfiguration {
     return stats;
   }
 
+  /**
+   * Gets the statistics for all functions that have been loaded or recorded.
+   * 
+   * @return the statistics, not null
+   */
+  public Collection<FunctionInvocationStatistics> getAllStatistics() {
+    return Collections.unmodifiableCollection(_data.values());
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public String toString() {
@@ -13,6 +13,8 @@ import com.opengamma.util.ArgumentChecker;
  * This is run centrally to aggregate statistics.
  * The statistics recorded include the time taken and the data volume.
  * Old data is decayed to be less relevant.
+ * A histogram of the time taken is also kept so that slow outliers, which barely move the
+ * mean, can be seen.
  * <p>
  * This class is mutable and thread-safe via synchronization.
  */
@@ -26,6 +28,14 @@ public class FunctionInvocationStatistics {
    * The number of samples in the snapshot.
    */
   private static final int SNAPSHOT_SAMPLES = 100;
+  /**
+   * The number of invocations in the latency histogram at which the counts are halved.
+   */
+  private static final long LATENCY_SAMPLES = 1L << 16;
+  /**
+   * The number of invocations needed in the latency histogram before its percentiles are used as costs.
+   */
+  private static final long LATENCY_MIN_SAMPLES = 20;
 
   /**
    * The function identifier.
@@ -53,6 +63,7 @@ public class FunctionInvocationStatistics {
   private double _invocationTime;
   private double _dataInput;
   private double _dataOutput;
+  private final LatencyHistogram _latency = new LatencyHistogram();
 
   /**
    * Creates an instance for a specific function.
@@ -104,6 +115,44 @@ public class FunctionInvocationStatistics {
    */
   /* package */ synchronized void recordInvocation(
       final int invocationCount, final double invocationNanos, final double dataInputBytes, final double dataOutputBytes) {
+    if (invocationCount > 0) {
+      _latency.record(invocationNanos / invocationCount, invocationCount);
+      decayLatency();
+    }
+    updateCosts(invocationCount, invocationNanos, dataInputBytes, dataOutputBytes);
+  }
+
+  /**
+   * Updates the statistics with details of one or more invocations, together with the distribution of their
+   * individual times.
+   * <p>
+   * This is used for the data gathered by remote nodes, where the histogram captures the outliers that the
+   * total execution time does not.
+   * 
+   * @param invocationCount  the number of invocations the data is for
+   * @param invocationNanos  the execution time, in nanoseconds, of the invocation(s)
+   * @param dataInputBytes  the mean data input, bytes per input node, or {@code NaN} if unavailable
+   * @param dataOutputBytes  the mean data output, bytes per output node, or {@code NaN} if unavailable
+   * @param latency  the histogram of the invocation times, or null to assume each took the mean time
+   */
+  /* package */ synchronized void recordInvocation(
+      final int invocationCount, final double invocationNanos, final double dataInputBytes, final double dataOutputBytes, final LatencyHistogram latency) {
+    if (latency == null) {
+      recordInvocation(invocationCount, invocationNanos, dataInputBytes, dataOutputBytes);
+      return;
+    }
+    _latency.merge(latency);
+    decayLatency();
+    updateCosts(invocationCount, invocationNanos, dataInputBytes, dataOutputBytes);
+  }
+
+  private void decayLatency() {
+    if (_latency.getCount() >= LATENCY_SAMPLES) {
+      _latency.decay(0.5);
+    }
+  }
+
+  private void updateCosts(final int invocationCount, final double invocationNanos, final double dataInputBytes, final double dataOutputBytes) {
     _invocations += invocationCount;
     _invocationTime += invocationNanos;
     _dataInput += Double.isNaN(dataInputBytes) ? ((_invocations > 0) ? (_dataInput / _invocations) : 0) : dataInputBytes;
@@ -156,6 +205,49 @@ public class FunctionInvocationStatistics {
     return _dataOutputCost;
   }
 
+  /**
+   * Gets an estimate of the invocation time at a percentile, for example 0.99 for the time that
+   * 99% of recent invocations took no longer than.
+   * 
+   * @param percentile  the percentile, in the range {@code (0,1]}
+   * @return the invocation time in nanoseconds, or {@code NaN} if no invocations have been recorded
+   */
+  public synchronized double getInvocationTimePercentile(final double percentile) {
+    return _latency.getPercentile(percentile);
+  }
+
+  /**
+   * Gets the longest invocation time recorded.
+   * 
+   * @return the invocation time in nanoseconds, or {@code NaN} if no invocations have been recorded
+   */
+  public synchronized double getMaxInvocationTime() {
+    return _latency.getMax();
+  }
+
+  /**
+   * Gets the invocation cost for scheduling, the invocation time at a percentile if enough invocations
+   * have been recorded and otherwise the mean "standard" time.
+   * 
+   * @param percentile  the percentile, in the range {@code (0,1]}, or {@code NaN} for the mean
+   * @return invocation cost in nanoseconds
+   */
+  public synchronized double getInvocationCost(final double percentile) {
+    if (Double.isNaN(percentile) || (_latency.getCount() < LATENCY_MIN_SAMPLES)) {
+      return _invocationCost;
+    }
+    return _latency.getPercentile(percentile);
+  }
+
+  /**
+   * Gets a copy of the histogram of recent invocation times.
+   * 
+   * @return the histogram, not null
+   */
+  public synchronized LatencyHistogram getLatency() {
+    return _latency.copy();
+  }
+
   /**
    * Gets the {@link System#nanoTime} timestamp of the last time the costs changed.
    * 
@@ -21,7 +21,7 @@ import com.opengamma.util.ArgumentChecker;
  * Receives statistics from a {@link FunctionInvocationStatisticsSender}.
  * <p>
  * This is run centrally and receives statistics from each node.
- * The statistics are aggregated into the {@code FunctionCost} instance.
+ * The statistics, including the histograms of invocation times, are aggregated into the {@code FunctionCost} instance.
  */
 public class FunctionInvocationStatisticsReceiver implements FudgeMessageReceiver {
 
@@ -66,7 +66,8 @@ public class FunctionInvocationStatisticsReceiver implements FudgeMessageReceive
       for (PerFunction function : configuration.getFunction()) {
         final FunctionInvocationStatistics statistics = configurationStats.getStatistics(function.getIdentifier());
         localInvocationCost += statistics.getInvocationCost();
-        statistics.recordInvocation(function.getCount(), function.getInvocation(), function.getDataInput(), function.getDataOutput());
+        final LatencyHistogram latency = (function.getLatency() != null) ? LatencyHistogram.fromFudgeMsg(function.getLatency()) : null;
+        statistics.recordInvocation(function.getCount(), function.getInvocation(), function.getDataInput(), function.getDataOutput(), latency);
         remoteInvocationCost += function.getInvocation() / function.getCount();
       }
     }
@@ -34,10 +34,42 @@ import com.opengamma.util.ArgumentChecker;
  */
 public class FunctionInvocationStatisticsSender implements FunctionInvocationStatisticsGatherer {
 
+  /**
+   * The statistics for a function not yet sent to the server.
+   */
+  protected static final class FunctionStatistics {
+
+    private final PerFunction _invocations;
+    private final LatencyHistogram _latency = new LatencyHistogram();
+
+    private FunctionStatistics(final PerFunction invocations) {
+      _invocations = invocations;
+    }
+
+    /**
+     * Gets the invocation totals.
+     * 
+     * @return the totals, not null
+     */
+    public PerFunction getInvocations() {
+      return _invocations;
+    }
+
+    /**
+     * Gets the histogram of the individual invocation times.
+     * 
+     * @return the histogram, not null
+     */
+    public LatencyHistogram getLatency() {
+      return _latency;
+    }
+
+  }
+
   /**
    * The storage of the statistics not yet sent to the server.
    */
-  private final ConcurrentMap<String, ConcurrentMap<String, PerFunction>> _data = new ConcurrentHashMap<String, ConcurrentMap<String, PerFunction>>();
+  private final ConcurrentMap<String, ConcurrentMap<String, FunctionStatistics>> _data = new ConcurrentHashMap<String, ConcurrentMap<String, FunctionStatistics>>();
   private final AtomicLong _lastSent = new AtomicLong();
   private FudgeMessageSender _messageSender;
   private ExecutorService _executorService;
@@ -169,11 +201,14 @@ public class FunctionInvocationStatisticsSender implements FunctionInvocationSta
   @Override
   public void functionInvoked(final String configurationName, final String functionId, final int invocationCount,
       final double executionNanos, final double dataInputBytes, final double dataOutputBytes) {
-    final ConcurrentMap<String, PerFunction> statsMap = getConfigurationData(configurationName);
-    PerFunction stats = statsMap.get(functionId);
+    final ConcurrentMap<String, FunctionStatistics> statsMap = getConfigurationData(configurationName);
+    FunctionStatistics stats = statsMap.get(functionId);
     if (stats == null) {
-      stats = new PerFunction(functionId, invocationCount, executionNanos, dataInputBytes, dataOutputBytes);
-      PerFunction newStats = statsMap.putIfAbsent(functionId, stats);
+      stats = new FunctionStatistics(new PerFunction(functionId, invocationCount, executionNanos, dataInputBytes, dataOutputBytes));
+      if (invocationCount > 0) {
+        stats.getLatency().record(executionNanos * _invocationTimeScale / invocationCount, invocationCount);
+      }
+      FunctionStatistics newStats = statsMap.putIfAbsent(functionId, stats);
       if (newStats == null) {
         return; // data stored in constructor of PerFunction above
       }
@@ -189,10 +224,10 @@ public class FunctionInvocationStatisticsSender implements FunctionInvocationSta
    * @param calculationConfiguration  the configuration key, not null
    * @return the configuration map, not null
    */
-  protected ConcurrentMap<String, PerFunction> getConfigurationData(final String calculationConfiguration) {
-    ConcurrentMap<String, PerFunction> data = _data.get(calculationConfiguration);
+  protected ConcurrentMap<String, FunctionStatistics> getConfigurationData(final String calculationConfiguration) {
+    ConcurrentMap<String, FunctionStatistics> data = _data.get(calculationConfiguration);
     if (data == null) {
-      _data.putIfAbsent(calculationConfiguration, new ConcurrentHashMap<String, PerFunction>());
+      _data.putIfAbsent(calculationConfiguration, new ConcurrentHashMap<String, FunctionStatistics>());
       data = _data.get(calculationConfiguration);
     }
     return data;
@@ -207,8 +242,13 @@ public class FunctionInvocationStatisticsSender implements FunctionInvocationSta
    * @param dataInputBytes  the mean data input, bytes per input node, or {@code NaN} if unavailable
    * @param dataOutputBytes  the mean data output, bytes per output node, or {@code NaN} if unavailable
    */
-  protected void updateStatistics(final PerFunction stats, final int invocationCount, final double executionNanos, final double dataInputBytes, final double dataOutputBytes) {
-    synchronized (stats) {
+  protected void updateStatistics(final FunctionStatistics statistics, final int invocationCount, final double executionNanos, final double dataInputBytes,
+      final double dataOutputBytes) {
+    synchronized (statistics) {
+      if (invocationCount > 0) {
+        statistics.getLatency().record(executionNanos * _invocationTimeScale / invocationCount, invocationCount);
+      }
+      final PerFunction stats = statistics.getInvocations();
       stats.setInvocation(stats.getInvocation() + executionNanos * _invocationTimeScale);
       if (Double.isNaN(dataInputBytes)) {
         // no data available, so increase at previous rate to keep average the same
@@ -249,18 +289,20 @@ public class FunctionInvocationStatisticsSender implements FunctionInvocationSta
    */
   protected void sendStatistics() {
     final List<PerConfiguration> configurations = new ArrayList<PerConfiguration>(_data.size());
-    final Iterator<Map.Entry<String, ConcurrentMap<String, PerFunction>>> configurationIterator = _data.entrySet().iterator();
+    final Iterator<Map.Entry<String, ConcurrentMap<String, FunctionStatistics>>> configurationIterator = _data.entrySet().iterator();
     while (configurationIterator.hasNext()) {
-      final Map.Entry<String, ConcurrentMap<String, PerFunction>> configuration = configurationIterator.next();
+      final Map.Entry<String, ConcurrentMap<String, FunctionStatistics>> configuration = configurationIterator.next();
       // Note the race condition in this logic; it is possible we may lose data if functionInvoked is called
       // while we're doing this. Hopefully it won't happen often enough to be problematic.
       // We're only gathering heuristics so as long as it isn't a rarely executing function that always gets missed we'll be okay!
       configurationIterator.remove();
       if (!configuration.getValue().isEmpty()) {
         final List<PerFunction> functionData = new ArrayList<PerFunction>(configuration.getValue().size());
-        for (PerFunction function : configuration.getValue().values()) {
+        for (FunctionStatistics function : configuration.getValue().values()) {
           synchronized (function) {
-            functionData.add(function.clone());
+            final PerFunction data = function.getInvocations().clone();
+            data.setLatency(function.getLatency().toFudgeMsg(getFudgeMessageSender().getFudgeContext()));
+            functionData.add(data);
           }
         }
         configurations.add(new PerConfiguration(configuration.getKey(), functionData));
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode.stats;
+
+import javax.time.Instant;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Records statistics about the dispatch of jobs to an invoker.
+ * <p>
+ * This is run centrally to aggregate statistics.
+ * The statistics recorded include the time jobs wait before an invoker accepts them and how often a job
+ * is sent to the invoker that produced its inputs.
+ */
+public class JobDispatchStatistics {
+
+  /**
+   * The invoker id.
+   */
+  private final String _invokerId;
+  /**
+   * The number of jobs dispatched.
+   */
+  private long _dispatchedJobs;
+  /**
+   * The time from scheduling to acceptance in nanoseconds.
+   */
+  private long _dispatchNanos;
+  /**
+   * The longest time from scheduling to acceptance in nanoseconds.
+   */
+  private long _maxDispatchNanos;
+  /**
+   * The number of input producing jobs whose invoker was known.
+   */
+  private long _requiredJobs;
+  /**
+   * The number of input producing jobs that were dispatched to the same invoker.
+   */
+  private long _localRequiredJobs;
+  /**
+   * The last instant that a job was dispatched.
+   */
+  private Instant _lastDispatchInstant;
+
+  /**
+   * Creates an instance for a specific invoker.
+   *
+   * @param invokerId  the invoker id, not null
+   */
+  public JobDispatchStatistics(final String invokerId) {
+    ArgumentChecker.notNull(invokerId, "invokerId");
+    _invokerId = invokerId;
+  }
+
+  private JobDispatchStatistics(final JobDispatchStatistics other) {
+    _invokerId = other.getInvokerId();
+    // the caller already holds the lock on the other object
+    _dispatchedJobs = other._dispatchedJobs;
+    _dispatchNanos = other._dispatchNanos;
+    _maxDispatchNanos = other._maxDispatchNanos;
+    _requiredJobs = other._requiredJobs;
+    _localRequiredJobs = other._localRequiredJobs;
+    _lastDispatchInstant = other._lastDispatchInstant;
+  }
+
+  // -------------------------------------------------------------------------
+  /**
+   * Gets the invoker id.
+   *
+   * @return the invoker id, not null
+   */
+  public String getInvokerId() {
+    return _invokerId;
+  }
+
+  /**
+   * Gets the number of dispatched jobs.
+   *
+   * @return the number of dispatched jobs
+   */
+  public synchronized long getDispatchedJobs() {
+    return _dispatchedJobs;
+  }
+
+  /**
+   * Gets the total dispatch time in nanoseconds.
+   *
+   * @return the dispatch time
+   */
+  public synchronized long getDispatchTime() {
+    return _dispatchNanos;
+  }
+
+  /**
+   * Gets the longest dispatch time in nanoseconds.
+   *
+   * @return the longest dispatch time
+   */
+  public synchronized long getMaxDispatchTime() {
+    return _maxDispatchNanos;
+  }
+
+  /**
+   * Gets the number of jobs producing inputs to the dispatched jobs that had been dispatched to a known invoker.
+   *
+   * @return the number of input producing jobs
+   */
+  public synchronized long getRequiredJobs() {
+    return _requiredJobs;
+  }
+
+  /**
+   * Gets the number of jobs producing inputs to the dispatched jobs that had been dispatched to the same invoker.
+   *
+   * @return the number of input producing jobs on the same invoker
+   */
+  public synchronized long getLocalRequiredJobs() {
+    return _localRequiredJobs;
+  }
+
+  /**
+   * Gets the last instant a job was dispatched.
+   *
+   * @return the last dispatch instant, null if no job has been dispatched
+   */
+  public synchronized Instant getLastDispatchTime() {
+    return _lastDispatchInstant;
+  }
+
+  // -------------------------------------------------------------------------
+  /**
+   * Gets the average dispatch time in seconds.
+   *
+   * @return the average dispatch time
+   */
+  public synchronized double getAverageDispatchTime() {
+    if (_dispatchedJobs > 0) {
+      return (double) _dispatchNanos / (double) _dispatchedJobs / 1e9;
+    } else {
+      return 0;
+    }
+  }
+
+  /**
+   * Gets the proportion of input producing jobs that had been dispatched to the same invoker as the job consuming
+   * their outputs.
+   *
+   * @return the affinity hit rate, between 0 and 1
+   */
+  public synchronized double getAffinityHitRate() {
+    if (_requiredJobs > 0) {
+      return (double) _localRequiredJobs / (double) _requiredJobs;
+    } else {
+      return 0;
+    }
+  }
+
+  // -------------------------------------------------------------------------
+  /**
+   * Records a dispatched job.
+   *
+   * @param dispatchNanos  the time from scheduling to acceptance in nanoseconds
+   * @param requiredJobs  the number of input producing jobs with a known invoker
+   * @param localRequiredJobs  the number of input producing jobs on the same invoker
+   */
+  public synchronized void recordDispatchedJob(final long dispatchNanos, final int requiredJobs, final int localRequiredJobs) {
+    _dispatchedJobs++;
+    _dispatchNanos += dispatchNanos;
+    if (dispatchNanos > _maxDispatchNanos) {
+      _maxDispatchNanos = dispatchNanos;
+    }
+    _requiredJobs += requiredJobs;
+    _localRequiredJobs += localRequiredJobs;
+    _lastDispatchInstant = Instant.now();
+  }
+
+  // -------------------------------------------------------------------------
+  /**
+   * Resets the counters to zero.
+   */
+  public synchronized void reset() {
+    _dispatchedJobs = 0;
+    _dispatchNanos = 0;
+    _maxDispatchNanos = 0;
+    _requiredJobs = 0;
+    _localRequiredJobs = 0;
+  }
+
+  /**
+   * Creates a snapshot of the current values.
+   *
+   * @return a snapshot, not null
+   */
+  public synchronized JobDispatchStatistics snapshot() {
+    return new JobDispatchStatistics(this);
+  }
+
+}
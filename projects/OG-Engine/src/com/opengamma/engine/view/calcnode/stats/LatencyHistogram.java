@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode.stats;
+
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeMsgFactory;
+import org.fudgemsg.MutableFudgeMsg;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Histogram of invocation times with logarithmically sized buckets.
+ * <p>
+ * Each power of two is split into a fixed number of buckets, so any recorded time is held to within 12.5% using a fixed
+ * amount of memory whatever the range of times. Histograms from different nodes can be merged to give the distribution
+ * over all of them.
+ * <p>
+ * This class is mutable and not thread-safe; callers must synchronize.
+ */
+public final class LatencyHistogram {
+
+  private static final String BUCKET_FIELD_NAME = "bucket";
+  private static final String COUNT_FIELD_NAME = "count";
+  private static final String MAX_FIELD_NAME = "max";
+
+  /**
+   * The number of bits of each value below its leading bit that select the bucket within a power of two.
+   */
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /**
+   * The highest power of two held separately, about 4.9 hours in nanoseconds. Longer times share the last buckets.
+   */
+  private static final int MAX_EXPONENT = 44;
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private final long[] _counts = new long[BUCKETS];
+  private long _count;
+  private long _max;
+
+  /**
+   * Creates an empty histogram.
+   */
+  public LatencyHistogram() {
+  }
+
+  private LatencyHistogram(final LatencyHistogram copyFrom) {
+    System.arraycopy(copyFrom._counts, 0, _counts, 0, BUCKETS);
+    _count = copyFrom._count;
+    _max = copyFrom._max;
+  }
+
+  //-------------------------------------------------------------------------
+  /* package */static int getBucket(final long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    final int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /* package */static long getBucketLowerBound(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    return (long) (SUB_BUCKETS + (bucket % SUB_BUCKETS)) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  /**
+   * Records one or more invocations that each took the same time.
+   *
+   * @param nanos the time of each invocation, in nanoseconds
+   * @param count the number of invocations, not negative
+   */
+  public void record(final double nanos, final long count) {
+    if (count <= 0) {
+      return;
+    }
+    final long value = (nanos > 0) ? (long) nanos : 0;
+    _counts[getBucket(value)] += count;
+    _count += count;
+    if (value > _max) {
+      _max = value;
+    }
+  }
+
+  /**
+   * Adds the invocations recorded in another histogram to this one.
+   *
+   * @param other the histogram to add, not null
+   */
+  public void merge(final LatencyHistogram other) {
+    ArgumentChecker.notNull(other, "other");
+    for (int i = 0; i < BUCKETS; i++) {
+      _counts[i] += other._counts[i];
+    }
+    _count += other._count;
+    if (other._max > _max) {
+      _max = other._max;
+    }
+  }
+
+  /**
+   * Scales down the invocation counts, so that later invocations carry more weight than those already recorded. The
+   * maximum is kept until all earlier counts have decayed to zero.
+   *
+   * @param retain the proportion of each count to keep, between zero and one
+   */
+  public void decay(final double retain) {
+    ArgumentChecker.isTrue(ArgumentChecker.isInRangeInclusive(0d, 1d, retain), "retain must be between 0 and 1");
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      if (_counts[i] != 0) {
+        _counts[i] = (long) (_counts[i] * retain);
+        count += _counts[i];
+      }
+    }
+    _count = count;
+    if (count == 0) {
+      _max = 0;
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of invocations recorded.
+   *
+   * @return the number of invocations
+   */
+  public long getCount() {
+    return _count;
+  }
+
+  /**
+   * Gets the longest invocation time recorded.
+   *
+   * @return the maximum time, in nanoseconds, or {@code NaN} if nothing has been recorded
+   */
+  public double getMax() {
+    return (_count > 0) ? _max : Double.NaN;
+  }
+
+  /**
+   * Gets an estimate of the invocation time at a percentile, for example 0.99 for the time that 99% of invocations took
+   * no longer than. The estimate is the middle of the bucket the percentile falls in, to within 12.5%.
+   *
+   * @param percentile the percentile, in the range {@code (0,1]}
+   * @return the invocation time, in nanoseconds, or {@code NaN} if nothing has been recorded
+   */
+  public double getPercentile(final double percentile) {
+    ArgumentChecker.isTrue(ArgumentChecker.isInRangeExcludingLow(0d, 1d, percentile), "percentile must be greater than 0 and not more than 1");
+    if (_count == 0) {
+      return Double.NaN;
+    }
+    final long rank = (long) Math.ceil(percentile * _count);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += _counts[i];
+      if (seen >= rank) {
+        final long lower = getBucketLowerBound(i);
+        final long upper = (i < BUCKETS - 1) ? getBucketLowerBound(i + 1) : _max + 1;
+        return Math.min((double) (lower + upper - 1) / 2d, (double) _max);
+      }
+    }
+    return _max;
+  }
+
+  /**
+   * Creates a copy of the histogram.
+   *
+   * @return the copy, not null
+   */
+  public LatencyHistogram copy() {
+    return new LatencyHistogram(this);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Encodes the histogram as a message, listing only the buckets that are in use.
+   *
+   * @param factory the message factory, not null
+   * @return the message, not null
+   */
+  public FudgeMsg toFudgeMsg(final FudgeMsgFactory factory) {
+    int used = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      if (_counts[i] != 0) {
+        used++;
+      }
+    }
+    final int[] buckets = new int[used];
+    final long[] counts = new long[used];
+    used = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      if (_counts[i] != 0) {
+        buckets[used] = i;
+        counts[used++] = _counts[i];
+      }
+    }
+    final MutableFudgeMsg message = factory.newMessage();
+    message.add(BUCKET_FIELD_NAME, buckets);
+    message.add(COUNT_FIELD_NAME, counts);
+    message.add(MAX_FIELD_NAME, _max);
+    return message;
+  }
+
+  /**
+   * Decodes a histogram from a message created by {@link #toFudgeMsg}.
+   *
+   * @param message the message, not null
+   * @return the histogram, not null
+   */
+  public static LatencyHistogram fromFudgeMsg(final FudgeMsg message) {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final int[] buckets = message.getValue(int[].class, BUCKET_FIELD_NAME);
+    final long[] counts = message.getValue(long[].class, COUNT_FIELD_NAME);
+    if ((buckets != null) && (counts != null)) {
+      for (int i = 0; i < buckets.length; i++) {
+        histogram._counts[buckets[i]] += counts[i];
+        histogram._count += counts[i];
+      }
+    }
+    final Long max = message.getLong(MAX_FIELD_NAME);
+    if (max != null) {
+      histogram._max = max;
+    }
+    return histogram;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    if (_count == 0) {
+      return "LatencyHistogram[empty]";
+    }
+    return "LatencyHistogram[count=" + _count + ", p50=" + getPercentile(0.5) + "ns, p99=" + getPercentile(0.99) + "ns, max=" + _max + "ns]";
+  }
+
+}
@@ -26,6 +26,14 @@ public class TotallingNodeStatisticsGatherer implements CalculationNodeStatistic
    * The statistics.
    */
   private final ConcurrentMap<String, CalculationNodeStatistics> _nodeStatistics = new ConcurrentHashMap<String, CalculationNodeStatistics>();
+  /**
+   * The dispatch statistics.
+   */
+  private final ConcurrentMap<String, JobDispatchStatistics> _dispatchStatistics = new ConcurrentHashMap<String, JobDispatchStatistics>();
+  /**
+   * The dispatch statistics totalled over all invokers.
+   */
+  private final JobDispatchStatistics _totalDispatchStatistics = new JobDispatchStatistics("TOTAL");
 
   @Override
   public void jobCompleted(String nodeId, int jobItems, long executionTime, long duration) {
@@ -37,6 +45,12 @@ public class TotallingNodeStatisticsGatherer implements CalculationNodeStatistic
     getOrCreateNodeStatistics(nodeId).recordUnsuccessfulJob(duration);
   }
 
+  @Override
+  public void jobDispatched(String invokerId, long dispatchNanos, int requiredJobs, int localRequiredJobs) {
+    getOrCreateDispatchStatistics(invokerId).recordDispatchedJob(dispatchNanos, requiredJobs, localRequiredJobs);
+    _totalDispatchStatistics.recordDispatchedJob(dispatchNanos, requiredJobs, localRequiredJobs);
+  }
+
   /**
    * Creates the statistics for a given node.
    * 
@@ -52,6 +66,21 @@ public class TotallingNodeStatisticsGatherer implements CalculationNodeStatistic
     return stats;
   }
 
+  /**
+   * Creates the dispatch statistics for a given invoker.
+   * 
+   * @param invokerId  the invoker id, not null
+   * @return the statistics, not null
+   */
+  protected JobDispatchStatistics getOrCreateDispatchStatistics(final String invokerId) {
+    JobDispatchStatistics stats = _dispatchStatistics.get(invokerId);
+    if (stats == null) {
+      _dispatchStatistics.putIfAbsent(invokerId, new JobDispatchStatistics(invokerId));
+      stats = _dispatchStatistics.get(invokerId);
+    }
+    return stats;
+  }
+
   /**
    * Gets the node statistics as a list.
    * <p>
@@ -63,6 +92,28 @@ public class TotallingNodeStatisticsGatherer implements CalculationNodeStatistic
     return new ArrayList<CalculationNodeStatistics>(_nodeStatistics.values());
   }
 
+  /**
+   * Gets the dispatch statistics for each invoker as a list.
+   * <p>
+   * Each statistics element is live.
+   * 
+   * @return an independent list of the statistics, not null
+   */
+  public List<JobDispatchStatistics> getDispatchStatistics() {
+    return new ArrayList<JobDispatchStatistics>(_dispatchStatistics.values());
+  }
+
+  /**
+   * Gets the dispatch statistics totalled over all invokers.
+   * <p>
+   * The statistics element is live.
+   * 
+   * @return the statistics, not null
+   */
+  public JobDispatchStatistics getTotalDispatchStatistics() {
+    return _totalDispatchStatistics;
+  }
+
   /**
    * Cleanup the statistics deleting all information before a fixed instant.
    * 
@@ -77,6 +128,13 @@ public class TotallingNodeStatisticsGatherer implements CalculationNodeStatistic
         it.remove();
       }
     }
+    final Iterator<JobDispatchStatistics> dispatchIt = _dispatchStatistics.values().iterator();
+    while (dispatchIt.hasNext()) {
+      final JobDispatchStatistics dispatchStatistics = dispatchIt.next();
+      if (dispatchStatistics.getLastDispatchTime().isBefore(dropBefore)) {
+        dispatchIt.remove();
+      }
+    }
   }
 
 }
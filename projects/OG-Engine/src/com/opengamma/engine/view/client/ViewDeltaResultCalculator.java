@@ -10,8 +10,8 @@ import java.util.Map;
 import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.view.ColumnarViewDeltaResultModel;
 import com.opengamma.engine.view.DeltaDefinition;
-import com.opengamma.engine.view.InMemoryViewDeltaResultModel;
 import com.opengamma.engine.view.ViewCalculationResultModel;
 import com.opengamma.engine.view.ViewComputationResultModel;
 import com.opengamma.engine.view.ViewDefinition;
@@ -33,7 +33,7 @@ public class ViewDeltaResultCalculator {
    * @return  the delta between the two results, not null
    */
   public static ViewDeltaResultModel computeDeltaModel(ViewDefinition viewDefinition, ViewResultModel previousResult, ViewResultModel result) {
-    InMemoryViewDeltaResultModel deltaModel = new InMemoryViewDeltaResultModel();
+    ColumnarViewDeltaResultModel deltaModel = new ColumnarViewDeltaResultModel();
     deltaModel.setValuationTime(result.getValuationTime());
     deltaModel.setCalculationTime(result.getCalculationTime());
     deltaModel.setCalculationDuration(result.getCalculationDuration());
@@ -50,7 +50,7 @@ public class ViewDeltaResultCalculator {
     return deltaModel;
   }
   
-  private static void computeDeltaModel(ViewDefinition viewDefinition, InMemoryViewDeltaResultModel deltaModel, ComputationTargetSpecification targetSpec,
+  private static void computeDeltaModel(ViewDefinition viewDefinition, ColumnarViewDeltaResultModel deltaModel, ComputationTargetSpecification targetSpec,
       ViewResultModel previousResult, ViewResultModel result) {
     for (String calcConfigName : result.getCalculationConfigurationNames()) {
       DeltaDefinition deltaDefinition = viewDefinition.getCalculationConfiguration(calcConfigName).getDeltaDefinition();
@@ -60,7 +60,7 @@ public class ViewDeltaResultCalculator {
     }
   }
 
-  private static void computeDeltaModel(DeltaDefinition deltaDefinition, InMemoryViewDeltaResultModel deltaModel, ComputationTargetSpecification targetSpec,
+  private static void computeDeltaModel(DeltaDefinition deltaDefinition, ColumnarViewDeltaResultModel deltaModel, ComputationTargetSpecification targetSpec,
       String calcConfigName, ViewCalculationResultModel previousCalcModel, ViewCalculationResultModel resultCalcModel) {
     final Map<Pair<String, ValueProperties>, ComputedValue> resultValues = resultCalcModel.getValues(targetSpec);
     if (resultValues != null) {
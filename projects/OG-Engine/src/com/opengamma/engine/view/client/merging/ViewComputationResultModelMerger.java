@@ -6,7 +6,7 @@
 package com.opengamma.engine.view.client.merging;
 
 import com.opengamma.engine.value.ComputedValue;
-import com.opengamma.engine.view.InMemoryViewComputationResultModel;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
 import com.opengamma.engine.view.ViewComputationResultModel;
 import com.opengamma.engine.view.ViewResultModel;
 
@@ -15,7 +15,7 @@ import com.opengamma.engine.view.ViewResultModel;
  */
 public class ViewComputationResultModelMerger {
 
-  private InMemoryViewComputationResultModel _currentMergedResult;
+  private ColumnarViewComputationResultModel _currentMergedResult;
   
   /**
    * Adds a new result.
@@ -25,7 +25,7 @@ public class ViewComputationResultModelMerger {
   public void merge(ViewComputationResultModel newResult) {
     if (_currentMergedResult == null) {
       // Start of a new result
-      _currentMergedResult = new InMemoryViewComputationResultModel();
+      _currentMergedResult = new ColumnarViewComputationResultModel();
     }
     for (ComputedValue marketData : newResult.getAllMarketData()) {
       _currentMergedResult.addMarketData(marketData);
@@ -5,7 +5,7 @@
  */
 package com.opengamma.engine.view.client.merging;
 
-import com.opengamma.engine.view.InMemoryViewDeltaResultModel;
+import com.opengamma.engine.view.ColumnarViewDeltaResultModel;
 import com.opengamma.engine.view.ViewDeltaResultModel;
 import com.opengamma.engine.view.ViewResultModel;
 
@@ -14,12 +14,12 @@ import com.opengamma.engine.view.ViewResultModel;
  */
 public class ViewDeltaResultModelMerger {
 
-  private InMemoryViewDeltaResultModel _currentMergedResult;
+  private ColumnarViewDeltaResultModel _currentMergedResult;
   
   public void merge(ViewDeltaResultModel newResult) {
     if (_currentMergedResult == null) {
       // Start of a new result
-      _currentMergedResult = new InMemoryViewDeltaResultModel();
+      _currentMergedResult = new ColumnarViewDeltaResultModel();
       _currentMergedResult.setPreviousCalculationTime(newResult.getPreviousResultTimestamp());
     }
     ViewResultModelMergeUtils.merge(newResult, _currentMergedResult);
@@ -9,8 +9,10 @@ import java.util.Collection;
 
 import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.view.ColumnarViewResultModel;
 import com.opengamma.engine.view.InMemoryViewResultModel;
 import com.opengamma.engine.view.ViewCalculationResultModel;
+import com.opengamma.engine.view.ViewResultEntry;
 import com.opengamma.engine.view.ViewResultModel;
 
 /**
@@ -46,5 +48,19 @@ public class ViewResultModelMergeUtils {
       }
     }
   }
-  
+
+  public static void merge(ViewResultModel source, ColumnarViewResultModel destination) {
+    destination.setValuationTime(source.getValuationTime());
+    destination.setCalculationTime(source.getCalculationTime());
+    destination.setCalculationDuration(source.getCalculationDuration());
+    destination.setVersionCorrection(source.getVersionCorrection());
+    destination.setViewCycleId(source.getViewCycleId());
+    destination.setViewProcessId(source.getViewProcessId());
+
+    // A value already in the destination is replaced in place by the later one
+    for (ViewResultEntry result : source.getAllResults()) {
+      destination.addValue(result.getCalculationConfiguration(), result.getComputedValue());
+    }
+  }
+
 }
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import javax.time.Instant;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.fudgemsg.mapping.FudgeSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.Lifecycle;
+
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.engine.function.CompiledFunctionRepository;
+import com.opengamma.engine.view.ViewDefinition;
+import com.opengamma.engine.view.cache.AbstractBerkeleyDBComponent;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.monitor.OperationTimer;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+
+/**
+ * An implementation of {@link CompiledViewDefinitionCache} that stores the compiled view definitions, in the form written by
+ * {@link CompiledViewDefinitionEncoder}, in a Berkeley DB table.
+ */
+public class BerkeleyDBCompiledViewDefinitionCache implements CompiledViewDefinitionCache, Lifecycle {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(BerkeleyDBCompiledViewDefinitionCache.class);
+
+  private static final String DATABASE_NAME = "compiled_view_definition";
+
+  private final FudgeContext _fudgeContext;
+  private final Store _database;
+
+  /**
+   * The database holding the encoded compilations.
+   */
+  private final class Store extends AbstractBerkeleyDBComponent {
+
+    private Store(final Environment dbEnvironment) {
+      super(dbEnvironment, DATABASE_NAME);
+    }
+
+    @Override
+    protected DatabaseConfig getDatabaseConfig() {
+      return BerkeleyDBCompiledViewDefinitionCache.this.getDatabaseConfig();
+    }
+
+    @Override
+    protected Database getDatabase() {
+      return super.getDatabase();
+    }
+
+  }
+
+  public BerkeleyDBCompiledViewDefinitionCache(final Environment dbEnvironment, final FudgeContext fudgeContext) {
+    ArgumentChecker.notNull(dbEnvironment, "dbEnvironment");
+    ArgumentChecker.notNull(fudgeContext, "fudgeContext");
+    _fudgeContext = fudgeContext;
+    _database = new Store(dbEnvironment);
+  }
+
+  public FudgeContext getFudgeContext() {
+    return _fudgeContext;
+  }
+
+  protected DatabaseConfig getDatabaseConfig() {
+    final DatabaseConfig dbConfig = new DatabaseConfig();
+    dbConfig.setAllowCreate(true);
+    dbConfig.setTransactional(false);
+    dbConfig.setDeferredWrite(true);
+    return dbConfig;
+  }
+
+  private void startIfRequired() {
+    if (!isRunning()) {
+      s_logger.info("Starting on first call as wasn't called as part of lifecycle interface");
+      start();
+    }
+  }
+
+  @Override
+  public CompiledViewDefinitionWithGraphsImpl get(final CompiledViewDefinitionCacheKey key, final Instant valuationTime, final ViewDefinition viewDefinition,
+      final Portfolio portfolio, final CompiledFunctionRepository functions, final long functionInitId) {
+    ArgumentChecker.notNull(key, "key");
+    ArgumentChecker.notNull(valuationTime, "valuationTime");
+    startIfRequired();
+    final DatabaseEntry keyEntry = new DatabaseEntry(key.toByteArray());
+    final DatabaseEntry valueEntry = new DatabaseEntry();
+    if (_database.getDatabase().get(null, keyEntry, valueEntry, LockMode.READ_UNCOMMITTED) != OperationStatus.SUCCESS) {
+      s_logger.debug("No entry for {}", key);
+      return null;
+    }
+    final OperationTimer timer = new OperationTimer(s_logger, "Loading compiled view definition {}", key.getViewDefinitionName());
+    try {
+      final FudgeMsg msg = getFudgeContext().deserialize(valueEntry.getData()).getMessage();
+      final FudgeDeserializer deserializer = new FudgeDeserializer(getFudgeContext());
+      if (!CompiledViewDefinitionEncoder.isValidFor(deserializer, msg, valuationTime)) {
+        s_logger.info("Entry for {} not valid for {}", key, valuationTime);
+        return null;
+      }
+      final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition = CompiledViewDefinitionEncoder.decode(deserializer, msg, viewDefinition, portfolio, functions, functionInitId);
+      if ((compiledViewDefinition == null) || !compiledViewDefinition.isValidFor(valuationTime)) {
+        return null;
+      }
+      return compiledViewDefinition;
+    } catch (RuntimeException e) {
+      s_logger.warn("Couldn't load compiled view definition for {} - {}", key, e.getMessage());
+      s_logger.debug("Caught exception", e);
+      return null;
+    } finally {
+      timer.finished();
+    }
+  }
+
+  @Override
+  public void put(final CompiledViewDefinitionCacheKey key, final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition) {
+    ArgumentChecker.notNull(key, "key");
+    ArgumentChecker.notNull(compiledViewDefinition, "compiledViewDefinition");
+    startIfRequired();
+    final OperationTimer timer = new OperationTimer(s_logger, "Storing compiled view definition {}", key.getViewDefinitionName());
+    final byte[] data = getFudgeContext().toByteArray(CompiledViewDefinitionEncoder.encode(new FudgeSerializer(getFudgeContext()), compiledViewDefinition));
+    final OperationStatus status = _database.getDatabase().put(null, new DatabaseEntry(key.toByteArray()), new DatabaseEntry(data));
+    if (status != OperationStatus.SUCCESS) {
+      s_logger.warn("Unable to store compiled view definition for {} - {}", key, status);
+    } else {
+      _database.getDatabase().sync();
+      s_logger.info("Stored {} bytes for {}", data.length, key);
+    }
+    timer.finished();
+  }
+
+  // Lifecycle
+
+  @Override
+  public boolean isRunning() {
+    return _database.isRunning();
+  }
+
+  @Override
+  public synchronized void start() {
+    if (!_database.isRunning()) {
+      _database.start();
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    _database.stop();
+  }
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import java.io.File;
+
+import org.fudgemsg.FudgeContext;
+
+import com.opengamma.engine.view.cache.BerkeleyDBViewComputationCacheSource;
+import com.opengamma.util.SingletonFactoryBean;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+import com.sleepycat.je.Environment;
+
+/**
+ * Creates a {@link BerkeleyDBCompiledViewDefinitionCache}.
+ */
+public class BerkeleyDBCompiledViewDefinitionCacheFactoryBean extends SingletonFactoryBean<BerkeleyDBCompiledViewDefinitionCache> {
+
+  private static final String DEFAULT_FOLDER = "BerkeleyDBCompiledViewDefinitionCache";
+
+  private String _baseFolder;
+  private String _folder;
+  private FudgeContext _fudgeContext = OpenGammaFudgeContext.getInstance();
+
+  public BerkeleyDBCompiledViewDefinitionCacheFactoryBean() {
+    final String temp = System.getProperty("java.io.tmpdir");
+    setBaseFolder(temp);
+    setFolder(DEFAULT_FOLDER);
+  }
+
+  public void setBaseFolder(final String baseFolder) {
+    _baseFolder = baseFolder;
+  }
+
+  public String getBaseFolder() {
+    return _baseFolder;
+  }
+
+  public void setFolder(final String folder) {
+    _folder = folder;
+  }
+
+  public String getFolder() {
+    return _folder;
+  }
+
+  public void setFudgeContext(final FudgeContext fudgeContext) {
+    _fudgeContext = fudgeContext;
+  }
+
+  public FudgeContext getFudgeContext() {
+    return _fudgeContext;
+  }
+
+  @Override
+  protected BerkeleyDBCompiledViewDefinitionCache createObject() {
+    final File folder = new File(new File(getBaseFolder()), getFolder());
+    final Environment environment = BerkeleyDBViewComputationCacheSource.constructDatabaseEnvironment(folder, false);
+    return new BerkeleyDBCompiledViewDefinitionCache(environment, getFudgeContext());
+  }
+
+}
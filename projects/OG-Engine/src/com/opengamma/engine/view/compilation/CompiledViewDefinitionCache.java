@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import javax.time.Instant;
+
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.engine.function.CompiledFunctionRepository;
+import com.opengamma.engine.view.ViewDefinition;
+
+/**
+ * Store of compiled view definitions that can be used in place of compiling the view definition, for example when a view
+ * process is restarted.
+ */
+public interface CompiledViewDefinitionCache {
+
+  /**
+   * Returns a compiled view definition from the cache. The dependency graphs are linked to the functions from the repository, so
+   * the result is only returned if all of the functions it uses are present and it is valid for the valuation time.
+   *
+   * @param key the key, not null
+   * @param valuationTime the valuation time the compilation must be valid for, not null
+   * @param viewDefinition the view definition the key was created for, not null
+   * @param portfolio the portfolio the key was created for, null if there is none
+   * @param functions the compiled functions to link the dependency graphs to, not null
+   * @param functionInitId the function initialization identifier of the functions
+   * @return the compiled view definition, or null if there is no valid entry in the cache
+   */
+  CompiledViewDefinitionWithGraphsImpl get(CompiledViewDefinitionCacheKey key, Instant valuationTime, ViewDefinition viewDefinition, Portfolio portfolio,
+      CompiledFunctionRepository functions, long functionInitId);
+
+  /**
+   * Stores a compiled view definition in the cache, replacing any existing entry for the key.
+   *
+   * @param key the key, not null
+   * @param compiledViewDefinition the compiled view definition, not null
+   */
+  void put(CompiledViewDefinitionCacheKey key, CompiledViewDefinitionWithGraphsImpl compiledViewDefinition);
+
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.mapping.FudgeSerializer;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.PortfolioNode;
+import com.opengamma.core.position.Position;
+import com.opengamma.core.position.PositionOrTrade;
+import com.opengamma.core.position.Trade;
+import com.opengamma.core.security.Security;
+import com.opengamma.core.security.SecurityLink;
+import com.opengamma.engine.function.FunctionDefinition;
+import com.opengamma.engine.view.ViewDefinition;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Key for a compiled view definition held in a {@link CompiledViewDefinitionCache}.
+ * <p>
+ * The key is a digest of everything, other than the valuation time, that the dependency graphs depend on - the content of the
+ * view definition, the versions of the portfolio, its nodes, positions, trades and their securities, the set of available
+ * functions and the market data specification. The function initialization identifier is not used as it changes each time
+ * the functions are initialized, for example when a view processor is restarted.
+ * <p>
+ * Securities are identified by their versioned unique identifiers so the portfolio should be resolved before the key is
+ * created. An unresolved security link contributes only its identifiers, which will not detect a change to the security.
+ */
+public final class CompiledViewDefinitionCacheKey {
+
+  private final String _viewDefinitionName;
+  private final byte[] _digest;
+  private final int _hashCode;
+
+  private CompiledViewDefinitionCacheKey(final String viewDefinitionName, final byte[] digest) {
+    _viewDefinitionName = viewDefinitionName;
+    _digest = digest;
+    _hashCode = Arrays.hashCode(digest);
+  }
+
+  /**
+   * Creates a key.
+   *
+   * @param fudgeContext the Fudge context used to encode the view definition, not null
+   * @param viewDefinition the view definition, not null
+   * @param portfolio the portfolio with its securities resolved, null if the view definition does not reference one
+   * @param functions the function definitions available to the compiler, not null
+   * @param marketDataSpecification a description of the market data source, null if not known
+   * @return the key, not null
+   */
+  public static CompiledViewDefinitionCacheKey of(final FudgeContext fudgeContext, final ViewDefinition viewDefinition, final Portfolio portfolio,
+      final Collection<FunctionDefinition> functions, final String marketDataSpecification) {
+    ArgumentChecker.notNull(fudgeContext, "fudgeContext");
+    ArgumentChecker.notNull(viewDefinition, "viewDefinition");
+    ArgumentChecker.notNull(functions, "functions");
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new OpenGammaRuntimeException("SHA-1 not available", e);
+    }
+    final FudgeSerializer serializer = new FudgeSerializer(fudgeContext);
+    digest.update(fudgeContext.toByteArray(serializer.objectToFudgeMsg(viewDefinition)));
+    if (portfolio != null) {
+      update(digest, portfolio.getUniqueId().toString());
+      updateNode(digest, portfolio.getRootNode());
+    } else {
+      update(digest, null);
+    }
+    final List<String> functionIds = new ArrayList<String>(functions.size());
+    for (FunctionDefinition function : functions) {
+      functionIds.add(function.getUniqueId() + ":" + function.getShortName() + ":" + function.getClass().getName());
+    }
+    Collections.sort(functionIds);
+    for (String functionId : functionIds) {
+      update(digest, functionId);
+    }
+    update(digest, marketDataSpecification);
+    return new CompiledViewDefinitionCacheKey(viewDefinition.getName(), digest.digest());
+  }
+
+  private static void updateNode(final MessageDigest digest, final PortfolioNode node) {
+    update(digest, String.valueOf(node.getUniqueId()));
+    for (Position position : node.getPositions()) {
+      updatePositionOrTrade(digest, position);
+      for (Trade trade : position.getTrades()) {
+        updatePositionOrTrade(digest, trade);
+      }
+    }
+    for (PortfolioNode childNode : node.getChildNodes()) {
+      updateNode(digest, childNode);
+    }
+    // Marks the end of the node so that the tree shape is part of the digest
+    update(digest, null);
+  }
+
+  private static void updatePositionOrTrade(final MessageDigest digest, final PositionOrTrade positionOrTrade) {
+    update(digest, String.valueOf(positionOrTrade.getUniqueId()));
+    update(digest, String.valueOf(positionOrTrade.getQuantity()));
+    final SecurityLink link = positionOrTrade.getSecurityLink();
+    final Security security = (link != null) ? link.getTarget() : null;
+    if (security != null) {
+      update(digest, String.valueOf(security.getUniqueId()));
+    } else if (link != null) {
+      update(digest, String.valueOf(link.getObjectId()));
+      update(digest, String.valueOf(link.getExternalId()));
+    } else {
+      update(digest, null);
+    }
+  }
+
+  private static void update(final MessageDigest digest, final String value) {
+    if (value != null) {
+      final int length = value.length();
+      for (int i = 0; i < length; i++) {
+        final char c = value.charAt(i);
+        digest.update((byte) (c >> 8));
+        digest.update((byte) c);
+      }
+    }
+    // Separator so that adjacent values can't run together
+    digest.update((byte) 0xFF);
+  }
+
+  /**
+   * Returns the name of the view definition, for diagnostic purposes.
+   *
+   * @return the view definition name
+   */
+  public String getViewDefinitionName() {
+    return _viewDefinitionName;
+  }
+
+  /**
+   * Returns the key in binary form for storage.
+   *
+   * @return the digest of the key components, not null
+   */
+  public byte[] toByteArray() {
+    return _digest.clone();
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof CompiledViewDefinitionCacheKey)) {
+      return false;
+    }
+    return Arrays.equals(_digest, ((CompiledViewDefinitionCacheKey) o)._digest);
+  }
+
+  @Override
+  public int hashCode() {
+    return _hashCode;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder("CompiledViewDefinitionCacheKey[");
+    sb.append(_viewDefinitionName).append(", ");
+    for (byte b : _digest) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.append(']').toString();
+  }
+
+}
@@ -0,0 +1,303 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.time.Instant;
+
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.fudgemsg.mapping.FudgeSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.MemoryUtils;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.function.CompiledFunctionDefinition;
+import com.opengamma.engine.function.CompiledFunctionRepository;
+import com.opengamma.engine.function.FunctionParameters;
+import com.opengamma.engine.function.ParameterizedFunction;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ViewDefinition;
+
+/**
+ * Compact Fudge encoding of the dependency graphs of a {@link CompiledViewDefinitionWithGraphsImpl} for persistent storage.
+ * <p>
+ * Unlike {@link com.opengamma.engine.fudgemsg.DependencyGraphFudgeBuilder}, each target, value specification, function
+ * identifier and parameter set is written once to a table and referenced by index from the nodes, and the functions are
+ * linked back to a compiled function repository when decoded so that the graphs can be executed.
+ *
+ * <pre>
+ * message CompiledViewDefinition {
+ *   optional Instant validFrom;
+ *   optional Instant validTo;
+ *   required boolean portfolio;                // whether the compilation referenced the portfolio
+ *   repeated ComputationTargetSpecification target;
+ *   repeated ValueSpecification value;
+ *   repeated string function;                  // function unique identifiers
+ *   repeated FunctionParameters parameters;
+ *   repeated Graph graph;
+ * }
+ * message Graph {
+ *   required string name;
+ *   repeated Node node;                        // in execution order
+ *   repeated Terminal terminal;
+ * }
+ * message Node {
+ *   required int target;
+ *   required int function;
+ *   required int parameters;
+ *   optional string parameterizedFunction;     // unique identifier of the parameterized function
+ *   required int[] input;
+ *   required int[] output;
+ *   required int[] inputNode;                  // indices of earlier nodes in the graph
+ * }
+ * message Terminal {
+ *   required int value;
+ *   repeated ValueRequirement requirement;
+ * }
+ * </pre>
+ */
+public final class CompiledViewDefinitionEncoder {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(CompiledViewDefinitionEncoder.class);
+
+  private static final String VALID_FROM_FIELD = "validFrom";
+  private static final String VALID_TO_FIELD = "validTo";
+  private static final String PORTFOLIO_FIELD = "portfolio";
+  private static final String TARGET_FIELD = "target";
+  private static final String VALUE_FIELD = "value";
+  private static final String FUNCTION_FIELD = "function";
+  private static final String PARAMETERS_FIELD = "parameters";
+  private static final String GRAPH_FIELD = "graph";
+  private static final String NAME_FIELD = "name";
+  private static final String NODE_FIELD = "node";
+  private static final String TERMINAL_FIELD = "terminal";
+  private static final String PARAMETERIZED_FUNCTION_FIELD = "parameterizedFunction";
+  private static final String INPUT_FIELD = "input";
+  private static final String OUTPUT_FIELD = "output";
+  private static final String INPUT_NODE_FIELD = "inputNode";
+  private static final String REQUIREMENT_FIELD = "requirement";
+
+  private CompiledViewDefinitionEncoder() {
+  }
+
+  /**
+   * Table of objects written once to the message and referenced by index.
+   */
+  private static final class Table<T> {
+
+    private final Map<T, Integer> _index = new HashMap<T, Integer>();
+    private final List<T> _values = new ArrayList<T>();
+
+    public int get(final T value) {
+      Integer index = _index.get(value);
+      if (index == null) {
+        index = _values.size();
+        _index.put(value, index);
+        _values.add(value);
+      }
+      return index;
+    }
+
+    public List<T> getValues() {
+      return _values;
+    }
+
+  }
+
+  private static int[] indices(final Set<ValueSpecification> values, final Table<ValueSpecification> table) {
+    final int[] result = new int[values.size()];
+    int i = 0;
+    for (ValueSpecification value : values) {
+      result[i++] = table.get(value);
+    }
+    return result;
+  }
+
+  /**
+   * Encodes the dependency graphs and validity of a compiled view definition. The view definition and portfolio are not
+   * encoded; they are part of the key the encoded form is stored against.
+   *
+   * @param serializer the Fudge serializer, not null
+   * @param compiledViewDefinition the compiled view definition, not null
+   * @return the message, not null
+   */
+  public static MutableFudgeMsg encode(final FudgeSerializer serializer, final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition) {
+    final Table<ComputationTargetSpecification> targets = new Table<ComputationTargetSpecification>();
+    final Table<ValueSpecification> values = new Table<ValueSpecification>();
+    final Table<String> functions = new Table<String>();
+    final Table<FunctionParameters> parameters = new Table<FunctionParameters>();
+    final List<MutableFudgeMsg> graphs = new ArrayList<MutableFudgeMsg>();
+    for (DependencyGraph graph : compiledViewDefinition.getAllDependencyGraphs()) {
+      final MutableFudgeMsg graphMsg = serializer.newMessage();
+      graphMsg.add(NAME_FIELD, null, graph.getCalculationConfigurationName());
+      final Map<DependencyNode, Integer> nodeIndex = new HashMap<DependencyNode, Integer>();
+      for (DependencyNode node : graph.getExecutionOrder()) {
+        final MutableFudgeMsg nodeMsg = serializer.newMessage();
+        nodeMsg.add(TARGET_FIELD, null, targets.get(node.getComputationTarget()));
+        final ParameterizedFunction function = node.getFunction();
+        nodeMsg.add(FUNCTION_FIELD, null, functions.get(function.getFunction().getFunctionDefinition().getUniqueId()));
+        nodeMsg.add(PARAMETERS_FIELD, null, parameters.get(function.getParameters()));
+        if (function.getUniqueId() != null) {
+          nodeMsg.add(PARAMETERIZED_FUNCTION_FIELD, null, function.getUniqueId());
+        }
+        nodeMsg.add(INPUT_FIELD, null, indices(node.getInputValues(), values));
+        nodeMsg.add(OUTPUT_FIELD, null, indices(node.getOutputValues(), values));
+        final int[] inputNodes = new int[node.getInputNodes().size()];
+        int i = 0;
+        for (DependencyNode inputNode : node.getInputNodes()) {
+          inputNodes[i++] = nodeIndex.get(inputNode);
+        }
+        nodeMsg.add(INPUT_NODE_FIELD, null, inputNodes);
+        nodeIndex.put(node, nodeIndex.size());
+        graphMsg.add(NODE_FIELD, null, nodeMsg);
+      }
+      for (Map.Entry<ValueSpecification, Set<ValueRequirement>> terminal : graph.getTerminalOutputs().entrySet()) {
+        final MutableFudgeMsg terminalMsg = serializer.newMessage();
+        terminalMsg.add(VALUE_FIELD, null, values.get(terminal.getKey()));
+        if (terminal.getValue() != null) {
+          for (ValueRequirement requirement : terminal.getValue()) {
+            serializer.addToMessage(terminalMsg, REQUIREMENT_FIELD, null, requirement);
+          }
+        }
+        graphMsg.add(TERMINAL_FIELD, null, terminalMsg);
+      }
+      graphs.add(graphMsg);
+    }
+    final MutableFudgeMsg msg = serializer.newMessage();
+    if (compiledViewDefinition.getValidFrom() != null) {
+      serializer.addToMessage(msg, VALID_FROM_FIELD, null, compiledViewDefinition.getValidFrom());
+    }
+    if (compiledViewDefinition.getValidTo() != null) {
+      serializer.addToMessage(msg, VALID_TO_FIELD, null, compiledViewDefinition.getValidTo());
+    }
+    msg.add(PORTFOLIO_FIELD, null, compiledViewDefinition.getPortfolio() != null);
+    for (ComputationTargetSpecification target : targets.getValues()) {
+      serializer.addToMessage(msg, TARGET_FIELD, null, target);
+    }
+    for (ValueSpecification value : values.getValues()) {
+      serializer.addToMessage(msg, VALUE_FIELD, null, value);
+    }
+    for (String function : functions.getValues()) {
+      msg.add(FUNCTION_FIELD, null, function);
+    }
+    for (FunctionParameters parameter : parameters.getValues()) {
+      serializer.addToMessageWithClassHeaders(msg, PARAMETERS_FIELD, null, parameter);
+    }
+    for (MutableFudgeMsg graph : graphs) {
+      msg.add(GRAPH_FIELD, null, graph);
+    }
+    return msg;
+  }
+
+  /**
+   * Tests whether an encoded compilation is valid for a valuation time without decoding the graphs.
+   *
+   * @param deserializer the Fudge deserializer, not null
+   * @param msg the encoded form, not null
+   * @param valuationTime the valuation time, not null
+   * @return true if the compilation is valid for the time
+   */
+  public static boolean isValidFor(final FudgeDeserializer deserializer, final FudgeMsg msg, final Instant valuationTime) {
+    final FudgeField validFrom = msg.getByName(VALID_FROM_FIELD);
+    if ((validFrom != null) && valuationTime.isBefore(deserializer.fieldValueToObject(Instant.class, validFrom))) {
+      return false;
+    }
+    final FudgeField validTo = msg.getByName(VALID_TO_FIELD);
+    if ((validTo != null) && valuationTime.isAfter(deserializer.fieldValueToObject(Instant.class, validTo))) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Decodes a compiled view definition, linking the nodes to the compiled functions.
+   *
+   * @param deserializer the Fudge deserializer, not null
+   * @param msg the encoded form, not null
+   * @param viewDefinition the view definition that was compiled, not null
+   * @param portfolio the portfolio that was compiled, null if there is none
+   * @param functions the compiled functions, not null
+   * @param functionInitId the function initialization identifier of the functions
+   * @return the compiled view definition, or null if a function used by the graphs is not in the repository
+   */
+  public static CompiledViewDefinitionWithGraphsImpl decode(final FudgeDeserializer deserializer, final FudgeMsg msg, final ViewDefinition viewDefinition,
+      final Portfolio portfolio, final CompiledFunctionRepository functions, final long functionInitId) {
+    final List<ComputationTargetSpecification> targets = new ArrayList<ComputationTargetSpecification>();
+    for (FudgeField field : msg.getAllByName(TARGET_FIELD)) {
+      targets.add(MemoryUtils.instance(deserializer.fieldValueToObject(ComputationTargetSpecification.class, field)));
+    }
+    final List<ValueSpecification> values = new ArrayList<ValueSpecification>();
+    for (FudgeField field : msg.getAllByName(VALUE_FIELD)) {
+      values.add(MemoryUtils.instance(deserializer.fieldValueToObject(ValueSpecification.class, field)));
+    }
+    final List<CompiledFunctionDefinition> compiledFunctions = new ArrayList<CompiledFunctionDefinition>();
+    for (FudgeField field : msg.getAllByName(FUNCTION_FIELD)) {
+      final String functionId = (String) field.getValue();
+      final CompiledFunctionDefinition function = functions.getDefinition(functionId);
+      if (function == null) {
+        s_logger.info("Function {} no longer available", functionId);
+        return null;
+      }
+      compiledFunctions.add(function);
+    }
+    final List<FunctionParameters> parameters = new ArrayList<FunctionParameters>();
+    for (FudgeField field : msg.getAllByName(PARAMETERS_FIELD)) {
+      parameters.add(deserializer.fieldValueToObject(FunctionParameters.class, field));
+    }
+    final Map<String, DependencyGraph> graphs = new HashMap<String, DependencyGraph>();
+    for (FudgeField graphField : msg.getAllByName(GRAPH_FIELD)) {
+      final FudgeMsg graphMsg = (FudgeMsg) graphField.getValue();
+      final DependencyGraph graph = new DependencyGraph(graphMsg.getString(NAME_FIELD));
+      final List<DependencyNode> nodes = new ArrayList<DependencyNode>();
+      for (FudgeField nodeField : graphMsg.getAllByName(NODE_FIELD)) {
+        final FudgeMsg nodeMsg = (FudgeMsg) nodeField.getValue();
+        final DependencyNode node = new DependencyNode(targets.get(nodeMsg.getInt(TARGET_FIELD)));
+        final ParameterizedFunction function = new ParameterizedFunction(compiledFunctions.get(nodeMsg.getInt(FUNCTION_FIELD)), parameters.get(nodeMsg.getInt(PARAMETERS_FIELD)));
+        function.setUniqueId(nodeMsg.getString(PARAMETERIZED_FUNCTION_FIELD));
+        node.setFunction(function);
+        for (int input : nodeMsg.getValue(int[].class, INPUT_FIELD)) {
+          node.addInputValue(values.get(input));
+        }
+        for (int output : nodeMsg.getValue(int[].class, OUTPUT_FIELD)) {
+          node.addOutputValue(values.get(output));
+        }
+        for (int inputNode : nodeMsg.getValue(int[].class, INPUT_NODE_FIELD)) {
+          node.addInputNode(nodes.get(inputNode));
+        }
+        nodes.add(node);
+        graph.addDependencyNode(node);
+      }
+      final Map<ValueSpecification, Set<ValueRequirement>> terminalOutputs = new HashMap<ValueSpecification, Set<ValueRequirement>>();
+      for (FudgeField terminalField : graphMsg.getAllByName(TERMINAL_FIELD)) {
+        final FudgeMsg terminalMsg = (FudgeMsg) terminalField.getValue();
+        final Set<ValueRequirement> requirements = new HashSet<ValueRequirement>();
+        for (FudgeField requirementField : terminalMsg.getAllByName(REQUIREMENT_FIELD)) {
+          requirements.add(MemoryUtils.instance(deserializer.fieldValueToObject(ValueRequirement.class, requirementField)));
+        }
+        terminalOutputs.put(values.get(terminalMsg.getInt(VALUE_FIELD)), requirements);
+      }
+      graph.addTerminalOutputs(terminalOutputs);
+      graphs.put(graph.getCalculationConfigurationName(), graph);
+    }
+    final boolean hasPortfolio = Boolean.TRUE.equals(msg.getBoolean(PORTFOLIO_FIELD));
+    return new CompiledViewDefinitionWithGraphsImpl(viewDefinition, graphs, hasPortfolio ? portfolio : null, functionInitId);
+  }
+
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.ObjectUtils;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.function.ParameterizedFunction;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Produces a dependency graph from a previously compiled graph by discarding everything that depends on a set of targets and
+ * merging in partial graphs built for the replacement requirements.
+ * <p>
+ * The previous graph is not modified; the nodes that are kept are copied. A node from a partial graph that produces a value
+ * already in the kept graph is merged with the existing node if they are for the same function, otherwise the merge fails and
+ * the caller must compile the graph in full.
+ */
+/* package */class DependencyGraphMerger {
+
+  private final String _calculationConfigurationName;
+  private final List<DependencyNode> _nodes = new ArrayList<DependencyNode>();
+  private final Map<ValueSpecification, DependencyNode> _outputs = new HashMap<ValueSpecification, DependencyNode>();
+  private final Map<ValueSpecification, Set<ValueRequirement>> _terminalOutputs = new HashMap<ValueSpecification, Set<ValueRequirement>>();
+
+  /**
+   * Creates a merger from the parts of the previous graph that are still valid.
+   *
+   * @param previous the previously compiled graph, not null
+   * @param removedTargets the targets that anything in the new graph must not depend on, not null
+   */
+  public DependencyGraphMerger(final DependencyGraph previous, final Set<ComputationTargetSpecification> removedTargets) {
+    ArgumentChecker.notNull(previous, "previous");
+    ArgumentChecker.notNull(removedTargets, "removedTargets");
+    _calculationConfigurationName = previous.getCalculationConfigurationName();
+    final List<DependencyNode> executionOrder = previous.getExecutionOrder();
+    // Discard nodes on the removed targets and everything that uses their values
+    final Set<DependencyNode> discarded = new HashSet<DependencyNode>();
+    for (DependencyNode node : executionOrder) {
+      if (removedTargets.contains(node.getComputationTarget())) {
+        discarded.add(node);
+      } else {
+        for (DependencyNode input : node.getInputNodes()) {
+          if (discarded.contains(input)) {
+            discarded.add(node);
+            break;
+          }
+        }
+      }
+    }
+    // Keep the terminal outputs that were requested for targets which are still valid, and the nodes needed to produce them
+    final Set<DependencyNode> required = new HashSet<DependencyNode>();
+    final LinkedList<DependencyNode> pending = new LinkedList<DependencyNode>();
+    for (Map.Entry<ValueSpecification, Set<ValueRequirement>> terminalOutput : previous.getTerminalOutputs().entrySet()) {
+      final DependencyNode node = previous.getNodeProducing(terminalOutput.getKey());
+      if ((node == null) || discarded.contains(node) || (terminalOutput.getValue() == null)) {
+        continue;
+      }
+      final Set<ValueRequirement> requirements = new HashSet<ValueRequirement>();
+      for (ValueRequirement requirement : terminalOutput.getValue()) {
+        if (!removedTargets.contains(requirement.getTargetSpecification())) {
+          requirements.add(requirement);
+        }
+      }
+      if (!requirements.isEmpty()) {
+        _terminalOutputs.put(terminalOutput.getKey(), requirements);
+        pending.add(node);
+      }
+    }
+    while (!pending.isEmpty()) {
+      final DependencyNode node = pending.removeFirst();
+      if (required.add(node)) {
+        pending.addAll(node.getInputNodes());
+      }
+    }
+    final Map<DependencyNode, DependencyNode> copies = new HashMap<DependencyNode, DependencyNode>();
+    for (DependencyNode node : executionOrder) {
+      if (required.contains(node)) {
+        copies.put(node, addNode(node, copies));
+      }
+    }
+  }
+
+  /**
+   * Adds a copy of a node, whose inputs must already have been added.
+   */
+  private DependencyNode addNode(final DependencyNode node, final Map<DependencyNode, DependencyNode> copies) {
+    final DependencyNode copy = new DependencyNode(node.getComputationTarget());
+    copy.setFunction(node.getFunction());
+    copy.addOutputValues(node.getOutputValues());
+    for (ValueSpecification input : node.getInputValues()) {
+      copy.addInputValue(input);
+    }
+    for (DependencyNode input : node.getInputNodes()) {
+      copy.addInputNode(copies.get(input));
+    }
+    for (ValueSpecification output : node.getOutputValues()) {
+      _outputs.put(output, copy);
+    }
+    _nodes.add(copy);
+    return copy;
+  }
+
+  private static boolean isSameFunction(final DependencyNode a, final DependencyNode b) {
+    final ParameterizedFunction fa = a.getFunction();
+    final ParameterizedFunction fb = b.getFunction();
+    return a.getComputationTarget().equals(b.getComputationTarget())
+        && fa.getFunction().getFunctionDefinition().getUniqueId().equals(fb.getFunction().getFunctionDefinition().getUniqueId())
+        && ObjectUtils.equals(fa.getParameters(), fb.getParameters());
+  }
+
+  /**
+   * Merges a partial graph, built for the requirements of new or changed targets, into the graph.
+   *
+   * @param partial the partial graph, not null
+   * @return true if the graph was merged, false if it conflicts with the existing graph
+   */
+  public boolean merge(final DependencyGraph partial) {
+    ArgumentChecker.notNull(partial, "partial");
+    final Map<DependencyNode, DependencyNode> copies = new HashMap<DependencyNode, DependencyNode>();
+    for (DependencyNode node : partial.getExecutionOrder()) {
+      DependencyNode existing = null;
+      for (ValueSpecification output : node.getOutputValues()) {
+        final DependencyNode producer = _outputs.get(output);
+        if (producer != null) {
+          if (existing == null) {
+            existing = producer;
+          } else if (existing != producer) {
+            return false;
+          }
+        }
+      }
+      if (existing == null) {
+        copies.put(node, addNode(node, copies));
+        continue;
+      }
+      if (!isSameFunction(existing, node) || !existing.getInputValues().containsAll(node.getInputValues())) {
+        return false;
+      }
+      for (ValueSpecification output : node.getOutputValues()) {
+        if (!_outputs.containsKey(output)) {
+          existing.addOutputValue(output);
+          _outputs.put(output, existing);
+        }
+      }
+      copies.put(node, existing);
+    }
+    for (Map.Entry<ValueSpecification, Set<ValueRequirement>> terminalOutput : partial.getTerminalOutputs().entrySet()) {
+      if (terminalOutput.getValue() == null) {
+        continue;
+      }
+      Set<ValueRequirement> requirements = _terminalOutputs.get(terminalOutput.getKey());
+      if (requirements == null) {
+        requirements = new HashSet<ValueRequirement>();
+        _terminalOutputs.put(terminalOutput.getKey(), requirements);
+      }
+      requirements.addAll(terminalOutput.getValue());
+    }
+    return true;
+  }
+
+  /**
+   * Returns the merged graph with any values no longer required removed.
+   *
+   * @return the graph, not null
+   */
+  public DependencyGraph getDependencyGraph() {
+    final DependencyGraph graph = new DependencyGraph(_calculationConfigurationName);
+    for (DependencyNode node : _nodes) {
+      graph.addDependencyNode(node);
+    }
+    graph.addTerminalOutputs(_terminalOutputs);
+    graph.removeUnnecessaryValues();
+    graph.getCompactGraph();
+    return graph;
+  }
+
+}
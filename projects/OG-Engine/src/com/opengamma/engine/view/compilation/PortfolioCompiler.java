@@ -5,8 +5,13 @@
  */
 package com.opengamma.engine.view.compilation;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.opengamma.DataNotFoundException;
 import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.core.position.Portfolio;
@@ -16,6 +21,7 @@ import com.opengamma.core.position.impl.PortfolioNodeTraverser;
 import com.opengamma.core.position.impl.SimplePortfolio;
 import com.opengamma.core.security.Security;
 import com.opengamma.core.security.SecuritySource;
+import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyGraphBuilder;
 import com.opengamma.engine.view.ResultModelDefinition;
 import com.opengamma.engine.view.ResultOutputMode;
@@ -23,12 +29,15 @@ import com.opengamma.engine.view.ViewCalculationConfiguration;
 import com.opengamma.engine.view.ViewDefinition;
 import com.opengamma.id.UniqueId;
 import com.opengamma.id.VersionCorrection;
+import com.opengamma.util.tuple.Pair;
 
 /**
  * Compiles Portfolio requirements into the dependency graphs.
  */
 public final class PortfolioCompiler {
 
+  private static final Logger s_logger = LoggerFactory.getLogger(PortfolioCompiler.class);
+
   private PortfolioCompiler() {
   }
 
@@ -83,6 +92,58 @@ public final class PortfolioCompiler {
     return portfolio;
   }
 
+  /**
+   * Updates the dependency graphs from a previous compilation of the same view definition for the current version of the
+   * portfolio. The old and new portfolio trees are compared; anything in the previous graphs that depends on a position, trade
+   * or node that has changed or been removed is discarded, and the portfolio requirements for positions, trades and nodes that
+   * have changed or been added are resolved and merged into what remains.
+   * <p>
+   * The specific requirements of the view definition are unaffected by portfolio changes so are kept from the previous graphs.
+   * 
+   * @param compilationContext  the context of the view definition compilation
+   * @param versionCorrection  the version-correction at which to operate, not null
+   * @param previous  the previous compilation of the view definition, not null
+   * @return the fully-resolved portfolio structure and the dependency graphs by calculation configuration, or null if the
+   *         previous compilation can't be updated and the view definition must be compiled in full
+   */
+  protected static Pair<Portfolio, Map<String, DependencyGraph>> executeIncremental(ViewCompilationContext compilationContext, VersionCorrection versionCorrection,
+      CompiledViewDefinitionWithGraphsImpl previous) {
+    if ((previous.getPortfolio() == null) || !isPortfolioOutputEnabled(compilationContext.getViewDefinition())) {
+      return null;
+    }
+    final Portfolio portfolio = getPortfolio(compilationContext, versionCorrection);
+    final PortfolioDifference difference = new PortfolioDifference(previous.getPortfolio(), portfolio);
+    s_logger.info("Portfolio change removes {} and adds {} target(s)", difference.getRemovedTargets().size(), difference.getAddedTargets().size());
+    final Map<String, DependencyGraph> graphs = new HashMap<String, DependencyGraph>();
+    for (ViewCalculationConfiguration calcConfig : compilationContext.getViewDefinition().getAllCalculationConfigurations()) {
+      final DependencyGraph previousGraph = previous.getDependencyGraph(calcConfig.getName());
+      if (previousGraph == null) {
+        return null;
+      }
+      if (difference.isEmpty()) {
+        graphs.put(calcConfig.getName(), previousGraph);
+        continue;
+      }
+      final DependencyGraphMerger merger = new DependencyGraphMerger(previousGraph, difference.getRemovedTargets());
+      if ((calcConfig.getAllPortfolioRequirements().size() != 0) && !difference.getAddedTargets().isEmpty()) {
+        final DependencyGraphBuilder builder = compilationContext.getBuilder(calcConfig.getName());
+        final PortfolioCompilerTraversalCallback traversalCallback = new PortfolioCompilerTraversalCallback(calcConfig, builder, difference.getAddedTargets());
+        PortfolioNodeTraverser.parallel(traversalCallback, compilationContext.getServices().getExecutorService()).traverse(portfolio.getRootNode());
+        try {
+          builder.waitForDependencyGraphBuild();
+        } catch (InterruptedException e) {
+          throw new OpenGammaRuntimeException("Interrupted", e);
+        }
+        if (!merger.merge(builder.getDependencyGraph())) {
+          s_logger.info("Can't merge changes into previous graph for {}", calcConfig.getName());
+          return null;
+        }
+      }
+      graphs.put(calcConfig.getName(), merger.getDependencyGraph());
+    }
+    return Pair.of(portfolio, graphs);
+  }
+
   /**
    * Tests whether the view has portfolio outputs enabled.
    * 
@@ -103,13 +164,24 @@ public final class PortfolioCompiler {
    * @param versionCorrection  the version-correction at which the portfolio is required, not null
    */
   private static Portfolio getPortfolio(ViewCompilationContext compilationContext, VersionCorrection versionCorrection) {
-    UniqueId portfolioId = compilationContext.getViewDefinition().getPortfolioId();
+    return getPortfolio(compilationContext.getViewDefinition(), compilationContext.getServices().getComputationTargetResolver().getPositionSource(), versionCorrection);
+  }
+
+  /**
+   * Loads the portfolio referenced by a view definition, at the version that would be used to compile it.
+   * 
+   * @param viewDefinition  the view definition, not null
+   * @param positionSource  the position source, null if none is available
+   * @param versionCorrection  the version-correction at which the portfolio is required, not null
+   * @return the portfolio, not null
+   */
+  public static Portfolio getPortfolio(ViewDefinition viewDefinition, PositionSource positionSource, VersionCorrection versionCorrection) {
+    UniqueId portfolioId = viewDefinition.getPortfolioId();
     if (portfolioId == null) {
-      throw new OpenGammaRuntimeException("The view definition '" + compilationContext.getViewDefinition().getName() + "' contains required portfolio outputs, but it does not reference a portfolio.");
+      throw new OpenGammaRuntimeException("The view definition '" + viewDefinition.getName() + "' contains required portfolio outputs, but it does not reference a portfolio.");
     }
-    PositionSource positionSource = compilationContext.getServices().getComputationTargetResolver().getPositionSource();
     if (positionSource == null) {
-      throw new OpenGammaRuntimeException("The view definition '" + compilationContext.getViewDefinition().getName()
+      throw new OpenGammaRuntimeException("The view definition '" + viewDefinition.getName()
           + "' contains required portfolio outputs, but the compiler does not have access to a position source.");
     }
     // NOTE jonathan 2011-11-11 -- not sure what the right thing to do is here. Reasonable compromise seems to be to
@@ -125,7 +197,7 @@ public final class PortfolioCompiler {
       }
     } catch (DataNotFoundException ex) {
       throw new OpenGammaRuntimeException("Unable to resolve portfolio '" + portfolioId + "' in position source '" + positionSource +
-          "' used by view definition '" + compilationContext.getViewDefinition().getName() + "'", ex);
+          "' used by view definition '" + viewDefinition.getName() + "'", ex);
     }
     return portfolio;
   }
@@ -36,15 +36,32 @@ import com.opengamma.util.tuple.Pair;
   private final ResultModelDefinition _resultModelDefinition;
   private final ConcurrentMap<UniqueId, Set<Pair<String, ValueProperties>>> _nodeRequirements = new ConcurrentHashMap<UniqueId, Set<Pair<String, ValueProperties>>>();
   private final DependencyGraphBuilder _builder;
+  private final Set<ComputationTargetSpecification> _targets;
 
   public PortfolioCompilerTraversalCallback(final ViewCalculationConfiguration calculationConfiguration, final DependencyGraphBuilder builder) {
+    this(calculationConfiguration, builder, null);
+  }
+
+  /**
+   * Creates a callback that only adds requirements for some of the targets in the portfolio. The whole portfolio must still be
+   * traversed so that the aggregate requirements of the nodes are correct.
+   * 
+   * @param calculationConfiguration the calculation configuration
+   * @param builder the graph builder to add the requirements to
+   * @param targets the targets to add requirements for, or null for all targets
+   */
+  public PortfolioCompilerTraversalCallback(final ViewCalculationConfiguration calculationConfiguration, final DependencyGraphBuilder builder,
+      final Set<ComputationTargetSpecification> targets) {
     _calculationConfiguration = calculationConfiguration;
     _resultModelDefinition = calculationConfiguration.getViewDefinition().getResultModelDefinition();
     _builder = builder;
+    _targets = targets;
   }
 
   protected void addValueRequirement(final ValueRequirement valueRequirement) {
-    _builder.addTarget(valueRequirement);
+    if ((_targets == null) || _targets.contains(valueRequirement.getTargetSpecification())) {
+      _builder.addTarget(valueRequirement);
+    }
   }
 
   @Override
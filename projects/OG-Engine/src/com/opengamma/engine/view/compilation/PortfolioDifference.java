@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.ObjectUtils;
+
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.PortfolioNode;
+import com.opengamma.core.position.Position;
+import com.opengamma.core.position.Trade;
+import com.opengamma.core.security.Security;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.id.UniqueId;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * The difference between two versions of a portfolio, expressed as the computation targets whose requirements must be
+ * discarded from the graph compiled for the previous version and the targets whose requirements must be resolved for the
+ * current version.
+ * <p>
+ * A position is changed if it is absent from the other portfolio, is under a different node, or has a different quantity,
+ * security or set of trades. The trades of a changed position are changed. A node is changed if it is absent from the other
+ * portfolio, has a different parent or set of children, or if any of its children changed; this captures the aggregate
+ * values a node takes from the positions beneath it.
+ */
+/* package */class PortfolioDifference {
+
+  private final Set<ComputationTargetSpecification> _removedTargets = new HashSet<ComputationTargetSpecification>();
+  private final Set<ComputationTargetSpecification> _addedTargets = new HashSet<ComputationTargetSpecification>();
+
+  /**
+   * Compares two portfolios.
+   *
+   * @param previous the portfolio the existing graphs were compiled for, not null
+   * @param current the portfolio to compile for, not null
+   */
+  public PortfolioDifference(final Portfolio previous, final Portfolio current) {
+    ArgumentChecker.notNull(previous, "previous");
+    ArgumentChecker.notNull(current, "current");
+    final Index previousIndex = new Index(previous.getRootNode());
+    final Index currentIndex = new Index(current.getRootNode());
+    findChanges(previous.getRootNode(), currentIndex, _removedTargets);
+    findChanges(current.getRootNode(), previousIndex, _addedTargets);
+  }
+
+  /**
+   * Returns the targets from the previous portfolio that have changed or been removed. Anything in the previous dependency
+   * graphs computed for these targets is no longer valid.
+   *
+   * @return the targets, not null
+   */
+  public Set<ComputationTargetSpecification> getRemovedTargets() {
+    return _removedTargets;
+  }
+
+  /**
+   * Returns the targets from the current portfolio that have changed or been added. Requirements on these targets must be
+   * resolved for the current dependency graphs.
+   *
+   * @return the targets, not null
+   */
+  public Set<ComputationTargetSpecification> getAddedTargets() {
+    return _addedTargets;
+  }
+
+  /**
+   * Tests whether the portfolios are structurally the same, meaning the previously compiled graphs can be used unchanged.
+   *
+   * @return true if there are no differences
+   */
+  public boolean isEmpty() {
+    return _removedTargets.isEmpty() && _addedTargets.isEmpty();
+  }
+
+  /**
+   * The nodes and positions of a portfolio by unique identifier.
+   */
+  private static final class Index {
+
+    private final Map<UniqueId, PortfolioNode> _nodes = new HashMap<UniqueId, PortfolioNode>();
+    private final Map<UniqueId, Position> _positions = new HashMap<UniqueId, Position>();
+
+    public Index(final PortfolioNode root) {
+      add(root);
+    }
+
+    private void add(final PortfolioNode node) {
+      _nodes.put(node.getUniqueId(), node);
+      for (Position position : node.getPositions()) {
+        _positions.put(position.getUniqueId(), position);
+      }
+      for (PortfolioNode child : node.getChildNodes()) {
+        add(child);
+      }
+    }
+
+    public PortfolioNode getNode(final UniqueId uniqueId) {
+      return _nodes.get(uniqueId);
+    }
+
+    public Position getPosition(final UniqueId uniqueId) {
+      return _positions.get(uniqueId);
+    }
+
+  }
+
+  /**
+   * Adds the changed targets under a node to the result.
+   *
+   * @param node the node to compare
+   * @param other the index of the other portfolio
+   * @param result the set to add changed targets to
+   * @return true if the node changed
+   */
+  private static boolean findChanges(final PortfolioNode node, final Index other, final Set<ComputationTargetSpecification> result) {
+    boolean changed = false;
+    for (PortfolioNode child : node.getChildNodes()) {
+      changed |= findChanges(child, other, result);
+    }
+    for (Position position : node.getPositions()) {
+      if (isChanged(position, other.getPosition(position.getUniqueId()))) {
+        result.add(new ComputationTargetSpecification(ComputationTargetType.POSITION, position.getUniqueId()));
+        for (Trade trade : position.getTrades()) {
+          result.add(new ComputationTargetSpecification(ComputationTargetType.TRADE, trade.getUniqueId()));
+        }
+        changed = true;
+      }
+    }
+    if (!changed) {
+      changed = isChanged(node, other.getNode(node.getUniqueId()));
+    }
+    if (changed) {
+      result.add(new ComputationTargetSpecification(ComputationTargetType.PORTFOLIO_NODE, node.getUniqueId()));
+    }
+    return changed;
+  }
+
+  private static boolean isChanged(final PortfolioNode node, final PortfolioNode otherNode) {
+    if (otherNode == null) {
+      return true;
+    }
+    if (!ObjectUtils.equals(node.getParentNodeId(), otherNode.getParentNodeId())) {
+      return true;
+    }
+    final List<PortfolioNode> children = node.getChildNodes();
+    final List<PortfolioNode> otherChildren = otherNode.getChildNodes();
+    if (children.size() != otherChildren.size()) {
+      return true;
+    }
+    final Set<UniqueId> childIds = new HashSet<UniqueId>();
+    for (PortfolioNode child : children) {
+      childIds.add(child.getUniqueId());
+    }
+    for (PortfolioNode otherChild : otherChildren) {
+      if (!childIds.contains(otherChild.getUniqueId())) {
+        return true;
+      }
+    }
+    final List<Position> positions = node.getPositions();
+    final List<Position> otherPositions = otherNode.getPositions();
+    if (positions.size() != otherPositions.size()) {
+      return true;
+    }
+    final Set<UniqueId> positionIds = new HashSet<UniqueId>();
+    for (Position position : positions) {
+      positionIds.add(position.getUniqueId());
+    }
+    for (Position otherPosition : otherPositions) {
+      if (!positionIds.contains(otherPosition.getUniqueId())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isChanged(final Position position, final Position otherPosition) {
+    if (otherPosition == null) {
+      return true;
+    }
+    if (!ObjectUtils.equals(position.getParentNodeId(), otherPosition.getParentNodeId())) {
+      return true;
+    }
+    if ((position.getQuantity() == null) ? (otherPosition.getQuantity() != null) : ((otherPosition.getQuantity() == null) || (position.getQuantity().compareTo(
+        otherPosition.getQuantity()) != 0))) {
+      return true;
+    }
+    final Security security = position.getSecurity();
+    final Security otherSecurity = otherPosition.getSecurity();
+    if ((security == null) || (otherSecurity == null)) {
+      if ((security != otherSecurity) || !ObjectUtils.equals(position.getSecurityLink(), otherPosition.getSecurityLink())) {
+        return true;
+      }
+    } else if (!ObjectUtils.equals(security.getUniqueId(), otherSecurity.getUniqueId()) || !ObjectUtils.equals(security.getSecurityType(), otherSecurity.getSecurityType())) {
+      return true;
+    }
+    if (position.getTrades().size() != otherPosition.getTrades().size()) {
+      return true;
+    }
+    final Set<UniqueId> tradeIds = new HashSet<UniqueId>();
+    for (Trade trade : position.getTrades()) {
+      tradeIds.add(trade.getUniqueId());
+    }
+    for (Trade otherTrade : otherPosition.getTrades()) {
+      if (!tradeIds.contains(otherTrade.getUniqueId())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -9,6 +9,7 @@ import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
@@ -115,6 +116,24 @@ public final class ViewDefinitionCompiler {
   //-------------------------------------------------------------------------
   public static Future<CompiledViewDefinitionWithGraphsImpl> compileTask(final ViewDefinition viewDefinition, final ViewCompilationServices compilationServices, final Instant valuationTime,
       final VersionCorrection versionCorrection) {
+    return compileTask(viewDefinition, compilationServices, valuationTime, versionCorrection, null);
+  }
+
+  /**
+   * Compiles a view definition, updating a previous compilation incrementally where possible. If the previous compilation was
+   * of the same view definition, with the same functions, and is valid for the valuation time then only the changes to the
+   * portfolio are compiled and merged into copies of the previous dependency graphs. Otherwise the view definition is compiled
+   * in full.
+   * 
+   * @param viewDefinition the view definition to compile, not null
+   * @param compilationServices the compilation services, not null
+   * @param valuationTime the indicative valuation time, not null
+   * @param versionCorrection the version-correction at which to resolve the portfolio, not null
+   * @param previous the previous compilation of the view definition, null to compile in full
+   * @return the compilation task, not null
+   */
+  public static Future<CompiledViewDefinitionWithGraphsImpl> compileTask(final ViewDefinition viewDefinition, final ViewCompilationServices compilationServices, final Instant valuationTime,
+      final VersionCorrection versionCorrection, final CompiledViewDefinitionWithGraphsImpl previous) {
     ArgumentChecker.notNull(viewDefinition, "viewDefinition");
     ArgumentChecker.notNull(compilationServices, "compilationServices");
     s_logger.debug("Compiling {} for use with {}", viewDefinition.getName(), valuationTime);
@@ -126,6 +145,7 @@ public final class ViewDefinitionCompiler {
     // TODO: return a Future that provides access to a completion metric to feedback to any interactive user
     return new Future<CompiledViewDefinitionWithGraphsImpl>() {
       
+      private volatile ViewCompilationContext _context = viewCompilationContext;
       private volatile CompiledViewDefinitionWithGraphsImpl _result;
 
       /**
@@ -134,7 +154,7 @@ public final class ViewDefinitionCompiler {
       @Override
       public boolean cancel(final boolean mayInterruptIfRunning) {
         boolean result = true;
-        for (DependencyGraphBuilder builder : viewCompilationContext.getBuilders()) {
+        for (DependencyGraphBuilder builder : _context.getBuilders()) {
           result &= builder.cancel(mayInterruptIfRunning);
         }
         return result;
@@ -146,7 +166,7 @@ public final class ViewDefinitionCompiler {
       @Override
       public boolean isCancelled() {
         boolean result = false;
-        for (DependencyGraphBuilder builder : viewCompilationContext.getBuilders()) {
+        for (DependencyGraphBuilder builder : _context.getBuilders()) {
           result |= builder.isCancelled();
         }
         return result;
@@ -162,17 +182,35 @@ public final class ViewDefinitionCompiler {
       
       @Override
       public CompiledViewDefinitionWithGraphsImpl get() throws InterruptedException, ExecutionException {
+        if (isIncrementalCompilationPossible(viewDefinition, compilationServices, valuationTime, previous)) {
+          long t = -System.nanoTime();
+          final Pair<Portfolio, Map<String, DependencyGraph>> incremental = PortfolioCompiler.executeIncremental(_context, versionCorrection, previous);
+          t += System.nanoTime();
+          if (incremental != null) {
+            s_logger.info("Updated portfolio requirements after {}ms", (double) t / 1e6);
+            timer.finished();
+            _result = new CompiledViewDefinitionWithGraphsImpl(viewDefinition, incremental.getSecond(), incremental.getFirst(), previous.getFunctionInitId());
+            return _result;
+          }
+          if (isCancelled()) {
+            throw new CancellationException();
+          }
+          s_logger.info("Compiling {} in full after failing to update previous compilation", viewDefinition.getName());
+          // The builders may have been used for the incremental attempt
+          _context = new ViewCompilationContext(viewDefinition, compilationServices, valuationTime);
+        }
+        final ViewCompilationContext context = _context;
         long t = -System.nanoTime();
-        EnumSet<ComputationTargetType> specificTargetTypes = SpecificRequirementsCompiler.execute(viewCompilationContext);
+        EnumSet<ComputationTargetType> specificTargetTypes = SpecificRequirementsCompiler.execute(context);
         t += System.nanoTime();
         s_logger.info("Added specific requirements after {}ms", (double) t / 1e6);
         t -= System.nanoTime();
         boolean requirePortfolioResolution = specificTargetTypes.contains(ComputationTargetType.PORTFOLIO_NODE) || specificTargetTypes.contains(ComputationTargetType.POSITION);
-        Portfolio portfolio = PortfolioCompiler.execute(viewCompilationContext, versionCorrection, requirePortfolioResolution);
+        Portfolio portfolio = PortfolioCompiler.execute(context, versionCorrection, requirePortfolioResolution);
         t += System.nanoTime();
         s_logger.info("Added portfolio requirements after {}ms", (double) t / 1e6);
         t -= System.nanoTime();
-        Map<String, DependencyGraph> graphsByConfiguration = processDependencyGraphs(viewCompilationContext);
+        Map<String, DependencyGraph> graphsByConfiguration = processDependencyGraphs(context);
         t += System.nanoTime();
         s_logger.info("Processed dependency graphs after {}ms", (double) t / 1e6);
         timer.finished();
@@ -184,7 +222,7 @@ public final class ViewDefinitionCompiler {
           outputLiveDataRequirements(graphsByConfiguration, compilationServices.getComputationTargetResolver().getSecuritySource());
         }
         if (OUTPUT_FAILURE_REPORTS) {
-          outputFailureReports(viewCompilationContext.getBuilders());
+          outputFailureReports(context.getBuilders());
         }
         return _result;
       }
@@ -197,6 +235,19 @@ public final class ViewDefinitionCompiler {
     };
   }
 
+  /**
+   * Tests whether a previous compilation can be updated rather than compiling the view definition in full. Only changes to the
+   * portfolio can be applied incrementally.
+   */
+  private static boolean isIncrementalCompilationPossible(final ViewDefinition viewDefinition, final ViewCompilationServices compilationServices, final Instant valuationTime,
+      final CompiledViewDefinitionWithGraphsImpl previous) {
+    return (previous != null)
+        && (previous.getPortfolio() != null)
+        && viewDefinition.equals(previous.getViewDefinition())
+        && (previous.getFunctionInitId() == compilationServices.getFunctionCompilationContext().getFunctionInitId())
+        && previous.isValidFor(valuationTime);
+  }
+
   public static CompiledViewDefinitionWithGraphsImpl compile(ViewDefinition viewDefinition, ViewCompilationServices compilationServices, Instant valuationTime, VersionCorrection versionCorrection) {
     try {
       return compileTask(viewDefinition, compilationServices, valuationTime, versionCorrection).get();
@@ -213,6 +264,8 @@ public final class ViewDefinitionCompiler {
     for (DependencyGraphBuilder builder : builders) {
       final DependencyGraph graph = builder.getDependencyGraph();
       graph.removeUnnecessaryValues();
+      // Create the compact form now, as part of compilation, rather than on the first cycle
+      graph.getCompactGraph();
       result.put(builder.getCalculationConfigurationName(), graph);
       // TODO: do we want to do anything with the ValueRequirement to resolved ValueSpecification data?
     }
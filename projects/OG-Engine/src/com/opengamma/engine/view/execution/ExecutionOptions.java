@@ -24,6 +24,7 @@ public class ExecutionOptions implements ViewExecutionOptions {
   private final ViewCycleExecutionSequence _executionSequence;
   private final EnumSet<ViewExecutionFlags> _flags;
   private final Integer _maxSuccessiveDeltaCycles;
+  private final Integer _maxConcurrentCycles;
   private final ViewCycleExecutionOptions _defaultExecutionOptions;
   private final VersionCorrection _versionCorrection;
 
@@ -150,6 +151,23 @@ public class ExecutionOptions implements ViewExecutionOptions {
     return of(cycleExecutionSequence, defaultCycleOptions, ExecutionFlags.none().batch().runAsFastAsPossible().awaitMarketData().get());
   }
 
+  /**
+   * Creates an execution sequence designed for batch-mode operation over a number of independent valuation times, for
+   * example a backtest. Up to the given number of cycles from the sequence are executed at the same time, with their
+   * results still delivered in sequence order.
+   *
+   * @param cycleExecutionSequence  the execution sequence, not null
+   * @param defaultCycleOptions  the default view cycle execution options, may be null
+   * @param maxConcurrentCycles  the maximum number of cycles to execute at once, greater than zero
+   * @return the execution sequence, not null
+   */
+  public static ViewExecutionOptions batch(ViewCycleExecutionSequence cycleExecutionSequence, ViewCycleExecutionOptions defaultCycleOptions, int maxConcurrentCycles) {
+    ArgumentChecker.notNull(cycleExecutionSequence, "cycleExecutionSequence");
+    ArgumentChecker.notNegativeOrZero(maxConcurrentCycles, "maxConcurrentCycles");
+    return new ExecutionOptions(cycleExecutionSequence, ExecutionFlags.none().batch().runAsFastAsPossible().awaitMarketData().get(), null, maxConcurrentCycles,
+        defaultCycleOptions, VersionCorrection.LATEST);
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Creates an execution sequence to run a single cycle.
@@ -239,6 +257,20 @@ public class ExecutionOptions implements ViewExecutionOptions {
    */
   public ExecutionOptions(ViewCycleExecutionSequence executionSequence, EnumSet<ViewExecutionFlags> flags,
       Integer maxSuccessiveDeltaCycles, ViewCycleExecutionOptions defaultExecutionOptions, VersionCorrection versionCorrection) {
+    this(executionSequence, flags, maxSuccessiveDeltaCycles, null, defaultExecutionOptions, versionCorrection);
+  }
+
+  /**
+   * 
+   * @param executionSequence  the execution sequence, not null
+   * @param flags  the execution flags, not null
+   * @param maxSuccessiveDeltaCycles  the maximum cycles, may be null
+   * @param maxConcurrentCycles  the maximum number of cycles to execute at once, may be null
+   * @param defaultExecutionOptions  the default view cycle execution options, may be null
+   * @param versionCorrection  the version-correction instants, not null
+   */
+  public ExecutionOptions(ViewCycleExecutionSequence executionSequence, EnumSet<ViewExecutionFlags> flags,
+      Integer maxSuccessiveDeltaCycles, Integer maxConcurrentCycles, ViewCycleExecutionOptions defaultExecutionOptions, VersionCorrection versionCorrection) {
     ArgumentChecker.notNull(executionSequence, "executionSequence");
     ArgumentChecker.notNull(flags, "flags");
     ArgumentChecker.notNull(versionCorrection, "versionCorrection");
@@ -246,6 +278,7 @@ public class ExecutionOptions implements ViewExecutionOptions {
     _executionSequence = executionSequence;
     _flags = flags;
     _maxSuccessiveDeltaCycles = maxSuccessiveDeltaCycles;
+    _maxConcurrentCycles = maxConcurrentCycles;
     _defaultExecutionOptions = defaultExecutionOptions;
     _versionCorrection = versionCorrection;
   }
@@ -261,6 +294,11 @@ public class ExecutionOptions implements ViewExecutionOptions {
     return _maxSuccessiveDeltaCycles;
   }
 
+  @Override
+  public Integer getMaxConcurrentCycles() {
+    return _maxConcurrentCycles;
+  }
+
   @Override
   public ViewCycleExecutionOptions getDefaultExecutionOptions() {
     return _defaultExecutionOptions;
@@ -309,6 +347,13 @@ public class ExecutionOptions implements ViewExecutionOptions {
     } else if (!_maxSuccessiveDeltaCycles.equals(other._maxSuccessiveDeltaCycles)) {
       return false;
     }
+    if (_maxConcurrentCycles == null) {
+      if (other._maxConcurrentCycles != null) {
+        return false;
+      }
+    } else if (!_maxConcurrentCycles.equals(other._maxConcurrentCycles)) {
+      return false;
+    }
     if (!_versionCorrection.equals(other._versionCorrection)) {
       return false;
     }
@@ -323,13 +368,15 @@ public class ExecutionOptions implements ViewExecutionOptions {
     result = prime * result + _flags.hashCode();
     result = prime * result + ((_defaultExecutionOptions == null) ? 0 : _defaultExecutionOptions.hashCode());
     result = prime * result + ((_maxSuccessiveDeltaCycles == null) ? 0 : _maxSuccessiveDeltaCycles.hashCode());
+    result = prime * result + ((_maxConcurrentCycles == null) ? 0 : _maxConcurrentCycles.hashCode());
     result = prime * result + _versionCorrection.hashCode();
     return result;
   }
 
   @Override
   public String toString() {
-    return "ExecutionOptions [executionSequence=" + _executionSequence + ", flags=" + _flags + ", maxSuccessiveDeltaCycles=" + _maxSuccessiveDeltaCycles + ", defaultExecutionOptions=" +
+    return "ExecutionOptions [executionSequence=" + _executionSequence + ", flags=" + _flags + ", maxSuccessiveDeltaCycles=" + _maxSuccessiveDeltaCycles + ", maxConcurrentCycles=" + _maxConcurrentCycles +
+        ", defaultExecutionOptions=" +
         _defaultExecutionOptions + ", versionCorrection=" + _versionCorrection + "]";
   }
 
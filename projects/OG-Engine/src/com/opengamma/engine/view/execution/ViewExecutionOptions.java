@@ -34,6 +34,15 @@ public interface ViewExecutionOptions {
    * @return the maximum number of delta cycles following a full computation cycle, null for no limit
    */
   Integer getMaxSuccessiveDeltaCycles();
+
+  /**
+   * Gets the maximum number of cycles from the execution sequence that may be executed at the same time. Cycles are
+   * only executed concurrently when they are independent of each other, as for a sequence of historical valuation
+   * times, and their results are still delivered in sequence order.
+   * 
+   * @return the maximum number of concurrently executing cycles, null to execute cycles one after another
+   */
+  Integer getMaxConcurrentCycles();
     
   /**
    * Gets the default execution options.
@@ -0,0 +1,298 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.depgraph;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValuePropertyNames;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueId;
+import com.opengamma.util.monitor.OperationTimer;
+
+/**
+ * Tests the {@link CompactDependencyGraph} and compares its footprint and traversal speed with {@link DependencyGraph}.
+ */
+@Test
+public class CompactDependencyGraphTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(CompactDependencyGraphTest.class);
+
+  private static final ValueProperties PROPERTIES = ValueProperties.with(ValuePropertyNames.FUNCTION, "Test").get();
+
+  private static DependencyNode[][] createNodes(final int layers, final int width, final int fanIn) {
+    final DependencyNode[][] nodes = new DependencyNode[layers][width];
+    for (int layer = 0; layer < layers; layer++) {
+      for (int i = 0; i < width; i++) {
+        final ComputationTargetSpecification target = new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", layer + "-" + i));
+        final DependencyNode node = new DependencyNode(target);
+        node.addOutputValue(new ValueSpecification("Value", target, PROPERTIES));
+        if (layer > 0) {
+          for (int j = 0; j < fanIn; j++) {
+            final DependencyNode input = nodes[layer - 1][(i + j) % width];
+            node.addInputNode(input);
+            node.addInputValue(input.getOutputValues().iterator().next());
+          }
+        }
+        nodes[layer][i] = node;
+      }
+    }
+    return nodes;
+  }
+
+  private static DependencyGraph createGraph(final DependencyNode[][] nodes) {
+    final DependencyGraph graph = new DependencyGraph("Default");
+    for (DependencyNode[] layer : nodes) {
+      for (DependencyNode node : layer) {
+        graph.addDependencyNode(node);
+      }
+    }
+    for (DependencyNode node : nodes[nodes.length - 1]) {
+      final ValueSpecification output = node.getOutputValues().iterator().next();
+      graph.addTerminalOutput(new ValueRequirement(output.getValueName(), output.getTargetSpecification()), output);
+    }
+    return graph;
+  }
+
+  private static void assertExecutionOrder(final List<DependencyNode> order, final DependencyGraph graph) {
+    assertEquals(graph.getSize(), order.size());
+    final Set<DependencyNode> executed = new HashSet<DependencyNode>();
+    for (DependencyNode node : order) {
+      for (DependencyNode input : node.getInputNodes()) {
+        if (graph.containsNode(input)) {
+          assertTrue(executed.contains(input));
+        }
+      }
+      assertTrue(executed.add(node));
+    }
+  }
+
+  public void testStructure() {
+    final DependencyNode[][] nodes = createNodes(4, 5, 2);
+    final DependencyGraph graph = createGraph(nodes);
+    final CompactDependencyGraph compact = graph.getCompactGraph();
+    assertSame(compact, graph.getCompactGraph());
+    assertSame(compact, compact.getBaseGraph());
+    assertEquals(graph.getSize(), compact.getSize());
+    assertExecutionOrder(compact.getExecutionOrder(), graph);
+    assertExecutionOrder(graph.getExecutionOrder(), graph);
+    for (int i = 0; i < compact.getSize(); i++) {
+      final DependencyNode node = compact.getNode(i);
+      assertEquals(i, compact.getNodeIndex(node));
+      final Set<DependencyNode> inputs = new HashSet<DependencyNode>();
+      for (int j = 0; j < compact.getInputNodeCount(i); j++) {
+        inputs.add(compact.getNode(compact.getInputNode(i, j)));
+      }
+      assertEquals(node.getInputNodes(), inputs);
+      final Set<DependencyNode> dependents = new HashSet<DependencyNode>();
+      for (int j = 0; j < compact.getDependentNodeCount(i); j++) {
+        dependents.add(compact.getNode(compact.getDependentNode(i, j)));
+      }
+      assertEquals(node.getDependentNodes(), dependents);
+      final Set<ValueSpecification> inputValues = new HashSet<ValueSpecification>();
+      for (int j = 0; j < compact.getInputValueCount(i); j++) {
+        inputValues.add(compact.getValue(compact.getInputValue(i, j)));
+      }
+      assertEquals(node.getInputValues(), inputValues);
+      assertEquals(1, compact.getOutputValueCount(i));
+      final ValueSpecification output = compact.getValue(compact.getOutputValue(i, 0));
+      assertEquals(compact.getOutputValue(i, 0), compact.getValueId(output));
+      assertEquals(graph.getTerminalOutputSpecifications().contains(output), compact.isTerminalOutput(compact.getOutputValue(i, 0)));
+      assertEquals(-1, compact.getMarketDataValue(i));
+    }
+    final Set<DependencyNode> roots = new HashSet<DependencyNode>();
+    for (int i = 0; i < compact.getRootNodeCount(); i++) {
+      roots.add(compact.getNode(compact.getRootNode(i)));
+    }
+    assertEquals(graph.getRootNodes(), roots);
+  }
+
+  public void testModificationDiscardsCompactForm() {
+    final DependencyNode[][] nodes = createNodes(2, 3, 1);
+    final DependencyGraph graph = createGraph(nodes);
+    final CompactDependencyGraph compact = graph.getCompactGraph();
+    graph.removeDependencyNode(nodes[1][0]);
+    assertFalse(compact == graph.getCompactGraph());
+    assertEquals(5, graph.getCompactGraph().getSize());
+    assertEquals(-1, graph.getCompactGraph().getNodeIndex(nodes[1][0]));
+  }
+
+  public void testSubGraph() {
+    final DependencyNode[][] nodes = createNodes(4, 5, 2);
+    final DependencyGraph graph = createGraph(nodes);
+    final CompactDependencyGraph compact = graph.getCompactGraph();
+    final DependencyNodeFilter filter = new DependencyNodeFilter() {
+      @Override
+      public boolean accept(final DependencyNode node) {
+        return !node.getInputNodes().isEmpty();
+      }
+    };
+    final DependencyGraph subGraph = graph.subGraph(filter);
+    final CompactDependencyGraph subCompact = subGraph.getCompactGraph();
+    assertSame(compact, subCompact.getBaseGraph());
+    assertEquals(15, subCompact.getSize());
+    assertEquals(15, subCompact.getBaseNodes().cardinality());
+    assertExecutionOrder(subCompact.getExecutionOrder(), subGraph);
+    for (DependencyNode node : nodes[0]) {
+      assertEquals(-1, subCompact.getNodeIndex(node));
+    }
+    for (int i = 0; i < subCompact.getSize(); i++) {
+      final DependencyNode node = subCompact.getNode(i);
+      assertEquals(i, subCompact.getNodeIndex(node));
+      assertTrue(subCompact.getBaseNodes().get(compact.getNodeIndex(node)));
+      int inputs = 0;
+      for (DependencyNode input : node.getInputNodes()) {
+        if (subGraph.containsNode(input)) {
+          inputs++;
+        }
+      }
+      assertEquals(inputs, subCompact.getInputNodeCount(i));
+      final int output = subCompact.getOutputValue(i, 0);
+      assertEquals(subGraph.getTerminalOutputSpecifications().contains(subCompact.getValue(output)), subCompact.isTerminalOutput(output));
+    }
+    // A sub-graph of the sub-graph still indexes against the original
+    final BitSet first = new BitSet();
+    first.set(0);
+    final CompactDependencyGraph subSubCompact = subCompact.subGraph(first);
+    assertSame(compact, subSubCompact.getBaseGraph());
+    assertEquals(1, subSubCompact.getSize());
+    assertEquals(0, subSubCompact.getNodeIndex(subCompact.getNode(0)));
+    assertEquals(-1, subSubCompact.getNodeIndex(subCompact.getNode(1)));
+    // Sub-graph of a graph without a compact form
+    final DependencyGraph plainSubGraph = createGraph(createNodes(4, 5, 2)).subGraph(filter);
+    assertEquals(15, plainSubGraph.getCompactGraph().getSize());
+    assertExecutionOrder(plainSubGraph.getExecutionOrder(), plainSubGraph);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testSubGraphOutOfRange() {
+    final CompactDependencyGraph compact = createGraph(createNodes(4, 5, 2)).getCompactGraph();
+    final BitSet nodes = new BitSet();
+    nodes.set(0);
+    nodes.set(compact.getSize());
+    compact.subGraph(nodes);
+  }
+
+  public void testComponents() {
+    // Each node in the first layer only feeds the node above it, giving independent columns
+    final DependencyNode[][] nodes = createNodes(3, 4, 1);
+    final CompactDependencyGraph compact = createGraph(nodes).getCompactGraph();
+    assertEquals(4, compact.getComponentCount());
+    for (int i = 0; i < 4; i++) {
+      final int component = compact.getComponent(compact.getNodeIndex(nodes[0][i]));
+      assertEquals(component, compact.getComponent(compact.getNodeIndex(nodes[1][i])));
+      assertEquals(component, compact.getComponent(compact.getNodeIndex(nodes[2][i])));
+      for (int j = 0; j < i; j++) {
+        assertFalse(component == compact.getComponent(compact.getNodeIndex(nodes[0][j])));
+      }
+    }
+    final CompactDependencyGraph joined = createGraph(createNodes(3, 4, 2)).getCompactGraph();
+    assertEquals(1, joined.getComponentCount());
+  }
+
+  private static long usedMemory() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static int walkMutable(final DependencyGraph graph, final List<DependencyNode> order) {
+    // The traversal pattern of the delta calculation, using the node sets
+    final Set<DependencyNode> changed = new HashSet<DependencyNode>();
+    int count = 0;
+    for (DependencyNode node : order) {
+      for (DependencyNode input : node.getInputNodes()) {
+        if (graph.containsNode(input) && changed.contains(input)) {
+          changed.add(node);
+          break;
+        }
+      }
+      if ((count++ % 97) == 0) {
+        changed.add(node);
+      }
+    }
+    return changed.size();
+  }
+
+  private static int walkCompact(final CompactDependencyGraph graph) {
+    final int size = graph.getSize();
+    final BitSet changed = new BitSet(size);
+    for (int node = 0; node < size; node++) {
+      final int inputs = graph.getInputNodeCount(node);
+      for (int i = 0; i < inputs; i++) {
+        if (changed.get(graph.getInputNode(node, i))) {
+          changed.set(node);
+          break;
+        }
+      }
+      if ((node % 97) == 0) {
+        changed.set(node);
+      }
+    }
+    return changed.cardinality();
+  }
+
+  /**
+   * Compares the memory used by the nodes and graph with the additional memory for the compact form, and the time taken to walk
+   * the graph structure in execution order using each.
+   */
+  @Test(enabled = false)
+  public void comparePerformance() {
+    final int layers = 10;
+    final int width = 20000;
+    final int cycles = 10;
+    final long base = usedMemory();
+    final DependencyGraph graph = createGraph(createNodes(layers, width, 3));
+    final long mutable = usedMemory();
+    OperationTimer timer = new OperationTimer(s_logger, "Building compact form of {} nodes", layers * width);
+    final CompactDependencyGraph compact = graph.getCompactGraph();
+    timer.finished();
+    final long withCompact = usedMemory();
+    s_logger.info("Mutable graph {} bytes/node, compact form {} bytes/node", (double) (mutable - base) / (double) compact.getSize(),
+        (double) (withCompact - mutable) / (double) compact.getSize());
+    timer = new OperationTimer(s_logger, "Walking mutable graph {} times", cycles);
+    int mutableChanged = 0;
+    for (int i = 0; i < cycles; i++) {
+      mutableChanged = walkMutable(graph, compact.getExecutionOrder());
+    }
+    final long mutableTime = timer.finished();
+    timer = new OperationTimer(s_logger, "Walking compact graph {} times", cycles);
+    int compactChanged = 0;
+    for (int i = 0; i < cycles; i++) {
+      compactChanged = walkCompact(compact);
+    }
+    final long compactTime = timer.finished();
+    assertEquals(mutableChanged, compactChanged);
+    s_logger.info("Mutable {}ms, compact {}ms", mutableTime, compactTime);
+    timer = new OperationTimer(s_logger, "Taking sub-graph of {} nodes", compact.getSize());
+    final DependencyGraph subGraph = graph.subGraph(new DependencyNodeFilter() {
+      @Override
+      public boolean accept(final DependencyNode node) {
+        return true;
+      }
+    });
+    timer.finished();
+    assertEquals(graph.getSize(), subGraph.getCompactGraph().getSize());
+  }
+
+}
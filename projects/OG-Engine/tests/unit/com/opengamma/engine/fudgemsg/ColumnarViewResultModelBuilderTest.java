@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.fudgemsg;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Collections;
+
+import javax.time.Instant;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
+import com.opengamma.engine.view.ColumnarViewDeltaResultModel;
+import com.opengamma.engine.view.ViewComputationResultModel;
+import com.opengamma.engine.view.ViewDeltaResultModel;
+import com.opengamma.engine.view.calcnode.InvocationResult;
+import com.opengamma.id.UniqueId;
+import com.opengamma.util.test.AbstractFudgeBuilderTestCase;
+
+/**
+ * Tests the Fudge encoding of the columnar result models.
+ */
+@Test
+public class ColumnarViewResultModelBuilderTest extends AbstractFudgeBuilderTestCase {
+
+  private static ComputedValue value(final String name, final String target, final Object value) {
+    return new ComputedValue(new ValueSpecification(new ValueRequirement(name, new ComputationTargetSpecification(target)), "function ID"), value);
+  }
+
+  public void testComputationResult() {
+    final ColumnarViewComputationResultModel model = new ColumnarViewComputationResultModel();
+    model.setViewProcessId(UniqueId.of("Test", "ViewProcess"));
+    model.setViewCycleId(UniqueId.of("Test", "ViewCycle"));
+    model.setValuationTime(Instant.ofEpochMillis(400));
+    model.setCalculationTime(Instant.ofEpochMillis(500));
+    model.addValue("Config1", value("A", "Foo", 1d));
+    model.addValue("Config1", value("B", "Foo", "B1"));
+    model.addValue("Config2", value("A", "Bar", 2d));
+    final ComputedValue detailed = value("C", "Bar", 3d);
+    detailed.setInvocationResult(InvocationResult.SUCCESS);
+    model.addValue("Config2", detailed);
+    model.addMarketData(value("Market", "Foo", 4d));
+    model.addRequirement(new ValueRequirement("A", new ComputationTargetSpecification("Foo")), value("A", "Foo", 1d).getSpecification());
+    final ViewComputationResultModel cycled = cycleObject(ViewComputationResultModel.class, model);
+    assertTrue(cycled instanceof ColumnarViewComputationResultModel);
+    assertEquals(model.getViewCycleId(), cycled.getViewCycleId());
+    assertEquals(model.getCalculationTime(), cycled.getCalculationTime());
+    assertEquals(model.getAllTargets(), cycled.getAllTargets());
+    assertEquals(model.getAllResults(), cycled.getAllResults());
+    assertEquals(model.getAllMarketData(), cycled.getAllMarketData());
+    assertEquals(model.getRequirementToSpecificationMapping(), cycled.getRequirementToSpecificationMapping());
+    assertEquals(InvocationResult.SUCCESS, cycled.getAllResults().get(3).getComputedValue().getInvocationResult());
+  }
+
+  public void testNullValue() {
+    final ColumnarViewComputationResultModel model = new ColumnarViewComputationResultModel();
+    model.setCalculationTime(Instant.ofEpochMillis(500));
+    model.addValue("Config", value("A", "Foo", "A1"));
+    model.addValue("Config", value("B", "Foo", null));
+    model.addValue("Config", value("C", "Foo", "C1"));
+    model.addValue("Config", value("D", "Foo", 4d));
+    final ViewComputationResultModel cycled = cycleObject(ViewComputationResultModel.class, model);
+    assertEquals(model.getAllResults(), cycled.getAllResults());
+    assertNull(cycled.getAllResults().get(1).getComputedValue().getValue());
+    assertEquals("C1", cycled.getAllResults().get(2).getComputedValue().getValue());
+  }
+
+  public void testDeltaResult() {
+    final ColumnarViewDeltaResultModel model = new ColumnarViewDeltaResultModel();
+    model.setCalculationTime(Instant.ofEpochMillis(500));
+    model.setPreviousCalculationTime(Instant.ofEpochMillis(300));
+    model.addValue("Config", value("A", "Foo", 1d));
+    final ViewDeltaResultModel cycled = cycleObject(ViewDeltaResultModel.class, model);
+    assertTrue(cycled instanceof ColumnarViewDeltaResultModel);
+    assertEquals(Instant.ofEpochMillis(300), cycled.getPreviousResultTimestamp());
+    assertEquals(Collections.singletonList(value("A", "Foo", 1d)), cycled.getCalculationResult("Config").getAllValues(new ComputationTargetSpecification("Foo")));
+  }
+
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.marketdata.historical;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import javax.time.calendar.LocalDate;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.core.historicaltimeseries.HistoricalTimeSeriesSource;
+import com.opengamma.core.historicaltimeseries.impl.SimpleHistoricalTimeSeries;
+import com.opengamma.core.security.SecuritySource;
+import com.opengamma.core.value.MarketDataRequirementNames;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.marketdata.MarketDataSnapshot;
+import com.opengamma.engine.marketdata.spec.FixedHistoricalMarketDataSpecification;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.id.ExternalId;
+import com.opengamma.id.ExternalIdBundle;
+import com.opengamma.id.UniqueId;
+import com.opengamma.livedata.UserPrincipal;
+import com.opengamma.util.timeseries.localdate.ArrayLocalDateDoubleTimeSeries;
+
+/**
+ * Tests the {@link PreloadingHistoricalMarketDataProvider} class.
+ */
+@Test
+public class PreloadingHistoricalMarketDataProviderTest {
+
+  private static final LocalDate START = LocalDate.of(2012, 1, 2);
+  private static final LocalDate DAY_2 = LocalDate.of(2012, 1, 3);
+  private static final LocalDate DAY_3 = LocalDate.of(2012, 1, 4);
+  private static final LocalDate END = LocalDate.of(2012, 1, 31);
+
+  private static ValueRequirement requirement(final String id) {
+    return new ValueRequirement(MarketDataRequirementNames.MARKET_VALUE, new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", id)));
+  }
+
+  private static ExternalIdBundle identifiers(final String id) {
+    return ExternalIdBundle.of(ExternalId.of("Test", id));
+  }
+
+  private static void stubRange(final HistoricalTimeSeriesSource source, final String id, final LocalDate[] dates, final double[] values) {
+    when(source.getHistoricalTimeSeries(MarketDataRequirementNames.MARKET_VALUE, identifiers(id), END, null, START, true, END, true)).thenReturn(
+        new SimpleHistoricalTimeSeries(UniqueId.of("Hts", id), new ArrayLocalDateDoubleTimeSeries(dates, values)));
+    stubStart(source, id, "Hts");
+  }
+
+  private static void stubStart(final HistoricalTimeSeriesSource source, final String id, final String htsScheme) {
+    when(source.getHistoricalTimeSeries(MarketDataRequirementNames.MARKET_VALUE, identifiers(id), START, null, START, true, START, true)).thenReturn(
+        new SimpleHistoricalTimeSeries(UniqueId.of(htsScheme, id), new ArrayLocalDateDoubleTimeSeries()));
+  }
+
+  private static MarketDataSnapshot snapshot(final PreloadingHistoricalMarketDataProvider provider, final LocalDate date) {
+    final MarketDataSnapshot snapshot = provider.snapshot(new FixedHistoricalMarketDataSpecification(date));
+    snapshot.init();
+    return snapshot;
+  }
+
+  public void testServedFromStore() {
+    final HistoricalTimeSeriesSource source = mock(HistoricalTimeSeriesSource.class);
+    stubRange(source, "A", new LocalDate[] {START, DAY_2, DAY_3 }, new double[] {1d, 2d, 3d });
+    stubRange(source, "B", new LocalDate[] {DAY_2 }, new double[] {20d });
+    final PreloadingHistoricalMarketDataProvider provider = new PreloadingHistoricalMarketDataProvider(source, mock(SecuritySource.class), null, null, START, END);
+    provider.subscribe(UserPrincipal.getTestUser(), new HashSet<ValueRequirement>(Arrays.asList(requirement("A"), requirement("B"))));
+    assertEquals(2, provider.getStore().getColumnCount());
+    assertEquals(3, provider.getStore().getDateCount());
+    MarketDataSnapshot snapshot = snapshot(provider, START);
+    assertTrue(snapshot instanceof PreloadedHistoricalMarketDataSnapshot);
+    assertEquals(1d, snapshot.query(requirement("A")));
+    assertNull(snapshot.query(requirement("B")));
+    snapshot = snapshot(provider, DAY_2);
+    assertEquals(2d, snapshot.query(requirement("A")));
+    assertEquals(20d, snapshot.query(requirement("B")));
+    // A date in the range with no data at all
+    snapshot = snapshot(provider, END);
+    assertNull(snapshot.query(requirement("A")));
+    // Each time-series was only fetched once, for the whole range
+    verify(source, times(1)).getHistoricalTimeSeries(MarketDataRequirementNames.MARKET_VALUE, identifiers("A"), END, null, START, true, END, true);
+    verify(source, times(1)).getHistoricalTimeSeries(MarketDataRequirementNames.MARKET_VALUE, identifiers("B"), END, null, START, true, END, true);
+  }
+
+  public void testIncrementalPreload() {
+    final HistoricalTimeSeriesSource source = mock(HistoricalTimeSeriesSource.class);
+    stubRange(source, "A", new LocalDate[] {START, DAY_2 }, new double[] {1d, 2d });
+    stubRange(source, "B", new LocalDate[] {DAY_3 }, new double[] {30d });
+    final PreloadingHistoricalMarketDataProvider provider = new PreloadingHistoricalMarketDataProvider(source, mock(SecuritySource.class), null, null, START, END);
+    provider.preload(Collections.singleton(requirement("A")));
+    final HistoricalMarketDataStore first = provider.getStore();
+    provider.preload(Arrays.asList(requirement("A"), requirement("B")));
+    final HistoricalMarketDataStore second = provider.getStore();
+    assertEquals(1, first.getColumnCount());
+    assertEquals(2, second.getColumnCount());
+    // The date axis grows to include the new dates, keeping the earlier values
+    assertEquals(3, second.getDateCount());
+    assertEquals(2d, second.getValue(second.getColumn(requirement("A")), second.getDateIndex(DAY_2)));
+    assertTrue(Double.isNaN(second.getValue(second.getColumn(requirement("A")), second.getDateIndex(DAY_3))));
+    assertEquals(30d, second.getValue(second.getColumn(requirement("B")), second.getDateIndex(DAY_3)));
+    verify(source, times(1)).getHistoricalTimeSeries(MarketDataRequirementNames.MARKET_VALUE, identifiers("A"), END, null, START, true, END, true);
+  }
+
+  public void testResolutionChangesWithinRange() {
+    final HistoricalTimeSeriesSource source = mock(HistoricalTimeSeriesSource.class);
+    when(source.getHistoricalTimeSeries(MarketDataRequirementNames.MARKET_VALUE, identifiers("D"), END, null, START, true, END, true)).thenReturn(
+        new SimpleHistoricalTimeSeries(UniqueId.of("Hts", "D"), new ArrayLocalDateDoubleTimeSeries(new LocalDate[] {START, DAY_2 }, new double[] {1d, 2d })));
+    // At the start of the range the identifiers resolve to a different time-series
+    when(source.getHistoricalTimeSeries(MarketDataRequirementNames.MARKET_VALUE, identifiers("D"), START, null, START, true, START, true)).thenReturn(
+        new SimpleHistoricalTimeSeries(UniqueId.of("Old", "D"), new ArrayLocalDateDoubleTimeSeries(new LocalDate[] {START }, new double[] {100d })));
+    final PreloadingHistoricalMarketDataProvider provider = new PreloadingHistoricalMarketDataProvider(source, mock(SecuritySource.class), null, null, START, END);
+    provider.preload(Collections.singleton(requirement("D")));
+    assertEquals(0, provider.getStore().getColumnCount());
+    // Each date is queried individually, resolving against that date
+    assertEquals(100d, snapshot(provider, START).query(requirement("D")));
+  }
+
+  public void testFieldResolverKeyMismatch() {
+    final HistoricalTimeSeriesSource source = mock(HistoricalTimeSeriesSource.class);
+    final PreloadingHistoricalMarketDataProvider provider = new PreloadingHistoricalMarketDataProvider(source, mock(SecuritySource.class), null, null, START, END);
+    final MarketDataSnapshot snapshot = provider.snapshot(new FixedHistoricalMarketDataSpecification(null, "Other", DAY_2));
+    assertFalse(snapshot instanceof PreloadedHistoricalMarketDataSnapshot);
+  }
+
+  public void testNotPreloaded() {
+    final HistoricalTimeSeriesSource source = mock(HistoricalTimeSeriesSource.class);
+    when(source.getHistoricalTimeSeries(MarketDataRequirementNames.MARKET_VALUE, identifiers("C"), DAY_2, null, DAY_2, true, DAY_2, true)).thenReturn(
+        new SimpleHistoricalTimeSeries(UniqueId.of("Hts", "C"), new ArrayLocalDateDoubleTimeSeries(new LocalDate[] {DAY_2 }, new double[] {5d })));
+    final PreloadingHistoricalMarketDataProvider provider = new PreloadingHistoricalMarketDataProvider(source, mock(SecuritySource.class), null, null, START, END);
+    // Falls back to an individual query
+    assertEquals(5d, snapshot(provider, DAY_2).query(requirement("C")));
+    // Outside of the range
+    assertFalse(provider.snapshot(new FixedHistoricalMarketDataSpecification(END.plusDays(1))) instanceof PreloadedHistoricalMarketDataSnapshot);
+  }
+
+}
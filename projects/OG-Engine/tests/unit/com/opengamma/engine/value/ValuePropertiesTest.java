@@ -12,6 +12,7 @@ import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertSame;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 
@@ -316,6 +317,32 @@ public class ValuePropertiesTest {
     ValueProperties.parse("ValueName=[");
   }
   
+  public void testSortedStorage() {
+    final ValueProperties a = ValueProperties.with("C", "3").with("A", "1", "2").with("B", "4").withOptional("B").get();
+    final ValueProperties b = ValueProperties.with("B", "4").with("A", "2").with("A", "1").with("C", "3").withOptional("B").get();
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    assertEquals("{A=[1,2],B=[4]?,C=[3]}", a.toString());
+    assertEquals(Arrays.asList("A", "B", "C"), new ArrayList<String>(a.getProperties()));
+    assertNull(a.getValues("D"));
+    assertFalse(a.equals(ValueProperties.with("C", "3").with("A", "1", "2").with("B", "4").get()));
+  }
+
+  public void testIntern() {
+    final ValueProperties a = ValueProperties.with("A", "1").with("B", "2", "3").withOptional("C").get();
+    final ValueProperties b = ValueProperties.with("A", "1").with("B", "2", "3").withOptional("C").get();
+    final ValueProperties c = ValueProperties.with("A", "1").get();
+    assertFalse(a == b);
+    final ValueProperties ai = a.intern();
+    assertSame(ai, b.intern());
+    assertSame(ai, ai.intern());
+    assertEquals(ai, b);
+    assertEquals(b, ai);
+    assertFalse(ai.equals(c.intern()));
+    assertSame(ValueProperties.none(), ValueProperties.none().intern());
+    assertSame(ValueProperties.all(), ValueProperties.all().intern());
+  }
+
   private static void parseCycle(ValueProperties original) {
     String vpString = original.toString();
     ValueProperties parsed = ValueProperties.parse(vpString);
@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.value;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.id.UniqueId;
+import com.opengamma.util.monitor.OperationTimer;
+
+/**
+ * Tests the {@link ValueSpecification} class, and compares the footprint and hashing cost of interned instances.
+ */
+@Test
+public class ValueSpecificationTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(ValueSpecificationTest.class);
+
+  private static ValueSpecification createSpecification(final int target, final int value) {
+    // A new instance each time, as a graph builder or message decoder would produce
+    return new ValueSpecification("Value" + value, new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", Integer.toString(target))),
+        ValueProperties.with(ValuePropertyNames.FUNCTION, "Function" + value).with(ValuePropertyNames.CURRENCY, "USD").with("Curve", "Forward", "Funding").get());
+  }
+
+  public void testIntern() {
+    final ValueSpecification a = createSpecification(1, 1);
+    final ValueSpecification b = createSpecification(1, 1);
+    final ValueSpecification c = createSpecification(1, 2);
+    assertFalse(a == b);
+    final ValueSpecification ai = a.intern();
+    assertSame(ai, b.intern());
+    assertSame(ai, ai.intern());
+    assertSame(ai.getProperties(), b.intern().getProperties());
+    assertSame(ai.getProperties(), ai.getProperties().intern());
+    assertEquals(ai, b);
+    assertEquals(b, ai);
+    assertEquals(ai.hashCode(), b.hashCode());
+    assertFalse(ai.equals(c.intern()));
+  }
+
+  public void testGraphValuesInterned() {
+    final DependencyNode producer = new DependencyNode(new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", "1")));
+    producer.addOutputValue(createSpecification(1, 1));
+    final DependencyNode consumer = new DependencyNode(new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", "2")));
+    consumer.addInputValue(createSpecification(1, 1));
+    assertSame(producer.getOutputValues().iterator().next(), consumer.getInputValues().iterator().next());
+  }
+
+  private static long usedMemory() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static DependencyGraph createGraph(final int targets, final int values) {
+    final DependencyGraph graph = new DependencyGraph("Default");
+    DependencyNode[] previous = null;
+    for (int value = 0; value < values; value++) {
+      final DependencyNode[] nodes = new DependencyNode[targets];
+      for (int target = 0; target < targets; target++) {
+        final DependencyNode node = new DependencyNode(new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", Integer.toString(target))));
+        node.addOutputValue(createSpecification(target, value));
+        if (previous != null) {
+          node.addInputNode(previous[target]);
+          node.addInputValue(createSpecification(target, value - 1));
+        }
+        graph.addDependencyNode(node);
+        nodes[target] = node;
+      }
+      previous = nodes;
+    }
+    return graph;
+  }
+
+  private static int lookup(final Map<ValueSpecification, Integer> map, final List<ValueSpecification> keys, final int cycles) {
+    int found = 0;
+    for (int i = 0; i < cycles; i++) {
+      for (ValueSpecification key : keys) {
+        if (map.get(key) != null) {
+          found++;
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Compares the memory used by the specifications of a large graph when each input and output is a separate instance with that
+   * used when they are interned, and the time taken to look them up in an identifier map with and without interning.
+   */
+  @Test(enabled = false)
+  public void comparePerformance() {
+    final int targets = 20000;
+    final int values = 10;
+    final int cycles = 10;
+    // Each specification appears as an output and as an input, as in a graph
+    long base = usedMemory();
+    List<ValueSpecification> specifications = new ArrayList<ValueSpecification>(targets * values * 2);
+    for (int value = 0; value < values; value++) {
+      for (int target = 0; target < targets; target++) {
+        specifications.add(createSpecification(target, value));
+        specifications.add(createSpecification(target, value));
+      }
+    }
+    final long raw = usedMemory() - base;
+    specifications = null;
+    base = usedMemory();
+    specifications = new ArrayList<ValueSpecification>(targets * values * 2);
+    for (int value = 0; value < values; value++) {
+      for (int target = 0; target < targets; target++) {
+        specifications.add(createSpecification(target, value).intern());
+        specifications.add(createSpecification(target, value).intern());
+      }
+    }
+    final long interned = usedMemory() - base;
+    specifications = null;
+    s_logger.info("Specifications {} bytes/value separate, {} bytes/value interned", (double) raw / (double) (targets * values),
+        (double) interned / (double) (targets * values));
+    OperationTimer timer = new OperationTimer(s_logger, "Building graph of {} nodes", targets * values);
+    final DependencyGraph graph = createGraph(targets, values);
+    timer.finished();
+    // Identifier map lookups, keyed by the graph's values, from newly decoded specifications
+    final Map<ValueSpecification, Integer> identifiers = new HashMap<ValueSpecification, Integer>();
+    for (ValueSpecification output : graph.getOutputSpecifications()) {
+      identifiers.put(output, identifiers.size());
+    }
+    final List<ValueSpecification> decoded = new ArrayList<ValueSpecification>(identifiers.size());
+    for (int value = 0; value < values; value++) {
+      for (int target = 0; target < targets; target++) {
+        decoded.add(createSpecification(target, value));
+      }
+    }
+    timer = new OperationTimer(s_logger, "Looking up {} specifications {} times", decoded.size(), cycles);
+    final int rawFound = lookup(identifiers, decoded, cycles);
+    final long rawTime = timer.finished();
+    final List<ValueSpecification> decodedInterned = new ArrayList<ValueSpecification>(decoded.size());
+    for (ValueSpecification specification : decoded) {
+      decodedInterned.add(specification.intern());
+    }
+    timer = new OperationTimer(s_logger, "Looking up {} interned specifications {} times", decoded.size(), cycles);
+    final int internedFound = lookup(identifiers, decodedInterned, cycles);
+    final long internedTime = timer.finished();
+    assertEquals(rawFound, internedFound);
+    assertEquals(decoded.size() * cycles, internedFound);
+    s_logger.info("Lookup by separate instances {}ms, by interned instances {}ms", rawTime, internedTime);
+  }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import javax.time.Instant;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.calcnode.InvocationResult;
+
+/**
+ * Tests the {@link ColumnarViewResultModel} implementations.
+ */
+@Test
+public class ColumnarViewResultModelTest {
+
+  private static ComputedValue value(final String name, final String target, final Object value) {
+    return new ComputedValue(new ValueSpecification(new ValueRequirement(name, new ComputationTargetSpecification(target)), "function ID"), value);
+  }
+
+  public void testScalarAndObjectColumns() {
+    final ColumnarViewComputationResultModel model = new ColumnarViewComputationResultModel();
+    model.setCalculationTime(Instant.ofEpochMillis(500));
+    model.addValue("Config1", value("A", "Foo", 1d));
+    model.addValue("Config1", value("B", "Foo", "B1"));
+    model.addValue("Config2", value("A", "Bar", 2d));
+    assertEquals(Instant.ofEpochMillis(500), model.getCalculationTime());
+    assertEquals(3, model.getRowCount());
+    assertTrue(model.isScalar(0));
+    assertFalse(model.isScalar(1));
+    assertEquals(1d, model.getScalarColumn()[0]);
+    assertEquals(new HashSet<String>(Arrays.asList("Config1", "Config2")), model.getCalculationConfigurationNames());
+    assertEquals(new HashSet<ComputationTargetSpecification>(Arrays.asList(new ComputationTargetSpecification("Foo"), new ComputationTargetSpecification("Bar"))),
+        model.getAllTargets());
+    assertEquals(new HashSet<String>(Arrays.asList("A", "B")), model.getAllOutputValueNames());
+    final ViewCalculationResultModel config1 = model.getCalculationResult("Config1");
+    assertEquals(2, config1.getValues(new ComputationTargetSpecification("Foo")).size());
+    assertTrue(config1.getAllValues(new ComputationTargetSpecification("Foo")).contains(value("A", "Foo", 1d)));
+    assertNull(config1.getAllValues(new ComputationTargetSpecification("Bar")));
+    assertNull(model.getCalculationResult("Config3"));
+    final ViewTargetResultModel bar = model.getTargetResult(new ComputationTargetSpecification("Bar"));
+    assertEquals(Arrays.asList("Config2"), Arrays.asList(bar.getCalculationConfigurationNames().toArray()));
+    assertEquals(Arrays.asList(value("A", "Bar", 2d)), bar.getAllValues("Config2"));
+    assertNull(bar.getAllValues("Config1"));
+    assertEquals(new ViewResultEntry("Config1", value("B", "Foo", "B1")), model.getAllResults().get(1));
+  }
+
+  public void testReplaceValue() {
+    final ColumnarViewDeltaResultModel model = new ColumnarViewDeltaResultModel();
+    model.addValue("Config", value("A", "Foo", 1d));
+    model.addValue("Config", value("A", "Foo", "A2"));
+    assertEquals(1, model.getRowCount());
+    assertEquals(Arrays.asList(value("A", "Foo", "A2")), model.getCalculationResult("Config").getAllValues(new ComputationTargetSpecification("Foo")));
+    model.addValue("Config", value("A", "Foo", 3d));
+    assertEquals(1, model.getAllResults().size());
+    assertEquals(value("A", "Foo", 3d), model.getAllResults().get(0).getComputedValue());
+  }
+
+  public void testDetailedValue() {
+    final ColumnarViewComputationResultModel model = new ColumnarViewComputationResultModel();
+    final ComputedValue detailed = value("A", "Foo", 1d);
+    detailed.setInvocationResult(InvocationResult.SUCCESS);
+    model.addValue("Config", detailed);
+    assertTrue(model.isDetailed(0));
+    assertFalse(model.isScalar(0));
+    assertSame(detailed, model.getComputedValue(0));
+  }
+
+}
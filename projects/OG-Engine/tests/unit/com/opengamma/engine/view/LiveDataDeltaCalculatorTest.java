@@ -7,8 +7,13 @@ package com.opengamma.engine.view;
 
 import static org.testng.AssertJUnit.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.fudgemsg.FudgeContext;
 import org.testng.annotations.BeforeMethod;
@@ -172,4 +177,66 @@ public class LiveDataDeltaCalculatorTest {
     assertEquals(_graph.getDependencyNodes(), _deltaCalculator.getChangedNodes());
   }
 
+  private ValueSpecification getSpec(DependencyNode node) {
+    return ((MarketDataSourcingFunction) node.getFunction().getFunction()).getMarketDataRequirement().getSecond();
+  }
+
+  public void reportedChange() {
+    put(_cache, _node1, 6.0);
+    put(_previousCache, _node1, 7.0);
+    put(_cache, _node2, 6.0);
+    put(_previousCache, _node2, 6.0);
+    final LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(_graph, _cache, _previousCache, Arrays.asList(getSpec(_node1), getSpec(_node2)), null);
+
+    deltaCalculator.computeDelta();
+
+    assertEquals(Sets.newHashSet(_node2, _node3), deltaCalculator.getUnchangedNodes());
+    assertEquals(Sets.newHashSet(_node0, _node1), deltaCalculator.getChangedNodes());
+  }
+
+  public void unreportedChange() {
+    // Only the reported values are compared
+    put(_cache, _node3, 6.0);
+    put(_previousCache, _node3, 7.0);
+    final LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(_graph, _cache, _previousCache, Collections.singleton(getSpec(_node0)), null);
+
+    deltaCalculator.computeDelta();
+
+    assertEquals(_graph.getDependencyNodes(), deltaCalculator.getUnchangedNodes());
+    assertEquals(Collections.emptySet(), deltaCalculator.getChangedNodes());
+  }
+
+  public void parallelPropagation() {
+    // Many independent diamonds, enough changes to be split between threads
+    final DependencyGraph graph = new DependencyGraph("test");
+    final List<ValueSpecification> changed = new ArrayList<ValueSpecification>();
+    for (int i = 0; i < 2000; i++) {
+      final DependencyNode node3 = createNode("Node3-" + i, Collections.<DependencyNode>emptySet());
+      final DependencyNode node1 = createNode("Node1-" + i, Sets.newHashSet(node3));
+      final DependencyNode node2 = createNode("Node2-" + i, Sets.newHashSet(node3));
+      final DependencyNode node0 = createNode("Node0-" + i, Sets.newHashSet(node1, node2));
+      graph.addDependencyNode(node0);
+      graph.addDependencyNode(node1);
+      graph.addDependencyNode(node2);
+      graph.addDependencyNode(node3);
+      final DependencyNode tick = ((i % 2) == 0) ? node3 : node1;
+      put(_cache, tick, 6.0);
+      put(_previousCache, tick, 7.0);
+      changed.add(getSpec(tick));
+    }
+    assertEquals(2000, graph.getCompactGraph().getComponentCount());
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final LiveDataDeltaCalculator parallel = new LiveDataDeltaCalculator(graph, _cache, _previousCache, changed, executor);
+      parallel.computeDelta();
+      final LiveDataDeltaCalculator serial = new LiveDataDeltaCalculator(graph, _cache, _previousCache);
+      serial.computeDelta();
+      assertEquals(serial.getChangedNodes(), parallel.getChangedNodes());
+      assertEquals(serial.getChangedNodeIndices(), parallel.getChangedNodeIndices());
+      assertEquals(1000 * 4 + 1000 * 2, parallel.getChangedNodes().size());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
 }
@@ -12,18 +12,33 @@ import static org.testng.AssertJUnit.assertNotSame;
 import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import javax.time.Instant;
 import javax.time.InstantProvider;
+import javax.time.calendar.LocalDate;
 
 import com.opengamma.engine.view.client.ViewResultMode;
 import com.opengamma.engine.view.listener.CycleFragmentCompletedCall;
 import com.opengamma.engine.view.listener.CycleStartedCall;
 import org.testng.annotations.Test;
 
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.marketdata.spec.MarketData;
 import com.opengamma.engine.test.TestViewResultListener;
 import com.opengamma.engine.test.ViewProcessorTestEnvironment;
+import com.opengamma.engine.view.calc.DependencyGraphExecutor;
+import com.opengamma.engine.view.calc.DependencyGraphExecutorFactory;
+import com.opengamma.engine.view.calc.ExecutionResult;
+import com.opengamma.engine.view.calc.SingleComputationCycle;
+import com.opengamma.engine.view.calc.SingleNodeExecutorFactory;
 import com.opengamma.engine.view.calc.ViewComputationJob;
+import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
 import com.opengamma.engine.view.client.ViewClient;
 import com.opengamma.engine.view.client.ViewClientState;
 import com.opengamma.engine.view.compilation.CompiledViewDefinition;
@@ -33,6 +48,7 @@ import com.opengamma.engine.view.execution.ExecutionFlags;
 import com.opengamma.engine.view.execution.ExecutionOptions;
 import com.opengamma.engine.view.execution.ViewCycleExecutionOptions;
 import com.opengamma.engine.view.execution.ViewExecutionOptions;
+import com.opengamma.id.VersionCorrection;
 import com.opengamma.util.test.Timeout;
 
 /**
@@ -168,6 +184,109 @@ public class ViewProcessTest {
     vp.stop();
   }
 
+  public void testConcurrentCycles() throws InterruptedException {
+    final ViewProcessorTestEnvironment env = new ViewProcessorTestEnvironment();
+    env.init();
+    final ViewProcessorImpl vp = env.getViewProcessor();
+    vp.start();
+
+    ViewClient client = vp.createViewClient(ViewProcessorTestEnvironment.TEST_USER);
+
+    TestViewResultListener resultListener = new TestViewResultListener();
+    client.setResultListener(resultListener);
+
+    final Instant time0 = Instant.now();
+    ViewCycleExecutionOptions defaultCycleOptions = new ViewCycleExecutionOptions(MarketData.live());
+    final ViewExecutionOptions executionOptions = new ExecutionOptions(ArbitraryViewCycleExecutionSequence.of(time0, time0.plusMillis(10), time0.plusMillis(20),
+        time0.plusMillis(30), time0.plusMillis(40)), ExecutionFlags.none().runAsFastAsPossible().get(), null, 2, defaultCycleOptions, VersionCorrection.LATEST);
+
+    client.attachToViewProcess(env.getViewDefinition().getUniqueId(), executionOptions);
+
+    ViewProcessImpl viewProcess = env.getViewProcess(vp, client.getUniqueId());
+    ViewComputationJob computationJob = env.getCurrentComputationJob(viewProcess);
+
+    // The one compilation is valid for all of the valuation times, and the results arrive in sequence order
+    resultListener.assertViewDefinitionCompiled(Timeout.standardTimeoutMillis());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(time0.plusMillis(i * 10), resultListener.getCycleCompleted(10 * Timeout.standardTimeoutMillis()).getFullResult().getValuationTime());
+    }
+    resultListener.assertProcessCompleted(Timeout.standardTimeoutMillis());
+    resultListener.assertNoCalls(Timeout.standardTimeoutMillis());
+
+    assertTrue(executionOptions.getExecutionSequence().isEmpty());
+    assertEquals(ViewProcessState.FINISHED, viewProcess.getState());
+    assertTrue(computationJob.isTerminated());
+
+    vp.stop();
+  }
+
+  public void testConcurrentCyclesArePipelined() throws InterruptedException {
+    final ViewProcessorTestEnvironment env = new ViewProcessorTestEnvironment();
+    final Instant time0 = Instant.now();
+    final int cycles = 4;
+    // Each cycle waits in execution until the cycle after it has started executing, so cannot complete if the cycles
+    // run one at a time or in batches, rather than another being started whenever one completes
+    final CountDownLatch[] executing = new CountDownLatch[cycles];
+    for (int i = 0; i < cycles; i++) {
+      executing[i] = new CountDownLatch(1);
+    }
+    final AtomicBoolean overlapped = new AtomicBoolean(true);
+    final SingleNodeExecutorFactory underlying = new SingleNodeExecutorFactory();
+    env.setDependencyGraphExecutorFactory(new DependencyGraphExecutorFactory<ExecutionResult>() {
+      @Override
+      public DependencyGraphExecutor<ExecutionResult> createExecutor(final SingleComputationCycle cycle) {
+        final DependencyGraphExecutor<ExecutionResult> executor = underlying.createExecutor(cycle);
+        final int index = (int) (cycle.getValuationTime().toEpochMillisLong() - time0.toEpochMillisLong()) / 10;
+        return new DependencyGraphExecutor<ExecutionResult>() {
+          @Override
+          public Future<ExecutionResult> execute(final DependencyGraph graph, final Queue<ExecutionResult> executionResultQueue, final GraphExecutorStatisticsGatherer statistics) {
+            executing[index].countDown();
+            if (index + 1 < cycles) {
+              try {
+                if (!executing[index + 1].await(Timeout.standardTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                  overlapped.set(false);
+                }
+              } catch (InterruptedException e) {
+                throw new OpenGammaRuntimeException("Interrupted", e);
+              }
+            }
+            return executor.execute(graph, executionResultQueue, statistics);
+          }
+        };
+      }
+    });
+    env.init();
+    final ViewProcessorImpl vp = env.getViewProcessor();
+    vp.start();
+
+    ViewClient client = vp.createViewClient(ViewProcessorTestEnvironment.TEST_USER);
+    client.setFragmentResultMode(ViewResultMode.FULL_ONLY);
+    TestViewResultListener resultListener = new TestViewResultListener();
+    client.setResultListener(resultListener);
+
+    ViewCycleExecutionOptions defaultCycleOptions = new ViewCycleExecutionOptions(MarketData.historical(LocalDate.now(), null, null));
+    final ViewExecutionOptions executionOptions = new ExecutionOptions(ArbitraryViewCycleExecutionSequence.of(time0, time0.plusMillis(10), time0.plusMillis(20),
+        time0.plusMillis(30)), ExecutionFlags.none().runAsFastAsPossible().get(), null, 2, defaultCycleOptions, VersionCorrection.LATEST);
+    client.attachToViewProcess(env.getViewDefinition().getUniqueId(), executionOptions);
+
+    // Two cycles start before either completes, each completion lets the next cycle start, and results arrive in order
+    resultListener.assertViewDefinitionCompiled(Timeout.standardTimeoutMillis());
+    final long timeout = 10 * Timeout.standardTimeoutMillis();
+    assertEquals(time0, resultListener.getCycleStarted(timeout).getCycleMetadata().getValuationTime());
+    assertEquals(time0.plusMillis(10), resultListener.getCycleStarted(timeout).getCycleMetadata().getValuationTime());
+    assertEquals(time0, resultListener.getCycleCompleted(timeout).getFullResult().getValuationTime());
+    assertEquals(time0.plusMillis(20), resultListener.getCycleStarted(timeout).getCycleMetadata().getValuationTime());
+    assertEquals(time0.plusMillis(10), resultListener.getCycleCompleted(timeout).getFullResult().getValuationTime());
+    assertEquals(time0.plusMillis(30), resultListener.getCycleStarted(timeout).getCycleMetadata().getValuationTime());
+    assertEquals(time0.plusMillis(20), resultListener.getCycleCompleted(timeout).getFullResult().getValuationTime());
+    assertEquals(time0.plusMillis(30), resultListener.getCycleCompleted(timeout).getFullResult().getValuationTime());
+    resultListener.assertProcessCompleted(Timeout.standardTimeoutMillis());
+    resultListener.assertNoCalls(Timeout.standardTimeoutMillis());
+    assertTrue(overlapped.get());
+
+    vp.stop();
+  }
+
   public void testGraphRebuildWithStreamingModeOn() throws InterruptedException {
     final ViewProcessorTestEnvironment env = new ViewProcessorTestEnvironment();
     env.init();
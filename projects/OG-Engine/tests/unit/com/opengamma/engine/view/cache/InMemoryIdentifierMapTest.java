@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueId;
+
+/**
+ * Tests the {@link InMemoryIdentifierMap} class.
+ */
+@Test
+public class InMemoryIdentifierMapTest {
+
+  private ValueSpecification getValueSpec(final String valueName) {
+    return new ValueSpecification(new ValueRequirement("value", new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("scheme", valueName))),
+        "mockFunctionId");
+  }
+
+  public void singleOperations() {
+    final InMemoryIdentifierMap map = new InMemoryIdentifierMap();
+    final long a = map.getIdentifier(getValueSpec("A"));
+    final long b = map.getIdentifier(getValueSpec("B"));
+    assertEquals(a, map.getIdentifier(getValueSpec("A")));
+    assertEquals(b, map.getIdentifier(getValueSpec("B")));
+    assertEquals(getValueSpec("A"), map.getValueSpecification(a));
+    assertEquals(getValueSpec("B"), map.getValueSpecification(b));
+    assertNull(map.getValueSpecification(Math.max(a, b) + 1));
+    assertNull(map.getValueSpecification(1L << 40));
+  }
+
+  public void bulkOperations() {
+    final InMemoryIdentifierMap map = new InMemoryIdentifierMap();
+    final List<ValueSpecification> specs = new ArrayList<ValueSpecification>();
+    for (int i = 0; i < 10000; i++) {
+      specs.add(getValueSpec("V" + i));
+    }
+    final long single = map.getIdentifier(specs.get(42));
+    final Object2LongMap<ValueSpecification> identifiers = map.getIdentifiers(specs);
+    assertEquals(specs.size(), identifiers.size());
+    assertEquals(single, identifiers.getLong(specs.get(42)));
+    assertEquals(specs.size(), new LongOpenHashSet(identifiers.values()).size());
+    final LongArrayList identifierList = new LongArrayList(identifiers.values());
+    final Long2ObjectMap<ValueSpecification> specifications = map.getValueSpecifications(identifierList);
+    for (ValueSpecification spec : specs) {
+      assertEquals(spec, specifications.get(identifiers.getLong(spec)));
+    }
+  }
+
+  public void concurrentAllocation() throws InterruptedException {
+    final InMemoryIdentifierMap map = new InMemoryIdentifierMap();
+    final int numThreads = 4;
+    final int numSpecs = 5000;
+    final long[][] results = new long[numThreads][numSpecs];
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int thread = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < numSpecs; i++) {
+              results[thread][i] = map.getIdentifier(getValueSpec("V" + i));
+              assertEquals(getValueSpec("V" + i), map.getValueSpecification(results[thread][i]));
+            }
+          } catch (Throwable e) {
+            failure.set(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure.get());
+    for (int t = 1; t < numThreads; t++) {
+      for (int i = 0; i < numSpecs; i++) {
+        assertEquals(results[0][i], results[t][i]);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.fudgemsg.FudgeContext;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueId;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * Tests the inheritance of values between the caches of successive cycles.
+ */
+@Test
+public class LayeredFudgeMessageStoreTest {
+
+  private static final FudgeContext s_fudgeContext = OpenGammaFudgeContext.getInstance();
+  private static final String CONFIG = "Default";
+
+  private static class ReportingBinaryDataStoreFactory implements BinaryDataStoreFactory {
+
+    private final Set<ViewComputationCacheKey> _cachesDestroyed = new HashSet<ViewComputationCacheKey>();
+
+    @Override
+    public BinaryDataStore createDataStore(final ViewComputationCacheKey cacheKey) {
+      return new InMemoryBinaryDataStore() {
+
+        @Override
+        public void delete() {
+          _cachesDestroyed.add(cacheKey);
+          super.delete();
+        }
+
+      };
+    }
+
+  }
+
+  private static ValueSpecification spec(final String name) {
+    return new ValueSpecification(new ValueRequirement(name, "Foo"), "function ID");
+  }
+
+  private static ViewComputationCacheKey key(final UniqueId cycle) {
+    return new ViewComputationCacheKey(cycle, CONFIG);
+  }
+
+  public void testInheritAcrossCycles() {
+    final ReportingBinaryDataStoreFactory sharedStore = new ReportingBinaryDataStoreFactory();
+    final DefaultViewComputationCacheSource cacheSource = new DefaultViewComputationCacheSource(new InMemoryIdentifierMap(), s_fudgeContext, new DefaultFudgeMessageStoreFactory(
+        new InMemoryBinaryDataStoreFactory(), s_fudgeContext), new DefaultFudgeMessageStoreFactory(sharedStore, s_fudgeContext));
+    final UniqueId cycle1 = UniqueId.of("Test", "ViewCycle", "1");
+    final UniqueId cycle2 = UniqueId.of("Test", "ViewCycle", "2");
+    final UniqueId cycle3 = UniqueId.of("Test", "ViewCycle", "3");
+    final ViewComputationCache cache1 = cacheSource.getCache(cycle1, CONFIG);
+    cache1.putSharedValue(new ComputedValue(spec("A"), "A1"));
+    cache1.putSharedValue(new ComputedValue(spec("B"), "B1"));
+    cache1.putPrivateValue(new ComputedValue(spec("C"), "C1"));
+    // Cycle 2 inherits A and B, recalculates C, but only the shared values can be inherited
+    final ViewComputationCache cache2 = cacheSource.getCache(cycle2, CONFIG);
+    Collection<ValueSpecification> notInherited = cacheSource.inheritValues(cycle2, cycle1, CONFIG, Arrays.asList(spec("A"), spec("B"), spec("C")));
+    assertEquals(Arrays.asList(spec("C")), notInherited);
+    cache2.putSharedValue(new ComputedValue(spec("B"), "B2"));
+    assertEquals("A1", cache2.getValue(spec("A")));
+    assertEquals("B2", cache2.getValue(spec("B")));
+    assertNull(cache2.getValue(spec("C")));
+    cacheSource.releaseCaches(cycle1);
+    // The cycle 1 shared store is still referenced by cycle 2
+    assertTrue(sharedStore._cachesDestroyed.isEmpty());
+    assertEquals("A1", cache2.getValue(spec("A"), CacheSelectHint.allShared()));
+    // Cycle 3 refers to the cycle 1 store directly for A
+    final ViewComputationCache cache3 = cacheSource.getCache(cycle3, CONFIG);
+    notInherited = cacheSource.inheritValues(cycle3, cycle2, CONFIG, Arrays.asList(spec("A"), spec("B")));
+    assertTrue(notInherited.isEmpty());
+    cacheSource.releaseCaches(cycle2);
+    assertTrue(sharedStore._cachesDestroyed.isEmpty());
+    assertEquals("A1", cache3.getValue(spec("A")));
+    assertEquals("B2", cache3.getValue(spec("B")));
+    assertEquals(2, cache3.getValues(Arrays.asList(spec("A"), spec("B"))).size());
+    cacheSource.releaseCaches(cycle3);
+    assertEquals(new HashSet<ViewComputationCacheKey>(Arrays.asList(key(cycle1), key(cycle2), key(cycle3))), sharedStore._cachesDestroyed);
+  }
+
+  public void testUnchangedValueReleasesOldCycles() {
+    final ReportingBinaryDataStoreFactory sharedStore = new ReportingBinaryDataStoreFactory();
+    final DefaultViewComputationCacheSource cacheSource = new DefaultViewComputationCacheSource(new InMemoryIdentifierMap(), s_fudgeContext, new DefaultFudgeMessageStoreFactory(
+        new InMemoryBinaryDataStoreFactory(), s_fudgeContext), new DefaultFudgeMessageStoreFactory(sharedStore, s_fudgeContext));
+    final int cycles = 5 * LayeredFudgeMessageStore.MAXIMUM_INHERITANCE_DEPTH;
+    UniqueId previousCycle = UniqueId.of("Test", "ViewCycle", "0");
+    ViewComputationCache cache = cacheSource.getCache(previousCycle, CONFIG);
+    cache.putSharedValue(new ComputedValue(spec("A"), "A0"));
+    cache.putSharedValue(new ComputedValue(spec("B"), "B0"));
+    for (int i = 1; i <= cycles; i++) {
+      // A never changes, B changes every cycle
+      final UniqueId cycle = UniqueId.of("Test", "ViewCycle", Integer.toString(i));
+      cache = cacheSource.getCache(cycle, CONFIG);
+      assertTrue(cacheSource.inheritValues(cycle, previousCycle, CONFIG, Arrays.asList(spec("A"))).isEmpty());
+      cache.putSharedValue(new ComputedValue(spec("B"), "B" + i));
+      cacheSource.releaseCaches(previousCycle);
+      previousCycle = cycle;
+      assertEquals("A0", cache.getValue(spec("A")));
+      assertEquals("B" + i, cache.getValue(spec("B")));
+      // At most the current store and the one holding A remain
+      assertTrue(i + 1 - sharedStore._cachesDestroyed.size() <= 2);
+    }
+    assertTrue(sharedStore._cachesDestroyed.contains(key(UniqueId.of("Test", "ViewCycle", "0"))));
+    cacheSource.releaseCaches(previousCycle);
+    assertEquals(cycles + 1, sharedStore._cachesDestroyed.size());
+  }
+
+  public void testInheritFromReleasedCycle() {
+    final DefaultViewComputationCacheSource cacheSource = new InMemoryViewComputationCacheSource(s_fudgeContext);
+    final UniqueId cycle1 = UniqueId.of("Test", "ViewCycle", "1");
+    final UniqueId cycle2 = UniqueId.of("Test", "ViewCycle", "2");
+    cacheSource.getCache(cycle1, CONFIG).putSharedValue(new ComputedValue(spec("A"), "A1"));
+    cacheSource.releaseCaches(cycle1);
+    cacheSource.getCache(cycle2, CONFIG);
+    assertEquals(Arrays.asList(spec("A")), cacheSource.inheritValues(cycle2, cycle1, CONFIG, Arrays.asList(spec("A"))));
+    cacheSource.releaseCaches(cycle2);
+  }
+
+}
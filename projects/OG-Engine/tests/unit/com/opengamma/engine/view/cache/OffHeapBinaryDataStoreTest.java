@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.opengamma.util.monitor.OperationTimer;
+import com.sleepycat.je.Environment;
+
+/**
+ * Tests the {@link OffHeapBinaryDataStore} and compares its performance against {@link InMemoryBinaryDataStore} and
+ * {@link BerkeleyDBBinaryDataStore}.
+ */
+@Test
+public class OffHeapBinaryDataStoreTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(OffHeapBinaryDataStoreTest.class);
+
+  private static Set<File> s_dirsToDelete = new HashSet<File>();
+
+  protected File createDir(String methodName) {
+    File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+    File dir = new File(tmpDir, "OffHeapBinaryDataStore-" + System.currentTimeMillis() + "-" + methodName);
+    dir.mkdirs();
+    s_dirsToDelete.add(dir);
+    return dir;
+  }
+
+  @AfterClass
+  public static void deleteDirs() {
+    for (File f : s_dirsToDelete) {
+      try {
+        s_logger.info("Deleting temp directory {}", f);
+        FileUtils.deleteDirectory(f);
+      } catch (IOException ioe) {
+        s_logger.warn("Unable to recursively delete directory {}", f);
+        // Just swallow it.
+      }
+    }
+    s_dirsToDelete.clear();
+  }
+
+  private void testPutGet(final BinaryDataStore dataStore) {
+    final Random random = new Random(1L);
+    final Map<Long, byte[]> expected = new HashMap<Long, byte[]>();
+    for (long i = 1; i < 5000; i++) {
+      final byte[] data = new byte[random.nextInt(200)];
+      random.nextBytes(data);
+      dataStore.put(i * 7, data);
+      expected.put(i * 7, data);
+    }
+    for (Map.Entry<Long, byte[]> entry : expected.entrySet()) {
+      assertTrue(Arrays.equals(entry.getValue(), dataStore.get(entry.getKey())));
+    }
+    assertNull(dataStore.get(3L));
+    final byte[] replacement = new byte[] {1, 2, 3 };
+    dataStore.put(7L, replacement);
+    assertTrue(Arrays.equals(replacement, dataStore.get(7L)));
+    final List<Long> identifiers = new ArrayList<Long>();
+    identifiers.add(14L);
+    identifiers.add(15L);
+    identifiers.add(21L);
+    final Map<Long, byte[]> bulk = dataStore.get(identifiers);
+    assertEquals(2, bulk.size());
+    assertTrue(Arrays.equals(expected.get(14L), bulk.get(14L)));
+    assertTrue(Arrays.equals(expected.get(21L), bulk.get(21L)));
+    dataStore.delete();
+  }
+
+  public void directPutGet() {
+    testPutGet(new OffHeapBinaryDataStore(4096));
+  }
+
+  public void mappedPutGet() {
+    testPutGet(new OffHeapBinaryDataStore(4096, createDir("mappedPutGet"), "test"));
+  }
+
+  public void oversizedValue() {
+    final OffHeapBinaryDataStore dataStore = new OffHeapBinaryDataStore(64);
+    final byte[] data = new byte[1000];
+    new Random().nextBytes(data);
+    dataStore.put(1L, data);
+    dataStore.put(2L, new byte[] {42 });
+    assertTrue(Arrays.equals(data, dataStore.get(1L)));
+    assertEquals(42, dataStore.get(2L)[0]);
+    assertEquals(2, dataStore.size());
+    dataStore.delete();
+    assertNull(dataStore.get(1L));
+  }
+
+  public void bulkPut() {
+    final OffHeapBinaryDataStore dataStore = new OffHeapBinaryDataStore(1024);
+    final Map<Long, byte[]> data = new HashMap<Long, byte[]>();
+    for (long i = 0; i < 100; i++) {
+      data.put(i, new byte[] {(byte) i });
+    }
+    dataStore.put(data);
+    assertEquals(100, dataStore.size());
+    assertEquals(data.keySet(), dataStore.get(data.keySet()).keySet());
+    dataStore.delete();
+  }
+
+  private void performanceTest(final String name, final BinaryDataStore dataStore) {
+    final int numEntries = 50000;
+    final int numCycles = 5;
+    final int minEntrySize = 50;
+    final int maxEntrySize = 1000;
+    final Random random = new Random(1L);
+    final byte[][] values = new byte[256][];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = new byte[minEntrySize + random.nextInt(maxEntrySize - minEntrySize)];
+      random.nextBytes(values[i]);
+    }
+    OperationTimer timer = new OperationTimer(s_logger, "{} writing {} entries", name, numEntries);
+    for (int i = 0; i < numEntries; i++) {
+      dataStore.put(i, values[i & 255]);
+    }
+    long numMillis = timer.finished();
+    s_logger.info("{} - {} puts/sec", name, (double) numEntries * 1000.0 / Math.max(numMillis, 1L));
+    timer = new OperationTimer(s_logger, "{} reading {} entries", name, numEntries * numCycles);
+    for (int j = 0; j < numCycles; j++) {
+      for (int i = 0; i < numEntries; i++) {
+        assertEquals(values[i & 255].length, dataStore.get(i).length);
+      }
+    }
+    numMillis = timer.finished();
+    s_logger.info("{} - {} gets/sec", name, (double) numEntries * numCycles * 1000.0 / Math.max(numMillis, 1L));
+    dataStore.delete();
+  }
+
+  @Test(enabled = false)
+  public void comparePerformance() {
+    performanceTest("InMemory", new InMemoryBinaryDataStore());
+    performanceTest("OffHeap direct", new OffHeapBinaryDataStore(OffHeapBinaryDataStore.DEFAULT_SLAB_SIZE));
+    performanceTest("OffHeap mapped", new OffHeapBinaryDataStore(OffHeapBinaryDataStore.DEFAULT_SLAB_SIZE, createDir("comparePerformance"), "test"));
+    final Environment dbEnvironment = BerkeleyDBViewComputationCacheSource.constructDatabaseEnvironment(createDir("comparePerformanceBDB"), false);
+    final BerkeleyDBBinaryDataStore bdbStore = new BerkeleyDBBinaryDataStore(dbEnvironment, "comparePerformance");
+    bdbStore.start();
+    performanceTest("BerkeleyDB", bdbStore);
+    dbEnvironment.close();
+  }
+
+}
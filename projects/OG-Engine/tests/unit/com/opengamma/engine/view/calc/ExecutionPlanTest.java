@@ -6,9 +6,14 @@
 package com.opengamma.engine.view.calc;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -19,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.Sets;
 import com.opengamma.engine.ComputationTarget;
 import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyNode;
@@ -45,6 +51,8 @@ public class ExecutionPlanTest {
 
   private static final Logger s_logger = LoggerFactory.getLogger(ExecutionPlanTest.class);
 
+  private final Map<String, CalculationJob> _dispatched = new ConcurrentHashMap<String, CalculationJob>();
+
   private MultipleNodeExecutor createExecutor() {
     return new MultipleNodeExecutor(null, 0, 0, 0, 0, 0, new FunctionCosts(), null) {
 
@@ -71,6 +79,7 @@ public class ExecutionPlanTest {
       @Override
       protected Cancelable dispatchJob(final CalculationJob job, final JobResultReceiver jobResultReceiver) {
         s_logger.info("Dispatch job {}", job);
+        _dispatched.put(job.getJobItems().get(0).getComputationTargetSpecification().getUniqueId().getValue(), job);
         final List<CalculationJobResultItem> resultItems = new ArrayList<CalculationJobResultItem>(job.getJobItems().size());
         for (CalculationJobItem jobItem : job.getJobItems()) {
           s_logger.debug("Job item {}", jobItem);
@@ -143,13 +152,14 @@ public class ExecutionPlanTest {
     final MutableGraphFragmentContext mContext = createMutableGraphFragmentContext();
     final CompleteGraphFragment fragment = new CompleteGraphFragment(mContext, createStatisticsGatherer(), mContext.getGraph().getExecutionOrder());
     fragment.setCacheSelectHint(CacheSelectHint.allShared());
-    final ExecutionPlan plan = ExecutionPlan.of(fragment);
+    final ExecutionPlan plan = ExecutionPlan.of(fragment, 1000L);
+    assertEquals(plan.getPredictedDuration(), 1000L);
     final GraphFragmentContext context = createGraphFragmentContext();
     final Future<?> future = plan.run(context, createStatisticsGatherer());
     assertEquals(future.get(Timeout.standardTimeoutMillis(), TimeUnit.MILLISECONDS), context.getGraph());
   }
 
-  public void testMultipleFragments() throws Exception {
+  private ExecutionPlan createMultipleFragmentPlan() {
     final MutableGraphFragmentContext mContext = createMutableGraphFragmentContext();
     final MutableGraphFragment.Root root = new MutableGraphFragment.Root(mContext, createStatisticsGatherer());
     final MutableGraphFragment[] fragment = new MutableGraphFragment[4];
@@ -168,10 +178,31 @@ public class ExecutionPlanTest {
     fragment[3].getOutputFragments().add(root);
     root.getInputFragments().add(fragment[2]);
     root.getInputFragments().add(fragment[3]);
+    root.setPredictedDuration(1000L);
     final ExecutionPlan plan = ExecutionPlan.of(root);
+    assertEquals(plan.getPredictedDuration(), 1000L);
+    return plan;
+  }
+
+  public void testMultipleFragments() throws Exception {
+    final ExecutionPlan plan = createMultipleFragmentPlan();
     final GraphFragmentContext context = createGraphFragmentContext();
     final Future<?> future = plan.run(context, createStatisticsGatherer());
     assertEquals(future.get(Timeout.standardTimeoutMillis(), TimeUnit.MILLISECONDS), context.getGraph());
   }
 
+  public void testPredecessorJobIds() throws Exception {
+    final ExecutionPlan plan = createMultipleFragmentPlan();
+    final GraphFragmentContext context = createGraphFragmentContext();
+    plan.run(context, createStatisticsGatherer()).get(Timeout.standardTimeoutMillis(), TimeUnit.MILLISECONDS);
+    assertNull(_dispatched.get("1").getPredecessorJobIds());
+    assertNull(_dispatched.get("2").getPredecessorJobIds());
+    // N3 is dispatched once N1 and N2 complete, so the dispatcher can favour the nodes that produced its inputs
+    final Set<Long> predecessors = new HashSet<Long>();
+    for (long jobId : _dispatched.get("3").getPredecessorJobIds()) {
+      predecessors.add(jobId);
+    }
+    assertEquals(predecessors, Sets.newHashSet(_dispatched.get("1").getSpecification().getJobId(), _dispatched.get("2").getSpecification().getJobId()));
+  }
+
 }
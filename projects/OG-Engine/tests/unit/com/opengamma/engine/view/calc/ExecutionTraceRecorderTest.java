@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.id.UniqueId;
+
+/**
+ * Tests the {@link ExecutionTraceRecorder} and {@link ExecutionTrace} classes.
+ */
+@Test
+public class ExecutionTraceRecorderTest {
+
+  private static UniqueId cycleId(final int i) {
+    return UniqueId.of("Cycle", Integer.toString(i));
+  }
+
+  public void testSampling() {
+    final ExecutionTraceRecorder recorder = new ExecutionTraceRecorder(3);
+    int traced = 0;
+    for (int i = 0; i < 9; i++) {
+      final ExecutionTrace trace = recorder.startCycle(cycleId(i));
+      if (trace != null) {
+        assertSame(trace, recorder.getActiveTrace(cycleId(i)));
+        recorder.endCycle(trace);
+        traced++;
+      } else {
+        assertNull(recorder.getActiveTrace(cycleId(i)));
+      }
+    }
+    assertEquals(3, traced);
+    assertNotNull(recorder.getCompletedTrace(cycleId(0)));
+    assertNotNull(recorder.getCompletedTrace(cycleId(3)));
+    assertNull(recorder.getCompletedTrace(cycleId(4)));
+    assertEquals(cycleId(6), recorder.getLatestCompletedTrace().getCycleId());
+  }
+
+  public void testTraceNextCycle() {
+    final ExecutionTraceRecorder recorder = new ExecutionTraceRecorder(0);
+    assertNull(recorder.startCycle(cycleId(0)));
+    recorder.traceNextCycle();
+    assertNotNull(recorder.startCycle(cycleId(1)));
+    assertNull(recorder.startCycle(cycleId(2)));
+  }
+
+  public void testRetainedTraces() {
+    final ExecutionTraceRecorder recorder = new ExecutionTraceRecorder(1);
+    recorder.setRetainedTraces(2);
+    for (int i = 0; i < 5; i++) {
+      recorder.endCycle(recorder.startCycle(cycleId(i)));
+    }
+    final List<ExecutionTrace> traces = recorder.getCompletedTraces();
+    assertEquals(2, traces.size());
+    assertEquals(cycleId(3), traces.get(0).getCycleId());
+    assertEquals(cycleId(4), traces.get(1).getCycleId());
+  }
+
+  public void testRingBufferOverwrite() {
+    final ExecutionTrace trace = new ExecutionTrace(cycleId(0), 3);
+    for (int i = 0; i < 6; i++) {
+      trace.record(ExecutionTrace.INVOKE, Integer.toString(i), i, i + 1);
+    }
+    assertEquals(6, trace.getRecordedCount());
+    assertEquals(2, trace.getOverwrittenCount());
+    final List<ExecutionTrace.Span> spans = trace.getSpans();
+    assertEquals(4, spans.size());
+    assertEquals("2", spans.get(0).getDetail());
+    assertEquals("5", spans.get(3).getDetail());
+  }
+
+  public void testChromeTrace() {
+    final ExecutionTrace trace = new ExecutionTrace(cycleId(0), 16);
+    final long start = trace.getStartNanos();
+    trace.record(ExecutionTrace.QUEUE_WAIT, "job \"1\"", start + 1000L, start + 3000L);
+    trace.record(ExecutionTrace.INVOKE, null, start + 5000L, start + 9000L);
+    final String json = trace.toChromeTrace();
+    final long tid = Thread.currentThread().getId();
+    assertTrue(json.startsWith("{\"traceEvents\":["));
+    assertTrue(json.contains("{\"name\":\"queueWait\",\"ph\":\"X\",\"pid\":1,\"tid\":" + tid + ",\"ts\":1,\"dur\":2,\"args\":{\"detail\":\"job \\\"1\\\"\"}}"));
+    assertTrue(json.contains("{\"name\":\"invoke\",\"ph\":\"X\",\"pid\":1,\"tid\":" + tid + ",\"ts\":5,\"dur\":4}"));
+    assertTrue(json.contains("\"ph\":\"M\""));
+    assertTrue(json.endsWith("\"otherData\":{\"cycleId\":\"Cycle~0\",\"overwritten\":0}}"));
+  }
+
+}
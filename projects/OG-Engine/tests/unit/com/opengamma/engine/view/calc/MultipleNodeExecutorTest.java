@@ -34,6 +34,7 @@ import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.cache.CacheSelectHint;
 import com.opengamma.engine.view.calc.stats.DiscardingGraphStatisticsGathererProvider;
+import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
 import com.opengamma.engine.view.calcnode.CalculationJob;
 import com.opengamma.engine.view.calcnode.CalculationJobSpecification;
 import com.opengamma.engine.view.calcnode.JobResultReceiver;
@@ -123,7 +124,11 @@ public class MultipleNodeExecutorTest {
   }
 
   private MultipleNodeExecutor createExecutor(final int minimum, final int maximum, final int concurrency) {
-    return new MultipleNodeExecutor(null, minimum, maximum, 0, Integer.MAX_VALUE, concurrency, new FunctionCosts(), new ExecutionPlanCache(null)) {
+    return createExecutor(minimum, maximum, concurrency, 0);
+  }
+
+  private MultipleNodeExecutor createExecutor(final int minimum, final int maximum, final int concurrency, final int nodeCount) {
+    return new MultipleNodeExecutor(null, minimum, maximum, 0, Integer.MAX_VALUE, concurrency, new FunctionCosts(), new ExecutionPlanCache(null), nodeCount, 1) {
 
       @Override
       protected long getFunctionInitId() {
@@ -159,6 +164,43 @@ public class MultipleNodeExecutorTest {
     return (RootGraphFragmentFuture) future;
   }
 
+  private long predictDuration(final MultipleNodeExecutor executor, final DependencyGraph graph) {
+    final long[] predicted = new long[] {-1 };
+    executor.executeImpl(graph, new LinkedBlockingQueue<ExecutionResult>(), new GraphExecutorStatisticsGatherer() {
+
+      @Override
+      public void graphProcessed(final String calcConfig, final int totalJobs, final double meanJobSize, final double meanJobCycleCost, final double meanJobIOCost) {
+        // No action
+      }
+
+      @Override
+      public void graphExecuted(final String calcConfig, final int nodeCount, final long executionTime, final long duration) {
+        // No action
+      }
+
+      @Override
+      public void graphPredicted(final String calcConfig, final long predictedDuration) {
+        predicted[0] = predictedDuration;
+      }
+
+    });
+    return predicted[0];
+  }
+
+  /**
+   * With default function costs the fragments cost N0=3, N1=3, N2=5, N3=3, N4=4 giving a critical path of N2-N4.
+   */
+  public void testPredictedDuration() {
+    // Unlimited nodes - critical path length
+    assertEquals(9, predictDuration(createExecutor(1, 1, 0), _testGraph));
+    // One node - sum of the costs
+    assertEquals(18, predictDuration(createExecutor(1, 1, 0, 1), _testGraph));
+    // Two nodes - N2 & N3 together, then N4 & N0, then N1
+    assertEquals(11, predictDuration(createExecutor(1, 1, 0, 2), _testGraph));
+    // Single fragment - costed like the fragments, so the same as one node: 5 invocations, 6 inputs and 7 outputs
+    assertEquals(18, predictDuration(createExecutor(5, Integer.MAX_VALUE, 0), _testGraph));
+  }
+
   /**
    * Graph untouched - single job.
    */
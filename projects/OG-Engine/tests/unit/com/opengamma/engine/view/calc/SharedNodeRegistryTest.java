@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.time.Instant;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.depgraph.CompactDependencyGraph;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.test.MockFunction;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValuePropertyNames;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.VersionCorrection;
+
+/**
+ * Tests the {@link SharedNodeRegistry} class.
+ */
+@Test
+public class SharedNodeRegistryTest {
+
+  private static final Instant VALUATION_TIME = Instant.ofEpochMillis(1000L);
+
+  private static CompactDependencyGraph createGraph() {
+    final ComputationTarget target = new ComputationTarget(UniqueId.of("Test", "A"));
+    final DependencyNode node = new DependencyNode(target);
+    node.setFunction(new MockFunction("Foo", target));
+    node.addInputValue(new ValueSpecification("1", new ComputationTargetSpecification(UniqueId.of("Test", "X")), ValueProperties.with(ValuePropertyNames.FUNCTION, "Bar").get()));
+    node.addOutputValue(new ValueSpecification("1", new ComputationTargetSpecification(UniqueId.of("Test", "A")), ValueProperties.with(ValuePropertyNames.FUNCTION, "Foo").get()));
+    final DependencyGraph graph = new DependencyGraph("Default");
+    graph.addDependencyNode(node);
+    return graph.getCompactGraph();
+  }
+
+  private static SingleComputationCycle createCycle(final String id, final Instant valuationTime) {
+    final SingleComputationCycle cycle = mock(SingleComputationCycle.class);
+    when(cycle.getUniqueId()).thenReturn(UniqueId.of("Cycle", id));
+    when(cycle.getValuationTime()).thenReturn(valuationTime);
+    when(cycle.getVersionCorrection()).thenReturn(VersionCorrection.LATEST);
+    return cycle;
+  }
+
+  public void testNodeKey_sameGraphs() {
+    final SharedNodeRegistry registry = new SharedNodeRegistry();
+    final CompactDependencyGraph a = createGraph();
+    final CompactDependencyGraph b = createGraph();
+    assertSame(registry.getNodeKey(a, 0), registry.getNodeKey(a, 0));
+    assertEquals(registry.getNodeKey(a, 0), registry.getNodeKey(b, 0));
+  }
+
+  public void testProducer() {
+    final SharedNodeRegistry registry = new SharedNodeRegistry();
+    final CompactDependencyGraph graph = createGraph();
+    final SingleComputationCycle producer = createCycle("A", VALUATION_TIME);
+    final SingleComputationCycle consumer = createCycle("B", VALUATION_TIME);
+    registry.register(producer, "Default", 1L, graph, Arrays.asList(0));
+    assertEquals(1, registry.getSharedNodeCount());
+    final SharedNodeRegistry.Producer result = registry.getProducer(consumer, 1L, registry.getNodeKey(createGraph(), 0));
+    assertSame(producer, result.getCycle());
+    assertEquals("Default", result.getCalculationConfigurationName());
+  }
+
+  public void testProducer_incompatible() {
+    final SharedNodeRegistry registry = new SharedNodeRegistry();
+    final CompactDependencyGraph graph = createGraph();
+    final SingleComputationCycle producer = createCycle("A", VALUATION_TIME);
+    registry.register(producer, "Default", 1L, graph, Arrays.asList(0));
+    // Can't share with itself
+    assertNull(registry.getProducer(producer, 1L, registry.getNodeKey(graph, 0)));
+    // Different function initialization
+    assertNull(registry.getProducer(createCycle("B", VALUATION_TIME), 2L, registry.getNodeKey(graph, 0)));
+    // Different valuation time
+    assertNull(registry.getProducer(createCycle("C", VALUATION_TIME.plusMillis(1L)), 1L, registry.getNodeKey(graph, 0)));
+  }
+
+  public void testUnregister() {
+    final SharedNodeRegistry registry = new SharedNodeRegistry();
+    final CompactDependencyGraph graph = createGraph();
+    final SingleComputationCycle first = createCycle("A", VALUATION_TIME);
+    final SingleComputationCycle second = createCycle("B", VALUATION_TIME);
+    final SingleComputationCycle consumer = createCycle("C", VALUATION_TIME);
+    registry.register(first, "Default", 1L, graph, Arrays.asList(0));
+    registry.register(second, "Default", 1L, graph, Arrays.asList(0));
+    // Releasing the replaced producer must not remove the newer entry
+    registry.unregister(first.getUniqueId());
+    assertSame(second, registry.getProducer(consumer, 1L, registry.getNodeKey(graph, 0)).getCycle());
+    registry.unregister(second.getUniqueId());
+    assertNull(registry.getProducer(consumer, 1L, registry.getNodeKey(graph, 0)));
+    assertEquals(0, registry.getSharedNodeCount());
+    registry.register(first, "Default", 1L, graph, Collections.<Integer>emptyList());
+    assertEquals(0, registry.getSharedNodeCount());
+  }
+
+}
@@ -5,26 +5,51 @@
  */
 package com.opengamma.engine.view.calc;
 
+import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.time.Instant;
 
 import org.testng.annotations.Test;
 
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetType;
 import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.function.FunctionExecutionContext;
+import com.opengamma.engine.function.FunctionInputs;
+import com.opengamma.engine.function.InMemoryFunctionRepository;
 import com.opengamma.engine.marketdata.spec.MarketData;
+import com.opengamma.engine.test.MockFunction;
+import com.opengamma.engine.test.TestViewResultListener;
 import com.opengamma.engine.test.ViewProcessorTestEnvironment;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.view.ViewCalculationConfiguration;
+import com.opengamma.engine.view.ViewDefinition;
 import com.opengamma.engine.view.ViewProcessImpl;
 import com.opengamma.engine.view.ViewProcessorImpl;
 import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
 import com.opengamma.engine.view.client.ViewClient;
+import com.opengamma.engine.view.execution.ExecutionFlags;
 import com.opengamma.engine.view.execution.ExecutionOptions;
+import com.opengamma.engine.view.execution.InfiniteViewCycleExecutionSequence;
+import com.opengamma.engine.view.execution.ViewCycleExecutionOptions;
+import com.opengamma.engine.view.execution.ViewExecutionOptions;
+import com.opengamma.engine.view.listener.CycleCompletedCall;
+import com.opengamma.id.UniqueId;
 import com.opengamma.livedata.UserPrincipal;
 import com.opengamma.util.test.Timeout;
 
@@ -35,6 +60,9 @@ import com.opengamma.util.test.Timeout;
 public class SingleComputationCycleTest {
 
   private static final long TIMEOUT = Timeout.standardTimeoutMillis();
+
+  private static final ComputationTarget PRIMITIVE_TARGET = new ComputationTarget(ComputationTargetType.PRIMITIVE,
+      ViewProcessorTestEnvironment.getPrimitive1().getTargetSpecification().getUniqueId());
   
   public void testInterruptCycle() throws InterruptedException {
     ViewProcessorTestEnvironment env = new ViewProcessorTestEnvironment();
@@ -67,6 +95,74 @@ public class SingleComputationCycleTest {
     assertTrue(executor.wasInterrupted());
   }
   
+  /**
+   * Function counting the number of times it has been executed.
+   */
+  private static final class CountingFunction extends MockFunction {
+
+    private final AtomicInteger _executions = new AtomicInteger();
+
+    private CountingFunction(final ComputationTarget target) {
+      super("Counting", target);
+      addRequirement(ViewProcessorTestEnvironment.getPrimitive1());
+      addResult(getOutputRequirement(target), 42d);
+    }
+
+    @Override
+    public Set<ComputedValue> execute(final FunctionExecutionContext executionContext, final FunctionInputs inputs, final ComputationTarget target,
+        final Set<ValueRequirement> desiredValues) {
+      _executions.incrementAndGet();
+      return super.execute(executionContext, inputs, target, desiredValues);
+    }
+
+  }
+
+  private static ViewDefinition createViewDefinition(final String name) {
+    final ViewDefinition viewDefinition = new ViewDefinition(UniqueId.of("Test", name), name, ViewProcessorTestEnvironment.TEST_USER);
+    final ViewCalculationConfiguration calcConfig = new ViewCalculationConfiguration(viewDefinition, ViewProcessorTestEnvironment.TEST_CALC_CONFIG_NAME);
+    calcConfig.addSpecificRequirement(MockFunction.getOutputRequirement(PRIMITIVE_TARGET));
+    viewDefinition.addViewCalculationConfiguration(calcConfig);
+    return viewDefinition;
+  }
+
+  public void testShareNodes() throws InterruptedException {
+    final ViewProcessorTestEnvironment env = new ViewProcessorTestEnvironment();
+    final CountingFunction function = new CountingFunction(PRIMITIVE_TARGET);
+    final InMemoryFunctionRepository functionRepository = new InMemoryFunctionRepository();
+    functionRepository.addFunction(function);
+    env.setFunctionRepository(functionRepository);
+    final ViewDefinition first = createViewDefinition("First");
+    final ViewDefinition second = createViewDefinition("Second");
+    env.setViewDefinition(first);
+    env.init();
+    env.getMockViewDefinitionRepository().addDefinition(second);
+    final ViewProcessorImpl vp = env.getViewProcessor();
+    final SharedNodeRegistry sharedNodes = new SharedNodeRegistry();
+    vp.setSharedNodeRegistry(sharedNodes);
+    vp.start();
+    // Both views must value at the same time to share results
+    final ViewExecutionOptions executionOptions = ExecutionOptions.of(new InfiniteViewCycleExecutionSequence(), new ViewCycleExecutionOptions(Instant.ofEpochMillis(1000L),
+        MarketData.live()), ExecutionFlags.none().get());
+    final ViewClient firstClient = vp.createViewClient(ViewProcessorTestEnvironment.TEST_USER);
+    final TestViewResultListener firstListener = new TestViewResultListener();
+    firstClient.setResultListener(firstListener);
+    firstClient.attachToViewProcess(first.getUniqueId(), executionOptions);
+    firstListener.assertCycleCompleted(TIMEOUT);
+    assertEquals(1, function._executions.get());
+    assertEquals(1, sharedNodes.getSharedNodeCount());
+    // The first view's cycle is still held by its process, so the second view takes the node from it
+    final ViewClient secondClient = vp.createViewClient(ViewProcessorTestEnvironment.TEST_USER);
+    final TestViewResultListener secondListener = new TestViewResultListener();
+    secondClient.setResultListener(secondListener);
+    secondClient.attachToViewProcess(second.getUniqueId(), executionOptions);
+    final CycleCompletedCall secondCycle = secondListener.getCycleCompleted(TIMEOUT);
+    assertEquals(1, function._executions.get());
+    final Collection<ComputedValue> values = env.getCalculationResult(secondCycle.getFullResult()).getAllValues(PRIMITIVE_TARGET.toSpecification());
+    assertEquals(Collections.singleton(new ComputedValue(function.getResultSpecs().iterator().next(), 42d)), new HashSet<ComputedValue>(values));
+    secondClient.shutdown();
+    firstClient.shutdown();
+  }
+
   private class BlockingDependencyGraphExecutorFactory implements DependencyGraphExecutorFactory<ExecutionResult> {
 
     private final BlockingDependencyGraphExecutor _instance;
@@ -9,14 +9,27 @@ import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.Collections;
+import java.util.Set;
+
+import javax.time.Instant;
+
 import org.testng.annotations.Test;
 
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.function.CacheableFunctionInvoker;
+import com.opengamma.engine.function.FunctionExecutionContext;
+import com.opengamma.engine.function.FunctionInputs;
 import com.opengamma.engine.test.CalculationNodeUtils;
 import com.opengamma.engine.test.MockFunction;
 import com.opengamma.engine.test.TestCalculationNode;
 import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.cache.CacheSelectHint;
 import com.opengamma.engine.view.cache.ViewComputationCache;
+import com.opengamma.id.UniqueId;
 
 /**
  * Tests the {@link SimpleCalculationNode} class. Note the name so that Clover doesn't ignore it.
@@ -59,4 +72,69 @@ public class CalculationNodeTest {
     assertEquals("Nothing we care about", cache.getValue(mockFunction.getResultSpec()));
   }
 
+  private static final class CacheableMockFunction extends MockFunction implements CacheableFunctionInvoker {
+
+    private int _invocations;
+
+    public CacheableMockFunction(final ComputationTarget target) {
+      super(MockFunction.UNIQUE_ID, target);
+    }
+
+    @Override
+    public Set<ComputedValue> execute(FunctionExecutionContext executionContext, FunctionInputs inputs, ComputationTarget target, Set<ValueRequirement> desiredValues) {
+      _invocations++;
+      return super.execute(executionContext, inputs, target, desiredValues);
+    }
+
+    @Override
+    public Object getExecutionContextKey(final FunctionExecutionContext executionContext) {
+      return null;
+    }
+
+  }
+
+  private static CalculationJob getCalculationJob(final MockFunction function, final String cycleId) {
+    final CalculationJobSpecification jobSpec = new CalculationJobSpecification(UniqueId.of("Test", cycleId), CalculationNodeUtils.CALC_CONF_NAME, Instant.now(), 1L);
+    final CalculationJobItem jobItem = new CalculationJobItem(function.getUniqueId(), function.getDefaultParameters(), function.getTarget().toSpecification(), function.getRequirements(),
+        function.getResultSpecs());
+    return new CalculationJob(jobSpec, 0L, null, Collections.singletonList(jobItem), CacheSelectHint.allShared());
+  }
+
+  public void cacheableFunctionInvocation() throws Exception {
+    final ComputationTarget target = new ComputationTarget(ComputationTargetType.PRIMITIVE, "USD");
+    final CacheableMockFunction mockFunction = new CacheableMockFunction(target);
+    mockFunction.addResult(MockFunction.getOutputRequirement(target), "Nothing we care about");
+    mockFunction.addRequirement(new ValueRequirement("INPUT", target.toSpecification()));
+    final TestCalculationNode calcNode = CalculationNodeUtils.getTestCalcNode(mockFunction);
+    final FunctionResultCache resultCache = new FunctionResultCache();
+    calcNode.setFunctionResultCache(resultCache);
+    final ValueSpecification inputSpec = mockFunction.getRequirements().iterator().next();
+    // First cycle invokes the function
+    CalculationJob calcJob = getCalculationJob(mockFunction, "Cycle1");
+    ViewComputationCache cache = calcNode.getCache(calcJob.getSpecification());
+    cache.putSharedValue(new ComputedValue(inputSpec, "Input"));
+    CalculationJobResult jobResult = calcNode.executeJob(calcJob);
+    assertEquals(InvocationResult.SUCCESS, jobResult.getResultItems().get(0).getResult());
+    assertEquals(1, mockFunction._invocations);
+    // Second cycle with the same input uses the earlier result
+    calcJob = getCalculationJob(mockFunction, "Cycle2");
+    cache = calcNode.getCache(calcJob.getSpecification());
+    cache.putSharedValue(new ComputedValue(inputSpec, "Input"));
+    jobResult = calcNode.executeJob(calcJob);
+    assertEquals(InvocationResult.SUCCESS, jobResult.getResultItems().get(0).getResult());
+    assertEquals(1, mockFunction._invocations);
+    assertEquals("Nothing we care about", cache.getValue(mockFunction.getResultSpec()));
+    // Third cycle with a different input invokes the function
+    calcJob = getCalculationJob(mockFunction, "Cycle3");
+    cache = calcNode.getCache(calcJob.getSpecification());
+    cache.putSharedValue(new ComputedValue(inputSpec, "Different input"));
+    jobResult = calcNode.executeJob(calcJob);
+    assertEquals(InvocationResult.SUCCESS, jobResult.getResultItems().get(0).getResult());
+    assertEquals(2, mockFunction._invocations);
+    final FunctionResultCache.Statistics statistics = resultCache.getStatistics(MockFunction.UNIQUE_ID);
+    assertEquals(1, statistics.getHits());
+    assertEquals(2, statistics.getMisses());
+    assertEquals(2, resultCache.getSize());
+  }
+
 }
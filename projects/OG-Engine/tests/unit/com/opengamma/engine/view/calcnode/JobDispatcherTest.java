@@ -28,6 +28,8 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.opengamma.engine.view.cache.CacheSelectHint;
+import com.opengamma.engine.view.calcnode.stats.JobDispatchStatistics;
+import com.opengamma.engine.view.calcnode.stats.TotallingNodeStatisticsGatherer;
 import com.opengamma.id.UniqueId;
 import com.opengamma.util.async.Cancelable;
 import com.opengamma.util.test.Timeout;
@@ -155,6 +157,50 @@ public class JobDispatcherTest {
     assertNull(node2._callback);
   }
 
+  private CalculationJobResult dispatchAndWait(final CalculationJob job, final JobDispatcher jobDispatcher) {
+    final TestJobResultReceiver result = new TestJobResultReceiver();
+    jobDispatcher.dispatchJob(job, result);
+    final CalculationJobResult jobResult = result.waitForResult(TIMEOUT);
+    assertNotNull(jobResult);
+    assertEquals(job.getSpecification(), jobResult.getSpecification());
+    return jobResult;
+  }
+
+  private static CalculationJob createDependentJob(final CalculationJob predecessor) {
+    final CalculationJob job = createTestJob();
+    job.setPredecessorJobIds(new long[] {predecessor.getSpecification().getJobId() });
+    return job;
+  }
+
+  @Test
+  public void invokeWithAffinity() {
+    s_logger.info("invokeWithAffinity");
+    final JobDispatcher jobDispatcher = new JobDispatcher();
+    final TotallingNodeStatisticsGatherer statistics = new TotallingNodeStatisticsGatherer();
+    jobDispatcher.setStatisticsGatherer(statistics);
+    jobDispatcher.registerJobInvoker(new TestJobInvoker("1"));
+    jobDispatcher.registerJobInvoker(new TestJobInvoker("2"));
+    final CalculationJob first = createTestJob();
+    assertEquals("1", dispatchAndWait(first, jobDispatcher).getComputeNodeId());
+    // Round-robin would pick node 2, but the input producing job ran on node 1
+    final CalculationJob second = createDependentJob(first);
+    assertEquals("1", dispatchAndWait(second, jobDispatcher).getComputeNodeId());
+    // No affinity, so the least recently used node is picked
+    assertEquals("2", dispatchAndWait(createTestJob(), jobDispatcher).getComputeNodeId());
+    // With no affinity weight the scheduling is round-robin
+    jobDispatcher.setAffinityWeight(0);
+    final CalculationJob third = createDependentJob(second);
+    assertEquals("1", dispatchAndWait(third, jobDispatcher).getComputeNodeId());
+    final CalculationJob fourth = createDependentJob(third);
+    assertEquals("2", dispatchAndWait(fourth, jobDispatcher).getComputeNodeId());
+    final JobDispatchStatistics total = statistics.getTotalDispatchStatistics();
+    assertEquals(5, total.getDispatchedJobs());
+    assertEquals(3, total.getRequiredJobs());
+    assertEquals(2, total.getLocalRequiredJobs());
+    assertEquals(0, jobDispatcher.getOutstandingJobCount());
+    assertEquals(0, jobDispatcher.getPendingJobCount());
+  }
+
   @Test
   public void saturateInvokers() {
     s_logger.info("saturateInvokers");
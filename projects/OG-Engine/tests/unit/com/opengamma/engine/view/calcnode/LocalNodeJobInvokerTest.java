@@ -11,10 +11,33 @@ import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.function.FunctionExecutionContext;
+import com.opengamma.engine.function.FunctionInputs;
+import com.opengamma.engine.test.CalculationNodeUtils;
+import com.opengamma.engine.test.MockFunction;
 import com.opengamma.engine.test.TestCalculationNode;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.cache.CacheSelectHint;
+import com.opengamma.id.UniqueId;
 import com.opengamma.util.test.Timeout;
 
 /**
@@ -68,6 +91,84 @@ public class LocalNodeJobInvokerTest {
     assertEquals(job.getSpecification(), jobResult.getSpecification());
   }
 
+  /**
+   * Function whose first item holds up the node executing it until an item behind it has been executed, recording the node that
+   * executed each item by its execution context.
+   */
+  private static final class BlockingFunction extends MockFunction {
+
+    private final CountDownLatch _stolen = new CountDownLatch(1);
+    private final ConcurrentMap<ComputationTargetSpecification, FunctionExecutionContext> _executedBy = new ConcurrentHashMap<ComputationTargetSpecification, FunctionExecutionContext>();
+
+    public BlockingFunction(final ComputationTarget first) {
+      super("Blocking", first);
+    }
+
+    @Override
+    public Set<ComputedValue> execute(final FunctionExecutionContext executionContext, final FunctionInputs inputs, final ComputationTarget target, final Set<ValueRequirement> desiredValues) {
+      _executedBy.put(target.toSpecification(), executionContext);
+      if (target.toSpecification().equals(getTarget().toSpecification())) {
+        try {
+          _stolen.await(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          throw new OpenGammaRuntimeException("Interrupted", e);
+        }
+      } else {
+        // The node blocked on the first item can't be executing this one
+        _stolen.countDown();
+      }
+      return super.execute(executionContext, inputs, target, desiredValues);
+    }
+
+  }
+
+  public void testInvokeWithWorkStealing() {
+    final List<ComputationTarget> targets = new ArrayList<ComputationTarget>();
+    for (int i = 0; i < 20; i++) {
+      targets.add(new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", Integer.toString(i))));
+    }
+    final BlockingFunction function = new BlockingFunction(targets.get(0));
+    final List<CalculationJobItem> items = new ArrayList<CalculationJobItem>();
+    for (ComputationTarget target : targets) {
+      final ValueRequirement output = new ValueRequirement("Value", target.toSpecification());
+      function.addResult(output, "Result " + target.getUniqueId().getValue());
+      items.add(new CalculationJobItem(function.getUniqueId(), function.getDefaultParameters(), target.toSpecification(), Collections.<ValueSpecification>emptySet(), Collections
+          .singleton(function.toValueSpecification(output))));
+    }
+    final List<SimpleCalculationNode> nodes = new ArrayList<SimpleCalculationNode>();
+    final Set<FunctionExecutionContext> nodeContexts = new HashSet<FunctionExecutionContext>();
+    for (int i = 0; i < 3; i++) {
+      final TestCalculationNode node = CalculationNodeUtils.getTestCalcNode(function);
+      nodes.add(node);
+      nodeContexts.add(node.getFunctionExecutionContext());
+    }
+    final LocalNodeJobInvoker invoker = new LocalNodeJobInvoker(nodes);
+    invoker.setWorkStealing(true);
+    final TestJobInvocationReceiver receiver = new TestJobInvocationReceiver();
+    final CalculationJob job = new CalculationJob(JobDispatcherTest.createTestJobSpec(), 0L, null, items, CacheSelectHint.allPrivate());
+    assertTrue(invoker.invoke(job, receiver));
+    final CalculationJobResult jobResult = receiver.waitForCompletionResult(TIMEOUT);
+    assertNotNull(jobResult);
+    assertEquals(job.getSpecification(), jobResult.getSpecification());
+    assertEquals(items.size(), jobResult.getResultItems().size());
+    for (CalculationJobResultItem item : jobResult.getResultItems()) {
+      assertEquals(InvocationResult.SUCCESS, item.getResult());
+    }
+    // The first item only completed early because another node took items from the same job
+    assertEquals(0, function._stolen.getCount());
+    assertEquals(targets.size(), function._executedBy.size());
+    final FunctionExecutionContext firstNode = function._executedBy.get(targets.get(0).toSpecification());
+    assertTrue(nodeContexts.contains(firstNode));
+    int stolen = 0;
+    for (FunctionExecutionContext node : function._executedBy.values()) {
+      assertTrue(nodeContexts.contains(node));
+      if (node != firstNode) {
+        stolen++;
+      }
+    }
+    assertTrue(stolen > 0);
+  }
+
   class Register implements JobInvokerRegister {
     @Override
     public void registerJobInvoker(final JobInvoker invoker) {
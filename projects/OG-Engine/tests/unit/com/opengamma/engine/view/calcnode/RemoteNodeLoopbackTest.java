@@ -0,0 +1,313 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeMsgEnvelope;
+import org.fudgemsg.mapping.FudgeSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.function.CachingFunctionRepositoryCompiler;
+import com.opengamma.engine.function.CompiledFunctionService;
+import com.opengamma.engine.function.EmptyFunctionParameters;
+import com.opengamma.engine.function.FunctionCompilationContext;
+import com.opengamma.engine.function.InMemoryFunctionRepository;
+import com.opengamma.engine.test.TestCalculationNode;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValuePropertyNames;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.cache.CacheSelectHint;
+import com.opengamma.engine.view.cache.CachingFudgeMessageStoreFactory;
+import com.opengamma.engine.view.cache.DefaultFudgeMessageStoreFactory;
+import com.opengamma.engine.view.cache.DefaultViewComputationCacheSource;
+import com.opengamma.engine.view.cache.FudgeMessageStore;
+import com.opengamma.engine.view.cache.FudgeMessageStoreFactory;
+import com.opengamma.engine.view.cache.IdentifierMap;
+import com.opengamma.engine.view.cache.InMemoryBinaryDataStoreFactory;
+import com.opengamma.engine.view.cache.InMemoryIdentifierMap;
+import com.opengamma.engine.view.calcnode.msg.Execute;
+import com.opengamma.engine.view.calcnode.msg.ExecuteBatch;
+import com.opengamma.engine.view.calcnode.stats.FunctionCosts;
+import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatisticsSender;
+import com.opengamma.id.UniqueId;
+import com.opengamma.transport.FudgeConnection;
+import com.opengamma.transport.FudgeConnectionStateListener;
+import com.opengamma.transport.FudgeMessageReceiver;
+import com.opengamma.transport.FudgeMessageSender;
+import com.opengamma.transport.socket.ServerSocketFudgeConnectionReceiver;
+import com.opengamma.transport.socket.SocketFudgeConnection;
+import com.opengamma.util.ehcache.EHCacheUtils;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+import com.opengamma.util.monitor.OperationTimer;
+import com.opengamma.util.test.Timeout;
+
+/**
+ * Runs jobs through a {@link RemoteNodeServer} and {@link RemoteNodeClient} connected by a loopback socket, checking the
+ * messages used by individually sent jobs and the pipelined batch protocol, and the input values sent ahead of a batch.
+ */
+@Test
+public class RemoteNodeLoopbackTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(RemoteNodeLoopbackTest.class);
+  private static final FudgeContext s_fudgeContext = OpenGammaFudgeContext.getInstance();
+  private static final long TIMEOUT = Timeout.standardTimeoutMillis();
+  private static final int NODES = 4;
+  private static final int TAIL = 3;
+
+  private static final class LatencyReceiver implements JobResultReceiver {
+
+    private final long _start = System.nanoTime();
+    private final CountDownLatch _completed;
+    private int _remaining;
+    private long _latency;
+
+    public LatencyReceiver(final int results, final CountDownLatch completed) {
+      _remaining = results;
+      _completed = completed;
+    }
+
+    @Override
+    public synchronized void resultReceived(final CalculationJobResult result) {
+      if (--_remaining == 0) {
+        _latency = System.nanoTime() - _start;
+        _completed.countDown();
+      }
+    }
+
+    public synchronized long getLatency() {
+      return _latency;
+    }
+
+  }
+
+  /**
+   * Counts the messages received by the client, by type.
+   */
+  private static final class CountingConnection implements FudgeConnection {
+
+    private final FudgeConnection _underlying;
+    private final Map<String, Integer> _received = new HashMap<String, Integer>();
+
+    public CountingConnection(final FudgeConnection underlying) {
+      _underlying = underlying;
+    }
+
+    @Override
+    public void setFudgeMessageReceiver(final FudgeMessageReceiver receiver) {
+      _underlying.setFudgeMessageReceiver(new FudgeMessageReceiver() {
+        @Override
+        public void messageReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope msgEnvelope) {
+          count(msgEnvelope.getMessage());
+          receiver.messageReceived(fudgeContext, msgEnvelope);
+        }
+      });
+    }
+
+    @Override
+    public FudgeMessageSender getFudgeMessageSender() {
+      return _underlying.getFudgeMessageSender();
+    }
+
+    @Override
+    public void setConnectionStateListener(final FudgeConnectionStateListener listener) {
+      _underlying.setConnectionStateListener(listener);
+    }
+
+    private synchronized void count(final FudgeMsg message) {
+      // The first class header field is the most specific type
+      final String type = message.getString(FudgeSerializer.TYPES_HEADER_ORDINAL);
+      final Integer count = _received.get(type);
+      _received.put(type, (count != null) ? count + 1 : 1);
+    }
+
+    public synchronized int getReceived(final Class<?> type) {
+      final Integer count = _received.get(type.getName());
+      return (count != null) ? count : 0;
+    }
+
+  }
+
+  private ExecutorService _executor;
+  private JobDispatcher _dispatcher;
+  private RemoteNodeServer _server;
+  private ServerSocketFudgeConnectionReceiver _serverSocket;
+  private SocketFudgeConnection _socket;
+  private CountingConnection _connection;
+  private RemoteNodeClient _client;
+
+  @BeforeMethod
+  public void createExecutor() {
+    _executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterMethod
+  public void shutdownExecutor() {
+    _executor.shutdownNow();
+  }
+
+  private void connect(final IdentifierMap serverIdentifiers, final IdentifierMap clientIdentifiers, final Integer pipeline) {
+    _dispatcher = new JobDispatcher();
+    final FunctionCompilationContext context = new FunctionCompilationContext();
+    context.setFunctionInitId(0);
+    _server = new RemoteNodeServer(_dispatcher, serverIdentifiers, new FunctionCosts(), context);
+    _serverSocket = new ServerSocketFudgeConnectionReceiver(s_fudgeContext, _server, _executor);
+    _serverSocket.start();
+    _socket = new SocketFudgeConnection(s_fudgeContext);
+    try {
+      _socket.setInetAddress(InetAddress.getLocalHost());
+    } catch (UnknownHostException e) {
+      throw new OpenGammaRuntimeException("", e);
+    }
+    _socket.setPortNumber(_serverSocket.getPortNumber());
+    _connection = new CountingConnection(_socket);
+    _client = new RemoteNodeClient(_connection, new CompiledFunctionService(new InMemoryFunctionRepository(), new CachingFunctionRepositoryCompiler(),
+        new FunctionCompilationContext()), clientIdentifiers, new FunctionInvocationStatisticsSender());
+    for (int i = 0; i < NODES; i++) {
+      _client.addNode(new TestCalculationNode());
+    }
+    _client.setPipeline(pipeline);
+  }
+
+  private void disconnect() {
+    _client.stop();
+    _socket.stop();
+    _serverSocket.stop();
+  }
+
+  private static CalculationJob createJob() {
+    final CalculationJob root = new CalculationJob(JobDispatcherTest.createTestJobSpec(), 0L, null, JobDispatcherTest.createTestJobItems(), CacheSelectHint.allPrivate());
+    for (int i = 0; i < TAIL; i++) {
+      root.addTail(new CalculationJob(JobDispatcherTest.createTestJobSpec(), 0L, new long[] {root.getSpecification().getJobId() }, JobDispatcherTest.createTestJobItems(),
+          CacheSelectHint.allPrivate()));
+    }
+    return root;
+  }
+
+  private static long[] dispatch(final JobDispatcher dispatcher, final int count) throws InterruptedException {
+    final CountDownLatch completed = new CountDownLatch(count);
+    final LatencyReceiver[] receivers = new LatencyReceiver[count];
+    for (int i = 0; i < count; i++) {
+      receivers[i] = new LatencyReceiver(TAIL + 1, completed);
+      dispatcher.dispatchJob(createJob(), receivers[i]);
+    }
+    assertTrue(completed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    final long[] latency = new long[count];
+    for (int i = 0; i < count; i++) {
+      latency[i] = receivers[i].getLatency();
+    }
+    return latency;
+  }
+
+  private long run(final Integer pipeline, final int count) throws InterruptedException {
+    connect(new InMemoryIdentifierMap(), new InMemoryIdentifierMap(), pipeline);
+    try {
+      _client.start();
+      // Warm up the connection and the code paths before timing
+      dispatch(_dispatcher, count / 10);
+      final OperationTimer timer = new OperationTimer(s_logger, "{} jobs with pipeline {}", count * (TAIL + 1), pipeline);
+      final long[] latency = dispatch(_dispatcher, count);
+      final long time = timer.finished();
+      Arrays.sort(latency);
+      s_logger.info("Pipeline {}: {} jobs/s, median latency {}ms, 99th percentile {}ms", new Object[] {pipeline, (double) (count * (TAIL + 1)) * 1000d / (double) Math.max(time, 1),
+          (double) latency[count / 2] / 1000000d, (double) latency[(count * 99) / 100] / 1000000d });
+      return time;
+    } finally {
+      disconnect();
+    }
+  }
+
+  public void individualJobs() throws InterruptedException {
+    final int count = 100;
+    run(null, count);
+    // Each job and each of its tail is sent separately
+    assertEquals((count + count / 10) * (TAIL + 1), _connection.getReceived(Execute.class));
+    assertEquals(0, _connection.getReceived(ExecuteBatch.class));
+  }
+
+  public void batchedJobs() throws InterruptedException {
+    final int count = 100;
+    run(NODES, count);
+    // Each job is sent with its tail in a single message
+    assertEquals(0, _connection.getReceived(Execute.class));
+    assertEquals(count + count / 10, _connection.getReceived(ExecuteBatch.class));
+  }
+
+  public void prefetchedInputs() throws InterruptedException {
+    // The client shares the server's identifiers as it would through a remote identifier map
+    final IdentifierMap identifiers = new InMemoryIdentifierMap();
+    final FudgeMessageStoreFactory serverStores = new DefaultFudgeMessageStoreFactory(new InMemoryBinaryDataStoreFactory(), s_fudgeContext);
+    final DefaultViewComputationCacheSource serverCache = new DefaultViewComputationCacheSource(identifiers, s_fudgeContext, serverStores, serverStores);
+    // The client's shared store is a near-cache over an (empty) remote store, as RemoteViewComputationCacheSource creates
+    final FudgeMessageStoreFactory clientStores = new DefaultFudgeMessageStoreFactory(new InMemoryBinaryDataStoreFactory(), s_fudgeContext);
+    final DefaultViewComputationCacheSource clientCache = new DefaultViewComputationCacheSource(identifiers, s_fudgeContext, clientStores,
+        new CachingFudgeMessageStoreFactory(clientStores, EHCacheUtils.createCacheManager()));
+    connect(identifiers, identifiers, NODES);
+    _server.setPrefetchCacheSource(serverCache);
+    _client.setPrefetchCacheSource(clientCache);
+    try {
+      _client.start();
+      final CalculationJobSpecification spec = JobDispatcherTest.createTestJobSpec();
+      final ComputationTargetSpecification target = new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", "Target"));
+      final ValueSpecification input = new ValueSpecification("Input", target, ValueProperties.with(ValuePropertyNames.FUNCTION, "Input").get());
+      final ValueSpecification intermediate = new ValueSpecification("Intermediate", target, ValueProperties.with(ValuePropertyNames.FUNCTION, "Intermediate").get());
+      final ValueSpecification output = new ValueSpecification("Output", target, ValueProperties.with(ValuePropertyNames.FUNCTION, "Output").get());
+      serverCache.getCache(spec.getViewCycleId(), spec.getCalcConfigName()).putSharedValue(new ComputedValue(input, 42d));
+      serverCache.getCache(spec.getViewCycleId(), spec.getCalcConfigName()).putSharedValue(new ComputedValue(intermediate, 0d));
+      final List<CalculationJobItem> rootItems = Collections.singletonList(new CalculationJobItem("Intermediate", new EmptyFunctionParameters(), target,
+          Collections.singleton(input), Collections.singleton(intermediate)));
+      final CalculationJob root = new CalculationJob(spec, 0L, null, rootItems, CacheSelectHint.allShared());
+      final List<CalculationJobItem> tailItems = Collections.singletonList(new CalculationJobItem("Output", new EmptyFunctionParameters(), target,
+          Collections.singleton(intermediate), Collections.singleton(output)));
+      root.addTail(new CalculationJob(JobDispatcherTest.createTestJobSpec(), 0L, new long[] {spec.getJobId() }, tailItems, CacheSelectHint.allShared()));
+      final CountDownLatch completed = new CountDownLatch(1);
+      _dispatcher.dispatchJob(root, new LatencyReceiver(2, completed));
+      assertTrue(completed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+      assertEquals(1, _connection.getReceived(ExecuteBatch.class));
+      // Only the value not produced within the batch is sent ahead; it must have been primed into the client's near-cache
+      // as the store beneath it is empty
+      final FudgeMessageStore clientStore = clientCache.getCache(spec.getViewCycleId(), spec.getCalcConfigName()).getSharedDataStore();
+      assertNotNull(clientStore.get(identifiers.getIdentifier(input)));
+      assertNull(clientStore.get(identifiers.getIdentifier(intermediate)));
+    } finally {
+      disconnect();
+    }
+  }
+
+  @Test(enabled = false)
+  public void comparePerformance() throws InterruptedException {
+    final int count = 2000;
+    final long individual = run(null, count);
+    final long batched = run(NODES, count);
+    s_logger.info("Execute/Result {}ms, ExecuteBatch/Results {}ms", individual, batched);
+  }
+
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.function.EmptyFunctionParameters;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.cache.CacheSelectHint;
+import com.opengamma.id.UniqueId;
+
+/**
+ * Tests the {@link StealableJobItems} class.
+ */
+@Test
+public class StealableJobItemsTest {
+
+  private static ValueSpecification value(final String name) {
+    return new ValueSpecification(new ValueRequirement(name, new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", name))), "Mock");
+  }
+
+  private static CalculationJobItem item(final String output, final String... inputs) {
+    final List<ValueSpecification> inputSpecs = new ArrayList<ValueSpecification>();
+    for (String input : inputs) {
+      inputSpecs.add(value(input));
+    }
+    return new CalculationJobItem("F" + output, new EmptyFunctionParameters(), new ComputationTargetSpecification(UniqueId.of("Test", output)), inputSpecs,
+        Collections.singleton(value(output)));
+  }
+
+  private static StealableJobItems createItems(final CalculationJobItem... items) {
+    final List<CalculationJobItem> list = new ArrayList<CalculationJobItem>();
+    Collections.addAll(list, items);
+    final StealableJobItems jobItems = new StealableJobItems(new CalculationJob(JobDispatcherTest.createTestJobSpec(), 0L, null, list, CacheSelectHint.allPrivate()));
+    jobItems.setExecutionState(null, null);
+    return jobItems;
+  }
+
+  public void testNotStealableUntilReady() {
+    final List<CalculationJobItem> list = new ArrayList<CalculationJobItem>();
+    Collections.addAll(list, item("A"), item("B"), item("C"));
+    final StealableJobItems jobItems = new StealableJobItems(new CalculationJob(JobDispatcherTest.createTestJobSpec(), 0L, null, list, CacheSelectHint.allPrivate()));
+    assertEquals(-1, jobItems.steal());
+    jobItems.setExecutionState(null, null);
+    assertEquals(2, jobItems.steal());
+  }
+
+  public void testOwnerOnly() {
+    final StealableJobItems jobItems = createItems(item("A"), item("B", "A"), item("C", "B"));
+    for (int i = 0; i < 3; i++) {
+      assertEquals(i, jobItems.take());
+      jobItems.complete(i, CalculationJobResultItem.success());
+    }
+    assertEquals(-1, jobItems.take());
+    final List<CalculationJobResultItem> results = jobItems.getResults();
+    assertEquals(3, results.size());
+    assertTrue(jobItems.isExhausted());
+  }
+
+  public void testStealFromBack() {
+    final StealableJobItems jobItems = createItems(item("A"), item("B"), item("C"), item("D"));
+    assertEquals(3, jobItems.steal());
+    assertEquals(0, jobItems.take());
+    assertEquals(2, jobItems.steal());
+    // Only one pending item left - that is for the owner
+    assertEquals(-1, jobItems.steal());
+    jobItems.complete(0, CalculationJobResultItem.success());
+    assertEquals(1, jobItems.take());
+    jobItems.complete(1, CalculationJobResultItem.success());
+    jobItems.completeStolen(3, CalculationJobResultItem.success());
+    jobItems.completeStolen(2, CalculationJobResultItem.success());
+    assertEquals(-1, jobItems.take());
+    assertEquals(4, jobItems.getResults().size());
+  }
+
+  public void testStealRespectsDependencies() {
+    final StealableJobItems jobItems = createItems(item("A"), item("B"), item("C", "A"), item("D", "B"));
+    // C and D depend on A and B which haven't run yet
+    assertEquals(1, jobItems.steal());
+    assertEquals(0, jobItems.take());
+    assertEquals(-1, jobItems.steal());
+    jobItems.complete(0, CalculationJobResultItem.success());
+    // C is now runnable
+    assertEquals(2, jobItems.steal());
+    // D is waiting for B, and is the last item anyway
+    assertEquals(-1, jobItems.steal());
+    jobItems.completeStolen(1, CalculationJobResultItem.success());
+    assertEquals(3, jobItems.take());
+    jobItems.complete(3, CalculationJobResultItem.success());
+    jobItems.completeStolen(2, CalculationJobResultItem.success());
+    assertEquals(-1, jobItems.take());
+    assertEquals(4, jobItems.getResults().size());
+  }
+
+  public void testOwnerWaitsForStolenInput() throws InterruptedException {
+    final StealableJobItems jobItems = createItems(item("A"), item("B"), item("C", "B"));
+    assertEquals(1, jobItems.steal());
+    assertEquals(0, jobItems.take());
+    jobItems.complete(0, CalculationJobResultItem.success());
+    final Thread thief = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          return;
+        }
+        jobItems.completeStolen(1, CalculationJobResultItem.success());
+      }
+    };
+    thief.start();
+    // Blocks until the stolen item completes
+    assertEquals(2, jobItems.take());
+    jobItems.complete(2, CalculationJobResultItem.success());
+    thief.join();
+    assertEquals(3, jobItems.getResults().size());
+  }
+
+  public void testClose() {
+    final StealableJobItems jobItems = createItems(item("A"), item("B"), item("C"));
+    assertFalse(jobItems.isExhausted());
+    assertEquals(0, jobItems.take());
+    jobItems.close();
+    assertTrue(jobItems.isExhausted());
+    assertEquals(-1, jobItems.steal());
+    assertEquals(-1, jobItems.take());
+    assertNull(jobItems.getResults());
+  }
+
+}
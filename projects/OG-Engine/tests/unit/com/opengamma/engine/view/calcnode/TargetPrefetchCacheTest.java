@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.time.Instant;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.core.position.Position;
+import com.opengamma.core.security.Security;
+import com.opengamma.core.security.SecuritySource;
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetResolver;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.function.EmptyFunctionParameters;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.cache.CacheSelectHint;
+import com.opengamma.id.UniqueId;
+
+/**
+ * Tests the {@link TargetPrefetchCache} class.
+ */
+@Test
+public class TargetPrefetchCacheTest {
+
+  private static final UniqueId CYCLE_1 = UniqueId.of("Cycle", "1");
+  private static final UniqueId CYCLE_2 = UniqueId.of("Cycle", "2");
+
+  private static CalculationJob job(final UniqueId viewCycleId, final ComputationTargetSpecification... targets) {
+    final List<CalculationJobItem> items = new ArrayList<CalculationJobItem>(targets.length);
+    for (ComputationTargetSpecification target : targets) {
+      items.add(new CalculationJobItem("1", new EmptyFunctionParameters(), target, Collections.<ValueSpecification>emptySet(), Collections.<ValueSpecification>emptySet()));
+    }
+    return new CalculationJob(new CalculationJobSpecification(viewCycleId, "Default", Instant.now(), 1L), 0L, null, items, CacheSelectHint.allShared());
+  }
+
+  private static ComputationTargetSpecification security(final UniqueId uid) {
+    return new ComputationTargetSpecification(ComputationTargetType.SECURITY, uid);
+  }
+
+  public void testSecuritiesFetchedInBulk() {
+    final UniqueId uidA = UniqueId.of("Sec", "A", "1");
+    final UniqueId uidB = UniqueId.of("Sec", "B", "1");
+    final Map<UniqueId, Security> securities = new HashMap<UniqueId, Security>();
+    securities.put(uidA, mock(Security.class));
+    securities.put(uidB, mock(Security.class));
+    final SecuritySource securitySource = mock(SecuritySource.class);
+    when(securitySource.getSecurities(anyCollectionOf(UniqueId.class))).thenReturn(securities);
+    final ComputationTargetResolver resolver = mock(ComputationTargetResolver.class);
+    when(resolver.getSecuritySource()).thenReturn(securitySource);
+    final TargetPrefetchCache cache = new TargetPrefetchCache();
+    cache.prefetch(job(CYCLE_1, security(uidA), security(uidB), security(uidA)), resolver, null);
+    verify(securitySource, times(1)).getSecurities(anyCollectionOf(UniqueId.class));
+    assertEquals(2, cache.getSize());
+    assertSame(securities.get(uidA), cache.get(CYCLE_1, security(uidA)).getSecurity());
+    assertSame(securities.get(uidB), cache.get(CYCLE_1, security(uidB)).getSecurity());
+    assertNull(cache.get(CYCLE_1, security(UniqueId.of("Sec", "C", "1"))));
+    assertEquals(2, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    // Everything is already held
+    cache.prefetch(job(CYCLE_1, security(uidA), security(uidB)), resolver, null);
+    verify(securitySource, times(1)).getSecurities(anyCollectionOf(UniqueId.class));
+    verify(resolver, never()).resolve(security(uidA));
+  }
+
+  public void testUnversionedOnlyValidForCycle() {
+    final UniqueId versioned = UniqueId.of("Sec", "A", "1");
+    final UniqueId latest = UniqueId.of("Sec", "B");
+    final Map<UniqueId, Security> securities = new HashMap<UniqueId, Security>();
+    securities.put(versioned, mock(Security.class));
+    securities.put(latest, mock(Security.class));
+    final SecuritySource securitySource = mock(SecuritySource.class);
+    when(securitySource.getSecurities(anyCollectionOf(UniqueId.class))).thenReturn(securities);
+    final ComputationTargetResolver resolver = mock(ComputationTargetResolver.class);
+    when(resolver.getSecuritySource()).thenReturn(securitySource);
+    final TargetPrefetchCache cache = new TargetPrefetchCache();
+    cache.prefetch(job(CYCLE_1, security(versioned), security(latest)), resolver, null);
+    assertNotNull(cache.get(CYCLE_1, security(latest)));
+    assertNotNull(cache.get(CYCLE_2, security(versioned)));
+    assertNull(cache.get(CYCLE_2, security(latest)));
+  }
+
+  public void testPositionsResolvedConcurrently() {
+    final ComputationTargetSpecification position = new ComputationTargetSpecification(ComputationTargetType.POSITION, UniqueId.of("Pos", "A", "1"));
+    final ComputationTarget target = new ComputationTarget(ComputationTargetType.POSITION, mock(Position.class));
+    final ComputationTargetResolver resolver = mock(ComputationTargetResolver.class);
+    when(resolver.resolve(position)).thenReturn(target);
+    final TargetPrefetchCache cache = new TargetPrefetchCache();
+    // Without an executor only securities are fetched
+    cache.prefetch(job(CYCLE_1, position), resolver, null);
+    assertNull(cache.get(CYCLE_1, position));
+    final ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      cache.prefetch(job(CYCLE_1, position), resolver, executor);
+    } finally {
+      executor.shutdown();
+    }
+    assertSame(target, cache.get(CYCLE_1, position));
+  }
+
+  public void testBounded() {
+    final ComputationTargetResolver resolver = mock(ComputationTargetResolver.class);
+    final SecuritySource securitySource = mock(SecuritySource.class);
+    when(resolver.getSecuritySource()).thenReturn(securitySource);
+    final Map<UniqueId, Security> securities = new HashMap<UniqueId, Security>();
+    final ComputationTargetSpecification[] targets = new ComputationTargetSpecification[10];
+    for (int i = 0; i < targets.length; i++) {
+      final UniqueId uid = UniqueId.of("Sec", Integer.toString(i), "1");
+      securities.put(uid, mock(Security.class));
+      targets[i] = security(uid);
+    }
+    when(securitySource.getSecurities(anyCollectionOf(UniqueId.class))).thenReturn(securities);
+    final TargetPrefetchCache cache = new TargetPrefetchCache(4);
+    cache.prefetch(job(CYCLE_1, targets), resolver, null);
+    assertTrue(cache.getSize() <= 4);
+    cache.clear();
+    assertEquals(0, cache.getSize());
+  }
+
+}
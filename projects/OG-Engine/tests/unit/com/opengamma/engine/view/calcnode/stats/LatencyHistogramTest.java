@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode.stats;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.fudgemsg.FudgeContext;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link LatencyHistogram} class.
+ */
+@Test
+public class LatencyHistogramTest {
+
+  public void testBuckets() {
+    for (long nanos = 0; nanos < 1000000L; nanos = nanos * 3 / 2 + 1) {
+      final int bucket = LatencyHistogram.getBucket(nanos);
+      assertTrue(LatencyHistogram.getBucketLowerBound(bucket) <= nanos);
+      assertTrue(LatencyHistogram.getBucketLowerBound(bucket + 1) > nanos);
+    }
+    assertEquals(LatencyHistogram.getBucket(Long.MAX_VALUE), LatencyHistogram.getBucket(Long.MAX_VALUE / 2));
+  }
+
+  public void testEmpty() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertTrue(Double.isNaN(histogram.getMax()));
+    assertTrue(Double.isNaN(histogram.getPercentile(0.5)));
+  }
+
+  public void testPercentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(1000d, 98);
+    histogram.record(100000d, 1);
+    histogram.record(5000000d, 1);
+    assertEquals(100, histogram.getCount());
+    assertEquals(5000000d, histogram.getMax());
+    assertEquals(1000d, histogram.getPercentile(0.5), 125d);
+    assertEquals(1000d, histogram.getPercentile(0.98), 125d);
+    assertEquals(100000d, histogram.getPercentile(0.99), 12500d);
+    assertEquals(5000000d, histogram.getPercentile(1d), 625000d);
+  }
+
+  public void testMerge() {
+    final LatencyHistogram a = new LatencyHistogram();
+    a.record(1000d, 50);
+    final LatencyHistogram b = new LatencyHistogram();
+    b.record(200000d, 50);
+    a.merge(b);
+    assertEquals(100, a.getCount());
+    assertEquals(200000d, a.getMax());
+    assertEquals(1000d, a.getPercentile(0.5), 125d);
+    assertEquals(200000d, a.getPercentile(0.51), 25000d);
+    assertEquals(50, b.getCount());
+  }
+
+  public void testDecay() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(1000d, 10);
+    histogram.record(8000d, 3);
+    histogram.decay(0.5);
+    assertEquals(6, histogram.getCount());
+    assertEquals(8000d, histogram.getMax());
+    histogram.decay(0d);
+    assertEquals(0, histogram.getCount());
+    assertTrue(Double.isNaN(histogram.getMax()));
+  }
+
+  public void testFudgeEncoding() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(12d, 3);
+    histogram.record(45000d, 7);
+    histogram.record(3000000d, 1);
+    final LatencyHistogram decoded = LatencyHistogram.fromFudgeMsg(histogram.toFudgeMsg(FudgeContext.GLOBAL_DEFAULT));
+    assertEquals(histogram.getCount(), decoded.getCount());
+    assertEquals(histogram.getMax(), decoded.getMax());
+    assertEquals(histogram.getPercentile(0.25), decoded.getPercentile(0.25));
+    assertEquals(histogram.getPercentile(0.9), decoded.getPercentile(0.9));
+  }
+
+}
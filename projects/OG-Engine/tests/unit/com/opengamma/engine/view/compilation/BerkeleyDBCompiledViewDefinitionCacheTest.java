@@ -0,0 +1,348 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.time.Instant;
+
+import org.apache.commons.io.FileUtils;
+import org.fudgemsg.FudgeContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.impl.MockPositionSource;
+import com.opengamma.core.position.impl.SimplePortfolio;
+import com.opengamma.core.position.impl.SimplePortfolioNode;
+import com.opengamma.core.position.impl.SimplePosition;
+import com.opengamma.core.security.impl.SimpleSecurity;
+import com.opengamma.core.security.impl.SimpleSecurityLink;
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.DefaultCachingComputationTargetResolver;
+import com.opengamma.engine.DefaultComputationTargetResolver;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyGraphBuilderFactory;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.function.AbstractFunction;
+import com.opengamma.engine.function.CachingFunctionRepositoryCompiler;
+import com.opengamma.engine.function.CompiledFunctionService;
+import com.opengamma.engine.function.FunctionCompilationContext;
+import com.opengamma.engine.function.FunctionDefinition;
+import com.opengamma.engine.function.FunctionExecutionContext;
+import com.opengamma.engine.function.FunctionInputs;
+import com.opengamma.engine.function.InMemoryFunctionRepository;
+import com.opengamma.engine.function.resolver.DefaultFunctionResolver;
+import com.opengamma.engine.marketdata.InMemoryLKVMarketDataProvider;
+import com.opengamma.engine.test.MockSecuritySource;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ResultOutputMode;
+import com.opengamma.engine.view.ViewCalculationConfiguration;
+import com.opengamma.engine.view.ViewDefinition;
+import com.opengamma.id.ExternalId;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.VersionCorrection;
+import com.opengamma.util.ehcache.EHCacheUtils;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+import com.opengamma.util.monitor.OperationTimer;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+
+/**
+ * Tests the {@link BerkeleyDBCompiledViewDefinitionCache} and compares the time to start a view from a cached compilation
+ * against compiling it.
+ */
+@Test
+public class BerkeleyDBCompiledViewDefinitionCacheTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(BerkeleyDBCompiledViewDefinitionCacheTest.class);
+  private static final String SECURITY_TYPE = "My Sec";
+  private static final String SECURITY_VALUE = "SecurityValue";
+  private static final String POSITION_VALUE = "PositionValue";
+  private static Set<File> s_dbDirsToDelete = new HashSet<File>();
+
+  private final FudgeContext _fudgeContext = OpenGammaFudgeContext.getInstance();
+
+  protected File createDbDir(final String methodName) {
+    final File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+    final File dbDir = new File(tmpDir, "BerkeleyDBCompiledViewDefinition-" + System.currentTimeMillis() + "-" + methodName);
+    dbDir.mkdirs();
+    s_dbDirsToDelete.add(dbDir);
+    return dbDir;
+  }
+
+  protected Environment createDbEnvironment(final File dbDir) {
+    final EnvironmentConfig envConfig = new EnvironmentConfig();
+    envConfig.setAllowCreate(true);
+    envConfig.setTransactional(true);
+    return new Environment(dbDir, envConfig);
+  }
+
+  @AfterClass
+  public static void deleteDbDirs() {
+    for (File f : s_dbDirsToDelete) {
+      try {
+        s_logger.info("Deleting temp directory {}", f);
+        FileUtils.deleteDirectory(f);
+      } catch (IOException ioe) {
+        s_logger.warn("Unable to recursively delete directory {}", f);
+        // Just swallow it.
+      }
+    }
+    s_dbDirsToDelete.clear();
+  }
+
+  /**
+   * Produces a value on each security.
+   */
+  private static class SecurityFunction extends AbstractFunction.NonCompiledInvoker {
+
+    @Override
+    public boolean canApplyTo(final FunctionCompilationContext context, final ComputationTarget target) {
+      return true;
+    }
+
+    @Override
+    public Set<ValueRequirement> getRequirements(final FunctionCompilationContext context, final ComputationTarget target, final ValueRequirement desiredValue) {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<ValueSpecification> getResults(final FunctionCompilationContext context, final ComputationTarget target) {
+      return Collections.singleton(new ValueSpecification(new ValueRequirement(SECURITY_VALUE, target.toSpecification()), getUniqueId()));
+    }
+
+    @Override
+    public ComputationTargetType getTargetType() {
+      return ComputationTargetType.SECURITY;
+    }
+
+    @Override
+    public Set<ComputedValue> execute(final FunctionExecutionContext executionContext, final FunctionInputs inputs, final ComputationTarget target,
+        final Set<ValueRequirement> desiredValues) {
+      return Collections.emptySet();
+    }
+
+  }
+
+  /**
+   * Produces a value on each position from the value on its security.
+   */
+  private static class PositionFunction extends AbstractFunction.NonCompiledInvoker {
+
+    @Override
+    public boolean canApplyTo(final FunctionCompilationContext context, final ComputationTarget target) {
+      return true;
+    }
+
+    @Override
+    public Set<ValueRequirement> getRequirements(final FunctionCompilationContext context, final ComputationTarget target, final ValueRequirement desiredValue) {
+      return Collections.singleton(new ValueRequirement(SECURITY_VALUE, new ComputationTargetSpecification(target.getPosition().getSecurity())));
+    }
+
+    @Override
+    public Set<ValueSpecification> getResults(final FunctionCompilationContext context, final ComputationTarget target) {
+      return Collections.singleton(new ValueSpecification(new ValueRequirement(POSITION_VALUE, target.toSpecification()), getUniqueId()));
+    }
+
+    @Override
+    public ComputationTargetType getTargetType() {
+      return ComputationTargetType.POSITION;
+    }
+
+    @Override
+    public Set<ComputedValue> execute(final FunctionExecutionContext executionContext, final FunctionInputs inputs, final ComputationTarget target,
+        final Set<ValueRequirement> desiredValues) {
+      return Collections.emptySet();
+    }
+
+  }
+
+  private static final class Fixture {
+
+    private final CompiledFunctionService _functions;
+    private final ViewCompilationServices _services;
+    private final ViewDefinition _viewDefinition;
+    private final Portfolio _portfolio;
+
+    private Fixture(final int positions) {
+      final SimplePortfolioNode root = new SimplePortfolioNode("root");
+      final MockSecuritySource securitySource = new MockSecuritySource();
+      for (int i = 0; i < positions; i++) {
+        final ExternalId securityId = ExternalId.of("SEC", Integer.toString(i));
+        final SimpleSecurity security = new SimpleSecurity(SECURITY_TYPE);
+        security.addExternalId(securityId);
+        securitySource.addSecurity(security);
+        // Link the position straight to the security so that it can be compiled without resolution
+        root.addPosition(new SimplePosition(UniqueId.of("POS", Integer.toString(i)), new BigDecimal(i + 1), security));
+      }
+      final SimplePortfolio portfolio = new SimplePortfolio(UniqueId.of("FOO", "BAR"), "portfolio");
+      portfolio.setRootNode(root);
+      final MockPositionSource positionSource = new MockPositionSource();
+      positionSource.addPortfolio(portfolio);
+      final InMemoryFunctionRepository functionRepo = new InMemoryFunctionRepository();
+      final SecurityFunction securityFunction = new SecurityFunction();
+      securityFunction.setUniqueId("security");
+      functionRepo.addFunction(securityFunction);
+      final PositionFunction positionFunction = new PositionFunction();
+      positionFunction.setUniqueId("position");
+      functionRepo.addFunction(positionFunction);
+      final FunctionCompilationContext functionCompilationContext = new FunctionCompilationContext();
+      functionCompilationContext.setFunctionInitId(123);
+      functionCompilationContext.setSecuritySource(securitySource);
+      _functions = new CompiledFunctionService(functionRepo, new CachingFunctionRepositoryCompiler(), functionCompilationContext);
+      _functions.initialize();
+      final DefaultCachingComputationTargetResolver computationTargetResolver = new DefaultCachingComputationTargetResolver(new DefaultComputationTargetResolver(securitySource,
+          positionSource), EHCacheUtils.createCacheManager());
+      functionCompilationContext.setComputationTargetResolver(computationTargetResolver);
+      final ExecutorService executorService = Executors.newSingleThreadExecutor();
+      _services = new ViewCompilationServices(new InMemoryLKVMarketDataProvider(), new DefaultFunctionResolver(_functions), functionCompilationContext, computationTargetResolver,
+          executorService, new DependencyGraphBuilderFactory());
+      _viewDefinition = new ViewDefinition("My View", UniqueId.of("FOO", "BAR"), "kirk");
+      _viewDefinition.getResultModelDefinition().setAggregatePositionOutputMode(ResultOutputMode.NONE);
+      final ViewCalculationConfiguration calcConfig = new ViewCalculationConfiguration(_viewDefinition, "Default");
+      calcConfig.addPortfolioRequirementName(SECURITY_TYPE, POSITION_VALUE);
+      _viewDefinition.addViewCalculationConfiguration(calcConfig);
+      _portfolio = PortfolioCompiler.getPortfolio(_viewDefinition, positionSource, VersionCorrection.LATEST);
+    }
+
+    private CompiledViewDefinitionWithGraphsImpl compile(final Instant valuationTime) {
+      return ViewDefinitionCompiler.compile(_viewDefinition, _services, valuationTime, VersionCorrection.LATEST);
+    }
+
+    private CompiledViewDefinitionCacheKey key(final FudgeContext fudgeContext) {
+      return CompiledViewDefinitionCacheKey.of(fudgeContext, _viewDefinition, _portfolio, _functions.getInitializedFunctionRepository().getAllFunctions(), "Live");
+    }
+
+    private CompiledViewDefinitionWithGraphsImpl load(final CompiledViewDefinitionCache cache, final CompiledViewDefinitionCacheKey key, final Instant valuationTime) {
+      return cache.get(key, valuationTime, _viewDefinition, _portfolio, _functions.compileFunctionRepository(valuationTime),
+          _functions.getFunctionCompilationContext().getFunctionInitId());
+    }
+
+  }
+
+  private static void assertGraphsEqual(final DependencyGraph expected, final DependencyGraph actual) {
+    assertEquals(expected.getCalculationConfigurationName(), actual.getCalculationConfigurationName());
+    assertEquals(expected.getSize(), actual.getSize());
+    assertEquals(expected.getTerminalOutputs(), actual.getTerminalOutputs());
+    assertEquals(expected.getAllComputationTargets(), actual.getAllComputationTargets());
+    for (DependencyNode node : expected.getDependencyNodes()) {
+      final ValueSpecification output = node.getOutputValues().iterator().next();
+      final DependencyNode actualNode = actual.getNodeProducing(output);
+      assertNotNull(actualNode);
+      assertEquals(node.getComputationTarget(), actualNode.getComputationTarget());
+      assertEquals(node.getFunction().getFunction().getFunctionDefinition().getUniqueId(), actualNode.getFunction().getFunction().getFunctionDefinition().getUniqueId());
+      assertEquals(node.getInputValues(), actualNode.getInputValues());
+      assertEquals(node.getOutputValues(), actualNode.getOutputValues());
+      assertEquals(node.getInputNodes().size(), actualNode.getInputNodes().size());
+    }
+  }
+
+  public void testRoundTrip() {
+    final Fixture fixture = new Fixture(10);
+    final Instant now = Instant.now();
+    final CompiledViewDefinitionWithGraphsImpl compiled = fixture.compile(now);
+    final BerkeleyDBCompiledViewDefinitionCache cache = new BerkeleyDBCompiledViewDefinitionCache(createDbEnvironment(createDbDir("testRoundTrip")), _fudgeContext);
+    cache.start();
+    try {
+      final CompiledViewDefinitionCacheKey key = fixture.key(_fudgeContext);
+      assertNull(fixture.load(cache, key, now));
+      cache.put(key, compiled);
+      final CompiledViewDefinitionWithGraphsImpl loaded = fixture.load(cache, key, now);
+      assertNotNull(loaded);
+      assertEquals(compiled.getDependencyGraphsByConfiguration().keySet(), loaded.getDependencyGraphsByConfiguration().keySet());
+      for (DependencyGraph graph : compiled.getAllDependencyGraphs()) {
+        assertGraphsEqual(graph, loaded.getDependencyGraph(graph.getCalculationConfigurationName()));
+      }
+      assertEquals(compiled.getMarketDataRequirements(), loaded.getMarketDataRequirements());
+      assertEquals(compiled.getComputationTargets(), loaded.getComputationTargets());
+      assertEquals(fixture._portfolio, loaded.getPortfolio());
+      assertEquals(compiled.getFunctionInitId(), loaded.getFunctionInitId());
+    } finally {
+      cache.stop();
+    }
+  }
+
+  public void testKeyChanges() {
+    final Fixture fixture = new Fixture(2);
+    final CompiledViewDefinitionCacheKey key = fixture.key(_fudgeContext);
+    assertEquals(key, fixture.key(_fudgeContext));
+    assertFalse(key.equals(CompiledViewDefinitionCacheKey.of(_fudgeContext, fixture._viewDefinition, fixture._portfolio, Collections.singleton(new SecurityFunction()), "Live")));
+    assertFalse(key.equals(CompiledViewDefinitionCacheKey.of(_fudgeContext, fixture._viewDefinition, fixture._portfolio,
+        fixture._functions.getInitializedFunctionRepository().getAllFunctions(), "Historical")));
+    final Collection<FunctionDefinition> functions = fixture._functions.getInitializedFunctionRepository().getAllFunctions();
+    SimplePortfolio portfolio = new SimplePortfolio(fixture._portfolio);
+    assertEquals(key, CompiledViewDefinitionCacheKey.of(_fudgeContext, fixture._viewDefinition, portfolio, functions, "Live"));
+    ((SimplePosition) portfolio.getRootNode().getPositions().get(0)).setQuantity(BigDecimal.TEN);
+    assertFalse(key.equals(CompiledViewDefinitionCacheKey.of(_fudgeContext, fixture._viewDefinition, portfolio, functions, "Live")));
+    portfolio = new SimplePortfolio(fixture._portfolio);
+    final SimplePosition position = (SimplePosition) portfolio.getRootNode().getPositions().get(0);
+    final SimpleSecurity security = new SimpleSecurity(SECURITY_TYPE);
+    security.setUniqueId(position.getSecurity().getUniqueId().withVersion("2"));
+    position.setSecurityLink(SimpleSecurityLink.of(security));
+    assertFalse(key.equals(CompiledViewDefinitionCacheKey.of(_fudgeContext, fixture._viewDefinition, portfolio, functions, "Live")));
+    fixture._viewDefinition.getAllCalculationConfigurations().iterator().next().addPortfolioRequirementName(SECURITY_TYPE, SECURITY_VALUE);
+    assertFalse(key.equals(fixture.key(_fudgeContext)));
+  }
+
+  /**
+   * Compares the cold start time of compiling a larger view against restoring it from the cache after the database has been
+   * closed and reopened.
+   */
+  @Test(enabled = false)
+  public void comparePerformance() {
+    final int numPositions = 5000;
+    final Fixture fixture = new Fixture(numPositions);
+    final Instant now = Instant.now();
+    final File dbDir = createDbDir("comparePerformance");
+    OperationTimer timer = new OperationTimer(s_logger, "Compiling view with {} positions", numPositions);
+    final CompiledViewDefinitionWithGraphsImpl compiled = fixture.compile(now);
+    final long compileMillis = timer.finished();
+    final CompiledViewDefinitionCacheKey key = fixture.key(_fudgeContext);
+    Environment environment = createDbEnvironment(dbDir);
+    BerkeleyDBCompiledViewDefinitionCache cache = new BerkeleyDBCompiledViewDefinitionCache(environment, _fudgeContext);
+    cache.start();
+    timer = new OperationTimer(s_logger, "Storing view with {} positions", numPositions);
+    cache.put(key, compiled);
+    timer.finished();
+    cache.stop();
+    environment.close();
+    environment = createDbEnvironment(dbDir);
+    cache = new BerkeleyDBCompiledViewDefinitionCache(environment, _fudgeContext);
+    cache.start();
+    try {
+      timer = new OperationTimer(s_logger, "Loading view with {} positions", numPositions);
+      final CompiledViewDefinitionWithGraphsImpl loaded = fixture.load(cache, fixture.key(_fudgeContext), now);
+      final long loadMillis = timer.finished();
+      assertNotNull(loaded);
+      assertEquals(compiled.getDependencyGraph("Default").getSize(), loaded.getDependencyGraph("Default").getSize());
+      s_logger.info("Cold start for {} nodes - compiled in {}ms, loaded in {}ms", new Object[] {compiled.getDependencyGraph("Default").getSize(), compileMillis, loadMillis });
+    } finally {
+      cache.stop();
+      environment.close();
+    }
+  }
+
+}
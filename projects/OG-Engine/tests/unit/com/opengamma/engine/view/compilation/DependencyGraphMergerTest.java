@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.core.position.impl.SimplePortfolioNode;
+import com.opengamma.core.position.impl.SimplePosition;
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.test.MockFunction;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValuePropertyNames;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.ExternalId;
+import com.opengamma.id.UniqueId;
+
+/**
+ * Tests the {@link DependencyGraphMerger} class.
+ */
+@Test
+public class DependencyGraphMergerTest {
+
+  private static final ComputationTarget CURVE = new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueId.of("Curve", "USD"));
+  private static final ComputationTarget POSITION_1 = new ComputationTarget(position("1"));
+  private static final ComputationTarget POSITION_2 = new ComputationTarget(position("2"));
+  private static final ComputationTarget POSITION_3 = new ComputationTarget(position("3"));
+  private static final ComputationTarget ROOT = new ComputationTarget(new SimplePortfolioNode(UniqueId.of("Node", "Root"), "Root"));
+
+  private static SimplePosition position(final String id) {
+    return new SimplePosition(UniqueId.of("Pos", id), BigDecimal.ONE, ExternalId.of("Sec", id));
+  }
+
+  private static ValueSpecification output(final String valueName, final ComputationTarget target, final String function) {
+    return new ValueSpecification(valueName, target.toSpecification(), ValueProperties.with(ValuePropertyNames.FUNCTION, function).get());
+  }
+
+  private static DependencyNode node(final String function, final ComputationTarget target, final String valueName, final DependencyNode... inputs) {
+    final DependencyNode node = new DependencyNode(target);
+    node.setFunction(new MockFunction(function, target));
+    node.addOutputValue(output(valueName, target, function));
+    for (DependencyNode input : inputs) {
+      node.addInputNode(input);
+      node.addInputValue(input.getOutputValues().iterator().next());
+    }
+    return node;
+  }
+
+  private static void addTerminal(final DependencyGraph graph, final DependencyNode node) {
+    final ValueSpecification output = node.getOutputValues().iterator().next();
+    graph.addTerminalOutput(new ValueRequirement(output.getValueName(), output.getTargetSpecification()), output);
+  }
+
+  /**
+   * Creates a graph with a curve used by two positions, and a node aggregating the positions.
+   */
+  private static DependencyGraph previousGraph() {
+    final DependencyGraph graph = new DependencyGraph("Default");
+    final DependencyNode curve = node("Curve", CURVE, "Curve");
+    final DependencyNode pv1 = node("PV", POSITION_1, "PV", curve);
+    final DependencyNode pv2 = node("PV", POSITION_2, "PV", curve);
+    final DependencyNode root = node("Sum", ROOT, "PV", pv1, pv2);
+    graph.addDependencyNode(curve);
+    graph.addDependencyNode(pv1);
+    graph.addDependencyNode(pv2);
+    graph.addDependencyNode(root);
+    addTerminal(graph, pv1);
+    addTerminal(graph, pv2);
+    addTerminal(graph, root);
+    return graph;
+  }
+
+  private static DependencyNode getNode(final DependencyGraph graph, final ComputationTarget target, final String function) {
+    return graph.getNodeProducing(output((target == CURVE) ? "Curve" : "PV", target, function));
+  }
+
+  public void testUnchanged() {
+    final DependencyGraph previous = previousGraph();
+    final DependencyGraph graph = new DependencyGraphMerger(previous, Collections.<ComputationTargetSpecification>emptySet()).getDependencyGraph();
+    assertEquals(previous.getSize(), graph.getSize());
+    assertEquals(previous.getTerminalOutputs(), graph.getTerminalOutputs());
+    // The previous graph is copied, not shared
+    assertFalse(graph.containsNode(getNode(previous, CURVE, "Curve")));
+  }
+
+  public void testDiscardRemovedTargets() {
+    final DependencyGraph previous = previousGraph();
+    final DependencyGraphMerger merger = new DependencyGraphMerger(previous, Collections.singleton(POSITION_2.toSpecification()));
+    final DependencyGraph graph = merger.getDependencyGraph();
+    // The aggregate depends on position 2 so goes too; the curve is kept for position 1
+    assertEquals(2, graph.getSize());
+    assertNotNull(getNode(graph, CURVE, "Curve"));
+    assertNotNull(getNode(graph, POSITION_1, "PV"));
+    assertNull(getNode(graph, POSITION_2, "PV"));
+    assertNull(getNode(graph, ROOT, "Sum"));
+    assertEquals(1, graph.getTerminalOutputs().size());
+  }
+
+  public void testMergeSharesExistingNodes() {
+    final DependencyGraph previous = previousGraph();
+    final DependencyGraphMerger merger = new DependencyGraphMerger(previous, Collections.singleton(POSITION_2.toSpecification()));
+    // Partial graph for a new position 3 that uses the same curve
+    final DependencyGraph partial = new DependencyGraph("Default");
+    final DependencyNode curve = node("Curve", CURVE, "Curve");
+    final DependencyNode pv3 = node("PV", POSITION_3, "PV", curve);
+    partial.addDependencyNode(curve);
+    partial.addDependencyNode(pv3);
+    addTerminal(partial, pv3);
+    assertTrue(merger.merge(partial));
+    final DependencyGraph graph = merger.getDependencyGraph();
+    assertEquals(3, graph.getSize());
+    assertEquals(2, graph.getTerminalOutputs().size());
+    final DependencyNode mergedCurve = getNode(graph, CURVE, "Curve");
+    final DependencyNode mergedPV3 = getNode(graph, POSITION_3, "PV");
+    assertNotNull(mergedPV3);
+    assertEquals(Collections.singleton(mergedCurve), mergedPV3.getInputNodes());
+    assertEquals(2, mergedCurve.getDependentNodes().size());
+  }
+
+  public void testMergeConflict() {
+    final DependencyGraph previous = previousGraph();
+    final DependencyGraphMerger merger = new DependencyGraphMerger(previous, Collections.singleton(POSITION_2.toSpecification()));
+    // Partial graph producing the curve value from a different function
+    final DependencyGraph partial = new DependencyGraph("Default");
+    final DependencyNode curve = new DependencyNode(CURVE);
+    curve.setFunction(new MockFunction("OtherCurve", CURVE));
+    curve.addOutputValue(output("Curve", CURVE, "Curve"));
+    final DependencyNode pv3 = node("PV", POSITION_3, "PV", curve);
+    partial.addDependencyNode(curve);
+    partial.addDependencyNode(pv3);
+    addTerminal(partial, pv3);
+    assertFalse(merger.merge(partial));
+  }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.impl.SimplePortfolio;
+import com.opengamma.core.position.impl.SimplePortfolioNode;
+import com.opengamma.core.position.impl.SimplePosition;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.id.ExternalId;
+import com.opengamma.id.UniqueId;
+
+/**
+ * Tests the {@link PortfolioDifference} class.
+ */
+@Test
+public class PortfolioDifferenceTest {
+
+  private static SimplePortfolioNode node(final String id) {
+    return new SimplePortfolioNode(UniqueId.of("Node", id), id);
+  }
+
+  private static SimplePosition position(final String id, final int quantity) {
+    return new SimplePosition(UniqueId.of("Pos", id), new BigDecimal(quantity), ExternalId.of("Sec", id));
+  }
+
+  private static ComputationTargetSpecification nodeTarget(final String id) {
+    return new ComputationTargetSpecification(ComputationTargetType.PORTFOLIO_NODE, UniqueId.of("Node", id));
+  }
+
+  private static ComputationTargetSpecification positionTarget(final String id) {
+    return new ComputationTargetSpecification(ComputationTargetType.POSITION, UniqueId.of("Pos", id));
+  }
+
+  private static Set<ComputationTargetSpecification> targets(final ComputationTargetSpecification... targets) {
+    final Set<ComputationTargetSpecification> result = new HashSet<ComputationTargetSpecification>();
+    for (ComputationTargetSpecification target : targets) {
+      result.add(target);
+    }
+    return result;
+  }
+
+  /**
+   * Creates a portfolio with a root node containing nodes A and B. A holds positions 1 and 2, B holds position 3.
+   */
+  private static Portfolio portfolio(final int quantity2, final boolean position3, final boolean position4) {
+    final SimplePortfolioNode a = node("A");
+    a.addPosition(position("1", 10));
+    a.addPosition(position("2", quantity2));
+    final SimplePortfolioNode b = node("B");
+    if (position3) {
+      b.addPosition(position("3", 30));
+    }
+    if (position4) {
+      b.addPosition(position("4", 40));
+    }
+    final SimplePortfolioNode root = node("Root");
+    root.addChildNode(a);
+    root.addChildNode(b);
+    return new SimplePortfolio(UniqueId.of("Port", "1"), "Test", root);
+  }
+
+  public void testUnchanged() {
+    final PortfolioDifference difference = new PortfolioDifference(portfolio(20, true, false), portfolio(20, true, false));
+    assertTrue(difference.isEmpty());
+  }
+
+  public void testChangedPosition() {
+    final PortfolioDifference difference = new PortfolioDifference(portfolio(20, true, false), portfolio(25, true, false));
+    assertFalse(difference.isEmpty());
+    final Set<ComputationTargetSpecification> expected = targets(positionTarget("2"), nodeTarget("A"), nodeTarget("Root"));
+    assertEquals(expected, difference.getRemovedTargets());
+    assertEquals(expected, difference.getAddedTargets());
+  }
+
+  public void testAddedPosition() {
+    final PortfolioDifference difference = new PortfolioDifference(portfolio(20, true, false), portfolio(20, true, true));
+    assertEquals(targets(nodeTarget("B"), nodeTarget("Root")), difference.getRemovedTargets());
+    assertEquals(targets(positionTarget("4"), nodeTarget("B"), nodeTarget("Root")), difference.getAddedTargets());
+  }
+
+  public void testRemovedPosition() {
+    final PortfolioDifference difference = new PortfolioDifference(portfolio(20, true, false), portfolio(20, false, false));
+    assertEquals(targets(positionTarget("3"), nodeTarget("B"), nodeTarget("Root")), difference.getRemovedTargets());
+    assertEquals(targets(nodeTarget("B"), nodeTarget("Root")), difference.getAddedTargets());
+  }
+
+}
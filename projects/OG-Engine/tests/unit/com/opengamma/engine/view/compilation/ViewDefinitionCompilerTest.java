@@ -8,6 +8,7 @@ package com.opengamma.engine.view.compilation;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertSame;
 import static org.testng.AssertJUnit.assertTrue;
 import static org.testng.AssertJUnit.fail;
 
@@ -24,6 +25,14 @@ import javax.time.Instant;
 
 import org.testng.annotations.Test;
 
+import com.opengamma.DataNotFoundException;
+import com.opengamma.core.change.ChangeManager;
+import com.opengamma.core.change.DummyChangeManager;
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.PortfolioNode;
+import com.opengamma.core.position.Position;
+import com.opengamma.core.position.PositionSource;
+import com.opengamma.core.position.Trade;
 import com.opengamma.core.position.impl.MockPositionSource;
 import com.opengamma.core.position.impl.SimplePortfolio;
 import com.opengamma.core.position.impl.SimplePortfolioNode;
@@ -50,6 +59,7 @@ import com.opengamma.engine.view.ResultOutputMode;
 import com.opengamma.engine.view.ViewCalculationConfiguration;
 import com.opengamma.engine.view.ViewDefinition;
 import com.opengamma.id.ExternalId;
+import com.opengamma.id.ObjectId;
 import com.opengamma.id.UniqueId;
 import com.opengamma.id.VersionCorrection;
 import com.opengamma.util.ehcache.EHCacheUtils;
@@ -293,6 +303,135 @@ public class ViewDefinitionCompilerTest {
     assertTrue(future.isCancelled());
   }
 
+  /**
+   * Position source whose portfolio can be replaced with a new version.
+   */
+  private static final class VersionedPositionSource implements PositionSource {
+
+    private volatile Portfolio _portfolio;
+
+    private VersionedPositionSource(final Portfolio portfolio) {
+      _portfolio = portfolio;
+    }
+
+    private void setPortfolio(final Portfolio portfolio) {
+      _portfolio = portfolio;
+    }
+
+    @Override
+    public Portfolio getPortfolio(final UniqueId uniqueId) {
+      return _portfolio;
+    }
+
+    @Override
+    public Portfolio getPortfolio(final ObjectId objectId, final VersionCorrection versionCorrection) {
+      return _portfolio;
+    }
+
+    @Override
+    public PortfolioNode getPortfolioNode(final UniqueId uniqueId) {
+      return _portfolio.getRootNode();
+    }
+
+    @Override
+    public Position getPosition(final UniqueId uniqueId) {
+      for (Position position : _portfolio.getRootNode().getPositions()) {
+        if (position.getUniqueId().equals(uniqueId)) {
+          return position;
+        }
+      }
+      throw new DataNotFoundException("Position not found: " + uniqueId);
+    }
+
+    @Override
+    public Trade getTrade(final UniqueId uniqueId) {
+      throw new DataNotFoundException("Trade not found: " + uniqueId);
+    }
+
+    @Override
+    public ChangeManager changeManager() {
+      return DummyChangeManager.INSTANCE;
+    }
+
+  }
+
+  /**
+   * Function on a position that can be removed from the repository after the first compilation.
+   */
+  private static final class PositionFunction extends MockFunction {
+
+    private volatile boolean _enabled = true;
+
+    private PositionFunction(final String uniqueId, final Position position) {
+      super(uniqueId, new ComputationTarget(position));
+      addResult(getOutputRequirement(new ComputationTarget(position)), 1.0);
+    }
+
+    @Override
+    public boolean canApplyTo(final FunctionCompilationContext context, final ComputationTarget target) {
+      return _enabled && super.canApplyTo(context, target);
+    }
+
+  }
+
+  private static SimplePortfolio portfolio(final SimpleSecurity security, final String... positionIds) {
+    final SimplePortfolioNode node = new SimplePortfolioNode(UniqueId.of("Node", "1"), "node");
+    for (String positionId : positionIds) {
+      final SimplePosition position = new SimplePosition(UniqueId.of("Pos", positionId), BigDecimal.ONE, security);
+      position.setParentNodeId(node.getUniqueId());
+      node.addPosition(position);
+    }
+    return new SimplePortfolio(UniqueId.of("Port", "1"), "portfolio", node);
+  }
+
+  public void testIncrementalCompilation() throws Exception {
+    final SimpleSecurity security = new SimpleSecurity("My Sec");
+    security.setUniqueId(UniqueId.of("Sec", "1"));
+    final SimplePortfolio previousPortfolio = portfolio(security, "1", "2");
+    final SimplePortfolio currentPortfolio = portfolio(security, "1", "3");
+    final VersionedPositionSource positionSource = new VersionedPositionSource(previousPortfolio);
+    final MockSecuritySource securitySource = new MockSecuritySource();
+    securitySource.addSecurity(security);
+    final PositionFunction fn1 = new PositionFunction("fn1", previousPortfolio.getRootNode().getPositions().get(0));
+    final PositionFunction fn2 = new PositionFunction("fn2", previousPortfolio.getRootNode().getPositions().get(1));
+    final PositionFunction fn3 = new PositionFunction("fn3", currentPortfolio.getRootNode().getPositions().get(1));
+    final InMemoryFunctionRepository functionRepo = new InMemoryFunctionRepository();
+    functionRepo.addFunction(fn1);
+    functionRepo.addFunction(fn2);
+    functionRepo.addFunction(fn3);
+    final FunctionCompilationContext functionCompilationContext = new FunctionCompilationContext();
+    functionCompilationContext.setFunctionInitId(123);
+    functionCompilationContext.setSecuritySource(securitySource);
+    final CompiledFunctionService cfs = new CompiledFunctionService(functionRepo, new CachingFunctionRepositoryCompiler(), functionCompilationContext);
+    cfs.initialize();
+    final DefaultFunctionResolver functionResolver = new DefaultFunctionResolver(cfs);
+    final DefaultCachingComputationTargetResolver computationTargetResolver = new DefaultCachingComputationTargetResolver(new DefaultComputationTargetResolver(securitySource,
+        positionSource), EHCacheUtils.createCacheManager());
+    functionCompilationContext.setComputationTargetResolver(computationTargetResolver);
+    final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    final ViewCompilationServices vcs = new ViewCompilationServices(new InMemoryLKVMarketDataProvider(), functionResolver, functionCompilationContext, computationTargetResolver,
+        executorService, new DependencyGraphBuilderFactory());
+    final ViewDefinition viewDefinition = new ViewDefinition("My View", previousPortfolio.getUniqueId(), "kirk");
+    viewDefinition.getResultModelDefinition().setAggregatePositionOutputMode(ResultOutputMode.NONE);
+    final ViewCalculationConfiguration calcConfig = new ViewCalculationConfiguration(viewDefinition, "Fibble");
+    calcConfig.addPortfolioRequirementName("My Sec", "OUTPUT");
+    viewDefinition.addViewCalculationConfiguration(calcConfig);
+    final Instant valuationTime = Instant.now();
+    final CompiledViewDefinitionWithGraphsImpl previous = ViewDefinitionCompiler.compile(viewDefinition, vcs, valuationTime, VersionCorrection.LATEST);
+    assertTargets(previous, UniqueId.of("Pos", "1"), UniqueId.of("Pos", "2"));
+    // Position 2 is replaced by position 3. The requirements of position 1 can no longer be resolved, so it will only be
+    // in the new compilation if the previous graph was updated rather than compiled again in full.
+    positionSource.setPortfolio(currentPortfolio);
+    fn1._enabled = false;
+    final CompiledViewDefinitionWithGraphsImpl current = ViewDefinitionCompiler.compileTask(viewDefinition, vcs, valuationTime, VersionCorrection.LATEST, previous).get();
+    assertSame(currentPortfolio, current.getPortfolio());
+    assertTargets(current, UniqueId.of("Pos", "1"), UniqueId.of("Pos", "3"));
+    assertEquals(2, current.getDependencyGraph("Fibble").getTerminalOutputs().size());
+    // Without a previous compilation, the view definition is compiled in full
+    assertTargets(ViewDefinitionCompiler.compileTask(viewDefinition, vcs, valuationTime, VersionCorrection.LATEST, null).get(), UniqueId.of("Pos", "3"));
+    executorService.shutdown();
+  }
+
   private void assertTargets(CompiledViewDefinitionWithGraphsImpl compiledViewDefinition, UniqueId... targets) {
     Set<UniqueId> expectedTargets = new HashSet<UniqueId>(Arrays.asList(targets));
     Set<ComputationTargetSpecification> actualTargets = compiledViewDefinition.getComputationTargets();
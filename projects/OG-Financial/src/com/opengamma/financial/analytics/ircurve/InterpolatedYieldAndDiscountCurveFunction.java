@@ -32,6 +32,7 @@ import com.opengamma.engine.ComputationTarget;
 import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.ComputationTargetType;
 import com.opengamma.engine.function.AbstractFunction;
+import com.opengamma.engine.function.CacheableFunctionInvoker;
 import com.opengamma.engine.function.CompiledFunctionDefinition;
 import com.opengamma.engine.function.FunctionCompilationContext;
 import com.opengamma.engine.function.FunctionExecutionContext;
@@ -135,7 +136,11 @@ public class InterpolatedYieldAndDiscountCurveFunction extends AbstractFunction
     final InterpolatedYieldCurveSpecification specification = compile.getThird();
 
     // ENG-252 see MarkingInstrumentImpliedYieldCurveFunction; need to work out the expiry more efficiently
-    return new AbstractInvokingCompiledFunction(compile.getFirst(), compile.getSecond()) {
+    final class CompiledFunction extends AbstractInvokingCompiledFunction implements CacheableFunctionInvoker {
+
+      private CompiledFunction(final InstantProvider earliestInvocation, final InstantProvider latestInvocation) {
+        super(earliestInvocation, latestInvocation);
+      }
 
       @Override
       public ComputationTargetType getTargetType() {
@@ -202,6 +207,18 @@ public class InterpolatedYieldAndDiscountCurveFunction extends AbstractFunction
         return Sets.newHashSet(resultValue, specValue);
       }
 
-    };
+      /**
+       * The strip maturities are converted to year fractions from the valuation instant, not the curve date, so the
+       * curve is only reused for the same valuation instant. That is within a cycle, when several calculation
+       * configurations or views sharing the cycle ask for it, or when a cycle is rerun for the same valuation time.
+       * Successive live cycles have different valuation instants so never reuse a curve.
+       */
+      @Override
+      public Object getExecutionContextKey(final FunctionExecutionContext executionContext) {
+        return executionContext.getValuationTime();
+      }
+
+    }
+    return new CompiledFunction(compile.getFirst(), compile.getSecond());
   }
 }
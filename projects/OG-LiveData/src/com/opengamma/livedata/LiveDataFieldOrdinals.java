@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.opengamma.core.value.MarketDataRequirementNames;
+
+/**
+ * The interned ordinals of normalized field names, used to encode field-level deltas compactly.
+ * <p>
+ * A field in a delta message is identified by its ordinal alone when it has one, and by name otherwise. The table is
+ * shared by servers and clients so it must only ever be appended to; changing the ordinal of an existing name would
+ * make older clients decode values under the wrong field.
+ */
+public final class LiveDataFieldOrdinals {
+
+  /**
+   * The field names, indexed by ordinal. Append only.
+   */
+  private static final String[] NAMES = new String[] {
+    MarketDataRequirementNames.MARKET_VALUE,
+    MarketDataRequirementNames.IMPLIED_VOLATILITY,
+    MarketDataRequirementNames.VOLUME,
+    MarketDataRequirementNames.LAST,
+    MarketDataRequirementNames.SETTLE_PRICE,
+    MarketDataRequirementNames.MID,
+    MarketDataRequirementNames.BID,
+    MarketDataRequirementNames.ASK,
+    MarketDataRequirementNames.BEST_IMPLIED_VOLATILITY,
+    MarketDataRequirementNames.BID_IMPLIED_VOLATILITY,
+    MarketDataRequirementNames.ASK_IMPLIED_VOLATILITY,
+    MarketDataRequirementNames.LAST_IMPLIED_VOLATILITY,
+    MarketDataRequirementNames.MID_IMPLIED_VOLATILITY,
+    MarketDataRequirementNames.YIELD_CONVENTION_MID,
+    MarketDataRequirementNames.YIELD_YIELD_TO_MATURITY_MID,
+    MarketDataRequirementNames.DIRTY_PRICE_MID,
+    MarketDataRequirementNames.DIVIDEND_YIELD,
+    MarketDataRequirementNames.COST_OF_CARRY
+  };
+
+  private static final Map<String, Integer> ORDINALS = new HashMap<String, Integer>();
+
+  static {
+    for (int i = 0; i < NAMES.length; i++) {
+      ORDINALS.put(NAMES[i], i);
+    }
+  }
+
+  /**
+   * Restricted constructor.
+   */
+  private LiveDataFieldOrdinals() {
+  }
+
+  /**
+   * Gets the ordinal of a field name.
+   *
+   * @param name  the field name, null returns null
+   * @return the ordinal, null if the name has none
+   */
+  public static Integer getOrdinal(final String name) {
+    return (name != null) ? ORDINALS.get(name) : null;
+  }
+
+  /**
+   * Gets the field name with an ordinal.
+   *
+   * @param ordinal  the ordinal, null returns null
+   * @return the field name, null if the ordinal is not known
+   */
+  public static String getName(final Integer ordinal) {
+    if ((ordinal == null) || (ordinal < 0) || (ordinal >= NAMES.length)) {
+      return null;
+    }
+    return NAMES[ordinal];
+  }
+
+}
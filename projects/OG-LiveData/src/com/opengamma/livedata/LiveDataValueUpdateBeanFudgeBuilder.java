@@ -24,6 +24,8 @@ public class LiveDataValueUpdateBeanFudgeBuilder implements FudgeBuilder<LiveDat
   public static final String SPECIFICATION_FIELD_NAME = "specification";
   /** Field name. */
   public static final String FIELDS_FIELD_NAME = "fields";
+  /** Field name of the changed fields in a delta encoded update. */
+  public static final String DELTA_FIELD_NAME = "delta";
 
   @Override
   public MutableFudgeMsg buildMessage(FudgeSerializer serializer, LiveDataValueUpdateBean object) {
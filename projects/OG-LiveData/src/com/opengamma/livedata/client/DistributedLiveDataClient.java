@@ -22,7 +22,6 @@ import org.slf4j.LoggerFactory;
 import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.livedata.LiveDataSpecification;
 import com.opengamma.livedata.LiveDataValueUpdateBean;
-import com.opengamma.livedata.LiveDataValueUpdateBeanFudgeBuilder;
 import com.opengamma.livedata.UserPrincipal;
 import com.opengamma.livedata.msg.LiveDataSubscriptionRequest;
 import com.opengamma.livedata.msg.LiveDataSubscriptionResponse;
@@ -48,6 +47,11 @@ public class DistributedLiveDataClient extends AbstractLiveDataClient implements
   
   private final DistributedEntitlementChecker _entitlementChecker;
   
+  /**
+   * Rebuilds full values from updates sent as field-level deltas.
+   */
+  private final LiveDataDeltaDecoder _deltaDecoder = new LiveDataDeltaDecoder();
+  
   /**
    * An exception will be thrown when doing a snapshot if no reply is received from the server
    * within this time. Milliseconds.
@@ -91,6 +95,7 @@ public class DistributedLiveDataClient extends AbstractLiveDataClient implements
   @Override
   protected void cancelPublication(LiveDataSpecification fullyQualifiedSpecification) {
     s_logger.info("Request made to cancel publication of {}", fullyQualifiedSpecification);
+    _deltaDecoder.remove(fullyQualifiedSpecification);
     // TODO kirk 2009-10-28 -- This should handle an unsubscription request. For now,
     // however, we can just make do with allowing the heartbeat to time out.
   }
@@ -392,10 +397,19 @@ public class DistributedLiveDataClient extends AbstractLiveDataClient implements
   public void messageReceived(FudgeContext fudgeContext,
       FudgeMsgEnvelope msgEnvelope) {
     FudgeMsg fudgeMsg = msgEnvelope.getMessage();
-    LiveDataValueUpdateBean update = LiveDataValueUpdateBeanFudgeBuilder.fromFudgeMsg(new FudgeDeserializer(fudgeContext), fudgeMsg);
+    LiveDataValueUpdateBean update = _deltaDecoder.decode(new FudgeDeserializer(fudgeContext), fudgeMsg);
     valueUpdate(update);
   }
 
+  /**
+   * Gets the number of gaps detected in updates sent as field-level deltas.
+   * 
+   * @return the gap count
+   */
+  public long getDeltaGapCount() {
+    return _deltaDecoder.getGapCount();
+  }
+
   @Override
   public Map<LiveDataSpecification, Boolean> isEntitled(UserPrincipal user,
       Collection<LiveDataSpecification> requestedSpecifications) {
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.livedata.LiveDataFieldOrdinals;
+import com.opengamma.livedata.LiveDataSpecification;
+import com.opengamma.livedata.LiveDataSpecificationFudgeBuilder;
+import com.opengamma.livedata.LiveDataValueUpdateBean;
+import com.opengamma.livedata.LiveDataValueUpdateBeanFudgeBuilder;
+
+/**
+ * Decodes live data updates, rebuilding full values from field-level deltas.
+ * <p>
+ * Updates sent in the standard format, including the periodic snapshots of a delta encoded stream, are passed
+ * through unchanged. The last such update for each specification is kept so that, once deltas start to arrive,
+ * they can be applied to it and the client receives the latest value of every field with each update, as it would
+ * from a server sending in full.
+ * <p>
+ * A delta whose sequence number does not follow the previous update is a gap: an update has been lost and the
+ * rebuilt values may be stale. Until the next snapshot arrives only the fields carried by each delta are delivered,
+ * as those are known to be current. The same applies to a client that joins a stream between snapshots.
+ */
+public class LiveDataDeltaDecoder {
+
+  /** Logger. */
+  private static final Logger s_logger = LoggerFactory.getLogger(LiveDataDeltaDecoder.class);
+
+  /**
+   * The state of one stream of updates.
+   */
+  private static final class Image {
+
+    /**
+     * The last update in the standard format, not yet expanded into {@link #_fields}.
+     */
+    private FudgeMsg _snapshot;
+    /**
+     * The last known value of each field, keyed by name, null until a delta arrives.
+     */
+    private Map<String, FudgeField> _fields;
+    /**
+     * The sequence number of the last update.
+     */
+    private long _sequenceNumber;
+    /**
+     * Whether the fields hold a value for every field sent.
+     */
+    private boolean _complete;
+
+  }
+
+  /**
+   * The state of each stream, keyed by fully qualified specification.
+   */
+  private final ConcurrentMap<LiveDataSpecification, Image> _images = new ConcurrentHashMap<LiveDataSpecification, Image>();
+  /**
+   * The number of gaps detected.
+   */
+  private final AtomicLong _gaps = new AtomicLong();
+
+  /**
+   * Decodes an update.
+   *
+   * @param deserializer  the deserializer, not null
+   * @param msg  the message received, not null
+   * @return the update, null if the message is not a valid update
+   */
+  public LiveDataValueUpdateBean decode(FudgeDeserializer deserializer, FudgeMsg msg) {
+    final FudgeMsg delta = msg.getMessage(LiveDataValueUpdateBeanFudgeBuilder.DELTA_FIELD_NAME);
+    if (delta == null) {
+      final LiveDataValueUpdateBean update = LiveDataValueUpdateBeanFudgeBuilder.fromFudgeMsg(deserializer, msg);
+      if (update != null) {
+        snapshotReceived(update);
+      }
+      return update;
+    }
+    final Long sequenceNumber = msg.getLong(LiveDataValueUpdateBeanFudgeBuilder.SEQUENCE_NUMBER_FIELD_NAME);
+    final FudgeMsg specificationFields = msg.getMessage(LiveDataValueUpdateBeanFudgeBuilder.SPECIFICATION_FIELD_NAME);
+    if ((sequenceNumber == null) || (specificationFields == null)) {
+      return null;
+    }
+    final LiveDataSpecification specification = LiveDataSpecificationFudgeBuilder.fromFudgeMsg(deserializer, specificationFields);
+    return new LiveDataValueUpdateBean(sequenceNumber, specification, deltaReceived(deserializer, specification, sequenceNumber, delta));
+  }
+
+  private Image getImage(final LiveDataSpecification specification) {
+    Image image = _images.get(specification);
+    if (image == null) {
+      final Image newImage = new Image();
+      image = _images.putIfAbsent(specification, newImage);
+      if (image == null) {
+        image = newImage;
+      }
+    }
+    return image;
+  }
+
+  private void snapshotReceived(final LiveDataValueUpdateBean update) {
+    final Image image = getImage(update.getSpecification());
+    synchronized (image) {
+      // The fields are only expanded if deltas follow, so streams sent in full cost no more than this
+      image._snapshot = update.getFields();
+      image._fields = null;
+      image._sequenceNumber = update.getSequenceNumber();
+      image._complete = true;
+    }
+  }
+
+  private FudgeMsg deltaReceived(final FudgeDeserializer deserializer, final LiveDataSpecification specification, final long sequenceNumber, final FudgeMsg delta) {
+    final Image image = getImage(specification);
+    synchronized (image) {
+      if (image._fields == null) {
+        image._fields = new LinkedHashMap<String, FudgeField>();
+        if (image._snapshot != null) {
+          for (FudgeField field : image._snapshot) {
+            if (field.getName() != null) {
+              image._fields.put(field.getName(), field);
+            }
+          }
+          image._snapshot = null;
+        } else {
+          // Joined the stream between snapshots
+          image._complete = false;
+        }
+      }
+      if (image._complete && (sequenceNumber != image._sequenceNumber + 1)) {
+        s_logger.warn("Gap in updates for {}: expected sequence number {} but received {}", new Object[] {specification, image._sequenceNumber + 1, sequenceNumber });
+        _gaps.incrementAndGet();
+        image._complete = false;
+      }
+      image._sequenceNumber = sequenceNumber;
+      final MutableFudgeMsg changed = deserializer.getFudgeContext().newMessage();
+      for (FudgeField field : delta) {
+        final String name = getName(field);
+        if (name == null) {
+          s_logger.warn("Ignoring field {} of update for {} with unknown ordinal", field, specification);
+          continue;
+        }
+        changed.add(name, null, field.getType(), field.getValue());
+      }
+      for (FudgeField field : changed) {
+        image._fields.put(field.getName(), field);
+      }
+      if (!image._complete) {
+        return changed;
+      }
+      final MutableFudgeMsg fields = deserializer.getFudgeContext().newMessage();
+      for (FudgeField field : image._fields.values()) {
+        fields.add(field);
+      }
+      return fields;
+    }
+  }
+
+  private static String getName(final FudgeField field) {
+    if (field.getName() != null) {
+      return field.getName();
+    }
+    if (field.getOrdinal() != null) {
+      return LiveDataFieldOrdinals.getName(field.getOrdinal().intValue());
+    }
+    return null;
+  }
+
+  /**
+   * Discards the state held for a stream that is no longer received.
+   *
+   * @param specification  the fully qualified specification, not null
+   */
+  public void remove(LiveDataSpecification specification) {
+    _images.remove(specification);
+  }
+
+  /**
+   * Gets the number of gaps detected in delta encoded streams.
+   *
+   * @return the gap count
+   */
+  public long getGapCount() {
+    return _gaps.get();
+  }
+
+}
@@ -9,6 +9,7 @@ package com.opengamma.livedata.firehose;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -113,6 +114,10 @@ public abstract class AbstractConnectorJob<Record> implements Runnable {
     return _pipeLineExecutor;
   }
 
+  protected boolean isPoisoned() {
+    return _poisoned;
+  }
+
   protected abstract void prepareConnection();
 
   protected abstract void establishConnection() throws IOException;
@@ -121,7 +126,62 @@ public abstract class AbstractConnectorJob<Record> implements Runnable {
 
   protected abstract InputStream getInputStream() throws IOException;
 
+  /**
+   * Reads records from the established connection, passing them to the callback, until the connection ends. The default
+   * reads the stream from {@link #getInputStream}; a sub-class with more than one source of records can override this
+   * and call {@link #readRecords(InputStream)} for each.
+   * 
+   * @throws IOException if the connection fails, or ends with an exception
+   */
+  protected void readRecords() throws IOException {
+    readRecords(getInputStream());
+  }
+
+  /**
+   * Decodes records from a stream, passing them to the callback, until the end of the stream. If a pipe-line executor
+   * is available the decoding is done by one of its threads, otherwise by the calling thread.
+   * 
+   * @param input the stream to decode, not null
+   * @throws IOException if the stream fails, or ends with an exception
+   */
   @SuppressWarnings("unchecked")
+  protected void readRecords(final InputStream input) throws IOException {
+    final RecordStream<Record> stream = getStreamFactory().newInstance(new BufferedInputStream(input));
+    if (isPipeLineRead()) {
+      final RecordDecoder decoder = new RecordDecoder(stream);
+      getPipeLineExecutor().submit(decoder);
+      final BlockingQueue<Object> records = decoder.getQueue();
+      try {
+        Object record = records.take();
+        while (record != s_eof) {
+          getCallback().received((Record) record);
+          record = records.take();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    } else {
+      do {
+        getCallback().received(stream.readRecord());
+      } while (true);
+    }
+  }
+
+  /**
+   * Called after a connection has ended to wait before the next attempt.
+   * 
+   * @return true to connect again, false to stop the job
+   */
+  protected boolean awaitReconnect() {
+    try {
+      Thread.sleep(1000);
+    } catch (InterruptedException e) {
+      throw new OpenGammaRuntimeException("Interrupted", e);
+    }
+    return true;
+  }
+
   @Override
   public void run() {
     s_logger.info("Started connection job");
@@ -134,38 +194,17 @@ public abstract class AbstractConnectorJob<Record> implements Runnable {
         establishConnection();
         s_logger.info("Connected");
         getCallback().connected();
-        if (isPipeLineRead()) {
-          final RecordStream<Record> stream = getStreamFactory().newInstance(new BufferedInputStream(getInputStream()));
-          final RecordDecoder decoder = new RecordDecoder(stream);
-          getPipeLineExecutor().submit(decoder);
-          final BlockingQueue<Object> records = decoder.getQueue();
-          try {
-            Object record = records.take();
-            while (record != s_eof) {
-              getCallback().received((Record) record);
-              record = records.take();
-            }
-          } catch (InterruptedException e) {
-            throw new OpenGammaRuntimeException("Interrupted", e);
-          }
-        } else {
-          final RecordStream<Record> records = getStreamFactory().newInstance(new BufferedInputStream(getInputStream()));
-          do {
-            getCallback().received(records.readRecord());
-          } while (true);
-        }
+        readRecords();
       } catch (IOException e) {
         s_logger.warn("I/O exception caught - {}", e.toString());
         s_logger.debug("I/O exception", e);
       } finally {
         endConnection();
+        s_logger.info("Disconnected");
+        getCallback().disconnected();
       }
-      s_logger.info("Disconnected");
-      getCallback().disconnected();
-      try {
-        Thread.sleep(1000);
-      } catch (InterruptedException e) {
-        throw new OpenGammaRuntimeException("Interrupted", e);
+      if (!awaitReconnect()) {
+        break;
       }
     }
     s_logger.info("Stopped connection job");
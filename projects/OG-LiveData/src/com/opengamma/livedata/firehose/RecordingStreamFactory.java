@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+
+package com.opengamma.livedata.firehose;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Wraps a stream factory to record each record's raw bytes into a tick journal as it is decoded, so a live session
+ * can later be replayed by {@link TickJournalConnectorJob}.
+ * <p>
+ * The bytes journaled for a record are those the underlying decoder consumed while reading it. Record boundaries are
+ * therefore exact only when the decoder reads no further than the end of each record, as a decoder reading through a
+ * {@link java.io.DataInputStream} does; a buffering decoder will journal read-ahead bytes against the wrong record.
+ *
+ * @param <T> the record type
+ */
+public class RecordingStreamFactory<T> implements RecordStream.Factory<T> {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(RecordingStreamFactory.class);
+
+  /**
+   * Chooses the partition key journaled with a record.
+   *
+   * @param <T> the record type
+   */
+  public interface Partitioner<T> {
+
+    /**
+     * Gets the key of a record. Records that must be replayed in order, such as the ticks of one security, must have
+     * the same key.
+     *
+     * @param record the record, not null
+     * @return the key
+     */
+    int getPartitionKey(T record);
+
+  }
+
+  /**
+   * Keeps the bytes read since the last record was journaled.
+   */
+  private static final class CapturingInputStream extends FilterInputStream {
+
+    private byte[] _captured = new byte[256];
+    private int _length;
+
+    private CapturingInputStream(final InputStream in) {
+      super(in);
+    }
+
+    private void capture(final byte[] buffer, final int offset, final int length) {
+      if (_length + length > _captured.length) {
+        final byte[] captured = new byte[Math.max(_captured.length * 2, _length + length)];
+        System.arraycopy(_captured, 0, captured, 0, _length);
+        _captured = captured;
+      }
+      System.arraycopy(buffer, offset, _captured, _length, length);
+      _length += length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int b = super.read();
+      if (b >= 0) {
+        if (_length == _captured.length) {
+          capture(new byte[] {(byte) b }, 0, 1);
+        } else {
+          _captured[_length++] = (byte) b;
+        }
+      }
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+      final int bytes = super.read(buffer, offset, length);
+      if (bytes > 0) {
+        capture(buffer, offset, bytes);
+      }
+      return bytes;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      // Skipped bytes must still be journaled
+      final byte[] buffer = new byte[(int) Math.min(n, 4096)];
+      final int bytes = read(buffer, 0, buffer.length);
+      return (bytes < 0) ? 0 : bytes;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+  }
+
+  private final RecordStream.Factory<T> _underlying;
+  private final TickJournalWriter _journal;
+  private final Partitioner<T> _partitioner;
+
+  /**
+   * Creates a factory journaling every record with a key of zero.
+   *
+   * @param underlying the factory decoding the records, not null
+   * @param journal the journal to write to, not null
+   */
+  public RecordingStreamFactory(final RecordStream.Factory<T> underlying, final TickJournalWriter journal) {
+    this(underlying, journal, null);
+  }
+
+  /**
+   * Creates a factory.
+   *
+   * @param underlying the factory decoding the records, not null
+   * @param journal the journal to write to, not null
+   * @param partitioner the partition key of each record, null to use zero for all records
+   */
+  public RecordingStreamFactory(final RecordStream.Factory<T> underlying, final TickJournalWriter journal, final Partitioner<T> partitioner) {
+    ArgumentChecker.notNull(underlying, "underlying");
+    ArgumentChecker.notNull(journal, "journal");
+    _underlying = underlying;
+    _journal = journal;
+    _partitioner = partitioner;
+  }
+
+  public TickJournalWriter getJournal() {
+    return _journal;
+  }
+
+  @Override
+  public RecordStream<T> newInstance(final InputStream input) {
+    final CapturingInputStream capture = new CapturingInputStream(input);
+    final RecordStream<T> underlying = _underlying.newInstance(capture);
+    return new RecordStream<T>() {
+      @Override
+      public T readRecord() throws IOException {
+        final T record;
+        try {
+          record = underlying.readRecord();
+        } catch (IOException e) {
+          // A partial record is not journaled
+          capture._length = 0;
+          throw e;
+        }
+        if (capture._length > 0) {
+          final int key = ((_partitioner != null) && (record != null)) ? _partitioner.getPartitionKey(record) : 0;
+          try {
+            _journal.write(key, capture._captured, 0, capture._length);
+          } catch (IOException e) {
+            s_logger.warn("Couldn't journal record - {}", e.toString());
+          }
+          capture._length = 0;
+        }
+        return record;
+      }
+    };
+  }
+
+}
@@ -0,0 +1,371 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+
+package com.opengamma.livedata.firehose;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Replays a tick journal written by {@link TickJournalWriter}, for example through {@link RecordingStreamFactory}.
+ * <p>
+ * The records are decoded by the stream factory exactly as if they had arrived from the original source, so the job
+ * can be given to a {@link StreamedFireHoseLiveDataServer} in place of a network connection to load test the server
+ * and everything downstream of it without a market data vendor. Records can be replayed with the time between them as
+ * recorded, with that time scaled, or as fast as they can be decoded.
+ * <p>
+ * The journal can be replayed as several partitions in parallel. Each record belongs to the partition given by its
+ * key, so records with the same key, such as the ticks of one security, are delivered in the order they were recorded.
+ * Partitions share the replay clock so they stay aligned with each other. With more than one partition the callback
+ * is called from several threads at once.
+ *
+ * @param <T> the record type
+ */
+public class TickJournalConnectorJob<T> extends AbstractConnectorJob<T> {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(TickJournalConnectorJob.class);
+
+  /**
+   * How the time between records is reproduced.
+   */
+  public static enum Mode {
+    /**
+     * Records are delivered with the time between them as recorded.
+     */
+    REAL_TIME,
+    /**
+     * The time between records is divided by the speed.
+     */
+    SCALED,
+    /**
+     * Records are delivered as fast as they can be decoded.
+     */
+    AS_FAST_AS_POSSIBLE
+  }
+
+  /**
+   * Creates {@link TickJournalConnectorJob} instances.
+   */
+  public static class Factory<T> implements AbstractConnectorJob.Factory<T> {
+
+    private String _filename;
+    private Mode _mode = Mode.REAL_TIME;
+    private double _speed = 1.0;
+    private int _partitions = 1;
+    private boolean _repeat = true;
+
+    @Override
+    public TickJournalConnectorJob<T> newInstance(final AbstractConnectorJob.Callback<T> callback, final RecordStream.Factory<T> streamFactory, final ExecutorService pipeLineExecutor) {
+      return new TickJournalConnectorJob<T>(callback, streamFactory, pipeLineExecutor, this);
+    }
+
+    public void setFilename(final String filename) {
+      _filename = filename;
+    }
+
+    public String getFilename() {
+      return _filename;
+    }
+
+    public void setMode(final Mode mode) {
+      ArgumentChecker.notNull(mode, "mode");
+      _mode = mode;
+    }
+
+    public Mode getMode() {
+      return _mode;
+    }
+
+    /**
+     * Sets the speed of a {@link Mode#SCALED} replay; 2 replays twice as fast as recorded.
+     *
+     * @param speed the speed, greater than zero
+     */
+    public void setSpeed(final double speed) {
+      ArgumentChecker.isTrue(speed > 0, "speed must be positive");
+      _speed = speed;
+    }
+
+    public double getSpeed() {
+      return _speed;
+    }
+
+    public void setPartitions(final int partitions) {
+      ArgumentChecker.notNegativeOrZero(partitions, "partitions");
+      _partitions = partitions;
+    }
+
+    public int getPartitions() {
+      return _partitions;
+    }
+
+    /**
+     * Sets whether the journal is replayed again from the start once it has finished.
+     *
+     * @param repeat true to replay until poisoned, false to replay once
+     */
+    public void setRepeat(final boolean repeat) {
+      _repeat = repeat;
+    }
+
+    public boolean isRepeat() {
+      return _repeat;
+    }
+
+  }
+
+  /**
+   * Presents the records of one partition as a stream, waiting until each is due before returning its first byte.
+   * A read never returns bytes from more than one record.
+   */
+  private final class PartitionInputStream extends InputStream {
+
+    private final TickJournalReader _reader;
+    private final int _partition;
+    private final long _startNanos;
+    private final long _firstTimestamp;
+    private int _recordOffset;
+    private boolean _eof;
+
+    private PartitionInputStream(final TickJournalReader reader, final int partition, final long startNanos, final long firstTimestamp) {
+      _reader = reader;
+      _partition = partition;
+      _startNanos = startNanos;
+      _firstTimestamp = firstTimestamp;
+    }
+
+    private boolean nextRecord() throws IOException {
+      do {
+        if (!_reader.next()) {
+          return false;
+        }
+      } while ((_partitions > 1) && (((_reader.getKey() & Integer.MAX_VALUE) % _partitions) != _partition));
+      _recordOffset = 0;
+      if (_mode != Mode.AS_FAST_AS_POSSIBLE) {
+        final long due = _startNanos + (long) ((_reader.getTimestamp() - _firstTimestamp) / _speed);
+        long wait = due - System.nanoTime();
+        if (wait < 0) {
+          updateMaxLag(-wait);
+        }
+        while ((wait > 0) && !isPoisoned()) {
+          LockSupport.parkNanos(wait);
+          wait = due - System.nanoTime();
+        }
+      }
+      _recordsReplayed.incrementAndGet();
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final byte[] b = new byte[1];
+      return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+      if (_eof || isPoisoned()) {
+        return -1;
+      }
+      if (length == 0) {
+        return 0;
+      }
+      if (_recordOffset >= _reader.getLength()) {
+        if (!nextRecord()) {
+          _eof = true;
+          return -1;
+        }
+      }
+      final int bytes = _reader.read(_recordOffset, buffer, offset, length);
+      _recordOffset += bytes;
+      return bytes;
+    }
+
+  }
+
+  private final String _filename;
+  private final Mode _mode;
+  private final double _speed;
+  private final int _partitions;
+  private final boolean _repeat;
+  private List<TickJournalReader> _readers;
+  private final AtomicLong _recordsReplayed = new AtomicLong();
+  private final AtomicLong _maxLagNanos = new AtomicLong();
+
+  protected TickJournalConnectorJob(final AbstractConnectorJob.Callback<T> callback, final RecordStream.Factory<T> streamFactory, final ExecutorService pipeLineExecutor,
+      final Factory<T> factory) {
+    super(callback, streamFactory, pipeLineExecutor);
+    ArgumentChecker.notNull(factory.getFilename(), "filename");
+    _filename = factory.getFilename();
+    _mode = factory.getMode();
+    _speed = (_mode == Mode.SCALED) ? factory.getSpeed() : 1.0;
+    _partitions = factory.getPartitions();
+    _repeat = factory.isRepeat();
+  }
+
+  private void updateMaxLag(final long lagNanos) {
+    long max = _maxLagNanos.get();
+    while ((lagNanos > max) && !_maxLagNanos.compareAndSet(max, lagNanos)) {
+      max = _maxLagNanos.get();
+    }
+  }
+
+  /**
+   * Gets the number of records replayed.
+   *
+   * @return the record count
+   */
+  public long getRecordsReplayed() {
+    return _recordsReplayed.get();
+  }
+
+  /**
+   * Gets the furthest any record has fallen behind the time it was due, showing whether the consumers kept up with a
+   * timed replay.
+   *
+   * @return the maximum lag in milliseconds
+   */
+  public double getMaxLagMillis() {
+    return (double) _maxLagNanos.get() / 1e6;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  protected void prepareConnection() {
+    // No-op
+  }
+
+  /**
+   * Opens a reader over the journal for each partition.
+   */
+  @Override
+  protected synchronized void establishConnection() throws IOException {
+    final File file = new File(_filename);
+    final List<TickJournalReader> readers = new ArrayList<TickJournalReader>(_partitions);
+    try {
+      for (int i = 0; i < _partitions; i++) {
+        readers.add(new TickJournalReader(file));
+      }
+    } catch (IOException e) {
+      close(readers);
+      throw e;
+    }
+    s_logger.info("Replaying {} in {} partitions", _filename, _partitions);
+    _readers = readers;
+  }
+
+  @Override
+  protected synchronized void endConnection() {
+    final List<TickJournalReader> readers = _readers;
+    if (readers != null) {
+      _readers = null;
+      close(readers);
+    }
+  }
+
+  private static void close(final List<TickJournalReader> readers) {
+    for (TickJournalReader reader : readers) {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        s_logger.debug("I/O exception caught", e);
+      }
+    }
+  }
+
+  private synchronized List<TickJournalReader> getReaders() throws IOException {
+    final List<TickJournalReader> readers = _readers;
+    if (readers == null) {
+      throw new EOFException("Replay of " + _filename + " stopped");
+    }
+    return readers;
+  }
+
+  /**
+   * Returns the records of a single partition replay.
+   */
+  @Override
+  protected InputStream getInputStream() throws IOException {
+    final TickJournalReader reader = getReaders().get(0);
+    return new PartitionInputStream(reader, 0, System.nanoTime(), reader.getFirstTimestamp());
+  }
+
+  /**
+   * Replays the journal once. A single partition is read as any other connection's stream. Several partitions are each
+   * read by their own thread, and decoded by the pipe-line executor if there is one, so that executor needs a thread
+   * for each partition.
+   */
+  @Override
+  protected void readRecords() throws IOException {
+    try {
+      if (_partitions == 1) {
+        super.readRecords();
+      } else {
+        replayPartitions(getReaders());
+      }
+    } catch (EOFException e) {
+      s_logger.debug("End of journal {}", _filename);
+    } finally {
+      s_logger.info("Replayed {} records", getRecordsReplayed());
+    }
+  }
+
+  private void replayPartitions(final List<TickJournalReader> readers) throws IOException {
+    final long startNanos = System.nanoTime();
+    final long firstTimestamp = readers.get(0).getFirstTimestamp();
+    final List<Thread> threads = new ArrayList<Thread>(_partitions);
+    for (int i = 0; i < _partitions; i++) {
+      final PartitionInputStream input = new PartitionInputStream(readers.get(i), i, startNanos, firstTimestamp);
+      final Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            readRecords(input);
+          } catch (EOFException e) {
+            s_logger.debug("End of partition {}", input._partition);
+          } catch (IOException e) {
+            s_logger.warn("I/O exception caught in partition {} - {}", input._partition, e.toString());
+            s_logger.debug("I/O exception", e);
+          }
+        }
+      }, "TickJournalReplay-" + i);
+      threads.add(thread);
+      thread.start();
+    }
+    try {
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } catch (InterruptedException e) {
+      // Stop the partitions; the readers are closed as the connection ends
+      poison();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  /**
+   * Starts the next replay immediately if the journal is to be repeated.
+   */
+  @Override
+  protected boolean awaitReconnect() {
+    return _repeat && !Thread.currentThread().isInterrupted();
+  }
+
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+
+package com.opengamma.livedata.firehose;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Reads the records of a tick journal written by {@link TickJournalWriter}.
+ * <p>
+ * The file is mapped into memory in windows, so journals larger than can be mapped at once are read without copying
+ * them through a stream. Several readers may be open on the same journal, for example one for each replay partition;
+ * they share the operating system's cached pages.
+ */
+public class TickJournalReader implements Closeable {
+
+  private static final int WINDOW_SIZE = 256 << 20;
+
+  private final RandomAccessFile _file;
+  private final FileChannel _channel;
+  private final long _size;
+  private final long _startTimeMillis;
+  private final long _firstTimestamp;
+  private MappedByteBuffer _buffer;
+  /**
+   * The file offset of the start of the mapped window.
+   */
+  private long _bufferPosition;
+  /**
+   * The file offset of the next record.
+   */
+  private long _next = TickJournalWriter.HEADER_SIZE;
+
+  // The current record
+  private long _dataPosition;
+  private int _length;
+  private int _key;
+  private long _timestamp;
+
+  /**
+   * Opens a journal.
+   *
+   * @param file the journal, not null
+   * @throws IOException if the file cannot be read or is not a journal
+   */
+  public TickJournalReader(final File file) throws IOException {
+    ArgumentChecker.notNull(file, "file");
+    _file = new RandomAccessFile(file, "r");
+    _channel = _file.getChannel();
+    _size = _channel.size();
+    try {
+      if (_size < TickJournalWriter.HEADER_SIZE) {
+        throw new IOException(file + " is not a tick journal");
+      }
+      final MappedByteBuffer header = window(0, TickJournalWriter.HEADER_SIZE);
+      if (header.getInt() != TickJournalWriter.MAGIC) {
+        throw new IOException(file + " is not a tick journal");
+      }
+      final int version = header.getInt();
+      if (version != TickJournalWriter.VERSION) {
+        throw new IOException("Unsupported tick journal version " + version + " in " + file);
+      }
+      _startTimeMillis = header.getLong();
+      _firstTimestamp = readHeader(TickJournalWriter.HEADER_SIZE) ? _timestamp : 0;
+      _length = 0;
+    } catch (IOException e) {
+      _file.close();
+      throw e;
+    }
+  }
+
+  private MappedByteBuffer window(final long position, final int bytes) throws IOException {
+    if ((_buffer == null) || (position < _bufferPosition) || (position + bytes > _bufferPosition + _buffer.capacity())) {
+      _buffer = _channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Math.max(WINDOW_SIZE, bytes), _size - position));
+      _bufferPosition = position;
+    }
+    _buffer.position((int) (position - _bufferPosition));
+    return _buffer;
+  }
+
+  private boolean readHeader(final long position) throws IOException {
+    if (position + TickJournalWriter.RECORD_HEADER_SIZE > _size) {
+      return false;
+    }
+    final MappedByteBuffer buffer = window(position, TickJournalWriter.RECORD_HEADER_SIZE);
+    final int length = buffer.getInt();
+    if ((length <= 0) || (position + TickJournalWriter.RECORD_HEADER_SIZE + length > _size)) {
+      // End of the journal, or a record cut short
+      return false;
+    }
+    _length = length;
+    _key = buffer.getInt();
+    _timestamp = buffer.getLong();
+    _dataPosition = position + TickJournalWriter.RECORD_HEADER_SIZE;
+    return true;
+  }
+
+  /**
+   * Moves to the next record.
+   *
+   * @return true if there is a record, false at the end of the journal
+   * @throws IOException if the journal cannot be read
+   */
+  public boolean next() throws IOException {
+    if (!readHeader(_next)) {
+      _length = 0;
+      return false;
+    }
+    _next = _dataPosition + _length;
+    return true;
+  }
+
+  /**
+   * Gets the wall clock time the journal was started.
+   *
+   * @return the time in milliseconds
+   */
+  public long getStartTimeMillis() {
+    return _startTimeMillis;
+  }
+
+  /**
+   * Gets the time stamp of the first record in the journal, the point replays are timed from.
+   *
+   * @return the time stamp in nanoseconds since the journal was started, zero if the journal is empty
+   */
+  public long getFirstTimestamp() {
+    return _firstTimestamp;
+  }
+
+  /**
+   * Gets the time the current record was received.
+   *
+   * @return the time stamp in nanoseconds since the journal was started
+   */
+  public long getTimestamp() {
+    return _timestamp;
+  }
+
+  /**
+   * Gets the partition key of the current record.
+   *
+   * @return the key
+   */
+  public int getKey() {
+    return _key;
+  }
+
+  /**
+   * Gets the length of the current record.
+   *
+   * @return the length in bytes, zero if there is no current record
+   */
+  public int getLength() {
+    return _length;
+  }
+
+  /**
+   * Copies bytes of the current record.
+   *
+   * @param recordOffset the offset into the record to copy from
+   * @param buffer the buffer to copy to, not null
+   * @param offset the offset into the buffer
+   * @param length the maximum number of bytes to copy
+   * @return the number of bytes copied, -1 if the offset is at the end of the record
+   * @throws IOException if the journal cannot be read
+   */
+  public int read(final int recordOffset, final byte[] buffer, final int offset, final int length) throws IOException {
+    final int bytes = Math.min(length, _length - recordOffset);
+    if (bytes <= 0) {
+      return (length == 0) ? 0 : -1;
+    }
+    window(_dataPosition + recordOffset, bytes).get(buffer, offset, bytes);
+    return bytes;
+  }
+
+  /**
+   * Gets a copy of the current record.
+   *
+   * @return the record, not null
+   * @throws IOException if the journal cannot be read
+   */
+  public byte[] getData() throws IOException {
+    final byte[] data = new byte[_length];
+    read(0, data, 0, _length);
+    return data;
+  }
+
+  @Override
+  public void close() throws IOException {
+    _buffer = null;
+    _file.close();
+  }
+
+}
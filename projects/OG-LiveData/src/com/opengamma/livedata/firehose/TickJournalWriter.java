@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+
+package com.opengamma.livedata.firehose;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Writes a tick journal: a file of length-prefixed records, each holding the raw bytes of one record of a fire hose
+ * stream with the time it was received and a partition key.
+ * <p>
+ * The file starts with a header of the magic number {@link #MAGIC}, the format {@link #VERSION} and the wall clock
+ * time the journal was started, in milliseconds. Each record is the length of its data, which is never zero, the
+ * partition key, the time received in nanoseconds since the journal was started, and the data. A zero length marks
+ * the end of the journal, so a journal left behind by a process that stopped without closing it can still be read.
+ * <p>
+ * The file is written through memory-mapped chunks, so a record is written with a copy into the page cache rather
+ * than a system call. The file is cut back to the end of the last record when the journal is closed.
+ */
+public class TickJournalWriter implements Closeable {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(TickJournalWriter.class);
+
+  /**
+   * The magic number at the start of a journal.
+   */
+  public static final int MAGIC = 0x4F47544A;
+  /**
+   * The version of the format.
+   */
+  public static final int VERSION = 1;
+  /**
+   * The default size of each mapped chunk.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+
+  /* package */static final int HEADER_SIZE = 16;
+  /* package */static final int RECORD_HEADER_SIZE = 16;
+
+  private final RandomAccessFile _file;
+  private final FileChannel _channel;
+  private final int _chunkSize;
+  private final long _startNanos;
+  private MappedByteBuffer _buffer;
+  /**
+   * The file offset of the start of the mapped chunk.
+   */
+  private long _bufferPosition;
+  /**
+   * The file offset the next record is written at.
+   */
+  private long _position;
+  private long _records;
+
+  /**
+   * Creates a journal, replacing any existing file.
+   *
+   * @param file the file to write, not null
+   * @throws IOException if the file cannot be created
+   */
+  public TickJournalWriter(final File file) throws IOException {
+    this(file, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Creates a journal, replacing any existing file.
+   *
+   * @param file the file to write, not null
+   * @param chunkSize the number of bytes to map at a time, greater than zero
+   * @throws IOException if the file cannot be created
+   */
+  public TickJournalWriter(final File file, final int chunkSize) throws IOException {
+    ArgumentChecker.notNull(file, "file");
+    ArgumentChecker.notNegativeOrZero(chunkSize, "chunkSize");
+    _chunkSize = chunkSize;
+    _file = new RandomAccessFile(file, "rw");
+    _file.setLength(0);
+    _channel = _file.getChannel();
+    map(0, HEADER_SIZE);
+    _buffer.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+    _position = HEADER_SIZE;
+    _startNanos = System.nanoTime();
+    s_logger.info("Writing tick journal {}", file);
+  }
+
+  private void map(final long position, final int required) throws IOException {
+    _buffer = _channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(_chunkSize, required));
+    _bufferPosition = position;
+  }
+
+  /**
+   * Appends a record, time stamped now.
+   *
+   * @param key the partition key
+   * @param data the buffer holding the record, not null
+   * @param offset the offset of the record in the buffer
+   * @param length the length of the record, greater than zero
+   * @throws IOException if the record cannot be written
+   */
+  public synchronized void write(final int key, final byte[] data, final int offset, final int length) throws IOException {
+    write(System.nanoTime() - _startNanos, key, data, offset, length);
+  }
+
+  /**
+   * Appends a record.
+   *
+   * @param timestampNanos the time the record was received, in nanoseconds since the journal was started
+   * @param key the partition key
+   * @param data the buffer holding the record, not null
+   * @param offset the offset of the record in the buffer
+   * @param length the length of the record, greater than zero
+   * @throws IOException if the record cannot be written
+   */
+  public synchronized void write(final long timestampNanos, final int key, final byte[] data, final int offset, final int length) throws IOException {
+    ArgumentChecker.notNull(data, "data");
+    ArgumentChecker.notNegativeOrZero(length, "length");
+    if (_buffer == null) {
+      throw new IOException("Journal closed");
+    }
+    final int size = RECORD_HEADER_SIZE + length;
+    if (_position + size > _bufferPosition + _buffer.capacity()) {
+      map(_position, size);
+    }
+    _buffer.position((int) (_position - _bufferPosition));
+    _buffer.putInt(length).putInt(key).putLong(timestampNanos).put(data, offset, length);
+    _position += size;
+    _records++;
+  }
+
+  /**
+   * Gets the number of records written.
+   *
+   * @return the record count
+   */
+  public synchronized long getRecordCount() {
+    return _records;
+  }
+
+  /**
+   * Gets the size of the journal.
+   *
+   * @return the size in bytes
+   */
+  public synchronized long getSize() {
+    return _position;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (_buffer == null) {
+      return;
+    }
+    _buffer.force();
+    _buffer = null;
+    try {
+      _channel.truncate(_position);
+    } finally {
+      _file.close();
+    }
+    s_logger.info("Closed tick journal after {} records, {} bytes", _records, _position);
+  }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import org.fudgemsg.MutableFudgeMsg;
+
+import com.opengamma.livedata.server.FieldHistoryStore;
+
+/**
+ * Applies a rule that cannot be compiled to the contents of a {@link NormalizationBuffer}.
+ * <p>
+ * The buffer is written out as a message, the rule applied to that, and the result loaded back into the buffer.
+ */
+/* package */class AdaptedNormalizationRule implements CompiledNormalizationRule {
+
+  private final NormalizationRule _rule;
+
+  /* package */AdaptedNormalizationRule(NormalizationRule rule) {
+    _rule = rule;
+  }
+
+  @Override
+  public boolean apply(NormalizationBuffer buffer, String securityUniqueId, FieldHistoryStore fieldHistory) {
+    final MutableFudgeMsg msg = _rule.apply(buffer.toMessage(), securityUniqueId, fieldHistory);
+    if (msg == null) {
+      return false;
+    }
+    buffer.load(msg, true);
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "Adapted[" + _rule + "]";
+  }
+
+}
@@ -0,0 +1,24 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+/**
+ * A normalization rule that can be compiled into a {@link CompiledNormalizationRule}.
+ * <p>
+ * The compiled form must have the same effect on a message as {@link #apply}. Rules that do not implement this are
+ * still used by a {@link CompiledNormalizationRuleSet}, applied to a message built from the buffer.
+ */
+public interface CompilableNormalizationRule extends NormalizationRule {
+
+  /**
+   * Compiles the rule, resolving the slots of the fields it uses.
+   * 
+   * @param compiler  the compiler, not null
+   * @return the compiled rule, not null
+   */
+  CompiledNormalizationRule compile(NormalizationCompiler compiler);
+
+}
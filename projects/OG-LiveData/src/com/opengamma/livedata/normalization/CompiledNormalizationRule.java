@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import com.opengamma.livedata.server.FieldHistoryStore;
+
+/**
+ * A normalization rule compiled to work on a {@link NormalizationBuffer}.
+ * <p>
+ * The fields the rule reads and writes are identified by the slots assigned when it was compiled, so applying it
+ * involves no field name lookups and, unlike {@link NormalizationRule#apply}, no new messages.
+ */
+public interface CompiledNormalizationRule {
+
+  /**
+   * Applies the normalization rule, updating the buffer in place.
+   * 
+   * @param buffer  the fields of the message being normalized, not null
+   * @param securityUniqueId  the data provider's unique ID of the security, not null
+   * @param fieldHistory  the distributor-specific field history which the rule may choose to update, not null
+   * @return true to continue, false to prevent the message from being sent to the client
+   */
+  boolean apply(NormalizationBuffer buffer, String securityUniqueId, FieldHistoryStore fieldHistory);
+
+}
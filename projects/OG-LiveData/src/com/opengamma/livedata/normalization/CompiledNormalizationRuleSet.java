@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import java.util.List;
+import java.util.Map;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.livedata.server.FieldHistoryStore;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * An ordered list of normalization rules compiled into a single pass over a {@link NormalizationBuffer}.
+ * <p>
+ * Applying the rules of a {@link NormalizationRuleSet} one after another builds a new message for most of them. Once
+ * compiled, a message is loaded into a buffer, resolving each field name to its slot, the rules update the buffer in
+ * place and the result is written out as one new message. Each thread has its own buffer, reused for every message it
+ * normalizes. Rules that are not {@link CompilableNormalizationRule compilable} are applied to a message built from
+ * the buffer.
+ */
+public class CompiledNormalizationRuleSet {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(CompiledNormalizationRuleSet.class);
+
+  private final FudgeContext _fudgeContext;
+  private final NormalizationRule[] _rules;
+  private final CompiledNormalizationRule[] _compiledRules;
+  private final Map<String, Integer> _slots;
+  private final String[] _slotNames;
+  /**
+   * Whether fields with no slot can be discarded as soon as a message is loaded.
+   */
+  private final boolean _keepUnassigned;
+  private final ThreadLocal<NormalizationBuffer> _buffer = new ThreadLocal<NormalizationBuffer>() {
+    @Override
+    protected NormalizationBuffer initialValue() {
+      return createBuffer();
+    }
+  };
+
+  /**
+   * Compiles a list of rules.
+   *
+   * @param rules  the rules in the order to apply them, not null
+   * @param fudgeContext  the Fudge context for building messages, not null
+   */
+  public CompiledNormalizationRuleSet(List<NormalizationRule> rules, FudgeContext fudgeContext) {
+    ArgumentChecker.notNull(rules, "rules");
+    ArgumentChecker.notNull(fudgeContext, "fudgeContext");
+    _fudgeContext = fudgeContext;
+    _rules = rules.toArray(new NormalizationRule[rules.size()]);
+    _compiledRules = new CompiledNormalizationRule[_rules.length];
+    final NormalizationCompiler compiler = new NormalizationCompiler();
+    for (int i = 0; i < _rules.length; i++) {
+      if (_rules[i] instanceof CompilableNormalizationRule) {
+        _compiledRules[i] = ((CompilableNormalizationRule) _rules[i]).compile(compiler);
+      } else {
+        _compiledRules[i] = new AdaptedNormalizationRule(_rules[i]);
+      }
+    }
+    _slots = compiler.getSlots();
+    _slotNames = compiler.getSlotNames();
+    // A leading field filter discards every field it does not name, and gives all of those names a slot
+    _keepUnassigned = (_rules.length == 0) || (_rules[0].getClass() != FieldFilter.class);
+  }
+
+  private NormalizationBuffer createBuffer() {
+    return new NormalizationBuffer(_fudgeContext, _slots, _slotNames);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets a normalized message, as {@link NormalizationRuleSet#getNormalizedMessage} does.
+   *
+   * @param msg  the message received from the underlying market data API in its native format, not null
+   * @param securityUniqueId  the data provider's unique ID of the security, not null
+   * @param fieldHistory  the history of field values, not null
+   * @return the normalized message, null if one of the normalization rules rejected the message
+   */
+  public FudgeMsg getNormalizedMessage(FudgeMsg msg, String securityUniqueId, FieldHistoryStore fieldHistory) {
+    if (_rules.length == 0) {
+      return _fudgeContext.newMessage(msg);
+    }
+    NormalizationBuffer buffer = _buffer.get();
+    if (buffer.isInUse()) {
+      // A rule is normalizing another message with this rule set on the same thread
+      buffer = createBuffer();
+    }
+    buffer.setInUse(true);
+    try {
+      buffer.load(msg, _keepUnassigned);
+      for (int i = 0; i < _compiledRules.length; i++) {
+        if (!_compiledRules[i].apply(buffer, securityUniqueId, fieldHistory)) {
+          // One of the rules rejected the message entirely.
+          s_logger.debug("Rule {} rejected message {}", _rules[i], msg);
+          return null;
+        }
+      }
+      return buffer.toMessage();
+    } finally {
+      buffer.setInUse(false);
+    }
+  }
+
+}
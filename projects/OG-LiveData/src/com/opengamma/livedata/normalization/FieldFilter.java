@@ -7,6 +7,7 @@ package com.opengamma.livedata.normalization;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Set;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeField;
@@ -22,7 +23,7 @@ import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
  * <p>
  * If no field is accepted, the message is extinguished. 
  */
-public class FieldFilter implements NormalizationRule {
+public class FieldFilter implements CompilableNormalizationRule {
   
   private final Collection<String> _fieldsToAccept;
   private final FudgeContext _context;
@@ -78,5 +79,29 @@ public class FieldFilter implements NormalizationRule {
     
     return normalizedMsg;
   }
-  
+
+  @Override
+  public CompiledNormalizationRule compile(NormalizationCompiler compiler) {
+    final Set<String> fieldsToAccept = new HashSet<String>(_fieldsToAccept);
+    final int[] slots = new int[fieldsToAccept.size()];
+    int i = 0;
+    int maxSlot = -1;
+    for (String field : fieldsToAccept) {
+      slots[i] = compiler.getSlot(field);
+      maxSlot = Math.max(maxSlot, slots[i++]);
+    }
+    final boolean[] accept = new boolean[maxSlot + 1];
+    for (int slot : slots) {
+      accept[slot] = true;
+    }
+    return new CompiledNormalizationRule() {
+      @Override
+      public boolean apply(NormalizationBuffer buffer, String securityUniqueId, FieldHistoryStore fieldHistory) {
+        buffer.retain(accept, fieldsToAccept);
+        // extinguish message if nothing is accepted
+        return !buffer.isEmpty();
+      }
+    };
+  }
+
 }
@@ -12,12 +12,24 @@ import com.opengamma.livedata.server.FieldHistoryStore;
 /**
  * Stores the current state of the message normalization pipeline in the history store.
  */
-public class FieldHistoryUpdater implements NormalizationRule {
+public class FieldHistoryUpdater implements CompilableNormalizationRule {
 
   @Override
   public MutableFudgeMsg apply(MutableFudgeMsg msg, String securityUniqueId, FieldHistoryStore fieldHistory) {
     fieldHistory.liveDataReceived(msg);
     return msg;
   }
-  
+
+  @Override
+  public CompiledNormalizationRule compile(NormalizationCompiler compiler) {
+    return new CompiledNormalizationRule() {
+      @Override
+      public boolean apply(NormalizationBuffer buffer, String securityUniqueId, FieldHistoryStore fieldHistory) {
+        // If this is the last rule, as is usual, the message written out is the one returned to the caller
+        fieldHistory.liveDataReceived(buffer.toMessage());
+        return true;
+      }
+    };
+  }
+
 }
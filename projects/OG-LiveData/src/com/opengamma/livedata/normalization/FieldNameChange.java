@@ -6,6 +6,7 @@
 package com.opengamma.livedata.normalization;
 
 import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeFieldType;
 import org.fudgemsg.MutableFudgeMsg;
 
 import com.opengamma.livedata.server.FieldHistoryStore;
@@ -14,7 +15,7 @@ import com.opengamma.util.ArgumentChecker;
 /**
  * Changes the name of a field, leaving its value and all other fields unaffected.
  */
-public class FieldNameChange implements NormalizationRule {
+public class FieldNameChange implements CompilableNormalizationRule {
   
   private final String _from;
   private final String _to;
@@ -37,4 +38,22 @@ public class FieldNameChange implements NormalizationRule {
     return msg;
   }
 
+  @Override
+  public CompiledNormalizationRule compile(NormalizationCompiler compiler) {
+    final int from = compiler.getSlot(_from);
+    final int to = compiler.getSlot(_to);
+    return new CompiledNormalizationRule() {
+      @Override
+      public boolean apply(NormalizationBuffer buffer, String securityUniqueId, FieldHistoryStore fieldHistory) {
+        if (buffer.isPresent(from)) {
+          FudgeFieldType type = buffer.getType(from);
+          Object value = buffer.getValue(from);
+          buffer.remove(from);
+          buffer.add(to, type, value);
+        }
+        return true;
+      }
+    };
+  }
+
 }
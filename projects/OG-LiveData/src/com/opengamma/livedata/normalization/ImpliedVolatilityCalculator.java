@@ -16,7 +16,7 @@ import com.opengamma.livedata.server.FieldHistoryStore;
  *
  * @author pietari
  */
-public class ImpliedVolatilityCalculator implements NormalizationRule {
+public class ImpliedVolatilityCalculator implements CompilableNormalizationRule {
   
   @Override
   public MutableFudgeMsg apply(MutableFudgeMsg msg, String securityUniqueId, FieldHistoryStore fieldHistory) {
@@ -58,4 +58,38 @@ public class ImpliedVolatilityCalculator implements NormalizationRule {
     return msg;
   }
 
+  @Override
+  public CompiledNormalizationRule compile(NormalizationCompiler compiler) {
+    final int[] preferredSlots = new int[] {
+      compiler.getSlot(MarketDataRequirementNames.BEST_IMPLIED_VOLATILITY),
+      compiler.getSlot(MarketDataRequirementNames.MID_IMPLIED_VOLATILITY),
+      compiler.getSlot(MarketDataRequirementNames.LAST_IMPLIED_VOLATILITY) };
+    final int bidSlot = compiler.getSlot(MarketDataRequirementNames.BID_IMPLIED_VOLATILITY);
+    final int askSlot = compiler.getSlot(MarketDataRequirementNames.ASK_IMPLIED_VOLATILITY);
+    final int impliedVolatilitySlot = compiler.getSlot(MarketDataRequirementNames.IMPLIED_VOLATILITY);
+    return new CompiledNormalizationRule() {
+      @Override
+      public boolean apply(NormalizationBuffer buffer, String securityUniqueId, FieldHistoryStore fieldHistory) {
+        for (int slot : preferredSlots) {
+          Double impliedVolatility = buffer.getDouble(slot);
+          if (impliedVolatility != null) {
+            buffer.add(impliedVolatilitySlot, null, impliedVolatility);
+            return true;
+          }
+        }
+        Double impliedVolatilityBid = buffer.getDouble(bidSlot);
+        Double impliedVolatilityAsk = buffer.getDouble(askSlot);
+        if (impliedVolatilityBid != null && impliedVolatilityAsk != null) {
+          buffer.add(impliedVolatilitySlot, null, (impliedVolatilityBid + impliedVolatilityAsk) / 2);
+          return true;
+        }
+        Double impliedVolatility = fieldHistory.getLastKnownDouble(MarketDataRequirementNames.IMPLIED_VOLATILITY);
+        if (impliedVolatility != null) {
+          buffer.add(impliedVolatilitySlot, null, impliedVolatility);
+        }
+        return true;
+      }
+    };
+  }
+
 }
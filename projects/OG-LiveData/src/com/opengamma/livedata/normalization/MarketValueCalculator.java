@@ -14,7 +14,7 @@ import com.opengamma.livedata.server.FieldHistoryStore;
 /**
  * Calculates a best estimate of the current value of a security.
  */
-public class MarketValueCalculator implements NormalizationRule {
+public class MarketValueCalculator implements CompilableNormalizationRule {
   
   private static final double TOLERANCE = 0.00001;
   private static final double MAX_ACCEPTABLE_SPREAD_TO_USE_MIDPOINT = 0.05;
@@ -113,4 +113,62 @@ public class MarketValueCalculator implements NormalizationRule {
     return msg;
   }
 
+  @Override
+  public CompiledNormalizationRule compile(NormalizationCompiler compiler) {
+    final int bidSlot = compiler.getSlot(MarketDataRequirementNames.BID);
+    final int askSlot = compiler.getSlot(MarketDataRequirementNames.ASK);
+    final int lastSlot = compiler.getSlot(MarketDataRequirementNames.LAST);
+    final int midSlot = compiler.getSlot(MarketDataRequirementNames.MID);
+    final int marketValueSlot = compiler.getSlot(MarketDataRequirementNames.MARKET_VALUE);
+    return new CompiledNormalizationRule() {
+      @Override
+      public boolean apply(NormalizationBuffer buffer, String securityUniqueId, FieldHistoryStore fieldHistory) {
+        // As apply(MutableFudgeMsg...), but only the history values needed are read
+        Double bid = buffer.getDouble(bidSlot);
+        if (bid == null) {
+          bid = fieldHistory.getLastKnownDouble(MarketDataRequirementNames.BID);
+        }
+        Double ask = buffer.getDouble(askSlot);
+        if (ask == null) {
+          ask = fieldHistory.getLastKnownDouble(MarketDataRequirementNames.ASK);
+        }
+        if (bid != null && ask != null) {
+          if (Math.abs(bid) > TOLERANCE && (Math.abs(ask - bid) / Math.abs(bid) > MAX_ACCEPTABLE_SPREAD_TO_USE_MIDPOINT)) {
+            Double last = fieldHistory.getLastKnownDouble(MarketDataRequirementNames.LAST);
+            if (last == null) {
+              last = buffer.getDouble(lastSlot);
+            }
+            if (last != null) {
+              if (last < bid) {
+                buffer.add(marketValueSlot, null, bid);
+              } else if (last > ask) {
+                buffer.add(marketValueSlot, null, ask);
+              } else {
+                buffer.add(marketValueSlot, null, last);
+              }
+              return true;
+            }
+          }
+          buffer.add(marketValueSlot, null, (bid + ask) / 2.0);
+          return true;
+        }
+        Double mid = buffer.getDouble(midSlot);
+        if (mid != null) {
+          buffer.add(marketValueSlot, null, mid);
+          return true;
+        }
+        Double last = buffer.getDouble(lastSlot);
+        if (last != null) {
+          buffer.add(marketValueSlot, null, last);
+          return true;
+        }
+        Double lastKnownMarketValue = fieldHistory.getLastKnownDouble(MarketDataRequirementNames.MARKET_VALUE);
+        if (lastKnownMarketValue != null) {
+          buffer.add(marketValueSlot, null, lastKnownMarketValue);
+        }
+        return true;
+      }
+    };
+  }
+
 }
@@ -0,0 +1,304 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeFieldType;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+
+/**
+ * The fields of a message being normalized by a {@link CompiledNormalizationRuleSet}.
+ * <p>
+ * Each field name used by the rules of the set has a fixed slot, assigned by the {@link NormalizationCompiler}. The
+ * first field in a message with one of those names is held in its slot; other fields, including repeated names, are
+ * held after the slots. The order in which fields were added is kept, so the message written out has its fields in
+ * the same order as if the rules had been applied to a {@code MutableFudgeMsg}: removing a field and adding it again
+ * moves it to the end.
+ * <p>
+ * A buffer is reused for message after message by one thread. Its arrays only grow, so once it has seen the largest
+ * message normalizing a tick allocates nothing besides the values the rules calculate and the message written out.
+ */
+public final class NormalizationBuffer {
+
+  private static final int INITIAL_EXTRA_CAPACITY = 16;
+
+  private final FudgeContext _fudgeContext;
+  private final Map<String, Integer> _slots;
+  private final int _slotCount;
+
+  // Parallel arrays, indexed by slot and then by the position of extra fields
+  private String[] _names;
+  private Integer[] _ordinals;
+  private FudgeFieldType[] _types;
+  private Object[] _values;
+  /**
+   * The index into {@link #_sequence} at which each field was last added.
+   */
+  private int[] _positions;
+  private int _extraCount;
+
+  /**
+   * The fields in the order they were added. An entry is stale if the field has since been removed or added again.
+   */
+  private int[] _sequence;
+  private int _sequenceLength;
+
+  /**
+   * The message last written out, discarded when the buffer is modified.
+   */
+  private MutableFudgeMsg _message;
+  private boolean _inUse;
+
+  /* package */NormalizationBuffer(FudgeContext fudgeContext, Map<String, Integer> slots, String[] slotNames) {
+    _fudgeContext = fudgeContext;
+    _slots = slots;
+    _slotCount = slotNames.length;
+    final int capacity = _slotCount + INITIAL_EXTRA_CAPACITY;
+    _names = Arrays.copyOf(slotNames, capacity);
+    _ordinals = new Integer[capacity];
+    _types = new FudgeFieldType[capacity];
+    _values = new Object[capacity];
+    _positions = new int[capacity];
+    _sequence = new int[capacity];
+  }
+
+  //-------------------------------------------------------------------------
+  /* package */boolean isInUse() {
+    return _inUse;
+  }
+
+  /* package */void setInUse(boolean inUse) {
+    _inUse = inUse;
+    if (!inUse) {
+      // Don't hold on to the message returned to the caller
+      _message = null;
+    }
+  }
+
+  private void clear() {
+    final int size = _slotCount + _extraCount;
+    Arrays.fill(_ordinals, 0, size, null);
+    Arrays.fill(_types, 0, size, null);
+    Arrays.fill(_values, 0, size, null);
+    Arrays.fill(_names, _slotCount, size, null);
+    _extraCount = 0;
+    _sequenceLength = 0;
+    _message = null;
+  }
+
+  /**
+   * Replaces the contents of the buffer with the fields of a message.
+   *
+   * @param msg  the message, not null
+   * @param keepUnassigned  false to discard the fields whose names have no slot, true to keep them
+   */
+  /* package */void load(FudgeMsg msg, boolean keepUnassigned) {
+    clear();
+    for (FudgeField field : msg) {
+      final String name = field.getName();
+      final Integer ordinal = (field.getOrdinal() != null) ? Integer.valueOf(field.getOrdinal().intValue()) : null;
+      final Integer slot = (name != null) ? _slots.get(name) : null;
+      if (slot == null) {
+        if (keepUnassigned) {
+          addExtra(name, ordinal, field.getType(), field.getValue());
+        }
+      } else if (_values[slot] == null) {
+        set(slot, ordinal, field.getType(), field.getValue());
+      } else {
+        addExtra(name, ordinal, field.getType(), field.getValue());
+      }
+    }
+  }
+
+  private void set(int index, Integer ordinal, FudgeFieldType type, Object value) {
+    _ordinals[index] = ordinal;
+    _types[index] = type;
+    _values[index] = value;
+    if (_sequenceLength == _sequence.length) {
+      _sequence = Arrays.copyOf(_sequence, _sequence.length * 2);
+    }
+    _positions[index] = _sequenceLength;
+    _sequence[_sequenceLength++] = index;
+    _message = null;
+  }
+
+  private void addExtra(String name, Integer ordinal, FudgeFieldType type, Object value) {
+    final int index = _slotCount + _extraCount;
+    if (index == _values.length) {
+      final int capacity = _values.length * 2;
+      _names = Arrays.copyOf(_names, capacity);
+      _ordinals = Arrays.copyOf(_ordinals, capacity);
+      _types = Arrays.copyOf(_types, capacity);
+      _values = Arrays.copyOf(_values, capacity);
+      _positions = Arrays.copyOf(_positions, capacity);
+    }
+    _extraCount++;
+    _names[index] = name;
+    set(index, ordinal, type, value);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Checks if the field in a slot is present.
+   *
+   * @param slot  the slot
+   * @return true if present
+   */
+  public boolean isPresent(int slot) {
+    return _values[slot] != null;
+  }
+
+  /**
+   * Checks if the buffer holds no fields.
+   *
+   * @return true if empty
+   */
+  public boolean isEmpty() {
+    final int size = _slotCount + _extraCount;
+    for (int i = 0; i < size; i++) {
+      if (_values[i] != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the value of the field in a slot.
+   *
+   * @param slot  the slot
+   * @return the value, null if not present
+   */
+  public Object getValue(int slot) {
+    return _values[slot];
+  }
+
+  /**
+   * Gets the type of the field in a slot.
+   *
+   * @param slot  the slot
+   * @return the type, null if not present or inferred from the value
+   */
+  public FudgeFieldType getType(int slot) {
+    return _types[slot];
+  }
+
+  /**
+   * Gets the value of the field in a slot as a double.
+   *
+   * @param slot  the slot
+   * @return the value, null if not present or not a number
+   */
+  public Double getDouble(int slot) {
+    return toDouble(_values[slot]);
+  }
+
+  /**
+   * Converts a field value to a double.
+   *
+   * @param value  the value, may be null
+   * @return the value, null if not a number
+   */
+  public static Double toDouble(Object value) {
+    if (value instanceof Double) {
+      return (Double) value;
+    }
+    if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    }
+    return null;
+  }
+
+  /**
+   * Adds a field, as {@link MutableFudgeMsg#add(String, Integer, FudgeFieldType, Object)} would. If the slot already
+   * holds a field the new one is added after it with the same name.
+   *
+   * @param slot  the slot
+   * @param type  the type, null to infer from the value
+   * @param value  the value, not null
+   */
+  public void add(int slot, FudgeFieldType type, Object value) {
+    if (_values[slot] == null) {
+      set(slot, null, type, value);
+    } else {
+      addExtra(_names[slot], null, type, value);
+    }
+  }
+
+  /**
+   * Removes a field and any others with the same name, as {@link MutableFudgeMsg#remove(String)} would.
+   *
+   * @param slot  the slot
+   */
+  public void remove(int slot) {
+    _ordinals[slot] = null;
+    _types[slot] = null;
+    _values[slot] = null;
+    if (_extraCount > 0) {
+      final String name = _names[slot];
+      final int size = _slotCount + _extraCount;
+      for (int i = _slotCount; i < size; i++) {
+        if (name.equals(_names[i])) {
+          _values[i] = null;
+        }
+      }
+    }
+    _message = null;
+  }
+
+  /**
+   * Removes all of the fields other than those in the given slots or with the given names. Fields without a name
+   * are always removed.
+   *
+   * @param slots  true for each slot whose field is kept, not null
+   * @param names  the names of the fields kept, not null
+   */
+  public void retain(boolean[] slots, Set<String> names) {
+    for (int i = 0; i < _slotCount; i++) {
+      if ((_values[i] != null) && ((i >= slots.length) || !slots[i])) {
+        _values[i] = null;
+      }
+    }
+    final int size = _slotCount + _extraCount;
+    for (int i = _slotCount; i < size; i++) {
+      if ((_values[i] != null) && ((_names[i] == null) || !names.contains(_names[i]))) {
+        _values[i] = null;
+      }
+    }
+    _message = null;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Writes the fields out as a message. The same message is returned until the buffer is next modified.
+   *
+   * @return the message, not null
+   */
+  public MutableFudgeMsg toMessage() {
+    if (_message == null) {
+      final MutableFudgeMsg msg = _fudgeContext.newMessage();
+      for (int i = 0; i < _sequenceLength; i++) {
+        final int index = _sequence[i];
+        if ((_values[index] != null) && (_positions[index] == i)) {
+          if (_types[index] != null) {
+            msg.add(_names[index], _ordinals[index], _types[index], _values[index]);
+          } else {
+            msg.add(_names[index], _ordinals[index], _values[index]);
+          }
+        }
+      }
+      _message = msg;
+    }
+    return _message;
+  }
+
+}
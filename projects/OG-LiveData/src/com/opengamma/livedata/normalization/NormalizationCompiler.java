@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Assigns buffer slots to the field names used by the rules of a {@link CompiledNormalizationRuleSet}.
+ * <p>
+ * Each distinct name used by any rule is given one slot, so the rules of a set address the same field by the same slot
+ * and the names are only looked up when a message is loaded into the buffer.
+ */
+public class NormalizationCompiler {
+
+  private final Map<String, Integer> _slots = new HashMap<String, Integer>();
+  private final List<String> _names = new ArrayList<String>();
+
+  /* package */NormalizationCompiler() {
+  }
+
+  /**
+   * Gets the slot for a field name, assigning one if the name has not been used before.
+   * 
+   * @param fieldName  the field name, not null
+   * @return the slot
+   */
+  public int getSlot(String fieldName) {
+    ArgumentChecker.notNull(fieldName, "fieldName");
+    Integer slot = _slots.get(fieldName);
+    if (slot == null) {
+      slot = _names.size();
+      _slots.put(fieldName, slot);
+      _names.add(fieldName);
+    }
+    return slot;
+  }
+
+  /* package */Map<String, Integer> getSlots() {
+    return _slots;
+  }
+
+  /* package */String[] getSlotNames() {
+    return _names.toArray(new String[_names.size()]);
+  }
+
+}
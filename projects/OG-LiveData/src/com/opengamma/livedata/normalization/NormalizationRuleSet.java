@@ -10,7 +10,6 @@ import java.util.Collections;
 import java.util.List;
 
 import org.fudgemsg.FudgeMsg;
-import org.fudgemsg.MutableFudgeMsg;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +29,7 @@ public class NormalizationRuleSet {
   private final String _id;
   private final String _jmsTopicSuffix;
   private final List<NormalizationRule> _rules;
+  private final CompiledNormalizationRuleSet _compiledRules;
   
   /* Useful for tests */
   public NormalizationRuleSet(String id) {
@@ -56,12 +56,14 @@ public class NormalizationRuleSet {
     }
     
     _rules = new ArrayList<NormalizationRule>(rules);    
+    _compiledRules = new CompiledNormalizationRuleSet(_rules, OpenGammaFudgeContext.getInstance());
   }
   
   /**
    * Gets a normalized message.
    * This is done by applying the set of normalization rules
-   * to the raw message. 
+   * to the raw message, compiled into a single pass by
+   * {@link CompiledNormalizationRuleSet}. 
    * 
    * @param msg message received from underlying market data API in its native format.
    * @param securityUniqueId  the data provider's unique ID of the security, not null
@@ -70,15 +72,7 @@ public class NormalizationRuleSet {
    * rejected the message.
    */
   public FudgeMsg getNormalizedMessage(FudgeMsg msg, String securityUniqueId, FieldHistoryStore fieldHistory) {
-    MutableFudgeMsg normalizedMsg = OpenGammaFudgeContext.getInstance().newMessage(msg);
-    for (NormalizationRule rule : _rules) {
-      normalizedMsg = rule.apply(normalizedMsg, securityUniqueId, fieldHistory);
-      if (normalizedMsg == null) {
-        // One of the rules rejected the message entirely.
-        s_logger.debug("Rule {} in rule set {} rejected message {}", new Object[] {rule, getId(), normalizedMsg});
-        break;
-      }
-    }
+    FudgeMsg normalizedMsg = _compiledRules.getNormalizedMessage(msg, securityUniqueId, fieldHistory);
     s_logger.debug("Applying rule set {} to message {} produced normalized message {}", new Object[] {getId(), msg, normalizedMsg});
     return normalizedMsg;
   }
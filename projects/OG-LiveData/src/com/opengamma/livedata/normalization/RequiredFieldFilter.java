@@ -17,7 +17,7 @@ import com.opengamma.livedata.server.FieldHistoryStore;
 /**
  * Rejects any update that doesn't contain a set of fields.
  */
-public class RequiredFieldFilter implements NormalizationRule {
+public class RequiredFieldFilter implements CompilableNormalizationRule {
 
   /**
    * The field names that must be present.
@@ -70,4 +70,24 @@ public class RequiredFieldFilter implements NormalizationRule {
     return null;
   }
 
+  @Override
+  public CompiledNormalizationRule compile(NormalizationCompiler compiler) {
+    final int[] required = new int[getRequiredFieldNames().size()];
+    int i = 0;
+    for (String fieldName : getRequiredFieldNames()) {
+      required[i++] = compiler.getSlot(fieldName);
+    }
+    return new CompiledNormalizationRule() {
+      @Override
+      public boolean apply(NormalizationBuffer buffer, String securityUniqueId, FieldHistoryStore fieldHistory) {
+        for (int slot : required) {
+          if (!buffer.isPresent(slot)) {
+            return false;
+          }
+        }
+        return true;
+      }
+    };
+  }
+
 }
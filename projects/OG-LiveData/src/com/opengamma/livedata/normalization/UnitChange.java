@@ -13,7 +13,7 @@ import com.opengamma.util.ArgumentChecker;
 /**
  * Multiplies the value of a {@code Double} field by a constant.
  */
-public class UnitChange implements NormalizationRule {
+public class UnitChange implements CompilableNormalizationRule {
   
   private final String _field;
   private final double _multiplier;
@@ -38,5 +38,22 @@ public class UnitChange implements NormalizationRule {
     }
     return msg;
   }
-  
+
+  @Override
+  public CompiledNormalizationRule compile(NormalizationCompiler compiler) {
+    final int field = compiler.getSlot(_field);
+    final double multiplier = _multiplier;
+    return new CompiledNormalizationRule() {
+      @Override
+      public boolean apply(NormalizationBuffer buffer, String securityUniqueId, FieldHistoryStore fieldHistory) {
+        Double value = buffer.getDouble(field);
+        if (value != null) {
+          buffer.remove(field);
+          buffer.add(field, null, value * multiplier);
+        }
+        return true;
+      }
+    };
+  }
+
 }
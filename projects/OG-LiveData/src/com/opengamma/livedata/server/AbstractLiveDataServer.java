@@ -10,14 +10,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.fudgemsg.FudgeMsg;
 import org.slf4j.Logger;
@@ -39,6 +39,7 @@ import com.opengamma.livedata.msg.SubscriptionType;
 import com.opengamma.livedata.normalization.StandardRules;
 import com.opengamma.livedata.resolver.DistributionSpecificationResolver;
 import com.opengamma.livedata.resolver.NaiveDistributionSpecificationResolver;
+import com.opengamma.livedata.server.distribution.ConflatingDistributionPool;
 import com.opengamma.livedata.server.distribution.EmptyMarketDataSenderFactory;
 import com.opengamma.livedata.server.distribution.MarketDataDistributor;
 import com.opengamma.livedata.server.distribution.MarketDataSenderFactory;
@@ -57,22 +58,15 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
       .getLogger(AbstractLiveDataServer.class);
   
   private volatile MarketDataSenderFactory _marketDataSenderFactory = new EmptyMarketDataSenderFactory();
+  private volatile ConflatingDistributionPool _distributionPool;
   private final Collection<SubscriptionListener> _subscriptionListeners = new CopyOnWriteArrayList<SubscriptionListener>();
   
-  /** Access controlled via _subscriptionLock */
-  private final Set<Subscription> _currentlyActiveSubscriptions = new HashSet<Subscription>();
-  
-  /** _Write_ access controlled via _subscriptionLock */
-  private final Map<String, Subscription> _securityUniqueId2Subscription = new ConcurrentHashMap<String, Subscription>();
-  
-  /** Access controlled via _subscriptionLock */
-  private final Map<LiveDataSpecification, MarketDataDistributor> _fullyQualifiedSpec2Distributor = new HashMap<LiveDataSpecification, MarketDataDistributor>();
+  /** _Write_ access controlled via the registry's shard locks, reads are lock free */
+  private final SubscriptionRegistry _subscriptions = new SubscriptionRegistry();
 
   private final AtomicLong _numMarketDataUpdatesReceived = new AtomicLong(0);
   private final PerformanceCounter _performanceCounter;
 
-  private final Lock _subscriptionLock = new ReentrantLock();
-
   private DistributionSpecificationResolver _distributionSpecificationResolver = new NaiveDistributionSpecificationResolver();
   private LiveDataEntitlementChecker _entitlementChecker = new PermissiveLiveDataEntitlementChecker();
   
@@ -115,6 +109,22 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
     _marketDataSenderFactory = marketDataSenderFactory;
   }
 
+  public ConflatingDistributionPool getDistributionPool() {
+    return _distributionPool;
+  }
+
+  /**
+   * Sets the pool used to send conflated market data. When set, distributors created for new subscriptions
+   * merge ticks into a pending message which is sent by the pool's threads, rather than sending each tick
+   * on the thread that receives it. The pool is started and stopped with the server, so should be set before the
+   * server is started.
+   * 
+   * @param distributionPool the pool, or null to send each tick as it is received
+   */
+  public void setDistributionPool(ConflatingDistributionPool distributionPool) {
+    _distributionPool = distributionPool;
+  }
+
   public void addSubscriptionListener(SubscriptionListener subscriptionListener) {
     ArgumentChecker.notNull(subscriptionListener, "Subscription Listener");
     _subscriptionListeners.add(subscriptionListener);
@@ -155,6 +165,9 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
    * The return value is a map from unique ID to subscription handle.
    * The map must contain an entry for each <code>uniqueId</code>.
    * Failure to subscribe to any <code>uniqueId</code> should result in an exception being thrown. 
+   * <p>
+   * This is called without any subscription lock held, so may be called by several threads
+   * at once for different securities.
    * 
    * @param uniqueIds A collection of unique IDs. Not null. May be empty.
    * @return Subscription handles corresponding to the unique IDs.
@@ -165,6 +178,9 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
   /**
    * Unsubscribes to the given ticker(s) using the underlying market
    * data provider.
+   * <p>
+   * This is called without any subscription lock held, after the subscriptions have been
+   * removed, so may be called by several threads at once.
    *  
    * @param subscriptionHandles
    *          Subscription handle(s) returned by {@link #doSubscribe(Collection uniqueIds)}.
@@ -178,6 +194,8 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
    * @return The return value is a map from unique ID to subscription handle.
    * The map must contain an entry for each <code>uniqueId</code>.
    * Failure to snapshot any <code>uniqueId</code> should result in an exception being thrown. 
+   * <p>
+   * This is called without any subscription lock held.
    * @param uniqueIds Not null. May be empty.
    * @throws RuntimeException If the snapshot could not be obtained.
    */
@@ -249,20 +267,20 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
   }
   
   void reestablishSubscriptions() {
-    _subscriptionLock.lock();
+    List<Lock> locks = _subscriptions.lockAll();
     try {
-      Set<String> securities = _securityUniqueId2Subscription.keySet();
+      Set<String> securities = _subscriptions.getSecurityUniqueIds();
       try {
         Map<String, Object> subscriptions = doSubscribe(securities);
         for (Entry<String, Object> entry : subscriptions.entrySet()) {
-          Subscription subscription = _securityUniqueId2Subscription.get(entry.getKey());
+          Subscription subscription = _subscriptions.getSubscription(entry.getKey());
           subscription.setHandle(entry.getValue());
         }
       } catch (RuntimeException e) {
         s_logger.error("Could not reestablish subscription to {}", new Object[] {securities}, e);
       }
     } finally {
-      _subscriptionLock.unlock();
+      _subscriptions.unlock(locks);
     }
   }
   
@@ -279,6 +297,10 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
 
   @Override
   public synchronized void start() {
+    final ConflatingDistributionPool distributionPool = getDistributionPool();
+    if (distributionPool != null) {
+      distributionPool.start();
+    }
     if (getConnectionStatus() == ConnectionStatus.NOT_CONNECTED) {
       connect();
     }
@@ -289,6 +311,11 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
     if (getConnectionStatus() == ConnectionStatus.CONNECTED) {
       disconnect();
     }
+    // Stopped after the connection so that the last ticks received are flushed
+    final ConflatingDistributionPool distributionPool = getDistributionPool();
+    if (distributionPool != null) {
+      distributionPool.stop();
+    }
   }
   
   public synchronized void connect() {
@@ -378,24 +405,45 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
     Collection<LiveDataSubscriptionResponse> responses = new ArrayList<LiveDataSubscriptionResponse>();
     Map<String, Subscription> securityUniqueId2NewSubscription = new HashMap<String, Subscription>();
     Map<String, LiveDataSpecification> securityUniqueId2SpecFromClient = new HashMap<String, LiveDataSpecification>();
+    List<PendingAttachment> attachedToPending = new ArrayList<PendingAttachment>();
+    
+    // Resolution needs no lock; only the shards of the securities being subscribed to are locked
+    Map<LiveDataSpecification, DistributionSpecification> distrSpecs = getDistributionSpecificationResolver().resolve(liveDataSpecificationsFromClient);
+    List<LiveDataSpecification> specsFromClient = new ArrayList<LiveDataSpecification>(liveDataSpecificationsFromClient.size());
+    List<String> securityUniqueIds = new ArrayList<String>(liveDataSpecificationsFromClient.size());
+    for (LiveDataSpecification specFromClient : liveDataSpecificationsFromClient) {
+      
+      // this is the only place where subscribe() can 'partially' fail
+      DistributionSpecification distributionSpec = distrSpecs.get(specFromClient);
+      
+      if (distributionSpec == null) {
+        s_logger.info("Unable to work out distribution spec for specification " + specFromClient);
+        responses.add(getErrorResponse(specFromClient, LiveDataSubscriptionResult.NOT_PRESENT, "Unable to work out distribution spec"));
+        continue;
+      }
+      
+      LiveDataSpecification fullyQualifiedSpec = distributionSpec.getFullyQualifiedLiveDataSpecification();
+      String securityUniqueId = fullyQualifiedSpec.getIdentifier(getUniqueIdDomain());
+      if (securityUniqueId == null) {
+        responses.add(getErrorResponse(specFromClient, LiveDataSubscriptionResult.INTERNAL_ERROR,
+            "Qualified spec " + fullyQualifiedSpec + " does not contain ID of domain " + getUniqueIdDomain()));
+        continue;
+      }
+      specsFromClient.add(specFromClient);
+      securityUniqueIds.add(securityUniqueId);
+    }
     
-    _subscriptionLock.lock();
+    // Phase 1: under the shard locks, attach to existing subscriptions and register the new ones as pending so that a
+    // concurrent request for the same security attaches to them rather than subscribing again
+    List<Lock> locks = _subscriptions.lock(securityUniqueIds);
     try {
     
-      Map<LiveDataSpecification, DistributionSpecification> distrSpecs = getDistributionSpecificationResolver().resolve(liveDataSpecificationsFromClient);
-      for (LiveDataSpecification specFromClient : liveDataSpecificationsFromClient) {
-        
-        // this is the only place where subscribe() can 'partially' fail
+      for (int i = 0; i < specsFromClient.size(); i++) {
+        LiveDataSpecification specFromClient = specsFromClient.get(i);
         DistributionSpecification distributionSpec = distrSpecs.get(specFromClient);
-        
-        if (distributionSpec == null) {
-          s_logger.info("Unable to work out distribution spec for specification " + specFromClient);
-          responses.add(getErrorResponse(specFromClient, LiveDataSubscriptionResult.NOT_PRESENT, "Unable to work out distribution spec"));
-          continue;
-        }
-        
         LiveDataSpecification fullyQualifiedSpec = distributionSpec.getFullyQualifiedLiveDataSpecification();
       
+        String securityUniqueId = securityUniqueIds.get(i);
         Subscription subscription = getSubscription(fullyQualifiedSpec);
         if (subscription != null) {
           s_logger.info("Already subscribed to {}", fullyQualifiedSpec);
@@ -403,17 +451,27 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
           subscription.createDistributor(distributionSpec, persistent);
     
           responses.add(getSubscriptionResponse(specFromClient, distributionSpec));                    
+          continue;
+        }
+        subscription = securityUniqueId2NewSubscription.get(securityUniqueId);
+        if (subscription == null) {
+          // One still being created by a concurrent request has no published distributor yet
+          subscription = _subscriptions.getSubscription(securityUniqueId);
+          if ((subscription != null) && _subscriptions.isActive(subscription)) {
+            subscription = null;
+          }
+        }
+        if (subscription != null) {
+          s_logger.info("Attaching to pending subscription for {}", fullyQualifiedSpec);
+          
+          subscription.createDistributor(distributionSpec, persistent);
+          
+          // The response waits until the underlying subscription has been created, or has failed
+          attachedToPending.add(new PendingAttachment(specFromClient, distributionSpec, subscription));
     
         } else {
     
-          String securityUniqueId = fullyQualifiedSpec.getIdentifier(getUniqueIdDomain());
-          if (securityUniqueId == null) {
-            responses.add(getErrorResponse(specFromClient, LiveDataSubscriptionResult.INTERNAL_ERROR,
-                "Qualified spec " + fullyQualifiedSpec + " does not contain ID of domain " + getUniqueIdDomain()));
-            continue;
-          }
-          
-          subscription = new Subscription(securityUniqueId, getMarketDataSenderFactory());
+          subscription = new Subscription(securityUniqueId, getMarketDataSenderFactory(), getDistributionPool());
           subscription.createDistributor(distributionSpec, persistent);
           securityUniqueId2NewSubscription.put(subscription.getSecurityUniqueId(), subscription);
           securityUniqueId2SpecFromClient.put(subscription.getSecurityUniqueId(), specFromClient);
@@ -423,6 +481,77 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
       //Allow checks here, before we do the snapshot or the subscribe
       checkSubscribe(securityUniqueId2NewSubscription.keySet());
       
+      for (Subscription subscription : securityUniqueId2NewSubscription.values()) {
+        // this is necessary so we don't lose any updates immediately after doSubscribe(). See AbstractLiveDataServer#liveDataReceived()
+        // and how it calls AbstractLiveDataServer#getSubscription()
+        _subscriptions.addPending(subscription);
+      }
+      
+    } finally {
+      _subscriptions.unlock(locks);
+    }
+    
+    if (!securityUniqueId2NewSubscription.isEmpty()) {
+      try {
+        createSubscriptions(securityUniqueId2NewSubscription, securityUniqueId2SpecFromClient, distrSpecs, responses);
+      } finally {
+        // Fails any that were not activated, including when an exception is thrown, releasing requests attached to them
+        for (Subscription subscription : securityUniqueId2NewSubscription.values()) {
+          subscription.creationComplete(false);
+        }
+      }
+    }
+    
+    for (PendingAttachment attachment : attachedToPending) {
+      responses.add(attachment.awaitResponse());
+    }
+    
+    return responses;
+  }
+
+  /**
+   * A request for a subscription that was pending when the request was made, whose response depends on the outcome of
+   * creating the underlying subscription.
+   */
+  private final class PendingAttachment {
+    
+    private final LiveDataSpecification _specFromClient;
+    private final DistributionSpecification _distributionSpec;
+    private final Subscription _subscription;
+    
+    private PendingAttachment(LiveDataSpecification specFromClient, DistributionSpecification distributionSpec, Subscription subscription) {
+      _specFromClient = specFromClient;
+      _distributionSpec = distributionSpec;
+      _subscription = subscription;
+    }
+    
+    private LiveDataSubscriptionResponse awaitResponse() {
+      try {
+        if (_subscription.awaitCreation()) {
+          return getSubscriptionResponse(_specFromClient, _distributionSpec);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return getErrorResponse(_specFromClient, LiveDataSubscriptionResult.INTERNAL_ERROR,
+            "Interrupted waiting for the subscription to " + _subscription.getSecurityUniqueId() + " to be created");
+      }
+      return getErrorResponse(_specFromClient, LiveDataSubscriptionResult.INTERNAL_ERROR,
+          "Subscription to " + _subscription.getSecurityUniqueId() + " could not be created");
+    }
+    
+  }
+
+  /**
+   * Creates the pending subscriptions in the underlying market data API and activates those it returns a handle for.
+   * Any it does not return a handle for are removed and their requests failed.
+   */
+  private void createSubscriptions(Map<String, Subscription> securityUniqueId2NewSubscription, Map<String, LiveDataSpecification> securityUniqueId2SpecFromClient,
+      Map<LiveDataSpecification, DistributionSpecification> distrSpecs, Collection<LiveDataSubscriptionResponse> responses) {
+    // The underlying market data API is called without any lock held so that a slow call does not hold up other
+    // subscription changes to the same shards
+    Map<String, Object> subscriptionHandles;
+    try {
+      
       // In some cases, the underlying market data API may not, when the subscription is started,
       // return a full image of all fields. If so, we need to get the full image explicitly.
       Collection<String> newSubscriptionsForWhichSnapshotIsRequired = new ArrayList<String>();
@@ -438,70 +567,74 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
         Subscription subscription = securityUniqueId2NewSubscription.get(snapshot.getKey());
         subscription.initialSnapshotReceived(snapshot.getValue());
       }
-    
-      // Setup the subscriptions in the underlying data provider.
-      for (Subscription subscription : securityUniqueId2NewSubscription.values()) {
-        // this is necessary so we don't lose any updates immediately after doSubscribe(). See AbstractLiveDataServer#liveDataReceived()
-        // and how it calls AbstractLiveDataServer#getSubscription()
-        _securityUniqueId2Subscription.put(subscription.getSecurityUniqueId(), subscription); 
-      }
 
       s_logger.info("Creating underlying market data API subscription to {}", securityUniqueId2NewSubscription.keySet());
-      Map<String, Object> subscriptionHandles = doSubscribe(securityUniqueId2NewSubscription.keySet());
+      subscriptionHandles = doSubscribe(securityUniqueId2NewSubscription.keySet());
+      
+    } catch (RuntimeException e) {
+      
+      s_logger.info("Unexpected exception thrown when subscribing. Cleaning up.");
+      
+      List<Lock> locks = _subscriptions.lock(securityUniqueId2NewSubscription.keySet());
+      try {
+        for (Subscription subscription : securityUniqueId2NewSubscription.values()) {
+          _subscriptions.remove(subscription);
+        }
+      } finally {
+        _subscriptions.unlock(locks);
+      }
+      
+      throw e;
+        
+    }
     
-      // Set up data structures
-      for (Map.Entry<String, Object> subscriptionHandle : subscriptionHandles.entrySet()) {
-        String securityUniqueId = subscriptionHandle.getKey();
-        Object handle = subscriptionHandle.getValue();
+    // Phase 2: under the shard locks again, activate the subscriptions and publish their distributors
+    List<Subscription> activated = new ArrayList<Subscription>(subscriptionHandles.size());
+    List<Lock> locks = _subscriptions.lock(securityUniqueId2NewSubscription.keySet());
+    try {
+    
+      for (Map.Entry<String, Subscription> newSubscription : securityUniqueId2NewSubscription.entrySet()) {
+        String securityUniqueId = newSubscription.getKey();
         LiveDataSpecification specFromClient = securityUniqueId2SpecFromClient.get(securityUniqueId);
+        Subscription subscription = newSubscription.getValue();
         
-        Subscription subscription = securityUniqueId2NewSubscription.get(securityUniqueId); 
-        subscription.setHandle(handle);
-         
-        _currentlyActiveSubscriptions.add(subscription);
-
-        if (subscription.getDistributionSpecifications().size() != 1) {
+        if (!subscriptionHandles.containsKey(securityUniqueId)) {
+          s_logger.warn("No subscription handle returned for {}", securityUniqueId);
+          _subscriptions.remove(subscription);
           responses.add(getErrorResponse(specFromClient, LiveDataSubscriptionResult.INTERNAL_ERROR,
-              "The subscription should only have 1 distribution specification at the moment: " + subscription));
+              "Underlying market data API did not create a subscription to " + securityUniqueId));
           continue;
         }
-        
+        subscription.setHandle(subscriptionHandles.get(securityUniqueId));
+         
+        _subscriptions.activate(subscription);
+        subscription.creationComplete(true);
+
+        // Includes any distributors attached by concurrent requests while the subscription was pending
         for (MarketDataDistributor distributor : subscription.getDistributors()) {
-          _fullyQualifiedSpec2Distributor.put(distributor.getFullyQualifiedLiveDataSpecification(),
-              distributor);
-          responses.add(getSubscriptionResponse(specFromClient, distributor.getDistributionSpec()));
+          _subscriptions.addDistributor(distributor);
         }
+        responses.add(getSubscriptionResponse(specFromClient, distrSpecs.get(specFromClient)));
         
         s_logger.info("Created {}", subscription);
-        
-        notifySubscriptionListeners(subscription);
+        activated.add(subscription);
         
       }
 
-    } catch (RuntimeException e) {
-      
-      s_logger.info("Unexpected exception thrown when subscribing. Cleaning up.");
-      
-      for (Subscription subscription : securityUniqueId2NewSubscription.values()) {
-        _securityUniqueId2Subscription.remove(subscription.getSecurityUniqueId());
-        
-        for (MarketDataDistributor distributor : subscription.getDistributors()) {
-          _fullyQualifiedSpec2Distributor.remove(distributor.getFullyQualifiedLiveDataSpecification());
-        }
-      }
-      _currentlyActiveSubscriptions.removeAll(securityUniqueId2NewSubscription.values());
-      
-      throw e;
-        
     } finally {
-      _subscriptionLock.unlock();
+      _subscriptions.unlock(locks);
+    }
+    
+    Set<String> activatedIds = new HashSet<String>();
+    for (Subscription subscription : activated) {
+      activatedIds.add(subscription.getSecurityUniqueId());
+      notifySubscriptionListeners(subscription);
     }
     
     //notify that subscription data structure is completely built
-    subscriptionDone(securityUniqueId2NewSubscription.keySet());
-
-    return responses;
+    subscriptionDone(activatedIds);
   }
+    
 
   private void notifySubscriptionListeners(Subscription subscription) {
     for (SubscriptionListener listener : _subscriptionListeners) {
@@ -799,54 +932,92 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
    */
   public boolean unsubscribe(Subscription subscription) {
     ArgumentChecker.notNull(subscription, "Subscription");
+    return unsubscribe(Collections.singleton(subscription)) == 1;
+  }
+
+  /**
+   * Unsubscribes from market data. All distributors related to the
+   * subscriptions will be stopped. The underlying market data API
+   * subscriptions are cancelled with a single call to {@link #doUnsubscribe}.
+   * 
+   * @param subscriptions What to unsubscribe from, not null
+   * @return the number of market data subscriptions actually removed
+   */
+  public int unsubscribe(Collection<Subscription> subscriptions) {
+    ArgumentChecker.notNull(subscriptions, "Subscriptions");
     verifyConnectionOk();
 
-    boolean actuallyUnsubscribed = false;
+    Collection<String> securityUniqueIds = new ArrayList<String>(subscriptions.size());
+    for (Subscription subscription : subscriptions) {
+      securityUniqueIds.add(subscription.getSecurityUniqueId());
+    }
+    
+    Collection<Subscription> unsubscribed = new ArrayList<Subscription>(subscriptions.size());
+    Collection<Object> subscriptionHandles = new ArrayList<Object>(subscriptions.size());
 
-    _subscriptionLock.lock();
+    List<Lock> locks = _subscriptions.lock(securityUniqueIds);
     try {
-      if (isSubscribedTo(subscription)) {
+      removeSubscriptions(subscriptions, unsubscribed, subscriptionHandles);
+    } finally {
+      _subscriptions.unlock(locks);
+    }
+    
+    unsubscribed(unsubscribed, subscriptionHandles);
 
-        s_logger.info("Unsubscribing from {}", subscription);
+    return unsubscribed.size();
+  }
 
-        actuallyUnsubscribed = true;
-        
+  /**
+   * Removes active subscriptions from the registry. Must be called with the shards of the subscriptions locked.
+   * 
+   * @param subscriptions the subscriptions to remove, not null
+   * @param unsubscribed receives the subscriptions actually removed, not null
+   * @param subscriptionHandles receives the handles of the underlying subscriptions to cancel, not null
+   */
+  private void removeSubscriptions(Collection<Subscription> subscriptions, Collection<Subscription> unsubscribed, Collection<Object> subscriptionHandles) {
+    for (Subscription subscription : subscriptions) {
+      if (_subscriptions.isActive(subscription)) {
+        s_logger.info("Unsubscribing from {}", subscription);
+        unsubscribed.add(subscription);
         Object subscriptionHandle = subscription.getHandle();
         if (subscriptionHandle != null) {
-          doUnsubscribe(Collections.singleton(subscriptionHandle)); // todo, optimize to use batch
-        }
-
-        _currentlyActiveSubscriptions.remove(subscription);
-        _securityUniqueId2Subscription.remove(subscription
-            .getSecurityUniqueId());
-        
-        for (MarketDataDistributor distributor : subscription.getDistributors()) {
-          _fullyQualifiedSpec2Distributor.remove(distributor.getFullyQualifiedLiveDataSpecification());
+          subscriptionHandles.add(subscriptionHandle);
         }
+        _subscriptions.remove(subscription);
         subscription.removeAllDistributors();
-
-        for (SubscriptionListener listener : _subscriptionListeners) {
-          try {
-            listener.unsubscribed(subscription);
-          } catch (RuntimeException e) {
-            s_logger.error("Listener unsubscribe failed", e);
-          }
-        }
-
-        s_logger.info("Unsubscribed from {}", subscription);
-
       } else {
         s_logger
             .warn(
                 "Received unsubscription request for non-active subscription: {}",
                 subscription);
       }
+    }
+  }
 
-    } finally {
-      _subscriptionLock.unlock();
+  /**
+   * Cancels the underlying subscriptions and notifies the listeners, once the subscriptions have been removed from
+   * the registry. Called without any lock held; a new subscription to the same security made in the meantime has
+   * its own handle so is unaffected.
+   * 
+   * @param unsubscribed the subscriptions removed, not null
+   * @param subscriptionHandles the handles of the underlying subscriptions, not null
+   */
+  private void unsubscribed(Collection<Subscription> unsubscribed, Collection<Object> subscriptionHandles) {
+    if (!subscriptionHandles.isEmpty()) {
+      doUnsubscribe(subscriptionHandles);
     }
 
-    return actuallyUnsubscribed;
+    for (Subscription subscription : unsubscribed) {
+      for (SubscriptionListener listener : _subscriptionListeners) {
+        try {
+          listener.unsubscribed(subscription);
+        } catch (RuntimeException e) {
+          s_logger.error("Listener unsubscribe failed", e);
+        }
+      }
+
+      s_logger.info("Unsubscribed from {}", subscription);
+    }
   }
   
   /**
@@ -863,43 +1034,69 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
    */
   public boolean stopDistributor(MarketDataDistributor distributor) {
     ArgumentChecker.notNull(distributor, "Distributor");
+    return stopDistributors(Collections.singleton(distributor)) == 1;
+  }
+
+  /**
+   * Stops market data distributors, as {@link #stopDistributor(MarketDataDistributor)}.
+   * Subscriptions left with no active distributors are deleted together,
+   * with a single call to {@link #doUnsubscribe}.
+   * 
+   * @param distributors The distributors to stop, not null
+   * @return the number of distributors actually stopped
+   */
+  public int stopDistributors(Collection<MarketDataDistributor> distributors) {
+    ArgumentChecker.notNull(distributors, "Distributors");
+    
+    Collection<String> securityUniqueIds = new ArrayList<String>(distributors.size());
+    for (MarketDataDistributor distributor : distributors) {
+      securityUniqueIds.add(distributor.getSubscription().getSecurityUniqueId());
+    }
     
-    _subscriptionLock.lock();
+    int stopped = 0;
+    Collection<Subscription> unsubscribed = new ArrayList<Subscription>();
+    Collection<Object> subscriptionHandles = new ArrayList<Object>();
+    
+    List<Lock> locks = _subscriptions.lock(securityUniqueIds);
     try {
-      MarketDataDistributor realDistributor = getMarketDataDistributor(distributor.getDistributionSpec());
-      if (realDistributor != distributor) {
-        return false;                        
-      }
-      
-      if (distributor.isPersistent()) {
-        return false;
+      Set<Subscription> emptySubscriptions = new LinkedHashSet<Subscription>();
+      for (MarketDataDistributor distributor : distributors) {
+        MarketDataDistributor realDistributor = getMarketDataDistributor(distributor.getDistributionSpec());
+        if (realDistributor != distributor) {
+          continue;
+        }
+        
+        if (distributor.isPersistent()) {
+          continue;
+        }
+        
+        distributor.getSubscription().removeDistributor(distributor);
+        _subscriptions.removeDistributor(distributor);
+        stopped++;
+        
+        if (distributor.getSubscription().getDistributors().isEmpty()) {
+          emptySubscriptions.add(distributor.getSubscription());
+        }
       }
       
-      distributor.getSubscription().removeDistributor(distributor);
-      _fullyQualifiedSpec2Distributor.remove(distributor.getFullyQualifiedLiveDataSpecification());
-      
-      if (distributor.getSubscription().getDistributors().isEmpty()) {
-        unsubscribe(distributor.getSubscription());                
-      }
+      // Removed under the same locks so that no new distributor can be attached to an empty subscription first
+      removeSubscriptions(emptySubscriptions, unsubscribed, subscriptionHandles);
       
     } finally {
-      _subscriptionLock.unlock();
+      _subscriptions.unlock(locks);
     }
+    
+    unsubscribed(unsubscribed, subscriptionHandles);
 
-    return true;
+    return stopped;
   }
 
   public boolean isSubscribedTo(String securityUniqueId) {
-    return _securityUniqueId2Subscription.containsKey(securityUniqueId);
+    return _subscriptions.getSubscription(securityUniqueId) != null;
   }
   
   public boolean isSubscribedTo(LiveDataSpecification fullyQualifiedSpec) {
-    _subscriptionLock.lock();
-    try {
-      return _fullyQualifiedSpec2Distributor.containsKey(fullyQualifiedSpec);
-    } finally {
-      _subscriptionLock.unlock();
-    }
+    return _subscriptions.getDistributor(fullyQualifiedSpec) != null;
   }
 
   public boolean isSubscribedTo(Subscription subscription) {
@@ -958,12 +1155,7 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
   }
 
   public Set<Subscription> getSubscriptions() {
-    _subscriptionLock.lock();
-    try {
-      return new HashSet<Subscription>(_currentlyActiveSubscriptions);
-    } finally {
-      _subscriptionLock.unlock();
-    }
+    return new HashSet<Subscription>(_subscriptions.getActiveSubscriptions());
   }
 
   public Subscription getSubscription(LiveDataSpecification fullyQualifiedSpec) {
@@ -976,7 +1168,7 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
 
   public Subscription getSubscription(String securityUniqueId) {
     //NOTE: don't need lock here, map is safe, and this operation isn't really atomic anyway
-    return _securityUniqueId2Subscription.get(securityUniqueId);
+    return _subscriptions.getSubscription(securityUniqueId);
   }
   
   public MarketDataDistributor getMarketDataDistributor(DistributionSpecification distributionSpec) {
@@ -989,25 +1181,15 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
   
   public Map<LiveDataSpecification, MarketDataDistributor> getMarketDataDistributors(Collection<LiveDataSpecification> fullyQualifiedSpecs) {
     //NOTE: this is not much (if any) faster here, but for subclasses it can be 
-    _subscriptionLock.lock();
-    try {
-      HashMap<LiveDataSpecification, MarketDataDistributor> hashMap = new HashMap<LiveDataSpecification, MarketDataDistributor>();
-      for (LiveDataSpecification liveDataSpecification : fullyQualifiedSpecs) {
-        hashMap.put(liveDataSpecification, _fullyQualifiedSpec2Distributor.get(liveDataSpecification));
-      }
-      return hashMap;
-    } finally {
-      _subscriptionLock.unlock();
+    HashMap<LiveDataSpecification, MarketDataDistributor> hashMap = new HashMap<LiveDataSpecification, MarketDataDistributor>();
+    for (LiveDataSpecification liveDataSpecification : fullyQualifiedSpecs) {
+      hashMap.put(liveDataSpecification, _subscriptions.getDistributor(liveDataSpecification));
     }
+    return hashMap;
   }
   
   public MarketDataDistributor getMarketDataDistributor(LiveDataSpecification fullyQualifiedSpec) {
-    _subscriptionLock.lock();
-    try {
-      return _fullyQualifiedSpec2Distributor.get(fullyQualifiedSpec);
-    } finally {
-      _subscriptionLock.unlock();
-    }
+    return _subscriptions.getDistributor(fullyQualifiedSpec);
   }
   
   /**
@@ -217,7 +217,25 @@ public abstract class CombiningLiveDataServer extends AbstractLiveDataServer {
 
   @Override
   public boolean stopDistributor(MarketDataDistributor distributor) {
-    return getServer(distributor.getFullyQualifiedLiveDataSpecification()).stopDistributor(distributor);    
+    return getServer(distributor.getFullyQualifiedLiveDataSpecification()).stopDistributor(distributor);
+  }
+
+  @Override
+  public int stopDistributors(Collection<MarketDataDistributor> distributors) {
+    Map<LiveDataSpecification, MarketDataDistributor> spec2Distributor = new HashMap<LiveDataSpecification, MarketDataDistributor>();
+    for (MarketDataDistributor distributor : distributors) {
+      spec2Distributor.put(distributor.getFullyQualifiedLiveDataSpecification(), distributor);
+    }
+    int stopped = 0;
+    Map<AbstractLiveDataServer, Collection<LiveDataSpecification>> grouped = groupByServer(spec2Distributor.keySet());
+    for (Entry<AbstractLiveDataServer, Collection<LiveDataSpecification>> entry : grouped.entrySet()) {
+      Collection<MarketDataDistributor> serversDistributors = new ArrayList<MarketDataDistributor>(entry.getValue().size());
+      for (LiveDataSpecification spec : entry.getValue()) {
+        serversDistributors.add(spec2Distributor.get(spec));
+      }
+      stopped += entry.getKey().stopDistributors(serversDistributors);
+    }
+    return stopped;
   }
 
   @Override
@@ -5,6 +5,8 @@
  */
 package com.opengamma.livedata.server;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -163,17 +165,16 @@ public class ExpirationManager implements SubscriptionListener {
   // this is called by the timer task.
   void expirationCheck() {
     s_logger.debug("Checking for data specifications to time out");
-    int nExpired = 0;
+    Collection<MarketDataDistributor> expired = new ArrayList<MarketDataDistributor>();
     for (Subscription subscription : _dataServer.getSubscriptions()) {
       for (MarketDataDistributor distributor : subscription.getDistributors()) {
         if (distributor.hasExpired()) {
-          boolean stopped = _dataServer.stopDistributor(distributor);
-          if (stopped) {
-            nExpired++;
-          }
+          expired.add(distributor);
         }
       }
     }
+    // Stopped as one batch, so the server unsubscribes from the underlying market data API once
+    int nExpired = expired.isEmpty() ? 0 : _dataServer.stopDistributors(expired);
     s_logger.info("Expired {} specifications", nExpired);
   }
 
@@ -89,6 +89,27 @@ public class FieldHistoryStore {
     return newMessage;
   }
 
+  /**
+   * Gets the last known value of a field as a double, without copying the rest of the history.
+   * 
+   * @param fieldName  the field name, not null
+   * @return the value, null if there is no value or it is not a number
+   */
+  public synchronized Double getLastKnownDouble(String fieldName) {
+    final UnmodifiableFudgeField field = _lastKnownValues.get(fieldName);
+    if (field == null) {
+      return null;
+    }
+    final Object value = field.getValue();
+    if (value instanceof Double) {
+      return (Double) value;
+    }
+    if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    }
+    return null;
+  }
+
   /**
    * Checks if the history store is empty.
    * 
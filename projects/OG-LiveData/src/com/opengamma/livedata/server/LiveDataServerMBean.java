@@ -22,6 +22,7 @@ import com.opengamma.id.ExternalScheme;
 import com.opengamma.livedata.LiveDataSpecification;
 import com.opengamma.livedata.msg.LiveDataSubscriptionResponse;
 import com.opengamma.livedata.msg.LiveDataSubscriptionResult;
+import com.opengamma.livedata.server.distribution.ConflatingDistributionPool;
 import com.opengamma.livedata.server.distribution.MarketDataDistributor;
 import com.opengamma.util.ArgumentChecker;
 
@@ -138,6 +139,63 @@ public class LiveDataServerMBean {
     }
   }
 
+  @ManagedAttribute(description = "The number of distributors waiting to send conflated market data, or -1 if conflation is disabled.")
+  public int getDistributionQueueDepth() {
+    try {
+      ConflatingDistributionPool pool = getServer().getDistributionPool();
+      return pool == null ? -1 : pool.getQueueDepth();
+    } catch (RuntimeException e) {
+      s_logger.error("getDistributionQueueDepth() failed", e);
+      throw new RuntimeException(e.getMessage());
+    }
+  }
+
+  @ManagedAttribute(description = "The average number of ticks merged into each conflated market data update, or -1 if conflation is disabled.")
+  public double getConflationRatio() {
+    try {
+      ConflatingDistributionPool pool = getServer().getDistributionPool();
+      return pool == null ? -1.0 : pool.getConflationRatio();
+    } catch (RuntimeException e) {
+      s_logger.error("getConflationRatio() failed", e);
+      throw new RuntimeException(e.getMessage());
+    }
+  }
+
+  @ManagedAttribute(description = "Mean milliseconds from a tick being normalized, which is done holding its distributor's lock, to the conflated update containing it being sent, or -1 if conflation is disabled.")
+  public double getMeanTickLatencyMillis() {
+    try {
+      ConflatingDistributionPool pool = getServer().getDistributionPool();
+      return pool == null ? -1.0 : pool.getMeanLatencyMillis();
+    } catch (RuntimeException e) {
+      s_logger.error("getMeanTickLatencyMillis() failed", e);
+      throw new RuntimeException(e.getMessage());
+    }
+  }
+
+  @ManagedAttribute(description = "Maximum milliseconds from a tick being normalized, which is done holding its distributor's lock, to the conflated update containing it being sent, or -1 if conflation is disabled.")
+  public double getMaxTickLatencyMillis() {
+    try {
+      ConflatingDistributionPool pool = getServer().getDistributionPool();
+      return pool == null ? -1.0 : pool.getMaxLatencyMillis();
+    } catch (RuntimeException e) {
+      s_logger.error("getMaxTickLatencyMillis() failed", e);
+      throw new RuntimeException(e.getMessage());
+    }
+  }
+
+  @ManagedOperation(description = "Resets the conflated market data tick, update and latency statistics.")
+  public void resetDistributionStatistics() {
+    try {
+      ConflatingDistributionPool pool = getServer().getDistributionPool();
+      if (pool != null) {
+        pool.resetStatistics();
+      }
+    } catch (RuntimeException e) {
+      s_logger.error("resetDistributionStatistics() failed", e);
+      throw new RuntimeException(e.getMessage());
+    }
+  }
+
   @ManagedOperation(description = "Subscribes to market data. The subscription will be non-persistent."
       + " If the server already subscribes to the given market data, this method is a "
       + " no-op. Returns the name of the JMS topic market data will be published on.")
@@ -9,6 +9,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.fudgemsg.FudgeMsg;
@@ -16,6 +17,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.opengamma.livedata.LiveDataSpecification;
+import com.opengamma.livedata.server.distribution.ConflatingDistributionPool;
 import com.opengamma.livedata.server.distribution.MarketDataDistributor;
 import com.opengamma.livedata.server.distribution.MarketDataSenderFactory;
 import com.opengamma.util.ArgumentChecker;
@@ -36,6 +38,10 @@ public class Subscription {
    * Controls how the data from this subscription will be sent.
    */
   private final MarketDataSenderFactory _marketDataSenderFactory;
+  /**
+   * The pool sending conflated messages for the distributors, null to send each tick as it is received.
+   */
+  private final ConflatingDistributionPool _distributionPool;
   
   /**
    * A lock to enforce that live data is handled in a serialized and thus safe & ordered fashion.
@@ -62,6 +68,14 @@ public class Subscription {
    * The creation instant.
    */
   private final Date _creationTime;
+  /**
+   * Released once the subscription to the underlying market data API has been created, or has failed.
+   */
+  private final CountDownLatch _created = new CountDownLatch(1);
+  /**
+   * Whether the subscription to the underlying market data API was created. Written before {@link #_created} is released.
+   */
+  private volatile boolean _createdOk;
 
   /**
    * Creates an instance.
@@ -70,10 +84,22 @@ public class Subscription {
    * @param marketDataSenderFactory  the factory that will create market data distributors for this subscription
    */
   public Subscription(String securityUniqueId, MarketDataSenderFactory marketDataSenderFactory) {
+    this(securityUniqueId, marketDataSenderFactory, null);
+  }
+
+  /**
+   * Creates an instance.
+   * 
+   * @param securityUniqueId  the security unique ID, specific to the market data provider, not null
+   * @param marketDataSenderFactory  the factory that will create market data distributors for this subscription
+   * @param distributionPool  the pool sending conflated messages for the distributors, null to send each tick as it is received
+   */
+  public Subscription(String securityUniqueId, MarketDataSenderFactory marketDataSenderFactory, ConflatingDistributionPool distributionPool) {
     ArgumentChecker.notNull(securityUniqueId, "Security unique ID");
     ArgumentChecker.notNull(marketDataSenderFactory, "Market data sender factory");
     _securityUniqueId = securityUniqueId;
     _marketDataSenderFactory = marketDataSenderFactory;
+    _distributionPool = distributionPool;
     _creationTime = new Date();
   }
 
@@ -123,6 +149,41 @@ public class Subscription {
     return _marketDataSenderFactory;
   }
 
+  /**
+   * Gets the pool sending conflated messages for the distributors.
+   * 
+   * @return the pool, null if each tick is sent as it is received
+   */
+  public ConflatingDistributionPool getDistributionPool() {
+    return _distributionPool;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Records the outcome of creating the subscription in the underlying market data API, releasing any requests waiting
+   * in {@link #awaitCreation}. Only the first outcome recorded has any effect.
+   * 
+   * @param created  true if the subscription was created, false if it failed
+   */
+  /* package */synchronized void creationComplete(boolean created) {
+    if (_created.getCount() > 0) {
+      _createdOk = created;
+      _created.countDown();
+    }
+  }
+
+  /**
+   * Waits for the subscription in the underlying market data API to be created. Used by requests that attach to a
+   * subscription while it is still pending.
+   * 
+   * @return true if the subscription was created, false if it failed
+   * @throws InterruptedException if interrupted while waiting
+   */
+  /* package */boolean awaitCreation() throws InterruptedException {
+    _created.await();
+    return _createdOk;
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Gets the set of distribution specifications.
@@ -179,7 +240,7 @@ public class Subscription {
   /*package*/ MarketDataDistributor createDistributor(DistributionSpecification spec, boolean persistent) {
     MarketDataDistributor distributor = getMarketDataDistributor(spec);
     if (distributor == null) {
-      distributor = new MarketDataDistributor(spec, this, getMarketDataSenderFactory(), persistent);
+      distributor = new MarketDataDistributor(spec, this, getMarketDataSenderFactory(), persistent, getDistributionPool());
       MarketDataDistributor previous = _distributors.putIfAbsent(spec, distributor);
       if (previous == null) {
         s_logger.info("Added {} to {}", distributor, this);
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.opengamma.livedata.LiveDataSpecification;
+import com.opengamma.livedata.server.distribution.MarketDataDistributor;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * The subscriptions and distributors of an {@link AbstractLiveDataServer}.
+ * <p>
+ * Changes are serialized by a lock per shard, the shard being chosen by the security's unique ID, so subscriptions to
+ * unrelated securities can be created and removed in parallel. A change affecting several securities takes the locks
+ * of all their shards, always in ascending order so two such changes cannot deadlock. Lookups take no lock; the maps
+ * are concurrent, so the market data path never waits for a subscription change to finish.
+ * <p>
+ * The locks are only held while the registry is changed, not while the market data API is called. A new subscription
+ * is added as pending under the locks, subscribed to without them and then activated under them again, so a request
+ * for the same security in the meantime attaches to the pending subscription. A removed subscription is unsubscribed
+ * from after the locks are released.
+ */
+/* package */final class SubscriptionRegistry {
+
+  /**
+   * The default number of shards.
+   */
+  public static final int DEFAULT_SHARDS = 64;
+
+  private final Lock[] _locks;
+  private final int _mask;
+
+  /** Includes subscriptions that are still being created, so no update is lost after doSubscribe */
+  private final ConcurrentMap<String, Subscription> _securityUniqueId2Subscription = new ConcurrentHashMap<String, Subscription>();
+
+  private final ConcurrentMap<String, Subscription> _securityUniqueId2ActiveSubscription = new ConcurrentHashMap<String, Subscription>();
+
+  private final ConcurrentMap<LiveDataSpecification, MarketDataDistributor> _fullyQualifiedSpec2Distributor = new ConcurrentHashMap<LiveDataSpecification, MarketDataDistributor>();
+
+  /* package */SubscriptionRegistry() {
+    this(DEFAULT_SHARDS);
+  }
+
+  /**
+   * Creates a registry.
+   *
+   * @param shards  the number of shards, rounded up to a power of two
+   */
+  /* package */SubscriptionRegistry(final int shards) {
+    ArgumentChecker.notNegativeOrZero(shards, "shards");
+    int size = 1;
+    while (size < shards) {
+      size <<= 1;
+    }
+    _locks = new Lock[size];
+    for (int i = 0; i < size; i++) {
+      _locks[i] = new ReentrantLock();
+    }
+    _mask = size - 1;
+  }
+
+  private int getShard(final String securityUniqueId) {
+    // Spread the hash so that IDs differing only in their high bits still land in different shards
+    int h = securityUniqueId.hashCode();
+    h ^= (h >>> 20) ^ (h >>> 12);
+    h ^= (h >>> 7) ^ (h >>> 4);
+    return h & _mask;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Locks the shards holding the given securities.
+   *
+   * @param securityUniqueIds  the securities, not null
+   * @return the locks taken, to be passed to {@link #unlock}
+   */
+  /* package */List<Lock> lock(final Collection<String> securityUniqueIds) {
+    final boolean[] required = new boolean[_locks.length];
+    for (String securityUniqueId : securityUniqueIds) {
+      required[getShard(securityUniqueId)] = true;
+    }
+    final List<Lock> locks = new ArrayList<Lock>();
+    try {
+      for (int i = 0; i < required.length; i++) {
+        if (required[i]) {
+          _locks[i].lock();
+          locks.add(_locks[i]);
+        }
+      }
+    } catch (RuntimeException e) {
+      unlock(locks);
+      throw e;
+    }
+    return locks;
+  }
+
+  /**
+   * Locks every shard.
+   *
+   * @return the locks taken, to be passed to {@link #unlock}
+   */
+  /* package */List<Lock> lockAll() {
+    final List<Lock> locks = new ArrayList<Lock>(_locks.length);
+    for (Lock lock : _locks) {
+      lock.lock();
+      locks.add(lock);
+    }
+    return locks;
+  }
+
+  /* package */void unlock(final List<Lock> locks) {
+    for (int i = locks.size() - 1; i >= 0; i--) {
+      locks.get(i).unlock();
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  // The methods below that change the registry must be called with the shard of the security locked
+
+  /**
+   * Adds a subscription that is being created, so updates for it are delivered while the underlying subscription
+   * is made.
+   *
+   * @param subscription  the subscription, not null
+   */
+  /* package */void addPending(final Subscription subscription) {
+    _securityUniqueId2Subscription.put(subscription.getSecurityUniqueId(), subscription);
+  }
+
+  /**
+   * Marks a subscription as active once the underlying subscription has been made.
+   *
+   * @param subscription  the subscription, not null
+   */
+  /* package */void activate(final Subscription subscription) {
+    _securityUniqueId2Subscription.put(subscription.getSecurityUniqueId(), subscription);
+    _securityUniqueId2ActiveSubscription.put(subscription.getSecurityUniqueId(), subscription);
+  }
+
+  /* package */void addDistributor(final MarketDataDistributor distributor) {
+    _fullyQualifiedSpec2Distributor.put(distributor.getFullyQualifiedLiveDataSpecification(), distributor);
+  }
+
+  /* package */void removeDistributor(final MarketDataDistributor distributor) {
+    _fullyQualifiedSpec2Distributor.remove(distributor.getFullyQualifiedLiveDataSpecification());
+  }
+
+  /**
+   * Removes a subscription and all of its distributors.
+   *
+   * @param subscription  the subscription, not null
+   */
+  /* package */void remove(final Subscription subscription) {
+    _securityUniqueId2Subscription.remove(subscription.getSecurityUniqueId(), subscription);
+    _securityUniqueId2ActiveSubscription.remove(subscription.getSecurityUniqueId(), subscription);
+    for (MarketDataDistributor distributor : subscription.getDistributors()) {
+      _fullyQualifiedSpec2Distributor.remove(distributor.getFullyQualifiedLiveDataSpecification());
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /* package */Subscription getSubscription(final String securityUniqueId) {
+    return _securityUniqueId2Subscription.get(securityUniqueId);
+  }
+
+  /* package */boolean isActive(final Subscription subscription) {
+    return _securityUniqueId2ActiveSubscription.get(subscription.getSecurityUniqueId()) == subscription;
+  }
+
+  /**
+   * Gets the IDs of all subscriptions, including those still being created.
+   *
+   * @return a live view of the IDs, not null
+   */
+  /* package */Set<String> getSecurityUniqueIds() {
+    return _securityUniqueId2Subscription.keySet();
+  }
+
+  /**
+   * Gets the active subscriptions.
+   *
+   * @return a live view of the subscriptions, not null
+   */
+  /* package */Collection<Subscription> getActiveSubscriptions() {
+    return _securityUniqueId2ActiveSubscription.values();
+  }
+
+  /* package */MarketDataDistributor getDistributor(final LiveDataSpecification fullyQualifiedSpec) {
+    return _fullyQualifiedSpec2Distributor.get(fullyQualifiedSpec);
+  }
+
+}
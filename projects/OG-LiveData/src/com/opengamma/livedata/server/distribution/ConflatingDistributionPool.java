@@ -0,0 +1,300 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server.distribution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.Lifecycle;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Sends market data on behalf of distributors running in conflating mode.
+ * <p>
+ * A conflating distributor does not send each tick as it is received. It merges the normalized fields of the tick into
+ * a pending message holding the latest value of each field and, if it is not already waiting, queues itself with the
+ * pool. A small number of sender threads take the waiting distributors from the queue in batches and send each one's
+ * pending message. Ticks received while a distributor is waiting or sending are merged into its next message, so a burst
+ * of ticks on a liquid line becomes fewer, fuller messages. The thread receiving market data still normalizes and merges
+ * each tick while holding the distributor's lock, as {@link MarketDataDistributor#distributeLiveData} is synchronized,
+ * but it does not wait for a {@link MarketDataSender}.
+ * <p>
+ * The sender threads run between {@link #start} and {@link #stop}, which are called by the live data server that uses
+ * the pool. Stopping the pool sends any messages still pending on the calling thread.
+ * <p>
+ * The pool keeps statistics on the queue depth, the ratio of ticks received to messages sent, and the latency from a
+ * tick being received to the message containing it being sent. A tick is timed from when its distributor starts to
+ * normalize it, so any time spent waiting for the distributor's lock is not included.
+ */
+public class ConflatingDistributionPool implements Lifecycle {
+
+  /** Logger. */
+  private static final Logger s_logger = LoggerFactory.getLogger(ConflatingDistributionPool.class);
+
+  /**
+   * The default number of sender threads.
+   */
+  public static final int DEFAULT_THREADS = 2;
+  /**
+   * The default maximum number of distributors a sender thread takes from the queue at once.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 64;
+
+  /**
+   * The distributors with a pending message, in the order they became dirty.
+   */
+  private final BlockingQueue<MarketDataDistributor> _dirty = new LinkedBlockingQueue<MarketDataDistributor>();
+  private final int _threadCount;
+  private final int _batchSize;
+  /** Access controlled via this. */
+  private List<Thread> _threads;
+  private volatile boolean _running;
+
+  private final AtomicLong _ticksReceived = new AtomicLong();
+  private final AtomicLong _messagesSent = new AtomicLong();
+  private final AtomicLong _totalLatencyNanos = new AtomicLong();
+  private final AtomicLong _maxLatencyNanos = new AtomicLong();
+
+  /**
+   * Creates a pool with the default number of sender threads.
+   */
+  public ConflatingDistributionPool() {
+    this(DEFAULT_THREADS);
+  }
+
+  /**
+   * Creates a pool.
+   *
+   * @param threads  the number of sender threads, greater than zero
+   */
+  public ConflatingDistributionPool(int threads) {
+    this(threads, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Creates a pool.
+   *
+   * @param threads  the number of sender threads, greater than zero
+   * @param batchSize  the maximum number of distributors a sender thread takes from the queue at once, greater than zero
+   */
+  public ConflatingDistributionPool(int threads, int batchSize) {
+    ArgumentChecker.notNegativeOrZero(threads, "threads");
+    ArgumentChecker.notNegativeOrZero(batchSize, "batchSize");
+    _threadCount = threads;
+    _batchSize = batchSize;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Called by a distributor for each tick it receives.
+   */
+  /* package */void tickReceived() {
+    _ticksReceived.incrementAndGet();
+  }
+
+  /**
+   * Called by a distributor when it has a pending message and is not already queued.
+   *
+   * @param distributor  the distributor, not null
+   */
+  /* package */void schedule(MarketDataDistributor distributor) {
+    _dirty.add(distributor);
+  }
+
+  /**
+   * Called by a distributor after sending a pending message.
+   *
+   * @param oldestTickNanos  the {@link System#nanoTime} at which the oldest tick merged into the message was received
+   */
+  /* package */void messageSent(long oldestTickNanos) {
+    _messagesSent.incrementAndGet();
+    final long latency = System.nanoTime() - oldestTickNanos;
+    _totalLatencyNanos.addAndGet(latency);
+    long max = _maxLatencyNanos.get();
+    while ((latency > max) && !_maxLatencyNanos.compareAndSet(max, latency)) {
+      max = _maxLatencyNanos.get();
+    }
+  }
+
+  private void drain() {
+    final List<MarketDataDistributor> batch = new ArrayList<MarketDataDistributor>(_batchSize);
+    while (_running) {
+      try {
+        final MarketDataDistributor first = _dirty.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+      } catch (InterruptedException e) {
+        continue;
+      }
+      _dirty.drainTo(batch, _batchSize - 1);
+      for (MarketDataDistributor distributor : batch) {
+        try {
+          if (distributor.sendPending()) {
+            // More ticks arrived while sending; the distributor goes to the back of the queue
+            _dirty.add(distributor);
+          }
+        } catch (RuntimeException e) {
+          s_logger.error("Sending pending market data for " + distributor + " failed", e);
+        }
+      }
+      batch.clear();
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Starts the sender threads.
+   */
+  @Override
+  public synchronized void start() {
+    if (_threads != null) {
+      return;
+    }
+    _running = true;
+    final List<Thread> threads = new ArrayList<Thread>(_threadCount);
+    for (int i = 0; i < _threadCount; i++) {
+      final Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          drain();
+        }
+      }, "ConflatingDistributionPool-" + i);
+      thread.setDaemon(true);
+      threads.add(thread);
+      thread.start();
+    }
+    _threads = threads;
+  }
+
+  /**
+   * Stops the sender threads and then sends any pending messages on the calling thread. The source of market data
+   * should already be stopped, otherwise ticks received after this returns are queued until the pool is restarted.
+   */
+  @Override
+  public synchronized void stop() {
+    final List<Thread> threads = _threads;
+    _threads = null;
+    _running = false;
+    if (threads != null) {
+      // Not interrupted, so that a send in progress is not disturbed; an idle thread notices within its poll timeout
+      for (Thread thread : threads) {
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          s_logger.warn("Interrupted waiting for {} to stop", thread);
+          return;
+        }
+      }
+    }
+    flush();
+  }
+
+  @Override
+  public synchronized boolean isRunning() {
+    return _threads != null;
+  }
+
+  private void flush() {
+    MarketDataDistributor distributor = _dirty.poll();
+    if (distributor != null) {
+      s_logger.info("Sending pending market data for {} distributors", _dirty.size() + 1);
+      do {
+        try {
+          while (distributor.sendPending()) {
+            s_logger.debug("More market data pending for {}", distributor);
+          }
+        } catch (RuntimeException e) {
+          s_logger.error("Sending pending market data for " + distributor + " failed", e);
+        }
+        distributor = _dirty.poll();
+      } while (distributor != null);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of distributors waiting for a sender thread.
+   *
+   * @return the queue depth
+   */
+  public int getQueueDepth() {
+    return _dirty.size();
+  }
+
+  /**
+   * Gets the number of ticks received by conflating distributors.
+   *
+   * @return the tick count
+   */
+  public long getTicksReceived() {
+    return _ticksReceived.get();
+  }
+
+  /**
+   * Gets the number of messages sent by conflating distributors.
+   *
+   * @return the message count
+   */
+  public long getMessagesSent() {
+    return _messagesSent.get();
+  }
+
+  /**
+   * Gets the average number of ticks merged into each message sent.
+   *
+   * @return the conflation ratio, or NaN if no messages have been sent
+   */
+  public double getConflationRatio() {
+    final long messages = getMessagesSent();
+    return (messages > 0) ? (double) getTicksReceived() / (double) messages : Double.NaN;
+  }
+
+  /**
+   * Gets the mean time from a tick being received to the message containing it being sent. Where ticks have been merged,
+   * the time is measured from the oldest.
+   *
+   * @return the mean latency in milliseconds, or NaN if no messages have been sent
+   */
+  public double getMeanLatencyMillis() {
+    final long messages = getMessagesSent();
+    return (messages > 0) ? (double) _totalLatencyNanos.get() / (double) messages / 1e6 : Double.NaN;
+  }
+
+  /**
+   * Gets the longest time from a tick being received to the message containing it being sent.
+   *
+   * @return the maximum latency in milliseconds
+   */
+  public double getMaxLatencyMillis() {
+    return (double) _maxLatencyNanos.get() / 1e6;
+  }
+
+  /**
+   * Resets the tick, message and latency statistics.
+   */
+  public void resetStatistics() {
+    _ticksReceived.set(0);
+    _messagesSent.set(0);
+    _totalLatencyNanos.set(0);
+    _maxLatencyNanos.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return "ConflatingDistributionPool[threads=" + _threadCount + ", queueDepth=" + getQueueDepth() + "]";
+  }
+
+}
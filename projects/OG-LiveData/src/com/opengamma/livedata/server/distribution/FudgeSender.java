@@ -17,6 +17,8 @@ import com.opengamma.util.ArgumentChecker;
  * A simple implementation of {@link MarketDataSender} that sends
  * market data to a {@link FudgeMessageSender}. 
  * Useful in tests. 
+ * <p>
+ * If the sender has a {@link LiveDataDeltaEncoder}, updates are sent as field-level deltas.
  */
 public class FudgeSender implements MarketDataSender {
 
@@ -28,6 +30,10 @@ public class FudgeSender implements MarketDataSender {
    * The merket data distributor.
    */
   private final MarketDataDistributor _distributor;
+  /**
+   * The delta encoder, null to send every update in full.
+   */
+  private final LiveDataDeltaEncoder _deltaEncoder;
 
   /**
    * Creates an instance.
@@ -36,10 +42,22 @@ public class FudgeSender implements MarketDataSender {
    * @param distributor  the distributor, not null
    */
   public FudgeSender(FudgeMessageSender fudgeMessageSender, MarketDataDistributor distributor) {
+    this(fudgeMessageSender, distributor, null);
+  }
+
+  /**
+   * Creates an instance.
+   * 
+   * @param fudgeMessageSender  the sender, not null
+   * @param distributor  the distributor, not null
+   * @param deltaEncoder  the encoder for sending field-level deltas, null to send every update in full
+   */
+  public FudgeSender(FudgeMessageSender fudgeMessageSender, MarketDataDistributor distributor, LiveDataDeltaEncoder deltaEncoder) {
     ArgumentChecker.notNull(fudgeMessageSender, "Fudge Message Sender");
     ArgumentChecker.notNull(distributor, "Market Data Distributor");
     _fudgeMessageSender = fudgeMessageSender;
     _distributor = distributor;
+    _deltaEncoder = deltaEncoder;
   }
 
   //-------------------------------------------------------------------------
@@ -62,12 +80,36 @@ public class FudgeSender implements MarketDataSender {
     return _distributor;
   }
 
+  /**
+   * Gets the delta encoder.
+   * 
+   * @return the encoder, null if every update is sent in full
+   */
+  public LiveDataDeltaEncoder getDeltaEncoder() {
+    return _deltaEncoder;
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public void sendMarketData(LiveDataValueUpdateBean data) {
     FudgeSerializer serializer = new FudgeSerializer(getFudgeMessageSender().getFudgeContext());
-    FudgeMsg fudgeMsg = LiveDataValueUpdateBeanFudgeBuilder.toFudgeMsg(serializer, data);
-    getFudgeMessageSender().send(fudgeMsg);
+    FudgeMsg fudgeMsg;
+    if (_deltaEncoder != null) {
+      // The encoder holds the last values sent so the update must be encoded and sent as one step
+      synchronized (_deltaEncoder) {
+        fudgeMsg = _deltaEncoder.encode(serializer, data);
+        try {
+          getFudgeMessageSender().send(fudgeMsg);
+        } catch (RuntimeException e) {
+          // The encoder has recorded values the receiver never got
+          _deltaEncoder.requireSnapshot();
+          throw e;
+        }
+      }
+    } else {
+      fudgeMsg = LiveDataValueUpdateBeanFudgeBuilder.toFudgeMsg(serializer, data);
+      getFudgeMessageSender().send(fudgeMsg);
+    }
   }
 
 }
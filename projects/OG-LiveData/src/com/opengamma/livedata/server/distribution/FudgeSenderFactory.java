@@ -20,6 +20,14 @@ public class FudgeSenderFactory implements MarketDataSenderFactory {
    * The base sender.
    */
   private final FudgeMessageSender _fudgeMessageSender;
+  /**
+   * Whether updates are sent as field-level deltas.
+   */
+  private boolean _deltaEncoding;
+  /**
+   * The number of delta encoded updates between full snapshots.
+   */
+  private int _snapshotInterval = LiveDataDeltaEncoder.DEFAULT_SNAPSHOT_INTERVAL;
 
   /**
    * Creates a sender.
@@ -31,10 +39,53 @@ public class FudgeSenderFactory implements MarketDataSenderFactory {
     _fudgeMessageSender = fudgeMessageSender;
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * Gets whether updates are sent as field-level deltas.
+   * 
+   * @return true if updates are delta encoded
+   */
+  public boolean isDeltaEncoding() {
+    return _deltaEncoding;
+  }
+
+  /**
+   * Sets whether updates are sent as field-level deltas. This affects senders created afterwards. Clients
+   * must be able to decode deltas, as {@link com.opengamma.livedata.client.DistributedLiveDataClient} does.
+   * 
+   * @param deltaEncoding  true to delta encode updates
+   */
+  public void setDeltaEncoding(boolean deltaEncoding) {
+    _deltaEncoding = deltaEncoding;
+  }
+
+  /**
+   * Gets the number of delta encoded updates between full snapshots.
+   * 
+   * @return the snapshot interval
+   */
+  public int getSnapshotInterval() {
+    return _snapshotInterval;
+  }
+
+  /**
+   * Sets the number of delta encoded updates between full snapshots.
+   * 
+   * @param snapshotInterval  the snapshot interval, greater than zero
+   */
+  public void setSnapshotInterval(int snapshotInterval) {
+    ArgumentChecker.notNegativeOrZero(snapshotInterval, "snapshotInterval");
+    _snapshotInterval = snapshotInterval;
+  }
+
+  private LiveDataDeltaEncoder createDeltaEncoder() {
+    return isDeltaEncoding() ? new LiveDataDeltaEncoder(getSnapshotInterval()) : null;
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public Collection<MarketDataSender> create(MarketDataDistributor distributor) {
-    return Collections.<MarketDataSender>singleton(new FudgeSender(_fudgeMessageSender, distributor));
+    return Collections.<MarketDataSender>singleton(new FudgeSender(_fudgeMessageSender, distributor, createDeltaEncoder()));
   }
 
 }
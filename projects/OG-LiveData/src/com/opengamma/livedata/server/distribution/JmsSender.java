@@ -32,6 +32,9 @@ import com.opengamma.util.jms.JmsConnector;
  * When the sender loses connection to JMS, it starts building a 
  * cumulative delta of changes. This cumulative delta is published when 
  * the sender reconnects.
+ * <p>
+ * If the sender has a {@link LiveDataDeltaEncoder}, updates are sent as field-level
+ * deltas and the first update after the sender reconnects is a full snapshot.
  */
 public class JmsSender implements MarketDataSender {
 
@@ -66,6 +69,14 @@ public class JmsSender implements MarketDataSender {
    * The internal lock.
    */
   private final Semaphore _lock = new Semaphore(1);
+  /**
+   * The delta encoder, null to send every update in full.
+   */
+  private final LiveDataDeltaEncoder _deltaEncoder;
+  /**
+   * Whether the next delta encoded update must be a snapshot.
+   */
+  private volatile boolean _snapshotRequired;
 
   /**
    * Creates an instance.
@@ -75,12 +86,25 @@ public class JmsSender implements MarketDataSender {
    * @param fudgeContext  the Fudge context, not null
    */
   public JmsSender(JmsConnector jmsConnector, MarketDataDistributor distributor, FudgeContext fudgeContext) {
+    this(jmsConnector, distributor, fudgeContext, null);
+  }
+
+  /**
+   * Creates an instance.
+   * 
+   * @param jmsConnector  the JMS connector, not null
+   * @param distributor  the distributor, not null
+   * @param fudgeContext  the Fudge context, not null
+   * @param deltaEncoder  the encoder for sending field-level deltas, null to send every update in full
+   */
+  public JmsSender(JmsConnector jmsConnector, MarketDataDistributor distributor, FudgeContext fudgeContext, LiveDataDeltaEncoder deltaEncoder) {
     ArgumentChecker.notNull(jmsConnector, "jmsConnector");
     ArgumentChecker.notNull(distributor, "Market data distributor");
     ArgumentChecker.notNull(fudgeContext, "fudgeContext");
     _jmsConnector = jmsConnector;
     _fudgeContext = fudgeContext;
     _distributor = distributor;
+    _deltaEncoder = deltaEncoder;
   }
 
   //-------------------------------------------------------------------------
@@ -117,19 +141,35 @@ public class JmsSender implements MarketDataSender {
         _cumulativeDelta.getLastKnownValues());
     s_logger.debug("{}: Sending Live Data update {}", this, liveDataValueUpdateBean);
     
-    FudgeMsg fudgeMsg = LiveDataValueUpdateBeanFudgeBuilder.toFudgeMsg(new FudgeSerializer(_fudgeContext), liveDataValueUpdateBean);
+    FudgeSerializer serializer = new FudgeSerializer(_fudgeContext);
+    FudgeMsg fudgeMsg;
+    if (_deltaEncoder != null) {
+      if (_snapshotRequired) {
+        _snapshotRequired = false;
+        _deltaEncoder.requireSnapshot();
+      }
+      fudgeMsg = _deltaEncoder.encode(serializer, liveDataValueUpdateBean);
+    } else {
+      fudgeMsg = LiveDataValueUpdateBeanFudgeBuilder.toFudgeMsg(serializer, liveDataValueUpdateBean);
+    }
     String destinationName = distributionSpec.getJmsTopic();
     final byte[] bytes = _fudgeContext.toByteArray(fudgeMsg);
     
-    _jmsConnector.getJmsTemplateTopic().send(destinationName, new MessageCreator() {
-      @Override
-      public Message createMessage(Session session) throws JMSException {
-        // TODO kirk 2009-10-30 -- We want to put stuff in the properties as well I think.
-        BytesMessage bytesMessage = session.createBytesMessage();
-        bytesMessage.writeBytes(bytes);
-        return bytesMessage;
-      }
-    });
+    try {
+      _jmsConnector.getJmsTemplateTopic().send(destinationName, new MessageCreator() {
+        @Override
+        public Message createMessage(Session session) throws JMSException {
+          // TODO kirk 2009-10-30 -- We want to put stuff in the properties as well I think.
+          BytesMessage bytesMessage = session.createBytesMessage();
+          bytesMessage.writeBytes(bytes);
+          return bytesMessage;
+        }
+      });
+    } catch (RuntimeException e) {
+      // The encoder has recorded values the clients never received
+      _snapshotRequired = true;
+      throw e;
+    }
     
     _cumulativeDelta.clear();
   }
@@ -144,12 +184,23 @@ public class JmsSender implements MarketDataSender {
     return _interrupted;
   }
 
+  /**
+   * Gets the delta encoder.
+   * 
+   * @return the encoder, null if every update is sent in full
+   */
+  public LiveDataDeltaEncoder getDeltaEncoder() {
+    return _deltaEncoder;
+  }
+
   /**
    * Indicates that the transport was interrupted, setting the flag.
    */
   public void transportInterrupted() {
     s_logger.error("Transport interrupted {}", this);
     _interrupted = true;
+    // Clients may have missed messages sent as the transport failed
+    _snapshotRequired = true;
   }
 
   /**
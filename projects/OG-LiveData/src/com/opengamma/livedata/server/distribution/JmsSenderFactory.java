@@ -18,6 +18,7 @@ import org.fudgemsg.FudgeContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
 import com.opengamma.util.jms.JmsConnector;
 
@@ -46,6 +47,14 @@ public class JmsSenderFactory implements MarketDataSenderFactory {
    * The executor.
    */
   private final ExecutorService _executor;
+  /**
+   * Whether updates are sent as field-level deltas.
+   */
+  private boolean _deltaEncoding;
+  /**
+   * The number of delta encoded updates between full snapshots.
+   */
+  private int _snapshotInterval = LiveDataDeltaEncoder.DEFAULT_SNAPSHOT_INTERVAL;
 
   /**
    * Creates an instance.
@@ -105,6 +114,48 @@ public class JmsSenderFactory implements MarketDataSenderFactory {
     _fudgeContext = fudgeContext;
   }
 
+  /**
+   * Gets whether updates are sent as field-level deltas.
+   * 
+   * @return true if updates are delta encoded
+   */
+  public boolean isDeltaEncoding() {
+    return _deltaEncoding;
+  }
+
+  /**
+   * Sets whether updates are sent as field-level deltas. This affects senders created afterwards. Clients
+   * must be able to decode deltas, as {@link com.opengamma.livedata.client.DistributedLiveDataClient} does.
+   * 
+   * @param deltaEncoding  true to delta encode updates
+   */
+  public void setDeltaEncoding(boolean deltaEncoding) {
+    _deltaEncoding = deltaEncoding;
+  }
+
+  /**
+   * Gets the number of delta encoded updates between full snapshots.
+   * 
+   * @return the snapshot interval
+   */
+  public int getSnapshotInterval() {
+    return _snapshotInterval;
+  }
+
+  /**
+   * Sets the number of delta encoded updates between full snapshots.
+   * 
+   * @param snapshotInterval  the snapshot interval, greater than zero
+   */
+  public void setSnapshotInterval(int snapshotInterval) {
+    ArgumentChecker.notNegativeOrZero(snapshotInterval, "snapshotInterval");
+    _snapshotInterval = snapshotInterval;
+  }
+
+  private LiveDataDeltaEncoder createDeltaEncoder() {
+    return isDeltaEncoding() ? new LiveDataDeltaEncoder(getSnapshotInterval()) : null;
+  }
+
   //-------------------------------------------------------------------------
   public synchronized void transportInterrupted() {
     s_logger.warn("JMS transport interrupted; notifying {} senders", _allActiveSenders.size());
@@ -133,7 +184,7 @@ public class JmsSenderFactory implements MarketDataSenderFactory {
   @Override
   public synchronized Collection<MarketDataSender> create(MarketDataDistributor distributor) {
     s_logger.debug("Created JmsSender for {}", distributor);
-    JmsSender sender = new JmsSender(_jmsConnector, distributor, getFudgeContext());
+    JmsSender sender = new JmsSender(_jmsConnector, distributor, getFudgeContext(), createDeltaEncoder());
     _allActiveSenders.add(sender);
     return Collections.<MarketDataSender>singleton(sender);
   }
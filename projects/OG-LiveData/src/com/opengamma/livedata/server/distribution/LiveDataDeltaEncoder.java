@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server.distribution;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.UnmodifiableFudgeField;
+import org.fudgemsg.mapping.FudgeSerializer;
+
+import com.opengamma.livedata.LiveDataFieldOrdinals;
+import com.opengamma.livedata.LiveDataSpecificationFudgeBuilder;
+import com.opengamma.livedata.LiveDataValueUpdate;
+import com.opengamma.livedata.LiveDataValueUpdateBean;
+import com.opengamma.livedata.LiveDataValueUpdateBeanFudgeBuilder;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Encodes the updates sent for a distributor as field-level deltas.
+ * <p>
+ * The encoder holds the last value sent for each field. An update is normally encoded with a {@code delta}
+ * sub-message containing only the fields whose values have changed since they were last sent, each identified by
+ * its {@link LiveDataFieldOrdinals ordinal} where it has one and by name otherwise. Periodically, and whenever
+ * {@link #requireSnapshot()} has been called, the update is instead encoded as a snapshot carrying the full set of
+ * last values in the {@code fields} sub-message of the standard format. Clients that join the stream late, or that
+ * detect a gap in the sequence numbers, can rebuild complete values from the next snapshot.
+ * <p>
+ * This class is not thread-safe; each sender holds its own encoder and must not call it concurrently.
+ */
+public class LiveDataDeltaEncoder {
+
+  /**
+   * The default number of updates between snapshots.
+   */
+  public static final int DEFAULT_SNAPSHOT_INTERVAL = 100;
+
+  /**
+   * The last value sent for each field, keyed by name.
+   */
+  private final Map<String, FudgeField> _lastSent = new LinkedHashMap<String, FudgeField>();
+  /**
+   * The number of updates between snapshots.
+   */
+  private final int _snapshotInterval;
+  /**
+   * The number of deltas sent since the last snapshot.
+   */
+  private int _sinceSnapshot;
+  /**
+   * Whether the next update must be a snapshot.
+   */
+  private boolean _snapshotRequired = true;
+
+  /**
+   * Creates an encoder with the default snapshot interval.
+   */
+  public LiveDataDeltaEncoder() {
+    this(DEFAULT_SNAPSHOT_INTERVAL);
+  }
+
+  /**
+   * Creates an encoder.
+   *
+   * @param snapshotInterval  the number of updates between snapshots, greater than zero
+   */
+  public LiveDataDeltaEncoder(int snapshotInterval) {
+    ArgumentChecker.notNegativeOrZero(snapshotInterval, "snapshotInterval");
+    _snapshotInterval = snapshotInterval;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of updates between snapshots.
+   *
+   * @return the snapshot interval
+   */
+  public int getSnapshotInterval() {
+    return _snapshotInterval;
+  }
+
+  /**
+   * Forces the next update to be encoded as a snapshot. Called when updates may have been lost, for example after the
+   * transport has been interrupted.
+   */
+  public void requireSnapshot() {
+    _snapshotRequired = true;
+  }
+
+  /**
+   * Encodes an update.
+   *
+   * @param serializer  the serializer, not null
+   * @param update  the update to send, not null
+   * @return the message, not null
+   */
+  public MutableFudgeMsg encode(FudgeSerializer serializer, LiveDataValueUpdateBean update) {
+    ArgumentChecker.notNull(serializer, "serializer");
+    ArgumentChecker.notNull(update, "update");
+    final MutableFudgeMsg msg = serializer.newMessage();
+    msg.add(LiveDataValueUpdateBeanFudgeBuilder.SEQUENCE_NUMBER_FIELD_NAME, update.getSequenceNumber());
+    if (update.getSpecification() != null) {
+      msg.add(LiveDataValueUpdateBeanFudgeBuilder.SPECIFICATION_FIELD_NAME, LiveDataSpecificationFudgeBuilder.toFudgeMsg(serializer, update.getSpecification()));
+    }
+    final MutableFudgeMsg delta = serializer.newMessage();
+    if (update.getFields() != null) {
+      for (FudgeField field : update.getFields()) {
+        if (field.getName() == null) {
+          continue;
+        }
+        final FudgeField previous = _lastSent.get(field.getName());
+        if ((previous != null) && ObjectUtils.equals(previous.getValue(), field.getValue())) {
+          continue;
+        }
+        _lastSent.put(field.getName(), UnmodifiableFudgeField.of(field));
+        final Integer ordinal = LiveDataFieldOrdinals.getOrdinal(field.getName());
+        if (ordinal != null) {
+          delta.add(null, ordinal, field.getType(), field.getValue());
+        } else {
+          delta.add(field.getName(), null, field.getType(), field.getValue());
+        }
+      }
+    }
+    if (_snapshotRequired || (update.getSequenceNumber() == LiveDataValueUpdate.SEQUENCE_START) || (_sinceSnapshot >= _snapshotInterval)) {
+      msg.add(LiveDataValueUpdateBeanFudgeBuilder.FIELDS_FIELD_NAME, getSnapshot(serializer));
+      _snapshotRequired = false;
+      _sinceSnapshot = 0;
+    } else {
+      // An empty delta is still sent so that the client sees every sequence number
+      msg.add(LiveDataValueUpdateBeanFudgeBuilder.DELTA_FIELD_NAME, delta);
+      _sinceSnapshot++;
+    }
+    return msg;
+  }
+
+  private FudgeMsg getSnapshot(FudgeSerializer serializer) {
+    final MutableFudgeMsg snapshot = serializer.newMessage();
+    for (FudgeField field : _lastSent.values()) {
+      snapshot.add(field);
+    }
+    return snapshot;
+  }
+
+}
@@ -21,6 +21,11 @@ import com.opengamma.util.ArgumentChecker;
 
 /**
  * Distributes market data to clients and keeps a history of what has been distributed.
+ * <p>
+ * By default each tick is sent by the thread that receives it. If the distributor is created with a
+ * {@link ConflatingDistributionPool} then ticks are instead merged into a pending message holding the latest value of
+ * each field, which is sent by one of the pool's threads. Either way, ticks for one distributor are normalized one at
+ * a time under its lock.
  */
 public class MarketDataDistributor {
 
@@ -74,6 +79,23 @@ public class MarketDataDistributor {
    * Null means the distributor should not expire.
    */
   private Long _expiry;
+  /**
+   * The pool sending conflated messages, null to send each tick as it is received.
+   */
+  private final ConflatingDistributionPool _distributionPool;
+  /**
+   * The latest value of each field received since the last conflated message was sent. Access controlled via itself.
+   */
+  private final FieldHistoryStore _pending = new FieldHistoryStore();
+  /**
+   * The {@link System#nanoTime} at which the oldest tick in the pending message was received. Access controlled via
+   * {@link #_pending}.
+   */
+  private long _pendingSince;
+  /**
+   * Whether the distributor is queued with, or being sent by, the pool. Access controlled via {@link #_pending}.
+   */
+  private boolean _scheduled;
 
   /**
    * Creates an instance.
@@ -87,12 +109,30 @@ public class MarketDataDistributor {
       Subscription subscription,
       MarketDataSenderFactory marketDataSenderFactory,
       boolean persistent) {
+    this(distributionSpec, subscription, marketDataSenderFactory, persistent, null);
+  }
+
+  /**
+   * Creates an instance.
+   * 
+   * @param distributionSpec  What data should be distributed, how and where.
+   * @param subscription  Which subscription this distributor belongs to.
+   * @param marketDataSenderFactory  Used to create listener(s) that actually publish the data
+   * @param persistent  Whether this distributor is persistent. 
+   * @param distributionPool  The pool to send conflated messages, null to send each tick as it is received
+   */
+  public MarketDataDistributor(DistributionSpecification distributionSpec,
+      Subscription subscription,
+      MarketDataSenderFactory marketDataSenderFactory,
+      boolean persistent,
+      ConflatingDistributionPool distributionPool) {
     ArgumentChecker.notNull(distributionSpec, "Distribution spec");
     ArgumentChecker.notNull(subscription, "Subscription");
     ArgumentChecker.notNull(marketDataSenderFactory, "Market data sender factory");
     
     _distributionSpec = distributionSpec;
     _subscription = subscription;
+    _distributionPool = distributionPool;
     _marketDataSenders = marketDataSenderFactory.create(this);
     if (_marketDataSenders == null) {
       throw new IllegalStateException("Null returned by " + marketDataSenderFactory);
@@ -137,6 +177,15 @@ public class MarketDataDistributor {
     return _numMessagesSent.get();
   }
 
+  /**
+   * Gets the pool sending conflated messages.
+   * 
+   * @return the pool, null if each tick is sent as it is received
+   */
+  public ConflatingDistributionPool getDistributionPool() {
+    return _distributionPool;
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Gets a snapshot of data, returning the latest value.
@@ -195,11 +244,14 @@ public class MarketDataDistributor {
   /**
    * Sends normalized market data to field receivers. 
    * <p>
-   * Serialized to ensure a well-defined distribution order for this topic.
+   * Serialized to ensure a well-defined distribution order for this topic. In conflating mode the normalized
+   * data is merged into the pending message and sent later by the pool, so only the {@link MarketDataSender}
+   * calls are made outside of the distributor's lock; normalization and the merge are still serialized.
    * 
    * @param liveDataFields Unnormalized market data from underlying market data API.
    */
   public synchronized void distributeLiveData(FudgeMsg liveDataFields) {
+    final long receivedNanos = System.nanoTime();
     FudgeMsg normalizedMsg;
     try {
       normalizedMsg = normalize(liveDataFields);
@@ -211,28 +263,80 @@ public class MarketDataDistributor {
     if (normalizedMsg != null) {
       updateLastKnownValues(normalizedMsg);
       
-      LiveDataValueUpdateBean data = new LiveDataValueUpdateBean(
-          getNumMessagesSent(), // 0-based as it should be
-          getDistributionSpec().getFullyQualifiedLiveDataSpecification(),
-          normalizedMsg);
-      
-      s_logger.debug("{}: Sending Live Data update {}", this, data);
-      
-      for (MarketDataSender sender : _marketDataSenders) {
-        try {
-          sender.sendMarketData(data);
-        } catch (RuntimeException e) {
-          s_logger.error(sender + " failed", e);
+      final ConflatingDistributionPool pool = getDistributionPool();
+      if (pool != null) {
+        pool.tickReceived();
+        boolean schedule = false;
+        synchronized (_pending) {
+          if (_pending.isEmpty()) {
+            _pendingSince = receivedNanos;
+          }
+          _pending.liveDataReceived(normalizedMsg);
+          if (!_scheduled) {
+            _scheduled = true;
+            schedule = true;
+          }
+        }
+        if (schedule) {
+          pool.schedule(this);
         }
+      } else {
+        send(normalizedMsg);
       }
-      
-      _numMessagesSent.incrementAndGet();
     
     } else {
       s_logger.debug("{}: Not sending Live Data update (message extinguished).", this);
     }
   }
 
+  private void send(FudgeMsg normalizedMsg) {
+    LiveDataValueUpdateBean data = new LiveDataValueUpdateBean(
+        getNumMessagesSent(), // 0-based as it should be
+        getDistributionSpec().getFullyQualifiedLiveDataSpecification(),
+        normalizedMsg);
+    
+    s_logger.debug("{}: Sending Live Data update {}", this, data);
+    
+    for (MarketDataSender sender : _marketDataSenders) {
+      try {
+        sender.sendMarketData(data);
+      } catch (RuntimeException e) {
+        s_logger.error(sender + " failed", e);
+      }
+    }
+    
+    _numMessagesSent.incrementAndGet();
+  }
+
+  /**
+   * Sends the pending conflated message. Called by a thread of the pool; only one thread sends for a
+   * distributor at a time as the distributor is not queued again until this returns.
+   * 
+   * @return true if more ticks were received while sending and the distributor must be queued again
+   */
+  /*package*/ boolean sendPending() {
+    final FudgeMsg pendingMsg;
+    final long pendingSince;
+    synchronized (_pending) {
+      if (_pending.isEmpty()) {
+        _scheduled = false;
+        return false;
+      }
+      pendingMsg = _pending.getLastKnownValues();
+      pendingSince = _pendingSince;
+      _pending.clear();
+    }
+    send(pendingMsg);
+    getDistributionPool().messageSent(pendingSince);
+    synchronized (_pending) {
+      if (_pending.isEmpty()) {
+        _scheduled = false;
+        return false;
+      }
+      return true;
+    }
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Gets the expiry instant.
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.client;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.fudgemsg.mapping.FudgeSerializer;
+import org.testng.annotations.Test;
+
+import com.opengamma.core.value.MarketDataRequirementNames;
+import com.opengamma.id.ExternalId;
+import com.opengamma.livedata.LiveDataFieldOrdinals;
+import com.opengamma.livedata.LiveDataSpecification;
+import com.opengamma.livedata.LiveDataValueUpdateBean;
+import com.opengamma.livedata.LiveDataValueUpdateBeanFudgeBuilder;
+import com.opengamma.livedata.server.distribution.LiveDataDeltaEncoder;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * Tests the {@link LiveDataDeltaDecoder} class against {@link LiveDataDeltaEncoder}.
+ */
+@Test(groups = "unit")
+public class LiveDataDeltaDecoderTest {
+
+  private final FudgeContext _fudgeContext = OpenGammaFudgeContext.getInstance();
+  private final LiveDataSpecification _spec = new LiveDataSpecification("foo", ExternalId.of("bar", "baz"));
+
+  private LiveDataValueUpdateBean update(final long sequenceNumber, final Object... fields) {
+    final MutableFudgeMsg msg = _fudgeContext.newMessage();
+    for (int i = 0; i < fields.length; i += 2) {
+      msg.add((String) fields[i], fields[i + 1]);
+    }
+    return new LiveDataValueUpdateBean(sequenceNumber, _spec, msg);
+  }
+
+  private FudgeMsg encode(final LiveDataDeltaEncoder encoder, final LiveDataValueUpdateBean update) {
+    // Round trip through bytes as the client would receive it
+    return _fudgeContext.deserialize(_fudgeContext.toByteArray(encoder.encode(new FudgeSerializer(_fudgeContext), update))).getMessage();
+  }
+
+  private LiveDataValueUpdateBean decode(final LiveDataDeltaDecoder decoder, final FudgeMsg msg) {
+    return decoder.decode(new FudgeDeserializer(_fudgeContext), msg);
+  }
+
+  public void testDeltaRebuiltToFullValues() {
+    final LiveDataDeltaEncoder encoder = new LiveDataDeltaEncoder();
+    final LiveDataDeltaDecoder decoder = new LiveDataDeltaDecoder();
+    FudgeMsg msg = encode(encoder, update(0, MarketDataRequirementNames.BID, 1d, MarketDataRequirementNames.ASK, 2d, "Custom", "X"));
+    assertNotNull(msg.getMessage(LiveDataValueUpdateBeanFudgeBuilder.FIELDS_FIELD_NAME));
+    LiveDataValueUpdateBean decoded = decode(decoder, msg);
+    assertEquals(0, decoded.getSequenceNumber());
+    assertEquals(_spec, decoded.getSpecification());
+    assertEquals(1d, decoded.getFields().getDouble(MarketDataRequirementNames.BID), 1e-9);
+    // Only the changed field is sent, by ordinal
+    msg = encode(encoder, update(1, MarketDataRequirementNames.BID, 1.5d, MarketDataRequirementNames.ASK, 2d, "Custom", "X"));
+    assertNull(msg.getMessage(LiveDataValueUpdateBeanFudgeBuilder.FIELDS_FIELD_NAME));
+    final FudgeMsg delta = msg.getMessage(LiveDataValueUpdateBeanFudgeBuilder.DELTA_FIELD_NAME);
+    assertEquals(1, delta.getNumFields());
+    assertEquals(1.5d, delta.getDouble(LiveDataFieldOrdinals.getOrdinal(MarketDataRequirementNames.BID)), 1e-9);
+    decoded = decode(decoder, msg);
+    assertEquals(1, decoded.getSequenceNumber());
+    assertEquals(3, decoded.getFields().getNumFields());
+    assertEquals(1.5d, decoded.getFields().getDouble(MarketDataRequirementNames.BID), 1e-9);
+    assertEquals(2d, decoded.getFields().getDouble(MarketDataRequirementNames.ASK), 1e-9);
+    assertEquals("X", decoded.getFields().getString("Custom"));
+    // Fields without an ordinal are sent by name
+    msg = encode(encoder, update(2, "Custom", "Y"));
+    assertEquals("Y", msg.getMessage(LiveDataValueUpdateBeanFudgeBuilder.DELTA_FIELD_NAME).getString("Custom"));
+    decoded = decode(decoder, msg);
+    assertEquals("Y", decoded.getFields().getString("Custom"));
+    assertEquals(1.5d, decoded.getFields().getDouble(MarketDataRequirementNames.BID), 1e-9);
+    assertEquals(0, decoder.getGapCount());
+  }
+
+  public void testPeriodicSnapshot() {
+    final LiveDataDeltaEncoder encoder = new LiveDataDeltaEncoder(2);
+    FudgeMsg msg = encode(encoder, update(0, MarketDataRequirementNames.BID, 1d));
+    assertNotNull(msg.getMessage(LiveDataValueUpdateBeanFudgeBuilder.FIELDS_FIELD_NAME));
+    msg = encode(encoder, update(1, MarketDataRequirementNames.ASK, 2d));
+    assertNotNull(msg.getMessage(LiveDataValueUpdateBeanFudgeBuilder.DELTA_FIELD_NAME));
+    msg = encode(encoder, update(2, MarketDataRequirementNames.ASK, 3d));
+    assertNotNull(msg.getMessage(LiveDataValueUpdateBeanFudgeBuilder.DELTA_FIELD_NAME));
+    msg = encode(encoder, update(3, MarketDataRequirementNames.ASK, 4d));
+    final FudgeMsg snapshot = msg.getMessage(LiveDataValueUpdateBeanFudgeBuilder.FIELDS_FIELD_NAME);
+    assertNotNull(snapshot);
+    assertEquals(1d, snapshot.getDouble(MarketDataRequirementNames.BID), 1e-9);
+    assertEquals(4d, snapshot.getDouble(MarketDataRequirementNames.ASK), 1e-9);
+    encoder.requireSnapshot();
+    msg = encode(encoder, update(4, MarketDataRequirementNames.ASK, 4d));
+    assertNotNull(msg.getMessage(LiveDataValueUpdateBeanFudgeBuilder.FIELDS_FIELD_NAME));
+  }
+
+  public void testGap() {
+    final LiveDataDeltaEncoder encoder = new LiveDataDeltaEncoder(3);
+    final LiveDataDeltaDecoder decoder = new LiveDataDeltaDecoder();
+    decode(decoder, encode(encoder, update(0, MarketDataRequirementNames.BID, 1d, MarketDataRequirementNames.ASK, 2d)));
+    // Update 1 is lost
+    encode(encoder, update(1, MarketDataRequirementNames.ASK, 2.5d));
+    LiveDataValueUpdateBean decoded = decode(decoder, encode(encoder, update(2, MarketDataRequirementNames.BID, 1.5d)));
+    assertEquals(1, decoder.getGapCount());
+    // Only the fields known to be current are delivered
+    assertEquals(1, decoded.getFields().getNumFields());
+    assertEquals(1.5d, decoded.getFields().getDouble(MarketDataRequirementNames.BID), 1e-9);
+    decoded = decode(decoder, encode(encoder, update(3, MarketDataRequirementNames.BID, 1.6d)));
+    assertEquals(1, decoded.getFields().getNumFields());
+    // The snapshot makes the image complete again
+    decoded = decode(decoder, encode(encoder, update(4, MarketDataRequirementNames.BID, 1.7d)));
+    assertEquals(2.5d, decoded.getFields().getDouble(MarketDataRequirementNames.ASK), 1e-9);
+    decoded = decode(decoder, encode(encoder, update(5, MarketDataRequirementNames.BID, 1.8d)));
+    assertEquals(2, decoded.getFields().getNumFields());
+    assertEquals(1, decoder.getGapCount());
+  }
+
+  public void testLateJoiner() {
+    final LiveDataDeltaEncoder encoder = new LiveDataDeltaEncoder();
+    final LiveDataDeltaDecoder decoder = new LiveDataDeltaDecoder();
+    encode(encoder, update(0, MarketDataRequirementNames.BID, 1d, MarketDataRequirementNames.ASK, 2d));
+    final LiveDataValueUpdateBean decoded = decode(decoder, encode(encoder, update(1, MarketDataRequirementNames.BID, 1.5d)));
+    assertEquals(1, decoded.getFields().getNumFields());
+    assertEquals(1.5d, decoded.getFields().getDouble(MarketDataRequirementNames.BID), 1e-9);
+    assertEquals(0, decoder.getGapCount());
+  }
+
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+
+package com.opengamma.livedata.firehose;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link TickJournalConnectorJob} and {@link RecordingStreamFactory} classes.
+ */
+@Test(groups = {"unit", "slow"})
+public class TickJournalConnectorJobTest {
+
+  private static final int KEYS = 5;
+
+  private static RecordStream.Factory<Integer> streamFactory() {
+    return new RecordStream.Factory<Integer>() {
+      @Override
+      public RecordStream<Integer> newInstance(final InputStream input) {
+        final DataInputStream data = new DataInputStream(input);
+        return new RecordStream<Integer>() {
+          @Override
+          public Integer readRecord() throws IOException {
+            return data.readInt();
+          }
+        };
+      }
+    };
+  }
+
+  private static final class Collector implements AbstractConnectorJob.Callback<Integer> {
+
+    private final List<List<Integer>> _received = new ArrayList<List<Integer>>();
+    private int _count;
+    private int _connected;
+    private int _disconnected;
+
+    private Collector() {
+      for (int i = 0; i < KEYS; i++) {
+        _received.add(new ArrayList<Integer>());
+      }
+    }
+
+    @Override
+    public synchronized void connected() {
+      _connected++;
+    }
+
+    @Override
+    public synchronized void received(final Integer record) {
+      _received.get(record % KEYS).add(record);
+      _count++;
+    }
+
+    @Override
+    public synchronized void disconnected() {
+      _disconnected++;
+    }
+
+  }
+
+  private static void record(final File file, final int records) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    for (int i = 0; i < records; i++) {
+      out.writeInt(i);
+    }
+    out.close();
+    final TickJournalWriter journal = new TickJournalWriter(file);
+    try {
+      final RecordStream<Integer> stream = new RecordingStreamFactory<Integer>(streamFactory(), journal, new RecordingStreamFactory.Partitioner<Integer>() {
+        @Override
+        public int getPartitionKey(final Integer record) {
+          return record % KEYS;
+        }
+      }).newInstance(new ByteArrayInputStream(bytes.toByteArray()));
+      for (int i = 0; i < records; i++) {
+        assertEquals(stream.readRecord().intValue(), i);
+      }
+      try {
+        stream.readRecord();
+      } catch (EOFException e) {
+        // Expected
+      }
+      assertEquals(journal.getRecordCount(), records);
+    } finally {
+      journal.close();
+    }
+  }
+
+  private static TickJournalConnectorJob<Integer> replay(final File file, final TickJournalConnectorJob.Mode mode, final double speed, final int partitions,
+      final Collector collector) {
+    return replay(file, mode, speed, partitions, collector, null);
+  }
+
+  private static TickJournalConnectorJob<Integer> replay(final File file, final TickJournalConnectorJob.Mode mode, final double speed, final int partitions,
+      final Collector collector, final ExecutorService pipeLineExecutor) {
+    final TickJournalConnectorJob.Factory<Integer> factory = new TickJournalConnectorJob.Factory<Integer>();
+    factory.setFilename(file.getPath());
+    factory.setMode(mode);
+    factory.setSpeed(speed);
+    factory.setPartitions(partitions);
+    factory.setRepeat(false);
+    final TickJournalConnectorJob<Integer> job = factory.newInstance(collector, streamFactory(), pipeLineExecutor);
+    job.run();
+    return job;
+  }
+
+  public void testRecordAndReplay() throws IOException {
+    final File file = File.createTempFile("journal", ".bin");
+    try {
+      record(file, 10000);
+      final Collector collector = new Collector();
+      final TickJournalConnectorJob<Integer> job = replay(file, TickJournalConnectorJob.Mode.AS_FAST_AS_POSSIBLE, 1.0, 2, collector);
+      assertEquals(job.getRecordsReplayed(), 10000L);
+      assertEquals(collector._count, 10000);
+      assertEquals(collector._connected, 1);
+      assertEquals(collector._disconnected, 1);
+      // Records with the same key arrive in the order recorded
+      for (int i = 0; i < KEYS; i++) {
+        final List<Integer> received = collector._received.get(i);
+        assertEquals(received.size(), 10000 / KEYS);
+        for (int j = 0; j < received.size(); j++) {
+          assertEquals(received.get(j).intValue(), j * KEYS + i);
+        }
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testPipeLined() throws IOException {
+    final File file = File.createTempFile("journal", ".bin");
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      record(file, 10000);
+      final Collector collector = new Collector();
+      final TickJournalConnectorJob<Integer> job = replay(file, TickJournalConnectorJob.Mode.AS_FAST_AS_POSSIBLE, 1.0, 2, collector, executor);
+      assertEquals(job.getRecordsReplayed(), 10000L);
+      assertEquals(collector._count, 10000);
+      assertEquals(collector._disconnected, 1);
+    } finally {
+      executor.shutdown();
+      file.delete();
+    }
+  }
+
+  private static void writeTimed(final File file) throws IOException {
+    final TickJournalWriter journal = new TickJournalWriter(file);
+    try {
+      for (int i = 0; i < 3; i++) {
+        journal.write(i * 100000000L, i, new byte[] {0, 0, 0, (byte) i }, 0, 4);
+      }
+    } finally {
+      journal.close();
+    }
+  }
+
+  public void testRealTime() throws IOException {
+    final File file = File.createTempFile("journal", ".bin");
+    try {
+      writeTimed(file);
+      final Collector collector = new Collector();
+      final long start = System.nanoTime();
+      replay(file, TickJournalConnectorJob.Mode.REAL_TIME, 1.0, 1, collector);
+      final long elapsed = System.nanoTime() - start;
+      assertEquals(collector._count, 3);
+      assertTrue(elapsed >= 190000000L, "Replay took " + elapsed + "ns");
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testScaled() throws IOException {
+    final File file = File.createTempFile("journal", ".bin");
+    try {
+      writeTimed(file);
+      final Collector collector = new Collector();
+      final long start = System.nanoTime();
+      replay(file, TickJournalConnectorJob.Mode.SCALED, 4.0, 1, collector);
+      final long elapsed = System.nanoTime() - start;
+      assertEquals(collector._count, 3);
+      assertTrue(elapsed >= 45000000L, "Replay took " + elapsed + "ns");
+    } finally {
+      file.delete();
+    }
+  }
+
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+
+package com.opengamma.livedata.firehose;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link TickJournalWriter} and {@link TickJournalReader} classes.
+ */
+@Test(groups = "unit")
+public class TickJournalTest {
+
+  private static byte[] record(final int i) {
+    final byte[] data = new byte[1 + (i % 37)];
+    for (int j = 0; j < data.length; j++) {
+      data[j] = (byte) (i + j);
+    }
+    return data;
+  }
+
+  private static void write(final File file, final int chunkSize, final int records) throws IOException {
+    final TickJournalWriter writer = new TickJournalWriter(file, chunkSize);
+    try {
+      for (int i = 0; i < records; i++) {
+        final byte[] data = record(i);
+        writer.write(i * 1000L, i % 7, data, 0, data.length);
+      }
+      assertEquals(writer.getRecordCount(), records);
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static void verify(final File file, final int records) throws IOException {
+    final TickJournalReader reader = new TickJournalReader(file);
+    try {
+      assertEquals(reader.getFirstTimestamp(), 0L);
+      for (int i = 0; i < records; i++) {
+        assertTrue(reader.next());
+        assertEquals(reader.getTimestamp(), i * 1000L);
+        assertEquals(reader.getKey(), i % 7);
+        assertEquals(reader.getData(), record(i));
+      }
+      assertFalse(reader.next());
+    } finally {
+      reader.close();
+    }
+  }
+
+  public void testRoundTrip() throws IOException {
+    final File file = File.createTempFile("journal", ".bin");
+    try {
+      write(file, TickJournalWriter.DEFAULT_CHUNK_SIZE, 1000);
+      verify(file, 1000);
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testSmallChunks() throws IOException {
+    final File file = File.createTempFile("journal", ".bin");
+    try {
+      // Records span the chunk boundaries
+      write(file, 50, 1000);
+      verify(file, 1000);
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testEmpty() throws IOException {
+    final File file = File.createTempFile("journal", ".bin");
+    try {
+      write(file, 1024, 0);
+      verify(file, 0);
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testPartialRead() throws IOException {
+    final File file = File.createTempFile("journal", ".bin");
+    try {
+      final TickJournalWriter writer = new TickJournalWriter(file);
+      writer.write(5, new byte[] {1, 2, 3, 4, 5 }, 0, 5);
+      writer.close();
+      final TickJournalReader reader = new TickJournalReader(file);
+      try {
+        assertTrue(reader.next());
+        final byte[] buffer = new byte[3];
+        assertEquals(reader.read(0, buffer, 0, 3), 3);
+        assertEquals(buffer, new byte[] {1, 2, 3 });
+        assertEquals(reader.read(3, buffer, 0, 3), 2);
+        assertEquals(reader.read(5, buffer, 0, 3), -1);
+      } finally {
+        reader.close();
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testUnclosedJournal() throws IOException {
+    final File file = File.createTempFile("journal", ".bin");
+    try {
+      write(file, 1024, 10);
+      // Simulate a journal left mapped by a process that died: zero padding after the last record
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.setLength(raf.length() + 4096);
+      } finally {
+        raf.close();
+      }
+      verify(file, 10);
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testNotAJournal() throws IOException {
+    final File file = File.createTempFile("journal", ".bin");
+    try {
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.writeLong(0);
+        raf.writeLong(0);
+      } finally {
+        raf.close();
+      }
+      new TickJournalReader(file);
+    } finally {
+      file.delete();
+    }
+  }
+
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.testng.annotations.Test;
+
+import com.opengamma.core.value.MarketDataRequirementNames;
+import com.opengamma.livedata.server.FieldHistoryStore;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * Tests the {@link CompiledNormalizationRuleSet} class against applying the rules one at a time.
+ */
+@Test(groups = "unit")
+public class CompiledNormalizationRuleSetTest {
+
+  /**
+   * Not compilable, so applied through the adapter.
+   */
+  private static class AddFieldRule implements NormalizationRule {
+    @Override
+    public MutableFudgeMsg apply(MutableFudgeMsg msg, String securityUniqueId, FieldHistoryStore fieldHistory) {
+      msg.add("Added", securityUniqueId);
+      return msg;
+    }
+  }
+
+  /* package */static FudgeMsg applyInTurn(final List<NormalizationRule> rules, final FudgeMsg msg, final String securityUniqueId, final FieldHistoryStore fieldHistory) {
+    MutableFudgeMsg normalizedMsg = OpenGammaFudgeContext.getInstance().newMessage(msg);
+    for (NormalizationRule rule : rules) {
+      normalizedMsg = rule.apply(normalizedMsg, securityUniqueId, fieldHistory);
+      if (normalizedMsg == null) {
+        break;
+      }
+    }
+    return normalizedMsg;
+  }
+
+  /* package */static void assertSameFields(final FudgeMsg expected, final FudgeMsg actual) {
+    if (expected == null) {
+      assertNull(actual);
+      return;
+    }
+    final List<FudgeField> expectedFields = expected.getAllFields();
+    final List<FudgeField> actualFields = actual.getAllFields();
+    assertEquals(expectedFields.size(), actualFields.size());
+    for (int i = 0; i < expectedFields.size(); i++) {
+      assertEquals(expectedFields.get(i).getName(), actualFields.get(i).getName());
+      assertEquals(expectedFields.get(i).getOrdinal(), actualFields.get(i).getOrdinal());
+      assertEquals(expectedFields.get(i).getValue(), actualFields.get(i).getValue());
+    }
+  }
+
+  private static void assertCompiledSame(final List<NormalizationRule> rules, final FudgeMsg msg, final FudgeMsg history) {
+    final FieldHistoryStore expectedHistory = new FieldHistoryStore(history);
+    final FieldHistoryStore actualHistory = new FieldHistoryStore(history);
+    final FudgeMsg expected = applyInTurn(rules, msg, "123", expectedHistory);
+    final FudgeMsg actual = new CompiledNormalizationRuleSet(rules, OpenGammaFudgeContext.getInstance()).getNormalizedMessage(msg, "123", actualHistory);
+    assertSameFields(expected, actual);
+    assertEquals(expectedHistory.getLastKnownValues().getNumFields(), actualHistory.getLastKnownValues().getNumFields());
+    for (FudgeField field : expectedHistory.getLastKnownValues()) {
+      assertEquals(field.getValue(), actualHistory.getLastKnownValues().getValue(field.getName()));
+    }
+  }
+
+  private static MutableFudgeMsg message(final Object... fields) {
+    final MutableFudgeMsg msg = OpenGammaFudgeContext.getInstance().newMessage();
+    for (int i = 0; i < fields.length; i += 2) {
+      msg.add((String) fields[i], fields[i + 1]);
+    }
+    return msg;
+  }
+
+  private static List<NormalizationRule> standardRules() {
+    return Arrays.<NormalizationRule>asList(
+        new FieldFilter("PX_BID", "PX_ASK", "PX_LAST", "VOLUME", "OPT_IMPLIED_VOLATILITY_MID"),
+        new FieldNameChange("PX_BID", MarketDataRequirementNames.BID),
+        new FieldNameChange("PX_ASK", MarketDataRequirementNames.ASK),
+        new FieldNameChange("PX_LAST", MarketDataRequirementNames.LAST),
+        new FieldNameChange("OPT_IMPLIED_VOLATILITY_MID", MarketDataRequirementNames.MID_IMPLIED_VOLATILITY),
+        new UnitChange(MarketDataRequirementNames.MID_IMPLIED_VOLATILITY, 0.01),
+        new MarketValueCalculator(),
+        new ImpliedVolatilityCalculator(),
+        new FieldHistoryUpdater());
+  }
+
+  public void testStandardRules() {
+    final List<NormalizationRule> rules = standardRules();
+    final FudgeMsg empty = OpenGammaFudgeContext.getInstance().newMessage();
+    assertCompiledSame(rules, message("PX_BID", 50.80, "PX_ASK", 50.90, "PX_LAST", 50.89, "Ignored", "X", "VOLUME", 1000), empty);
+    assertCompiledSame(rules, message("PX_LAST", 50.89, "OPT_IMPLIED_VOLATILITY_MID", 25.5), empty);
+    // Wide spread, last from history
+    assertCompiledSame(rules, message("PX_BID", 50.0, "PX_ASK", 60.0), message(MarketDataRequirementNames.LAST, 55.0, MarketDataRequirementNames.IMPLIED_VOLATILITY, 0.2));
+    // Market value from history
+    assertCompiledSame(rules, message("VOLUME", 10), message(MarketDataRequirementNames.MARKET_VALUE, 12.5));
+    // Filtered out completely
+    assertCompiledSame(rules, message("Ignored", "X"), empty);
+  }
+
+  public void testRepeatedAndUnnamedFields() {
+    final List<NormalizationRule> rules = Arrays.<NormalizationRule>asList(
+        new FieldNameChange("A", "B"),
+        new UnitChange("B", 2.0),
+        new UnitChange("C", 3.0));
+    final MutableFudgeMsg msg = message("A", 1.0, "C", 2.0, "A", 3.0, "B", 4.0, "D", "X");
+    msg.add(null, 5, 6.0);
+    assertCompiledSame(rules, msg, OpenGammaFudgeContext.getInstance().newMessage());
+  }
+
+  public void testAdaptedRule() {
+    final List<NormalizationRule> rules = Arrays.<NormalizationRule>asList(
+        new FieldFilter("A", "B"),
+        new AddFieldRule(),
+        new RequiredFieldFilter("Added"),
+        new FieldNameChange("A", "C"),
+        new FieldHistoryUpdater());
+    assertCompiledSame(rules, message("A", 1.0, "Z", 2.0, "B", 3.0), OpenGammaFudgeContext.getInstance().newMessage());
+  }
+
+  public void testRequiredFieldRejects() {
+    final List<NormalizationRule> rules = Arrays.<NormalizationRule>asList(
+        new RequiredFieldFilter("Foo"),
+        new FieldFilter("Bar"));
+    assertCompiledSame(rules, message("Bar", 2.0, "Baz", 500), OpenGammaFudgeContext.getInstance().newMessage());
+    assertCompiledSame(rules, message("Bar", 2.0, "Foo", 500), OpenGammaFudgeContext.getInstance().newMessage());
+  }
+
+  public void testBufferReused() {
+    final CompiledNormalizationRuleSet compiled = new CompiledNormalizationRuleSet(standardRules(), OpenGammaFudgeContext.getInstance());
+    final FieldHistoryStore history = new FieldHistoryStore();
+    final FudgeMsg first = compiled.getNormalizedMessage(message("PX_BID", 1.0, "PX_ASK", 1.02), "123", history);
+    final FudgeMsg second = compiled.getNormalizedMessage(message("PX_LAST", 1.01), "123", history);
+    // The first result is not changed by normalizing the second
+    assertEquals(3, first.getNumFields());
+    assertEquals(1.01, first.getDouble(MarketDataRequirementNames.MARKET_VALUE), 1e-9);
+    assertEquals(1.01, second.getDouble(MarketDataRequirementNames.LAST), 1e-9);
+    assertEquals(1.01, second.getDouble(MarketDataRequirementNames.MARKET_VALUE), 1e-9);
+  }
+
+}
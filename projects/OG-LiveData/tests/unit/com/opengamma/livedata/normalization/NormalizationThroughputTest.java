@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.core.value.MarketDataRequirementNames;
+import com.opengamma.livedata.firehose.AbstractConnectorJob;
+import com.opengamma.livedata.firehose.AbstractTest;
+import com.opengamma.livedata.firehose.RecordStream;
+import com.opengamma.livedata.server.FieldHistoryStore;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * Measures the throughput of normalizing ticks replayed from a file through the fire hose classes, applying the rules
+ * one at a time and compiled.
+ */
+@Test(groups = "integration")
+public class NormalizationThroughputTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(NormalizationThroughputTest.class);
+
+  private static final int TICKS = 200000;
+  private static final int SECURITIES = 500;
+
+  private final FudgeContext _fudgeContext = OpenGammaFudgeContext.getInstance();
+
+  private static List<NormalizationRule> rules() {
+    return Arrays.<NormalizationRule>asList(
+        new FieldFilter("PX_BID", "PX_ASK", "PX_LAST", "VOLUME", "OPT_IMPLIED_VOLATILITY_MID"),
+        new FieldNameChange("PX_BID", MarketDataRequirementNames.BID),
+        new FieldNameChange("PX_ASK", MarketDataRequirementNames.ASK),
+        new FieldNameChange("PX_LAST", MarketDataRequirementNames.LAST),
+        new FieldNameChange("VOLUME", MarketDataRequirementNames.VOLUME),
+        new FieldNameChange("OPT_IMPLIED_VOLATILITY_MID", MarketDataRequirementNames.MID_IMPLIED_VOLATILITY),
+        new UnitChange(MarketDataRequirementNames.MID_IMPLIED_VOLATILITY, 0.01),
+        new MarketValueCalculator(),
+        new ImpliedVolatilityCalculator(),
+        new FieldHistoryUpdater());
+  }
+
+  private void writeTicks(final File file) throws IOException {
+    final Random random = new Random(1L);
+    final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+    try {
+      for (int i = 0; i < TICKS; i++) {
+        final MutableFudgeMsg msg = _fudgeContext.newMessage();
+        msg.add("SECURITY", random.nextInt(SECURITIES));
+        final double bid = 100.0 + random.nextDouble();
+        msg.add("PX_BID", bid);
+        msg.add("PX_ASK", bid + 0.05);
+        if (random.nextBoolean()) {
+          msg.add("PX_LAST", bid + 0.02);
+          msg.add("VOLUME", random.nextInt(10000));
+        }
+        if (random.nextInt(4) == 0) {
+          msg.add("OPT_IMPLIED_VOLATILITY_MID", 20.0 + random.nextDouble());
+        }
+        // Fields the rules discard, as a raw feed would carry
+        for (int j = 0; j < 20; j++) {
+          msg.add("FIELD_" + j, random.nextDouble());
+        }
+        final byte[] bytes = _fudgeContext.toByteArray(msg);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private RecordStream.Factory<FudgeMsg> streamFactory() {
+    return new RecordStream.Factory<FudgeMsg>() {
+      @Override
+      public RecordStream<FudgeMsg> newInstance(final InputStream input) {
+        final DataInputStream data = new DataInputStream(input);
+        return new RecordStream<FudgeMsg>() {
+          @Override
+          public FudgeMsg readRecord() throws IOException {
+            final byte[] bytes = new byte[data.readInt()];
+            data.readFully(bytes);
+            return _fudgeContext.deserialize(bytes).getMessage();
+          }
+        };
+      }
+    };
+  }
+
+  private List<FudgeMsg> replay(final String filename, final boolean compiled) {
+    final List<NormalizationRule> rules = rules();
+    final CompiledNormalizationRuleSet compiledRules = new CompiledNormalizationRuleSet(rules, _fudgeContext);
+    final FieldHistoryStore[] histories = new FieldHistoryStore[SECURITIES];
+    for (int i = 0; i < SECURITIES; i++) {
+      histories[i] = new FieldHistoryStore();
+    }
+    final List<FudgeMsg> results = new ArrayList<FudgeMsg>(TICKS);
+    final long[] normalizeTime = new long[1];
+    AbstractTest.readFile(filename, new AbstractConnectorJob.Callback<FudgeMsg>() {
+
+      @Override
+      public void connected() {
+      }
+
+      @Override
+      public void received(final FudgeMsg record) {
+        final int security = record.getInt("SECURITY");
+        final long start = System.nanoTime();
+        final FudgeMsg normalized;
+        if (compiled) {
+          normalized = compiledRules.getNormalizedMessage(record, Integer.toString(security), histories[security]);
+        } else {
+          normalized = CompiledNormalizationRuleSetTest.applyInTurn(rules, record, Integer.toString(security), histories[security]);
+        }
+        normalizeTime[0] += System.nanoTime() - start;
+        results.add(normalized);
+      }
+
+      @Override
+      public void disconnected() {
+        // Stop after one pass of the file
+        throw new OpenGammaRuntimeException("End of file");
+      }
+
+    }, streamFactory());
+    s_logger.info("{} normalization of {} ticks took {}ms ({} ticks/s)", new Object[] {compiled ? "Compiled" : "Rule by rule", results.size(), normalizeTime[0] / 1000000,
+      (long) (results.size() / (normalizeTime[0] / 1e9)) });
+    return results;
+  }
+
+  public void testThroughput() throws IOException {
+    final File file = File.createTempFile("normalization", ".bin");
+    try {
+      writeTicks(file);
+      // The first pass of each warms up the JIT
+      replay(file.getPath(), false);
+      replay(file.getPath(), true);
+      final List<FudgeMsg> expected = replay(file.getPath(), false);
+      final List<FudgeMsg> actual = replay(file.getPath(), true);
+      assertEquals(TICKS, expected.size());
+      assertEquals(TICKS, actual.size());
+      for (int i = 0; i < TICKS; i++) {
+        CompiledNormalizationRuleSetTest.assertSameFields(expected.get(i), actual.get(i));
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+}
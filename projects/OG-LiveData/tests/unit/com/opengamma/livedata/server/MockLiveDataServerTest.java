@@ -12,7 +12,11 @@ import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertSame;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -182,6 +186,79 @@ public class MockLiveDataServerTest {
     assertFalse(_server.stopDistributor(distributor));
   }
 
+  public void subscribeUnsubscribeBatch() {
+    _server.subscribe(Arrays.asList(getSpec("a"), getSpec("b"), getSpec("c")), false);
+    assertEquals(3, _server.getNumActiveSubscriptions());
+    assertEquals(3, _server.getActualSubscriptions().size());
+    
+    Collection<Subscription> subscriptions = Arrays.asList(_server.getSubscription("a"), _server.getSubscription("c"));
+    assertEquals(2, _server.unsubscribe(subscriptions));
+    assertEquals(Arrays.asList("a", "c"), _server.getActualUnsubscriptions());
+    assertFalse(_server.isSubscribedTo("a"));
+    assertTrue(_server.isSubscribedTo("b"));
+    assertFalse(_server.isSubscribedTo("c"));
+    assertNull(_server.getMarketDataDistributor(getSpec("a")));
+    assertNotNull(_server.getMarketDataDistributor(getSpec("b")));
+    
+    // Already removed
+    assertEquals(0, _server.unsubscribe(subscriptions));
+    assertEquals(2, _server.getActualUnsubscriptions().size());
+  }
+
+  public void stopDistributorsBatch() {
+    _server.subscribe(Arrays.asList(getSpec("a"), getSpec("b")), false);
+    _server.subscribe(getSpec("c"), true);
+    
+    Collection<MarketDataDistributor> distributors = new ArrayList<MarketDataDistributor>();
+    for (String uniqueId : Arrays.asList("a", "b", "c")) {
+      distributors.add(_server.getMarketDataDistributor(getSpec(uniqueId)));
+    }
+    // The persistent distributor is not stopped
+    assertEquals(2, _server.stopDistributors(distributors));
+    assertEquals(2, _server.getActualUnsubscriptions().size());
+    assertTrue(_server.getActualUnsubscriptions().containsAll(Arrays.asList("a", "b")));
+    assertEquals(1, _server.getNumActiveSubscriptions());
+    assertTrue(_server.isSubscribedTo("c"));
+    
+    assertEquals(0, _server.stopDistributors(distributors));
+  }
+
+  public void subscribeWithoutHandle() {
+    final Collection<String> refused = new ArrayList<String>(Arrays.asList("b"));
+    MockLiveDataServer server = new MockLiveDataServer(_domain) {
+      @Override
+      protected Map<String, Object> doSubscribe(Collection<String> uniqueIds) {
+        Map<String, Object> handles = super.doSubscribe(uniqueIds);
+        handles.keySet().removeAll(refused);
+        return handles;
+      }
+    };
+    server.connect();
+    
+    // The second request for "b" attaches to the pending subscription created by the first
+    LiveDataSpecification otherSpecB = new LiveDataSpecification(StandardRules.getNoNormalization().getId(), ExternalId.of(_domain, "b"), ExternalId.of("other", "b"));
+    Collection<LiveDataSubscriptionResponse> responses = server.subscribe(Arrays.asList(getSpec("a"), getSpec("b"), otherSpecB), false);
+    assertEquals(3, responses.size());
+    for (LiveDataSubscriptionResponse response : responses) {
+      if (response.getRequestedSpecification().equals(getSpec("a"))) {
+        assertEquals(LiveDataSubscriptionResult.SUCCESS, response.getSubscriptionResult());
+      } else {
+        assertEquals(LiveDataSubscriptionResult.INTERNAL_ERROR, response.getSubscriptionResult());
+      }
+    }
+    assertEquals(1, server.getNumActiveSubscriptions());
+    assertTrue(server.isSubscribedTo("a"));
+    assertFalse(server.isSubscribedTo("b"));
+    assertNull(server.getSubscription("b"));
+    
+    // Nothing is left pending, so a later request subscribes again
+    refused.clear();
+    LiveDataSubscriptionResponse response = server.subscribe(getSpec("b"), false);
+    assertEquals(LiveDataSubscriptionResult.SUCCESS, response.getSubscriptionResult());
+    assertTrue(server.isSubscribedTo("b"));
+    assertEquals(Arrays.asList("a", "b", "b"), server.getActualSubscriptions());
+  }
+
   private void checkResponse(UserPrincipal user, LiveDataSpecification requestedSpec,
       LiveDataSubscriptionResponseMsg response) {
     assertEquals(user, response.getRequestingUser());
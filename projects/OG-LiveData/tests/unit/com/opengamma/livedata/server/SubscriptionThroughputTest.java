@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.core.value.MarketDataRequirementNames;
+import com.opengamma.id.ExternalScheme;
+import com.opengamma.livedata.LiveDataSpecification;
+import com.opengamma.livedata.normalization.StandardRules;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * Measures how fast a server takes a storm of subscriptions, as at view start up, and the tick rate it sustains while
+ * subscriptions are being made and removed.
+ */
+@Test(groups = "integration")
+public class SubscriptionThroughputTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(SubscriptionThroughputTest.class);
+
+  private static final int SECURITIES = 50000;
+  private static final int THREADS = 8;
+  private static final int BATCH = 500;
+  private static final long TICK_MILLIS = 2000;
+
+  /**
+   * A server whose market data API takes a little time for each batch, as a real one would.
+   */
+  private static final class BenchmarkLiveDataServer extends AbstractLiveDataServer {
+
+    private final ExternalScheme _domain = ExternalScheme.of("Benchmark");
+
+    private BenchmarkLiveDataServer() {
+      super(false);
+    }
+
+    private static void callMarketDataApi() {
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    protected Map<String, Object> doSubscribe(Collection<String> uniqueIds) {
+      callMarketDataApi();
+      Map<String, Object> handles = new HashMap<String, Object>();
+      for (String uniqueId : uniqueIds) {
+        handles.put(uniqueId, uniqueId);
+      }
+      return handles;
+    }
+
+    @Override
+    protected void doUnsubscribe(Collection<Object> subscriptionHandles) {
+      callMarketDataApi();
+    }
+
+    @Override
+    protected Map<String, FudgeMsg> doSnapshot(Collection<String> uniqueIds) {
+      return new HashMap<String, FudgeMsg>();
+    }
+
+    @Override
+    protected ExternalScheme getUniqueIdDomain() {
+      return _domain;
+    }
+
+    @Override
+    protected void doConnect() {
+    }
+
+    @Override
+    protected void doDisconnect() {
+    }
+
+    @Override
+    protected boolean snapshotOnSubscriptionStartRequired(Subscription subscription) {
+      return false;
+    }
+
+    @Override
+    public String getDefaultNormalizationRuleSetId() {
+      return StandardRules.getNoNormalization().getId();
+    }
+
+  }
+
+  private static List<LiveDataSpecification> batch(final AbstractLiveDataServer server, final int from, final int to) {
+    final List<LiveDataSpecification> specs = new ArrayList<LiveDataSpecification>(to - from);
+    for (int i = from; i < to; i++) {
+      specs.add(server.getLiveDataSpecification(Integer.toString(i)));
+    }
+    return specs;
+  }
+
+  private static void waitFor(final List<Future<Object>> futures) throws Exception {
+    for (Future<Object> future : futures) {
+      future.get();
+    }
+  }
+
+  private static long subscribeAll(final BenchmarkLiveDataServer server, final ExecutorService executor) throws Exception {
+    final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+    final long start = System.nanoTime();
+    for (int i = 0; i < SECURITIES; i += BATCH) {
+      final int from = i;
+      futures.add(executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          server.subscribe(batch(server, from, Math.min(from + BATCH, SECURITIES)), false);
+          return null;
+        }
+      }));
+    }
+    waitFor(futures);
+    return System.nanoTime() - start;
+  }
+
+  private static long tick(final BenchmarkLiveDataServer server, final ExecutorService executor, final boolean churn) throws Exception {
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicLong ticks = new AtomicLong();
+    final MutableFudgeMsg msg = OpenGammaFudgeContext.getInstance().newMessage();
+    msg.add(MarketDataRequirementNames.MARKET_VALUE, 1.0);
+    final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+    for (int t = 0; t < THREADS / 2; t++) {
+      final Random random = new Random(t);
+      futures.add(executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          long count = 0;
+          while (!stop.get()) {
+            server.liveDataReceived(Integer.toString(random.nextInt(SECURITIES)), msg);
+            count++;
+          }
+          ticks.addAndGet(count);
+          return null;
+        }
+      }));
+    }
+    if (churn) {
+      // Repeatedly remove and restore the subscriptions of one batch per thread, as views come and go
+      for (int t = 0; t < THREADS / 2; t++) {
+        final int from = t * BATCH;
+        futures.add(executor.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            final List<LiveDataSpecification> specs = batch(server, from, from + BATCH);
+            while (!stop.get()) {
+              final List<Subscription> subscriptions = new ArrayList<Subscription>(BATCH);
+              for (int i = from; i < from + BATCH; i++) {
+                subscriptions.add(server.getSubscription(Integer.toString(i)));
+              }
+              server.unsubscribe(subscriptions);
+              server.subscribe(specs, false);
+            }
+            return null;
+          }
+        }));
+      }
+    }
+    Thread.sleep(TICK_MILLIS);
+    stop.set(true);
+    waitFor(futures);
+    return ticks.get();
+  }
+
+  public void testSubscriptionStormAndTickRate() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final BenchmarkLiveDataServer server = new BenchmarkLiveDataServer();
+      server.connect();
+      final long subscribeNanos = subscribeAll(server, executor);
+      assertEquals(SECURITIES, server.getNumActiveSubscriptions());
+      s_logger.info("Subscribed to {} securities in {}ms ({} subscriptions/s)", new Object[] {SECURITIES, subscribeNanos / 1000000,
+        (long) (SECURITIES / (subscribeNanos / 1e9)) });
+      final long quietTicks = tick(server, executor, false);
+      s_logger.info("Sustained {} ticks/s", quietTicks * 1000 / TICK_MILLIS);
+      final long churnTicks = tick(server, executor, true);
+      s_logger.info("Sustained {} ticks/s while subscribing and unsubscribing", churnTicks * 1000 / TICK_MILLIS);
+      assertEquals(SECURITIES, server.getNumActiveSubscriptions());
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2012 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server.distribution;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.fudgemsg.MutableFudgeMsg;
+import org.testng.annotations.Test;
+
+import com.opengamma.id.ExternalId;
+import com.opengamma.livedata.LiveDataValueUpdateBean;
+import com.opengamma.livedata.normalization.StandardRules;
+import com.opengamma.livedata.server.DistributionSpecification;
+import com.opengamma.livedata.server.Subscription;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * Tests the {@link ConflatingDistributionPool} class.
+ */
+@Test(groups = "unit")
+public class ConflatingDistributionPoolTest {
+
+  /**
+   * Records the updates sent, blocking on the first until released.
+   */
+  private static class BlockingSender implements MarketDataSender {
+
+    private final MarketDataDistributor _distributor;
+    private final List<LiveDataValueUpdateBean> _sent = new CopyOnWriteArrayList<LiveDataValueUpdateBean>();
+    private final CountDownLatch _firstSending = new CountDownLatch(1);
+    private final CountDownLatch _release = new CountDownLatch(1);
+
+    public BlockingSender(final MarketDataDistributor distributor) {
+      _distributor = distributor;
+    }
+
+    @Override
+    public void sendMarketData(final LiveDataValueUpdateBean data) {
+      _firstSending.countDown();
+      try {
+        _release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      _sent.add(data);
+    }
+
+    @Override
+    public MarketDataDistributor getDistributor() {
+      return _distributor;
+    }
+
+  }
+
+  private static class BlockingSenderFactory implements MarketDataSenderFactory {
+
+    private BlockingSender _sender;
+
+    @Override
+    public Collection<MarketDataSender> create(final MarketDataDistributor distributor) {
+      _sender = new BlockingSender(distributor);
+      return Collections.<MarketDataSender>singleton(_sender);
+    }
+
+  }
+
+  private static MutableFudgeMsg tick(final String field, final double value) {
+    final MutableFudgeMsg msg = OpenGammaFudgeContext.getInstance().newMessage();
+    msg.add(field, value);
+    return msg;
+  }
+
+  private static void waitForMessages(final ConflatingDistributionPool pool, final long messages) throws InterruptedException {
+    for (int i = 0; (i < 500) && (pool.getMessagesSent() < messages); i++) {
+      Thread.sleep(10);
+    }
+  }
+
+  public void testConflation() throws InterruptedException {
+    final ConflatingDistributionPool pool = new ConflatingDistributionPool(1);
+    pool.start();
+    try {
+      final BlockingSenderFactory factory = new BlockingSenderFactory();
+      final MarketDataDistributor mdd = new MarketDataDistributor(new DistributionSpecification(ExternalId.of("RIC", "AAPL.O"), StandardRules.getNoNormalization(),
+          "LiveData.Bloomberg.Equity.AAPL"), new Subscription("", factory, pool), factory, false, pool);
+      mdd.distributeLiveData(tick("BID", 1d));
+      assertTrue(factory._sender._firstSending.await(5, TimeUnit.SECONDS));
+      // These arrive while the first is being sent, so are merged into one update
+      mdd.distributeLiveData(tick("BID", 2d));
+      mdd.distributeLiveData(tick("ASK", 3d));
+      mdd.distributeLiveData(tick("BID", 4d));
+      factory._sender._release.countDown();
+      waitForMessages(pool, 2);
+      assertEquals(2, pool.getMessagesSent());
+      assertEquals(4, pool.getTicksReceived());
+      assertEquals(2d, pool.getConflationRatio(), 1e-9);
+      assertEquals(2, mdd.getNumMessagesSent());
+      final List<LiveDataValueUpdateBean> sent = factory._sender._sent;
+      assertEquals(2, sent.size());
+      assertEquals(0, sent.get(0).getSequenceNumber());
+      assertEquals(1d, sent.get(0).getFields().getDouble("BID"), 1e-9);
+      assertEquals(1, sent.get(1).getSequenceNumber());
+      assertEquals(4d, sent.get(1).getFields().getDouble("BID"), 1e-9);
+      assertEquals(3d, sent.get(1).getFields().getDouble("ASK"), 1e-9);
+      assertEquals(0, pool.getQueueDepth());
+      assertTrue(pool.getMaxLatencyMillis() >= pool.getMeanLatencyMillis());
+      // The snapshot includes everything received
+      assertEquals(4d, mdd.getSnapshot().getFields().getDouble("BID"), 1e-9);
+    } finally {
+      pool.stop();
+    }
+  }
+
+  public void testStopFlushesPending() {
+    final ConflatingDistributionPool pool = new ConflatingDistributionPool(1);
+    final BlockingSenderFactory factory = new BlockingSenderFactory();
+    final MarketDataDistributor mdd = new MarketDataDistributor(new DistributionSpecification(ExternalId.of("RIC", "AAPL.O"), StandardRules.getNoNormalization(),
+        "LiveData.Bloomberg.Equity.AAPL"), new Subscription("", factory, pool), factory, false, pool);
+    factory._sender._release.countDown();
+    // Not started, so the ticks wait in the queue
+    assertFalse(pool.isRunning());
+    mdd.distributeLiveData(tick("BID", 1d));
+    mdd.distributeLiveData(tick("BID", 2d));
+    assertEquals(1, pool.getQueueDepth());
+    assertEquals(0, pool.getMessagesSent());
+    pool.stop();
+    assertEquals(0, pool.getQueueDepth());
+    assertEquals(1, pool.getMessagesSent());
+    assertEquals(2d, factory._sender._sent.get(0).getFields().getDouble("BID"), 1e-9);
+  }
+
+}